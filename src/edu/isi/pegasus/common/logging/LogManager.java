@@ -144,6 +144,11 @@ public abstract class LogManager {
      */
     public static final String LOG4J_LOGGER = "Log4j";
 
+    /**
+     * The asynchronous logger.
+     */
+    public static final String ASYNC_LOGGER = "Async";
+
     /**
      * The debug level. Higher the level the more the detail is logged. At present
      * can be 0 or 1. This is set according to the option given by the user, whether
@@ -337,6 +342,19 @@ public abstract class LogManager {
      */
     public abstract int getLevel();
 
+    /**
+     * Returns whether a message at the level passed is logged or not. Callers
+     * can use it to avoid constructing expensive messages, that are not
+     * logged. Implementations that cannot determine it return true.
+     *
+     * @param level  the level
+     *
+     * @return true if the message is logged
+     */
+    public boolean isLoggable( int level ){
+        return true;
+    }
+
     /**
      * Sets both the output writer and the error writer to the same
      * underlying writer.
@@ -367,7 +385,7 @@ public abstract class LogManager {
      * 
      * @param level    the level on which the message has to be logged.
      */
-    public  void logAndReset( int level ){
+    public synchronized void logAndReset( int level ){
         this.logAlreadyFormattedMessage( mLogFormatter.createLogMessageAndReset(), level );
     }
     
@@ -403,14 +421,71 @@ public abstract class LogManager {
      * message, the boolean indicating that a completion message is to follow
      * is set to true always.
      *
+     * The method is synchronized, as the message is formatted in the shared
+     * log buffer and it may be called from the code generator threads.
+     *
      * @param message  the message to be logged.
      * @param level    the level on which the message has to be logged.
      *
      * @see #setLevel(int)
      */
-    public  void log ( String message, int level){
-        mLogFormatter.add( message );
-        this.logAlreadyFormattedMessage( mLogFormatter.createLogMessageAndReset(), level);
+    public void log ( String message, int level){
+        if( !this.isLoggable( level ) ){
+            return;
+        }
+        synchronized( this ){
+            mLogFormatter.add( message );
+            this.logAlreadyFormattedMessage( mLogFormatter.createLogMessageAndReset(), level);
+        }
+    }
+
+    /**
+     * Logs a message constructed from a format string and an argument. The
+     * message is constructed only if the level is logged.
+     *
+     * @param level   the level on which the message has to be logged.
+     * @param format  the format string as understood by String.format()
+     * @param arg     the argument referred to by the format string
+     *
+     * @see #log(String,int)
+     */
+    public void log( int level, String format, Object arg ){
+        if( this.isLoggable( level ) ){
+            this.log( String.format( format, arg ), level );
+        }
+    }
+
+    /**
+     * Logs a message constructed from a format string and two arguments. The
+     * message is constructed only if the level is logged.
+     *
+     * @param level   the level on which the message has to be logged.
+     * @param format  the format string as understood by String.format()
+     * @param arg1    the first argument referred to by the format string
+     * @param arg2    the second argument referred to by the format string
+     *
+     * @see #log(String,int)
+     */
+    public void log( int level, String format, Object arg1, Object arg2 ){
+        if( this.isLoggable( level ) ){
+            this.log( String.format( format, arg1, arg2 ), level );
+        }
+    }
+
+    /**
+     * Logs a message constructed from a format string and arguments. The
+     * message is constructed only if the level is logged.
+     *
+     * @param level   the level on which the message has to be logged.
+     * @param format  the format string as understood by String.format()
+     * @param args    the arguments referred to by the format string
+     *
+     * @see #log(String,int)
+     */
+    public void log( int level, String format, Object... args ){
+        if( this.isLoggable( level ) ){
+            this.log( String.format( format, args ), level );
+        }
     }
     
     /**
@@ -0,0 +1,333 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.common.logging.logger;
+
+import edu.isi.pegasus.common.logging.LogFormatter;
+import edu.isi.pegasus.common.util.Currently;
+
+import java.io.PrintStream;
+
+import java.util.Date;
+import java.util.Properties;
+
+/**
+ * A logger that formats the messages the same way as the Default logger,
+ * but writes them out asynchronously. The messages are put in a fixed size
+ * ring buffer and written out to the streams by a separate writer thread. The
+ * thread logging a message only blocks if the buffer is full.
+ *
+ * The messages are written out in the order they are logged, so the start
+ * and completion messages of events retain their ordering. The timestamp
+ * of a message is the time it was logged, and not the time it was written
+ * out. FATAL and ERROR messages are written out before the log call returns,
+ * and all pending messages are written out when the JVM exits.
+ *
+ * The size of the ring buffer can be set by the property
+ * pegasus.log.manager.async.buffer.size .
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class Async extends Default {
+
+    /**
+     * The property that specifies the size of the ring buffer. The
+     * pegasus.log.manager prefix is stripped by the factory.
+     */
+    public static final String BUFFER_SIZE_PROPERTY = "async.buffer.size";
+
+    /**
+     * The default size of the ring buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The time in milliseconds after which a thread waiting on the writer
+     * thread checks if the writer thread is still alive, as it does not
+     * signal the waiting threads if it dies.
+     */
+    private static final long WRITER_CHECK_INTERVAL = 100;
+
+    /**
+     * The lock guarding the ring buffer.
+     */
+    private final Object mLock;
+
+    /**
+     * The streams to which the buffered messages are to be written.
+     */
+    private PrintStream[] mWriters;
+
+    /**
+     * The times at which the buffered messages were logged.
+     */
+    private long[] mTimes;
+
+    /**
+     * The buffered messages.
+     */
+    private String[] mMessages;
+
+    /**
+     * The index of the oldest message in the ring buffer.
+     */
+    private int mHead;
+
+    /**
+     * The number of messages in the ring buffer.
+     */
+    private int mCount;
+
+    /**
+     * Whether the writer thread is writing out messages it has taken from
+     * the ring buffer.
+     */
+    private boolean mWriting;
+
+    /**
+     * The thread writing out the messages.
+     */
+    private Thread mWriter;
+
+    /**
+     * The constructor.
+     */
+    public Async(){
+        super();
+        mLock = new Object();
+    }
+
+    /**
+     * Sets the log formatter to use for formatting the messages, and starts
+     * the writer thread.
+     *
+     * @param formatter  the formatter to use.
+     * @param properties  properties that the underlying implementations understand
+     */
+    public void initialize( LogFormatter formatter, Properties properties ){
+        super.initialize( formatter, properties );
+
+        int size = DEFAULT_BUFFER_SIZE;
+        String value = ( properties == null ) ? null : properties.getProperty( BUFFER_SIZE_PROPERTY );
+        if( value != null ){
+            try{
+                size = Integer.parseInt( value.trim() );
+            }
+            catch( NumberFormatException e ){
+                throw new RuntimeException( "Invalid value " + value + " for property " +
+                                            "pegasus.log.manager." + BUFFER_SIZE_PROPERTY );
+            }
+            if( size <= 0 ){
+                throw new RuntimeException( "The size of the log buffer should be greater than 0 " + size );
+            }
+        }
+
+        synchronized( mLock ){
+            if( mWriter != null ){
+                //already initialized
+                return;
+            }
+            mWriters  = new PrintStream[ size ];
+            mTimes    = new long[ size ];
+            mMessages = new String[ size ];
+            mHead     = 0;
+            mCount    = 0;
+
+            mWriter = new Thread( new Writer( size ), "pegasus-async-logger" );
+            mWriter.setDaemon( true );
+            mWriter.start();
+        }
+
+        Runtime.getRuntime().addShutdownHook( new Thread( "pegasus-async-logger-flush" ){
+            public void run(){
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Logs the message. FATAL and ERROR messages are written out before the
+     * method returns.
+     *
+     * @param message  the message to be logged.
+     * @param level    the level on which the message has to be logged.
+     */
+    public void logAlreadyFormattedMessage( String message, int level ){
+        super.logAlreadyFormattedMessage( message, level );
+        if( level <= ERROR_MESSAGE_LEVEL ){
+            flush();
+        }
+    }
+
+    /**
+     * Puts the message in the ring buffer, to be written out by the writer
+     * thread. Blocks if the ring buffer is full. The message is written out
+     * directly if the logger has not been initialized, or the writer thread
+     * is no longer alive.
+     *
+     * @param writer   the writer to log the message to
+     * @param message  the message with the level prefix
+     */
+    protected void write( PrintStream writer, String message ){
+        long time = System.currentTimeMillis();
+        boolean interrupted = false;
+        synchronized( mLock ){
+            if( mWriter == null ){
+                super.write( writer, message );
+                return;
+            }
+            while( mCount == mMessages.length && mWriter.isAlive() ){
+                try{
+                    mLock.wait( WRITER_CHECK_INTERVAL );
+                }
+                catch( InterruptedException e ){
+                    interrupted = true;
+                }
+            }
+            if( mCount == mMessages.length ){
+                super.write( writer, message );
+            }
+            else{
+                int tail = ( mHead + mCount ) % mMessages.length;
+                mWriters[ tail ]  = writer;
+                mTimes[ tail ]    = time;
+                mMessages[ tail ] = message;
+                mCount++;
+                mLock.notifyAll();
+            }
+        }
+        if( interrupted ){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits till all the messages logged so far have been written out.
+     */
+    public void flush(){
+        boolean interrupted = false;
+        synchronized( mLock ){
+            while( mWriter != null && mWriter.isAlive() && ( mCount > 0 || mWriting ) ){
+                try{
+                    mLock.wait( WRITER_CHECK_INTERVAL );
+                }
+                catch( InterruptedException e ){
+                    interrupted = true;
+                }
+            }
+        }
+        if( interrupted ){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The writer thread, that takes all the messages from the ring buffer
+     * at a time and writes them out.
+     */
+    private class Writer implements Runnable {
+
+        /**
+         * The streams of the messages taken from the ring buffer.
+         */
+        private PrintStream[] mBatchWriters;
+
+        /**
+         * The times of the messages taken from the ring buffer.
+         */
+        private long[] mBatchTimes;
+
+        /**
+         * The messages taken from the ring buffer.
+         */
+        private String[] mBatchMessages;
+
+        /**
+         * The date reused for formatting the timestamps.
+         */
+        private Date mDate;
+
+        /**
+         * The formatter for the timestamps. Used only by the writer thread.
+         */
+        private Currently mTimestamp;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param size  the size of the ring buffer
+         */
+        public Writer( int size ){
+            mBatchWriters  = new PrintStream[ size ];
+            mBatchTimes    = new long[ size ];
+            mBatchMessages = new String[ size ];
+            mDate          = new Date();
+            mTimestamp     = new Currently( TIMESTAMP_FORMAT );
+        }
+
+        /**
+         * Writes out the messages as they are put in the ring buffer.
+         */
+        public void run(){
+            while( true ){
+                int count;
+                synchronized( mLock ){
+                    mWriting = false;
+                    mLock.notifyAll();
+                    while( mCount == 0 ){
+                        try{
+                            mLock.wait();
+                        }
+                        catch( InterruptedException e ){
+                            //ignore, messages may still be logged
+                        }
+                    }
+                    count = mCount;
+                    for( int i = 0; i < count; i++ ){
+                        int index = ( mHead + i ) % mMessages.length;
+                        mBatchWriters[ i ]  = mWriters[ index ];
+                        mBatchTimes[ i ]    = mTimes[ index ];
+                        mBatchMessages[ i ] = mMessages[ index ];
+                        mWriters[ index ]  = null;
+                        mMessages[ index ] = null;
+                    }
+                    mHead   = ( mHead + count ) % mMessages.length;
+                    mCount  = 0;
+                    mWriting = true;
+                    mLock.notifyAll();
+                }
+
+                PrintStream last = null;
+                for( int i = 0; i < count; i++ ){
+                    PrintStream writer = mBatchWriters[ i ];
+                    if( last != null && last != writer ){
+                        last.flush();
+                    }
+                    mDate.setTime( mBatchTimes[ i ] );
+                    writer.print( mTimestamp.now( mDate ) );
+                    writer.println( mBatchMessages[ i ] );
+                    mBatchWriters[ i ]  = null;
+                    mBatchMessages[ i ] = null;
+                    last = writer;
+                }
+                if( last != null ){
+                    last.flush();
+                }
+            }
+        }
+    }
+}
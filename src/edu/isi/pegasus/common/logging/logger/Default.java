@@ -119,6 +119,11 @@ public class Default extends LogManager{
      */
     private static final int TRACE_MESSAGE_TYPE = 0x80;
 
+    /**
+     * The format for the timestamps prefixed to the messages.
+     */
+    protected static final String TIMESTAMP_FORMAT = "yyyy.MM.dd HH:mm:ss.SSS zzz: ";
+
     /**
      * Ensures only one object is created always. Implements the Singleton.
      */
@@ -157,7 +162,7 @@ public class Default extends LogManager{
         mDebugLevel    = 0;
         mOutStream     = new PrintStream(System.out,true);
         mErrStream     = new PrintStream(System.err,true);
-        Default.mFormatter = new Currently( "yyyy.MM.dd HH:mm:ss.SSS zzz: " );
+        Default.mFormatter = new Currently( TIMESTAMP_FORMAT );
         //by default we are logging only CONSOLE
         //and all message less than WARN
         mMask = generateMask( WARNING_MESSAGE_LEVEL, false );
@@ -247,6 +252,17 @@ public class Default extends LogManager{
         return mDebugLevel;
     }
 
+    /**
+     * Returns whether a message at the level passed is logged or not.
+     *
+     * @param level  the level
+     *
+     * @return true if the message is logged
+     */
+    public boolean isLoggable( int level ){
+        return ( (int)Math.pow(2, level) & mMask ) != 0x0;
+    }
+
     /**
      * Sets both the output writer and the error writer to the same
      * underlying writer.
@@ -419,7 +435,6 @@ public class Default extends LogManager{
              //we need to log the message
              //get hold of the writer to be used to logging the message.
              PrintStream writer = getPrintStream(level);
-             writer.print(Default.mFormatter.now());
              String prefix = getPrefix(type);
              message = prefix + " " + message;
              /*
@@ -441,11 +456,23 @@ public class Default extends LogManager{
                  writer.println(message);
              }
              */
-             writer.println(message);
-             writer.flush();
+             write( writer, message );
          }
      }
 
+    /**
+     * Writes out a message prefixed with the current timestamp to the writer
+     * passed.
+     *
+     * @param writer   the writer to log the message to
+     * @param message  the message with the level prefix
+     */
+    protected void write( PrintStream writer, String message ){
+        writer.print(Default.mFormatter.now());
+        writer.println(message);
+        writer.flush();
+    }
+
 
 
      /**
@@ -491,8 +518,7 @@ public class Default extends LogManager{
              */
             String prefix = getPrefix(type);
             message = prefix + " " + message;
-            writer.print(Default.mFormatter.now());
-            writer.println( message );
+            write( writer, message );
             //writer.println(message + " (completed)");
          }
      }
@@ -220,6 +220,44 @@ public class Log4j extends LogManager{
         return mDebugLevel;
     }
 
+    /**
+     * Returns whether a message at the level passed is logged or not.
+     *
+     * @param level  the level
+     *
+     * @return true if the message is logged
+     */
+    public boolean isLoggable( int level ){
+        Level l;
+        switch( level ){
+            case LogManager.FATAL_MESSAGE_LEVEL:
+                l = Level.FATAL;
+                break;
+
+            case LogManager.ERROR_MESSAGE_LEVEL:
+                l = Level.ERROR;
+                break;
+
+            case LogManager.WARNING_MESSAGE_LEVEL:
+                l = Level.WARN;
+                break;
+
+            case LogManager.CONFIG_MESSAGE_LEVEL:
+            case LogManager.INFO_MESSAGE_LEVEL:
+                l = Level.INFO;
+                break;
+
+            case LogManager.DEBUG_MESSAGE_LEVEL:
+                l = Level.DEBUG;
+                break;
+
+            default:
+                //messages at other levels are not logged
+                return false;
+        }
+        return mLogger.isEnabledFor( l );
+    }
+
     /**
      * Sets both the output writer and the error writer to the same
      * underlying writer.
@@ -55,6 +55,21 @@ import java.util.regex.Pattern;
  *     pegasus.catalog.replica.directory.flat.lfn
  * </pre>
  *
+ * The directory is listed with a single thread, unless the number of threads
+ * is specified by the property
+ * <pre>
+ *     pegasus.catalog.replica.directory.scan.threads
+ * </pre>
+ *
+ * The listing is held in a compact sorted index, and the replica catalog
+ * entries are only constructed for the LFNs looked up. If the following
+ * property is set to true, the directory is not listed at all, and the
+ * planner only checks for the files it looks up. This requires deep LFN's.
+ * <pre>
+ *     pegasus.catalog.replica.directory.lazy
+ * </pre>
+ * In either case, the complete mappings are constructed in memory when the
+ * catalog is listed or modified.
  *
  * @author Karan Vahi
  * @version $Revision$
@@ -102,16 +117,40 @@ public class Directory implements ReplicaCatalog {
      */
     public static final String FLAT_LFN_PROPERTY_KEY = "directory.flat.lfn";
 
+    /**
+     * The name of the key that specifies the number of threads to list the
+     * directory with.
+     */
+    public static final String SCAN_THREADS_PROPERTY_KEY = "directory.scan.threads";
+
+    /**
+     * The name of the key that specifies whether to only check for the files
+     * looked up, instead of listing the directory.
+     */
+    public static final String LAZY_PROPERTY_KEY = "directory.lazy";
+
     /**
      * Records the name of the on-disk representation.
      */
     protected String mDirectory = null;
 
     /**
-     * Maintains a memory slurp of the file representation.
+     * Maintains a memory slurp of the file representation. Only constructed
+     * when the catalog is listed or modified.
      */
     protected Map mLFNMap = null;
 
+    /**
+     * The index over the directory listing, till the mappings are
+     * constructed in memory.
+     */
+    protected DirectoryIndex mIndex = null;
+
+    /**
+     * The directory as a File, for the lazy lookups.
+     */
+    protected File mRoot = null;
+
     /**
      * A boolean indicating whether the catalog is read only or not.
      */
@@ -122,6 +161,16 @@ public class Directory implements ReplicaCatalog {
      */
     boolean mConstructFlatLFN;
 
+    /**
+     * A boolean indicating whether to check only for the files looked up.
+     */
+    boolean mLazy;
+
+    /**
+     * The number of threads to list the directory with.
+     */
+    int mScanThreads;
+
     /**
      * The  site handle to use.
      */
@@ -146,6 +195,8 @@ public class Directory implements ReplicaCatalog {
         mDirectory = null;
         //mReadOnly = false;
         mConstructFlatLFN = false;
+        mLazy = false;
+        mScanThreads = 1;
         mSiteHandle = Directory.DEFAULT_SITE_HANDLE;
         mURLPrefix  = Directory.DEFAULT_URL_PREFIX;
     }
@@ -172,7 +223,22 @@ public class Directory implements ReplicaCatalog {
                     false);
         }
 
-        String value = props.getProperty( Directory.SITE_PROPERTY_KEY  );
+        if (props.containsKey(Directory.LAZY_PROPERTY_KEY)) {
+            mLazy = Boolean.parse(props.getProperty(Directory.LAZY_PROPERTY_KEY),
+                    false);
+        }
+
+        String value = props.getProperty( Directory.SCAN_THREADS_PROPERTY_KEY );
+        if ( value != null ) {
+            try{
+                mScanThreads = Integer.parseInt( value.trim() );
+            }
+            catch( NumberFormatException e ){
+                throw new ReplicaCatalogException( "Invalid value for " + Directory.SCAN_THREADS_PROPERTY_KEY + " " + value );
+            }
+        }
+
+        value = props.getProperty( Directory.SITE_PROPERTY_KEY  );
         if ( value != null ) {
             this.mSiteHandle = value;
         }
@@ -190,7 +256,8 @@ public class Directory implements ReplicaCatalog {
 
 
     /**
-     * Does the file listing on the directory to create the mappings in memory.
+     * Does the file listing on the directory to create the index over it,
+     * unless the lookups are lazy.
      *
      * @param directory is the name of the file to read.
      * @return true, if the in-memory data structures appear sound.
@@ -201,19 +268,30 @@ public class Directory implements ReplicaCatalog {
         if (directory == null) {
             return false;
         }
+        if( mLazy && mConstructFlatLFN ){
+            throw new ReplicaCatalogException( "Lazy lookups against directory " + directory +
+                                               " are not supported with flat lfns" );
+        }
         mDirectory = directory;
-        mLFNMap = new LinkedHashMap();
+        mLFNMap = null;
+        mIndex  = null;
 
         try {
             File f = new File(directory);
             if (f.exists() && f.isDirectory()) {
-                traverse( f , null );
+                mRoot = f.getAbsoluteFile();
+                if( !mLazy ){
+                    mIndex = DirectoryIndex.build( f, mConstructFlatLFN, mScanThreads );
+                }
             }
             else{
+                //nothing to look up against
+                mLFNMap = new LinkedHashMap();
                 return false;
             }
         } catch (Exception ioe) {
             mLFNMap = null;
+            mIndex = null;
             mDirectory = null;
             throw new RuntimeException(ioe); // re-throw
         }
@@ -221,45 +299,81 @@ public class Directory implements ReplicaCatalog {
         return true;
     }
 
-
+    /**
+     * Constructs the mappings in memory from the index, listing the
+     * directory first if the lookups were lazy. To be called before the
+     * catalog is listed or modified.
+     */
+    private void materialize() {
+        if( mLFNMap != null ){
+            return;
+        }
+        DirectoryIndex index = ( mIndex == null ) ?
+                               DirectoryIndex.build( mRoot, mConstructFlatLFN, mScanThreads ) :
+                               mIndex;
+        mLFNMap = new LinkedHashMap( index.size() );
+        for( int i = 0; i < index.size(); i++ ){
+            //we have a mapping to populate
+            insert( index.getLFN( i ), new ReplicaCatalogEntry( this.mURLPrefix + index.getPath( i ), mSiteHandle ) );
+        }
+        mIndex = null;
+    }
 
     /**
-     * Traverses a directory and populates the mappings in memory
+     * Returns the entries for a LFN, from the mappings in memory if they
+     * have been constructed, else from the index or the directory.
+     *
+     * @param lfn  the LFN
      *
-     * @param directory     the directory to traverse.
-     * @param prefix        the LFN prefix to be applied
+     * @return the entries, or null if there are none
      */
-    private void traverse( File directory , String prefix) {
-         //sanity check, if we can read it
-        if( !directory.canRead() ){
-            //warn and return
-            System.err.println( "Ignoring. Unable to read directory " + directory );
-            return;
+    private Collection entries( String lfn ) {
+        if( mLFNMap != null ){
+            return (Collection) mLFNMap.get(lfn);
+        }
+        if( lfn == null ){
+            return null;
         }
 
-        for( File f: directory.listFiles() ){
-            StringBuffer lfn = new StringBuffer();
-            String name = f.getName();
-            if( mConstructFlatLFN || prefix == null || prefix.isEmpty() ){
-                lfn.append( name );
+        String path = null;
+        if( mIndex != null ){
+            int index = mIndex.indexOf( lfn );
+            if( index >= 0 ){
+                path = mIndex.getPath( index );
             }
-            else{
-                lfn.append( prefix ).append( File.separator ).append( name );
+        }
+        else if( isRelativePath( lfn ) ){
+            File f = new File( mRoot, lfn );
+            if( f.exists() && !f.isDirectory() ){
+                path = f.getPath();
             }
+        }
 
-            if( f.isDirectory() ){
-                //the lfn is the prefix now
-                traverse( f, lfn.toString() );
-            }
-            else{
-                //we have a mapping to populate
-                String pfn = this.mURLPrefix + f.getAbsolutePath();
-                //System.out.println( lfn + " => " + pfn );
-                insert( lfn.toString(), new ReplicaCatalogEntry( pfn, mSiteHandle ) );
-            }
+        if( path == null ){
+            return null;
         }
+        List result = new ArrayList( 1 );
+        result.add( new ReplicaCatalogEntry( this.mURLPrefix + path, mSiteHandle ) );
+        return result;
+    }
 
-        return;
+    /**
+     * Returns whether a LFN is a path that stays within the directory.
+     *
+     * @param lfn  the LFN
+     *
+     * @return boolean
+     */
+    private static boolean isRelativePath( String lfn ) {
+        if( lfn.length() == 0 || new File( lfn ).isAbsolute() ){
+            return false;
+        }
+        for( String component : lfn.split( Pattern.quote( File.separator ) ) ){
+            if( component.length() == 0 || component.equals( "." ) || component.equals( ".." ) ){
+                return false;
+            }
+        }
+        return true;
     }
 
 
@@ -272,8 +386,12 @@ public class Directory implements ReplicaCatalog {
      * quoted and thus quote-escaped.
      */
     public void close() {
-        mLFNMap.clear();
+        if( mLFNMap != null ){
+            mLFNMap.clear();
+        }
         mLFNMap = null;
+        mIndex = null;
+        mRoot = null;
         mDirectory = null;
     }
 
@@ -286,7 +404,7 @@ public class Directory implements ReplicaCatalog {
      * @see #close()
      */
     public boolean isClosed() {
-        return (mLFNMap == null);
+        return (mLFNMap == null && mRoot == null);
     }
 
     /**
@@ -299,7 +417,7 @@ public class Directory implements ReplicaCatalog {
      * <code>null</code> if no match was found.
      */
     public String lookup(String lfn, String handle) {
-        Collection c = (Collection) mLFNMap.get(lfn);
+        Collection c = this.entries(lfn);
         if (c == null) {
             return null;
         }
@@ -325,7 +443,7 @@ public class Directory implements ReplicaCatalog {
      * @see ReplicaCatalogEntry
      */
     public Collection lookup(String lfn) {
-        Collection c = (Collection) mLFNMap.get(lfn);
+        Collection c = this.entries(lfn);
         if (c == null) {
             return new ArrayList();
         } else {
@@ -343,7 +461,7 @@ public class Directory implements ReplicaCatalog {
      */
     public Set lookupNoAttributes(String lfn) {
         Set result = new TreeSet();
-        Collection c = (Collection) mLFNMap.get(lfn);
+        Collection c = this.entries(lfn);
 
         if (c != null) {
             for (Iterator i = c.iterator(); i.hasNext();) {
@@ -373,7 +491,7 @@ public class Directory implements ReplicaCatalog {
 
         for (Iterator i = lfns.iterator(); i.hasNext();) {
             String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+            Collection c = this.entries(lfn);
             if (c == null) {
                 result.put(lfn, new ArrayList());
             } else {
@@ -403,7 +521,7 @@ public class Directory implements ReplicaCatalog {
         for (Iterator i = lfns.iterator(); i.hasNext();) {
             Set value = new TreeSet();
             String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+            Collection c = this.entries(lfn);
             if (c != null) {
                 for (Iterator j = c.iterator(); j.hasNext();) {
                     value.add(((ReplicaCatalogEntry) j.next()).getPFN());
@@ -435,7 +553,7 @@ public class Directory implements ReplicaCatalog {
 
         for (Iterator i = lfns.iterator(); i.hasNext();) {
             String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+            Collection c = this.entries(lfn);
             if (c != null) {
                 List value = new ArrayList();
 
@@ -475,7 +593,7 @@ public class Directory implements ReplicaCatalog {
 
         for (Iterator i = lfns.iterator(); i.hasNext();) {
             String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+            Collection c = this.entries(lfn);
             if (c != null) {
                 List value = new ArrayList();
 
@@ -513,6 +631,7 @@ public class Directory implements ReplicaCatalog {
      * @see ReplicaCatalogEntry
      */
     public Map lookup(Map constraints) {
+        this.materialize();
         if (constraints == null || constraints.size() == 0) {
             // return everything
             return Collections.unmodifiableMap(mLFNMap);
@@ -542,6 +661,7 @@ public class Directory implements ReplicaCatalog {
      * @return A set of all logical filenames known to the catalog.
      */
     public Set list() {
+        this.materialize();
         return new TreeSet(mLFNMap.keySet());
     }
 
@@ -555,6 +675,7 @@ public class Directory implements ReplicaCatalog {
      * @return A set of logical filenames that match. The set may be empty
      */
     public Set list(String constraint) {
+        this.materialize();
         Set result = new TreeSet();
         Pattern p = Pattern.compile(constraint);
 
@@ -581,6 +702,7 @@ public class Directory implements ReplicaCatalog {
      * throw an exception, don't use zero.
      */
     public int insert(String lfn, ReplicaCatalogEntry tuple) {
+        this.materialize();
         if (lfn == null || tuple == null) {
             throw new NullPointerException();
         }
@@ -745,6 +867,7 @@ public class Directory implements ReplicaCatalog {
      * @return the number of removed entries, either 0 or 1.
      */
     public int delete(String lfn, ReplicaCatalogEntry tuple) {
+        this.materialize();
         int result = 0;
         if (lfn == null || tuple == null) {
             return result;
@@ -830,6 +953,7 @@ public class Directory implements ReplicaCatalog {
      * @return the number of removed entries.
      */
     public int remove(String lfn) {
+        this.materialize();
         Collection c = (Collection) mLFNMap.remove(lfn);
         if (c == null) {
             return 0;
@@ -871,6 +995,7 @@ public class Directory implements ReplicaCatalog {
      * @return the number of removed entries.
      */
     public int removeByAttribute(String name, Object value) {
+        this.materialize();
         int result = 0;
 
         for (Iterator i = mLFNMap.keySet().iterator(); i.hasNext();) {
@@ -914,6 +1039,7 @@ public class Directory implements ReplicaCatalog {
      * @return the number of removed entries.
      */
     public int clear() {
+        this.materialize();
         int result = mLFNMap.size();
         mLFNMap.clear();
         return result;
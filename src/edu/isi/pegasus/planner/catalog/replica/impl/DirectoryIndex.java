@@ -0,0 +1,339 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A compact index of the files in a directory tree, used by the Directory
+ * replica catalog. Instead of a replica catalog entry per file, the index
+ * holds a single sorted array of strings, one per file, and builds the
+ * entries only for the LFNs that are looked up.
+ *
+ * For deep LFNs, the string is the path of the file relative to the
+ * directory, which is also the LFN. For flat LFNs, the string is the name
+ * of the file, followed by a NUL character and the relative path. Either
+ * way, the array sorts by LFN and is searched with a binary search.
+ *
+ * The directory tree can be walked by multiple threads, each listing one
+ * directory at a time. This helps on parallel filesystems, where listing a
+ * directory is slow but many directories can be listed at once.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+class DirectoryIndex {
+
+    /**
+     * Separates the LFN from the relative path for flat LFNs.
+     */
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * The absolute path to the directory.
+     */
+    private final String mRoot;
+
+    /**
+     * The sorted strings, one per file.
+     */
+    private final String[] mEntries;
+
+    /**
+     * Walks a directory tree and builds the index over the files in it.
+     *
+     * @param directory  the directory to walk.
+     * @param flat       whether to construct flat LFNs.
+     * @param threads    the number of threads to walk the tree with. A single
+     *                   thread walks the tree in the calling thread.
+     *
+     * @return the index
+     *
+     * @throws ReplicaCatalogException if flat LFNs are constructed, and two
+     *         files have the same name.
+     */
+    public static DirectoryIndex build( File directory, boolean flat, int threads ){
+        Walker walker = new Walker( flat );
+        List<String[]> listings = walker.walk( directory, threads );
+
+        int total = 0;
+        for( String[] listing : listings ){
+            total += listing.length;
+        }
+        String[] entries = new String[ total ];
+        int position = 0;
+        for( String[] listing : listings ){
+            System.arraycopy( listing, 0, entries, position, listing.length );
+            position += listing.length;
+        }
+        Arrays.sort( entries );
+
+        DirectoryIndex index = new DirectoryIndex( directory.getAbsolutePath(), entries );
+        if( flat ){
+            //two files with the same name map to the same lfn
+            for( int i = 1; i < entries.length; i++ ){
+                String lfn = index.getLFN( i );
+                if( lfn.equals( index.getLFN( i - 1 ) ) ){
+                    StringBuffer error = new StringBuffer();
+                    error.append( "Entry for lfn ").append( lfn ).
+                          append( " already exists " ).append( index.getPath( i - 1 ) );
+                    throw new ReplicaCatalogException( error.toString() );
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param root     the absolute path to the directory.
+     * @param entries  the sorted strings, one per file.
+     */
+    private DirectoryIndex( String root, String[] entries ){
+        mRoot    = root;
+        mEntries = entries;
+    }
+
+    /**
+     * Returns the number of files in the index.
+     *
+     * @return the number of files
+     */
+    public int size(){
+        return mEntries.length;
+    }
+
+    /**
+     * Returns the position of a LFN in the index.
+     *
+     * @param lfn  the LFN
+     *
+     * @return the position, or -1 if the LFN is not in the index
+     */
+    public int indexOf( String lfn ){
+        int index = Arrays.binarySearch( mEntries, lfn );
+        if( index >= 0 ){
+            return index;
+        }
+        //for flat lfns the entry is the lfn followed by the separator
+        index = -( index + 1 );
+        if( index < mEntries.length ){
+            String entry = mEntries[ index ];
+            if( entry.length() > lfn.length() &&
+                entry.charAt( lfn.length() ) == SEPARATOR &&
+                entry.startsWith( lfn ) ){
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the LFN at a position in the index.
+     *
+     * @param index  the position
+     *
+     * @return the LFN
+     */
+    public String getLFN( int index ){
+        String entry = mEntries[ index ];
+        int separator = entry.indexOf( SEPARATOR );
+        return ( separator < 0 ) ? entry : entry.substring( 0, separator );
+    }
+
+    /**
+     * Returns the absolute path of the file at a position in the index.
+     *
+     * @param index  the position
+     *
+     * @return the absolute path
+     */
+    public String getPath( int index ){
+        String entry = mEntries[ index ];
+        int separator = entry.indexOf( SEPARATOR );
+        StringBuffer path = new StringBuffer( mRoot.length() + entry.length() + 1 );
+        path.append( mRoot ).append( File.separatorChar ).
+             append( entry, separator + 1, entry.length() );
+        return path.toString();
+    }
+
+    /**
+     * Walks a directory tree, listing each directory in a single thread or
+     * in a pool of threads.
+     */
+    private static class Walker {
+
+        /**
+         * Whether to construct flat LFNs.
+         */
+        private final boolean mFlat;
+
+        /**
+         * The listings of the directories, one array per directory.
+         */
+        private final ConcurrentLinkedQueue<String[]> mListings;
+
+        /**
+         * The directories still to be listed, when walking in the calling
+         * thread.
+         */
+        private final LinkedList<Object[]> mQueue;
+
+        /**
+         * The thread pool, when walking with multiple threads.
+         */
+        private ExecutorService mExecutor;
+
+        /**
+         * The number of directories submitted and not yet listed.
+         */
+        private final AtomicInteger mPending;
+
+        /**
+         * Released once all the directories are listed.
+         */
+        private final CountDownLatch mDone;
+
+        /**
+         * The first error encountered by a thread.
+         */
+        private volatile RuntimeException mError;
+
+        public Walker( boolean flat ){
+            mFlat     = flat;
+            mListings = new ConcurrentLinkedQueue<String[]>();
+            mQueue    = new LinkedList<Object[]>();
+            mPending  = new AtomicInteger( 0 );
+            mDone     = new CountDownLatch( 1 );
+            mError    = null;
+        }
+
+        /**
+         * Walks the tree.
+         *
+         * @param directory  the directory to walk.
+         * @param threads    the number of threads to walk with.
+         *
+         * @return the listings of the directories
+         */
+        public List<String[]> walk( File directory, int threads ){
+            if( threads <= 1 ){
+                mQueue.add( new Object[]{ directory, null } );
+                while( !mQueue.isEmpty() ){
+                    Object[] next = mQueue.removeFirst();
+                    this.list( (File)next[0], (String)next[1] );
+                }
+            }
+            else{
+                mExecutor = Executors.newFixedThreadPool( threads );
+                try{
+                    this.submit( directory, null );
+                    mDone.await();
+                }
+                catch( InterruptedException e ){
+                    Thread.currentThread().interrupt();
+                    throw new ReplicaCatalogException( "Interrupted while listing directory " + directory );
+                }
+                finally{
+                    mExecutor.shutdownNow();
+                }
+                if( mError != null ){
+                    throw mError;
+                }
+            }
+            return new ArrayList<String[]>( mListings );
+        }
+
+        /**
+         * Schedules a directory to be listed.
+         *
+         * @param directory  the directory.
+         * @param path       the path of the directory relative to the root,
+         *                   null for the root.
+         */
+        private void submit( final File directory, final String path ){
+            if( mExecutor == null ){
+                mQueue.add( new Object[]{ directory, path } );
+                return;
+            }
+            mPending.incrementAndGet();
+            mExecutor.execute( new Runnable(){
+                public void run(){
+                    try{
+                        if( mError == null ){
+                            list( directory, path );
+                        }
+                    }
+                    catch( RuntimeException e ){
+                        mError = e;
+                    }
+                    finally{
+                        if( mPending.decrementAndGet() == 0 ){
+                            mDone.countDown();
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Lists a directory, recording the files in it and scheduling the
+         * directories in it.
+         *
+         * @param directory  the directory.
+         * @param path       the path of the directory relative to the root,
+         *                   null for the root.
+         */
+        private void list( File directory, String path ){
+            //sanity check, if we can read it
+            File[] files = directory.canRead() ? directory.listFiles() : null;
+            if( files == null ){
+                //warn and return
+                System.err.println( "Ignoring. Unable to read directory " + directory );
+                return;
+            }
+
+            List<String> listing = new ArrayList<String>( files.length );
+            for( File f : files ){
+                String name = f.getName();
+                String relative = ( path == null ) ? name : path + File.separator + name;
+                if( f.isDirectory() ){
+                    this.submit( f, relative );
+                }
+                else if( mFlat ){
+                    listing.add( name + SEPARATOR + relative );
+                }
+                else{
+                    listing.add( relative );
+                }
+            }
+            mListings.add( listing.toArray( new String[ listing.size() ] ) );
+        }
+    }
+}
@@ -173,6 +173,30 @@ public class JDBCRC implements ReplicaCatalog
    */
   private boolean m_autoinc = false;
 
+  /**
+   * The default number of LFNs looked up, or mappings inserted, in one
+   * round trip to the database.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /**
+   * The maximum number of parameters that SQLite allows in a statement.
+   */
+  private static final int SQLITE_MAX_PARAMETERS = 999;
+
+  /**
+   * The number of LFNs looked up, or mappings inserted, in one round trip
+   * to the database.
+   */
+  protected int mBatchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * The prepared statements for the batched lookups and inserts, indexed
+   * by their SQL. They are prepared on demand, and reused across batches.
+   */
+  private Map<String,PreparedStatement> mBatchStatements =
+    new HashMap<String,PreparedStatement>();
+
   /**
    * Convenience c'tor: Establishes the connection to the replica
    * catalog database. The usual suspects for the class name include:
@@ -314,6 +338,21 @@ public class JDBCRC implements ReplicaCatalog
         }
       
       
+        // the number of LFNs to look up or insert in one round trip
+        String batch = (String) props.remove( ReplicaCatalog.BATCH_KEY );
+        if( batch != null ){
+            try{
+                mBatchSize = Integer.parseInt( batch.trim() );
+            }
+            catch( NumberFormatException e ){
+                throw new RuntimeException( "Invalid value " + batch + " for property " +
+                                            ReplicaCatalog.c_prefix + "." + ReplicaCatalog.BATCH_KEY );
+            }
+            if( mBatchSize <= 0 ){
+                throw new RuntimeException( "The replica catalog chunk size should be greater than 0 " + mBatchSize );
+            }
+        }
+
         // class loader: Will propagate any runtime errors!!!
         String driver = (String) props.remove("db.driver");
 
@@ -404,6 +443,15 @@ public class JDBCRC implements ReplicaCatalog
       }
     }
 
+    for ( PreparedStatement ps : mBatchStatements.values() ) {
+      try {
+	ps.close();
+      } catch ( SQLException e ) {
+	// ignore
+      }
+    }
+    mBatchStatements.clear();
+
     if ( mConnection != null ) {
       try {
 	mConnection.close();
@@ -468,6 +516,195 @@ public class JDBCRC implements ReplicaCatalog
     return mStatements[i];
   }
 
+  /**
+   * Singleton manager for the prepared statements of the batched lookups
+   * and inserts. The statement is created if it was unused previously.
+   *
+   * @param query is the SQL of the statement.
+   * @return a handle to the prepared statement.
+   */
+  protected PreparedStatement getStatement( String query )
+    throws SQLException
+  {
+    PreparedStatement ps = mBatchStatements.get( query );
+    if ( ps == null ) {
+      ps = mConnection.prepareStatement( query );
+      mBatchStatements.put( query, ps );
+    }
+    else {
+      ps.clearParameters();
+    }
+    return ps;
+  }
+
+  /**
+   * Returns the number of LFNs that are looked up in one query. SQLite
+   * limits the number of parameters in a statement.
+   *
+   * @param lfns  the number of LFNs to be looked up.
+   * @return the number of LFNs in one query.
+   */
+  private int lookupBatchSize( int lfns )
+  {
+    int size = mUsingSQLiteBackend ?
+               Math.min( mBatchSize, SQLITE_MAX_PARAMETERS - 1 ) :
+               mBatchSize;
+    return Math.min( size, lfns );
+  }
+
+  /**
+   * Appends a parenthesized list of parameter markers to a query.
+   *
+   * @param q  the query to append to.
+   * @param n  the number of parameters.
+   * @return the query.
+   */
+  private StringBuilder appendParameters( StringBuilder q, int n )
+  {
+    q.append( '(' );
+    for ( int i = 0; i < n; ++i ) {
+      if ( i > 0 ) q.append( ',' );
+      q.append( '?' );
+    }
+    return q.append( ')' );
+  }
+
+  /**
+   * Looks up multiple LFNs with a query per chunk of LFNs, instead of a
+   * query per LFN. The LFNs in a chunk are passed in an IN list. The last
+   * chunk is padded with its last LFN, so that all the chunks use the
+   * same prepared statement. With the attributes, the rows of rc_lfn are
+   * joined with their attributes, and streamed into the replica catalog
+   * entries.
+   *
+   * @param lfns is a set of logical filename strings to look up.
+   * @param handle is the resource handle, restricting the LFNs, or null.
+   * @param attributes whether to return replica catalog entries with all
+   * the attributes, or only the PFNs.
+   * @return a map indexed by the LFN. Each value is a list of replica
+   * catalog entries, or a set of PFN strings.
+   */
+  private Map lookupInBatches( Set lfns, String handle, boolean attributes )
+  {
+    Map result = new HashMap();
+
+    // sanity check
+    if ( lfns == null || lfns.size() == 0 ) return result;
+    if ( mConnection == null ) throw new RuntimeException( c_error );
+
+    int n = lookupBatchSize( lfns.size() );
+    StringBuilder q = new StringBuilder( 128 + 2 * n );
+    if ( attributes ) {
+      q.append( "SELECT r.id,r.lfn,r.pfn,r.site,a.name,a.value" +
+                " FROM rc_lfn r LEFT OUTER JOIN rc_attr a ON r.id=a.id" +
+                " WHERE r.lfn IN " );
+    } else {
+      q.append( "SELECT r.lfn,r.pfn FROM rc_lfn r WHERE r.lfn IN " );
+    }
+    appendParameters( q, n );
+    if ( handle != null ) q.append( " AND r.site=?" );
+    if ( attributes ) q.append( " ORDER BY r.id" );
+    String query = q.toString();
+
+    // the LFNs as they are passed to the database, that differ from the
+    // ones asked for
+    Map quoted = null;
+
+    try {
+      PreparedStatement ps = getStatement( query );
+      String[] chunk = new String[ n ];
+      for ( Iterator i = lfns.iterator(); i.hasNext(); ) {
+	int count = 0;
+	while ( count < n && i.hasNext() ) {
+	  String lfn = (String) i.next();
+	  String value = quote( lfn );
+	  if ( value != lfn ) {
+	    if ( quoted == null ) quoted = new HashMap();
+	    quoted.put( value, lfn );
+	  }
+	  chunk[ count++ ] = value;
+	  result.put( lfn, attributes ? (Object) new ArrayList() : new TreeSet() );
+	}
+	for ( int j = 0; j < n; ++j ) {
+	  ps.setString( j + 1, chunk[ j < count ? j : count - 1 ] );
+	}
+	if ( handle != null ) ps.setString( n + 1, quote(handle) );
+
+	ResultSet rs = ps.executeQuery();
+	if ( attributes ) {
+	  collectEntries( rs, result, quoted );
+	} else {
+	  while ( rs.next() ) {
+	    Set value = (Set) lfnValue( result, quoted, rs.getString(1) );
+	    if ( value != null ) value.add( rs.getString(2) );
+	  }
+	}
+	rs.close();
+      }
+    } catch ( SQLException e ) {
+      throw new RuntimeException( "Unable to query database with " +
+				  query + ": " + e.getMessage() );
+    }
+
+    // done
+    return result;
+  }
+
+  /**
+   * Streams the rows of rc_lfn joined with their attributes into replica
+   * catalog entries. The rows of an entry are consecutive.
+   *
+   * @param rs the result set with the columns id, lfn, pfn, site, name
+   * and value, ordered by the id.
+   * @param result the map from the LFN to the list of entries.
+   * @param quoted the map from the LFNs passed to the database to the
+   * ones asked for, or null.
+   */
+  private void collectEntries( ResultSet rs, Map result, Map quoted )
+    throws SQLException
+  {
+    String id = null;
+    String pfn = null;
+    Map attributes = null;
+    List value = null;
+    while ( rs.next() ) {
+      String current = rs.getString(1);
+      if ( ! current.equals(id) ) {
+	if ( value != null ) value.add( new ReplicaCatalogEntry( pfn, attributes ) );
+	id = current;
+	value = (List) lfnValue( result, quoted, rs.getString(2) );
+	pfn = rs.getString(3);
+	attributes = new TreeMap();
+	String handle = rs.getString(4);
+	if ( handle != null && ! handle.equals("NULL") ) {
+	  attributes.put( ReplicaCatalogEntry.RESOURCE_HANDLE, handle );
+	}
+      }
+      String name = rs.getString(5);
+      if ( name != null ) attributes.put( name, rs.getString(6) );
+    }
+    if ( value != null ) value.add( new ReplicaCatalogEntry( pfn, attributes ) );
+  }
+
+  /**
+   * Returns the value in the result of a batched lookup, for a LFN
+   * returned by the database.
+   *
+   * @param result the result of the lookup.
+   * @param quoted the map from the LFNs passed to the database to the
+   * ones asked for, or null.
+   * @param lfn the LFN returned by the database.
+   * @return the value, or null if the LFN was not asked for.
+   */
+  private Object lfnValue( Map result, Map quoted, String lfn )
+  {
+    Object value = result.get( lfn );
+    if ( value == null && quoted != null && quoted.containsKey( lfn ) ) {
+      value = result.get( quoted.get( lfn ) );
+    }
+    return value;
+  }
+
   /**
    * Retrieves the entry for a given filename and site handle from the
    * replica catalog.
@@ -626,36 +863,7 @@ public class JDBCRC implements ReplicaCatalog
    */
   public Map lookup( Set lfns )
   {
-    Map result = new HashMap();
-    String query = mCStatements[1];
-
-    // sanity check
-    if ( lfns == null || lfns.size() == 0 ) return result;
-    if ( mConnection == null ) throw new RuntimeException( c_error );
-
-    try {
-      ResultSet rs = null;
-      PreparedStatement ps = getStatement(1);
-      for ( Iterator i = lfns.iterator(); i.hasNext(); ) {
-	List value = new ArrayList();
-	String lfn = (String) i.next();
-	ps.setString( 1, quote(lfn) );
-	rs = ps.executeQuery();
-	while ( rs.next() ) {
-	  value.add( new ReplicaCatalogEntry( rs.getString("pfn"),
-				attributes(rs.getString("id"), 
-                                           rs.getString("site")) ) );
-	}
-	rs.close();
-	result.put( lfn, value );
-      }
-    } catch ( SQLException e ) {
-      throw new RuntimeException( "Unable to query database with " +
-				  query + ": " + e.getMessage() );
-    }
-
-    // done
-    return result;
+    return lookupInBatches( lfns, null, true );
   }
 
   /**
@@ -669,32 +877,7 @@ public class JDBCRC implements ReplicaCatalog
    */
   public Map lookupNoAttributes( Set lfns )
   {
-    Map result = new HashMap();
-    String query = mCStatements[1];
-
-    // sanity check
-    if ( lfns == null || lfns.size() == 0 ) return result;
-    if ( mConnection == null ) throw new RuntimeException( c_error );
-
-    try {
-      ResultSet rs = null;
-      PreparedStatement ps = getStatement(1);
-      for ( Iterator i = lfns.iterator(); i.hasNext(); ) {
-	Set value = new TreeSet();
-	String lfn = (String) i.next();
-	ps.setString( 1, quote(lfn) );
-	rs = ps.executeQuery();
-	while ( rs.next() ) value.add(rs.getString("pfn"));
-	rs.close();
-	result.put( lfn, value );
-      }
-    } catch ( SQLException e ) {
-      throw new RuntimeException( "Unable to query database with " +
-				  query + ": " + e.getMessage() );
-    }
-
-    // done
-    return result;
+    return lookupInBatches( lfns, null, false );
   }
 
   /**
@@ -710,39 +893,7 @@ public class JDBCRC implements ReplicaCatalog
    */
   public Map lookup( Set lfns, String handle )
   {
-    Map result = new HashMap();
-    int which = ( handle == null ? 3 : 2 );
-    String query = mCStatements[which];
-
-    // sanity check
-    if ( lfns == null || lfns.size() == 0 ) return result;
-    if ( mConnection == null ) throw new RuntimeException( c_error );
-
-    try {
-      ResultSet rs = null;
-      PreparedStatement ps = getStatement(which);
-      if ( handle != null ) ps.setString( 2, quote(handle) );
-
-      for ( Iterator i = lfns.iterator(); i.hasNext(); ) {
-	List value = new ArrayList();
-	String lfn = (String) i.next();
-	ps.setString( 1, quote(lfn) );
-	rs = ps.executeQuery();
-	while ( rs.next() ) {
-	  value.add( new ReplicaCatalogEntry( rs.getString("pfn"),
-				attributes(rs.getString("id"), 
-                                           rs.getString("site")) ) );
-	}
-	rs.close();
-	result.put( lfn, value );
-      }
-    } catch ( SQLException e ) {
-      throw new RuntimeException( "Unable to query database with " +
-				  query + ": " + e.getMessage() );
-    }
-
-    // done
-    return result;
+    return lookupInBatches( lfns, handle, true );
   }
 
   /**
@@ -757,35 +908,7 @@ public class JDBCRC implements ReplicaCatalog
    */
   public Map lookupNoAttributes( Set lfns, String handle )
   {
-    Map result = new HashMap();
-    int which = ( handle == null ? 3 : 2 );
-    String query = mCStatements[which];
-
-    // sanity check
-    if ( lfns == null || lfns.size() == 0 ) return result;
-    if ( mConnection == null ) throw new RuntimeException( c_error );
-
-    try {
-      ResultSet rs = null;
-      PreparedStatement ps = getStatement(which);
-      if ( handle != null ) ps.setString( 2, quote(handle) );
-
-      for ( Iterator i = lfns.iterator(); i.hasNext(); ) {
-	Set value = new TreeSet();
-	String lfn = (String) i.next();
-	ps.setString( 1, quote(lfn) );
-	rs = ps.executeQuery();
-	while ( rs.next() ) value.add( rs.getString("pfn") );
-	rs.close();
-	result.put( lfn, value );
-      }
-    } catch ( SQLException e ) {
-      throw new RuntimeException( "Unable to query database with " +
-				  query + ": " + e.getMessage() );
-    }
-
-    // done
-    return result;
+    return lookupInBatches( lfns, handle, false );
   }
 
   /**
@@ -946,6 +1069,68 @@ public class JDBCRC implements ReplicaCatalog
     return result;
   }
 
+  /**
+   * Returns the largest id of the rows in the catalog. The ids are assigned
+   * in increasing order, so this is an upper bound on the number of rows,
+   * and a watermark for the rows inserted later.
+   *
+   * @return the largest id, or 0 if the catalog is empty
+   * @see #listSince( long, Collection )
+   */
+  public long lastId()
+  {
+    // more sanity
+    if ( mConnection == null ) throw new RuntimeException( c_error );
+
+    String query = "SELECT max(id) FROM rc_lfn";
+    try {
+      Statement st = mConnection.createStatement();
+      ResultSet rs = st.executeQuery(query);
+      long result = rs.next() ? rs.getLong(1) : 0;
+      rs.close();
+      st.close();
+      return result;
+    } catch ( SQLException e ) {
+      throw new RuntimeException( "Unable to query database about " +
+				  query + ": " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Adds the logical filenames of all rows with an id larger than the one
+   * passed to a collection. The rows are streamed, so that the catalog does
+   * not need to fit into memory as a set.
+   *
+   * @param after is the id after which to list the rows, 0 for all rows.
+   * @param lfns is the collection to add the logical filenames to.
+   * @return the largest id of the rows listed, or after if none.
+   */
+  public long listSince( long after, Collection<String> lfns )
+  {
+    // more sanity
+    if ( mConnection == null ) throw new RuntimeException( c_error );
+
+    String query = "SELECT id,lfn FROM rc_lfn WHERE id > ? ORDER BY id";
+    long result = after;
+    try {
+      PreparedStatement ps = getStatement( query );
+      ps.setLong( 1, after );
+      ps.setFetchSize( mBatchSize );
+      ResultSet rs = ps.executeQuery();
+      while ( rs.next() ) {
+	result = rs.getLong(1);
+	lfns.add( rs.getString(2) );
+      }
+      rs.close();
+    } catch ( SQLException e ) {
+      throw new RuntimeException( "Unable to query database about " +
+				  query + ": " + e.getMessage() );
+    }
+
+    // done
+    return result;
+  }
+
 
 
   /**
@@ -1123,7 +1308,12 @@ public class JDBCRC implements ReplicaCatalog
   /**
    * Inserts multiple mappings into the replica catalog. The input is a
    * map indexed by the LFN. The value for each LFN key is a collection
-   * of replica catalog entries.
+   * of replica catalog entries. As with the insert of a single mapping,
+   * an existing mapping with the same LFN, PFN and resource handle is
+   * replaced.
+   *
+   * The mappings are inserted in chunks, using JDBC batch execution.
+   * Each chunk is inserted in one transaction.
    *
    * @param x is a map from logical filename string to list of replica
    * catalog entries.
@@ -1138,23 +1328,251 @@ public class JDBCRC implements ReplicaCatalog
     if ( x == null || x.size() == 0 ) return result;
     if ( mConnection == null ) throw new RuntimeException( c_error );
 
-    // FIXME: Create a true bulk mode. This is inefficient, but will
-    // get the job done (for now).
-    Set lfns = x.keySet();
-    for ( Iterator i=lfns.iterator(); i.hasNext(); ) {
-      String lfn = (String) i.next();
-      List value = (List) x.get(lfn);
-      if ( value != null && value.size() > 0 ) {
-	for ( Iterator j=value.iterator(); j.hasNext(); ) {
-	  result += insert( lfn, (ReplicaCatalogEntry) j.next() );
+    // the mappings in a chunk, indexed by lfn, pfn and handle. A later
+    // mapping replaces an earlier one
+    Map<String,Object[]> chunk = new LinkedHashMap<String,Object[]>();
+    for ( Iterator i=x.entrySet().iterator(); i.hasNext(); ) {
+      Map.Entry entry = (Map.Entry) i.next();
+      String lfn = (String) entry.getKey();
+      Collection value = (Collection) entry.getValue();
+      if ( lfn == null || value == null ) continue;
+      for ( Iterator j=value.iterator(); j.hasNext(); ) {
+	ReplicaCatalogEntry tuple = (ReplicaCatalogEntry) j.next();
+	String key = mappingKey( lfn, tuple.getPFN(), tuple.getResourceHandle() );
+	chunk.remove( key );
+	chunk.put( key, new Object[]{ lfn, tuple } );
+	if ( chunk.size() == mBatchSize ) {
+	  result += insertBatch( chunk.values() );
+	  chunk.clear();
 	}
       }
     }
+    if ( ! chunk.isEmpty() ) result += insertBatch( chunk.values() );
 
     // done
     return result;
   }
 
+  /**
+   * Returns the key identifying a mapping in the catalog.
+   *
+   * @param lfn is the logical filename.
+   * @param pfn is the physical filename.
+   * @param handle is the resource handle, or null.
+   * @return the key.
+   */
+  private String mappingKey( String lfn, String pfn, String handle )
+  {
+    StringBuilder key = new StringBuilder( lfn.length() + 64 );
+    key.append( lfn ).append( '\0' ).append( pfn );
+    if ( handle != null ) key.append( '\0' ).append( handle );
+    return key.toString();
+  }
+
+  /**
+   * Inserts a chunk of mappings in one transaction. The existing mappings
+   * with the same LFN, PFN and resource handle are deleted, then the
+   * mappings are inserted, and finally their attributes. Each step is
+   * one batch execution. Without autoinc columns, the ids of the mappings
+   * are taken from the sequence generator before they are inserted.
+   * Otherwise, the ids of the inserted mappings are looked up with one
+   * query, only if some mapping has attributes.
+   *
+   * @param mappings the mappings as pairs of LFN and replica catalog
+   * entry. The LFN, PFN and resource handle of each pair are unique.
+   * @return the number of insertions.
+   */
+  private int insertBatch( Collection<Object[]> mappings )
+  {
+    String query = "[no query]";
+    int result = 0;
+    boolean autoCommitWasOn = false;
+    boolean attributes = false;
+    Set<String> lfns = new LinkedHashSet<String>();
+
+    try {
+      if ( (autoCommitWasOn = mConnection.getAutoCommit()) )
+	mConnection.setAutoCommit(false);
+
+      // delete before insert. The attributes are deleted explicitly, in
+      // case the foreign keys are not enforced
+      String[] deletes = {
+	"DELETE FROM rc_attr WHERE id IN" +
+	" ( SELECT id FROM rc_lfn WHERE lfn=? AND pfn=? AND site=? )",
+	"DELETE FROM rc_attr WHERE id IN" +
+	" ( SELECT id FROM rc_lfn WHERE lfn=? AND pfn=? AND site IS NULL )",
+	"DELETE FROM rc_lfn WHERE lfn=? AND pfn=? AND site=?",
+	"DELETE FROM rc_lfn WHERE lfn=? AND pfn=? AND site IS NULL"
+      };
+      for ( int d = 0; d < deletes.length; d += 2 ) {
+	PreparedStatement site = getStatement( deletes[d] );
+	PreparedStatement nosite = getStatement( deletes[d+1] );
+	int sites = 0, nosites = 0;
+	for ( Object[] mapping : mappings ) {
+	  ReplicaCatalogEntry tuple = (ReplicaCatalogEntry) mapping[1];
+	  String handle = tuple.getResourceHandle();
+	  PreparedStatement ps = ( handle == null ) ? nosite : site;
+	  ps.setString( 1, (String) mapping[0] );
+	  ps.setString( 2, tuple.getPFN() );
+	  if ( handle == null ) {
+	    nosites++;
+	  } else {
+	    ps.setString( 3, handle );
+	    sites++;
+	  }
+	  ps.addBatch();
+	}
+	query = deletes[d];
+	if ( sites > 0 ) site.executeBatch();
+	query = deletes[d+1];
+	if ( nosites > 0 ) nosite.executeBatch();
+      }
+
+      // without autoinc columns, the ids are taken from the sequence
+      // generator, as for the insert of a single mapping
+      Map<String,Long> ids = null;
+      PreparedStatement sequence = null;
+      if ( m_autoinc ) {
+	query = "INSERT INTO rc_lfn(lfn,pfn,site) VALUES(?,?,?)";
+      } else {
+	ids = new HashMap<String,Long>();
+	sequence = getStatement( "SELECT nextval('rc_lfn_id')" );
+	query = "INSERT INTO rc_lfn(id,lfn,pfn,site) VALUES(?,?,?,?)";
+      }
+      PreparedStatement ps = getStatement( query );
+      for ( Object[] mapping : mappings ) {
+	ReplicaCatalogEntry tuple = (ReplicaCatalogEntry) mapping[1];
+	String handle = tuple.getResourceHandle();
+	int column = 1;
+	if ( ! m_autoinc ) {
+	  ResultSet rs = sequence.executeQuery();
+	  long id;
+	  try {
+	    if ( rs.next() ) id = rs.getLong(1);
+	    else throw new SQLException( "Unable to access sequence generator" );
+	  } finally {
+	    rs.close();
+	  }
+	  ids.put( mappingKey( (String) mapping[0], tuple.getPFN(), handle ),
+		   Long.valueOf( id ) );
+	  ps.setLong( column++, id );
+	}
+	ps.setString( column++, (String) mapping[0] );
+	ps.setString( column++, tuple.getPFN() );
+	if ( handle == null ) ps.setNull( column, Types.VARCHAR );
+	else ps.setString( column, handle );
+	ps.addBatch();
+
+	lfns.add( (String) mapping[0] );
+	attributes = attributes ||
+	  tuple.getAttributeCount() > ( handle == null ? 0 : 1 );
+      }
+      result = updateCount( ps.executeBatch() );
+
+      if ( attributes ) {
+	if ( ids == null ) ids = insertedIds( lfns );
+	// not the singleton statement, as that is not used in batches
+	query = mCStatements[4];
+	ps = getStatement( query );
+	int count = 0;
+	for ( Object[] mapping : mappings ) {
+	  ReplicaCatalogEntry tuple = (ReplicaCatalogEntry) mapping[1];
+	  Long id = ids.get( mappingKey( (String) mapping[0], tuple.getPFN(),
+					 tuple.getResourceHandle() ) );
+	  if ( id == null )
+	    throw new SQLException( "Unable to determine the id of " + mapping[0] );
+
+	  for ( Iterator i=tuple.getAttributeIterator(); i.hasNext(); ) {
+	    String name = (String) i.next();
+	    if (name.equals(ReplicaCatalogEntry.RESOURCE_HANDLE)) {
+	      continue;
+	    }
+	    Object value = tuple.getAttribute(name);
+	    ps.setLong( 1, id.longValue() );
+	    ps.setString( 2, name );
+	    if ( value == null ) ps.setNull( 3, Types.VARCHAR );
+	    else ps.setString( 3, value instanceof String ?
+			       (String) value :
+			       value.toString() );
+	    ps.addBatch();
+	    count++;
+	  }
+	}
+	if ( count > 0 ) ps.executeBatch();
+      }
+
+      mConnection.commit();
+    } catch ( SQLException e ) {
+      try {
+	mConnection.rollback();
+      } catch ( SQLException e2 ) {
+	// ignore rollback problems
+      }
+      throw new RuntimeException( "Unable to tell database " +
+				  query + ": " + e.getMessage() );
+    } finally {
+      // restore original auto-commit state
+      try {
+	if ( autoCommitWasOn ) mConnection.setAutoCommit(true);
+      } catch ( SQLException e ) {
+	// ignore
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Looks up the ids of the mappings for the LFNs passed, in chunks.
+   *
+   * @param lfns the LFNs.
+   * @return a map from the key of a mapping to its id.
+   * @see #mappingKey( String, String, String )
+   */
+  private Map<String,Long> insertedIds( Set<String> lfns )
+    throws SQLException
+  {
+    Map<String,Long> result = new HashMap<String,Long>();
+    int n = lookupBatchSize( lfns.size() );
+    StringBuilder q = new StringBuilder( 64 + 2 * n );
+    q.append( "SELECT id,lfn,pfn,site FROM rc_lfn WHERE lfn IN " );
+    String query = appendParameters( q, n ).toString();
+    PreparedStatement ps = getStatement( query );
+
+    String[] chunk = new String[ n ];
+    for ( Iterator<String> i = lfns.iterator(); i.hasNext(); ) {
+      int count = 0;
+      while ( count < n && i.hasNext() ) chunk[ count++ ] = i.next();
+      for ( int j = 0; j < n; ++j ) {
+	ps.setString( j + 1, chunk[ j < count ? j : count - 1 ] );
+      }
+      ResultSet rs = ps.executeQuery();
+      while ( rs.next() ) {
+	result.put( mappingKey( rs.getString(2), rs.getString(3), rs.getString(4) ),
+		    Long.valueOf( rs.getLong(1) ) );
+      }
+      rs.close();
+    }
+    return result;
+  }
+
+  /**
+   * Sums up the update counts of a batch execution. Statements that
+   * succeeded without an update count are counted as one update.
+   *
+   * @param counts the update counts.
+   * @return the number of updates.
+   */
+  private int updateCount( int[] counts )
+  {
+    int result = 0;
+    for ( int i = 0; i < counts.length; ++i ) {
+      if ( counts[i] > 0 ) result += counts[i];
+      else if ( counts[i] == Statement.SUCCESS_NO_INFO ) result++;
+    }
+    return result;
+  }
+
   /**
    * Deletes multiple mappings into the replica catalog. The input is a
    * map indexed by the LFN. The value for each LFN key is a collection
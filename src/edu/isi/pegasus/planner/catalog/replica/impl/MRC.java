@@ -25,6 +25,7 @@ import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 
 import edu.isi.pegasus.common.util.CommonProperties;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Iterator;
@@ -34,6 +35,16 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.Collection;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -76,6 +87,22 @@ import java.util.Properties;
  * In the above example, lrc1, lrc2 are any valid identifier names and url is
  * the property key that needed to be specified.
  *
+ * <p>
+ * The bulk lookups are sent to all the catalogs at the same time, and the
+ * results are merged as they come in, in the order of the catalog names.
+ * Two optional properties can be specified for each catalog
+ * <pre>
+ * pegasus.catalog.replica.mrc.[value].timeout        the time in seconds to
+ *                                                    wait for the catalog, after
+ *                                                    which its results are ignored
+ * pegasus.catalog.replica.mrc.[value].authoritative  whether the locations from
+ *                                                    the catalog are complete
+ * </pre>
+ * For a LFN found in an authoritative catalog, the first authoritative
+ * catalog to answer wins, and the locations from all the other catalogs are
+ * ignored. If all the LFNs looked up are found in authoritative catalogs,
+ * the lookup returns without waiting for the remaining catalogs.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
@@ -94,11 +121,35 @@ public class MRC
      */
     public static final String TYPE_KEY = "type";
 
+    /**
+     * The property key that designates the timeout in seconds for a catalog.
+     */
+    public static final String TIMEOUT_KEY = "timeout";
+
+    /**
+     * The property key that designates a catalog as authoritative.
+     */
+    public static final String AUTHORITATIVE_KEY = "authoritative";
+
     /**
      * The list of replica catalogs that need to be queried for.
      */
     protected List mRCList;
 
+    /**
+     * The catalogs with their settings and statistics, in the same order as
+     * the list of replica catalogs.
+     */
+    protected List<Backend> mBackends;
+
+    /**
+     * The threads the catalogs are queried with. Created on the first bulk
+     * lookup against more than one catalog. The pool grows as needed, as a
+     * thread stays with a catalog that does not return from a lookup that
+     * timed out.
+     */
+    private ExecutorService mExecutor;
+
     /**
      * The handle to the logging manager.
      */
@@ -109,6 +160,8 @@ public class MRC
      */
     public MRC() {
         mRCList = new LinkedList();
+        mBackends = new ArrayList<Backend>();
+        mExecutor = null;
         mLogger =  LogManagerFactory.loadSingletonInstance();
     }
 
@@ -137,6 +190,10 @@ public class MRC
             ReplicaCatalog catalog = ( ReplicaCatalog )it.next();
             catalog.close();
         }
+        if( mExecutor != null ){
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
     }
 
     /**
@@ -154,7 +211,8 @@ public class MRC
         mLogger.log( "MRC Properties are " + subset , LogManager.DEBUG_MESSAGE_LEVEL );
 
         //container for properties for each of the different catalogs
-        Map propertiesMap = new HashMap();
+        //sorted by name, the order in which the results are merged
+        Map propertiesMap = new TreeMap();
 
         //put each of the keys in the correct bin
         for( Iterator it = subset.entrySet().iterator(); it.hasNext(); ){
@@ -221,6 +279,22 @@ public class MRC
             return false;
         }
 
+        //the settings for MRC are not passed to the catalog
+        long timeout = 0;
+        String value = (String)properties.remove( MRC.TIMEOUT_KEY );
+        if( value != null ){
+            try{
+                timeout = (long)( Double.parseDouble( value ) * 1000 );
+            }
+            catch( NumberFormatException e ){
+                mLogger.log( "Invalid timeout " + value + " for replica catalog of name " + name,
+                             LogManager.ERROR_MESSAGE_LEVEL );
+                return false;
+            }
+        }
+        boolean authoritative = edu.isi.pegasus.common.util.Boolean.parse(
+                                    (String)properties.remove( MRC.AUTHORITATIVE_KEY ), false );
+
         //try and connect
         ReplicaCatalog catalog = null;
         try{
@@ -232,10 +306,33 @@ public class MRC
             return false;
         }
 
-        mRCList.add( catalog );
+        this.add( name, catalog, timeout, authoritative );
         return true;
     }
 
+    /**
+     * Adds a connected replica catalog to the catalogs queried.
+     *
+     * @param name           the name given by the user in the properties file.
+     * @param catalog        the connected catalog.
+     * @param timeout        the time in milliseconds to wait for the catalog
+     *                       in bulk lookups, 0 to wait till it answers.
+     * @param authoritative  whether the locations from the catalog are complete.
+     */
+    protected void add( String name, ReplicaCatalog catalog, long timeout, boolean authoritative ){
+        mRCList.add( catalog );
+        mBackends.add( new Backend( name, catalog, timeout, authoritative ) );
+    }
+
+    /**
+     * Returns the catalogs with their statistics for the bulk lookups.
+     *
+     * @return the catalogs
+     */
+    public List<Backend> getBackends(){
+        return mBackends;
+    }
+
 
     /**
      * Returns an iterator to iterate through the list of ReplicaCatalogs that
@@ -540,29 +637,12 @@ public class MRC
      * @return a map indexed by the LFN. Each value is a collection of
      *   replica catalog entries (all attributes).
      */
-    public Map lookup( Set lfns, String handle ) {
-        Map result = new HashMap();
-
-        for( Iterator it = this.rcIterator(); it.hasNext() ; ){
-            ReplicaCatalog catalog = (ReplicaCatalog) it.next();
-            Map m = catalog.lookup(lfns, handle);
-
-            //merge all the entries in the map into the result
-            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
-                Map.Entry entry = (Map.Entry) mit.next();
-                //merge the entries into the main result
-                String lfn = (String) entry.getKey(); //the lfn
-                if ( result.containsKey( lfn ) ) {
-                    //right now no merging of RCE being done on basis
-                    //on them having same pfns. duplicate might occur.
-                    ( (Set) result.get( lfn )).addAll( (Set) entry.getValue());
-                }
-                else {
-                    result.put( lfn, entry.getValue() );
-                }
+    public Map lookup( final Set lfns, final String handle ) {
+        return this.lookupAll( lfns, new Query(){
+            public Map lookup( ReplicaCatalog catalog ){
+                return catalog.lookup( lfns, handle );
             }
-        }
-        return result;
+        });
     }
 
     /**
@@ -579,31 +659,12 @@ public class MRC
      * @return a map indexed by the LFN. Each value is a collection of
      *   replica catalog entries.
      */
-    public Map lookup( Map constraints ) {
-
-        Map result = new HashMap();
-
-        for( Iterator it = this.rcIterator(); it.hasNext() ; ){
-            ReplicaCatalog catalog = (ReplicaCatalog) it.next();
-            Map m = catalog.lookup( constraints );
-
-            //merge all the entries in the map into the result
-            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
-                Map.Entry entry = (Map.Entry) mit.next();
-                //merge the entries into the main result
-                String lfn = (String) entry.getKey(); //the lfn
-                if ( result.containsKey( lfn ) ) {
-                    //right now no merging of RCE being done on basis
-                    //on them having same pfns. duplicate might occur.
-                    ( (Set) result.get( lfn )).addAll( (Set) entry.getValue());
-                }
-                else {
-                    result.put( lfn, entry.getValue() );
-                }
+    public Map lookup( final Map constraints ) {
+        return this.lookupAll( null, new Query(){
+            public Map lookup( ReplicaCatalog catalog ){
+                return catalog.lookup( constraints );
             }
-        }
-        return result;
-
+        });
     }
 
     /**
@@ -615,31 +676,251 @@ public class MRC
      * @return a map indexed by the LFN. Each value is a collection of
      *   replica catalog entries for the LFN.
      */
-    public Map lookup( Set lfns ) {
+    public Map lookup( final Set lfns ) {
+        return this.lookupAll( lfns, new Query(){
+            public Map lookup( ReplicaCatalog catalog ){
+                return catalog.lookup( lfns );
+            }
+        });
+    }
 
+    /**
+     * Sends a bulk lookup to all the catalogs at the same time, and merges
+     * the results as they come in. The results from the catalogs that are
+     * not authoritative are merged in the order of the catalogs. Catalogs
+     * that do not answer within their timeout are ignored.
+     *
+     * @param lfns   the LFNs looked up, or null if the lookup is not for a
+     *               set of LFNs.
+     * @param query  the lookup to send to each catalog.
+     *
+     * @return the merged map indexed by the LFN.
+     */
+    protected Map lookupAll( Set lfns, final Query query ){
         Map result = new HashMap();
+        //the lfns found in an authoritative catalog
+        Set answered = new HashSet();
+        int n = mBackends.size();
 
-        for( Iterator it = this.rcIterator(); it.hasNext() ; ){
-            ReplicaCatalog catalog = (ReplicaCatalog) it.next();
-            Map m = catalog.lookup( lfns );
+        if( n == 0 ){
+            return result;
+        }
+        if( n == 1 ){
+            //nothing to do concurrently. the timeout only applies when
+            //there are other catalogs to fall back on
+            Backend backend = mBackends.get( 0 );
+            long start = System.currentTimeMillis();
+            Map m = query.lookup( backend.mCatalog );
+            backend.record( m, System.currentTimeMillis() - start );
+            this.merge( result, m, backend.isAuthoritative(), answered );
+            return result;
+        }
 
-            //merge all the entries in the map into the result
-            for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
-                Map.Entry entry = (Map.Entry) mit.next();
-                //merge the entries into the main result
-                String lfn = (String) entry.getKey(); //the lfn
-                if ( result.containsKey( lfn ) ) {
-                    //right now no merging of RCE being done on basis
-                    //on them having same pfns. duplicate might occur.
-                    ( (Collection)result.get( lfn )).addAll( (Collection) entry.getValue());
+        CompletionService<Map> service = new ExecutorCompletionService<Map>( this.getExecutor() );
+        Map<Future<Map>,Integer> indices = new HashMap<Future<Map>,Integer>();
+        List<Future<Map>> futures = new ArrayList<Future<Map>>( n );
+        long[] start    = new long[ n ];
+        long[] deadline = new long[ n ];
+        boolean[] done  = new boolean[ n ];
+        Map[] results   = new Map[ n ];
+        for( int i = 0; i < n; i++ ){
+            final Backend backend = mBackends.get( i );
+            start[ i ] = System.currentTimeMillis();
+            long timeout = backend.getTimeout();
+            deadline[ i ] = ( timeout > 0 ) ? start[ i ] + timeout : Long.MAX_VALUE;
+            if( backend.isQuerying() ){
+                mLogger.log( "Replica catalog " + backend.getName() +
+                             " is still answering a previous lookup. Waiting for it",
+                             LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+            Future<Map> future = service.submit( new Callable<Map>(){
+                public Map call() throws InterruptedException{
+                    //a lookup cancelled on a timeout may still be running,
+                    //if the catalog does not respond to the interrupt
+                    backend.startQuery();
+                    try{
+                        return query.lookup( backend.mCatalog );
+                    }
+                    finally{
+                        backend.endQuery();
+                    }
+                }
+            });
+            futures.add( future );
+            indices.put( future, i );
+        }
+
+        int outstanding = n;
+        int next = 0;
+        try{
+            while( outstanding > 0 ){
+                //ignore the catalogs that have timed out
+                long now  = System.currentTimeMillis();
+                long wait = Long.MAX_VALUE;
+                for( int i = 0; i < n; i++ ){
+                    if( done[ i ] ){
+                        continue;
+                    }
+                    if( deadline[ i ] <= now ){
+                        done[ i ] = true;
+                        outstanding--;
+                        futures.get( i ).cancel( true );
+                        mBackends.get( i ).recordTimeout( now - start[ i ] );
+                        mLogger.log( "Replica catalog " + mBackends.get( i ).getName() +
+                                     " did not answer within " + mBackends.get( i ).getTimeout() + " ms. Ignoring its results",
+                                     LogManager.WARNING_MESSAGE_LEVEL );
+                    }
+                    else{
+                        wait = Math.min( wait, deadline[ i ] - now );
+                    }
+                }
+                if( outstanding == 0 ){
+                    break;
+                }
+
+                Future<Map> future = ( wait == Long.MAX_VALUE ) ?
+                                     service.take() :
+                                     service.poll( wait, TimeUnit.MILLISECONDS );
+                if( future == null ){
+                    continue;
+                }
+                int i = indices.get( future );
+                if( done[ i ] ){
+                    //cancelled on timeout
+                    continue;
+                }
+                done[ i ] = true;
+                outstanding--;
+
+                Backend backend = mBackends.get( i );
+                Map m = this.get( future, backend );
+                backend.record( m, System.currentTimeMillis() - start[ i ] );
+                if( backend.isAuthoritative() ){
+                    //first authoritative answer wins
+                    this.merge( result, m, true, answered );
                 }
-                else {
-                    result.put( lfn, entry.getValue() );
+                else{
+                    results[ i ] = m;
+                }
+
+                //merge the other results in the order of the catalogs
+                for( ; next < n && done[ next ]; next++ ){
+                    if( results[ next ] != null ){
+                        this.merge( result, results[ next ], false, answered );
+                        results[ next ] = null;
+                    }
+                }
+
+                if( lfns != null && answered.size() == lfns.size() && answered.containsAll( lfns ) ){
+                    //nothing the remaining catalogs return can be used
+                    break;
                 }
             }
         }
+        catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new ReplicaCatalogException( "Interrupted while querying the replica catalogs" );
+        }
+        finally{
+            for( int i = 0; i < n; i++ ){
+                if( !done[ i ] ){
+                    futures.get( i ).cancel( true );
+                }
+            }
+        }
+
+        for( ; next < n; next++ ){
+            if( results[ next ] != null ){
+                this.merge( result, results[ next ], false, answered );
+            }
+        }
         return result;
+    }
+
+    /**
+     * Returns the result of a lookup against a catalog, rethrowing the
+     * exception thrown by the catalog.
+     *
+     * @param future   the future for the lookup
+     * @param backend  the catalog
+     *
+     * @return the result of the lookup
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private Map get( Future<Map> future, Backend backend ) throws InterruptedException{
+        try{
+            return future.get();
+        }
+        catch( ExecutionException e ){
+            Throwable cause = e.getCause();
+            if( cause instanceof RuntimeException ){
+                throw (RuntimeException)cause;
+            }
+            throw new ReplicaCatalogException( "Unable to query replica catalog " + backend.getName(), cause );
+        }
+    }
 
+    /**
+     * Merges the result of a lookup against a catalog into the result.
+     *
+     * @param result         the result merged into.
+     * @param m              the result from the catalog.
+     * @param authoritative  whether the catalog is authoritative.
+     * @param answered       the LFNs found in an authoritative catalog, that
+     *                       are not merged any further.
+     */
+    private void merge( Map result, Map m, boolean authoritative, Set answered ){
+        if( m == null ){
+            return;
+        }
+        for (Iterator mit = m.entrySet().iterator(); mit.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) mit.next();
+            //merge the entries into the main result
+            String lfn = (String) entry.getKey(); //the lfn
+            Collection c = (Collection) entry.getValue();
+            if( answered.contains( lfn ) ){
+                continue;
+            }
+            if( authoritative && c != null && !c.isEmpty() ){
+                //the locations from the other catalogs are ignored
+                result.put( lfn, c );
+                answered.add( lfn );
+            }
+            else if ( result.containsKey( lfn ) ) {
+                //right now no merging of RCE being done on basis
+                //on them having same pfns. duplicate might occur.
+                if( c != null ){
+                    ( (Collection)result.get( lfn )).addAll( c );
+                }
+            }
+            else {
+                result.put( lfn, ( c == null ) ? new LinkedList() : c );
+            }
+        }
+    }
+
+    /**
+     * Returns the threads to query the catalogs with. Idle threads are
+     * reused, and new ones are created when the threads are busy with
+     * lookups that timed out.
+     *
+     * @return the executor
+     */
+    private synchronized ExecutorService getExecutor(){
+        if( mExecutor == null ){
+            mExecutor = Executors.newCachedThreadPool( new ThreadFactory(){
+                private int mCount = 0;
+
+                public synchronized Thread newThread( Runnable r ){
+                    Thread t = new Thread( r, "mrc-lookup-" + mCount++ );
+                    //do not hold up the planner from exiting
+                    t.setDaemon( true );
+                    return t;
+                }
+            });
+        }
+        return mExecutor;
     }
 
     /**
@@ -688,7 +969,7 @@ public class MRC
 
         for( Iterator it = this.rcIterator(); it.hasNext() ; ){
             ReplicaCatalog catalog = (ReplicaCatalog) it.next();
-            Map m = this.lookupNoAttributes( lfns, handle );
+            Map m = catalog.lookupNoAttributes( lfns, handle );
 
             //merge the map into the result
             for( Iterator mit = m.entrySet().iterator(); mit.hasNext(); ){
@@ -780,4 +1061,167 @@ public class MRC
         return result;
 
     }
+    /**
+     * A lookup sent to each of the catalogs.
+     */
+    protected interface Query {
+
+        /**
+         * Looks up the catalog.
+         *
+         * @param catalog  the catalog
+         *
+         * @return a map indexed by the LFN.
+         */
+        public Map lookup( ReplicaCatalog catalog );
+    }
+
+    /**
+     * A catalog queried by MRC, with its settings and the statistics for the
+     * bulk lookups against it.
+     */
+    public static class Backend {
+
+        /**
+         * The name given by the user in the properties file.
+         */
+        private final String mName;
+
+        /**
+         * The catalog.
+         */
+        private final ReplicaCatalog mCatalog;
+
+        /**
+         * The timeout in milliseconds, 0 for none.
+         */
+        private final long mTimeout;
+
+        /**
+         * Whether the locations from the catalog are complete.
+         */
+        private final boolean mAuthoritative;
+
+        /**
+         * The number of bulk lookups answered.
+         */
+        private int mLookups;
+
+        /**
+         * The number of LFNs found across the lookups.
+         */
+        private int mHits;
+
+        /**
+         * The number of bulk lookups that timed out.
+         */
+        private int mTimeouts;
+
+        /**
+         * The time in milliseconds spent in the lookups.
+         */
+        private long mTime;
+
+        /**
+         * Whether a lookup is running against the catalog. Lookups that
+         * timed out are cancelled, but run till the catalog returns if it
+         * does not respond to the interrupt.
+         */
+        private boolean mQuerying;
+
+        public Backend( String name, ReplicaCatalog catalog, long timeout, boolean authoritative ){
+            mName          = name;
+            mCatalog       = catalog;
+            mTimeout       = timeout;
+            mAuthoritative = authoritative;
+        }
+
+        /**
+         * Records a lookup answered by the catalog.
+         *
+         * @param result  the result of the lookup
+         * @param time    the time taken in milliseconds
+         */
+        synchronized void record( Map result, long time ){
+            mLookups++;
+            mTime += time;
+            if( result != null ){
+                for( Iterator it = result.values().iterator(); it.hasNext(); ){
+                    Collection c = (Collection)it.next();
+                    if( c != null && !c.isEmpty() ){
+                        mHits++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for the lookup running against the catalog to finish, so
+         * that the catalog is queried by one thread at a time.
+         *
+         * @throws InterruptedException if the lookup is cancelled while
+         *         waiting
+         */
+        synchronized void startQuery() throws InterruptedException{
+            while( mQuerying ){
+                wait();
+            }
+            mQuerying = true;
+        }
+
+        /**
+         * Marks the lookup running against the catalog as finished.
+         */
+        synchronized void endQuery(){
+            mQuerying = false;
+            notifyAll();
+        }
+
+        /**
+         * Returns whether a lookup is running against the catalog.
+         *
+         * @return boolean
+         */
+        synchronized boolean isQuerying(){
+            return mQuerying;
+        }
+
+        /**
+         * Records a lookup that timed out.
+         *
+         * @param time  the time waited in milliseconds
+         */
+        synchronized void recordTimeout( long time ){
+            mTimeouts++;
+            mTime += time;
+        }
+
+        public String getName(){
+            return mName;
+        }
+
+        public long getTimeout(){
+            return mTimeout;
+        }
+
+        public boolean isAuthoritative(){
+            return mAuthoritative;
+        }
+
+        public synchronized int getLookups(){
+            return mLookups;
+        }
+
+        public synchronized int getHits(){
+            return mHits;
+        }
+
+        public synchronized int getTimeouts(){
+            return mTimeouts;
+        }
+
+        public synchronized long getTime(){
+            return mTime;
+        }
+    }
 }
@@ -0,0 +1,829 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A persistent, memory mapped lookup index over the contents of a file based
+ * replica catalog. The index is built once from the SimpleFile or Regex
+ * replica catalog, and written out to an index directory. Later planner
+ * invocations referring to the same replica catalog, like the ones for the
+ * sub workflows of a hierarchical workflow, map the index instead of parsing
+ * the replica catalog again.
+ *
+ * An index is rebuilt when the modification time or size of the replica
+ * catalog file changes, or optionally when the MD5 hash of its contents
+ * changes. The least recently used indices are removed from the index
+ * directory, when there are more indices than the maximum number configured.
+ *
+ * The LFNs are sorted by their UTF-8 encoding, and looked up by a binary
+ * search over a table of offsets. The regular expression entries of a Regex
+ * replica catalog are kept in the order they appear in the catalog, and are
+ * matched the same way as in the Regex replica catalog.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class MappedReplicaIndex {
+
+    /**
+     * The prefix for the index files.
+     */
+    public static final String INDEX_FILE_PREFIX = "rc-";
+
+    /**
+     * The suffix for the index files.
+     */
+    public static final String INDEX_FILE_SUFFIX = ".index";
+
+    /**
+     * The magic number at the start and end of an index file.
+     */
+    private static final int MAGIC = 0x50524349;
+
+    /**
+     * The version of the index format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The size of the trailer at the end of an index file.
+     */
+    private static final int TRAILER_SIZE = 8 + 4 + 8 + 4;
+
+    /**
+     * The charset used for encoding the strings.
+     */
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * Orders the records by their encoded LFNs as unsigned bytes.
+     */
+    private static final Comparator<Record> RECORD_COMPARATOR = new Comparator<Record>(){
+        public int compare( Record a, Record b ){
+            int n = Math.min( a.mLFN.length, b.mLFN.length );
+            for( int i = 0; i < n; i++ ){
+                int x = a.mLFN[ i ] & 0xFF;
+                int y = b.mLFN[ i ] & 0xFF;
+                if( x != y ){
+                    return x - y;
+                }
+            }
+            return a.mLFN.length - b.mLFN.length;
+        }
+    };
+
+    /**
+     * The index file.
+     */
+    private File mFile;
+
+    /**
+     * The fully qualified name of the replica catalog implementation indexed.
+     */
+    private String mImplementor;
+
+    /**
+     * The mapped contents of the index file.
+     */
+    private MappedByteBuffer mBuffer;
+
+    /**
+     * The number of LFNs in the index, not counting the regular expressions.
+     */
+    private int mCount;
+
+    /**
+     * The offset of the table of offsets of the LFN records.
+     */
+    private int mTableOffset;
+
+    /**
+     * The index over the regular expression LFNs.
+     */
+    private RegexIndex mRegexIndex;
+
+    /**
+     * The entries for the regular expression LFNs.
+     */
+    private Map<String,List<ReplicaCatalogEntry>> mRegexEntries;
+
+    /**
+     * The number of LFNs looked up that had locations in the index.
+     */
+    private int mHits;
+
+    /**
+     * The number of LFNs looked up that had no locations in the index.
+     */
+    private int mMisses;
+
+    /**
+     * Returns whether the replica catalog configured in the properties can
+     * be indexed. Only file based replica catalogs can be indexed.
+     *
+     * @param props  the properties
+     *
+     * @return boolean
+     */
+    public static boolean canIndex( PegasusProperties props ){
+        String implementor = getImplementor( props );
+        return ( implementor != null &&
+                 ( implementor.equals( SimpleFile.class.getName() ) ||
+                   implementor.equals( Regex.class.getName() ) ) &&
+                 props.getProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_FILE_PROPERTY ) != null );
+    }
+
+    /**
+     * Loads the index for the replica catalog configured in the properties
+     * from the directory passed. The index is built from the replica catalog
+     * if it does not exist, or is stale.
+     *
+     * @param props      the properties to connect to the replica catalog
+     * @param directory  the index directory
+     * @param hash       whether to validate the index against the MD5 hash of
+     *                   the replica catalog file, instead of its modification
+     *                   time and size.
+     * @param maxFiles   the maximum number of indices to keep in the directory
+     * @param logger     the logger
+     *
+     * @return the index
+     *
+     * @throws IOException in case of error while building or reading the index
+     */
+    public static MappedReplicaIndex load( PegasusProperties props,
+                                           File directory,
+                                           boolean hash,
+                                           int maxFiles,
+                                           LogManager logger ) throws IOException{
+        if( !canIndex( props ) ){
+            throw new IOException( "Replica catalog " + props.getReplicaMode() + " cannot be indexed" );
+        }
+        String implementor = getImplementor( props );
+        File source = new File( props.getProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_FILE_PROPERTY ) ).getAbsoluteFile();
+        String signature = implementor + "#" + source.getPath();
+        File file = new File( directory, INDEX_FILE_PREFIX + md5( signature.getBytes( UTF8 ) ) + INDEX_FILE_SUFFIX );
+
+        //determine the state of the replica catalog file before reading it
+        long length   = source.exists() ? source.length() : -1;
+        long modified = source.lastModified();
+        String digest = hash ? md5( source ) : null;
+
+        if( file.exists() ){
+            try{
+                MappedReplicaIndex index = new MappedReplicaIndex( file, implementor );
+                if( index.isValid( signature, length, modified, digest ) ){
+                    file.setLastModified( System.currentTimeMillis() );
+                    logger.log( "Using replica catalog index " + file + " for " + source,
+                                LogManager.DEBUG_MESSAGE_LEVEL );
+                    return index;
+                }
+                index.close();
+                logger.log( "Replica catalog index " + file + " is stale for " + source,
+                            LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+            catch( IOException e ){
+                logger.log( "Ignoring unreadable replica catalog index " + file, e,
+                            LogManager.WARNING_MESSAGE_LEVEL );
+            }
+        }
+
+        //build the index from the replica catalog
+        long start = System.currentTimeMillis();
+        ReplicaCatalog catalog = null;
+        Map<String,Collection<ReplicaCatalogEntry>> exact;
+        Map<String,Collection<ReplicaCatalogEntry>> regex;
+        int lfns, expressions;
+        try{
+            catalog = ReplicaFactory.loadInstance( props );
+        }
+        catch( Exception e ){
+            throw new IOException( "Unable to load the replica catalog to index " + source, e );
+        }
+        try{
+            if( catalog instanceof Regex ){
+                //the regular expressions need to retain their order
+                exact = ((Regex)catalog).getExactEntries();
+                regex = ((Regex)catalog).getRegexEntries();
+            }
+            else{
+                exact = catalog.lookup( new HashMap() );
+                regex = new HashMap<String,Collection<ReplicaCatalogEntry>>();
+            }
+            //the maps are cleared when the catalog is closed
+            lfns        = exact.size();
+            expressions = regex.size();
+
+            if( !directory.isDirectory() && !directory.mkdirs() ){
+                throw new IOException( "Unable to create replica catalog index directory " + directory );
+            }
+            File temp = File.createTempFile( INDEX_FILE_PREFIX, ".tmp", directory );
+            try{
+                write( temp, signature, length, modified, digest, exact, regex );
+                if( !temp.renameTo( file ) ){
+                    throw new IOException( "Unable to rename " + temp + " to " + file );
+                }
+            }
+            finally{
+                temp.delete();
+            }
+        }
+        finally{
+            catalog.close();
+        }
+        logger.log( "Built replica catalog index " + file + " for " + source + " with " +
+                    lfns + " LFNs and " + expressions + " regular expressions in " +
+                    ( System.currentTimeMillis() - start ) + " ms",
+                    LogManager.DEBUG_MESSAGE_LEVEL );
+
+        evict( directory, file, maxFiles, logger );
+        return new MappedReplicaIndex( file, implementor );
+    }
+
+    /**
+     * The overloaded constructor. Maps the index file and loads the regular
+     * expression entries.
+     *
+     * @param file         the index file
+     * @param implementor  the replica catalog implementation indexed
+     *
+     * @throws IOException in case of error while reading the index
+     */
+    private MappedReplicaIndex( File file, String implementor ) throws IOException{
+        mFile = file;
+        mImplementor = implementor;
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try{
+            long size = raf.length();
+            if( size > Integer.MAX_VALUE || size < 8 + TRAILER_SIZE ){
+                throw new IOException( "Invalid size " + size + " of replica catalog index " + file );
+            }
+            //the mapping remains valid after the file is closed
+            mBuffer = raf.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, size );
+        }
+        finally{
+            raf.close();
+        }
+
+        int trailer = mBuffer.capacity() - TRAILER_SIZE;
+        if( mBuffer.getInt( 0 ) != MAGIC || mBuffer.getInt( trailer + TRAILER_SIZE - 4 ) != MAGIC ){
+            throw new IOException( "Not a replica catalog index or incomplete " + file );
+        }
+        if( mBuffer.getInt( 4 ) != FORMAT_VERSION ){
+            throw new IOException( "Unsupported version " + mBuffer.getInt( 4 ) + " of replica catalog index " + file );
+        }
+        mTableOffset = (int)mBuffer.getLong( trailer );
+        mCount = mBuffer.getInt( trailer + 8 );
+        int regexOffset = (int)mBuffer.getLong( trailer + 12 );
+
+        mRegexIndex = new RegexIndex();
+        mRegexEntries = new HashMap<String,List<ReplicaCatalogEntry>>();
+        ByteBuffer in = mBuffer.duplicate();
+        in.position( regexOffset );
+        for( int i = in.getInt(); i > 0; i-- ){
+            String lfn = readString( in );
+            mRegexEntries.put( lfn, readEntries( in ) );
+            mRegexIndex.add( lfn, Pattern.compile( lfn ) );
+        }
+    }
+
+    /**
+     * Returns whether the index was built from the same replica catalog in
+     * the same state.
+     *
+     * @param signature  the signature of the replica catalog
+     * @param length     the length of the replica catalog file
+     * @param modified   the modification time of the replica catalog file
+     * @param digest     the MD5 hash of the replica catalog file, null if the
+     *                   index is to be validated by length and modification time
+     *
+     * @return boolean
+     */
+    private boolean isValid( String signature, long length, long modified, String digest ){
+        ByteBuffer in = mBuffer.duplicate();
+        in.position( 8 );
+        if( !signature.equals( readString( in ) ) ){
+            return false;
+        }
+        long indexedLength = in.getLong();
+        long indexedModified = in.getLong();
+        String indexedDigest = readString( in );
+        return ( digest == null )?
+               indexedLength == length && indexedModified == modified:
+               digest.equals( indexedDigest );
+    }
+
+    /**
+     * Returns whether the index is over the replica catalog implementation
+     * passed.
+     *
+     * @param implementation  the replica catalog implementation
+     *
+     * @return boolean
+     */
+    public boolean isIndexOf( Class implementation ){
+        return mImplementor.equals( implementation.getName() );
+    }
+
+    /**
+     * Returns the index file.
+     *
+     * @return the file
+     */
+    public File getFile(){
+        return mFile;
+    }
+
+    /**
+     * Looks up the locations for a LFN, the same way as the replica catalog
+     * indexed does.
+     *
+     * @param lfn  the LFN
+     *
+     * @return the replica catalog entries, an empty collection if none exist
+     */
+    public Collection<ReplicaCatalogEntry> lookup( String lfn ){
+        List<ReplicaCatalogEntry> result = new ArrayList<ReplicaCatalogEntry>();
+
+        int offset = find( lfn.getBytes( UTF8 ) );
+        if( offset >= 0 ){
+            ByteBuffer in = mBuffer.duplicate();
+            in.position( offset );
+            readString( in );
+            result.addAll( readEntries( in ) );
+        }
+
+        for( RegexIndex.Rule rule : mRegexIndex.candidates( lfn ) ){
+            Matcher m = rule.match( lfn );
+            if( m != null ){
+                for( ReplicaCatalogEntry entry : mRegexEntries.get( rule.m_regex ) ){
+                    ReplicaCatalogEntry rce = new ReplicaCatalogEntry( rule.substitute( entry.getPFN(), m ) );
+                    for( Iterator it = entry.getAttributeIterator(); it.hasNext(); ){
+                        String key = (String)it.next();
+                        rce.addAttribute( key, entry.getAttribute( key ) );
+                    }
+                    result.add( rce );
+                }
+                break;
+            }
+        }
+
+        if( result.isEmpty() ){
+            mMisses++;
+        }
+        else{
+            mHits++;
+        }
+        return result;
+    }
+
+    /**
+     * Looks up the locations for a set of LFNs.
+     *
+     * @param lfns  the LFNs
+     *
+     * @return a map indexed by LFN, with a possibly empty collection of
+     *         replica catalog entries for each LFN.
+     */
+    public Map<String,Collection<ReplicaCatalogEntry>> lookup( Set<String> lfns ){
+        Map<String,Collection<ReplicaCatalogEntry>> result = new HashMap<String,Collection<ReplicaCatalogEntry>>();
+        for( String lfn : lfns ){
+            result.put( lfn, lookup( lfn ) );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of LFNs looked up that had locations in the index.
+     *
+     * @return the number of hits
+     */
+    public int getHits(){
+        return mHits;
+    }
+
+    /**
+     * Returns the number of LFNs looked up that had no locations in the index.
+     *
+     * @return the number of misses
+     */
+    public int getMisses(){
+        return mMisses;
+    }
+
+    /**
+     * Releases the index.
+     */
+    public void close(){
+        mBuffer = null;
+        mRegexIndex = null;
+        mRegexEntries = null;
+    }
+
+    /**
+     * Does a binary search for an encoded LFN in the table of offsets.
+     *
+     * @param key  the UTF-8 encoded LFN
+     *
+     * @return the offset of the record for the LFN, else -1
+     */
+    private int find( byte[] key ){
+        int low = 0;
+        int high = mCount - 1;
+        while( low <= high ){
+            int mid = ( low + high ) >>> 1;
+            int offset = (int)mBuffer.getLong( mTableOffset + 8 * mid );
+            int cmp = compare( key, mBuffer, offset );
+            if( cmp > 0 ){
+                low = mid + 1;
+            }
+            else if( cmp < 0 ){
+                high = mid - 1;
+            }
+            else{
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares an encoded LFN with the LFN written out at an offset, as
+     * unsigned bytes.
+     *
+     * @param key     the encoded LFN
+     * @param buffer  the buffer
+     * @param offset  the offset of the length prefixed LFN in the buffer
+     *
+     * @return the comparison of the key to the LFN in the buffer
+     */
+    private static int compare( byte[] key, ByteBuffer buffer, int offset ){
+        int length = buffer.getInt( offset );
+        int n = Math.min( key.length, length );
+        for( int i = 0; i < n; i++ ){
+            int a = key[ i ] & 0xFF;
+            int b = buffer.get( offset + 4 + i ) & 0xFF;
+            if( a != b ){
+                return a - b;
+            }
+        }
+        return key.length - length;
+    }
+
+    /**
+     * Writes out an index file.
+     *
+     * @param file       the file to write to
+     * @param signature  the signature of the replica catalog
+     * @param length     the length of the replica catalog file
+     * @param modified   the modification time of the replica catalog file
+     * @param digest     the MD5 hash of the replica catalog file, can be null
+     * @param exact      the entries for the LFNs
+     * @param regex      the entries for the regular expressions, in order
+     *
+     * @throws IOException in case of error while writing
+     */
+    private static void write( File file, String signature, long length, long modified, String digest,
+                               Map<String,Collection<ReplicaCatalogEntry>> exact,
+                               Map<String,Collection<ReplicaCatalogEntry>> regex ) throws IOException{
+        Record[] records = new Record[ exact.size() ];
+        int i = 0;
+        for( Map.Entry<String,Collection<ReplicaCatalogEntry>> entry : exact.entrySet() ){
+            records[ i++ ] = new Record( entry.getKey().getBytes( UTF8 ), entry.getValue() );
+        }
+        Arrays.sort( records, RECORD_COMPARATOR );
+
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ) );
+        try{
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            writeString( out, signature );
+            out.writeLong( length );
+            out.writeLong( modified );
+            writeString( out, digest );
+
+            long[] offsets = new long[ records.length ];
+            for( i = 0; i < records.length; i++ ){
+                offsets[ i ] = out.size();
+                out.writeInt( records[ i ].mLFN.length );
+                out.write( records[ i ].mLFN );
+                writeEntries( out, records[ i ].mEntries );
+                checkSize( out, file );
+            }
+
+            long tableOffset = out.size();
+            for( i = 0; i < offsets.length; i++ ){
+                out.writeLong( offsets[ i ] );
+            }
+
+            long regexOffset = out.size();
+            out.writeInt( regex.size() );
+            for( Map.Entry<String,Collection<ReplicaCatalogEntry>> entry : regex.entrySet() ){
+                writeString( out, entry.getKey() );
+                writeEntries( out, entry.getValue() );
+                checkSize( out, file );
+            }
+
+            out.writeLong( tableOffset );
+            out.writeInt( records.length );
+            out.writeLong( regexOffset );
+            out.writeInt( MAGIC );
+            checkSize( out, file );
+        }
+        finally{
+            out.close();
+        }
+    }
+
+    /**
+     * Throws an exception if the index file grows beyond what can be mapped.
+     *
+     * @param out   the stream
+     * @param file  the index file
+     */
+    private static void checkSize( DataOutputStream out, File file ) throws IOException{
+        //the size saturates at Integer.MAX_VALUE
+        if( out.size() == Integer.MAX_VALUE ){
+            throw new IOException( "Replica catalog index " + file + " exceeds 2GB" );
+        }
+    }
+
+    /**
+     * Writes out the replica catalog entries for a LFN.
+     *
+     * @param out      the stream
+     * @param entries  the entries
+     */
+    private static void writeEntries( DataOutputStream out, Collection<ReplicaCatalogEntry> entries ) throws IOException{
+        out.writeInt( entries.size() );
+        for( ReplicaCatalogEntry entry : entries ){
+            writeString( out, entry.getPFN() );
+            out.writeInt( entry.getAttributeCount() );
+            for( Iterator it = entry.getAttributeIterator(); it.hasNext(); ){
+                String key = (String)it.next();
+                Object value = entry.getAttribute( key );
+                writeString( out, key );
+                writeString( out, ( value == null )? null : value.toString() );
+            }
+        }
+    }
+
+    /**
+     * Reads in the replica catalog entries for a LFN.
+     *
+     * @param in  the buffer positioned at the entries
+     *
+     * @return the entries
+     */
+    private static List<ReplicaCatalogEntry> readEntries( ByteBuffer in ){
+        int count = in.getInt();
+        List<ReplicaCatalogEntry> result = new ArrayList<ReplicaCatalogEntry>( count );
+        for( int i = 0; i < count; i++ ){
+            ReplicaCatalogEntry rce = new ReplicaCatalogEntry( readString( in ) );
+            for( int j = in.getInt(); j > 0; j-- ){
+                String key = readString( in );
+                rce.addAttribute( key, readString( in ) );
+            }
+            result.add( rce );
+        }
+        return result;
+    }
+
+    /**
+     * Writes out a length prefixed UTF-8 string. A length of -1 indicates null.
+     *
+     * @param out    the stream
+     * @param value  the string
+     */
+    private static void writeString( DataOutputStream out, String value ) throws IOException{
+        if( value == null ){
+            out.writeInt( -1 );
+            return;
+        }
+        byte[] bytes = value.getBytes( UTF8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    /**
+     * Reads in a length prefixed UTF-8 string.
+     *
+     * @param in  the buffer
+     *
+     * @return the string
+     */
+    private static String readString( ByteBuffer in ){
+        int length = in.getInt();
+        if( length < 0 ){
+            return null;
+        }
+        byte[] bytes = new byte[ length ];
+        in.get( bytes );
+        return new String( bytes, UTF8 );
+    }
+
+    /**
+     * Removes the least recently used indices from the index directory, till
+     * the number of indices is within the maximum.
+     *
+     * @param directory  the index directory
+     * @param keep       the index not to be removed
+     * @param maxFiles   the maximum number of indices
+     * @param logger     the logger
+     */
+    private static void evict( File directory, File keep, int maxFiles, LogManager logger ){
+        File[] files = directory.listFiles();
+        if( files == null ){
+            return;
+        }
+        List<File> indices = new ArrayList<File>();
+        for( File f : files ){
+            String name = f.getName();
+            if( name.startsWith( INDEX_FILE_PREFIX ) && name.endsWith( INDEX_FILE_SUFFIX ) && !f.equals( keep ) ){
+                indices.add( f );
+            }
+        }
+        //account for the index being kept
+        int excess = indices.size() + 1 - maxFiles;
+        if( excess <= 0 ){
+            return;
+        }
+        File[] sorted = indices.toArray( new File[ indices.size() ] );
+        final Map<File,Long> times = new HashMap<File,Long>();
+        for( File f : sorted ){
+            times.put( f, f.lastModified() );
+        }
+        Arrays.sort( sorted, new Comparator<File>(){
+            public int compare( File a, File b ){
+                long x = times.get( a );
+                long y = times.get( b );
+                return ( x < y ) ? -1 : ( ( x == y ) ? 0 : 1 );
+            }
+        });
+        for( int i = 0; i < excess && i < sorted.length; i++ ){
+            if( sorted[ i ].delete() ){
+                logger.log( "Removed least recently used replica catalog index " + sorted[ i ],
+                            LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+        }
+    }
+
+    /**
+     * Returns the fully qualified name of the replica catalog implementation
+     * configured in the properties.
+     *
+     * @param props  the properties
+     *
+     * @return the class name, else null if not configured
+     */
+    static String getImplementor( PegasusProperties props ){
+        String implementor = props.getReplicaMode();
+        if( implementor == null ){
+            return null;
+        }
+        //File also means SimpleFile
+        if( implementor.equalsIgnoreCase( "File" ) ){
+            implementor = "SimpleFile";
+        }
+        return ( implementor.indexOf( '.' ) == -1 ) ?
+               ReplicaFactory.DEFAULT_PACKAGE + "." + implementor :
+               implementor;
+    }
+
+    /**
+     * Returns the MD5 hash of the contents of a file as a hex string.
+     *
+     * @param file  the file
+     *
+     * @return the hash, an empty string if the file does not exist
+     */
+    private static String md5( File file ) throws IOException{
+        if( !file.exists() ){
+            return "";
+        }
+        MessageDigest md = md5();
+        FileInputStream in = new FileInputStream( file );
+        try{
+            byte[] buffer = new byte[ 1 << 16 ];
+            int read;
+            while( ( read = in.read( buffer ) ) != -1 ){
+                md.update( buffer, 0, read );
+            }
+        }
+        finally{
+            in.close();
+        }
+        return toHex( md.digest() );
+    }
+
+    /**
+     * Returns the MD5 hash of the bytes as a hex string.
+     *
+     * @param bytes  the bytes
+     *
+     * @return the hash
+     */
+    static String md5( byte[] bytes ){
+        return toHex( md5().digest( bytes ) );
+    }
+
+    /**
+     * Returns a MD5 message digest.
+     *
+     * @return the message digest
+     */
+    private static MessageDigest md5(){
+        try{
+            return MessageDigest.getInstance( "MD5" );
+        }
+        catch( NoSuchAlgorithmException e ){
+            throw new RuntimeException( "MD5 message digest not available", e );
+        }
+    }
+
+    /**
+     * Converts bytes to a hex string.
+     *
+     * @param bytes  the bytes
+     *
+     * @return the hex string
+     */
+    private static String toHex( byte[] bytes ){
+        StringBuffer sb = new StringBuffer( bytes.length * 2 );
+        for( byte b : bytes ){
+            sb.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A LFN encoded as UTF-8, with its replica catalog entries.
+     */
+    private static class Record {
+
+        /**
+         * The encoded LFN.
+         */
+        private final byte[] mLFN;
+
+        /**
+         * The replica catalog entries.
+         */
+        private final Collection<ReplicaCatalogEntry> mEntries;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param lfn      the encoded LFN
+         * @param entries  the replica catalog entries
+         */
+        public Record( byte[] lfn, Collection<ReplicaCatalogEntry> entries ){
+            mLFN = lfn;
+            mEntries = entries;
+        }
+    }
+}
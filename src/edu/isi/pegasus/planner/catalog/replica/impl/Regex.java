@@ -105,6 +105,12 @@ public class Regex implements ReplicaCatalog {
 
     protected Map<String, Pattern> m_lfn_pattern = null;
 
+    /**
+     * Index over the regex LFNs, that narrows down the patterns to match a
+     * LFN against.
+     */
+    private RegexIndex m_index = null;
+
     /**
      * A boolean indicating whether the catalog is read only or not.
      */
@@ -122,6 +128,7 @@ public class Regex implements ReplicaCatalog {
         m_lfn = null;
         m_lfn_regex = null;
         m_lfn_pattern = null;
+        m_index = null;
         m_filename = null;
         m_readonly = false;
     }
@@ -322,6 +329,7 @@ public class Regex implements ReplicaCatalog {
         m_lfn = new LinkedHashMap<String, Collection<ReplicaCatalogEntry>>();
         m_lfn_regex = new LinkedHashMap<String, Collection<ReplicaCatalogEntry>>();
         m_lfn_pattern = new LinkedHashMap<String, Pattern>();
+        m_index = new RegexIndex();
         try {
             File f = new File(filename);
             if (f.exists()) {
@@ -338,6 +346,7 @@ public class Regex implements ReplicaCatalog {
             m_lfn = null;
             m_lfn_regex = null;
             m_lfn_pattern = null;
+            m_index = null;
             m_filename = null;
             throw new RuntimeException(ioe); // re-throw
         }
@@ -428,6 +437,7 @@ public class Regex implements ReplicaCatalog {
 
             m_lfn_regex = null;
             m_lfn_pattern = null;
+            m_index = null;
             m_filename = null;
             return;
         }
@@ -456,6 +466,7 @@ public class Regex implements ReplicaCatalog {
             }
             m_lfn_regex = null;
             m_lfn_pattern = null;
+            m_index = null;
             m_filename = null;
         }
     }
@@ -502,6 +513,27 @@ public class Regex implements ReplicaCatalog {
         return (m_lfn == null && m_lfn_regex == null);
     }
 
+    /**
+     * Returns the entries for the logical filenames that are not regular
+     * expressions, in the order they appear in the catalog.
+     *
+     * @return the map indexed by the lfn, null if the catalog is closed.
+     */
+    Map<String, Collection<ReplicaCatalogEntry>> getExactEntries() {
+        return m_lfn;
+    }
+
+    /**
+     * Returns the entries for the logical filenames that are regular
+     * expressions, in the order they appear in the catalog.
+     *
+     * @return the map indexed by the regular expression, null if the catalog
+     *         is closed.
+     */
+    Map<String, Collection<ReplicaCatalogEntry>> getRegexEntries() {
+        return m_lfn_regex;
+    }
+
     /**
      * Retrieves the entry for a given filename and site handle from the replica
      * catalog.
@@ -536,30 +568,19 @@ public class Regex implements ReplicaCatalog {
         }
 
         // Lookup regex LFN's
-        Pattern p = null;
         Matcher m = null;
         String pool = null;
         ReplicaCatalogEntry rce = null;
-        for (String l : m_lfn_regex.keySet()) {
-            p = m_lfn_pattern.get(l);
-            m = p.matcher(lfn);
-            if (m.matches()) {
-                Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(l);
+        for (RegexIndex.Rule rule : m_index.candidates(lfn)) {
+            m = rule.match(lfn);
+            if (m != null) {
+                Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(rule.m_regex);
                 for (ReplicaCatalogEntry entry : entries) {
                     pool = entry.getResourceHandle();
                     if (pool == null && handle == null || pool != null && handle != null && pool.equals(handle)) {
-                        String tmpPFN = entry.getPFN();
-                        for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                            // tmpPFN = tmpPFN.replaceAll ("\\$" + k, m.group (k));
-                            tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]",
-                                    m.group(k));
-                        }
-                        if (tmpPFN.indexOf('[') >= 0) {
-                            // PFN still has variables left.
-                        }
-                        // Add new RCE
+                        // Add new RCE with the substituted PFN
                         rce = cloneRCE(entry);
-                        rce.setPFN(tmpPFN);
+                        rce.setPFN(rule.substitute(entry.getPFN(), m));
                         c.add(rce);
                     }
                 }
@@ -586,29 +607,17 @@ public class Regex implements ReplicaCatalog {
             c.addAll(tmp);
         // Lookup regex LFN's
         ReplicaCatalogEntry rce = null;
-        Pattern p = null;
         Matcher m = null;
-        for (String l : m_lfn_regex.keySet()) {
-            p = m_lfn_pattern.get(l);
-            m = p.matcher(lfn);
-            if (m.matches()) {
-                Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(l);
-                Collection<ReplicaCatalogEntry> entriesResult = new ArrayList<ReplicaCatalogEntry>();
+        for (RegexIndex.Rule rule : m_index.candidates(lfn)) {
+            m = rule.match(lfn);
+            if (m != null) {
+                Collection<ReplicaCatalogEntry> entries = m_lfn_regex.get(rule.m_regex);
                 for (ReplicaCatalogEntry entry : entries) {
-                    String tmpPFN = entry.getPFN();
-                    for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                        tmpPFN = tmpPFN
-                                .replaceAll("\\[" + k + "\\]", m.group(k));
-                    }
-                    if (tmpPFN.indexOf('[') >= 0) {
-                        // PFN still has variables left.
-                    }
-                    // Add new RCE
+                    // Add new RCE with the substituted PFN
                     rce = cloneRCE(entry);
-                    rce.setPFN(tmpPFN);
-                    entriesResult.add(rce);
+                    rce.setPFN(rule.substitute(entry.getPFN(), m));
+                    c.add(rce);
                 }
-                c.addAll(entriesResult);
                 break;
             }
         }
@@ -712,7 +721,6 @@ public class Regex implements ReplicaCatalog {
      */
     public Map lookup( Set lfns, String handle ) {
         Collection<ReplicaCatalogEntry> c = null;
-        Pattern p = null;
         Matcher m = null;
         String lfn = null;
         String pool = null;
@@ -732,30 +740,22 @@ public class Regex implements ReplicaCatalog {
                         value.add(rce);
                 }
             }
-            // Lookup regex LFN's
-            for (String l : m_lfn_regex.keySet()) {
-                p = m_lfn_pattern.get(l); // Get one pattern
-                m = p.matcher(lfn); // See if f.a matches pattern
-                if (m.matches()) // Pattern matches?
+            // Lookup regex LFN's, only matching the patterns the index
+            // narrows down for the LFN
+            for (RegexIndex.Rule rule : m_index.candidates(lfn)) {
+                m = rule.match(lfn); // See if f.a matches pattern
+                if (m != null) // Pattern matches?
                 {
                     Collection<ReplicaCatalogEntry> entries = m_lfn_regex
-                            .get(l);
+                            .get(rule.m_regex);
                     // Get all RCE entries for the matched pattern.
                     for (ReplicaCatalogEntry entry : entries) {
                         pool = entry.getResourceHandle();
                         // Entry matches handle requirement?
                         if (pool == null && handle == null || pool != null
                                 && handle != null && pool.equals(handle)) {
-                            String tmpPFN = entry.getPFN();
                             // Substitute variables in PFN before returning
-                            for (int k = 0, j = m.groupCount(); k <= j; ++k) {
-                                tmpPFN = tmpPFN.replaceAll("\\[" + k + "\\]",
-                                        m.group(k));
-                            }
-                            // Are there unsubstituted variables?
-                            if (tmpPFN.indexOf('[') >= 0) {
-                                // PFN still has variables left.
-                            }
+                            String tmpPFN = rule.substitute(entry.getPFN(), m);
                             // Return new PFN
                             // entry.setPFN( tmpPFN );
                             rce = cloneRCE(entry);
@@ -949,8 +949,10 @@ public class Regex implements ReplicaCatalog {
             c = new ArrayList<ReplicaCatalogEntry>();
 
             if (isRegex) {
+                Pattern p = Pattern.compile(lfn);
                 m_lfn_regex.put(lfn, c);
-                m_lfn_pattern.put(lfn, Pattern.compile(lfn));
+                m_lfn_pattern.put(lfn, p);
+                m_index.add(lfn, p);
             } else {
                 m_lfn.put(lfn, c);
             }
@@ -1194,6 +1196,7 @@ public class Regex implements ReplicaCatalog {
         m_lfn.clear();
         m_lfn_regex.clear();
         m_lfn_pattern.clear();
+        m_index.clear();
         return result;
     }
 }
@@ -0,0 +1,605 @@
+/*
+ * Copyright 2007-2014 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An index over the regular expression LFNs of the Regex replica catalog.
+ * For each regular expression, the literal prefix and suffix that every
+ * matching LFN must start and end with are determined. The expression is
+ * bucketed on the longer of the two. A lookup then only runs the matchers
+ * of the expressions whose bucket the LFN falls into, plus the expressions
+ * with no literal prefix or suffix. Before running a matcher, the LFN is
+ * screened against the literals of the expression, including the longest
+ * literal any match must contain. The candidates are returned in the order
+ * the expressions were inserted, so first match semantics are retained.
+ *
+ * The PFN templates with [n] placeholders are parsed once per PFN, instead
+ * of compiling a pattern for every capture group on every lookup.
+ *
+ * @author Rajiv Mayani
+ * @version $Revision$
+ */
+class RegexIndex {
+
+    /**
+     * Orders the rules by the order they were inserted.
+     */
+    private static final Comparator<Rule> ORDINAL_COMPARATOR = new Comparator<Rule>() {
+        public int compare( Rule a, Rule b ) {
+            return a.m_ordinal - b.m_ordinal;
+        }
+    };
+
+    /**
+     * The rules bucketed by their literal prefix.
+     */
+    private Map<String, List<Rule>> m_prefix;
+
+    /**
+     * The distinct lengths of the prefixes in the prefix buckets.
+     */
+    private int[] m_prefix_lengths;
+
+    /**
+     * The rules bucketed by their literal suffix.
+     */
+    private Map<String, List<Rule>> m_suffix;
+
+    /**
+     * The distinct lengths of the suffixes in the suffix buckets.
+     */
+    private int[] m_suffix_lengths;
+
+    /**
+     * The rules that have no literal prefix or suffix, and are always
+     * candidates.
+     */
+    private List<Rule> m_unindexed;
+
+    /**
+     * The number of rules added.
+     */
+    private int m_count;
+
+    /**
+     * The default constructor.
+     */
+    public RegexIndex() {
+        clear();
+    }
+
+    /**
+     * Adds a regular expression to the index.
+     *
+     * @param regex   the regular expression
+     * @param pattern the compiled pattern for the expression
+     * @return the rule for the expression
+     */
+    public Rule add( String regex, Pattern pattern ) {
+        Rule rule = new Rule( regex, pattern, m_count++ );
+        if (rule.m_prefix.length() > 0 && rule.m_prefix.length() >= rule.m_suffix.length()) {
+            m_prefix_lengths = add( m_prefix, rule.m_prefix, rule, m_prefix_lengths );
+        } else if (rule.m_suffix.length() > 0) {
+            m_suffix_lengths = add( m_suffix, rule.m_suffix, rule, m_suffix_lengths );
+        } else {
+            m_unindexed.add( rule );
+        }
+        return rule;
+    }
+
+    /**
+     * Returns the rules that may match a LFN, in the order they were
+     * added. The literal prefix and suffix of the returned rules have not been
+     * checked against the LFN.
+     *
+     * @param lfn the logical filename
+     * @return the candidate rules
+     */
+    public List<Rule> candidates( String lfn ) {
+        List<Rule> result = null;
+        boolean sort = false;
+        int length = lfn.length();
+
+        for (int l : m_prefix_lengths) {
+            if (l > length) {
+                break;
+            }
+            List<Rule> bucket = m_prefix.get( lfn.substring( 0, l ) );
+            if (bucket != null) {
+                sort |= result != null;
+                result = merge( result, bucket );
+            }
+        }
+        for (int l : m_suffix_lengths) {
+            if (l > length) {
+                break;
+            }
+            List<Rule> bucket = m_suffix.get( lfn.substring( length - l ) );
+            if (bucket != null) {
+                sort |= result != null;
+                result = merge( result, bucket );
+            }
+        }
+        if (!m_unindexed.isEmpty()) {
+            sort |= result != null;
+            result = merge( result, m_unindexed );
+        }
+
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        if (sort) {
+            Collections.sort( result, ORDINAL_COMPARATOR );
+        }
+        return result;
+    }
+
+    /**
+     * Removes all the rules from the index.
+     */
+    public void clear() {
+        m_prefix = new HashMap<String, List<Rule>>();
+        m_prefix_lengths = new int[0];
+        m_suffix = new HashMap<String, List<Rule>>();
+        m_suffix_lengths = new int[0];
+        m_unindexed = new ArrayList<Rule>();
+        m_count = 0;
+    }
+
+    /**
+     * Returns the number of rules in the index.
+     *
+     * @return the number of rules
+     */
+    public int size() {
+        return m_count;
+    }
+
+    /**
+     * Adds a rule to a bucket, and returns the updated sorted bucket lengths.
+     */
+    private static int[] add( Map<String, List<Rule>> buckets, String key, Rule rule, int[] lengths ) {
+        List<Rule> bucket = buckets.get( key );
+        if (bucket == null) {
+            bucket = new ArrayList<Rule>( 1 );
+            buckets.put( key, bucket );
+            TreeSet<Integer> s = new TreeSet<Integer>();
+            for (int l : lengths) {
+                s.add( l );
+            }
+            if (s.add( key.length() )) {
+                lengths = new int[s.size()];
+                int i = 0;
+                for (int l : s) {
+                    lengths[i++] = l;
+                }
+            }
+        }
+        bucket.add( rule );
+        return lengths;
+    }
+
+    /**
+     * Merges a bucket into the result, copying the result only when a
+     * second bucket is merged.
+     */
+    private static List<Rule> merge( List<Rule> result, List<Rule> bucket ) {
+        if (result == null) {
+            return bucket;
+        }
+        List<Rule> merged = (result instanceof MergedList) ? result : new MergedList( result );
+        merged.addAll( bucket );
+        return merged;
+    }
+
+    /**
+     * Marker for a result list that is owned by a single lookup.
+     */
+    private static class MergedList extends ArrayList<Rule> {
+        public MergedList( List<Rule> l ) {
+            super( l );
+        }
+    }
+
+    /**
+     * A regular expression in the catalog along with the literals it's
+     * matches start and end with.
+     */
+    static class Rule {
+
+        /**
+         * The regular expression.
+         */
+        final String m_regex;
+
+        /**
+         * The compiled pattern.
+         */
+        final Pattern m_pattern;
+
+        /**
+         * The literal prefix of every match.
+         */
+        final String m_prefix;
+
+        /**
+         * The literal suffix of every match.
+         */
+        final String m_suffix;
+
+        /**
+         * The longest literal every match contains.
+         */
+        final String m_infix;
+
+        /**
+         * The order in which the rule was added.
+         */
+        final int m_ordinal;
+
+        /**
+         * The number of capture groups in the pattern.
+         */
+        final int m_group_count;
+
+        /**
+         * The parsed PFN templates indexed by the PFN.
+         */
+        private final Map<String, PFNTemplate> m_templates;
+
+        Rule( String regex, Pattern pattern, int ordinal ) {
+            m_regex = regex;
+            m_pattern = pattern;
+            m_ordinal = ordinal;
+            m_group_count = pattern.matcher( "" ).groupCount();
+            m_templates = new HashMap<String, PFNTemplate>();
+
+            String[] literals = literals( regex );
+            m_prefix = literals[0];
+            m_suffix = literals[1];
+            m_infix = literals[2];
+        }
+
+        /**
+         * Matches the LFN against the rule.
+         *
+         * @param lfn the logical filename
+         * @return the matcher if the LFN matches, else null
+         */
+        public Matcher match( String lfn ) {
+            if (!lfn.startsWith( m_prefix ) || !lfn.endsWith( m_suffix ) ||
+                    (m_infix.length() > 0 && !lfn.contains( m_infix ))) {
+                return null;
+            }
+            Matcher m = m_pattern.matcher( lfn );
+            return m.matches() ? m : null;
+        }
+
+        /**
+         * Substitutes the [n] placeholders in a PFN with the groups of a
+         * successful match.
+         *
+         * @param pfn the PFN template
+         * @param m   the matcher for the LFN
+         * @return the substituted PFN
+         */
+        public String substitute( String pfn, Matcher m ) {
+            PFNTemplate t = m_templates.get( pfn );
+            if (t == null) {
+                t = new PFNTemplate( pfn, m_group_count );
+                m_templates.put( pfn, t );
+            }
+            return t.expand( m );
+        }
+    }
+
+    /**
+     * A PFN split into literal parts and references to capture groups.
+     */
+    static class PFNTemplate {
+
+        /**
+         * The literal parts. There is one more literal than group.
+         */
+        private final String[] m_literals;
+
+        /**
+         * The capture groups referred between the literals.
+         */
+        private final int[] m_groups;
+
+        /**
+         * The length of the literals.
+         */
+        private final int m_length;
+
+        PFNTemplate( String pfn, int groupCount ) {
+            List<String> literals = new ArrayList<String>();
+            List<Integer> groups = new ArrayList<Integer>();
+            int start = 0;
+            int length = 0;
+            for (int i = pfn.indexOf( '[' ); i >= 0; i = pfn.indexOf( '[', i + 1 )) {
+                int end = pfn.indexOf( ']', i );
+                if (end < 0) {
+                    break;
+                }
+                int group = group( pfn.substring( i + 1, end ), groupCount );
+                if (group >= 0) {
+                    literals.add( pfn.substring( start, i ) );
+                    length += i - start;
+                    groups.add( group );
+                    start = end + 1;
+                    i = end;
+                }
+            }
+            literals.add( pfn.substring( start ) );
+            length += pfn.length() - start;
+
+            m_literals = literals.toArray( new String[literals.size()] );
+            m_groups = new int[groups.size()];
+            for (int i = 0; i < m_groups.length; i++) {
+                m_groups[i] = groups.get( i );
+            }
+            m_length = length;
+        }
+
+        /**
+         * Expands the template with the groups of a successful match.
+         *
+         * @param m the matcher
+         * @return the expanded PFN
+         */
+        public String expand( Matcher m ) {
+            if (m_groups.length == 0) {
+                return m_literals[0];
+            }
+            StringBuilder sb = new StringBuilder( m_length + 16 * m_groups.length );
+            sb.append( m_literals[0] );
+            for (int i = 0; i < m_groups.length; i++) {
+                String value = m.group( m_groups[i] );
+                if (value != null) {
+                    sb.append( value );
+                }
+                sb.append( m_literals[i + 1] );
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Returns the group a placeholder refers to. Only the canonical decimal
+         * form of a group that exists in the pattern is a placeholder.
+         *
+         * @return the group, else -1
+         */
+        private static int group( String s, int groupCount ) {
+            if (s.length() == 0 || s.length() > 9 || (s.length() > 1 && s.charAt( 0 ) == '0')) {
+                return -1;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt( i ) < '0' || s.charAt( i ) > '9') {
+                    return -1;
+                }
+            }
+            int group = Integer.parseInt( s );
+            return (group <= groupCount) ? group : -1;
+        }
+    }
+
+    /**
+     * The escapes of a single letter, that do not consume the characters
+     * following them.
+     */
+    private static final String SIMPLE_ESCAPES = "dDsSwWbBAGZzhHvVRXtnrfae";
+
+    /**
+     * Determines the literal prefix and suffix that every LFN matching a
+     * regular expression must have. The analysis is conservative, and gives
+     * up on constructs like top level alternation, quoting, inline flags and
+     * escapes spanning more than one letter by returning empty literals.
+     *
+     * @param regex the regular expression
+     * @return array with the prefix, the suffix and the longest literal
+     * that every match contains
+     */
+    static String[] literals( String regex ) {
+        String[] none = new String[]{"", "", ""};
+        if (regex.contains( "\\Q" ) || regex.contains( "(?" )) {
+            return none;
+        }
+
+        // tokenize the top level of the expression. a null token is a
+        // construct that does not match a fixed character
+        List<Character> tokens = new ArrayList<Character>();
+        int n = regex.length();
+        int i = 0;
+        if (n > 0 && regex.charAt( 0 ) == '^') {
+            i++;
+        }
+        while (i < n) {
+            char c = regex.charAt( i );
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= n) {
+                        return none;
+                    }
+                    char e = regex.charAt( i + 1 );
+                    if (Character.isLetterOrDigit( e )) {
+                        // escapes like \x2e, \u002e, \0.., \cX, \p{L}, \k<..>
+                        // and back references span more characters
+                        if (SIMPLE_ESCAPES.indexOf( e ) < 0) {
+                            return none;
+                        }
+                        tokens.add( null );
+                    } else {
+                        tokens.add( e );
+                    }
+                    i += 2;
+                    break;
+
+                case '[':
+                    i = skipClass( regex, i );
+                    if (i < 0) {
+                        return none;
+                    }
+                    tokens.add( null );
+                    break;
+
+                case '(':
+                    i = skipGroup( regex, i );
+                    if (i < 0) {
+                        return none;
+                    }
+                    tokens.add( null );
+                    break;
+
+                case '|':
+                case ')':
+                    return none;
+
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    // quantifier makes the previous token variable
+                    if (!tokens.isEmpty()) {
+                        tokens.set( tokens.size() - 1, null );
+                    }
+                    if (c == '{') {
+                        int end = regex.indexOf( '}', i );
+                        if (end < 0) {
+                            return none;
+                        }
+                        i = end;
+                    }
+                    i++;
+                    break;
+
+                case '$':
+                    if (i == n - 1) {
+                        i++;
+                        break;
+                    }
+                    tokens.add( null );
+                    i++;
+                    break;
+
+                case '.':
+                case '^':
+                    tokens.add( null );
+                    i++;
+                    break;
+
+                default:
+                    // surrogate pairs are not split
+                    tokens.add( ( Character.isHighSurrogate( c ) || Character.isLowSurrogate( c ) ) ? null : c );
+                    i++;
+            }
+        }
+
+        StringBuilder prefix = new StringBuilder();
+        for (Character t : tokens) {
+            if (t == null) {
+                break;
+            }
+            prefix.append( t.charValue() );
+        }
+        StringBuilder suffix = new StringBuilder();
+        for (int j = tokens.size() - 1; j >= 0 && tokens.get( j ) != null; j--) {
+            suffix.append( tokens.get( j ).charValue() );
+        }
+        // the longest run of literals anywhere in the expression
+        String infix = "";
+        StringBuilder run = new StringBuilder();
+        for (int j = 0; j <= tokens.size(); j++) {
+            Character t = (j < tokens.size()) ? tokens.get( j ) : null;
+            if (t != null) {
+                run.append( t.charValue() );
+            } else {
+                if (run.length() > infix.length()) {
+                    infix = run.toString();
+                }
+                run.setLength( 0 );
+            }
+        }
+        return new String[]{prefix.toString(), suffix.reverse().toString(), infix};
+    }
+
+    /**
+     * Returns the index after the character class starting at position i.
+     */
+    private static int skipClass( String regex, int i ) {
+        int depth = 0;
+        int n = regex.length();
+        for (int j = i; j < n; j++) {
+            char c = regex.charAt( j );
+            if (c == '\\') {
+                j++;
+            } else if (c == '[') {
+                depth++;
+                // a ] immediately after the opening bracket is a literal
+                if (j + 1 < n && regex.charAt( j + 1 ) == '^') {
+                    j++;
+                }
+                if (j + 1 < n && regex.charAt( j + 1 ) == ']') {
+                    j++;
+                }
+            } else if (c == ']') {
+                if (--depth == 0) {
+                    return j + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index after the group starting at position i.
+     */
+    private static int skipGroup( String regex, int i ) {
+        int depth = 0;
+        int n = regex.length();
+        for (int j = i; j < n; j++) {
+            char c = regex.charAt( j );
+            if (c == '\\') {
+                j++;
+            } else if (c == '[') {
+                j = skipClass( regex, j );
+                if (j < 0) {
+                    return -1;
+                }
+                j--;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    return j + 1;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,724 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A persistent Bloom filter over the LFNs in a replica catalog. The planner
+ * consults the filter before looking up the LFNs of a workflow in the
+ * replica catalog, and only looks up the LFNs that may be in the catalog.
+ * The filter never reports an LFN in the catalog as absent, so screening
+ * does not change the result of the lookup. For large catalogs in which
+ * most lookups miss, it saves most of the lookups.
+ *
+ * The filter is built from the SimpleFile, Regex or JDBCRC replica catalog,
+ * and written out to a filter directory. It is valid for a file based
+ * catalog as long as the modification time and size of the catalog file
+ * are unchanged. For the JDBCRC catalog, the filter remembers the largest
+ * row id it has seen, and the rows inserted after it are added the next
+ * time the filter is loaded. The client inserting into a catalog adds the
+ * inserted LFNs to an existing filter, so that the filter does not have to
+ * be rebuilt on every insert.
+ *
+ * Deleted LFNs remain in the filter, which only raises the false positive
+ * rate. The filter is rebuilt once the expected false positive rate is more
+ * than twice the one it was sized for. A Regex catalog with regular
+ * expression entries cannot be filtered, as any LFN may match.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class ReplicaBloomFilter {
+
+    /**
+     * The prefix for the filter files.
+     */
+    public static final String FILTER_FILE_PREFIX = "rc-";
+
+    /**
+     * The suffix for the filter files.
+     */
+    public static final String FILTER_FILE_SUFFIX = ".bloom";
+
+    /**
+     * The default false positive rate the filter is sized for.
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * The property key for the database url of the JDBCRC catalog.
+     */
+    private static final String DB_URL_PROPERTY = ReplicaCatalog.c_prefix + ".db.url";
+
+    /**
+     * The property key for the database user of the JDBCRC catalog.
+     */
+    private static final String DB_USER_PROPERTY = ReplicaCatalog.c_prefix + ".db.user";
+
+    /**
+     * The magic number at the start of a filter file.
+     */
+    private static final int MAGIC = 0x50524246;
+
+    /**
+     * The version of the filter format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The minimum number of entries a filter is sized for.
+     */
+    private static final long MIN_CAPACITY = 1024;
+
+    /**
+     * The charset used for encoding the signature.
+     */
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * The bits of the filter.
+     */
+    private final long[] mBits;
+
+    /**
+     * The number of bits in the filter.
+     */
+    private final long mNumBits;
+
+    /**
+     * The number of bits set for each LFN.
+     */
+    private final int mNumHashes;
+
+    /**
+     * The false positive rate the filter was sized for.
+     */
+    private final double mTargetRate;
+
+    /**
+     * The number of LFNs added to the filter.
+     */
+    private long mCount;
+
+    /**
+     * The filter file, null for a filter that is not persisted.
+     */
+    private File mFile;
+
+    /**
+     * The signature of the replica catalog filtered.
+     */
+    private String mSignature;
+
+    /**
+     * The replica catalog file for a file based catalog, else null.
+     */
+    private File mSource;
+
+    /**
+     * The length of the replica catalog file, when the filter was last
+     * brought up to date.
+     */
+    private long mLength;
+
+    /**
+     * The modification time of the replica catalog file, or the largest row
+     * id of a database catalog, when the filter was last brought up to date.
+     */
+    private long mModified;
+
+    /**
+     * The number of LFNs screened.
+     */
+    private int mProbes;
+
+    /**
+     * The number of LFNs screened out as definitely not in the catalog.
+     */
+    private int mNegatives;
+
+    /**
+     * Returns whether the replica catalog configured in the properties can
+     * be filtered.
+     *
+     * @param props  the properties
+     *
+     * @return boolean
+     */
+    public static boolean canFilter( PegasusProperties props ){
+        String implementor = MappedReplicaIndex.getImplementor( props );
+        if( implementor == null ){
+            return false;
+        }
+        if( implementor.equals( JDBCRC.class.getName() ) ){
+            return props.getProperty( DB_URL_PROPERTY ) != null;
+        }
+        return ( implementor.equals( SimpleFile.class.getName() ) ||
+                 implementor.equals( Regex.class.getName() ) ) &&
+               props.getProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_FILE_PROPERTY ) != null;
+    }
+
+    /**
+     * Returns whether the entries inserted for an LFN can be added to a
+     * filter. Entries whose LFN is a regular expression cannot be, as the
+     * filter would screen out the LFNs they match.
+     *
+     * @param rces  the replica catalog entries for the LFN
+     *
+     * @return boolean
+     */
+    public static boolean canFilter( Collection<ReplicaCatalogEntry> rces ){
+        for( ReplicaCatalogEntry rce : rces ){
+            if( "true".equals( rce.getAttribute( Regex.REGEX_KEY ) ) ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loads the filter for the replica catalog configured in the properties
+     * from the directory passed. The filter is built from the catalog if it
+     * does not exist or is stale, and the rows inserted since the filter was
+     * written are added for a JDBCRC catalog.
+     *
+     * @param props      the properties the catalog was connected with
+     * @param catalog    the connected replica catalog
+     * @param directory  the filter directory
+     * @param rate       the false positive rate to size a new filter for
+     * @param logger     the logger
+     *
+     * @return the filter
+     *
+     * @throws IOException in case of error while building or reading the filter
+     */
+    public static ReplicaBloomFilter load( PegasusProperties props,
+                                           ReplicaCatalog catalog,
+                                           File directory,
+                                           double rate,
+                                           LogManager logger ) throws IOException{
+        if( !canFilter( props ) ){
+            throw new IOException( "Replica catalog " + props.getReplicaMode() + " cannot be filtered" );
+        }
+        String signature = getSignature( props );
+        File file = getFile( directory, signature );
+        File source = getSource( props );
+
+        ReplicaBloomFilter filter = null;
+        if( file.exists() ){
+            try{
+                filter = read( file );
+                if( !filter.isValid( signature, source ) ){
+                    logger.log( "Replica catalog filter " + file + " is stale",
+                                LogManager.DEBUG_MESSAGE_LEVEL );
+                    filter = null;
+                }
+            }
+            catch( IOException e ){
+                logger.log( "Ignoring unreadable replica catalog filter " + file, e,
+                            LogManager.WARNING_MESSAGE_LEVEL );
+                filter = null;
+            }
+        }
+
+        if( filter != null && catalog instanceof JDBCRC ){
+            //catch up with the rows inserted since the filter was written
+            long count = filter.mCount;
+            filter.mModified = ((JDBCRC)catalog).listSince( filter.mModified, filter.asCollection() );
+            if( filter.getExpectedFalsePositiveRate() > 2 * filter.mTargetRate ){
+                logger.log( "Replica catalog filter " + file + " is over capacity with " +
+                            filter.mCount + " LFNs",
+                            LogManager.DEBUG_MESSAGE_LEVEL );
+                filter = null;
+            }
+            else if( filter.mCount != count ){
+                filter.write();
+                logger.log( "Added " + ( filter.mCount - count ) + " LFNs to replica catalog filter " + file,
+                            LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+        }
+
+        if( filter != null ){
+            logger.log( "Using replica catalog filter " + file + " with " + filter.mCount + " LFNs",
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+            return filter;
+        }
+
+        //build the filter from the catalog
+        long start = System.currentTimeMillis();
+        long length = ( source != null && source.exists() ) ? source.length() : -1;
+        long modified = ( source != null ) ? source.lastModified() : 0;
+        if( catalog instanceof JDBCRC ){
+            JDBCRC jdbc = (JDBCRC)catalog;
+            filter = new ReplicaBloomFilter( jdbc.lastId(), rate );
+            modified = jdbc.listSince( 0, filter.asCollection() );
+        }
+        else{
+            Set<String> lfns;
+            if( catalog instanceof Regex ){
+                Regex regex = (Regex)catalog;
+                if( !regex.m_lfn_regex.isEmpty() ){
+                    throw new IOException( "Replica catalog " + source + " has regular expression entries" );
+                }
+                lfns = regex.m_lfn.keySet();
+            }
+            else{
+                lfns = catalog.list();
+            }
+            filter = new ReplicaBloomFilter( lfns.size(), rate );
+            for( String lfn : lfns ){
+                filter.add( lfn );
+            }
+        }
+        filter.mFile = file;
+        filter.mSignature = signature;
+        filter.mSource = source;
+        filter.mLength = length;
+        filter.mModified = modified;
+
+        if( !directory.isDirectory() && !directory.mkdirs() ){
+            throw new IOException( "Unable to create replica catalog filter directory " + directory );
+        }
+        filter.write();
+        logger.log( "Built replica catalog filter " + file + " with " + filter.mCount + " LFNs in " +
+                    ( System.currentTimeMillis() - start ) + " ms",
+                    LogManager.DEBUG_MESSAGE_LEVEL );
+        return filter;
+    }
+
+    /**
+     * Opens the existing filter for the replica catalog configured in the
+     * properties, so that LFNs inserted into the catalog can be added to it.
+     *
+     * @param props      the properties the catalog is connected with
+     * @param directory  the filter directory
+     *
+     * @return the filter, else null if there is no filter that is up to date
+     *         with the catalog
+     *
+     * @throws IOException in case of error while reading the filter
+     */
+    public static ReplicaBloomFilter open( PegasusProperties props, File directory ) throws IOException{
+        if( !canFilter( props ) ){
+            return null;
+        }
+        String signature = getSignature( props );
+        File file = getFile( directory, signature );
+        if( !file.exists() ){
+            return null;
+        }
+        ReplicaBloomFilter filter = read( file );
+        return filter.isValid( signature, getSource( props ) ) ? filter : null;
+    }
+
+    /**
+     * The overloaded constructor for a filter that is not persisted.
+     *
+     * @param expected  the number of LFNs expected to be added
+     * @param rate      the false positive rate for the expected number of LFNs
+     */
+    public ReplicaBloomFilter( long expected, double rate ){
+        if( rate <= 0 || rate >= 1 ){
+            throw new IllegalArgumentException( "Invalid false positive rate " + rate );
+        }
+        //leave room for the LFNs added later
+        long capacity = Math.max( MIN_CAPACITY, expected + expected / 4 );
+        double ln2 = Math.log( 2 );
+        long bits = (long)Math.ceil( -capacity * Math.log( rate ) / ( ln2 * ln2 ) );
+        int words = (int)Math.min( Integer.MAX_VALUE - 8, ( bits + 63 ) / 64 );
+        mBits = new long[ words ];
+        mNumBits = 64L * words;
+        mNumHashes = Math.max( 1, (int)Math.round( (double)mNumBits / capacity * ln2 ) );
+        mTargetRate = rate;
+        mCount = 0;
+    }
+
+    /**
+     * The overloaded constructor for a filter read from a file.
+     *
+     * @param bits       the bits
+     * @param hashes     the number of bits set for each LFN
+     * @param rate       the false positive rate the filter was sized for
+     * @param count      the number of LFNs added
+     */
+    private ReplicaBloomFilter( long[] bits, int hashes, double rate, long count ){
+        mBits = bits;
+        mNumBits = 64L * bits.length;
+        mNumHashes = hashes;
+        mTargetRate = rate;
+        mCount = count;
+    }
+
+    /**
+     * Adds an LFN to the filter.
+     *
+     * @param lfn  the LFN
+     */
+    public void add( String lfn ){
+        long hash = hash( lfn );
+        long h1 = hash & 0xFFFFFFFFL;
+        long h2 = hash >>> 32;
+        for( int i = 0; i < mNumHashes; i++ ){
+            long bit = ( h1 + i * h2 ) % mNumBits;
+            mBits[ (int)( bit >>> 6 ) ] |= 1L << bit;
+        }
+        mCount++;
+    }
+
+    /**
+     * Adds LFNs to the filter.
+     *
+     * @param lfns  the LFNs
+     */
+    public void addAll( Collection<String> lfns ){
+        for( String lfn : lfns ){
+            this.add( lfn );
+        }
+    }
+
+    /**
+     * Returns whether an LFN may be in the replica catalog. If false is
+     * returned, the LFN is definitely not in the catalog.
+     *
+     * @param lfn  the LFN
+     *
+     * @return boolean
+     */
+    public boolean mightContain( String lfn ){
+        long hash = hash( lfn );
+        long h1 = hash & 0xFFFFFFFFL;
+        long h2 = hash >>> 32;
+        for( int i = 0; i < mNumHashes; i++ ){
+            long bit = ( h1 + i * h2 ) % mNumBits;
+            if( ( mBits[ (int)( bit >>> 6 ) ] & ( 1L << bit ) ) == 0 ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Screens LFNs against the filter, and updates the counters.
+     *
+     * @param lfns  the LFNs to be looked up in the catalog
+     *
+     * @return the LFNs that may be in the catalog
+     */
+    public Set<String> screen( Set<String> lfns ){
+        Set<String> result = new HashSet<String>();
+        for( String lfn : lfns ){
+            if( this.mightContain( lfn ) ){
+                result.add( lfn );
+            }
+        }
+        mProbes += lfns.size();
+        mNegatives += lfns.size() - result.size();
+        return result;
+    }
+
+    /**
+     * Returns the number of LFNs screened.
+     *
+     * @return the number of LFNs
+     */
+    public int getProbes(){
+        return mProbes;
+    }
+
+    /**
+     * Returns the number of LFNs screened out as not in the catalog.
+     *
+     * @return the number of LFNs
+     */
+    public int getNegatives(){
+        return mNegatives;
+    }
+
+    /**
+     * Returns the number of LFNs added to the filter.
+     *
+     * @return the number of LFNs
+     */
+    public long getCount(){
+        return mCount;
+    }
+
+    /**
+     * Returns the false positive rate expected for the number of LFNs added
+     * to the filter.
+     *
+     * @return the rate between 0 and 1
+     */
+    public double getExpectedFalsePositiveRate(){
+        return Math.pow( 1 - Math.exp( -(double)mNumHashes * mCount / mNumBits ), mNumHashes );
+    }
+
+    /**
+     * Returns the filter file.
+     *
+     * @return the file, null if the filter is not persisted
+     */
+    public File getFile(){
+        return mFile;
+    }
+
+    /**
+     * Writes the filter back to its file, after LFNs inserted into the
+     * catalog have been added. The filter is marked up to date with the
+     * current state of a file based catalog.
+     *
+     * @throws IOException in case of error while writing the filter
+     */
+    public void save() throws IOException{
+        if( mFile == null ){
+            throw new IOException( "Replica catalog filter is not persisted" );
+        }
+        if( mSource != null ){
+            mLength = mSource.exists() ? mSource.length() : -1;
+            mModified = mSource.lastModified();
+        }
+        this.write();
+    }
+
+    /**
+     * Deletes the filter file, so that the filter is not used until it is
+     * built again from the catalog.
+     */
+    public void discard(){
+        if( mFile != null ){
+            mFile.delete();
+        }
+    }
+
+    /**
+     * Returns whether the filter was built from the same replica catalog in
+     * the same state.
+     *
+     * @param signature  the signature of the replica catalog
+     * @param source     the replica catalog file, null for a database catalog
+     *
+     * @return boolean
+     */
+    private boolean isValid( String signature, File source ){
+        if( !signature.equals( mSignature ) ){
+            return false;
+        }
+        if( source == null ){
+            return true;
+        }
+        mSource = source;
+        long length = source.exists() ? source.length() : -1;
+        return length == mLength && source.lastModified() == mModified;
+    }
+
+    /**
+     * Returns a collection view that adds to the filter, to stream LFNs into
+     * the filter.
+     *
+     * @return the collection, which only supports adding
+     */
+    private Collection<String> asCollection(){
+        return new AbstractCollection<String>(){
+            public boolean add( String lfn ){
+                ReplicaBloomFilter.this.add( lfn );
+                return true;
+            }
+
+            public Iterator<String> iterator(){
+                throw new UnsupportedOperationException( "Replica catalog filter cannot be iterated" );
+            }
+
+            public int size(){
+                return (int)Math.min( Integer.MAX_VALUE, mCount );
+            }
+        };
+    }
+
+    /**
+     * Writes the filter to a temporary file, and renames it to the filter
+     * file.
+     *
+     * @throws IOException in case of error while writing the filter
+     */
+    private void write() throws IOException{
+        File temp = File.createTempFile( FILTER_FILE_PREFIX, ".tmp", mFile.getParentFile() );
+        try{
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ), 1 << 16 ) );
+            try{
+                out.writeInt( MAGIC );
+                out.writeInt( FORMAT_VERSION );
+                out.writeUTF( mSignature );
+                out.writeLong( mLength );
+                out.writeLong( mModified );
+                out.writeDouble( mTargetRate );
+                out.writeLong( mCount );
+                out.writeInt( mNumHashes );
+                out.writeInt( mBits.length );
+                for( long word : mBits ){
+                    out.writeLong( word );
+                }
+                out.writeInt( MAGIC );
+            }
+            finally{
+                out.close();
+            }
+            if( !temp.renameTo( mFile ) ){
+                throw new IOException( "Unable to rename " + temp + " to " + mFile );
+            }
+        }
+        finally{
+            temp.delete();
+        }
+    }
+
+    /**
+     * Reads a filter from a file.
+     *
+     * @param file  the filter file
+     *
+     * @return the filter
+     *
+     * @throws IOException in case of error while reading the filter
+     */
+    private static ReplicaBloomFilter read( File file ) throws IOException{
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 1 << 16 ) );
+        try{
+            if( in.readInt() != MAGIC ){
+                throw new IOException( "Not a replica catalog filter " + file );
+            }
+            int version = in.readInt();
+            if( version != FORMAT_VERSION ){
+                throw new IOException( "Unsupported version " + version + " of replica catalog filter " + file );
+            }
+            String signature = in.readUTF();
+            long length = in.readLong();
+            long modified = in.readLong();
+            double rate = in.readDouble();
+            long count = in.readLong();
+            int hashes = in.readInt();
+            int words = in.readInt();
+            if( hashes < 1 || words < 1 || words > file.length() / 8 ){
+                throw new IOException( "Invalid replica catalog filter " + file );
+            }
+            long[] bits = new long[ words ];
+            for( int i = 0; i < words; i++ ){
+                bits[ i ] = in.readLong();
+            }
+            if( in.readInt() != MAGIC ){
+                throw new IOException( "Incomplete replica catalog filter " + file );
+            }
+            ReplicaBloomFilter filter = new ReplicaBloomFilter( bits, hashes, rate, count );
+            filter.mFile = file;
+            filter.mSignature = signature;
+            filter.mLength = length;
+            filter.mModified = modified;
+            return filter;
+        }
+        finally{
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the signature identifying the replica catalog configured in the
+     * properties.
+     *
+     * @param props  the properties
+     *
+     * @return the signature
+     */
+    private static String getSignature( PegasusProperties props ){
+        String implementor = MappedReplicaIndex.getImplementor( props );
+        if( implementor.equals( JDBCRC.class.getName() ) ){
+            String user = props.getProperty( DB_USER_PROPERTY );
+            return implementor + "#" + props.getProperty( DB_URL_PROPERTY ) +
+                   ( user == null ? "" : "#" + user );
+        }
+        return implementor + "#" + getSource( props ).getPath();
+    }
+
+    /**
+     * Returns the replica catalog file configured in the properties.
+     *
+     * @param props  the properties
+     *
+     * @return the file, null for a database catalog
+     */
+    private static File getSource( PegasusProperties props ){
+        if( MappedReplicaIndex.getImplementor( props ).equals( JDBCRC.class.getName() ) ){
+            return null;
+        }
+        return new File( props.getProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_FILE_PROPERTY ) ).getAbsoluteFile();
+    }
+
+    /**
+     * Returns the filter file for a replica catalog.
+     *
+     * @param directory  the filter directory
+     * @param signature  the signature of the replica catalog
+     *
+     * @return the file
+     */
+    private static File getFile( File directory, String signature ){
+        return new File( directory, FILTER_FILE_PREFIX +
+                                    MappedReplicaIndex.md5( signature.getBytes( UTF8 ) ) +
+                                    FILTER_FILE_SUFFIX );
+    }
+
+    /**
+     * Computes a 64 bit hash of an LFN, the halves of which are combined to
+     * pick the bits for the LFN.
+     *
+     * @param lfn  the LFN
+     *
+     * @return the hash
+     */
+    private static long hash( String lfn ){
+        //FNV-1a over the characters followed by the murmur3 finalizer
+        long h = 0xcbf29ce484222325L;
+        for( int i = 0; i < lfn.length(); i++ ){
+            h ^= lfn.charAt( i );
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        //the second half is used as a stride, and should not be zero
+        return h | ( 1L << 32 );
+    }
+}
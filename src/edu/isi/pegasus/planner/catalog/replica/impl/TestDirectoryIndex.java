@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Times the Directory replica catalog on a synthetic directory tree, with
+ * the tree listed into a DirectoryIndex sequentially, listed in parallel,
+ * and with lazy lookups.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class TestDirectoryIndex {
+
+    public TestDirectoryIndex() {
+    }
+
+    /**
+     * Compares the time taken by the Directory replica catalog to connect
+     * to a synthetic directory tree, and then look up a number of LFNs in
+     * it, when the tree is listed sequentially, listed in parallel, and
+     * when the lookups are lazy.
+     *
+     * Usage: TestDirectoryIndex [files] [threads] [directory]
+     *
+     * @param args  the number of files ( defaults to 100000 ), the number of
+     *              threads to list the tree with in parallel ( defaults to 8 )
+     *              and the directory to create the tree in ( defaults to the
+     *              temp directory ).
+     */
+    public static void main( String[] args ) throws IOException{
+        int files   = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 100000;
+        int threads = ( args.length > 1 ) ? Integer.parseInt( args[1] ) : 8;
+        File base = ( args.length > 2 ) ?
+                    new File( args[2] ):
+                    new File( System.getProperty( "java.io.tmpdir" ) );
+        int lookups = 1000;
+
+        //a tree three levels deep with ten directories in each, and the
+        //files spread across the thousand leaf directories
+        File root = File.createTempFile( "directory-rc", "", base );
+        root.delete();
+        root.mkdirs();
+        String[] lfns = new String[ files ];
+        long start = System.currentTimeMillis();
+        for( int i = 0; i < files; i++ ){
+            int leaf = i % 1000;
+            String lfn = ( leaf / 100 ) + File.separator + ( leaf / 10 % 10 ) + File.separator +
+                         ( leaf % 10 ) + File.separator + "f.b" + i;
+            File f = new File( root, lfn );
+            f.getParentFile().mkdirs();
+            new FileOutputStream( f ).close();
+            lfns[i] = lfn;
+        }
+        System.out.println( "Created " + files + " files in " + root + " in " +
+                            ( System.currentTimeMillis() - start ) + " ms" );
+
+        Random random = new Random( 42 );
+        String[] sample = new String[ lookups ];
+        for( int i = 0; i < lookups; i++ ){
+            sample[i] = lfns[ random.nextInt( files ) ];
+        }
+
+        String[][] modes = {
+            { "sequential", "1", "false" },
+            { "parallel", Integer.toString( threads ), "false" },
+            { "lazy", "1", "true" }
+        };
+        for( String[] mode : modes ){
+            Properties props = new Properties();
+            props.setProperty( Directory.DIRECTORY_PROPERTY_KEY, root.getPath() );
+            props.setProperty( Directory.SCAN_THREADS_PROPERTY_KEY, mode[1] );
+            props.setProperty( Directory.LAZY_PROPERTY_KEY, mode[2] );
+
+            start = System.currentTimeMillis();
+            Directory catalog = new Directory();
+            catalog.connect( props );
+            long connected = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            int found = 0;
+            for( String lfn : sample ){
+                if( catalog.lookup( lfn, Directory.DEFAULT_SITE_HANDLE ) != null ){
+                    found++;
+                }
+            }
+            long looked = System.currentTimeMillis() - start;
+            catalog.close();
+
+            if( found != lookups ){
+                throw new RuntimeException( "Found " + found + " of " + lookups + " LFNs in " + mode[0] + " mode" );
+            }
+            System.out.println( mode[0] + " with " + mode[1] + " threads: connect " + connected + " ms, " +
+                                lookups + " lookups " + looked + " ms" );
+        }
+        delete( root );
+    }
+
+    /**
+     * Deletes a directory recursively.
+     *
+     * @param f  the file or directory to delete
+     */
+    private static void delete( File f ){
+        File[] files = f.listFiles();
+        if( files != null ){
+            for( File child : files ){
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+}
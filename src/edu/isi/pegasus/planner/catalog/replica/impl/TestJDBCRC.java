@@ -0,0 +1,202 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Benchmarks the batched inserts and lookups of the JDBCRC replica catalog
+ * against the bundled SQLite driver, and compares them with inserting and
+ * looking up one LFN at a time.
+ *
+ * @author Karan Vahi
+ */
+public class TestJDBCRC {
+
+    /**
+     * The number of LFNs inserted and looked up one at a time.
+     */
+    public static final int SINGLE_LFNS = 2000;
+
+    /**
+     * The statements creating the schema in a SQLite database.
+     */
+    private static final String[] SCHEMA = {
+        "CREATE TABLE rc_lfn ( id INTEGER PRIMARY KEY, lfn VARCHAR(245) NOT NULL," +
+        " pfn VARCHAR(245) NOT NULL, site VARCHAR(245)," +
+        " CONSTRAINT sk_rc_lfn UNIQUE(lfn,pfn,site) )",
+        "CREATE INDEX ix_rc_lfn ON rc_lfn(lfn)",
+        "CREATE TABLE rc_attr ( id INTEGER NOT NULL, name VARCHAR(64) NOT NULL," +
+        " value VARCHAR(32) NOT NULL, PRIMARY KEY(id,name)," +
+        " CONSTRAINT fk_rc_attr FOREIGN KEY(id) REFERENCES rc_lfn(id) ON DELETE CASCADE )",
+        "CREATE INDEX ix_rc_attr ON rc_attr(name)"
+    };
+
+    /**
+     * Creates an empty catalog in a temporary SQLite database.
+     */
+    public static JDBCRC createCatalog( File db ) throws Exception {
+        String url = "jdbc:sqlite:" + db.getAbsolutePath();
+        Class.forName( "org.sqlite.JDBC" );
+        Connection c = DriverManager.getConnection( url );
+        Statement st = c.createStatement();
+        for (String s : SCHEMA) {
+            st.executeUpdate( s );
+        }
+        st.close();
+        c.close();
+        return new JDBCRC( "org.sqlite.JDBC", url, "", "" );
+    }
+
+    /**
+     * Creates the mappings for the LFNs. Every LFN has a replica on the
+     * local site, every third one on a remote site as well, and every
+     * tenth replica has a checksum attribute.
+     */
+    public static Map<String, List<ReplicaCatalogEntry>> createMappings( String prefix, int count ) {
+        Map<String, List<ReplicaCatalogEntry>> result = new LinkedHashMap<String, List<ReplicaCatalogEntry>>();
+        for (int i = 0; i < count; i++) {
+            String lfn = prefix + i + ".dat";
+            List<ReplicaCatalogEntry> value = new ArrayList<ReplicaCatalogEntry>( 2 );
+            ReplicaCatalogEntry rce = new ReplicaCatalogEntry( "file:///data/" + lfn, "local" );
+            if (i % 10 == 0) {
+                rce.addAttribute( "checksum.value", Integer.toHexString( lfn.hashCode() ) );
+            }
+            value.add( rce );
+            if (i % 3 == 0) {
+                value.add( new ReplicaCatalogEntry( "gsiftp://remote.isi.edu/data/" + lfn, "remote" ) );
+            }
+            result.put( lfn, value );
+        }
+        return result;
+    }
+
+    /**
+     * Compares the result of a lookup with the entries of the LFN looked
+     * up one at a time.
+     */
+    private static void check( JDBCRC rc, Map result, Set<String> lfns ) {
+        for (String lfn : lfns) {
+            Collection expected = rc.lookup( lfn );
+            Collection actual = (Collection) result.get( lfn );
+            if (actual == null || actual.size() != expected.size() ||
+                    !actual.containsAll( expected ) || !expected.containsAll( actual )) {
+                throw new RuntimeException( "Mismatch for " + lfn + " " + actual + " " + expected );
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmark for the LFN counts passed as arguments. By default
+     * the benchmark is run for 10000, 100000 and 1000000 LFNs.
+     *
+     * @param args the number of LFNs.
+     */
+    public static void main( String[] args ) throws Exception {
+        int[] sizes = new int[]{10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt( args[i] );
+            }
+        }
+
+        System.out.println( "********* Benchmark  **********" );
+        for (int lfns : sizes) {
+            File db = File.createTempFile( "jdbcrc", ".db" );
+            db.delete();
+            JDBCRC rc = createCatalog( db );
+            try {
+                //batched insert of all the mappings
+                Map<String, List<ReplicaCatalogEntry>> mappings = createMappings( "f", lfns );
+                long start = System.nanoTime();
+                int inserted = rc.insert( mappings );
+                double batchInserts = inserted / ((System.nanoTime() - start) / 1e9);
+
+                //inserts one mapping at a time
+                Map<String, List<ReplicaCatalogEntry>> single = createMappings( "s", SINGLE_LFNS );
+                int count = 0;
+                start = System.nanoTime();
+                for (Map.Entry<String, List<ReplicaCatalogEntry>> e : single.entrySet()) {
+                    for (ReplicaCatalogEntry rce : e.getValue()) {
+                        count += rc.insert( e.getKey(), rce );
+                    }
+                }
+                double singleInserts = count / ((System.nanoTime() - start) / 1e9);
+
+                //look up all the LFNs, with every tenth one not in the catalog
+                Set<String> query = new LinkedHashSet<String>();
+                for (String lfn : mappings.keySet()) {
+                    query.add( lfn );
+                    if (query.size() % 10 == 0) {
+                        query.add( "unknown" + query.size() );
+                    }
+                }
+                start = System.nanoTime();
+                Map result = rc.lookup( query );
+                double batchLookups = query.size() / ((System.nanoTime() - start) / 1e9);
+
+                start = System.nanoTime();
+                Map local = rc.lookup( query, "local" );
+                double batchSiteLookups = query.size() / ((System.nanoTime() - start) / 1e9);
+
+                //look up one LFN at a time
+                Set<String> sample = new LinkedHashSet<String>();
+                for (String lfn : query) {
+                    if (sample.size() == SINGLE_LFNS) {
+                        break;
+                    }
+                    sample.add( lfn );
+                }
+                start = System.nanoTime();
+                for (String lfn : sample) {
+                    rc.lookup( lfn );
+                }
+                double singleLookups = sample.size() / ((System.nanoTime() - start) / 1e9);
+
+                //sanity check the results
+                if (result.size() != query.size() || local.size() != query.size()) {
+                    throw new RuntimeException( "Missing LFNs in the lookup " + result.size() + " " + query.size() );
+                }
+                check( rc, result, sample );
+
+                System.out.println( "lfns=" + lfns +
+                        " batch-insert=" + (long) batchInserts + " mappings/s" +
+                        " single-insert=" + (long) singleInserts + " mappings/s" +
+                        " batch-lookup=" + (long) batchLookups + " lookups/s" +
+                        " batch-site-lookup=" + (long) batchSiteLookups + " lookups/s" +
+                        " single-lookup=" + (long) singleLookups + " lookups/s" );
+            } finally {
+                rc.close();
+                db.delete();
+            }
+        }
+        System.out.println( "****************************" );
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2007-2014 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks the batch lookups against the Regex replica catalog for an
+ * increasing number of regex rules, and compares them with matching every
+ * LFN against every rule.
+ *
+ * @author Rajiv Mayani
+ */
+public class TestRegex {
+
+    /**
+     * The number of LFNs looked up in a batch.
+     */
+    public static final int LFNS = 100000;
+
+    /**
+     * The number of LFNs looked up with the exhaustive matching.
+     */
+    public static final int EXHAUSTIVE_LFNS = 2000;
+
+    /**
+     * Creates a catalog with the number of rules passed. Most rules have a
+     * literal prefix, some only a literal suffix, and a few neither.
+     */
+    public static Regex createCatalog( int rules ) throws IOException {
+        File f = File.createTempFile( "regex-rc", ".txt" );
+        f.delete();
+        f.deleteOnExit();
+
+        Regex rc = new Regex();
+        rc.connect( f.getAbsolutePath() );
+        HashMap attr = new HashMap();
+        attr.put( Regex.REGEX_KEY, "true" );
+        for (int i = 0; i < rules; i++) {
+            String lfn;
+            switch (i % 20) {
+                case 0:
+                    lfn = "(\\w+)-v" + i + "-(\\d+)";
+                    break;
+                case 1:
+                case 2:
+                case 3:
+                    lfn = ".*_(\\d+)\\.ext" + i;
+                    break;
+                default:
+                    lfn = "set" + i + "_(\\w+)_(\\d+)\\.dat";
+            }
+            ReplicaCatalogEntry rce = new ReplicaCatalogEntry( "gsiftp://storage.isi.edu/data/[1]/[2]/[0]",
+                    new HashMap( attr ) );
+            rce.setResourceHandle( "local" );
+            rc.insert( lfn, rce );
+        }
+        return rc;
+    }
+
+    /**
+     * Creates LFNs that match random rules, with every tenth not matching.
+     */
+    public static Set<String> createLFNs( int rules, int count ) {
+        Random random = new Random( 42 );
+        Set<String> lfns = new LinkedHashSet<String>();
+        for (int j = 0; lfns.size() < count; j++) {
+            int i = random.nextInt( rules );
+            if (j % 10 == 0) {
+                lfns.add( "unknown_" + j + ".txt" );
+                continue;
+            }
+            switch (i % 20) {
+                case 0:
+                    lfns.add( "f" + j + "-v" + i + "-" + j );
+                    break;
+                case 1:
+                case 2:
+                case 3:
+                    lfns.add( "f" + j + "_" + j + ".ext" + i );
+                    break;
+                default:
+                    lfns.add( "set" + i + "_f" + j + "_" + j + ".dat" );
+            }
+        }
+        return lfns;
+    }
+
+    /**
+     * Matches each LFN against every rule in turn, compiling the [n]
+     * substitutions on the fly, as the catalog did before it was indexed.
+     */
+    public static Map<String, List<String>> exhaustiveLookup( Regex rc, Set<String> lfns, String handle ) {
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        for (String lfn : lfns) {
+            List<String> value = new ArrayList<String>();
+            for (Map.Entry<String, Pattern> e : rc.m_lfn_pattern.entrySet()) {
+                Matcher m = e.getValue().matcher( lfn );
+                if (m.matches()) {
+                    for (ReplicaCatalogEntry entry : rc.m_lfn_regex.get( e.getKey() )) {
+                        if (handle.equals( entry.getResourceHandle() )) {
+                            String pfn = entry.getPFN();
+                            for (int k = 0, j = m.groupCount(); k <= j; ++k) {
+                                pfn = pfn.replaceAll( "\\[" + k + "\\]", m.group( k ) );
+                            }
+                            value.add( pfn );
+                        }
+                    }
+                    break;
+                }
+            }
+            result.put( lfn, value );
+        }
+        return result;
+    }
+
+    /**
+     * Runs the benchmark for the rule counts passed as arguments. By default
+     * the benchmark is run for 100, 1000 and 5000 rules.
+     *
+     * @param args the number of rules.
+     */
+    public static void main( String[] args ) throws IOException {
+        int[] sizes = new int[]{100, 1000, 5000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt( args[i] );
+            }
+        }
+
+        System.out.println( "********* Benchmark  **********" );
+        for (int rules : sizes) {
+            Regex rc = createCatalog( rules );
+            Set<String> lfns = createLFNs( rules, LFNS );
+
+            //warm up
+            rc.lookup( createLFNs( rules, 10000 ), "local" );
+
+            long start = System.nanoTime();
+            Map result = rc.lookup( lfns, "local" );
+            double indexed = LFNS / ((System.nanoTime() - start) / 1e9);
+
+            Set<String> sample = new LinkedHashSet<String>();
+            for (String lfn : lfns) {
+                if (sample.size() == EXHAUSTIVE_LFNS) {
+                    break;
+                }
+                sample.add( lfn );
+            }
+            start = System.nanoTime();
+            Map<String, List<String>> expected = exhaustiveLookup( rc, sample, "local" );
+            double exhaustive = EXHAUSTIVE_LFNS / ((System.nanoTime() - start) / 1e9);
+
+            //sanity check the results against the exhaustive matching
+            for (String lfn : sample) {
+                List<String> pfns = new ArrayList<String>();
+                for (Object o : (Collection) result.get( lfn )) {
+                    pfns.add( ((ReplicaCatalogEntry) o).getPFN() );
+                }
+                if (!pfns.equals( expected.get( lfn ) )) {
+                    throw new RuntimeException( "Mismatch for " + lfn + " " + pfns + " " + expected.get( lfn ) );
+                }
+            }
+
+            System.out.println( "rules=" + rules +
+                    " indexed=" + (long) indexed + " lookups/s" +
+                    " exhaustive=" + (long) exhaustive + " lookups/s" +
+                    " speedup=" + (long) (indexed / exhaustive) + "x" );
+            rc.clear();
+            rc.close();
+        }
+        System.out.println( "****************************" );
+    }
+}
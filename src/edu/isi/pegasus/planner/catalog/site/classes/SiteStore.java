@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.isi.pegasus.planner.catalog.classes.SysInfo;
 import edu.isi.pegasus.planner.catalog.transformation.classes.VDSSysInfo;
@@ -44,8 +45,11 @@ import edu.isi.pegasus.planner.transfer.mapper.OutputMapperFactory;
  * @version $Revision$
  */
 public class SiteStore extends AbstractSiteData{
-    
-    
+
+    /**
+     * The scheme for the file URLs to the internal work directories.
+     */
+    private static final String FILE_URL_SCHEME = "file://";
     
     /**
      * The internal map that maps a site catalog entry to the site handle.
@@ -64,6 +68,19 @@ public class SiteStore extends AbstractSiteData{
      * the storage directory or not.
      */
     protected boolean mDeepStorageStructure;
+
+    /**
+     * The memoized external work directories and the URL prefixes to them,
+     * indexed by the file server they were constructed for. File servers are
+     * selected at random per operation, so the table is indexed by the
+     * server rather than by the site and operation.
+     */
+    private Map<FileServer, WorkDirectory> mExternalWorkDirectories;
+
+    /**
+     * The memoized internal work directories indexed by site handle.
+     */
+    private Map<String, WorkDirectory> mInternalWorkDirectories;
     
     /**
      * The default constructor.
@@ -77,6 +94,8 @@ public class SiteStore extends AbstractSiteData{
      */
     public void initialize() {        
         mStore = new HashMap<String, SiteCatalogEntry>( );
+        mExternalWorkDirectories = new ConcurrentHashMap<FileServer, WorkDirectory>();
+        mInternalWorkDirectories = new ConcurrentHashMap<String, WorkDirectory>();
     }
     
     /**
@@ -90,7 +109,10 @@ public class SiteStore extends AbstractSiteData{
         mWorkDir              = properties.getExecDirectory();  
         mDeepStorageStructure = properties.useDeepStorageDirectoryStructure() ;
                                 //||hashedOutputMapperUsed( properties );
-                                  
+
+        //the directories depend on the options
+        mExternalWorkDirectories.clear();
+        mInternalWorkDirectories.clear();
     }
     
     /**
@@ -102,6 +124,7 @@ public class SiteStore extends AbstractSiteData{
      *         if there was no mapping for key
      */
     public SiteCatalogEntry addEntry( SiteCatalogEntry entry ){
+        mInternalWorkDirectories.remove( entry.getSiteHandle() );
         return this.mStore.put( entry.getSiteHandle() , entry );
     }
     
@@ -369,10 +392,46 @@ public class SiteStore extends AbstractSiteData{
             return null;
         }
 
-        url = server.getURLPrefix() + this.getExternalWorkDirectory( server, siteHandle );
+        url = this.getExternalWorkDirectoryEntry( server ).mURL;
 
         return url;
     }
+
+    /**
+     * Returns a URL to a file in the work directory as seen externally
+     * ( including external mount point ).
+     *
+     * @param server        the FileServer to use
+     * @param siteHandle    the site handle.
+     * @param lfn           the lfn of the file.
+     *
+     * @return the url else null
+     */
+    public String getExternalWorkDirectoryURL( FileServer server, String siteHandle, String lfn ){
+        if( server == null ){
+            return null;
+        }
+        return append( this.getExternalWorkDirectoryEntry( server ).mURL, lfn );
+    }
+
+    /**
+     * Returns a file URL to a file in the work directory on a site as seen
+     * internally.
+     *
+     * @param handle  the site handle.
+     * @param path    the relative path that needs to be appended to the
+     *                workdir, can be null.
+     * @param lfn     the lfn of the file.
+     *
+     * @return the file url
+     * @throws RuntimeException in case of site not found in the site catalog.
+     */
+    public String getInternalWorkDirectoryURL( String handle, String path, String lfn ){
+        String directory = this.getInternalWorkDirectory( handle, path );
+        StringBuilder url = new StringBuilder( FILE_URL_SCHEME.length() + directory.length() + lfn.length() + 1 );
+        url.append( FILE_URL_SCHEME ).append( directory ).append( File.separatorChar ).append( lfn );
+        return url.toString();
+    }
     
     /**
      * Return the work directory as seen externally (including external mount point)
@@ -383,6 +442,39 @@ public class SiteStore extends AbstractSiteData{
      * @return    String corresponding to the mount point
      */    
     public String getExternalWorkDirectory( FileServer fs, String siteHandle) {
+        return this.getExternalWorkDirectoryEntry( fs ).mDirectory;
+    }
+
+    /**
+     * Returns the memoized external work directory for a file server,
+     * constructing it if it has not been constructed for the current
+     * options and mount point of the server.
+     *
+     * @param fs   the FileServer with the file system
+     *
+     * @return the memoized work directory
+     */
+    private WorkDirectory getExternalWorkDirectoryEntry( FileServer fs ){
+        WorkDirectory dir = mExternalWorkDirectories.get( fs );
+        String randDir = ( mPlannerOptions == null ) ? null : mPlannerOptions.getRandomDirName();
+        if( dir == null || !dir.matches( fs.getURLPrefix(), fs.getMountPoint(), mWorkDir, randDir ) ){
+            String directory = this.constructExternalWorkDirectory( fs );
+            dir = new WorkDirectory( fs.getURLPrefix(), fs.getMountPoint(), mWorkDir, randDir,
+                                     directory, fs.getURLPrefix() + directory );
+            mExternalWorkDirectories.put( fs, dir );
+        }
+        return dir;
+    }
+
+    /**
+     * Constructs the work directory as seen externally (including external
+     * mount point)
+     *
+     * @param fs          the FileServer with the file system
+     *
+     * @return    String corresponding to the mount point
+     */
+    private String constructExternalWorkDirectory( FileServer fs ) {
         
         StringBuffer path = new StringBuffer();
 
@@ -619,8 +711,41 @@ public class SiteStore extends AbstractSiteData{
                                        " does not exist in the Site Catalog");
         }
 
+        String mountPoint = execPool.getInternalMountPointOfWorkDirectory();
+        String randDir = mPlannerOptions.getRandomDirName();
+        WorkDirectory dir = mInternalWorkDirectories.get( handle );
+        if( dir == null || !dir.matches( null, mountPoint, mWorkDir, randDir ) ){
+            dir = new WorkDirectory( null, mountPoint, mWorkDir, randDir,
+                                     this.constructInternalWorkDirectory( mountPoint, randDir ),
+                                     null );
+            mInternalWorkDirectories.put( handle, dir );
+        }
+        String execPoolDir = dir.mDirectory;
+
+        //path takes precedence over random dir
+        if ( path != null ) {
+            //well i can do nesting conditional return but wont
+            return ( path.length() == 0 || path.charAt( 0 ) != '/' ) ?
+                //append the path
+                new File( execPoolDir, path ).getAbsolutePath()
+                : //else absolute path specified
+                path;
+        }
 
+        return execPoolDir;
+    }
 
+    /**
+     * Constructs the work directory on a site as seen internally, on the
+     * basis of whether an absolute path is specified in the pegasus.dir.exec
+     * directory or a relative path.
+     *
+     * @param mountPoint  the internal mount point of the shared scratch directory
+     * @param randDir     the random directory name, can be null
+     *
+     * @return the path to the work dir.
+     */
+    private String constructInternalWorkDirectory( String mountPoint, String randDir ){
         String execPoolDir = mWorkDir;
 
 
@@ -629,11 +754,9 @@ public class SiteStore extends AbstractSiteData{
         if ( mWorkDir.length() == 0 || mWorkDir.charAt( 0 ) != '/' ) {
             //means you have to append the
             //value specfied by pegasus.dir.exec
-            File f = new File( execPool.getInternalMountPointOfWorkDirectory(), mWorkDir );
+            File f = new File( mountPoint, mWorkDir );
             execPoolDir = f.getAbsolutePath();
         }
-        
-        String randDir = mPlannerOptions.getRandomDirName();
 
         if ( randDir != null) {
             //append the random dir name to the
@@ -642,18 +765,7 @@ public class SiteStore extends AbstractSiteData{
             execPoolDir = f.getAbsolutePath();
         }
 
-        //path takes precedence over random dir
-        if ( path != null ) {
-            //well i can do nesting conditional return but wont
-            return ( path.length() == 0 || path.charAt( 0 ) != '/' ) ?
-                //append the path
-                new File( execPoolDir, path ).getAbsolutePath()
-                : //else absolute path specified
-                path;
-        }
-
         return execPoolDir;
-         
     }
 
     
@@ -741,6 +853,67 @@ public class SiteStore extends AbstractSiteData{
         return mapper.equals( OutputMapperFactory.HASHED_OUTPUT_MAPPER_IMPLEMENTATION );
     }
 
+    /**
+     * Appends a lfn to a directory URL, with a single buffer sized upfront.
+     *
+     * @param url  the url to the directory
+     * @param lfn  the lfn
+     *
+     * @return the url to the file
+     */
+    private static String append( String url, String lfn ){
+        StringBuilder result = new StringBuilder( url.length() + lfn.length() + 1 );
+        result.append( url ).append( File.separatorChar ).append( lfn );
+        return result.toString();
+    }
+
+    /**
+     * An immutable memoized work directory, along with the values it was
+     * constructed from.
+     */
+    private static class WorkDirectory{
+
+        private final String mURLPrefix;
+
+        private final String mMountPoint;
+
+        private final String mWorkDir;
+
+        private final String mRandomDir;
+
+        /**
+         * The work directory.
+         */
+        private final String mDirectory;
+
+        /**
+         * The URL to the work directory, null for internal directories.
+         */
+        private final String mURL;
+
+        public WorkDirectory( String urlPrefix, String mountPoint, String workDir, String randDir,
+                              String directory, String url ){
+            mURLPrefix  = urlPrefix;
+            mMountPoint = mountPoint;
+            mWorkDir    = workDir;
+            mRandomDir  = randDir;
+            mDirectory  = directory;
+            mURL        = url;
+        }
+
+        /**
+         * Returns whether the directory was constructed from the values passed.
+         */
+        public boolean matches( String urlPrefix, String mountPoint, String workDir, String randDir ){
+            return equals( mURLPrefix, urlPrefix ) && equals( mMountPoint, mountPoint ) &&
+                   equals( mWorkDir, workDir ) && equals( mRandomDir, randDir );
+        }
+
+        private static boolean equals( String a, String b ){
+            return ( a == null ) ? b == null : a.equals( b );
+        }
+    }
+
 
 
 
@@ -79,6 +79,18 @@ public abstract class Mapper {
      */
     protected LogManager mLogger;
 
+    /**
+     * The number of lookups answered from the TCMap without querying the
+     * transformation catalog.
+     */
+    protected long mCacheHits;
+
+    /**
+     * The number of lookups for which the transformation catalog was
+     * queried.
+     */
+    protected long mCacheMisses;
+
     /**
      * Loads the implementing class corresponding to the mode specified by the user
      * at runtime in the properties file.
@@ -121,6 +133,8 @@ public abstract class Mapper {
         mProps    = bag.getPegasusProperties();
         mSiteStore= bag.getHandleToSiteStore();
         mTCMap    = new TCMap();
+        mCacheHits   = 0;
+        mCacheMisses = 0;
     }
 
     /**
@@ -167,14 +181,21 @@ public abstract class Mapper {
      */
     public List getTCList( String namespace, String name, String version,
         String siteid ) {
+        String lfn = Separator.combine( namespace, name, version );
+        if ( mTCMap.isResolved( lfn, siteid ) ) {
+            mCacheHits++;
+            return mTCMap.lookupSiteTCEntries( lfn, siteid );
+        }
+
+        mCacheMisses++;
         List siteids = new ArrayList( 1 );
         List tcentries = null;
-        String lfn = Separator.combine( namespace, name, version );
         siteids.add( siteid );
 
         if ( getSiteMap( namespace, name, version, siteids ) != null ) {
             tcentries = mTCMap.getSiteTCEntries( lfn, siteid );
         }
+        mTCMap.setResolved( lfn, siteids );
         return tcentries;
     }
 
@@ -190,11 +211,18 @@ public abstract class Mapper {
      */
     public List getSiteList( String namespace, String name, String version,
         List siteids ) {
-        List sites = null;
         String lfn = Separator.combine( namespace, name, version );
+        if ( mTCMap.isResolved( lfn, siteids ) ) {
+            mCacheHits++;
+            return mTCMap.getResolvedSiteList( lfn, siteids );
+        }
+
+        mCacheMisses++;
+        List sites = null;
         if ( getSiteMap( namespace, name, version, siteids ) != null ) {
             sites = mTCMap.getSiteList( lfn, siteids );
         }
+        mTCMap.setResolved( lfn, siteids );
         return sites;
     }
 
@@ -210,13 +238,55 @@ public abstract class Mapper {
      */
     public boolean isSiteValid( String namespace, String name, String version,
         String siteid ) {
+        String lfn = Separator.combine( namespace, name, version );
+        if ( mTCMap.isResolved( lfn, siteid ) ) {
+            mCacheHits++;
+            List entries = mTCMap.lookupSiteTCEntries( lfn, siteid );
+            return entries != null && !entries.isEmpty();
+        }
+
+        mCacheMisses++;
         List siteids = new ArrayList( 1 );
         siteids.add( siteid );
         Map m = getSiteMap( namespace, name, version, siteids );
+        mTCMap.setResolved( lfn, siteids );
         return ( m == null || m.isEmpty() ) ?
             false :
             true;
 
     }
 
+    /**
+     * Discards what the mapper knows about a transformation. To be called
+     * after entries for the transformation are inserted into the
+     * transformation catalog, once the mapper has been queried for it.
+     *
+     * @param namespace  the namespace of the transformation.
+     * @param name       the name of the transformation.
+     * @param version    the version of the transformation.
+     */
+    public void invalidate( String namespace, String name, String version ) {
+        mTCMap.clearResolved( Separator.combine( namespace, name, version ) );
+    }
+
+    /**
+     * Returns the number of lookups answered from the TCMap, without
+     * querying the transformation catalog.
+     *
+     * @return the number of hits
+     */
+    public long getCacheHits() {
+        return mCacheHits;
+    }
+
+    /**
+     * Returns the number of lookups for which the transformation catalog had
+     * to be queried.
+     *
+     * @return the number of misses
+     */
+    public long getCacheMisses() {
+        return mCacheMisses;
+    }
+
 }
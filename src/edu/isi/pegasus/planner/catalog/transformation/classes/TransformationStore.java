@@ -18,6 +18,8 @@ package edu.isi.pegasus.planner.catalog.transformation.classes;
 import edu.isi.pegasus.common.util.Separator;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -187,6 +189,38 @@ public class TransformationStore {
         return result;
     }
 
+    /**
+     * Returns List of TransformationCatalogEntry objects for a transformation
+     * on a list of sites and a type, in a single pass over the entries for the
+     * transformation. The entries are returned in the order of the sites
+     * passed.
+     *
+     * @param completeName  the complete name of the transformation
+     * @param sites         the sites on which to search for entries
+     * @param type          the type to match on . null means all types.
+     *
+     * @return List if entries are found , else empty list.
+     */
+    public List<TransformationCatalogEntry> getEntries( String completeName, Collection<String> sites, TCType type ){
+        List<TransformationCatalogEntry> result = new ArrayList<TransformationCatalogEntry>();
+        Map<String,List<TransformationCatalogEntry>> m = mTCStore.get( completeName );
+        if( m == null ){
+            return result;
+        }
+        for( String site : sites ){
+            List<TransformationCatalogEntry> l = m.get( site );
+            if( l == null ){
+                continue;
+            }
+            for( TransformationCatalogEntry entry : l ){
+                if( type == null || entry.getType().equals( type ) ){
+                    result.add( entry );
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns all the entries in the Transformation Store
      * 
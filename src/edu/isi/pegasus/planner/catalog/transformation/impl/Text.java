@@ -287,16 +287,11 @@ public class Text extends Abstract
                    resourceids + ", " + type);
         List results = null;
         if (resourceids != null) {
-            for (Iterator i = resourceids.iterator(); i.hasNext(); ) {
-                List tempresults = lookup(namespace, name, version,
-                                                (String) i.next(), type);
-                if (tempresults != null) {
-                    if (results == null) {
-                        results = new ArrayList();
-                    }
-                    results.addAll(tempresults);
-                }
-            }
+            //retrieve the entries for all the sites in one pass
+            List tempresults = mTCStore.getEntries( Separator.combine(namespace, name, version),
+                                                    resourceids,
+                                                    type );
+            results = tempresults.isEmpty() ? null : tempresults;
         }
         else {
             List tempresults = lookup(namespace, name, version, (String)null,
@@ -20,6 +20,7 @@ import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 import edu.isi.pegasus.planner.catalog.transformation.classes.TransformationStore;
 import edu.isi.pegasus.planner.dax.Invoke;
+import edu.isi.pegasus.planner.partitioner.graph.CompactGraph;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
@@ -118,13 +119,22 @@ public class ADag extends Data implements Graph{
      * Initialises the class member variables.
      */
     public ADag() {
+        this( new MapGraph() );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param implementor  the Graph implementation to store the workflow in.
+     */
+    public ADag( Graph implementor ) {
          mDAGInfo          = new DagInfo();
         mSubmitDirectory = ".";
         mWorkflowUUID    = generateWorkflowUUID();
         mRootWorkflowUUID = null;
         mWorkflowRefinementStarted = false;
         mNotifications = new Notifications();
-        mGraphImplementor = new MapGraph();
+        mGraphImplementor = implementor;
         resetStores();
     }
 
@@ -183,7 +193,9 @@ public class ADag extends Data implements Graph{
      * @return the clone of the object.
      */
     public Object clone(){
-        ADag newAdag        = new ADag();
+        ADag newAdag        = new ADag( ( mGraphImplementor instanceof CompactGraph )?
+                                        new CompactGraph():
+                                        new MapGraph() );
 //        newAdag.mDAGInfo     = (DagInfo)this.mDAGInfo.clone();
 //        newAdag.vJobSubInfos= (Vector)this.vJobSubInfos.clone();
         newAdag.setBaseSubmitDirectory( this.mSubmitDirectory );
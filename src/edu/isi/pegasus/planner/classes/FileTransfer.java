@@ -274,6 +274,28 @@ public class FileTransfer extends PegasusFile {
         return getSourceURL( false );
     }
 
+    /**
+     * Returns all the source URLs for the transfer. The map is indexed by
+     * the site, and the values are the lists of URL's on that site. The
+     * internal map is returned, and not a copy.
+     *
+     * @return Map
+     */
+    public Map<String,List<String>> getSourceURLs(){
+        return this.mSourceMap;
+    }
+
+    /**
+     * Returns all the destination URLs for the transfer. The map is indexed by
+     * the site, and the values are the lists of URL's on that site. The
+     * internal map is returned, and not a copy.
+     *
+     * @return Map
+     */
+    public Map<String,List<String>> getDestURLs(){
+        return this.mDestMap;
+    }
+
     /**
      * Returns a single source url associated with the transfer.
      * If random is set to false, thensource url returned is first entry from
@@ -31,6 +31,7 @@ import edu.isi.pegasus.planner.catalog.TransformationCatalog;
 import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
 
 import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.code.SubmitDirectoryLayout;
 import java.util.Map;
 
 /**
@@ -51,7 +52,8 @@ public class PegasusBag
     public static final String PEGASUS_INFO[] = {
         "pegasus-properties", "planner-options", "replica-catalog", "site-catalog",
         "transformation-catalog", "transformation-mapper", "pegasus-logger", "site-store",
-        "planner-cache", "worker-package-map", "uses-pmc" , "planner-metrics"
+        "planner-cache", "worker-package-map", "uses-pmc" , "planner-metrics",
+        "submit-directory-layout"
     };
 
 
@@ -131,6 +133,12 @@ public class PegasusBag
      */
     public static final Integer PLANNER_METRICS = new Integer( 11  );
 
+    /**
+     * The constant to be passed to the accessor functions to get or set the
+     * layout of the per job files in the submit directory.
+     */
+    public static final Integer SUBMIT_DIRECTORY_LAYOUT = Integer.valueOf( 12 );
+
     /**
      * The handle to the <code>PegasusProperties</code>.
      */
@@ -193,6 +201,11 @@ public class PegasusBag
      * The planner metrics to use.
      */
     private PlannerMetrics mPMetrics;
+
+    /**
+     * The layout of the per job files in the submit directory.
+     */
+    private SubmitDirectoryLayout mSubmitDirectoryLayout;
     
     /**
      * The default constructor.
@@ -299,6 +312,13 @@ public class PegasusBag
                     valid = false;
                 break;
 
+            case 12: //SUBMIT_DIRECTORY_LAYOUT
+                if ( value != null && value instanceof SubmitDirectoryLayout )
+                    mSubmitDirectoryLayout = (SubmitDirectoryLayout) value;
+                else
+                    valid = false;
+                break;
+
             default:
                 throw new RuntimeException(
                       " Wrong Pegasus Bag key. Please use one of the predefined Integer key types");
@@ -329,7 +349,7 @@ public class PegasusBag
         }
         catch( Exception e ){}
 
-        return ( k >= PegasusBag.PEGASUS_PROPERTIES.intValue() && k <= PegasusBag.PLANNER_METRICS.intValue() );
+        return ( k >= PegasusBag.PEGASUS_PROPERTIES.intValue() && k <= PegasusBag.SUBMIT_DIRECTORY_LAYOUT.intValue() );
     }
 
     /**
@@ -381,6 +401,9 @@ public class PegasusBag
 
             case 11://PLANNER METRICS
                 return this.mPMetrics;
+
+            case 12://SUBMIT DIRECTORY LAYOUT
+                return this.mSubmitDirectoryLayout;
                 
             default:
                 throw new RuntimeException(
@@ -482,6 +505,16 @@ public class PegasusBag
         return ( Boolean )get( PegasusBag.USES_PMC );
     }
 
+    /**
+     * A convenice method to get the layout of the per job files in the
+     * submit directory.
+     *
+     * @return  the layout, or null if not set
+     */
+    public SubmitDirectoryLayout getSubmitDirectoryLayout(){
+        return ( SubmitDirectoryLayout )get( PegasusBag.SUBMIT_DIRECTORY_LAYOUT );
+    }
+
 
     /**
      * A convenience method to get the intValue for the object passed.
@@ -28,6 +28,7 @@ import edu.isi.pegasus.planner.catalog.site.classes.FileServerType.OPERATION;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -196,6 +197,26 @@ public class PlannerCache extends Data
         }
     }
 
+    /**
+     * Returns all the entries in the cache for a particular type of URL.
+     *
+     * @param type  the type of URL.
+     *
+     * @return Map indexed by the LFN, where each value is a collection of
+     *         <code>ReplicaCatalogEntry</code> objects.
+     */
+    public Map<String,Collection<ReplicaCatalogEntry>> entries( OPERATION type ){
+        if( type == OPERATION.get ){
+            return mGetRCCache.lookup( mGetRCCache.list() );
+        }
+        else if( type == OPERATION.put ){
+            return mPutRCCache.lookup( mPutRCCache.list() );
+        }
+        else{
+            throw new RuntimeException( "Unsupported operation type for planner cache " + type );
+        }
+    }
+
     /**
      * Explicitely free resources before the garbage collection hits.
      */
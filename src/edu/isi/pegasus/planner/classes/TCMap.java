@@ -23,6 +23,8 @@ import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -62,12 +64,32 @@ public class TCMap {
 
     private LogManager mLogger;
 
+    /**
+     * Maps a fully qualified lfn to the sites for which the transformation
+     * catalog has been queried, including the sites with no valid entries.
+     */
+    private Map<String,Set<String>> mResolvedSites;
+
+    /**
+     * The last list of valid sites computed for a lfn, indexed by the lfn.
+     */
+    private Map<String,SiteList> mSiteLists;
+
+    /**
+     * Incremented whenever the map is modified, to invalidate the computed
+     * lists of valid sites.
+     */
+    private int mVersion;
+
     /**
      * Default constructor. Initializes the tcmap to 10 lfns.
      */
     public TCMap() {
         mLogger = LogManagerFactory.loadSingletonInstance();
         mTCMap = new HashMap( 10 );
+        mResolvedSites = new HashMap<String,Set<String>>();
+        mSiteLists = new HashMap<String,SiteList>();
+        mVersion = 0;
     }
 
     /**
@@ -89,6 +111,7 @@ public class TCMap {
      * @see org.griphyn.common.catalog.TransformationCatalogEntry
      */
     public boolean setSiteMap( String fqlfn, Map sitemap ) {
+        mVersion++;
         mTCMap.put( fqlfn, sitemap );
         return true;
     }
@@ -190,6 +213,114 @@ public class TCMap {
             result;
     }
 
+    /**
+     * Returns the entries for a transformation on a site, without logging
+     * if there are none.
+     *
+     * @param fqlfn  the fully qualified logical name of the transformation
+     * @param siteid the site
+     *
+     * @return the List of entries, null if no entries exist.
+     */
+    public List lookupSiteTCEntries( String fqlfn, String siteid ) {
+        Map sitemap = ( Map ) mTCMap.get( fqlfn );
+        return ( sitemap == null ) ? null : ( List ) sitemap.get( siteid );
+    }
+
+    /**
+     * Records that the transformation catalog has been queried for a
+     * transformation on a set of sites, and all the valid entries for the
+     * sites have been added to the map.
+     *
+     * @param fqlfn  the fully qualified logical name of the transformation
+     * @param sites  the sites
+     */
+    public void setResolved( String fqlfn, Collection sites ) {
+        Set<String> resolved = mResolvedSites.get( fqlfn );
+        if ( resolved == null ) {
+            resolved = new HashSet<String>();
+            mResolvedSites.put( fqlfn, resolved );
+        }
+        if ( resolved.addAll( sites ) ) {
+            mVersion++;
+        }
+    }
+
+    /**
+     * Forgets the entries and the resolved sites for a transformation, so
+     * that the transformation catalog is queried again on the next lookup.
+     *
+     * @param fqlfn  the fully qualified logical name of the transformation
+     */
+    public void clearResolved( String fqlfn ) {
+        mTCMap.remove( fqlfn );
+        mResolvedSites.remove( fqlfn );
+        mSiteLists.remove( fqlfn );
+        mVersion++;
+    }
+
+    /**
+     * Returns whether the transformation catalog has been queried for a
+     * transformation on a site.
+     *
+     * @param fqlfn  the fully qualified logical name of the transformation
+     * @param siteid the site
+     *
+     * @return boolean
+     */
+    public boolean isResolved( String fqlfn, String siteid ) {
+        Set<String> resolved = mResolvedSites.get( fqlfn );
+        return resolved != null && resolved.contains( siteid );
+    }
+
+    /**
+     * Returns whether the transformation catalog has been queried for a
+     * transformation on all the sites passed.
+     *
+     * @param fqlfn  the fully qualified logical name of the transformation
+     * @param sites  the List of sites
+     *
+     * @return boolean
+     */
+    public boolean isResolved( String fqlfn, List sites ) {
+        Set<String> resolved = mResolvedSites.get( fqlfn );
+        if ( resolved == null ) {
+            return false;
+        }
+        for ( Iterator it = sites.iterator(); it.hasNext(); ) {
+            if ( !resolved.contains( it.next() ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the valid sites for a transformation among a list of sites,
+     * that have all been resolved. The result is computed once for a list
+     * of sites, and returned again for a list with the same sites in the
+     * same order till the map is modified.
+     *
+     * @param fqlfn The logical name of the transformation
+     * @param sites The list of siteids
+     *
+     * @return an unmodifiable list of the siteids which are valid, null if
+     *         none are valid.
+     */
+    public List getResolvedSiteList( String fqlfn, List sites ) {
+        SiteList cached = mSiteLists.get( fqlfn );
+        if ( cached != null && cached.mVersion == mVersion &&
+             cached.mSites.equals( sites ) ) {
+            return cached.mResult;
+        }
+        List result = this.getSiteList( fqlfn, sites );
+        if ( result != null ) {
+            result = Collections.unmodifiableList( result );
+        }
+        mSiteLists.put( fqlfn, new SiteList( sites, mVersion, result ) );
+        return result;
+    }
+
     /**
      * This method allows to add a TransformationCatalogEntry object in the map
      * to a particular transformation for a particular site
@@ -215,6 +346,7 @@ public class TCMap {
             sitemap.put( siteid, tcentries );
         }
         tcentries.add( entry );
+        mVersion++;
         return true;
     }
 
@@ -255,4 +387,32 @@ public class TCMap {
         }
         return sb.toString();
     }
+
+    /**
+     * The valid sites computed for a list of sites.
+     */
+    private static class SiteList {
+
+        /**
+         * A copy of the list of sites the valid sites were computed for, as
+         * the list passed may be modified afterwards.
+         */
+        private final List mSites;
+
+        /**
+         * The version of the map the valid sites were computed against.
+         */
+        private final int mVersion;
+
+        /**
+         * The valid sites.
+         */
+        private final List mResult;
+
+        public SiteList( List sites, int version, List result ) {
+            mSites   = new ArrayList( sites );
+            mVersion = version;
+            mResult  = result;
+        }
+    }
 }
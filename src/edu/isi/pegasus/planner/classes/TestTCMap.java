@@ -0,0 +1,136 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import edu.isi.pegasus.common.util.Separator;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the time taken to look up the valid sites for the transformations
+ * in a TCMap, with the site lists cached once the sites are resolved, and
+ * computed on each lookup.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class TestTCMap {
+
+    /**
+     * The number of sites the transformations are looked up on.
+     */
+    public static final int SITES = 50;
+
+    /**
+     * The number of transformations, each installed on every other site.
+     */
+    public static final int TRANSFORMATIONS = 20;
+
+    /**
+     * The number of times the lookups are timed.
+     */
+    public static final int ROUNDS = 3;
+
+    public TestTCMap() {
+    }
+
+    /**
+     * Creates the map with the entries for the transformations, with all the
+     * sites resolved.
+     *
+     * @param sites  the sites
+     * @param lfns   the fully qualified names of the transformations
+     *
+     * @return the map
+     */
+    public static TCMap createMap( List<String> sites, String[] lfns ){
+        TCMap map = new TCMap();
+        for( int t = 0; t < lfns.length; t++ ){
+            for( int s = 0; s < sites.size(); s += 2 ){
+                TransformationCatalogEntry entry = new TransformationCatalogEntry( "pegasus", "t" + t, "1.0" );
+                entry.setResourceId( sites.get( s ) );
+                map.setSiteTCEntries( lfns[t], sites.get( s ), entry );
+            }
+            map.setResolved( lfns[t], sites );
+        }
+        return map;
+    }
+
+    /**
+     * Looks up the valid sites for the transformations in turn.
+     *
+     * @param map      the map
+     * @param sites    the sites
+     * @param lfns     the fully qualified names of the transformations
+     * @param lookups  the number of lookups
+     * @param cached   whether to use the cached site lists
+     *
+     * @return the number of valid sites returned across the lookups
+     */
+    public static long lookup( TCMap map, List<String> sites, String[] lfns, int lookups, boolean cached ){
+        long result = 0;
+        for( int i = 0; i < lookups; i++ ){
+            String lfn = lfns[ i % lfns.length ];
+            List valid = cached ?
+                         map.getResolvedSiteList( lfn, sites ):
+                         map.getSiteList( lfn, sites );
+            result += valid.size();
+        }
+        return result;
+    }
+
+    /**
+     * Runs the comparison for the number of lookups passed as argument. By
+     * default 1000000 lookups are timed.
+     *
+     * @param args the number of lookups.
+     */
+    public static void main( String[] args ){
+        int lookups = 1000000;
+        if( args.length > 0 ){
+            lookups = Integer.parseInt( args[0] );
+        }
+
+        List<String> sites = new ArrayList<String>( SITES );
+        for( int s = 0; s < SITES; s++ ){
+            sites.add( "site" + s );
+        }
+        String[] lfns = new String[ TRANSFORMATIONS ];
+        for( int t = 0; t < TRANSFORMATIONS; t++ ){
+            lfns[t] = Separator.combine( "pegasus", "t" + t, "1.0" );
+        }
+        TCMap map = createMap( sites, lfns );
+
+        System.out.println( "********* Benchmark  **********" );
+        for( int r = 0; r < ROUNDS; r++ ){
+            long start = System.nanoTime();
+            long found = lookup( map, sites, lfns, lookups, true );
+            long cached = ( System.nanoTime() - start ) / 1000000;
+
+            start = System.nanoTime();
+            found += lookup( map, sites, lfns, lookups, false );
+            long uncached = ( System.nanoTime() - start ) / 1000000;
+
+            System.out.println( "round=" + r + " lookups=" + lookups +
+                                " cached=" + cached + " ms" +
+                                " uncached=" + uncached + " ms" +
+                                " sites=" + found );
+        }
+        System.out.println( "****************************" );
+    }
+}
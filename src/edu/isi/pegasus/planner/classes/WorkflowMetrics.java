@@ -22,6 +22,10 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * A Workflow metrics class that stores the metrics about the workflow.
  *
@@ -132,6 +136,65 @@ public class WorkflowMetrics extends Data implements Cloneable{
      * The total number of  jobs in the executable workflow.
      */
     @SerializedName("total_jobs") @Expose private int mNumTotalJobs;
+
+    /**
+     * The number of LFNs looked up in the replica catalog index that had
+     * locations.
+     */
+    @SerializedName("rc_index_hits") @Expose private int mNumRCIndexHits;
+
+    /**
+     * The number of LFNs looked up in the replica catalog index that had no
+     * locations.
+     */
+    @SerializedName("rc_index_misses") @Expose private int mNumRCIndexMisses;
+
+    /**
+     * The number of LFNs screened against the replica catalog filter.
+     */
+    @SerializedName("rc_filter_probes") @Expose private int mNumRCFilterProbes;
+
+    /**
+     * The number of LFNs the replica catalog filter screened out, that were
+     * not looked up in the replica catalog.
+     */
+    @SerializedName("rc_filter_negatives") @Expose private int mNumRCFilterNegatives;
+
+    /**
+     * The number of LFNs that passed the replica catalog filter, but were not
+     * found in the replica catalog.
+     */
+    @SerializedName("rc_filter_false_positives") @Expose private int mNumRCFilterFalsePositives;
+
+    /**
+     * The fraction of the LFNs not in the replica catalog, that passed the
+     * replica catalog filter.
+     */
+    @SerializedName("rc_filter_false_positive_rate") @Expose private double mRCFilterFalsePositiveRate;
+
+    /**
+     * The number of stage in file transfers that were not created, as the
+     * file was already being staged to the staging site for another job.
+     */
+    @SerializedName("si_dedup_transfers") @Expose private int mNumSIDedupTransfers;
+
+    /**
+     * The number of bytes in the deduplicated stage in file transfers. Only
+     * files with a known size contribute.
+     */
+    @SerializedName("si_dedup_bytes") @Expose private long mNumSIDedupBytes;
+
+    /**
+     * The number of edges added from existing stage in jobs to jobs that
+     * reuse the files staged by them.
+     */
+    @SerializedName("si_dedup_edges") @Expose private int mNumSIDedupEdges;
+
+    /**
+     * The statistics for the lookups against each of the replica catalogs
+     * queried by a multiple replica catalog, indexed by the catalog name.
+     */
+    @SerializedName("rc_backends") @Expose private Map<String,ReplicaBackendMetrics> mRCBackendMetrics;
     
     
     
@@ -155,6 +218,7 @@ public class WorkflowMetrics extends Data implements Cloneable{
     public WorkflowMetrics() {
         reset( true );
         mLockTaskMetrics = false;
+        mRCBackendMetrics = new LinkedHashMap<String,ReplicaBackendMetrics>();
     }
 
     /**
@@ -210,6 +274,166 @@ public class WorkflowMetrics extends Data implements Cloneable{
         return mDAXLabel;
     }
 
+    /**
+     * Increments the counters for the lookups in the replica catalog index.
+     * The counters are not affected by reset.
+     *
+     * @param hits    the number of LFNs that had locations in the index
+     * @param misses  the number of LFNs that had no locations in the index
+     */
+    public void incrementReplicaIndexMetrics( int hits, int misses ){
+        mNumRCIndexHits   += hits;
+        mNumRCIndexMisses += misses;
+    }
+
+    /**
+     * Returns the number of LFNs looked up in the replica catalog index that
+     * had locations.
+     *
+     * @return the number of hits
+     */
+    public int getReplicaIndexHits(){
+        return mNumRCIndexHits;
+    }
+
+    /**
+     * Returns the number of LFNs looked up in the replica catalog index that
+     * had no locations.
+     *
+     * @return the number of misses
+     */
+    public int getReplicaIndexMisses(){
+        return mNumRCIndexMisses;
+    }
+
+    /**
+     * Increments the counters for the LFNs screened against the replica
+     * catalog filter. The counters are not affected by reset.
+     *
+     * @param probes          the number of LFNs screened
+     * @param negatives       the number of LFNs screened out
+     * @param falsePositives  the number of LFNs that passed, but were not
+     *                        found in the replica catalog
+     */
+    public void incrementReplicaFilterMetrics( int probes, int negatives, int falsePositives ){
+        mNumRCFilterProbes         += probes;
+        mNumRCFilterNegatives      += negatives;
+        mNumRCFilterFalsePositives += falsePositives;
+        int absent = mNumRCFilterNegatives + mNumRCFilterFalsePositives;
+        mRCFilterFalsePositiveRate = ( absent == 0 ) ? 0 : (double)mNumRCFilterFalsePositives / absent;
+    }
+
+    /**
+     * Returns the number of LFNs screened against the replica catalog filter.
+     *
+     * @return the number of LFNs
+     */
+    public int getReplicaFilterProbes(){
+        return mNumRCFilterProbes;
+    }
+
+    /**
+     * Returns the number of LFNs the replica catalog filter screened out.
+     *
+     * @return the number of LFNs
+     */
+    public int getReplicaFilterNegatives(){
+        return mNumRCFilterNegatives;
+    }
+
+    /**
+     * Returns the number of LFNs that passed the replica catalog filter, but
+     * were not found in the replica catalog.
+     *
+     * @return the number of LFNs
+     */
+    public int getReplicaFilterFalsePositives(){
+        return mNumRCFilterFalsePositives;
+    }
+
+    /**
+     * Returns the observed false positive rate of the replica catalog filter.
+     *
+     * @return the rate between 0 and 1
+     */
+    public double getReplicaFilterFalsePositiveRate(){
+        return mRCFilterFalsePositiveRate;
+    }
+
+    /**
+     * Increments the counters for the lookups against a replica catalog
+     * queried by a multiple replica catalog. The counters are not affected
+     * by reset.
+     *
+     * @param name      the name of the catalog
+     * @param lookups   the number of bulk lookups the catalog answered
+     * @param hits      the number of LFNs found in the catalog
+     * @param timeouts  the number of bulk lookups that timed out
+     * @param time      the time in milliseconds spent in the lookups
+     */
+    public void incrementReplicaBackendMetrics( String name, int lookups, int hits, int timeouts, long time ){
+        ReplicaBackendMetrics metrics = mRCBackendMetrics.get( name );
+        if( metrics == null ){
+            metrics = new ReplicaBackendMetrics();
+            mRCBackendMetrics.put( name, metrics );
+        }
+        metrics.mLookups  += lookups;
+        metrics.mHits     += hits;
+        metrics.mTimeouts += timeouts;
+        metrics.mTime     += time;
+    }
+
+    /**
+     * Returns the statistics for the lookups against the replica catalogs
+     * queried by a multiple replica catalog.
+     *
+     * @return map indexed by the catalog name
+     */
+    public Map<String,ReplicaBackendMetrics> getReplicaBackendMetrics(){
+        return Collections.unmodifiableMap( mRCBackendMetrics );
+    }
+
+    /**
+     * Increments the counters for the deduplicated stage in transfers. The
+     * counters are not affected by reset.
+     *
+     * @param transfers  the number of file transfers deduplicated
+     * @param bytes      the number of bytes in the deduplicated transfers
+     * @param edges      the number of edges added to existing stage in jobs
+     */
+    public void incrementStageInDedupMetrics( int transfers, long bytes, int edges ){
+        mNumSIDedupTransfers += transfers;
+        mNumSIDedupBytes     += bytes;
+        mNumSIDedupEdges     += edges;
+    }
+
+    /**
+     * Returns the number of deduplicated stage in file transfers.
+     *
+     * @return the number of transfers
+     */
+    public int getStageInDedupTransfers(){
+        return mNumSIDedupTransfers;
+    }
+
+    /**
+     * Returns the number of bytes in the deduplicated stage in file transfers.
+     *
+     * @return the number of bytes
+     */
+    public long getStageInDedupBytes(){
+        return mNumSIDedupBytes;
+    }
+
+    /**
+     * Returns the number of edges added to existing stage in jobs.
+     *
+     * @return the number of edges
+     */
+    public int getStageInDedupEdges(){
+        return mNumSIDedupEdges;
+    }
+
     /**
      * Sets the lock task metrics parameters.
      * If the lock is set, the task metrics are no longer updated on subsequent
@@ -579,6 +803,31 @@ public class WorkflowMetrics extends Data implements Cloneable{
         append( sb, "cleanup-jobs.count", this.mNumCleanupJobs );
         append( sb, "total-jobs.count", this.mNumTotalJobs );
 
+        //replica catalog index related metrics
+        append( sb, "rc-index-hits.count", this.mNumRCIndexHits );
+        append( sb, "rc-index-misses.count", this.mNumRCIndexMisses );
+
+        //replica catalog filter related metrics
+        append( sb, "rc-filter-probes.count", this.mNumRCFilterProbes );
+        append( sb, "rc-filter-negatives.count", this.mNumRCFilterNegatives );
+        append( sb, "rc-filter-false-positives.count", this.mNumRCFilterFalsePositives );
+        append( sb, "rc-filter-false-positive.rate", Double.toString( this.mRCFilterFalsePositiveRate ) );
+
+        //stage in deduplication related metrics
+        append( sb, "si-dedup-transfers.count", this.mNumSIDedupTransfers );
+        append( sb, "si-dedup-bytes.count", Long.toString( this.mNumSIDedupBytes ) );
+        append( sb, "si-dedup-edges.count", this.mNumSIDedupEdges );
+
+        //multiple replica catalog related metrics
+        for( Map.Entry<String,ReplicaBackendMetrics> entry : this.mRCBackendMetrics.entrySet() ){
+            String prefix = "rc-backend." + entry.getKey();
+            ReplicaBackendMetrics metrics = entry.getValue();
+            append( sb, prefix + ".lookups.count", metrics.mLookups );
+            append( sb, prefix + ".hits.count", metrics.mHits );
+            append( sb, prefix + ".timeouts.count", metrics.mTimeouts );
+            append( sb, prefix + ".time.ms", Long.toString( metrics.mTime ) );
+        }
+
         return sb.toString();
     }
 
@@ -665,8 +914,64 @@ public class WorkflowMetrics extends Data implements Cloneable{
         wm.mNumIntermediateFiles = this.mNumIntermediateFiles;
         wm.mNumOutputFiles    = this.mNumOutputFiles;
         wm.mNumTotalFiles     = this.mNumTotalFiles;
+        wm.mRCBackendMetrics  = new LinkedHashMap<String,ReplicaBackendMetrics>();
+        for( Map.Entry<String,ReplicaBackendMetrics> entry : this.mRCBackendMetrics.entrySet() ){
+            wm.mRCBackendMetrics.put( entry.getKey(), (ReplicaBackendMetrics)entry.getValue().clone() );
+        }
         return wm;
     }
 
+    /**
+     * The statistics for the lookups against a replica catalog queried by a
+     * multiple replica catalog.
+     */
+    public static class ReplicaBackendMetrics implements Cloneable {
+
+        /**
+         * The number of bulk lookups the catalog answered.
+         */
+        @SerializedName("lookups") @Expose private int mLookups;
+
+        /**
+         * The number of LFNs found in the catalog.
+         */
+        @SerializedName("hits") @Expose private int mHits;
+
+        /**
+         * The number of bulk lookups that timed out.
+         */
+        @SerializedName("timeouts") @Expose private int mTimeouts;
+
+        /**
+         * The time in milliseconds spent in the lookups.
+         */
+        @SerializedName("time_ms") @Expose private long mTime;
+
+        public int getLookups(){
+            return mLookups;
+        }
+
+        public int getHits(){
+            return mHits;
+        }
+
+        public int getTimeouts(){
+            return mTimeouts;
+        }
+
+        public long getTime(){
+            return mTime;
+        }
+
+        public Object clone(){
+            try{
+                return super.clone();
+            }
+            catch( CloneNotSupportedException e ){
+                throw new RuntimeException( e );
+            }
+        }
+    }
+
 
 }
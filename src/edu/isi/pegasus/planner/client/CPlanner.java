@@ -54,6 +54,7 @@ import edu.isi.pegasus.planner.parser.Parser;
 import edu.isi.pegasus.planner.parser.dax.Callback;
 import edu.isi.pegasus.planner.parser.dax.DAXParser;
 import edu.isi.pegasus.planner.refiner.MainEngine;
+import edu.isi.pegasus.planner.refiner.WorkflowCheckpoint;
 
 import gnu.getopt.Getopt;
 import gnu.getopt.LongOpt;
@@ -638,9 +639,23 @@ public class CPlanner extends Executable{
 
         //populate the singleton instance for user options
         //UserOptions opts = UserOptions.getInstance(mPOptions);
-        MainEngine cwmain = new MainEngine( orgDag, mBag );
+        ADag finalDag = null;
+        PegasusBag bag = mBag;
+        String checkpoint = mProps.getWorkflowCheckpointFile();
+        if( checkpoint == null ){
+            MainEngine cwmain = new MainEngine( orgDag, mBag );
+            finalDag = cwmain.runPlanner();
+            bag = cwmain.getPegasusBag();
+        }
+        else{
+            //skip the refinement and pick up the executable
+            //workflow from an earlier planner run
+            finalDag = loadWorkflowCheckpoint( orgDag, new File( checkpoint ) );
+        }
 
-        ADag finalDag = cwmain.runPlanner();
+        if( mProps.writeWorkflowCheckpoint() ){
+            writeWorkflowCheckpoint( finalDag, bag );
+        }
 
         //store the workflow metrics from the final dag into
         //the planner metrics
@@ -648,7 +663,7 @@ public class CPlanner extends Executable{
 
         //we only need the script writer for daglite megadag generator mode
         CodeGenerator codeGenerator = null;
-        codeGenerator = CodeGeneratorFactory.loadInstance( cwmain.getPegasusBag() );
+        codeGenerator = CodeGeneratorFactory.loadInstance( bag );
 
 
         //before generating the codes for the workflow check
@@ -706,6 +721,55 @@ public class CPlanner extends Executable{
         return result;
     }
 
+    /**
+     * Loads the executable workflow from a checkpoint written out by an
+     * earlier planner run, instead of running the refinement process.
+     *
+     * @param dag   the workflow parsed from the DAX
+     * @param file  the checkpoint file
+     *
+     * @return the executable workflow
+     */
+    protected ADag loadWorkflowCheckpoint( ADag dag, File file ){
+        long start = System.currentTimeMillis();
+        try{
+            new WorkflowCheckpoint( mBag ).load( file, dag );
+        }
+        catch( IOException ioe ){
+            throw new RuntimeException( "Unable to load workflow checkpoint " + file, ioe );
+        }
+        mLogger.log( "Loaded " + dag.size() + " jobs from workflow checkpoint " + file +
+                     " in " + ( System.currentTimeMillis() - start ) + " ms",
+                     LogManager.INFO_MESSAGE_LEVEL );
+        return dag;
+    }
+
+    /**
+     * Writes out a checkpoint of the executable workflow in the submit
+     * directory, that can be loaded by a later planner run.
+     *
+     * @param dag  the executable workflow
+     * @param bag  the bag of initialization objects
+     */
+    protected void writeWorkflowCheckpoint( ADag dag, PegasusBag bag ){
+        long start = System.currentTimeMillis();
+        File file = new File( mPOptions.getSubmitDirectory(),
+                              edu.isi.pegasus.planner.code.generator.Abstract.getDAGFilename(
+                                                    mPOptions,
+                                                    dag.getLabel(),
+                                                    dag.getIndex(),
+                                                    WorkflowCheckpoint.CHECKPOINT_FILE_SUFFIX ) );
+        try{
+            new WorkflowCheckpoint( bag ).write( dag, file );
+        }
+        catch( IOException ioe ){
+            throw new RuntimeException( "Unable to write out workflow checkpoint " + file, ioe );
+        }
+        mLogger.log( "Written out workflow checkpoint " + file + " in " +
+                     ( System.currentTimeMillis() - start ) + " ms",
+                     LogManager.INFO_MESSAGE_LEVEL );
+    }
+
     /**
      * Returns the name of the noop job.
      *
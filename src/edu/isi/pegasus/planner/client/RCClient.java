@@ -16,6 +16,7 @@
 
 package edu.isi.pegasus.planner.client;
 
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -23,6 +24,7 @@ import java.io.LineNumberReader;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -48,6 +50,7 @@ import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogException;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
+import edu.isi.pegasus.planner.catalog.replica.impl.ReplicaBloomFilter;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import gnu.getopt.Getopt;
 import gnu.getopt.LongOpt;
@@ -129,6 +132,17 @@ public class RCClient extends Toolkit {
      */
     private String m_conf_property_file = null;
 
+    /**
+     * The filter over the LFNs in the replica catalog, that the inserted LFNs
+     * are added to. Null if there is no filter that is up to date.
+     */
+    private ReplicaBloomFilter m_filter = null;
+
+    /**
+     * The number of LFNs added to the filter.
+     */
+    private int m_filter_added = 0;
+
     /**
      * Initializes the root logger when this class is loaded.
      */
@@ -346,6 +360,16 @@ public class RCClient extends Toolkit {
   
         m_rc = ReplicaFactory.loadInstance(properties, file);
 
+	// open the filter before inserting, while it matches the catalog
+	String filterDir = properties.getReplicaCatalogFilterDirectory();
+	if (filterDir != null) {
+	    try {
+		m_filter = ReplicaBloomFilter.open(properties, new File(filterDir));
+	    } catch (IOException e) {
+		m_log.warn("Unable to open replica catalog filter in " + filterDir + ": " + e.getMessage());
+	    }
+	}
+
 	// auto-disconnect, should we forget it, or die in an orderly fashion
 	Runtime.getRuntime().addShutdownHook(new Thread() {
 	    public void run() {
@@ -377,6 +401,40 @@ public class RCClient extends Toolkit {
 	    m_rc.close();
 	    m_rc = null;
 	}
+	// the catalog is written out on close, bring the filter up to date
+	if (m_filter != null && m_filter_added > 0) {
+	    try {
+		m_filter.save();
+		m_log.debug("added " + m_filter_added + " LFNs to replica catalog filter " + m_filter.getFile());
+	    } catch (IOException e) {
+		m_log.warn("Unable to update replica catalog filter " + m_filter.getFile() + ": " + e.getMessage());
+	    }
+	    m_filter = null;
+	}
+    }
+
+    /**
+     * Adds inserted LFNs to the replica catalog filter, if there is one. The
+     * filter is removed instead if a regular expression entry is inserted.
+     *
+     * @param entries
+     *            the inserted entries, a collection of entries for each LFN
+     */
+    private void addToFilter(Map entries) {
+	if (m_filter == null) {
+	    return;
+	}
+	for (Iterator i = entries.values().iterator(); i.hasNext();) {
+	    if (!ReplicaBloomFilter.canFilter((Collection) i.next())) {
+		m_log.warn("Removing replica catalog filter " + m_filter.getFile()
+			+ " as regular expression entries were inserted");
+		m_filter.discard();
+		m_filter = null;
+		return;
+	    }
+	}
+	m_filter.addAll(entries.keySet());
+	m_filter_added += entries.size();
     }
 
     /**
@@ -555,6 +613,7 @@ public class RCClient extends Toolkit {
 	    }// end of iteration over the lines
 	    if (command.equals("insert")) {
 		result = m_rc.insert(entries);
+		addToFilter(entries);
 		m_log.info("inserted " + result + " entries");
 	    } else {
 		result = m_rc.delete(entries, false);
@@ -682,6 +741,7 @@ public class RCClient extends Toolkit {
 
 		if (cmd.equals("insert")) {
 		    result = m_rc.insert(lfn, rce);
+		    addToFilter(Collections.singletonMap(lfn, Collections.singleton(rce)));
 		    m_log.info("inserted " + result + " entries");
 		} else {
 		    result = rce.getAttributeCount() == 0 ? m_rc.delete(lfn,
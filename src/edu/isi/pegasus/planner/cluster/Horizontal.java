@@ -35,6 +35,14 @@ import edu.isi.pegasus.planner.provenance.pasoa.producer.XMLProducerFactory;
 
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -123,6 +131,12 @@ public class Horizontal implements Clusterer,
      */
     private PPS mPPS;
 
+    /**
+     * The thread pool constructing the clustered jobs. Is null if the jobs
+     * are clustered serially.
+     */
+    private ExecutorService mExecutor;
+
 
     /**
      * Singleton access to the job comparator.
@@ -184,6 +198,8 @@ public class Horizontal implements Clusterer,
         mCollapseMap = this.constructMap(mProps.getCollapseFactors());
         mReplacementTable = new HashMap();
         mSubInfoMap = new HashMap();
+        int threads = mProps.getHorizontalClustererThreads();
+        mExecutor = ( threads > 1 ) ? this.createExecutor( threads ) : null;
 
         for(Iterator<GraphNode> it = mScheduledDAG.jobIterator();it.hasNext();){
             //pass the jobs to the callback
@@ -229,6 +245,10 @@ public class Horizontal implements Clusterer,
      * In case of both parameters being associated with the jobs in a group, the
      * bundle parameter overrides collapse parameter.
      *
+     * The groups are clustered in parallel if a thread pool is configured,
+     * but the clustered jobs are always added to the workflow in the same
+     * order with the same ids.
+     *
      * @param partition   the partition for which the clusters need to be
      *                    determined.
      *
@@ -253,7 +273,8 @@ public class Horizontal implements Clusterer,
        //traverse through the list and collapse jobs
        //referring to same logical transformation
        Job previous = null;
-       List clusterList = new LinkedList();
+       List clusterList = new ArrayList();
+       List<ClusterTask> tasks = new ArrayList<ClusterTask>();
        Job job = null;
        for(Iterator it = l.iterator();it.hasNext();){
            job = (Job)it.next();
@@ -263,16 +284,17 @@ public class Horizontal implements Clusterer,
            }
            else{
                //at boundary collapse jobs
-               collapseJobs(previous.getStagedExecutableBaseName(),clusterList,partition.getID());
-               clusterList = new LinkedList();
+               collapseJobs(previous.getStagedExecutableBaseName(),clusterList,partition.getID(), tasks);
+               clusterList = new ArrayList();
                clusterList.add(job);
            }
            previous = job;
        }
        //cluster the last clusterList
        if(previous != null){
-           collapseJobs(previous.getStagedExecutableBaseName(), clusterList, partition.getID());
+           collapseJobs(previous.getStagedExecutableBaseName(), clusterList, partition.getID(), tasks);
        }
+       addToWorkflow( tasks );
 
     }
 
@@ -294,22 +316,27 @@ public class Horizontal implements Clusterer,
 
     /**
      * Collapses the jobs having the same logical name according to the sites
-     * where they are scheduled.
+     * where they are scheduled. The checks against the transformation catalog
+     * and the assignment of the ids to the clustered jobs are done serially.
+     * The clustered jobs for a site are constructed by a task, that is run
+     * right away if no thread pool is configured, else is submitted to the
+     * pool. The tasks are added to the list in the order in which the
+     * clustered jobs are to be added to the workflow.
      *
      * @param name         the logical name of the jobs in the list passed to
      *                     this function.
      * @param jobs         the list <code>Job</code> objects corresponding
      *                     to the jobs that have the same logical name.
      * @param partitionID  the ID of the partition to which the jobs belong.
+     * @param tasks        the list to which the tasks created are added.
      */
-    private void collapseJobs( String name, List jobs, String partitionID ){
+    private void collapseJobs( String name, List jobs, String partitionID, List<ClusterTask> tasks ){
         String key  = null;
         Job job = null;
         List l      = null;
         //internal map that keeps the jobs according to the execution pool
         Map tempMap    = new java.util.HashMap();
         int[] cFactor  = new int[] {0, 0, 0, 0}; //the collapse factor for collapsing the jobs
-        AggregatedJob fatJob = null;
 
         mLogger.log("Clustering jobs of type " + name,
                     LogManager.DEBUG_MESSAGE_LEVEL);
@@ -328,14 +355,13 @@ public class Horizontal implements Clusterer,
             }
             else{
                 //first instance of this logical name
-                l = new java.util.LinkedList();
+                l = new ArrayList();
                 l.add(job);
                 tempMap.put(key,l);
             }
         }
 
         //iterate through the built up temp map to get jobs per execution pool
-        String factor = null;
         int size = -1;
         //the id for the fatjobs. we want ids
         //unique across the execution pools for a
@@ -373,367 +399,750 @@ public class Horizontal implements Clusterer,
                 continue;
             }
 
-        // Does the user prefer runtime based clustering?
-	    if (mProps.getHorizontalClusterPreference() != null
-		    && mProps.getHorizontalClusterPreference().equalsIgnoreCase("runtime")) {
-
-        List<List<Job>> bins = null;
-        String sMaxRunTime = (String) ((Job) l.get( 0 )).vdsNS.get(Pegasus.MAX_RUN_TIME);
-
-        // Does the user prefer to cluster jobs into bins of a fixed capacity?
-        // If not, cluster jobs evenly into a fixed number of bins.
-        // The number of bins should be specified through clusters.num property
-        if (sMaxRunTime != null) {
-            double maxRunTime = -1;
-            try {
-                maxRunTime = Double.parseDouble(sMaxRunTime);
-            } catch (RuntimeException e) {
-                throw new RuntimeException( "Profile key "
-                    + Pegasus.MAX_RUN_TIME
-                    + " is either not set, or is not a valid number.",
-                    e );
+            // Does the user prefer runtime based clustering?
+            String preference = mProps.getSnapshot().getHorizontalClusterPreference();
+            if (preference != null && preference.equalsIgnoreCase("runtime")) {
+                //the number of clustered jobs is only known once the jobs
+                //are packed into bins. only the jobs mapped to the first
+                //site are clustered
+                schedule( new RuntimeClusterTask( name, partitionID, id, aggregator,
+                                                  key, l, cFactor, job ),
+                          tasks );
+                tempMap = null;
+                return;
             }
 
+            //we do collapsing in chunks of 3 instead of picking up
+            //from the properties file. ceiling is (x + y -1)/y
+            //cFactor = (size + 2)/3;
             mLogger.log( "\t Clustering jobs mapped to execution site " + key
-                    + " having maximum run time  " + cFactor[2],
-                    LogManager.DEBUG_MESSAGE_LEVEL );
-
-            Collections.sort(l, getBinPackingComparator());
-
-            mLogger.log(
-                    "Job Type: " + ((Job) l.get( 0 )).getCompleteTCName()
-                            + " max runtime " + maxRunTime,
-                    LogManager.DEBUG_MESSAGE_LEVEL );
-
-            mLogger.log( "Clustering into fixed capacity bins " + maxRunTime,
-                    LogManager.DEBUG_MESSAGE_LEVEL );
-
-            bins = bestFitBinPack( l, maxRunTime );
-        } else {
-            int clusterNum = 1;
-            String bundle = (String) job.vdsNS.get( Pegasus.BUNDLE_KEY );
-
-            if (bundle != null) {
-                clusterNum = Integer.parseInt(bundle);
+                    + " with collapse factor " + cFactor[0] + ","
+                    + cFactor[1], LogManager.DEBUG_MESSAGE_LEVEL );
+            List<List<Job>> bins = new ArrayList<List<Job>>();
+            if (cFactor[0] >= size) {
+                // means collapse all the jobs in the list as a fat node
+                bins.add( l.subList( 0, size ) );
             } else {
-                mLogger.log( "Neither " + Pegasus.MAX_RUN_TIME + ", nor " + Pegasus.BUNDLE_KEY +
-                        " specified. Merging all tasks into one job",
-                        LogManager.WARNING_MESSAGE_LEVEL );
+                // do collapsing in chunks of cFactor
+                int increment = 0;
+                for (int i = 0; i < size; i = i + increment) {
+                    // compute the increment and decrement cFactor[1]
+                    increment = (cFactor[1] > 0) ? cFactor[0] + 1
+                            : cFactor[0];
+                    cFactor[1]--;
+
+                    if (increment == 1) {
+                        // we can exit out of the loop as we do not want
+                        // any merging for single jobs
+                        break;
+                    }
+                    bins.add( l.subList( i, Math.min( i + increment, size ) ) );
+                }
             }
-
-            mLogger.log( "Clustering into fixed number of bins " + clusterNum,
-                    LogManager.DEBUG_MESSAGE_LEVEL );
-
-            Collections.sort(l, getBinPackingComparator());
-            bins = bestFitBinPack( l, clusterNum );
+            schedule( new ClusterTask( name, partitionID, id, aggregator, bins ), tasks );
+            id += bins.size();
         }
 
-		mLogger.log( "Jobs are merged into " + bins.size()
-		        + " clustered jobs.", LogManager.DEBUG_MESSAGE_LEVEL );
-
-		for (List<Job> bin : bins) {
-		    fatJob = aggregator.constructAbstractAggregatedJob( bin,
-			    name, constructID( partitionID, id ) );
-
-		    updateReplacementTable( bin, fatJob );
-
-		    // increment the id
-		    id++;
+        //explicity free the map
+        tempMap = null;
+    }
 
-		    // add the fat job to the dag
-		    // use the method to add, else add explicitly to DagInfo
-		    mScheduledDAG.add( fatJob );
+    /**
+     * Runs a task right away if no thread pool is configured, and adds the
+     * clustered jobs to the workflow. Else the task is submitted to the pool.
+     * The task is added to the list of tasks in either case.
+     *
+     * @param task   the task to be run.
+     * @param tasks  the list of tasks for the partition.
+     */
+    private void schedule( ClusterTask task, List<ClusterTask> tasks ){
+        if( mExecutor == null ){
+            task.call();
+            task.addToWorkflow();
+        }
+        else{
+            task.mFuture = mExecutor.submit( task );
+        }
+        tasks.add( task );
+    }
 
-		    // log the refiner action capturing the creation of the job
-		    this.logRefinerAction( fatJob, aggregator );
-		}
-		tempMap = null;
-		return;
-	    }
+    /**
+     * Waits for the tasks submitted to the thread pool to finish, and adds
+     * the clustered jobs constructed by them to the workflow in the order in
+     * which the tasks were created.
+     *
+     * @param tasks  the tasks for a partition.
+     */
+    private void addToWorkflow( List<ClusterTask> tasks ){
+        if( mExecutor == null ){
+            //the clustered jobs have already been added
+            return;
+        }
+        boolean interrupted = false;
+        for( ClusterTask task : tasks ){
+            while( true ){
+                try{
+                    task.mFuture.get();
+                    break;
+                }
+                catch( InterruptedException e ){
+                    interrupted = true;
+                }
+                catch( ExecutionException e ){
+                    Throwable cause = e.getCause();
+                    if( cause instanceof RuntimeException ){
+                        throw (RuntimeException)cause;
+                    }
+                    if( cause instanceof Error ){
+                        throw (Error)cause;
+                    }
+                    throw new RuntimeException( "Unable to cluster jobs of type " + task.mName, cause );
+                }
+            }
+            task.addToWorkflow();
+        }
+        if( interrupted ){
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            //we do collapsing in chunks of 3 instead of picking up
-            //from the properties file. ceiling is (x + y -1)/y
-            //cFactor = (size + 2)/3;
-	    else {
-		mLogger.log( "\t Clustering jobs mapped to execution site " + key
-		        + " with collapse factor " + cFactor[0] + ","
-		        + cFactor[1], LogManager.DEBUG_MESSAGE_LEVEL );
-		if (cFactor[0] >= size) {
-
-		    // means collapse all the jobs in the list as a fat node
-		    // Note: Passing a link to iterator might be more efficient,
-		    // as
-		    // this would only require a single traversal through the
-		    // list
-		    fatJob = aggregator.constructAbstractAggregatedJob(
-			    l.subList( 0, size ), name,
-			    constructID( partitionID, id ) );
-		    updateReplacementTable( l.subList( 0, size ), fatJob );
-
-		    // increment the id
-		    id++;
-		    // add the fat job to the dag
-		    // use the method to add, else add explicitly to DagInfo
-		    mScheduledDAG.add( fatJob );
-
-		    // log the refiner action capturing the creation of the job
-		    this.logRefinerAction( fatJob, aggregator );
-		} else {
-		    // do collapsing in chunks of cFactor
-		    int increment = 0;
-		    for (int i = 0; i < size; i = i + increment) {
-			// compute the increment and decrement cFactor[1]
-			increment = (cFactor[1] > 0) ? cFactor[0] + 1
-			        : cFactor[0];
-			cFactor[1]--;
-
-			if (increment == 1) {
-			    // we can exit out of the loop as we do not want
-			    // any merging for single jobs
-			    break;
-			} else if ((i + increment) < size) {
-			    fatJob = aggregator.constructAbstractAggregatedJob(
-				    l.subList( i, i + increment ), name,
-				    constructID( partitionID, id ) );
-
-			    updateReplacementTable(
-				    l.subList( i, i + increment ), fatJob );
-			} else {
-			    fatJob = aggregator.constructAbstractAggregatedJob(
-				    l.subList( i, size ), name,
-				    constructID( partitionID, id ) );
-			    updateReplacementTable( l.subList( i, size ),
-				    fatJob );
-			}
-
-			// increment the id
-			id++;
-
-			// add the fat job to the dag
-			// use the method to add, else add explicitly to DagInfo
-			mScheduledDAG.add( fatJob );
-
-			// log the refiner action capturing the creation of the
-			// job
-			this.logRefinerAction( fatJob, aggregator );
-		    }
-		}
-	    }
+    /**
+     * Creates the thread pool used for constructing the clustered jobs.
+     *
+     * @param threads  the number of threads.
+     *
+     * @return the executor
+     */
+    private ExecutorService createExecutor( int threads ){
+        ThreadFactory factory = new ThreadFactory(){
+            private int mCount = 0;
+
+            public synchronized Thread newThread( Runnable r ){
+                Thread t = new Thread( r, "pegasus-horizontal-clusterer-" + mCount++ );
+                t.setDaemon( true );
+                return t;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads,
+                                                              1L, TimeUnit.SECONDS,
+                                                              new ArrayBlockingQueue<Runnable>( threads * 16 ),
+                                                              factory,
+                                                              new ThreadPoolExecutor.CallerRunsPolicy() );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
 
+    /**
+     * Sorts the jobs in decreasing order of their runtimes. The sort is
+     * stable, so jobs with the same runtime retain their order. The runtimes
+     * are compared exactly, as truncating their difference to an int does not
+     * give a consistent ordering for fractional runtimes, and the sort fails
+     * for larger levels.
+     *
+     * @param runtimes  the runtimes of the jobs.
+     *
+     * @return the indices of the jobs in the sorted order.
+     */
+    static int[] sortByRuntime( final double[] runtimes ){
+        Integer[] order = new Integer[ runtimes.length ];
+        for( int i = 0; i < order.length; i++ ){
+            order[i] = i;
         }
-
-        //explicity free the map
-        tempMap = null;
+        Arrays.sort( order, new Comparator<Integer>() {
+            public int compare( Integer job1, Integer job2 ) {
+                return Double.compare( runtimes[ job2 ], runtimes[ job1 ] );
+            }
+        });
+        int[] result = new int[ order.length ];
+        for( int i = 0; i < result.length; i++ ){
+            result[i] = order[i];
+        }
+        return result;
     }
 
     /**
-     * Perform best fit bin packing.
+     * Packs the jobs into bins of a fixed capacity using first fit. The jobs
+     * are placed in the first open bin that has space for them, and a bin is
+     * closed once it does not have space for the job with the smallest
+     * runtime. Jobs with a runtime greater than the capacity are not
+     * clustered.
      *
-     * @param jobs
-     *            List of jobs sorted in decreasing order of the job runtime.
-     * @param maxTime
-     *            The maximum time for which the clustered job should run.
-     * @return List of List of Jobs where each List <Job> is the set of jobs
-     *         which should be clustered together so as to run in under maxTime.
+     * The minimum runtime of the open bins is maintained in a segment tree
+     * over the bins in the order of their creation, so that the first bin
+     * with space for a job is found in logarithmic time.
+     *
+     * @param runtimes  the runtimes of the jobs sorted in decreasing order.
+     * @param maxTime   the maximum time for which the clustered job should run.
+     *
+     * @return the bins in the order the closed bins were closed followed by
+     *         the open bins, with each bin holding the indices of the jobs.
      */
-    private List<List<Job>> bestFitBinPack(List<Job> jobs, double maxTime) {
+    static Bins firstFitBinPack( double[] runtimes, double maxTime ){
+        int n = runtimes.length;
+        //at most one bin is created per job
+        double min = ( n > 0 ) ? runtimes[ n - 1 ] : Double.MAX_VALUE;
+        int leaves = 1;
+        while( leaves < n ){
+            leaves <<= 1;
+        }
+        //NaN marks a closed or an unused bin
+        double[] tree = new double[ 2 * leaves ];
+        Arrays.fill( tree, Double.NaN );
+
+        double[] times = new double[ n ];
+        int[] first    = new int[ n ];
+        int[] last     = new int[ n ];
+        int[] sizes    = new int[ n ];
+        int[] next     = new int[ n ];
+        boolean[] closed = new boolean[ n ];
+        int[] closedOrder = new int[ n ];
+        int closedCount = 0;
+        int binCount = 0;
+        int open = 0;
+        int newest = -1;
+
+        for( int j = 0; j < n; j++ ){
+            double runtime = runtimes[j];
+            next[j] = -1;
+
+            if( open == 0 ){
+                //create an empty bin
+                newest = binCount++;
+                first[ newest ] = -1;
+                open++;
+                updateBinTree( tree, leaves, newest, 0d );
+            }
 
-	List<List<Job>> bins = new LinkedList<List<Job>>();
-	List<List<Job>> returnBins = new LinkedList<List<Job>>();
-	List<Double> binTime = new LinkedList<Double>();
-	double minJobRunTime = Double.MAX_VALUE;
+            //jobs greater than the max allowed runtime are not clustered
+            if( maxTime < runtime ){
+                continue;
+            }
 
-	if (jobs != null && jobs.size() > 0) {
-	    minJobRunTime = Double.parseDouble( getRunTime( jobs.get( jobs
-		    .size() - 1 ) ) );
-	}
+            int bin = -1;
+            if( maxTime >= tree[1] + runtime ){
+                //descend to the leftmost bin that has space for the job
+                int node = 1;
+                while( node < leaves ){
+                    node = ( maxTime >= tree[ 2 * node ] + runtime ) ? 2 * node : 2 * node + 1;
+                }
+                bin = node - leaves;
+            }
 
-	for (Job j : jobs) {
-	    List<Job> bin;
-	    double currentBinTime;
-	    boolean isBreak = false;
-	    double jobRunTime = Double.parseDouble( getRunTime( j ) );
-
-	    mLogger.log( "Job " + j.getID() + " runtime " + jobRunTime,
-		    LogManager.DEBUG_MESSAGE_LEVEL );
-
-	    // Create first bin.
-	    if (bins.size() == 0) {
-		bins.add( new LinkedList<Job>() );
-		binTime.add( 0, 0d );
-	    }
-
-	    // Loop through each job.
-	    for (int i = 0, k = bins.size(); i < k; ++i) {
-		currentBinTime = binTime.get( i );
-
-		// Is the job runtime greater than the max allowed runtime? Then
-		// do not cluster this job.
-		if (maxTime < jobRunTime) {
-		    mLogger.log( "Job " + j.getID() + " runtime " + jobRunTime
-			    + " is greater than clusters max run time "
-			    + maxTime + " specified by the Pegasus profile "
-			    + Pegasus.MAX_RUN_TIME,
-			    LogManager.DEBUG_MESSAGE_LEVEL );
-		    break;
-		}
-
-		// Can we fit the job in an existing bin?
-		if (maxTime >= currentBinTime + jobRunTime) {
-		    bin = bins.get( i );
-		    bin.add( j );
-		    binTime.set( i, currentBinTime + jobRunTime );
-		    isBreak = true;
-		} else if (i == k - 1) {
-		    // We cannot fit the job in any of the open bins, so create
-		    // a new one.
-		    bin = new LinkedList<Job>();
-		    bin.add( j );
-		    bins.add( bin );
-		    binTime.add( binTime.size(), jobRunTime );
-		}
-
-		// Either this bin is full, or it does not even have space to
-		// fit the job with the smallest run time. So lets avoid trying
-		// to fit jobs in this bin.
-		if (binTime.get( i ) + minJobRunTime > maxTime) {
-		    returnBins.add( bins.remove( i ) );
-		    binTime.remove( i );
-		}
-
-		// Job has been assigned a bin, no need to check other bins for
-		// space.
-		if (isBreak)
-		    break;
-	    }
-	}
+            if( bin >= 0 ){
+                if( first[ bin ] == -1 ){
+                    first[ bin ] = j;
+                }
+                else{
+                    next[ last[ bin ] ] = j;
+                }
+                last[ bin ] = j;
+                sizes[ bin ]++;
+                times[ bin ] = times[ bin ] + runtime;
+                if( times[ bin ] + min > maxTime ){
+                    closedOrder[ closedCount++ ] = bin;
+                    closed[ bin ] = true;
+                    open--;
+                    updateBinTree( tree, leaves, bin, Double.NaN );
+                }
+                else{
+                    updateBinTree( tree, leaves, bin, times[ bin ] );
+                }
+            }
+            else{
+                //no open bin has space. create a new one
+                int previous = newest;
+                newest = binCount++;
+                first[ newest ] = j;
+                last[ newest ] = j;
+                sizes[ newest ] = 1;
+                times[ newest ] = runtime;
+                open++;
+                updateBinTree( tree, leaves, newest, runtime );
+
+                //the previously created bin is the only one that may not
+                //have been checked for space since a job was added to it
+                if( !closed[ previous ] && times[ previous ] + min > maxTime ){
+                    closedOrder[ closedCount++ ] = previous;
+                    closed[ previous ] = true;
+                    open--;
+                    updateBinTree( tree, leaves, previous, Double.NaN );
+                }
+            }
+        }
 
-	returnBins.addAll( bins );
-	return returnBins;
+        int[] order = new int[ binCount ];
+        System.arraycopy( closedOrder, 0, order, 0, closedCount );
+        for( int b = 0, i = closedCount; b < binCount; b++ ){
+            if( !closed[b] ){
+                order[ i++ ] = b;
+            }
+        }
+        Bins result = new Bins( binCount );
+        for( int i = 0; i < binCount; i++ ){
+            int b = order[i];
+            int[] bin = new int[ sizes[b] ];
+            for( int j = first[b], k = 0; j != -1 && k < bin.length; j = next[j], k++ ){
+                bin[k] = j;
+            }
+            result.mJobs[i] = bin;
+            result.mTimes[i] = times[b];
+        }
+        return result;
     }
 
     /**
-     * Perform best fit bin packing.
+     * Updates the time of a bin in the segment tree holding the minimum time
+     * of the open bins.
      *
-     * @param jobs    List of jobs sorted in decreasing order of the job runtime.
-     * @param maxBins The fixed-number of bins taht should be created
-     * @return List of List of Jobs where each List <Job> is the set of jobs
-     * which should be clustered together so as to run in under maxTime.
+     * @param tree    the segment tree.
+     * @param leaves  the number of leaves in the tree.
+     * @param bin     the bin to update.
+     * @param time    the time of the bin, or NaN if the bin is closed.
      */
-    private List<List<Job>> bestFitBinPack(List<Job> jobs, int maxBins) {
+    private static void updateBinTree( double[] tree, int leaves, int bin, double time ){
+        int node = bin + leaves;
+        tree[ node ] = time;
+        for( node >>= 1; node >= 1; node >>= 1 ){
+            double left  = tree[ 2 * node ];
+            double right = tree[ 2 * node + 1 ];
+            tree[ node ] = Double.isNaN( left ) ? right :
+                           ( Double.isNaN( right ) || left <= right ) ? left : right;
+        }
+    }
 
+    /**
+     * Packs the jobs into a fixed number of bins, by adding each job to the
+     * bin with the shortest combined runtime.
+     *
+     * @param runtimes  the runtimes of the jobs sorted in decreasing order.
+     * @param maxBins   the fixed number of bins that should be created.
+     *
+     * @return the bins with each bin holding the indices of the jobs.
+     */
+    static Bins leastLoadedBinPack( double[] runtimes, int maxBins ){
         class Bin {
-            private List<Job> bin = new LinkedList<Job>();
+            private int[] jobs = new int[ 4 ];
+            private int size = 0;
             private double time = 0;
 
-            public void addJob(Job j) {
-                bin.add(j);
-                double jobRunTime = Double.parseDouble(getRunTime(j));
-                time += jobRunTime;
-            }
-
-            public List<Job> getJobs() {
-                return bin;
-            }
-
-            public double getTime() {
-                return time;
+            public void addJob( int j, double runtime ) {
+                if( size == jobs.length ){
+                    jobs = Arrays.copyOf( jobs, size * 2 );
+                }
+                jobs[ size++ ] = j;
+                time += runtime;
             }
         }
 
         PriorityQueue<Bin> bins = new PriorityQueue<Bin>(maxBins, new Comparator<Bin>() {
-            @Override
             public int compare(Bin bin1, Bin bin2) {
-                return (int) (bin1.getTime() - bin2.getTime());
+                return Double.compare( bin1.time, bin2.time );
             }
         });
 
         // Initialize the bins, to the specified number of bins.
         // If the number of jobs n is less than @maxBins then create n bins
-        maxBins = Math.min(maxBins, jobs.size());
+        maxBins = Math.min(maxBins, runtimes.length);
 
         for (int i = 0; i < maxBins; ++i) {
             bins.add(new Bin());
         }
 
-        for (Job j : jobs) {
-            Bin bin;
-            mLogger.log("Job " + j.getID() + " runtime " + getRunTime(j),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
-
+        for( int j = 0; j < runtimes.length; j++ ){
             // Add the job to the bin with the shortest combined runtime
-            bin = bins.poll();
-            bin.addJob(j);
+            Bin bin = bins.poll();
+            bin.addJob( j, runtimes[j] );
             bins.offer(bin);
         }
 
-        List<List<Job>> returnBins = new LinkedList<List<Job>>();
-
+        Bins result = new Bins( bins.size() );
+        int i = 0;
         for (Bin b : bins) {
-            mLogger.log("Bin Size: " + b.getTime(), LogManager.DEBUG_MESSAGE_LEVEL);
-            returnBins.add(b.getJobs());
+            result.mJobs[i] = Arrays.copyOf( b.jobs, b.size );
+            result.mTimes[i] = b.time;
+            i++;
         }
+        return result;
+    }
 
-        return returnBins;
+    /**
+     * The bins into which the jobs are packed.
+     */
+    static class Bins {
+
+        /**
+         * The indices of the jobs in each bin.
+         */
+        final int[][] mJobs;
+
+        /**
+         * The combined runtime of each bin.
+         */
+        final double[] mTimes;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param size  the number of bins.
+         */
+        Bins( int size ){
+            mJobs  = new int[ size ][];
+            mTimes = new double[ size ];
+        }
     }
 
-    private String getRunTime(Job job) {
+    /**
+     * Constructs the clustered jobs for the jobs of a particular type mapped
+     * to a site. The clustered jobs are constructed by the call method that
+     * may run on the thread pool, and are added to the workflow by the thread
+     * clustering the partition.
+     */
+    private class ClusterTask implements Callable<ClusterTask> {
 
-	String sTmp = (String) job.vdsNS.get( Pegasus.RUNTIME_KEY );
-	if (sTmp != null && sTmp.length() > 0) {
-	    return sTmp;
-	}
+        /**
+         * The logical name of the jobs.
+         */
+        protected final String mName;
 
-	sTmp = (String) job.vdsNS.get(Pegasus.DEPRECATED_RUNTIME_KEY );
-	if (sTmp != null && sTmp.length() > 0) {
-	    mLogger.log( "The profile " + Pegasus.DEPRECATED_RUNTIME_KEY
-		    + " will be deprecated. It will be replaced with "
-		    + Pegasus.RUNTIME_KEY, LogManager.WARNING_MESSAGE_LEVEL );
-	    return sTmp;
-	}
+        /**
+         * The ID of the partition to which the jobs belong.
+         */
+        protected final String mPartitionID;
+
+        /**
+         * The id of the first clustered job.
+         */
+        protected final int mFirstID;
+
+        /**
+         * The aggregator constructing the clustered jobs.
+         */
+        protected final JobAggregator mAggregator;
+
+        /**
+         * The jobs making up each clustered job.
+         */
+        protected List<List<Job>> mBins;
+
+        /**
+         * The clustered jobs constructed.
+         */
+        protected AggregatedJob[] mClusteredJobs;
+
+        /**
+         * The result of the task if submitted to the thread pool.
+         */
+        protected Future<ClusterTask> mFuture;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param name         the logical name of the jobs.
+         * @param partitionID  the ID of the partition to which the jobs belong.
+         * @param id           the id of the first clustered job.
+         * @param aggregator   the aggregator constructing the clustered jobs.
+         * @param bins         the jobs making up each clustered job.
+         */
+        public ClusterTask( String name, String partitionID, int id,
+                            JobAggregator aggregator, List<List<Job>> bins ){
+            mName        = name;
+            mPartitionID = partitionID;
+            mFirstID     = id;
+            mAggregator  = aggregator;
+            mBins        = bins;
+        }
+
+        /**
+         * Constructs the clustered jobs.
+         *
+         * @return the task itself.
+         */
+        public ClusterTask call(){
+            List<List<Job>> bins = this.getBins();
+            mClusteredJobs = new AggregatedJob[ bins.size() ];
+            int i = 0;
+            for( List<Job> bin : bins ){
+                mClusteredJobs[i] = mAggregator.constructAbstractAggregatedJob(
+                                            bin, mName, constructID( mPartitionID, mFirstID + i ) );
+                i++;
+            }
+            return this;
+        }
 
-	throw new RuntimeException( "Profile Key: " + Pegasus.RUNTIME_KEY
-	        + " is not set for the job " + job.getID() );
+        /**
+         * Returns the jobs making up each clustered job.
+         *
+         * @return the bins.
+         */
+        protected List<List<Job>> getBins(){
+            return mBins;
+        }
+
+        /**
+         * Adds the clustered jobs constructed to the workflow.
+         */
+        public void addToWorkflow(){
+            int i = 0;
+            for( List<Job> bin : mBins ){
+                AggregatedJob fatJob = mClusteredJobs[i++];
+                updateReplacementTable( bin, fatJob );
+
+                // add the fat job to the dag
+                // use the method to add, else add explicitly to DagInfo
+                mScheduledDAG.add( fatJob );
+
+                // log the refiner action capturing the creation of the job
+                logRefinerAction( fatJob, mAggregator );
+            }
+        }
     }
 
     /**
-     * The comparator is used to sort a collection of jobs in decreasing order
- of their run times as specified by the Pegasus.DEPRECATED_RUNTIME_KEY property.
-     *
-     * @return
+     * Clusters the jobs according to their runtimes, either into clustered
+     * jobs with a maximum runtime or into a fixed number of clustered jobs.
+     * The runtimes of the jobs are parsed only once.
      */
-    private Comparator<Job> getBinPackingComparator() {
-	return new Comparator<Job>() {
+    private class RuntimeClusterTask extends ClusterTask {
+
+        /**
+         * The site to which the jobs are mapped.
+         */
+        private final String mSite;
+
+        /**
+         * The jobs to be clustered.
+         */
+        private final List<Job> mJobs;
+
+        /**
+         * The collapse factor for the jobs.
+         */
+        private final int[] mCollapseFactor;
+
+        /**
+         * The job whose bundle profile determines the number of clustered
+         * jobs.
+         */
+        private final Job mBundleJob;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param name         the logical name of the jobs.
+         * @param partitionID  the ID of the partition to which the jobs belong.
+         * @param id           the id of the first clustered job.
+         * @param aggregator   the aggregator constructing the clustered jobs.
+         * @param site         the site to which the jobs are mapped.
+         * @param jobs         the jobs to be clustered.
+         * @param cFactor      the collapse factor for the jobs.
+         * @param bundleJob    the job whose bundle profile determines the
+         *                     number of clustered jobs.
+         */
+        public RuntimeClusterTask( String name, String partitionID, int id,
+                                   JobAggregator aggregator, String site,
+                                   List<Job> jobs, int[] cFactor, Job bundleJob ){
+            super( name, partitionID, id, aggregator, null );
+            mSite = site;
+            mJobs = jobs;
+            mCollapseFactor = cFactor;
+            mBundleJob = bundleJob;
+        }
 
-	    @Override
-	    public int compare(Job job1, Job job2) {
-		String s1 = getRunTime( job1 );
-		String s2 = getRunTime( job2 );
+        /**
+         * Packs the jobs into bins according to their runtimes.
+         *
+         * @return the bins.
+         */
+        protected List<List<Job>> getBins(){
+            String sMaxRunTime = (String) mJobs.get( 0 ).vdsNS.get(Pegasus.MAX_RUN_TIME);
+            boolean debug = mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL );
+            Bins bins;
+
+            // Does the user prefer to cluster jobs into bins of a fixed capacity?
+            // If not, cluster jobs evenly into a fixed number of bins.
+            // The number of bins should be specified through clusters.num property
+            if (sMaxRunTime != null) {
+                double maxRunTime = -1;
+                try {
+                    maxRunTime = Double.parseDouble(sMaxRunTime);
+                } catch (RuntimeException e) {
+                    throw new RuntimeException( "Profile key "
+                        + Pegasus.MAX_RUN_TIME
+                        + " is either not set, or is not a valid number.",
+                        e );
+                }
+
+                mLogger.log( "\t Clustering jobs mapped to execution site " + mSite
+                        + " having maximum run time  " + mCollapseFactor[2],
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+
+                double[] runtimes = this.sortByRuntime();
+
+                mLogger.log(
+                        "Job Type: " + mJobs.get( 0 ).getCompleteTCName()
+                                + " max runtime " + maxRunTime,
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+
+                mLogger.log( "Clustering into fixed capacity bins " + maxRunTime,
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+
+                if( debug ){
+                    for( int j = 0; j < runtimes.length; j++ ){
+                        mLogger.log( "Job " + mJobs.get( j ).getID() + " runtime " + runtimes[j],
+                                     LogManager.DEBUG_MESSAGE_LEVEL );
+                        if( maxRunTime < runtimes[j] ){
+                            mLogger.log( "Job " + mJobs.get( j ).getID() + " runtime " + runtimes[j]
+                                    + " is greater than clusters max run time "
+                                    + maxRunTime + " specified by the Pegasus profile "
+                                    + Pegasus.MAX_RUN_TIME,
+                                    LogManager.DEBUG_MESSAGE_LEVEL );
+                        }
+                    }
+                }
+                bins = firstFitBinPack( runtimes, maxRunTime );
+            } else {
+                int clusterNum = 1;
+                String bundle = (String) mBundleJob.vdsNS.get( Pegasus.BUNDLE_KEY );
+
+                if (bundle != null) {
+                    clusterNum = Integer.parseInt(bundle);
+                } else {
+                    mLogger.log( "Neither " + Pegasus.MAX_RUN_TIME + ", nor " + Pegasus.BUNDLE_KEY +
+                            " specified. Merging all tasks into one job",
+                            LogManager.WARNING_MESSAGE_LEVEL );
+                }
+
+                mLogger.log( "Clustering into fixed number of bins " + clusterNum,
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+
+                double[] runtimes = this.sortByRuntime();
+
+                if( debug ){
+                    for( Job j : mJobs ){
+                        mLogger.log( "Job " + j.getID() + " runtime " + getRunTime( j ),
+                                     LogManager.DEBUG_MESSAGE_LEVEL );
+                    }
+                }
+                bins = leastLoadedBinPack( runtimes, clusterNum );
+                if( debug ){
+                    for( double time : bins.mTimes ){
+                        mLogger.log( "Bin Size: " + time, LogManager.DEBUG_MESSAGE_LEVEL );
+                    }
+                }
+            }
+
+            mLogger.log( "Jobs are merged into " + bins.mJobs.length
+                    + " clustered jobs.", LogManager.DEBUG_MESSAGE_LEVEL );
 
-		double jobTime1 = Double.parseDouble( s1 );
-		double jobTime2 = Double.parseDouble( s2 );
+            mBins = toJobBins( mJobs, bins );
+            return mBins;
+        }
+
+        /**
+         * Parses the runtimes of the jobs, and sorts the jobs in decreasing
+         * order of their runtimes.
+         *
+         * @return the runtimes of the jobs in the sorted order.
+         */
+        private double[] sortByRuntime(){
+            int n = mJobs.size();
+            boolean deprecated = false;
+            for( Job job : mJobs ){
+                String value = (String) job.vdsNS.get( Pegasus.RUNTIME_KEY );
+                deprecated = deprecated || value == null || value.length() == 0;
+            }
+            double[] runtimes = parseRunTimes( mJobs );
+            if( deprecated ){
+                mLogger.log( "The profile " + Pegasus.DEPRECATED_RUNTIME_KEY
+                        + " will be deprecated. It will be replaced with "
+                        + Pegasus.RUNTIME_KEY, LogManager.WARNING_MESSAGE_LEVEL );
+            }
+
+            int[] order = Horizontal.sortByRuntime( runtimes );
+            Job[] jobs = new Job[ n ];
+            double[] result = new double[ n ];
+            for( int i = 0; i < n; i++ ){
+                jobs[i] = mJobs.get( order[i] );
+                result[i] = runtimes[ order[i] ];
+            }
+            for( int i = 0; i < n; i++ ){
+                mJobs.set( i, jobs[i] );
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Perform best fit bin packing.
+     *
+     * @param jobs    List of jobs sorted in decreasing order of the job runtime.
+     * @param maxBins The fixed-number of bins that should be created
+     * @return List of List of Jobs where each List <Job> is the set of jobs
+     * which should be clustered together.
+     */
+    private List<List<Job>> bestFitBinPack( List<Job> jobs, int maxBins ){
+        return toJobBins( jobs, leastLoadedBinPack( parseRunTimes( jobs ), maxBins ) );
+    }
 
-		return (int) (jobTime2 - jobTime1);
-	    }
+    /**
+     * Converts the bins holding the indices of the jobs to lists of jobs.
+     *
+     * @param jobs  the jobs packed.
+     * @param bins  the bins.
+     *
+     * @return the jobs in each bin.
+     */
+    private List<List<Job>> toJobBins( List<Job> jobs, Bins bins ){
+        Job[] array = jobs.toArray( new Job[ jobs.size() ] );
+        List<List<Job>> result = new ArrayList<List<Job>>( bins.mJobs.length );
+        for( int[] bin : bins.mJobs ){
+            List<Job> l = new ArrayList<Job>( bin.length );
+            for( int j : bin ){
+                l.add( array[j] );
+            }
+            result.add( l );
+        }
+        return result;
+    }
 
-	    private String getRunTime (Job job) {
+    /**
+     * Parses the runtimes of the jobs.
+     *
+     * @param jobs  the jobs.
+     *
+     * @return the runtimes.
+     */
+    private double[] parseRunTimes( List<Job> jobs ){
+        double[] result = new double[ jobs.size() ];
+        int i = 0;
+        for( Job job : jobs ){
+            result[ i++ ] = Double.parseDouble( getRunTime( job ) );
+        }
+        return result;
+    }
 
-		String sTmp = (String) job.vdsNS.get( Pegasus.RUNTIME_KEY );
-		if (sTmp != null && sTmp.length() > 0) {
-		    return sTmp;
-		}
+    /**
+     * Returns the runtime of a job as specified by the Pegasus profile
+     * runtime, or the deprecated profile.
+     *
+     * @param job  the job.
+     *
+     * @return the runtime value.
+     */
+    private String getRunTime(Job job) {
 
-		sTmp = (String) job.vdsNS.get(Pegasus.DEPRECATED_RUNTIME_KEY );
-		if (sTmp != null && sTmp.length() > 0) {
-		    return sTmp;
-		}
+        String sTmp = (String) job.vdsNS.get( Pegasus.RUNTIME_KEY );
+        if (sTmp != null && sTmp.length() > 0) {
+            return sTmp;
+        }
 
-		throw new RuntimeException( "Profile Key: "
-		        + Pegasus.RUNTIME_KEY + " is not set for the job "
-		        + job.getID() );
-	    }
+        sTmp = (String) job.vdsNS.get(Pegasus.DEPRECATED_RUNTIME_KEY );
+        if (sTmp != null && sTmp.length() > 0) {
+            return sTmp;
+        }
 
-	};
+        throw new RuntimeException( "Profile Key: " + Pegasus.RUNTIME_KEY
+                + " is not set for the job " + job.getID() );
     }
 
     /**
@@ -748,6 +1157,10 @@ public class Horizontal implements Clusterer,
         //that needs to be returned
         replaceJobs();
 
+        if( mExecutor != null ){
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
 
         //should be in the done method. which is currently not htere in the
         //Clusterer API
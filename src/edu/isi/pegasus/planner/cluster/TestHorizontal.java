@@ -0,0 +1,312 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Benchmarks the runtime based bin packing of the horizontal clusterer on
+ * levels with a large number of tasks. For smaller levels the bins are
+ * compared against the list based packing the clusterer did earlier, that
+ * sorted the jobs with a comparator parsing the runtime profiles. The
+ * runtimes are compared exactly in both cases.
+ *
+ * @author Karan Vahi
+ */
+public class TestHorizontal {
+
+    /**
+     * The maximum number of tasks for which the list based packing is run.
+     */
+    public static final int MAX_LIST_TASKS = 5000;
+
+    /**
+     * The number of transformations the tasks on a level are split into, for
+     * packing the groups in parallel.
+     */
+    public static final int GROUPS = 8;
+
+    /**
+     * Generates the runtime profile values for the tasks on a level. Most of
+     * the runtimes are integral, with some fractional and some larger than
+     * the maximum runtime of a clustered job.
+     */
+    private static String[] createRuntimes( int count, long seed ){
+        Random random = new Random( seed );
+        String[] result = new String[ count ];
+        for( int i = 0; i < count; i++ ){
+            int type = random.nextInt( 10 );
+            result[i] = ( type == 0 ) ? Double.toString( random.nextInt( 5000 ) / 100.0 ) :
+                        ( type == 1 ) ? Integer.toString( 1 + random.nextInt( 5000 ) ) :
+                                        Integer.toString( 1 + random.nextInt( 900 ) );
+        }
+        return result;
+    }
+
+    /**
+     * Parses and sorts the runtimes, returning them in decreasing order.
+     */
+    private static double[] parseAndSort( String[] values ){
+        double[] runtimes = new double[ values.length ];
+        for( int i = 0; i < values.length; i++ ){
+            runtimes[i] = Double.parseDouble( values[i] );
+        }
+        int[] order = Horizontal.sortByRuntime( runtimes );
+        double[] sorted = new double[ runtimes.length ];
+        for( int i = 0; i < order.length; i++ ){
+            sorted[i] = runtimes[ order[i] ];
+        }
+        return sorted;
+    }
+
+    /**
+     * Sorts the runtimes the way the clusterer did earlier, parsing them in
+     * the comparator.
+     */
+    private static List<Integer> listSort( final String[] values ){
+        List<Integer> jobs = new LinkedList<Integer>();
+        for( int i = 0; i < values.length; i++ ){
+            jobs.add( i );
+        }
+        Collections.sort( jobs, new Comparator<Integer>() {
+            public int compare( Integer job1, Integer job2 ) {
+                double jobTime1 = Double.parseDouble( values[ job1 ] );
+                double jobTime2 = Double.parseDouble( values[ job2 ] );
+                return Double.compare( jobTime2, jobTime1 );
+            }
+        });
+        return jobs;
+    }
+
+    /**
+     * The list based first fit packing the clusterer did earlier.
+     */
+    private static List<List<Integer>> listFirstFit( List<Integer> jobs, String[] values, double maxTime ){
+        List<List<Integer>> bins = new LinkedList<List<Integer>>();
+        List<List<Integer>> returnBins = new LinkedList<List<Integer>>();
+        List<Double> binTime = new LinkedList<Double>();
+        double minJobRunTime = Double.MAX_VALUE;
+        if( jobs.size() > 0 ){
+            minJobRunTime = Double.parseDouble( values[ jobs.get( jobs.size() - 1 ) ] );
+        }
+        for( Integer j : jobs ){
+            boolean isBreak = false;
+            double jobRunTime = Double.parseDouble( values[j] );
+            if( bins.size() == 0 ){
+                bins.add( new LinkedList<Integer>() );
+                binTime.add( 0, 0d );
+            }
+            for( int i = 0, k = bins.size(); i < k; ++i ){
+                double currentBinTime = binTime.get( i );
+                if( maxTime < jobRunTime ){
+                    break;
+                }
+                if( maxTime >= currentBinTime + jobRunTime ){
+                    bins.get( i ).add( j );
+                    binTime.set( i, currentBinTime + jobRunTime );
+                    isBreak = true;
+                }
+                else if( i == k - 1 ){
+                    List<Integer> bin = new LinkedList<Integer>();
+                    bin.add( j );
+                    bins.add( bin );
+                    binTime.add( binTime.size(), jobRunTime );
+                }
+                if( binTime.get( i ) + minJobRunTime > maxTime ){
+                    returnBins.add( bins.remove( i ) );
+                    binTime.remove( i );
+                }
+                if( isBreak ){
+                    break;
+                }
+            }
+        }
+        returnBins.addAll( bins );
+        return returnBins;
+    }
+
+    /**
+     * The list based packing into a fixed number of bins the clusterer did
+     * earlier.
+     */
+    private static List<List<Integer>> listLeastLoaded( List<Integer> jobs, final String[] values, int maxBins ){
+        class Bin {
+            private List<Integer> bin = new LinkedList<Integer>();
+            private double time = 0;
+        }
+        PriorityQueue<Bin> bins = new PriorityQueue<Bin>( maxBins, new Comparator<Bin>() {
+            public int compare( Bin bin1, Bin bin2 ) {
+                return (int) ( bin1.time - bin2.time );
+            }
+        });
+        maxBins = Math.min( maxBins, jobs.size() );
+        for( int i = 0; i < maxBins; ++i ){
+            bins.add( new Bin() );
+        }
+        for( Integer j : jobs ){
+            Bin bin = bins.poll();
+            bin.bin.add( j );
+            bin.time += Double.parseDouble( values[j] );
+            bins.offer( bin );
+        }
+        List<List<Integer>> returnBins = new LinkedList<List<Integer>>();
+        for( Bin b : bins ){
+            returnBins.add( b.bin );
+        }
+        return returnBins;
+    }
+
+    /**
+     * Checks that the bins hold the same jobs in the same order as the bins
+     * of the list based packing.
+     */
+    private static void check( String type, Horizontal.Bins bins, int[] order, List<List<Integer>> expected ){
+        if( bins.mJobs.length != expected.size() ){
+            throw new RuntimeException( type + ": " + bins.mJobs.length + " bins instead of " + expected.size() );
+        }
+        int i = 0;
+        for( List<Integer> bin : expected ){
+            int[] actual = bins.mJobs[ i ];
+            if( actual.length != bin.size() ){
+                throw new RuntimeException( type + ": bin " + i + " has " + actual.length + " jobs instead of " + bin.size() );
+            }
+            int k = 0;
+            for( Integer j : bin ){
+                if( order[ actual[ k++ ] ] != j ){
+                    throw new RuntimeException( type + ": bin " + i + " differs" );
+                }
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Runs the benchmark for the number of tasks on a level passed as
+     * arguments. By default the benchmark is run for 5000, 100000 and
+     * 1000000 tasks.
+     *
+     * @param args the number of tasks on a level.
+     */
+    public static void main( String[] args ) throws Exception {
+        int[] sizes = new int[]{ 5000, 100000, 1000000 };
+        if( args.length > 0 ){
+            sizes = new int[ args.length ];
+            for( int i = 0; i < args.length; i++ ){
+                sizes[i] = Integer.parseInt( args[i] );
+            }
+        }
+        final double maxTime = 2000;
+        final int bundle = 64;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+
+        System.out.println( "********* Benchmark  **********" );
+        for( int tasks : sizes ){
+            final String[] values = createRuntimes( tasks, tasks );
+
+            //warm up and check against the list based packing
+            if( tasks <= MAX_LIST_TASKS ){
+                double[] runtimes = new double[ tasks ];
+                for( int i = 0; i < tasks; i++ ){
+                    runtimes[i] = Double.parseDouble( values[i] );
+                }
+                int[] order = Horizontal.sortByRuntime( runtimes );
+                double[] sorted = new double[ tasks ];
+                for( int i = 0; i < tasks; i++ ){
+                    sorted[i] = runtimes[ order[i] ];
+                }
+                long start = System.nanoTime();
+                List<Integer> jobs = listSort( values );
+                List<List<Integer>> capacity = listFirstFit( jobs, values, maxTime );
+                List<List<Integer>> number = listLeastLoaded( jobs, values, bundle );
+                double listTime = ( System.nanoTime() - start ) / 1e6;
+
+                int k = 0;
+                for( Integer j : jobs ){
+                    if( order[ k++ ] != j ){
+                        throw new RuntimeException( "Sort order differs at " + ( k - 1 ) );
+                    }
+                }
+                check( "first fit", Horizontal.firstFitBinPack( sorted, maxTime ), order, capacity );
+                check( "least loaded", Horizontal.leastLoadedBinPack( sorted, bundle ), order, number );
+                System.out.println( "tasks=" + tasks + " list-based=" + (long) listTime + " ms (bins identical)" );
+            }
+
+            long start = System.nanoTime();
+            double[] sorted = parseAndSort( values );
+            double sortTime = ( System.nanoTime() - start ) / 1e6;
+
+            start = System.nanoTime();
+            Horizontal.Bins capacity = Horizontal.firstFitBinPack( sorted, maxTime );
+            double firstFitTime = ( System.nanoTime() - start ) / 1e6;
+
+            start = System.nanoTime();
+            Horizontal.Bins number = Horizontal.leastLoadedBinPack( sorted, bundle );
+            double leastLoadedTime = ( System.nanoTime() - start ) / 1e6;
+
+            //the level split into groups of transformations packed in parallel
+            final int groupSize = ( tasks + GROUPS - 1 ) / GROUPS;
+            List<Callable<Integer>> groups = new ArrayList<Callable<Integer>>();
+            for( int g = 0; g < GROUPS; g++ ){
+                final int from = Math.min( tasks, g * groupSize );
+                final int to = Math.min( tasks, from + groupSize );
+                groups.add( new Callable<Integer>() {
+                    public Integer call(){
+                        double[] group = parseAndSort( Arrays.copyOfRange( values, from, to ) );
+                        return Horizontal.firstFitBinPack( group, maxTime ).mJobs.length;
+                    }
+                });
+            }
+            start = System.nanoTime();
+            int serialBins = 0;
+            for( Callable<Integer> group : groups ){
+                serialBins += group.call();
+            }
+            double serialTime = ( System.nanoTime() - start ) / 1e6;
+
+            start = System.nanoTime();
+            int parallelBins = 0;
+            for( Future<Integer> result : executor.invokeAll( groups ) ){
+                parallelBins += result.get();
+            }
+            double parallelTime = ( System.nanoTime() - start ) / 1e6;
+            if( serialBins != parallelBins ){
+                throw new RuntimeException( "Parallel packing created " + parallelBins + " bins instead of " + serialBins );
+            }
+
+            System.out.println( "tasks=" + tasks +
+                                " parse-sort=" + (long) sortTime + " ms" +
+                                " first-fit=" + (long) firstFitTime + " ms (" + capacity.mJobs.length + " bins)" +
+                                " least-loaded=" + (long) leastLoadedTime + " ms (" + number.mJobs.length + " bins)" +
+                                " groups-serial=" + (long) serialTime + " ms" +
+                                " groups-parallel=" + (long) parallelTime + " ms with " + threads + " threads" );
+        }
+        executor.shutdown();
+        System.out.println( "****************************" );
+    }
+}
@@ -45,7 +45,7 @@ public interface  GridStart {
     /**
      * The version number associated with this API of GridStart.
      */
-    public static final String VERSION = "1.5";
+    public static final String VERSION = "1.6";
 
     /**
      * The File separator to be used on the submit host.
@@ -107,6 +107,15 @@ public interface  GridStart {
      */
     public void useFullPathToGridStarts( boolean fullPath );
 
+    /**
+     * Waits for any files that the implementation writes out in the background
+     * while enabling the jobs, such as the job wrappers, to be written out.
+     * It is called once all the jobs in the workflow have been enabled.
+     *
+     * @throws RuntimeException in case of error while writing out a file.
+     */
+    public void flush();
+
     /**
      * Constructs the postscript that has to be invoked on the submit host
      * after the job has executed on the remote end. The postscript usually
@@ -29,6 +29,7 @@ import edu.isi.pegasus.planner.namespace.Dagman;
 
 import edu.isi.pegasus.common.util.DynamicLoader;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
 import edu.isi.pegasus.planner.classes.PegasusBag;
@@ -303,6 +304,19 @@ public class GridStartFactory {
      }
 
 
+    /**
+     * Waits for the files written out in the background by the loaded
+     * GridStart implementations to be written out.
+     *
+     * @throws RuntimeException in case of error while writing out a file.
+     */
+    public void flush(){
+        for( Iterator it = mGridStartImplementationTable.values().iterator(); it.hasNext(); ){
+            ((GridStart)it.next()).flush();
+        }
+    }
+
+
     /**
      * Loads the appropriate POST Script implementation for a job on the basis of
      * the value of the Pegasus profile GRIDSTART_KEY, and the DAGMan profile
@@ -408,7 +422,7 @@ public class GridStartFactory {
             return ( String ) job.vdsNS.get( Pegasus.GRIDSTART_KEY );
         }
         
-        String propValue = mProps.getGridStart();
+        String propValue = mProps.getSnapshot().getGridStart();
         if ( job.vdsNS.containsKey( Pegasus.DATA_CONFIGURATION_KEY ) ){
             //pick up on the basis of the data configuration key value
             String conf = job.vdsNS.getStringValue( Pegasus.DATA_CONFIGURATION_KEY );
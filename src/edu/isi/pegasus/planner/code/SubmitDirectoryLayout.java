@@ -0,0 +1,224 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code;
+
+import edu.isi.pegasus.planner.classes.Job;
+
+import org.griphyn.vdl.euryale.HashedFileFactory;
+import org.griphyn.vdl.euryale.VirtualDecimalHashedFileFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Determines where the per job files ( the condor submit file, the job
+ * wrappers and the .out and .err files ) reside in the submit directory.
+ *
+ * By default, all the files reside directly in the submit directory. In the
+ * hashed layout, each job is assigned a directory in a hashed directory
+ * structure in the submit directory, and all the files for the job reside in
+ * that directory. The number of levels are determined by the number of jobs
+ * in the workflow, and small workflows have no levels at all. A job is
+ * assigned the same directory on all invocations, and the directories are
+ * created as they are assigned.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class SubmitDirectoryLayout {
+
+    /**
+     * The number of files estimated per job, including the rotated .out and
+     * .err files.
+     */
+    public static final int FILES_PER_JOB = 8;
+
+    /**
+     * The submit directory.
+     */
+    private final String mSubmitDirectory;
+
+    /**
+     * The factory that determines the hashed directories. null for the flat
+     * layout.
+     */
+    private final HashedFileFactory mFactory;
+
+    /**
+     * Maps the job ID to the directory assigned to the job, relative to the
+     * submit directory.
+     */
+    private final Map<String,String> mDirectories;
+
+    /**
+     * The last directory assigned. As the directories are assigned in order,
+     * a directory once left is never assigned again.
+     */
+    private String mLastDirectory;
+
+    /**
+     * The overloaded constructor for the flat layout.
+     *
+     * @param submitDirectory  the submit directory.
+     */
+    public SubmitDirectoryLayout( String submitDirectory ){
+        mSubmitDirectory = submitDirectory;
+        mFactory         = null;
+        mDirectories     = null;
+    }
+
+    /**
+     * The overloaded constructor for the hashed layout.
+     *
+     * @param submitDirectory  the submit directory.
+     * @param jobs             the number of jobs in the workflow.
+     */
+    public SubmitDirectoryLayout( String submitDirectory, int jobs ){
+        mSubmitDirectory = submitDirectory;
+        try{
+            mFactory = new VirtualDecimalHashedFileFactory( submitDirectory );
+        }
+        catch( IOException e ){
+            throw new RuntimeException( "Unable to use submit directory " + submitDirectory, e );
+        }
+        mFactory.setMultiplicator( FILES_PER_JOB );
+        mFactory.setLevelsFromTotals( jobs );
+        mDirectories  = new HashMap<String,String>();
+        mLastDirectory = "";
+    }
+
+    /**
+     * Returns the submit directory.
+     *
+     * @return the submit directory
+     */
+    public String getSubmitDirectory(){
+        return mSubmitDirectory;
+    }
+
+    /**
+     * Returns the number of levels of directories in the submit directory.
+     *
+     * @return the number of levels, 0 for the flat layout.
+     */
+    public int getLevels(){
+        return ( mFactory == null ) ? 0 : mFactory.getLevels();
+    }
+
+    /**
+     * Returns the directory assigned to a job, relative to the submit
+     * directory. The directory is created when it is first assigned.
+     *
+     * @param job  the job
+     *
+     * @return the relative directory, an empty string if the files for the
+     *         job reside directly in the submit directory.
+     */
+    public String getRelativeDirectory( Job job ){
+        if( mFactory == null ){
+            return "";
+        }
+        String id = job.getID();
+        synchronized( this ){
+            String directory = mDirectories.get( id );
+            if( directory == null ){
+                directory = this.assignDirectory( id );
+                mDirectories.put( id, directory );
+            }
+            return directory;
+        }
+    }
+
+    /**
+     * Returns the path to a file for a job, relative to the submit directory.
+     *
+     * @param job     the job
+     * @param suffix  the suffix to append to the job ID e.g. .sub
+     *
+     * @return the relative path
+     */
+    public String getRelativePath( Job job, String suffix ){
+        String directory = this.getRelativeDirectory( job );
+        StringBuffer sb = new StringBuffer();
+        if( directory.length() > 0 ){
+            sb.append( directory ).append( File.separatorChar );
+        }
+        sb.append( job.getID() ).append( suffix );
+        return sb.toString();
+    }
+
+    /**
+     * Returns the path to a file for a job.
+     *
+     * @param job     the job
+     * @param suffix  the suffix to append to the job ID e.g. .sub
+     *
+     * @return the path
+     */
+    public String getPath( Job job, String suffix ){
+        StringBuffer sb = new StringBuffer();
+        sb.append( mSubmitDirectory ).append( File.separatorChar ).
+           append( this.getRelativePath( job, suffix ) );
+        return sb.toString();
+    }
+
+    /**
+     * Returns a file for a job.
+     *
+     * @param job     the job
+     * @param suffix  the suffix to append to the job ID e.g. .sub
+     *
+     * @return the file
+     */
+    public File getFile( Job job, String suffix ){
+        return new File( this.getPath( job, suffix ) );
+    }
+
+    /**
+     * Assigns the next directory in the hashed directory structure to a job,
+     * and creates it if required.
+     *
+     * @param id  the id of the job
+     *
+     * @return the relative directory
+     */
+    private String assignDirectory( String id ){
+        String name;
+        try{
+            name = mFactory.getName( mFactory.createFile( id ) );
+        }
+        catch( IOException e ){
+            throw new RuntimeException( "Unable to assign a directory to job " + id, e );
+        }
+        String directory = ( name.length() > id.length() ) ?
+                           name.substring( 0, name.length() - id.length() - 1 ):
+                           "";
+        if( directory.equals( mLastDirectory ) ){
+            //reuse the same string for all the jobs in a directory
+            return mLastDirectory;
+        }
+
+        File dir = new File( mSubmitDirectory, directory );
+        if( !dir.isDirectory() && !dir.mkdirs() ){
+            throw new RuntimeException( "Unable to create directory " + dir );
+        }
+        mLastDirectory = directory;
+        return directory;
+    }
+}
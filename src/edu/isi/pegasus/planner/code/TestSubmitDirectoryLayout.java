@@ -0,0 +1,124 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code;
+
+import edu.isi.pegasus.planner.classes.Job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * Times creating and opening the per job files in the submit directory, in
+ * the flat and in the hashed SubmitDirectoryLayout.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class TestSubmitDirectoryLayout {
+
+    public TestSubmitDirectoryLayout() {
+    }
+
+    /**
+     * Compares the throughput of creating and then opening the files for a
+     * number of jobs in the flat and the hashed layout.
+     *
+     * Usage: TestSubmitDirectoryLayout [jobs] [directory]
+     *
+     * @param args  the number of jobs ( defaults to 20000 ) and the directory
+     *              to create the files in ( defaults to the temp directory ).
+     */
+    public static void main( String[] args ) throws IOException{
+        int jobs = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 20000;
+        File base = ( args.length > 1 ) ?
+                    new File( args[1] ):
+                    new File( System.getProperty( "java.io.tmpdir" ) );
+        String[] suffixes = { ".sub", ".sh", ".out", ".err" };
+
+        for( boolean hashed : new boolean[]{ false, true } ){
+            File dir = File.createTempFile( hashed ? "hashed" : "flat", "", base );
+            dir.delete();
+            dir.mkdirs();
+            SubmitDirectoryLayout layout = hashed ?
+                                           new SubmitDirectoryLayout( dir.getPath(), jobs ):
+                                           new SubmitDirectoryLayout( dir.getPath() );
+            Job[] js = new Job[ jobs ];
+            for( int i = 0; i < jobs; i++ ){
+                js[i] = new Job();
+                js[i].setName( "preprocess_ID" + i );
+            }
+
+            long start = System.currentTimeMillis();
+            for( Job job : js ){
+                for( String suffix : suffixes ){
+                    Writer writer = new FileWriter( layout.getFile( job, suffix ) );
+                    writer.write( suffix );
+                    writer.close();
+                }
+            }
+            long created = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            for( Job job : js ){
+                for( String suffix : suffixes ){
+                    InputStream in = new FileInputStream( layout.getFile( job, suffix ) );
+                    in.read();
+                    in.close();
+                }
+            }
+            long opened = System.currentTimeMillis() - start;
+
+            int files = jobs * suffixes.length;
+            System.out.println( ( hashed ? "hashed" : "flat" ) + " layout with " +
+                                layout.getLevels() + " levels, " + files + " files: " +
+                                "create " + rate( files, created ) + " files/s, " +
+                                "open "   + rate( files, opened )  + " files/s" );
+            delete( dir );
+        }
+    }
+
+    /**
+     * Returns the number of files per second.
+     *
+     * @param files   the number of files
+     * @param millis  the time taken in milliseconds
+     *
+     * @return the rate
+     */
+    private static long rate( int files, long millis ){
+        return ( files * 1000L ) / Math.max( millis, 1 );
+    }
+
+    /**
+     * Deletes a directory recursively.
+     *
+     * @param f  the file or directory to delete
+     */
+    private static void delete( File f ){
+        File[] files = f.listFiles();
+        if( files != null ){
+            for( File child : files ){
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+}
@@ -24,6 +24,7 @@ import edu.isi.pegasus.planner.classes.PlannerOptions;
 
 import edu.isi.pegasus.planner.code.CodeGenerator;
 import edu.isi.pegasus.planner.code.CodeGeneratorException;
+import edu.isi.pegasus.planner.code.SubmitDirectoryLayout;
 
 import edu.isi.pegasus.planner.common.PegasusProperties;
 
@@ -330,13 +331,53 @@ public abstract class Abstract implements CodeGenerator{
 //        sb.append( GridStart.getSubmitDirectory( mSubmitFileDir, job ));
         sb.append( mSubmitFileDir );
 
-        //append the base name of the job
-        sb.append( File.separatorChar ).append( getFileBaseName(job) );
+        //append the path of the job relative to the submit directory
+        sb.append( File.separatorChar ).append( getDAGMANFilename(job) );
 
         // intialize the print stream to the file
         return new PrintWriter(new BufferedWriter(new FileWriter(sb.toString())));
     }
 
+    /**
+     * Returns the path relative to the workflow submit directory of the file to
+     * which the job is written to.
+     *
+     * @param job  the job whose job information needs to be written.
+     *
+     * @return  the relative path of the file.
+     */
+    public String getDAGMANFilename(Job job){
+        return this.getSubmitDirectoryLayout().getRelativePath( job, ".sub" );
+    }
+
+    /**
+     * Initializes the layout of the per job files in the submit directory for
+     * the workflow, and adds it to the bag, unless already present.
+     *
+     * @param dag  the concrete workflow.
+     */
+    protected void initializeSubmitDirectoryLayout( ADag dag ){
+        if( mBag.getSubmitDirectoryLayout() != null ){
+            return;
+        }
+        SubmitDirectoryLayout layout = mProps.useHashedSubmitDirectory() ?
+                                       new SubmitDirectoryLayout( mSubmitFileDir, dag.size() ):
+                                       new SubmitDirectoryLayout( mSubmitFileDir );
+        mLogger.log( "Levels in the submit directory for the job files " + layout.getLevels(),
+                     LogManager.DEBUG_MESSAGE_LEVEL );
+        mBag.add( PegasusBag.SUBMIT_DIRECTORY_LAYOUT, layout );
+    }
+
+    /**
+     * Returns the layout of the per job files in the submit directory.
+     *
+     * @return the layout from the bag, else the flat layout.
+     */
+    protected SubmitDirectoryLayout getSubmitDirectoryLayout(){
+        SubmitDirectoryLayout layout = ( mBag == null ) ? null : mBag.getSubmitDirectoryLayout();
+        return ( layout == null ) ? new SubmitDirectoryLayout( mSubmitFileDir ) : layout;
+    }
+
     /**
      * Returns the basename of the file to which the job is written to.
      *
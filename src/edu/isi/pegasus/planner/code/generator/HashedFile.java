@@ -65,7 +65,7 @@ public class HashedFile extends CondorGenerator {
         sb.append(mSubmitFileDir);
 
         //append the base name of the job
-        sb.append( File.separatorChar ).append(getFileBaseName(job));
+        sb.append( File.separatorChar ).append(getDAGMANFilename(job));
 
         // intialize the print stream to the file
         return new PrintWriter(new BufferedWriter(new FileWriter(sb.toString())));
@@ -189,6 +189,7 @@ public class PMC extends Abstract {
             prevJob = job;
 
         }
+        mGridStartFactory.flush();
 
         //lets load the PMC cluster implementation
         //and generate the PMC file for it
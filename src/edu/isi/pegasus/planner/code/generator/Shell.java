@@ -169,6 +169,7 @@ public class Shell extends Abstract {
             Job job = (Job)node.getContent();
             generateCode( dag, job );
         }
+        mGridStartFactory.flush();
 
         //write out the footer
         writeString(this.getScriptFooter());
@@ -15,8 +15,6 @@
  */
 package edu.isi.pegasus.planner.code.generator;
 
-import edu.isi.pegasus.common.logging.LogFormatter;
-import edu.isi.pegasus.common.logging.LogFormatterFactory;
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.AggregatedJob;
@@ -25,15 +23,21 @@ import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
 import edu.isi.pegasus.planner.code.CodeGenerator;
 import edu.isi.pegasus.planner.code.CodeGeneratorException;
+import edu.isi.pegasus.planner.code.SubmitDirectoryLayout;
+import edu.isi.pegasus.planner.code.generator.stampede.BinaryEventWriter;
+import edu.isi.pegasus.planner.code.generator.stampede.EventWriter;
+import edu.isi.pegasus.planner.code.generator.stampede.StampedeEvent;
+import edu.isi.pegasus.planner.code.generator.stampede.TextEventWriter;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Dagman;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.refiner.DeployWorkerPackage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -62,6 +66,17 @@ public class Stampede implements CodeGenerator {
      */
     public static final String NETLOGGER_BP_FILE_SUFFIX = ".static.bp";
 
+    /**
+     * The suffix to use while constructing the name of the file containing
+     * the events in the binary format.
+     */
+    public static final String BINARY_EVENTS_FILE_SUFFIX = ".static.bin";
+
+    /**
+     * The size of the buffers for the events files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     public static final String NETLOGGER_LOG_FORMATTER_IMPLEMENTOR = "Netlogger";
 
     
@@ -177,9 +192,14 @@ public class Stampede implements CodeGenerator {
     
     
     /**
-     * The handle to the netlogger log formatter.
+     * The event that is reused for all the events written out.
      */
-    private LogFormatter mLogFormatter;
+    private StampedeEvent mEvent;
+
+    /**
+     * Whether to write out the events in the binary format also.
+     */
+    private boolean mWriteBinaryEvents;
 
     /**
      * The bag of initialization objects.
@@ -221,7 +241,8 @@ public class Stampede implements CodeGenerator {
         mPOptions      = bag.getPlannerOptions();
         mSubmitFileDir = mPOptions.getSubmitDirectory();
         mLogger        = bag.getLogger();
-        mLogFormatter = LogFormatterFactory.loadInstance( NETLOGGER_LOG_FORMATTER_IMPLEMENTOR );
+        mEvent         = new StampedeEvent();
+        mWriteBinaryEvents = mProps.writeBinaryStampedeEvents();
     }
 
   
@@ -240,22 +261,67 @@ public class Stampede implements CodeGenerator {
      */
     public Collection<File> generateCode(ADag dag) throws CodeGeneratorException {
 
-        PrintWriter writer = null;
+        EventWriter writer = null;
         File f = new File( mSubmitFileDir , Abstract.getDAGFilename( this.mPOptions,
                                                                      dag.getLabel(),
                                                                      dag.getIndex(),
                                                                      Stampede.NETLOGGER_BP_FILE_SUFFIX ) );
+        File binary = null;
 
         boolean generateCodeForExecutableWorkflow = dag.hasWorkflowRefinementStarted();
         
         String uuid = dag.getWorkflowUUID();
         try {
-            writer = new PrintWriter(new BufferedWriter(new FileWriter(f, true) ));
+            writer = new TextEventWriter( new BufferedWriter( new FileWriter(f, true), BUFFER_SIZE ) );
+            if( mWriteBinaryEvents ){
+                //the binary events are written out alongside the netlogger file
+                binary = new File( mSubmitFileDir , Abstract.getDAGFilename( this.mPOptions,
+                                                                             dag.getLabel(),
+                                                                             dag.getIndex(),
+                                                                             Stampede.BINARY_EVENTS_FILE_SUFFIX ) );
+                writer = new TeeEventWriter( writer,
+                                             new BinaryEventWriter( new BufferedOutputStream( new FileOutputStream( binary, true ),
+                                                                                              BUFFER_SIZE ) ) );
+            }
         } catch ( IOException ioe ) {
             throw new CodeGeneratorException( "Unable to intialize writer to netlogger file " , ioe );
         }
 
+        try{
+            generateEvents( writer, dag, uuid, generateCodeForExecutableWorkflow );
+            writer.close();
+        }
+        catch( IOException ioe ){
+            throw new CodeGeneratorException( "Unable to write stampede events to " + f, ioe );
+        }
         
+        Collection<File> result = new LinkedList();
+        result.add(f);
+        if( binary != null ){
+            result.add( binary );
+        }
+        return result;
+    }
+
+    /**
+     * Writes out the events for the workflow.
+     *
+     * @param writer  the writer to write the events to
+     * @param dag     the workflow
+     * @param uuid    the uuid of the workflow
+     * @param generateCodeForExecutableWorkflow whether the workflow is the
+     *                executable workflow or the abstract workflow
+     *
+     * @throws CodeGeneratorException in case of an invalid job in the workflow
+     * @throws IOException in case of error while writing
+     */
+    private void generateEvents( EventWriter writer, ADag dag, String uuid,
+                                 boolean generateCodeForExecutableWorkflow )
+            throws CodeGeneratorException, IOException{
+
+        //the job.info and task.info events have to precede the events
+        //that refer to the jobs and tasks, so the workflow is traversed
+        //once for each type of event
         if( generateCodeForExecutableWorkflow ){
             //events generation for executable workflow
             for( Iterator<GraphNode> it = dag.jobIterator(); it.hasNext(); ){
@@ -279,25 +345,23 @@ public class Stampede implements CodeGenerator {
 
                 //get a list of parents of the node
                 for( GraphNode child : gn.getChildren() ){
-                    mLogFormatter.addEvent( Stampede.JOB_EDGE_EVENT_NAME, Stampede.WORKFLOW_ID_KEY, uuid );
+                    mEvent.reset( Stampede.JOB_EDGE_EVENT_NAME, Stampede.WORKFLOW_ID_KEY, uuid );
 
-                    mLogFormatter.add( Stampede.PARENT_JOB_ID_KEY, gn.getID() );
-                    mLogFormatter.add( Stampede.CHILD_JOB_ID_KEY, child.getID() );
+                    mEvent.add( Stampede.PARENT_JOB_ID_KEY, gn.getID() );
+                    mEvent.add( Stampede.CHILD_JOB_ID_KEY, child.getID() );
 
-                    writer.println( mLogFormatter.createLogMessage() );
-                    mLogFormatter.popEvent();
+                    writer.write( mEvent );
                 }
             }
 /* PM-747
             for ( Iterator<PCRelation> it =  dag.dagInfo.relations.iterator(); it.hasNext(); ){
                 PCRelation relation = it.next();
-                mLogFormatter.addEvent( Stampede.JOB_EDGE_EVENT_NAME, Stampede.WORKFLOW_ID_KEY, uuid );
+                mEvent.reset( Stampede.JOB_EDGE_EVENT_NAME, Stampede.WORKFLOW_ID_KEY, uuid );
 
-                mLogFormatter.add( Stampede.PARENT_JOB_ID_KEY, relation.getParent() );
-                mLogFormatter.add( Stampede.CHILD_JOB_ID_KEY, relation.getChild() );
+                mEvent.add( Stampede.PARENT_JOB_ID_KEY, relation.getParent() );
+                mEvent.add( Stampede.CHILD_JOB_ID_KEY, relation.getChild() );
 
-                writer.println( mLogFormatter.createLogMessage() );
-                mLogFormatter.popEvent();
+                writer.write( mEvent );
             }
 */
 
@@ -316,13 +380,12 @@ public class Stampede implements CodeGenerator {
 
                 //get a list of parents of the node
                 for( GraphNode child : parent.getChildren() ){
-                    mLogFormatter.addEvent( Stampede.TASK_EDGE_EVENT_NAME, Stampede.WORKFLOW_ID_KEY, uuid );
+                    mEvent.reset( Stampede.TASK_EDGE_EVENT_NAME, Stampede.WORKFLOW_ID_KEY, uuid );
 
-                    mLogFormatter.add( Stampede.PARENT_TASK_ID_KEY, ((Job)parent.getContent()).getLogicalID() );
-                    mLogFormatter.add( Stampede.CHILD_TASK_ID_KEY, ((Job)child.getContent()).getLogicalID() );
+                    mEvent.add( Stampede.PARENT_TASK_ID_KEY, ((Job)parent.getContent()).getLogicalID() );
+                    mEvent.add( Stampede.CHILD_TASK_ID_KEY, ((Job)child.getContent()).getLogicalID() );
 
-                    writer.println( mLogFormatter.createLogMessage() );
-                    mLogFormatter.popEvent();
+                    writer.write( mEvent );
             
                 }
             }
@@ -331,23 +394,15 @@ public class Stampede implements CodeGenerator {
 /* PM-747
             for ( Iterator<PCRelation> it =  dag.dagInfo.relations.iterator(); it.hasNext(); ){
                 PCRelation relation = it.next();
-                mLogFormatter.addEvent( Stampede.TASK_EDGE_EVENT_NAME, Stampede.WORKFLOW_ID_KEY, uuid );
+                mEvent.reset( Stampede.TASK_EDGE_EVENT_NAME, Stampede.WORKFLOW_ID_KEY, uuid );
 
-                mLogFormatter.add( Stampede.PARENT_TASK_ID_KEY, relation.getAbstractParentID() );
-                mLogFormatter.add( Stampede.CHILD_TASK_ID_KEY, relation.getAbstractChildID() );
+                mEvent.add( Stampede.PARENT_TASK_ID_KEY, relation.getAbstractParentID() );
+                mEvent.add( Stampede.CHILD_TASK_ID_KEY, relation.getAbstractChildID() );
 
-                writer.println( mLogFormatter.createLogMessage() );
-                mLogFormatter.popEvent();
+                writer.write( mEvent );
             }
 */
         }
-
-
-        writer.close();
-        
-        Collection<File> result = new LinkedList();
-        result.add(f);
-        return result;
     }
     
     /**
@@ -357,8 +412,8 @@ public class Stampede implements CodeGenerator {
      * @param workflow  the  workflow.
      * @param job     the job for which to generate the events.
      */
-    protected void generateEventsForDAXTask(PrintWriter writer, ADag workflow, Job job) 
-            throws CodeGeneratorException {
+    protected void generateEventsForDAXTask(EventWriter writer, ADag workflow, Job job)
+            throws CodeGeneratorException, IOException {
             
         String wfuuid = workflow.getWorkflowUUID();
         //sanity check
@@ -374,23 +429,22 @@ public class Stampede implements CodeGenerator {
         }
 
         
-        mLogFormatter.addEvent( Stampede.TASK_EVENT_NAME, Stampede.WORKFLOW_ID_KEY , wfuuid );
+        mEvent.reset( Stampede.TASK_EVENT_NAME, Stampede.WORKFLOW_ID_KEY , wfuuid );
 
-        mLogFormatter.add( Stampede.TASK_ID_KEY, job.getLogicalID() );
+        mEvent.add( Stampede.TASK_ID_KEY, job.getLogicalID() );
 
-        mLogFormatter.add( Stampede.TYPE_KEY, Integer.toString( job.getJobType() ));
-        mLogFormatter.add( Stampede.TYPE_DESCRIPTION_KEY, job.getJobTypeDescription() );
+        mEvent.add( Stampede.TYPE_KEY, Integer.toString( job.getJobType() ));
+        mEvent.add( Stampede.TYPE_DESCRIPTION_KEY, job.getJobTypeDescription() );
 
-        mLogFormatter.add( Stampede.TASK_TRANSFORMATION_KEY, job.getCompleteTCName() );
+        mEvent.add( Stampede.TASK_TRANSFORMATION_KEY, job.getCompleteTCName() );
         
         //only add arguments attribute if arguments are not 
         //null and length > 0 . Job constructor initializes arguments to ""
         if( job.getArguments() != null && job.getArguments().length() > 0 ){
-            mLogFormatter.add( Stampede.ARGUMENTS_KEY, job.getArguments() );
+            mEvent.add( Stampede.ARGUMENTS_KEY, job.getArguments() );
         }
         
-        writer.println( mLogFormatter.createLogMessage() );
-        mLogFormatter.popEvent();
+        writer.write( mEvent );
 
     }
     
@@ -402,40 +456,42 @@ public class Stampede implements CodeGenerator {
      * @param dag  the  workflow.
      * @param job     the job for which to generate the events.
      */
-    protected void generateEventsForExecutableJob(PrintWriter writer, ADag dag, Job job) 
-            throws CodeGeneratorException{
+    protected void generateEventsForExecutableJob(EventWriter writer, ADag dag, Job job)
+            throws CodeGeneratorException, IOException{
             
         String wfuuid = dag.getWorkflowUUID();
-        mLogFormatter.addEvent( Stampede.JOB_EVENT_NAME, Stampede.WORKFLOW_ID_KEY , wfuuid  );
+        mEvent.reset( Stampede.JOB_EVENT_NAME, Stampede.WORKFLOW_ID_KEY , wfuuid  );
 
-        mLogFormatter.add( Stampede.JOB_ID_KEY, job.getID() );
+        mEvent.add( Stampede.JOB_ID_KEY, job.getID() );
 
-        mLogFormatter.add( Stampede.JOB_SUBMIT_FILE_KEY, job.getID() + ".sub" );
-        mLogFormatter.add( Stampede.TYPE_KEY, Integer.toString( job.getJobType() ));
-        mLogFormatter.add( Stampede.TYPE_DESCRIPTION_KEY, job.getJobTypeDescription() );
+        //the submit file path is relative to the submit directory
+        SubmitDirectoryLayout layout = mBag.getSubmitDirectoryLayout();
+        mEvent.add( Stampede.JOB_SUBMIT_FILE_KEY,
+                    ( layout == null ) ? job.getID() + ".sub" : layout.getRelativePath( job, ".sub" ) );
+        mEvent.add( Stampede.TYPE_KEY, Integer.toString( job.getJobType() ));
+        mEvent.add( Stampede.TYPE_DESCRIPTION_KEY, job.getJobTypeDescription() );
 
 
-        mLogFormatter.add( Stampede.JOB_CLUSTERED_KEY, booleanToInt( job instanceof AggregatedJob ) );
-        mLogFormatter.add( Stampede.JOB_MAX_RETRIES_KEY,
+        mEvent.add( Stampede.JOB_CLUSTERED_KEY, booleanToInt( job instanceof AggregatedJob ) );
+        mEvent.add( Stampede.JOB_MAX_RETRIES_KEY,
                            job.dagmanVariables.containsKey( Dagman.RETRY_KEY ) ?
                                             (String)job.dagmanVariables.get( Dagman.RETRY_KEY ):
                                             "0" );
 
            
-        mLogFormatter.add( Stampede.JOB_EXECUTABLE_KEY , job.getRemoteExecutable() );
+        mEvent.add( Stampede.JOB_EXECUTABLE_KEY , job.getRemoteExecutable() );
         
         //only add arguments attribute if arguments are not 
         //null and length > 0 . Job constructor initializes arguments to ""
         if( job.getArguments() != null && job.getArguments().length() > 0 ){
-            mLogFormatter.add( Stampede.ARGUMENTS_KEY , job.getArguments() );
+            mEvent.add( Stampede.ARGUMENTS_KEY , job.getArguments() );
         }
     
         //determine count of jobs
         int taskCount = getTaskCount( job );
 
-        mLogFormatter.add( Stampede.JOB_TASK_COUNT_KEY, Integer.toString( taskCount ) );
-        writer.println( mLogFormatter.createLogMessage() );
-        mLogFormatter.popEvent();
+        mEvent.add( Stampede.JOB_TASK_COUNT_KEY, Integer.toString( taskCount ) );
+        writer.write( mEvent );
 
     }
     
@@ -448,7 +504,7 @@ public class Stampede implements CodeGenerator {
      * @param dag  the  workflow.
      * @param job     the job for which to generate the events.
      */
-    protected void generateTaskMapEvents(PrintWriter writer, ADag dag, Job job) {
+    protected void generateTaskMapEvents(EventWriter writer, ADag dag, Job job) throws IOException {
 
         String wfuuid = dag.getWorkflowUUID();
         //add task map events
@@ -481,14 +537,13 @@ public class Stampede implements CodeGenerator {
             else{
                 //create a single task.map event that maps compute job
                 //to the job in the DAX
-                mLogFormatter.addEvent( Stampede.TASK_MAP_EVENT_NAME, Stampede.WORKFLOW_ID_KEY , wfuuid  );
+                mEvent.reset( Stampede.TASK_MAP_EVENT_NAME, Stampede.WORKFLOW_ID_KEY , wfuuid  );
 
                 //to be retrieved
-                mLogFormatter.add( Stampede.JOB_ID_KEY, job.getID() );
-                mLogFormatter.add( Stampede.TASK_ID_KEY, job.getLogicalID() );
+                mEvent.add( Stampede.JOB_ID_KEY, job.getID() );
+                mEvent.add( Stampede.TASK_ID_KEY, job.getLogicalID() );
 
-                writer.println( mLogFormatter.createLogMessage() );
-                mLogFormatter.popEvent();
+                writer.write( mEvent );
             }
         }
     }
@@ -504,7 +559,7 @@ public class Stampede implements CodeGenerator {
      * @param job     the clustered job for which to generate the events.
      * @param rootJobId the id of the root clustered job to associate the events with.
      */
-    protected void generateTaskMapEvents(PrintWriter writer, ADag dag, AggregatedJob job, String rootJobId ) {
+    protected void generateTaskMapEvents(EventWriter writer, ADag dag, AggregatedJob job, String rootJobId ) throws IOException {
         String wfuuid = dag.getWorkflowUUID();
         //go through the job constituents and task.map events
         for( Iterator<Job> cit = job.constituentJobsIterator(); cit.hasNext(); ){
@@ -516,15 +571,14 @@ public class Stampede implements CodeGenerator {
             else if( constituentJob.getJobType() == Job.COMPUTE_JOB ){
                 //create task.map event
                 //to the job in the DAX
-                mLogFormatter.addEvent( Stampede.TASK_MAP_EVENT_NAME, Stampede.WORKFLOW_ID_KEY , wfuuid );
+                mEvent.reset( Stampede.TASK_MAP_EVENT_NAME, Stampede.WORKFLOW_ID_KEY , wfuuid );
 
                 //to be retrieved
-                mLogFormatter.add( Stampede.JOB_ID_KEY, rootJobId );
-                //mLogFormatter.add( "exec_job.id", job.getID() );
-                mLogFormatter.add( Stampede.TASK_ID_KEY, constituentJob.getLogicalID() );
-                writer.println( mLogFormatter.createLogMessage() );
+                mEvent.add( Stampede.JOB_ID_KEY, rootJobId );
+                //mEvent.add( "exec_job.id", job.getID() );
+                mEvent.add( Stampede.TASK_ID_KEY, constituentJob.getLogicalID() );
+                writer.write( mEvent );
                 //writer.write( "\n" );
-                mLogFormatter.popEvent();
 
             }
             else{
@@ -605,4 +659,38 @@ public class Stampede implements CodeGenerator {
 
 
     
+    /**
+     * An event writer that writes the events to two writers.
+     */
+    private static class TeeEventWriter implements EventWriter{
+
+        /**
+         * The first writer.
+         */
+        private final EventWriter mFirst;
+
+        /**
+         * The second writer.
+         */
+        private final EventWriter mSecond;
+
+        public TeeEventWriter( EventWriter first, EventWriter second ){
+            mFirst  = first;
+            mSecond = second;
+        }
+
+        public void write( StampedeEvent event ) throws IOException{
+            mFirst.write( event );
+            mSecond.write( event );
+        }
+
+        public void close() throws IOException{
+            try{
+                mFirst.close();
+            }
+            finally{
+                mSecond.close();
+            }
+        }
+    }
 }
@@ -57,6 +57,7 @@ import edu.isi.pegasus.planner.namespace.Globus;
 import edu.isi.pegasus.planner.namespace.Pegasus;
 import edu.isi.pegasus.planner.namespace.ENV;
 
+import edu.isi.pegasus.planner.partitioner.graph.CompactGraph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import org.griphyn.vdl.euryale.VTorInUseException;
 
@@ -90,6 +91,11 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 /**
  * This class generates the condor submit files for the DAG which has to
  * be submitted to the Condor DagMan.
@@ -295,6 +301,18 @@ public class CondorGenerator extends Abstract {
      */
     private boolean mAssignDefaultJobPriorities;
 
+    /**
+     * The number of threads to use for writing out the files in the submit
+     * directory. A value of 1 results in the files being written out serially.
+     */
+    private int mThreads;
+
+    /**
+     * The first exception thrown while writing out a file on the worker
+     * threads.
+     */
+    private CodeGeneratorException mWriteFailure;
+
 
     /**
      * The default constructor.
@@ -328,6 +346,7 @@ public class CondorGenerator extends Abstract {
         mTCHandle    = bag.getHandleToTransformationCatalog();
         mSiteStore   = bag.getHandleToSiteStore();
         mAssignDefaultJobPriorities = mProps.assignDefaultJobPriorities();
+        mThreads     = mProps.getCodeGeneratorThreads();
 
         //instantiate and intialize the style factory
         mStyleFactory.initialize( bag );
@@ -361,6 +380,7 @@ public class CondorGenerator extends Abstract {
     public Collection<File> generateCode( ADag dag ) throws CodeGeneratorException{
         if ( mInitializeGridStart ){
             mConcreteWorkflow = dag;
+            this.initializeSubmitDirectoryLayout( dag );
             mGridStartFactory.initialize( mBag, dag );
             mInitializeGridStart = false;
         }
@@ -422,6 +442,11 @@ public class CondorGenerator extends Abstract {
                                dag.getAbstractWorkflowName(),
                                LogManager.DEBUG_MESSAGE_LEVEL);
         
+        //the submit files are rendered serially in the workflow order, and
+        //only the writing out of the files is handed to the worker threads
+        long start = System.currentTimeMillis();
+        ExecutorService executor = ( mThreads > 1 ) ? this.createExecutor( mThreads ): null;
+        mWriteFailure = null;
   
         //convert the dax to a graph representation and walk it
         //in a top down manner
@@ -457,10 +482,8 @@ public class CondorGenerator extends Abstract {
                                                new Integer(priority).toString() );
                                                
                 //log to debug
-                StringBuffer sb = new StringBuffer();
-                sb.append( "Applying priority of " ).append( priority ).
-                        append( " to " ).append( job.getID() );
-                mLogger.log( sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
+                mLogger.log( LogManager.DEBUG_MESSAGE_LEVEL, "Applying priority of %s to %s",
+                             priority, job.getID() );
             }
 
                  
@@ -507,7 +530,8 @@ public class CondorGenerator extends Abstract {
                 if( job != null ){
                     //the submit file for the job needs to be written out
                     //write out a condor submit file
-                    generateCode( dag, job  );
+                    this.execute( executor,
+                                  this.createSubmitFileTask( job, this.renderSubmitFile( dag, job ) ) );
                 }
                 
                 //write out all the dagman profile variables associated
@@ -517,13 +541,17 @@ public class CondorGenerator extends Abstract {
             }
             
             
-            mLogger.log("Written Submit file : " +
-                        getFileBaseName(job), LogManager.DEBUG_MESSAGE_LEVEL);
+            if( mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL ) ){
+                mLogger.log("Written Submit file : " +
+                            getFileBaseName(job), LogManager.DEBUG_MESSAGE_LEVEL);
+            }
         }
         mLogger.logEventCompletion( LogManager.DEBUG_MESSAGE_LEVEL );
+        long jobsTime = System.currentTimeMillis() - start;
 
         //writing the tail of .dag file
         //that contains the relation pairs
+        long phaseStart = System.currentTimeMillis();
         this.writeDagFileTail( dag );
         mLogger.log("Written Dag File : " + dagFileName,
                     LogManager.DEBUG_MESSAGE_LEVEL);
@@ -533,13 +561,28 @@ public class CondorGenerator extends Abstract {
             this.generateLogFileSymlink( this.getCondorLogInTmpDirectory(),
                                          this.getCondorLogInSubmitDirectory( dag ) );
         }
+        long tailTime = System.currentTimeMillis() - phaseStart;
 
-        //write out the DOT file
-        mLogger.log( "Writing out the DOT file ", LogManager.DEBUG_MESSAGE_LEVEL );
-        this.writeDOTFile( getDAGFilename( dag, ".dot"), dag );
+        //the other files in the submit directory only read the workflow
+        //and are written out independently of each other
+        phaseStart = System.currentTimeMillis();
+        final ADag workflow = dag;
+        final String dotFile = getDAGFilename( dag, ".dot");
+        final String metadataFile = getDAGFilename( dag, ".metadata");
 
+        //write out the DOT file
+        this.execute( executor, new WriteTask( "DOT file " + dotFile ){
+            public void write() throws CodeGeneratorException{
+                mLogger.log( "Writing out the DOT file ", LogManager.DEBUG_MESSAGE_LEVEL );
+                writeDOTFile( dotFile, workflow );
+            }
+        });
 
-        this.writeMetadataFile( getDAGFilename( dag, ".metadata"), dag );
+        this.execute( executor, new WriteTask( "metadata file " + metadataFile ){
+            public void write() throws CodeGeneratorException{
+                writeMetadataFile( metadataFile, workflow );
+            }
+        });
         
         /*
         //we no longer write out the job.map file
@@ -551,19 +594,51 @@ public class CondorGenerator extends Abstract {
         
 
         //write out the notifications input file
-        this.writeOutNotifications( dag );
+        this.execute( executor, new WriteTask( "notifications file" ){
+            public void write() throws CodeGeneratorException{
+                writeOutNotifications( workflow );
+            }
+        });
 
         //the dax replica store
-        this.writeOutDAXReplicaStore( dag );
+        this.execute( executor, new WriteTask( "DAX replica store" ){
+            public void write() throws CodeGeneratorException{
+                writeOutDAXReplicaStore( workflow );
+            }
+        });
 
         //write out the nelogger file
-        this.writeOutStampedeEvents( dag );
+        this.execute( executor, new WriteTask( "stampede events" ){
+            public void write() throws CodeGeneratorException{
+                writeOutStampedeEvents( workflow );
+            }
+        });
 
         //write out the metrics file
 //        this.writeOutWorkflowMetrics(dag);
 
         //write out the braindump file
-        this.writeOutBraindump( dag );
+        this.execute( executor, new WriteTask( "braindump file" ){
+            public void write() throws CodeGeneratorException{
+                writeOutBraindump( workflow );
+            }
+        });
+        long sideTime = System.currentTimeMillis() - phaseStart;
+
+        //all the files need to be written out before the
+        //dag file is renamed
+        phaseStart = System.currentTimeMillis();
+        this.join( executor );
+        mGridStartFactory.flush();
+        long joinTime = System.currentTimeMillis() - phaseStart;
+
+        mLogger.log( "Code generation timings with " + mThreads + " thread(s) : " +
+                     "jobs " + jobsTime + " ms, " +
+                     "dag file tail " + tailTime + " ms, " +
+                     "other files " + sideTime + " ms, " +
+                     "waiting for writes " + joinTime + " ms, " +
+                     "total " + ( System.currentTimeMillis() - start ) + " ms",
+                     LogManager.INFO_MESSAGE_LEVEL );
         
         //PM-966 rename the tmp dag file back to the original name
         //before we write out the dag.condor.sub file
@@ -592,6 +667,25 @@ public class CondorGenerator extends Abstract {
      * @throws CodeGeneratorException in case of any error occuring code generation.
      */
     public void generateCode( ADag dag, Job job ) throws CodeGeneratorException{
+        this.writeSubmitFile( job, this.renderSubmitFile( dag, job ) );
+        mGridStartFactory.flush();
+    }
+
+    /**
+     * Renders the condor submit file for a single job. The job is updated
+     * with the profiles applied while rendering the submit file, and hence
+     * the jobs need to be rendered in the order they are written to the
+     * .dag file.
+     *
+     * @param dag    the dag of which the job is a part of.
+     * @param job    the <code>Job</code> object holding the information about
+     *               that particular job.
+     *
+     * @return the contents of the submit file.
+     *
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    protected String renderSubmitFile( ADag dag, Job job ) throws CodeGeneratorException{
         String dagname  = dag.getLabel();
         String dagindex = dag.getIndex();
         String dagcount = dag.getCount();
@@ -601,6 +695,7 @@ public class CondorGenerator extends Abstract {
         //initialize GridStart if required.
         if ( mInitializeGridStart ){
             mConcreteWorkflow = dag;
+            this.initializeSubmitDirectoryLayout( dag );
             mGridStartFactory.initialize( mBag, dag );
             mInitializeGridStart = false;
         }
@@ -643,14 +738,9 @@ public class CondorGenerator extends Abstract {
         */
         
 
-        // intialize the print stream to the file
-        PrintWriter writer = null;
-        try{
-            writer = getWriter(job);
-        }catch(IOException ioe ){
-            throw new CodeGeneratorException( "IOException while writing submit file for job " +
-                                              job.getName(), ioe);
-        }
+        // intialize the print stream to the buffer
+        StringWriter submitFile = new StringWriter();
+        PrintWriter writer = new PrintWriter( submitFile );
 
         //handle the globus rsl parameters
         //for the job from various resources
@@ -714,9 +804,178 @@ public class CondorGenerator extends Abstract {
         writer.println("# END OF SUBMIT FILE");
         writer.println(this.mSeparator);
 */
+        writer.close();
+        return submitFile.toString();
+    }
+
+    /**
+     * Writes out the rendered condor submit file for a job to the submit
+     * directory.
+     *
+     * @param job        the job whose submit file is written.
+     * @param contents   the contents of the submit file.
+     *
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    protected void writeSubmitFile( Job job, String contents ) throws CodeGeneratorException{
+        // intialize the print stream to the file
+        PrintWriter writer = null;
+        try{
+            writer = getWriter(job);
+        }catch(IOException ioe ){
+            throw new CodeGeneratorException( "IOException while writing submit file for job " +
+                                              job.getName(), ioe);
+        }
+        writer.print( contents );
+
         // close the print stream to the file (flush)
         writer.close();
-        return;
+    }
+
+    /**
+     * Returns a task that writes out the rendered submit file for a job.
+     *
+     * @param job        the job whose submit file is written.
+     * @param contents   the contents of the submit file.
+     *
+     * @return the task
+     */
+    private WriteTask createSubmitFileTask( final Job job, final String contents ){
+        return new WriteTask( "submit file for job " + job.getID() ){
+            public void write() throws CodeGeneratorException{
+                writeSubmitFile( job, contents );
+            }
+        };
+    }
+
+    /**
+     * Creates the bounded pool of threads used to write out the files. Once
+     * all the threads are busy and the queue is full, the task is run in the
+     * calling thread. This bounds the number of rendered submit files held
+     * in memory. Idle threads time out, so that the pool does not linger if
+     * the code generation fails before all the tasks are submitted.
+     *
+     * @param threads  the number of threads.
+     *
+     * @return the executor
+     */
+    private ExecutorService createExecutor( int threads ){
+        ThreadFactory factory = new ThreadFactory(){
+            private int mCount = 0;
+
+            public synchronized Thread newThread( Runnable r ){
+                Thread t = new Thread( r, "pegasus-code-generator-" + mCount++ );
+                t.setDaemon( true );
+                return t;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads,
+                                                              1L, TimeUnit.SECONDS,
+                                                              new ArrayBlockingQueue<Runnable>( threads * 16 ),
+                                                              factory,
+                                                              new ThreadPoolExecutor.CallerRunsPolicy() );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * Executes a task writing out a file. If no executor is passed, the task
+     * is executed in the calling thread.
+     *
+     * @param executor  the executor, can be null.
+     * @param task      the task to execute.
+     *
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    private void execute( ExecutorService executor, WriteTask task ) throws CodeGeneratorException{
+        if( executor == null ){
+            task.write();
+        }
+        else{
+            executor.execute( task );
+        }
+    }
+
+    /**
+     * Waits for all the tasks submitted to the executor to complete, and
+     * throws the first exception thrown by any of the tasks.
+     *
+     * @param executor  the executor, can be null.
+     *
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    private void join( ExecutorService executor ) throws CodeGeneratorException{
+        if( executor == null ){
+            return;
+        }
+        executor.shutdown();
+        try{
+            while( !executor.awaitTermination( 1, TimeUnit.SECONDS ) ){
+                //keep waiting
+            }
+        }
+        catch( InterruptedException e ){
+            executor.shutdownNow();
+            throw new CodeGeneratorException( "Interrupted while writing out the submit directory", e );
+        }
+        if( mWriteFailure != null ){
+            throw mWriteFailure;
+        }
+    }
+
+    /**
+     * Records the first exception thrown while writing out a file.
+     *
+     * @param description  description of the file being written out.
+     * @param e            the exception.
+     */
+    private synchronized void writeFailed( String description, Exception e ){
+        if( mWriteFailure == null ){
+            mWriteFailure = ( e instanceof CodeGeneratorException )?
+                            (CodeGeneratorException)e:
+                            new CodeGeneratorException( "Error while writing out " + description, e );
+        }
+    }
+
+    /**
+     * A task that writes out a file in the submit directory. When run on a
+     * worker thread, any exception thrown is recorded, and thrown once all
+     * the tasks have completed.
+     */
+    private abstract class WriteTask implements Runnable{
+
+        /**
+         * Description of the file written out.
+         */
+        private String mDescription;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param description  description of the file written out.
+         */
+        public WriteTask( String description ){
+            mDescription = description;
+        }
+
+        /**
+         * Writes out the file.
+         *
+         * @throws CodeGeneratorException in case of any error occuring code generation.
+         */
+        public abstract void write() throws CodeGeneratorException;
+
+        /**
+         * Writes out the file on a worker thread.
+         */
+        public void run(){
+            try{
+                this.write();
+            }
+            catch( Exception e ){
+                writeFailed( mDescription, e );
+            }
+        }
     }
 
 
@@ -1186,6 +1445,7 @@ public class CondorGenerator extends Abstract {
             stream = new PrintWriter( new BufferedWriter ( new FileWriter( filename ) ) );
             GsonBuilder builder =  new GsonBuilder().excludeFieldsWithoutExposeAnnotation().setPrettyPrinting();
             builder.registerTypeAdapter( GraphNode.class, new GraphNodeGSONAdapter()).create();
+            builder.registerTypeAdapter( CompactGraph.class, new CompactGraphGSONAdapter() );
             Gson gson = builder.create();
             String json = gson.toJson( dag );
             stream.write( json );      
@@ -1565,17 +1825,15 @@ public class CondorGenerator extends Abstract {
 
         //put the arguments as appropriate condor profile
         if( args != null && args.length() > 0){
-            if( mProps.useCondorQuotingForArguments() && args != null){
+            if( mProps.getSnapshot().useCondorQuotingForArguments() && args != null){
                 try {
-                    mLogger.log("Unquoted arguments are " + args,
-                                 LogManager.DEBUG_MESSAGE_LEVEL);
+                    mLogger.log( LogManager.DEBUG_MESSAGE_LEVEL, "Unquoted arguments are %s", args );
 
                     //insert a comment for the old args
                     //job.condorVariables.construct("#arguments",args);
                     args = CondorQuoteParser.quote(args, true);
                     job.condorVariables.construct( Condor.ARGUMENTS_KEY, args);
-                    mLogger.log("Quoted arguments are " + args,
-                                  LogManager.DEBUG_MESSAGE_LEVEL);
+                    mLogger.log( LogManager.DEBUG_MESSAGE_LEVEL, "Quoted arguments are %s", args );
                 }
                 catch (CondorQuoteParserException e) {
                     throw new RuntimeException("CondorQuoting Problem " +
@@ -1932,7 +2190,7 @@ public class CondorGenerator extends Abstract {
         String jobName = job.jobName;
         String script = null;
         job.dagmanVariables.checkKeyInNS(Dagman.JOB_KEY,
-                                         getFileBaseName(job));
+                                         getDAGMANFilename(job));
         
         
         //remove the prescript arguments key
@@ -2047,3 +2305,30 @@ class GraphNodeGSONAdapter extends TypeAdapter<GraphNode> {
     }
 }
 
+/**
+ * Serializes a CompactGraph the same way as the exposed job store of a MapGraph.
+ */
+class CompactGraphGSONAdapter extends TypeAdapter<CompactGraph> {
+
+    private final GraphNodeGSONAdapter mNodeAdapter = new GraphNodeGSONAdapter();
+
+    @Override
+    public void write(JsonWriter writer, CompactGraph graph) throws IOException {
+        writer.beginObject();
+        writer.name( "jobs" );
+        writer.beginObject();
+        for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            writer.name( node.getID() );
+            mNodeAdapter.write( writer, node );
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+
+    @Override
+    public CompactGraph read(JsonReader reader) throws IOException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code.generator.stampede;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the stampede events written out by the BinaryEventWriter.
+ *
+ * @author Karan Vahi
+ *
+ * @see BinaryEventWriter
+ */
+public class BinaryEventReader {
+
+    /**
+     * The underlying stream.
+     */
+    private final InputStream mStream;
+
+    /**
+     * The buffer a record is read into.
+     */
+    private byte[] mBuffer;
+
+    /**
+     * The position in the buffer.
+     */
+    private int mPosition;
+
+    /**
+     * The symbol table of the current segment.
+     */
+    private final List<String> mSymbols;
+
+    /**
+     * Whether a segment header has been read.
+     */
+    private boolean mHeaderRead;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param stream  the stream to read the events from. It should be buffered.
+     */
+    public BinaryEventReader( InputStream stream ){
+        mStream  = stream;
+        mBuffer  = new byte[ 512 ];
+        mSymbols = new ArrayList<String>();
+        mHeaderRead = false;
+    }
+
+    /**
+     * Reads the next event in the stream.
+     *
+     * @param event  the event to populate
+     *
+     * @return true if an event was read, false at the end of the stream
+     *
+     * @throws IOException in case of error while reading, or if the stream
+     *                     is not in the binary event format
+     */
+    public boolean read( StampedeEvent event ) throws IOException{
+        int length;
+        while( true ){
+            int first = mStream.read();
+            if( first == -1 ){
+                return false;
+            }
+            length = this.readVarint( first );
+            if( length != 0 ){
+                break;
+            }
+            //start of a new segment
+            byte[] header = new byte[ BinaryEventWriter.MAGIC.length + 1 ];
+            this.readFully( header, header.length );
+            for( int i = 0; i < BinaryEventWriter.MAGIC.length; i++ ){
+                if( header[i] != BinaryEventWriter.MAGIC[i] ){
+                    throw new IOException( "Not a stampede binary event stream" );
+                }
+            }
+            if( header[ header.length - 1 ] != BinaryEventWriter.VERSION ){
+                throw new IOException( "Unsupported version of stampede binary events " + header[ header.length - 1 ] );
+            }
+            mSymbols.clear();
+            mHeaderRead = true;
+        }
+        if( !mHeaderRead ){
+            throw new IOException( "Stampede binary event stream does not start with a header" );
+        }
+
+        if( length > mBuffer.length ){
+            mBuffer = new byte[ Math.max( length, 2 * mBuffer.length ) ];
+        }
+        this.readFully( mBuffer, length );
+        mPosition = 0;
+
+        long ts = 0;
+        for( int i = 0; i < 8; i++ ){
+            ts = ( ts << 8 ) | ( mBuffer[ mPosition++ ] & 0xFF );
+        }
+        String name = this.readSymbol();
+        String entityKey = this.readSymbol();
+        String entityValue = this.readSymbol();
+        event.reset( name, entityKey, entityValue );
+        event.setTimestamp( ts );
+        int size = this.readBufferVarint();
+        for( int i = 0; i < size; i++ ){
+            String key = this.readSymbol();
+            event.add( key, this.readString() );
+        }
+        if( mPosition != length ){
+            throw new IOException( "Malformed stampede binary event of length " + length );
+        }
+        return true;
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException in case of error while closing
+     */
+    public void close() throws IOException{
+        mStream.close();
+    }
+
+    /**
+     * Reads a symbol from the buffer.
+     *
+     * @return the symbol
+     *
+     * @throws IOException in case of an undefined symbol
+     */
+    private String readSymbol() throws IOException{
+        int index = this.readBufferVarint();
+        if( index < mSymbols.size() ){
+            return mSymbols.get( index );
+        }
+        if( index == mSymbols.size() ){
+            String symbol = this.readString();
+            mSymbols.add( symbol );
+            return symbol;
+        }
+        throw new IOException( "Undefined symbol " + index + " in stampede binary event" );
+    }
+
+    /**
+     * Reads a string from the buffer.
+     *
+     * @return the string, or null
+     */
+    private String readString() throws IOException{
+        int length = this.readBufferVarint();
+        if( length == 0 ){
+            return null;
+        }
+        length--;
+        String result = new String( mBuffer, mPosition, length, "UTF-8" );
+        mPosition += length;
+        return result;
+    }
+
+    /**
+     * Reads a varint from the buffer.
+     *
+     * @return the value
+     */
+    private int readBufferVarint(){
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do{
+            b = mBuffer[ mPosition++ ];
+            value |= ( b & 0x7F ) << shift;
+            shift += 7;
+        }while( ( b & 0x80 ) != 0 );
+        return value;
+    }
+
+    /**
+     * Reads a varint from the stream.
+     *
+     * @param first  the first byte of the varint, already read
+     *
+     * @return the value
+     *
+     * @throws IOException in case of error while reading
+     */
+    private int readVarint( int first ) throws IOException{
+        int value = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while( ( b & 0x80 ) != 0 ){
+            b = mStream.read();
+            if( b == -1 ){
+                throw new EOFException( "Truncated stampede binary event stream" );
+            }
+            value |= ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+    /**
+     * Reads bytes from the stream.
+     *
+     * @param buffer  the buffer to read into
+     * @param length  the number of bytes to read
+     *
+     * @throws IOException in case of error while reading
+     */
+    private void readFully( byte[] buffer, int length ) throws IOException{
+        int read = 0;
+        while( read < length ){
+            int n = mStream.read( buffer, read, length - read );
+            if( n == -1 ){
+                throw new EOFException( "Truncated stampede binary event stream" );
+            }
+            read += n;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code.generator.stampede;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes out the stampede events in a compact, length prefixed binary
+ * format. The stream consists of segments, one for each writer that wrote
+ * to it. Each segment starts with a header
+ *
+ * <pre>
+ *   varint 0, the bytes "PSEB", and a version byte
+ * </pre>
+ *
+ * followed by the records for the events. A record is the varint length of
+ * the record body, followed by the body
+ *
+ * <pre>
+ *   8 byte big endian timestamp in microseconds since epoch
+ *   symbol  the event name
+ *   symbol  the entity key
+ *   symbol  the entity id
+ *   varint  the number of attributes
+ *   for each attribute, a symbol for the key and a string for the value
+ * </pre>
+ *
+ * A string is encoded as a varint with the number of UTF-8 bytes plus one,
+ * followed by the bytes. A varint of zero indicates a null string. A symbol
+ * is a varint index into the symbol table of the segment. The index for a
+ * symbol that has not appeared earlier in the segment is the size of the
+ * table, and is followed by the symbol encoded as a string. The records of
+ * a segment have to be read in order. Varints are unsigned, with seven bits
+ * per byte, least significant group first.
+ *
+ * @author Karan Vahi
+ */
+public class BinaryEventWriter implements EventWriter {
+
+    /**
+     * The magic bytes in the segment header.
+     */
+    public static final byte[] MAGIC = { 'P', 'S', 'E', 'B' };
+
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The underlying stream.
+     */
+    private final OutputStream mStream;
+
+    /**
+     * The buffer a record is encoded into.
+     */
+    private byte[] mBuffer;
+
+    /**
+     * The number of bytes in the buffer.
+     */
+    private int mLength;
+
+    /**
+     * The symbol table, mapping a symbol to its index.
+     */
+    private final Map<String,Integer> mSymbols;
+
+    /**
+     * The overloaded constructor. Writes out the segment header.
+     *
+     * @param stream  the stream to write the events to. It should be buffered.
+     *
+     * @throws IOException in case of error while writing the header
+     */
+    public BinaryEventWriter( OutputStream stream ) throws IOException{
+        mStream  = stream;
+        mBuffer  = new byte[ 512 ];
+        mSymbols = new HashMap<String,Integer>();
+
+        mLength = 0;
+        this.writeVarint( 0 );
+        for( byte b : MAGIC ){
+            this.writeByte( b );
+        }
+        this.writeByte( VERSION );
+        mStream.write( mBuffer, 0, mLength );
+    }
+
+    /**
+     * Writes out an event as a record.
+     *
+     * @param event  the event to write
+     *
+     * @throws IOException in case of error while writing
+     */
+    public void write( StampedeEvent event ) throws IOException{
+        //leave space for the length prefix, that takes at most 5 bytes
+        mLength = 5;
+        long ts = event.getTimestamp();
+        for( int shift = 56; shift >= 0; shift -= 8 ){
+            this.writeByte( (int)( ts >>> shift ) );
+        }
+        this.writeSymbol( event.getName() );
+        this.writeSymbol( event.getEntityKey() );
+        this.writeSymbol( event.getEntityValue() );
+        this.writeVarint( event.size() );
+        for( int i = 0; i < event.size(); i++ ){
+            this.writeSymbol( event.getKey( i ) );
+            this.writeString( event.getValue( i ) );
+        }
+
+        //encode the length prefix right before the body
+        int body = mLength - 5;
+        int start = 5 - BinaryEventWriter.varintLength( body );
+        int end = mLength;
+        mLength = start;
+        this.writeVarint( body );
+        mStream.write( mBuffer, start, end - start );
+    }
+
+    /**
+     * Flushes and closes the underlying stream.
+     *
+     * @throws IOException in case of error while closing
+     */
+    public void close() throws IOException{
+        mStream.close();
+    }
+
+    /**
+     * Writes out a symbol, defining it if it has not been written earlier.
+     *
+     * @param symbol  the symbol
+     */
+    private void writeSymbol( String symbol ){
+        Integer index = mSymbols.get( symbol );
+        if( index == null ){
+            int next = mSymbols.size();
+            mSymbols.put( symbol, next );
+            this.writeVarint( next );
+            this.writeString( symbol );
+        }
+        else{
+            this.writeVarint( index );
+        }
+    }
+
+    /**
+     * Writes out a string as the varint length followed by the UTF-8 bytes.
+     *
+     * @param value  the string, can be null
+     */
+    private void writeString( String value ){
+        if( value == null ){
+            this.writeVarint( 0 );
+            return;
+        }
+        int length = value.length();
+        boolean ascii = true;
+        for( int i = 0; i < length && ascii; i++ ){
+            ascii = value.charAt( i ) < 0x80;
+        }
+        if( ascii ){
+            this.writeVarint( length + 1 );
+            this.ensureCapacity( length );
+            for( int i = 0; i < length; i++ ){
+                mBuffer[ mLength++ ] = (byte)value.charAt( i );
+            }
+        }
+        else{
+            byte[] bytes;
+            try{
+                bytes = value.getBytes( "UTF-8" );
+            }
+            catch( java.io.UnsupportedEncodingException e ){
+                throw new RuntimeException( "UTF-8 encoding not supported", e );
+            }
+            this.writeVarint( bytes.length + 1 );
+            this.ensureCapacity( bytes.length );
+            System.arraycopy( bytes, 0, mBuffer, mLength, bytes.length );
+            mLength += bytes.length;
+        }
+    }
+
+    /**
+     * Writes out an unsigned varint.
+     *
+     * @param value  the value
+     */
+    private void writeVarint( int value ){
+        this.ensureCapacity( 5 );
+        while( ( value & ~0x7F ) != 0 ){
+            mBuffer[ mLength++ ] = (byte)( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        mBuffer[ mLength++ ] = (byte)value;
+    }
+
+    /**
+     * Writes out a single byte.
+     *
+     * @param value  the byte
+     */
+    private void writeByte( int value ){
+        this.ensureCapacity( 1 );
+        mBuffer[ mLength++ ] = (byte)value;
+    }
+
+    /**
+     * Ensures that the buffer can hold additional bytes.
+     *
+     * @param additional  the number of additional bytes
+     */
+    private void ensureCapacity( int additional ){
+        if( mLength + additional > mBuffer.length ){
+            byte[] buffer = new byte[ Math.max( 2 * mBuffer.length, mLength + additional ) ];
+            System.arraycopy( mBuffer, 0, buffer, 0, mLength );
+            mBuffer = buffer;
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the varint encoding of a value.
+     *
+     * @param value  the value
+     *
+     * @return the number of bytes
+     */
+    private static int varintLength( int value ){
+        int length = 1;
+        while( ( value & ~0x7F ) != 0 ){
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+}
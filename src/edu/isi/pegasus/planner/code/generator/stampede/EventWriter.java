@@ -0,0 +1,45 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code.generator.stampede;
+
+import java.io.IOException;
+
+/**
+ * The interface for writing out stampede events to a stream. Implementations
+ * are not thread safe.
+ *
+ * @author Karan Vahi
+ */
+public interface EventWriter {
+
+    /**
+     * Writes out an event. The event can be reused by the caller once the
+     * method returns.
+     *
+     * @param event  the event to write
+     *
+     * @throws IOException in case of error while writing
+     */
+    public void write( StampedeEvent event ) throws IOException;
+
+    /**
+     * Flushes and closes the underlying stream.
+     *
+     * @throws IOException in case of error while closing
+     */
+    public void close() throws IOException;
+}
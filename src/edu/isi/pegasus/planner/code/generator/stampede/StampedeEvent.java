@@ -0,0 +1,225 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code.generator.stampede;
+
+/**
+ * A stampede event, that consists of the event name, the entity the event
+ * is about ( usually the workflow id ), a timestamp and an ordered list of
+ * attributes. An instance is meant to be reused for all the events written
+ * out, by calling reset before the attributes for the next event are added.
+ *
+ * @author Karan Vahi
+ */
+public class StampedeEvent {
+
+    /**
+     * The time in nanoseconds when the class was loaded.
+     */
+    private static final long NANO0 = System.nanoTime();
+
+    /**
+     * The time in microseconds since epoch when the class was loaded.
+     */
+    private static final long MICRO0 = System.currentTimeMillis() * 1000L;
+
+    /**
+     * The name of the event.
+     */
+    private String mName;
+
+    /**
+     * The key for the entity the event is about.
+     */
+    private String mEntityKey;
+
+    /**
+     * The id of the entity the event is about.
+     */
+    private String mEntityValue;
+
+    /**
+     * The timestamp of the event in microseconds since epoch.
+     */
+    private long mTimestamp;
+
+    /**
+     * The attribute keys.
+     */
+    private String[] mKeys;
+
+    /**
+     * The attribute values.
+     */
+    private String[] mValues;
+
+    /**
+     * The number of attributes.
+     */
+    private int mSize;
+
+    /**
+     * The default constructor.
+     */
+    public StampedeEvent(){
+        mKeys   = new String[ 8 ];
+        mValues = new String[ 8 ];
+        mSize   = 0;
+    }
+
+    /**
+     * Resets the event, removing all the attributes and setting the timestamp
+     * to the current time.
+     *
+     * @param name         the name of the event
+     * @param entityKey    the key for the entity the event is about
+     * @param entityValue  the id of the entity
+     *
+     * @return self-reference, so calls can be chained
+     */
+    public StampedeEvent reset( String name, String entityKey, String entityValue ){
+        mName        = name;
+        mEntityKey   = entityKey;
+        mEntityValue = entityValue;
+        mTimestamp   = StampedeEvent.currentTimeMicros();
+        mSize        = 0;
+        return this;
+    }
+
+    /**
+     * Adds an attribute to the event.
+     *
+     * @param key    the attribute key
+     * @param value  the attribute value
+     *
+     * @return self-reference, so calls can be chained
+     */
+    public StampedeEvent add( String key, String value ){
+        if( mSize == mKeys.length ){
+            String[] keys = new String[ mSize * 2 ];
+            String[] values = new String[ mSize * 2 ];
+            System.arraycopy( mKeys, 0, keys, 0, mSize );
+            System.arraycopy( mValues, 0, values, 0, mSize );
+            mKeys   = keys;
+            mValues = values;
+        }
+        mKeys[ mSize ]   = key;
+        mValues[ mSize ] = value;
+        mSize++;
+        return this;
+    }
+
+    /**
+     * Returns the name of the event.
+     *
+     * @return the name
+     */
+    public String getName(){
+        return mName;
+    }
+
+    /**
+     * Returns the key for the entity the event is about.
+     *
+     * @return the entity key
+     */
+    public String getEntityKey(){
+        return mEntityKey;
+    }
+
+    /**
+     * Returns the id of the entity the event is about.
+     *
+     * @return the entity id
+     */
+    public String getEntityValue(){
+        return mEntityValue;
+    }
+
+    /**
+     * Returns the timestamp of the event.
+     *
+     * @return the timestamp in microseconds since epoch
+     */
+    public long getTimestamp(){
+        return mTimestamp;
+    }
+
+    /**
+     * Sets the timestamp of the event.
+     *
+     * @param timestamp the timestamp in microseconds since epoch
+     */
+    public void setTimestamp( long timestamp ){
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * Returns the number of attributes in the event.
+     *
+     * @return the number of attributes
+     */
+    public int size(){
+        return mSize;
+    }
+
+    /**
+     * Returns the key of an attribute.
+     *
+     * @param index  the index of the attribute
+     *
+     * @return the key
+     */
+    public String getKey( int index ){
+        return mKeys[ index ];
+    }
+
+    /**
+     * Returns the value of an attribute.
+     *
+     * @param index  the index of the attribute
+     *
+     * @return the value
+     */
+    public String getValue( int index ){
+        return mValues[ index ];
+    }
+
+    /**
+     * Returns a textual description of the event.
+     *
+     * @return String
+     */
+    public String toString(){
+        StringBuffer sb = new StringBuffer();
+        sb.append( mName ).append( " " ).append( mEntityKey ).append( "=" ).append( mEntityValue );
+        for( int i = 0; i < mSize; i++ ){
+            sb.append( " " ).append( mKeys[i] ).append( "=" ).append( mValues[i] );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the current time in microseconds since epoch. The time is
+     * computed from the nanosecond timer, in the same way as for the
+     * netlogger log messages.
+     *
+     * @return the time in microseconds
+     */
+    public static long currentTimeMicros(){
+        return ( System.nanoTime() - NANO0 ) / 1000L + MICRO0;
+    }
+}
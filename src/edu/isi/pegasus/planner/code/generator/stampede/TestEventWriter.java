@@ -0,0 +1,153 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code.generator.stampede;
+
+import edu.isi.pegasus.common.logging.LogFormatter;
+import edu.isi.pegasus.common.logging.LogFormatterFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Benchmarks the throughput in events per second of writing out the job.info
+ * and job.edge stampede events of a large workflow, with the Netlogger log
+ * formatter used earlier, the text event writer and the binary event writer.
+ * The throughput of reading the binary events back is also reported.
+ *
+ * @author Karan Vahi
+ */
+public class TestEventWriter {
+
+    /**
+     * The uuid of the workflow.
+     */
+    private static final String UUID = "a6cd2c43-3e4a-4b3c-9a4e-12f0b3f4bd2e";
+
+    /**
+     * The number of edges per job.
+     */
+    private static final int EDGES_PER_JOB = 10;
+
+    /**
+     * Populates the event for the i'th event of the workflow.
+     */
+    private static void populate( StampedeEvent event, int i ){
+        int job = i / ( EDGES_PER_JOB + 1 );
+        if( i % ( EDGES_PER_JOB + 1 ) == 0 ){
+            event.reset( "job.info", "xwf.id", UUID ).
+                  add( "job.id", "preprocess_ID" + job ).
+                  add( "submit_file", "preprocess_ID" + job + ".sub" ).
+                  add( "type", "1" ).
+                  add( "type_desc", "compute" ).
+                  add( "clustered", "0" ).
+                  add( "max_retries", "3" ).
+                  add( "executable", "/usr/bin/pegasus-keg" ).
+                  add( "argv", "-a preprocess -T 60 -i f.a -o f.b" + job ).
+                  add( "task_count", "1" );
+        }
+        else{
+            event.reset( "job.edge", "xwf.id", UUID ).
+                  add( "parent.job.id", "preprocess_ID" + job ).
+                  add( "child.job.id", "analyze_ID" + ( job + i ) );
+        }
+    }
+
+    /**
+     * Reports the throughput.
+     */
+    private static void report( String label, int events, long start, File f ){
+        double time = ( System.nanoTime() - start ) / 1e9;
+        System.out.println( String.format( "%-22s events=%d time=%.2f s throughput=%.0f events/s size=%d bytes",
+                                           label, events, time, events / time, f.length() ) );
+    }
+
+    /**
+     * Runs the benchmark for the number of events passed as arguments. By
+     * default the benchmark is run for 1000000 events.
+     *
+     * @param args the number of events.
+     *
+     * @throws IOException in case of error while writing to the temporary files
+     */
+    public static void main( String[] args ) throws IOException{
+        int events = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 1000000;
+        File text = File.createTempFile( "stampede", ".static.bp" );
+        File binary = File.createTempFile( "stampede", ".static.bin" );
+        text.deleteOnExit();
+        binary.deleteOnExit();
+        StampedeEvent event = new StampedeEvent();
+
+        System.out.println( "********* Benchmark  **********" );
+
+        //the netlogger log formatter
+        LogFormatter formatter = LogFormatterFactory.loadInstance( "Netlogger" );
+        long start = System.nanoTime();
+        PrintWriter pw = new PrintWriter( new BufferedWriter( new FileWriter( text ) ) );
+        for( int i = 0; i < events; i++ ){
+            populate( event, i );
+            formatter.addEvent( event.getName(), event.getEntityKey(), event.getEntityValue() );
+            for( int j = 0; j < event.size(); j++ ){
+                formatter.add( event.getKey( j ), event.getValue( j ) );
+            }
+            pw.println( formatter.createLogMessage() );
+            formatter.popEvent();
+        }
+        pw.close();
+        report( "netlogger formatter", events, start, text );
+
+        //the text event writer
+        start = System.nanoTime();
+        EventWriter writer = new TextEventWriter( new BufferedWriter( new FileWriter( text ), 64 * 1024 ) );
+        for( int i = 0; i < events; i++ ){
+            populate( event, i );
+            writer.write( event );
+        }
+        writer.close();
+        report( "text event writer", events, start, text );
+
+        //the binary event writer
+        start = System.nanoTime();
+        writer = new BinaryEventWriter( new BufferedOutputStream( new FileOutputStream( binary ), 64 * 1024 ) );
+        for( int i = 0; i < events; i++ ){
+            populate( event, i );
+            writer.write( event );
+        }
+        writer.close();
+        report( "binary event writer", events, start, binary );
+
+        //reading the binary events back
+        start = System.nanoTime();
+        BinaryEventReader reader = new BinaryEventReader( new BufferedInputStream( new FileInputStream( binary ), 64 * 1024 ) );
+        int read = 0;
+        while( reader.read( event ) ){
+            read++;
+        }
+        reader.close();
+        report( "binary event reader", read, start, binary );
+        if( read != events ){
+            throw new RuntimeException( "Read " + read + " events instead of " + events );
+        }
+        System.out.println( "****************************" );
+    }
+}
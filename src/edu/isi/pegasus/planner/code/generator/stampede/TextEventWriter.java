@@ -0,0 +1,216 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code.generator.stampede;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Writes out the stampede events in the netlogger BP format, one event per
+ * line. The lines are the same as the ones generated by the Netlogger log
+ * formatter
+ *
+ * <pre>
+ * ts=2015-01-01T10:00:00.000000Z event=job.edge xwf.id=uuid parent.job.id="a" child.job.id="b"
+ * </pre>
+ *
+ * The attribute values are quoted, with any quotes in the value escaped by
+ * a backslash. Each line is formatted into a reused character buffer, and the
+ * formatted timestamp is only recomputed when the second changes.
+ *
+ * @author Karan Vahi
+ */
+public class TextEventWriter implements EventWriter {
+
+    /**
+     * The line separator used for terminating the events.
+     */
+    private static final String LINE_SEPARATOR = System.getProperty( "line.separator" );
+
+    /**
+     * The digits for the microseconds.
+     */
+    private static final char[] DIGIT = { '0','1','2','3','4','5','6','7','8','9' };
+
+    /**
+     * The underlying writer.
+     */
+    private final Writer mWriter;
+
+    /**
+     * The buffer an event is formatted into.
+     */
+    private char[] mBuffer;
+
+    /**
+     * The number of characters in the buffer.
+     */
+    private int mLength;
+
+    /**
+     * The formatter for the timestamp upto the seconds.
+     */
+    private final SimpleDateFormat mFormat;
+
+    /**
+     * The second for which the formatted timestamp is cached.
+     */
+    private long mSecond;
+
+    /**
+     * The cached formatted timestamp.
+     */
+    private String mSecondString;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param writer  the writer to write the events to. It should be buffered.
+     */
+    public TextEventWriter( Writer writer ){
+        mWriter = writer;
+        mBuffer = new char[ 512 ];
+        mLength = 0;
+        mFormat = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss" );
+        mFormat.setCalendar( new GregorianCalendar( TimeZone.getTimeZone( "UTC" ) ) );
+        mSecond = Long.MIN_VALUE;
+    }
+
+    /**
+     * Writes out an event as a single line.
+     *
+     * @param event  the event to write
+     *
+     * @throws IOException in case of error while writing
+     */
+    public void write( StampedeEvent event ) throws IOException{
+        mLength = 0;
+        this.append( "ts=" );
+        this.appendTimestamp( event.getTimestamp() );
+        this.append( " event=" );
+        this.append( event.getName() );
+        this.append( ' ' );
+        if( event.getEntityKey() != null ){
+            this.append( event.getEntityKey() );
+            this.append( '=' );
+            this.append( event.getEntityValue() );
+            this.append( ' ' );
+        }
+        for( int i = 0; i < event.size(); i++ ){
+            this.append( event.getKey( i ) );
+            this.append( "=\"" );
+            this.appendEscaped( event.getValue( i ) );
+            this.append( "\" " );
+        }
+        this.append( LINE_SEPARATOR );
+        mWriter.write( mBuffer, 0, mLength );
+    }
+
+    /**
+     * Flushes and closes the underlying writer.
+     *
+     * @throws IOException in case of error while closing
+     */
+    public void close() throws IOException{
+        mWriter.close();
+    }
+
+    /**
+     * Appends the timestamp in the format yyyy-MM-ddTHH:mm:ss.uuuuuuZ
+     *
+     * @param micros  the timestamp in microseconds since epoch
+     */
+    private void appendTimestamp( long micros ){
+        long second = micros / 1000000L;
+        if( second != mSecond ){
+            mSecondString = mFormat.format( new Date( micros / 1000L ) );
+            mSecond = second;
+        }
+        this.append( mSecondString );
+        this.append( '.' );
+        long frac = micros % 1000000L;
+        for( long div = 100000L; div > 0; div = div / 10 ){
+            long n = frac / div;
+            this.append( DIGIT[ (int)n ] );
+            frac -= n * div;
+        }
+        this.append( 'Z' );
+    }
+
+    /**
+     * Appends a value, escaping any quotes in it.
+     *
+     * @param value  the value
+     */
+    private void appendEscaped( String value ){
+        if( value == null ){
+            this.append( "null" );
+            return;
+        }
+        int length = value.length();
+        this.ensureCapacity( 2 * length );
+        for( int i = 0; i < length; i++ ){
+            char ch = value.charAt( i );
+            if( ch == '"' ){
+                mBuffer[ mLength++ ] = '\\';
+            }
+            mBuffer[ mLength++ ] = ch;
+        }
+    }
+
+    /**
+     * Appends a string to the buffer.
+     *
+     * @param value  the string
+     */
+    private void append( String value ){
+        if( value == null ){
+            value = "null";
+        }
+        int length = value.length();
+        this.ensureCapacity( length );
+        value.getChars( 0, length, mBuffer, mLength );
+        mLength += length;
+    }
+
+    /**
+     * Appends a character to the buffer.
+     *
+     * @param ch  the character
+     */
+    private void append( char ch ){
+        this.ensureCapacity( 1 );
+        mBuffer[ mLength++ ] = ch;
+    }
+
+    /**
+     * Ensures that the buffer can hold additional characters.
+     *
+     * @param additional  the number of additional characters
+     */
+    private void ensureCapacity( int additional ){
+        if( mLength + additional > mBuffer.length ){
+            char[] buffer = new char[ Math.max( 2 * mBuffer.length, mLength + additional ) ];
+            System.arraycopy( mBuffer, 0, buffer, 0, mLength );
+            mBuffer = buffer;
+        }
+    }
+}
@@ -574,6 +574,12 @@ public class Distribute implements GridStart {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    /**
+     * Does nothing, as no files are written out in the background.
+     */
+    public void flush(){
+    }
+
     public String getWorkerNodeDirectory(Job job) {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
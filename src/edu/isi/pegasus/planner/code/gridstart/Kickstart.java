@@ -27,6 +27,7 @@ import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
 import edu.isi.pegasus.planner.classes.TransferJob;
 import edu.isi.pegasus.planner.code.GridStart;
+import edu.isi.pegasus.planner.code.SubmitDirectoryLayout;
 import edu.isi.pegasus.planner.code.generator.condor.CondorQuoteParser;
 import edu.isi.pegasus.planner.code.generator.condor.CondorQuoteParserException;
 import edu.isi.pegasus.planner.common.PegasusConfiguration;
@@ -184,6 +185,11 @@ public class Kickstart implements GridStart {
      */
     private String mSubmitDir;
 
+    /**
+     * The layout of the per job files in the submit directory.
+     */
+    private SubmitDirectoryLayout mSubmitDirectoryLayout;
+
     /**
      * A boolean indicating whether to use invoke always or not.
      */
@@ -268,6 +274,9 @@ public class Kickstart implements GridStart {
         mPOptions     = bag.getPlannerOptions();
         mLogger       = bag.getLogger();
         mSubmitDir    = mPOptions.getSubmitDirectory();
+        mSubmitDirectoryLayout = ( bag.getSubmitDirectoryLayout() == null ) ?
+                                 new SubmitDirectoryLayout( mSubmitDir ):
+                                 bag.getSubmitDirectoryLayout();
         mKickstartLabel = ( dag == null ) ? null :
                                             ( mPOptions.getBasenamePrefix() == null )? dag.getLabel():
                                                                                        mPOptions.getBasenamePrefix() ;
@@ -303,6 +312,12 @@ public class Kickstart implements GridStart {
     public void useFullPathToGridStarts( boolean fullPath ){
         this.mUseFullPathToGridStart = fullPath;
     }
+
+    /**
+     * Does nothing, as no files are written out in the background.
+     */
+    public void flush(){
+    }
     
     /**
      * Enables a constituentJob to run on the grid. This also determines how the
@@ -538,7 +553,7 @@ public class Kickstart implements GridStart {
             mLogger.log("Detected WAW conflict for stdout",LogManager.WARNING_MESSAGE_LEVEL);
         }
         // the output of gridstart is propagated back to the submit host
-        construct(job,"output",submitDir + job.jobName + ".out");
+        construct(job,"output",mSubmitDirectoryLayout.getPath( job, ".out" ));
 
 
         if (isGlobusJob) {
@@ -557,7 +572,7 @@ public class Kickstart implements GridStart {
             mLogger.log("Detected WAW conflict for stderr",LogManager.WARNING_MESSAGE_LEVEL);
         }
         // the error from gridstart is propagated back to the submit host
-        construct(job,"error",submitDir + job.jobName + ".err");
+        construct(job,"error",mSubmitDirectoryLayout.getPath( job, ".err" ));
         if (isGlobusJob) {
             construct(job,"transfer_error","true");
         }
@@ -685,7 +700,7 @@ public class Kickstart implements GridStart {
                          .append(' ');
         }
 
-        if(mProps.generateKickstartExtraOptions() && mConcDAG != null){
+        if(mProps.getSnapshot().generateKickstartExtraOptions() && mConcDAG != null){
             gridStartArgs.append("-L ").append( mKickstartLabel ).append(" ");
             gridStartArgs.append("-T ").append(mConcDAG.getMTime()).append(" ");
         }
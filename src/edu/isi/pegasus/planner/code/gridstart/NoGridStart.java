@@ -27,6 +27,7 @@ import edu.isi.pegasus.planner.code.GridStart;
 import edu.isi.pegasus.planner.code.GridStartFactory;
 
 import edu.isi.pegasus.planner.code.POSTScript;
+import edu.isi.pegasus.planner.code.SubmitDirectoryLayout;
 
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
@@ -97,6 +98,11 @@ public class NoGridStart implements GridStart {
      */
     protected String mSubmitDir;
 
+    /**
+     * The layout of the per job files in the submit directory.
+     */
+    protected SubmitDirectoryLayout mSubmitDirectoryLayout;
+
     /**
      * The argument string containing the arguments with which the exitcode
      * is invoked on kickstart output.
@@ -155,6 +161,9 @@ public class NoGridStart implements GridStart {
         mSiteStore   = bag.getHandleToSiteStore();
         mPOptions  = bag.getPlannerOptions();
         mSubmitDir = mPOptions.getSubmitDirectory();
+        mSubmitDirectoryLayout = ( bag.getSubmitDirectoryLayout() == null ) ?
+                                 new SubmitDirectoryLayout( mSubmitDir ):
+                                 bag.getSubmitDirectoryLayout();
         mProps     = bag.getPegasusProperties();
         mGenerateLOF  = mProps.generateLOFFiles();
         mWorkerPackageStagingEnabled = mProps.transferWorkerPackage();
@@ -353,7 +362,7 @@ public class NoGridStart implements GridStart {
             }
         } else {
             // transfer output back to submit host, if unused
-            construct(job,"output",submitDir + job.jobName + ".out");
+            construct(job,"output",mSubmitDirectoryLayout.getPath( job, ".out" ));
             if (isGlobusJob) {
                 construct(job,"transfer_output","true");
             }
@@ -367,7 +376,7 @@ public class NoGridStart implements GridStart {
             }
         } else {
             // transfer error back to submit host, if unused
-            construct(job,"error",submitDir + job.jobName + ".err");
+            construct(job,"error",mSubmitDirectoryLayout.getPath( job, ".err" ));
             if (isGlobusJob) {
                 construct(job,"transfer_error","true");
             }
@@ -676,4 +685,10 @@ public class NoGridStart implements GridStart {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    /**
+     * Does nothing, as no files are written out in the background.
+     */
+    public void flush(){
+    }
+
 }
@@ -41,6 +41,7 @@ import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
 import edu.isi.pegasus.planner.classes.TransferJob;
 import edu.isi.pegasus.planner.code.GridStart;
+import edu.isi.pegasus.planner.code.SubmitDirectoryLayout;
 import edu.isi.pegasus.planner.common.PegasusConfiguration;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Condor;
@@ -50,15 +51,11 @@ import edu.isi.pegasus.planner.refiner.DeployWorkerPackage;
 import edu.isi.pegasus.planner.transfer.SLS;
 import edu.isi.pegasus.planner.transfer.sls.SLSFactory;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -199,6 +196,11 @@ public class PegasusLite implements GridStart {
      */
     protected String mSubmitDir;
 
+    /**
+     * The layout of the per job files in the submit directory.
+     */
+    protected SubmitDirectoryLayout mSubmitDirectoryLayout;
+
     /**
      * The argument string containing the arguments with which the exitcode
      * is invoked on kickstart output.
@@ -281,6 +283,34 @@ public class PegasusLite implements GridStart {
      * that site.
      */
     private Map<String,String> mChmodOnExecutionSiteMap;
+
+    /**
+     * The start of the wrapper up to the setup of the work directory, that
+     * is the same for all the jobs.
+     */
+    private String mHeaderSegment;
+
+    /**
+     * The fragment of the wrapper before the job is invoked, that is the same
+     * for all the jobs.
+     */
+    private String mExecuteSegment;
+
+    /**
+     * The fragment of the wrapper that captures the exitcode of the job.
+     */
+    private static final String JOB_EXITCODE_SEGMENT = "job_ec=$?\nset -e\n\n";
+
+    /**
+     * The rendered work directory setup fragments, indexed by the execution
+     * site and the SLS implementation.
+     */
+    private Map<String,WorkDirectorySegment> mWorkDirectorySegments;
+
+    /**
+     * Writes out the wrappers.
+     */
+    private WrapperWriter mWrapperWriter;
     /**
      * Initializes the GridStart implementation.
      *
@@ -294,6 +324,9 @@ public class PegasusLite implements GridStart {
         mSiteStore = bag.getHandleToSiteStore();
         mPOptions  = bag.getPlannerOptions();
         mSubmitDir = mPOptions.getSubmitDirectory();
+        mSubmitDirectoryLayout = ( bag.getSubmitDirectoryLayout() == null ) ?
+                                 new SubmitDirectoryLayout( mSubmitDir ):
+                                 bag.getSubmitDirectoryLayout();
         mProps     = bag.getPegasusProperties();
         mGenerateLOF  = mProps.generateLOFFiles();
         mTCHandle  = bag.getHandleToTransformationCatalog();
@@ -346,6 +379,37 @@ public class PegasusLite implements GridStart {
         
         mLocalPathToPegasusLiteCommon = getSubmitHostPathToPegasusLiteCommon( );
 
+        //render the fragments shared by all the wrappers once
+        StringBuffer sb = new StringBuffer( );
+        sb.append( "#!/bin/bash" ).append( '\n' );
+        sb.append( "set -e" ).append( '\n' );
+        sb.append( "pegasus_lite_version_major=\"" ).append( this.mMajorVersionLevel ).append( "\"").append( '\n' );
+        sb.append( "pegasus_lite_version_minor=\"" ).append( this.mMinorVersionLevel ).append( "\"").append( '\n' );
+        sb.append( "pegasus_lite_version_patch=\"" ).append( this.mPatchVersionLevel ).append( "\"").append( '\n' );
+        sb.append( '\n' );
+
+        sb.append( ". " ).append( PegasusLite.PEGASUS_LITE_COMMON_FILE_BASENAME ).append( '\n' );
+        sb.append( '\n' );
+
+        sb.append( "pegasus_lite_init\n" );
+        sb.append( '\n' );
+
+        sb.append( "# cleanup in case of failures" ).append( '\n' );
+        sb.append( "trap pegasus_lite_exit INT TERM EXIT" ).append( '\n' );
+        sb.append( '\n' );
+
+        appendStderrFragment( sb, "Setting up workdir" );
+        sb.append( "# work dir" ).append( '\n' );
+        mHeaderSegment = sb.toString();
+
+        sb = new StringBuffer();
+        appendStderrFragment( sb, "executing the user tasks" );
+        sb.append( "# execute the tasks" ).append( '\n' ).
+           append( "set +e" ).append( '\n' );//PM-701
+        mExecuteSegment = sb.toString();
+
+        mWorkDirectorySegments = new HashMap<String,WorkDirectorySegment>();
+        mWrapperWriter = new WrapperWriter( mProps.getCodeGeneratorThreads() );
 
     }
     
@@ -732,7 +796,7 @@ public class PegasusLite implements GridStart {
      * @return the file handle to the seqexec input file
      */
     protected File wrapJobWithPegasusLite(Job job, boolean isGlobusJob) {
-        File shellWrapper = new File( mSubmitDir, job.getID() + ".sh" );
+        File shellWrapper = mSubmitDirectoryLayout.getFile( job, ".sh" );
 
         //PM-971 for auxillary jobs we don't need to worry about 
         //or compute any staging site directories
@@ -760,77 +824,13 @@ public class PegasusLite implements GridStart {
             
 
         try{
-            OutputStream ostream = new FileOutputStream( shellWrapper , true );
-            PrintWriter writer = new PrintWriter( new BufferedWriter(new OutputStreamWriter(ostream)) );
+            //the wrapper is spliced together from the segments shared
+            //across jobs and the segments rendered for this job
+            List<CharSequence> segments = new ArrayList<CharSequence>();
+            segments.add( mHeaderSegment );
+            segments.add( this.getWorkDirectorySegment( job, sls ) );
 
             StringBuffer sb = new StringBuffer( );
-            sb.append( "#!/bin/bash" ).append( '\n' );
-            sb.append( "set -e" ).append( '\n' );
-            sb.append( "pegasus_lite_version_major=\"" ).append( this.mMajorVersionLevel ).append( "\"").append( '\n' );
-            sb.append( "pegasus_lite_version_minor=\"" ).append( this.mMinorVersionLevel ).append( "\"").append( '\n' );
-            sb.append( "pegasus_lite_version_patch=\"" ).append( this.mPatchVersionLevel ).append( "\"").append( '\n' );
-            sb.append( '\n' );
-
-            sb.append( ". " ).append( PegasusLite.PEGASUS_LITE_COMMON_FILE_BASENAME ).append( '\n' );
-            sb.append( '\n' );
-
-            sb.append( "pegasus_lite_init\n" );
-            sb.append( '\n' );
-
-            sb.append( "# cleanup in case of failures" ).append( '\n' );
-            sb.append( "trap pegasus_lite_exit INT TERM EXIT" ).append( '\n' );
-            sb.append( '\n' );
-
-            appendStderrFragment( sb, "Setting up workdir" );
-            sb.append( "# work dir" ).append( '\n' );
-
-            
-            if( sls.doesCondorModifications() ){
-                //when using condor IO with pegasus lite we dont want
-                //pegasus lite to change the directory where condor
-                //launches the jobs
-                sb.append( "export pegasus_lite_work_dir=$PWD" ).append( '\n' );
-            }
-            else{
-                //PM-822 check if the user has specified a local directory 
-                //for the execution site then set that as PEGASUS_WN_TMP
-                //and let pegasus lite at runtime launch the job in that
-                //directory
-                SiteCatalogEntry execSiteEntry = mSiteStore.lookup( job.getSiteHandle() );
-                String dir = null;
-                
-                if( job.envVariables.containsKey(PegasusLite.WORKER_NODE_DIRECTORY_KEY  )){
-                    //user metioned it as a profile that got assocaited with the job
-                    dir = (String) job.envVariables.get( PegasusLite.WORKER_NODE_DIRECTORY_KEY);
-                }
-                else if( execSiteEntry != null ){
-                    Directory directory = execSiteEntry.getDirectory( Directory.TYPE.local_scratch );
-                    if( directory != null ){
-                        dir = directory.getInternalMountPoint().getMountPoint();
-                    }
-                }
-                                    
-                if( dir != null ){
-                    StringBuilder message = new StringBuilder();
-                    message.append( "Job " ).append( job.getID()  ).append( " will execute in directory " ).
-                            append( dir ).append( " on the local filesystem at site "  ).
-                            append( job.getSiteHandle() );
-                    mLogger.log( message.toString(),
-                                 LogManager.DEBUG_MESSAGE_LEVEL );
-                    sb.append( "export ").append( PegasusLite.WORKER_NODE_DIRECTORY_KEY ).
-                       append( "=" ).append( dir ).append( '\n' );
-                }
-
-            }
-
-            sb.append( "pegasus_lite_setup_work_dir" ).append( '\n' );
-            sb.append( '\n' );
-
-            appendStderrFragment( sb, "figuring out the worker package to use" );
-            sb.append( "# figure out the worker package to use" ).append( '\n' );
-            sb.append( "pegasus_lite_worker_package" ).append( '\n' );
-            sb.append( '\n' );
-
             if(  isCompute && //PM-971 for non compute jobs we don't do any sls transfers
                  sls.needsSLSInputTransfers( job ) ){
                 //generate the sls file with the mappings in the submit exectionSiteDirectory
@@ -893,13 +893,9 @@ public class PegasusLite implements GridStart {
                 sb.append( '\n' );
             }
            
-            appendStderrFragment( sb, "executing the user tasks" );
-            sb.append( "# execute the tasks" ).append( '\n' ).
-               append( "set +e" ).append( '\n' );//PM-701
+            segments.add( sb );
+            segments.add( mExecuteSegment );
 
-            writer.print( sb.toString() );
-            writer.flush();
-            
             sb = new StringBuffer();
 
             //enable the job via kickstart
@@ -922,11 +918,11 @@ public class PegasusLite implements GridStart {
                 this.mKickstartGridStartImpl.enable( job, isGlobusJob );
                 sb.append( job.getRemoteExecutable() ).append( job.getArguments() ).append( '\n' );
             }
-            
+            segments.add( sb );
+
             //PM-701 enable back fail on error
-            sb.append( "job_ec=$?" ).append( "\n" );
-            sb.append( "set -e").append( "\n" );
-            sb.append( '\n' );
+            segments.add( JOB_EXITCODE_SEGMENT );
+            sb = new StringBuffer();
             
             //the pegasus lite wrapped job itself does not have any
             //arguments passed
@@ -992,16 +988,11 @@ public class PegasusLite implements GridStart {
                 associateCredentials( job, files );
             }
             
-           
-            writer.print( sb.toString() );
-            writer.flush();
-            
-            writer.close();
-            ostream.close();
+            segments.add( sb );
 
-            //set the xbit on the shell script
-            //for 3.2, we will have 1.6 as the minimum jdk requirement
-            shellWrapper.setExecutable( true );
+            //the wrapper is written out and made executable
+            //on the writer threads
+            mWrapperWriter.write( shellWrapper, segments );
 
             //JIRA PM-543
             job.setDirectory( null );
@@ -1036,6 +1027,90 @@ public class PegasusLite implements GridStart {
     }
     
    
+    /**
+     * Returns the fragment of the wrapper that sets up the work directory and
+     * figures out the worker package to use. The fragment is rendered once per
+     * execution site and SLS implementation, unless the job specifies the
+     * worker node directory in its environment.
+     *
+     * @param job   the job being wrapped
+     * @param sls   the SLS implementation for the job
+     *
+     * @return the fragment
+     */
+    private String getWorkDirectorySegment( Job job, SLS sls ){
+        boolean shared = sls.doesCondorModifications() ||
+                         !job.envVariables.containsKey( PegasusLite.WORKER_NODE_DIRECTORY_KEY );
+        String key = job.getSiteHandle() + "|" + sls.getClass().getName();
+        WorkDirectorySegment segment = shared ? mWorkDirectorySegments.get( key ) : null;
+
+        if( segment == null ){
+            StringBuffer sb = new StringBuffer();
+            String dir = null;
+            if( sls.doesCondorModifications() ){
+                //when using condor IO with pegasus lite we dont want
+                //pegasus lite to change the directory where condor
+                //launches the jobs
+                sb.append( "export pegasus_lite_work_dir=$PWD" ).append( '\n' );
+            }
+            else{
+                //PM-822 check if the user has specified a local directory 
+                //for the execution site then set that as PEGASUS_WN_TMP
+                //and let pegasus lite at runtime launch the job in that
+                //directory
+                SiteCatalogEntry execSiteEntry = mSiteStore.lookup( job.getSiteHandle() );
+
+                if( job.envVariables.containsKey(PegasusLite.WORKER_NODE_DIRECTORY_KEY  )){
+                    //user metioned it as a profile that got assocaited with the job
+                    dir = (String) job.envVariables.get( PegasusLite.WORKER_NODE_DIRECTORY_KEY);
+                }
+                else if( execSiteEntry != null ){
+                    Directory directory = execSiteEntry.getDirectory( Directory.TYPE.local_scratch );
+                    if( directory != null ){
+                        dir = directory.getInternalMountPoint().getMountPoint();
+                    }
+                }
+
+                if( dir != null ){
+                    sb.append( "export ").append( PegasusLite.WORKER_NODE_DIRECTORY_KEY ).
+                       append( "=" ).append( dir ).append( '\n' );
+                }
+            }
+
+            sb.append( "pegasus_lite_setup_work_dir" ).append( '\n' );
+            sb.append( '\n' );
+
+            appendStderrFragment( sb, "figuring out the worker package to use" );
+            sb.append( "# figure out the worker package to use" ).append( '\n' );
+            sb.append( "pegasus_lite_worker_package" ).append( '\n' );
+            sb.append( '\n' );
+
+            segment = new WorkDirectorySegment( dir, sb.toString() );
+            if( shared ){
+                mWorkDirectorySegments.put( key, segment );
+            }
+        }
+
+        if( segment.mDirectory != null ){
+            StringBuilder message = new StringBuilder();
+            message.append( "Job " ).append( job.getID()  ).append( " will execute in directory " ).
+                    append( segment.mDirectory ).append( " on the local filesystem at site "  ).
+                    append( job.getSiteHandle() );
+            mLogger.log( message.toString(),
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+        }
+        return segment.mSegment;
+    }
+
+    /**
+     * Waits for all the wrappers generated so far to be written out.
+     *
+     * @throws RuntimeException in case of error while writing out a wrapper.
+     */
+    public void flush(){
+        mWrapperWriter.flush();
+    }
+
     /**
      * Convers the collection of files into an input format suitable for the
      * transfer executable
@@ -1385,4 +1460,26 @@ public class PegasusLite implements GridStart {
         return;
         
     }
+
+    /**
+     * A rendered work directory setup fragment, along with the worker node
+     * directory it sets up.
+     */
+    private static class WorkDirectorySegment{
+
+        /**
+         * The worker node directory, can be null.
+         */
+        private final String mDirectory;
+
+        /**
+         * The rendered fragment.
+         */
+        private final String mSegment;
+
+        public WorkDirectorySegment( String directory, String segment ){
+            mDirectory = directory;
+            mSegment   = segment;
+        }
+    }
 }
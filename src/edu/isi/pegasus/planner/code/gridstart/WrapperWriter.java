@@ -0,0 +1,195 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.code.gridstart;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes out the job wrappers generated by the PegasusLite implementation.
+ * A wrapper is handed over as a list of segments, most of which are shared
+ * between the jobs, and are concatenated only while writing out the file.
+ *
+ * With more than one thread, the wrappers are written out on a bounded pool
+ * of threads. Once all the threads are busy and the queue is full, the
+ * wrapper is written out in the calling thread. Any error while writing out
+ * a wrapper on the pool is thrown by the next call to flush().
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+class WrapperWriter {
+
+    /**
+     * The number of threads to write out the wrappers with.
+     */
+    private final int mThreads;
+
+    /**
+     * The pool of threads, created when the first wrapper is written out
+     * after a flush.
+     */
+    private ThreadPoolExecutor mExecutor;
+
+    /**
+     * The first error encountered while writing out a wrapper on the pool.
+     */
+    private RuntimeException mFailure;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param threads  the number of threads to write out the wrappers with.
+     *                 A value of 1 results in the wrappers being written out
+     *                 in the calling thread.
+     */
+    public WrapperWriter( int threads ){
+        mThreads = threads;
+    }
+
+    /**
+     * Writes out a wrapper, appending to the file if it exists already. The
+     * file is made executable once it has been written out.
+     *
+     * @param file      the file to write out.
+     * @param segments  the segments of the wrapper in order. The segments
+     *                  should not be modified once handed over.
+     */
+    public void write( final File file, final List<CharSequence> segments ){
+        if( mThreads <= 1 ){
+            writeWrapper( file, segments );
+            return;
+        }
+        if( mExecutor == null ){
+            mExecutor = this.createExecutor();
+        }
+        mExecutor.execute( new Runnable(){
+            public void run(){
+                try{
+                    writeWrapper( file, segments );
+                }
+                catch( RuntimeException e ){
+                    failed( e );
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for all the wrappers handed over to be written out.
+     *
+     * @throws RuntimeException the first error encountered while writing out
+     *         a wrapper.
+     */
+    public void flush(){
+        if( mExecutor != null ){
+            ThreadPoolExecutor executor = mExecutor;
+            mExecutor = null;
+            executor.shutdown();
+            try{
+                while( !executor.awaitTermination( 1, TimeUnit.SECONDS ) ){
+                    //keep waiting
+                }
+            }
+            catch( InterruptedException e ){
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException( "[Pegasus-Lite] Interrupted while writing out pegasus lite wrappers", e );
+            }
+        }
+        RuntimeException failure;
+        synchronized( this ){
+            failure  = mFailure;
+            mFailure = null;
+        }
+        if( failure != null ){
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes out a single wrapper.
+     *
+     * @param file      the file to write out.
+     * @param segments  the segments of the wrapper in order.
+     */
+    private static void writeWrapper( File file, List<CharSequence> segments ){
+        try{
+            OutputStream ostream = new FileOutputStream( file , true );
+            PrintWriter writer = new PrintWriter( new BufferedWriter(new OutputStreamWriter(ostream)) );
+            for( CharSequence segment : segments ){
+                writer.append( segment );
+            }
+            writer.flush();
+
+            writer.close();
+            ostream.close();
+
+            //set the xbit on the shell script
+            file.setExecutable( true );
+        }
+        catch( IOException ioe ){
+            throw new RuntimeException( "[Pegasus-Lite] Error while writing out pegasus lite wrapper " + file , ioe );
+        }
+    }
+
+    /**
+     * Records the first error encountered while writing out a wrapper.
+     *
+     * @param e  the error
+     */
+    private synchronized void failed( RuntimeException e ){
+        if( mFailure == null ){
+            mFailure = e;
+        }
+    }
+
+    /**
+     * Creates the bounded pool of threads. Idle threads time out, so that
+     * the pool does not linger if the planner fails before flushing.
+     *
+     * @return the executor
+     */
+    private ThreadPoolExecutor createExecutor(){
+        ThreadFactory factory = new ThreadFactory(){
+            private int mCount = 0;
+
+            public synchronized Thread newThread( Runnable r ){
+                Thread t = new Thread( r, "pegasus-lite-writer-" + mCount++ );
+                t.setDaemon( true );
+                return t;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( mThreads, mThreads,
+                                                              1L, TimeUnit.SECONDS,
+                                                              new ArrayBlockingQueue<Runnable>( mThreads * 16 ),
+                                                              factory,
+                                                              new ThreadPoolExecutor.CallerRunsPolicy() );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+}
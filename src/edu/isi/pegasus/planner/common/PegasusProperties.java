@@ -244,6 +244,12 @@ public class PegasusProperties implements Cloneable {
      */
     private Profiles mProfiles;
 
+    /**
+     * The snapshot of the properties for the per job lookups. Discarded
+     * whenever a property is modified.
+     */
+    private volatile PropertiesSnapshot mSnapshot;
+
     private static Map<Profiles.NAMESPACES,String> mNamepsaceToPropertiesPrefix;
     
     public Map<Profiles.NAMESPACES, String> namespaceToPropertiesPrefix(){
@@ -393,6 +399,7 @@ public class PegasusProperties implements Cloneable {
             //clone the CommonProperties
             props.mProfiles =  ( this.mProfiles == null ) ? null :(Profiles) this.mProfiles.clone();
             props.mProps =  ( this.mProps == null )  ?  null: (CommonProperties) this.mProps.clone();
+            props.mSnapshot = null;
         }
         catch( CloneNotSupportedException e ){
             //somewhere in the hierarch chain clone is not implemented
@@ -559,9 +566,32 @@ public class PegasusProperties implements Cloneable {
      * @return the old value, or null if it didn't exist before.
      */
     public Object setProperty( String key, String value ) {
+        mSnapshot = null;
         return mProps.setProperty( key, value );
     }
 
+    /**
+     * Returns an immutable snapshot of the properties, with the frequently
+     * used properties parsed, for lookups that are done per job. The
+     * snapshot is taken on first access, and retaken after the properties
+     * are modified.
+     *
+     * @return the snapshot
+     */
+    public PropertiesSnapshot getSnapshot(){
+        PropertiesSnapshot snapshot = mSnapshot;
+        if( snapshot == null ){
+            synchronized( this ){
+                snapshot = mSnapshot;
+                if( snapshot == null ){
+                    snapshot = new PropertiesSnapshot( this );
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
     /**
      * Extracts a specific property key subset from the known properties.
      * The prefix may be removed from the keys in the resulting dictionary,
@@ -639,6 +669,7 @@ public class PegasusProperties implements Cloneable {
      * @return the corresponding value if key exits, else null 
      */
     public String removeProperty( String key ){
+        mSnapshot = null;
         return mProps.removeProperty( key );
     }
     
@@ -818,6 +849,19 @@ public class PegasusProperties implements Cloneable {
                               false );
     }
 
+    /**
+     * Returns a boolean indicating whether to spread the per job files
+     * in the submit directory over a hashed directory structure or not.
+     *
+     * Referred to by the "pegasus.dir.submit.hashed" property.
+     *
+     * @return  the boolean value specified in the properties files, else false.
+     */
+    public boolean useHashedSubmitDirectory(){
+        return Boolean.parse( mProps.getProperty( "pegasus.dir.submit.hashed" ),
+                              false );
+    }
+
     //PROPERTIES RELATED TO CLEANUP
     /**
      * Returns the name of the Strategy class that the user wants, to insert the
@@ -872,6 +916,30 @@ public class PegasusProperties implements Cloneable {
         return mProps.getProperty( "pegasus.file.cleanup.clusters.size" );
     }
 
+    /**
+     * Returns the number of threads used by the InPlace cleanup strategy to
+     * determine the cleanup jobs for the different staging sites. A value of
+     * 1 results in the sites being processed serially. In case a non integer
+     * or a non positive value is specified the default value of 1 is
+     * returned.
+     *
+     * Referred to by the "pegasus.file.cleanup.threads" property.
+     *
+     * @return the number of threads specified in the properties file, else 1
+     */
+    public int getCleanupThreads() {
+        String prop = mProps.getProperty( "pegasus.file.cleanup.threads", "1" );
+        int val = 1;
+
+        try {
+            val = Integer.parseInt( prop.trim() );
+        } catch ( Exception e ) {
+            return 1;
+        }
+
+        return ( val > 0 ) ? val : 1;
+    }
+
     
     /**
      * Returns the scope for file cleanup. It is used to trigger cleanup in case
@@ -1168,6 +1236,21 @@ public class PegasusProperties implements Cloneable {
                     false );
      }
 
+     /**
+      * Returns a boolean indicating whether to stage an input file required
+      * by multiple jobs on the same staging site only once, by adding edges
+      * from the stagein job that stages it to the other jobs.
+      *
+      * Referred to by the "pegasus.transfer.stagein.dedup" property.
+      *
+      * @return boolean value specified , else false
+      */
+     public boolean deduplicateStageIns( ){
+         return Boolean.parse(
+                    mProps.getProperty( "pegasus.transfer.stagein.dedup" ),
+                    false );
+     }
+
      /**
       * Returns the default priority for the transfer jobs if specified in
       * the properties file.
@@ -1213,6 +1296,29 @@ public class PegasusProperties implements Cloneable {
 
     }
 
+    /**
+     * Returns the target number of bytes that a transfer job created by the
+     * SizeBalancedCluster refiner should transfer. The number of transfer jobs
+     * per staging site and level of the workflow is determined from it.
+     *
+     * Referred to by the "pegasus.transfer.refiner.bytes" property.
+     *
+     * @return the target number of bytes, else 0 if not specified or invalid,
+     *         in which case the bundle factors determine the number of jobs.
+     */
+    public long getTransferRefinerBytesPerJob() {
+        String prop = mProps.getProperty( "pegasus.transfer.refiner.bytes", "0" );
+        long val = 0;
+
+        try {
+            val = Long.parseLong( prop.trim() );
+        } catch ( Exception e ) {
+            return 0;
+        }
+
+        return ( val > 0 ) ? val : 0;
+    }
+
 
     /**
      * Returns whether to introduce quotes around url's before handing to
@@ -1632,6 +1738,45 @@ public class PegasusProperties implements Cloneable {
                                    DEFAULT_SITE_SELECTOR_KEEP );
     }
 
+    /**
+     * Returns the number of threads used by the HEFT site selector to evaluate
+     * the estimated finish time of a job on the candidate sites. A value of
+     * 1 results in the sites being evaluated serially. In case a non integer
+     * or a non positive value is specified the default value of 1 is
+     * returned.
+     *
+     * Referred to by the "pegasus.selector.site.heft.threads" property.
+     *
+     * @return the number of threads specified in the properties file, else 1
+     */
+    public int getHeftSiteSelectorThreads() {
+        String prop = mProps.getProperty( "pegasus.selector.site.heft.threads", "1" );
+        int val = 1;
+
+        try {
+            val = Integer.parseInt( prop.trim() );
+        } catch ( Exception e ) {
+            return 1;
+        }
+
+        return ( val > 0 ) ? val : 1;
+    }
+
+    /**
+     * Returns a boolean indicating whether the HEFT site selector uses the
+     * insertion based policy, that allows a job to be scheduled in an idle
+     * slot between two jobs already scheduled on a processor.
+     *
+     * Referred to by the "pegasus.selector.site.heft.insertion" property.
+     *
+     * @return the boolean value specified in the property file,
+     *         else false if not specified or non boolean specified.
+     */
+    public boolean useHeftInsertionPolicy() {
+        return Boolean.parse( mProps.getProperty( "pegasus.selector.site.heft.insertion" ),
+                              false );
+    }
+
 
 
     //PROPERTIES RELATED TO KICKSTART AND EXITCODE
@@ -2123,6 +2268,20 @@ public class PegasusProperties implements Cloneable {
                               false  ); 
     }
 
+    /**
+     * Returns a boolean indicating whether to write out the stampede events
+     * for the workflow in the binary format, in addition to the netlogger
+     * format.
+     *
+     * Referred to by the "pegasus.monitord.events.binary" property.
+     *
+     * @return boolean value specified in properties else false.
+     */
+    public boolean writeBinaryStampedeEvents(){
+        return Boolean.parse( mProps.getProperty( "pegasus.monitord.events.binary" ) ,
+                              false  );
+    }
+
     //SOME MISCELLANEOUS PROPERTIES
 
     /**
@@ -2191,6 +2350,88 @@ public class PegasusProperties implements Cloneable {
                              false);
     }
 
+    /**
+     * Returns the directory in which the persistent lookup indices for the
+     * replica catalog are kept. The indices are shared by all the planner
+     * invocations that refer to the same directory, including the ones for
+     * the sub workflows in a hierarchical workflow.
+     *
+     * Referred to by the "pegasus.catalog.replica.index.dir" property.
+     *
+     * @return the directory if specified, else null indicating that no index
+     *         is to be used.
+     */
+    public String getReplicaCatalogIndexDirectory(){
+        return mProps.getProperty( "pegasus.catalog.replica.index.dir" );
+    }
+
+    /**
+     * Returns a boolean indicating whether a replica catalog index is
+     * validated against the content hash of the replica catalog file, instead
+     * of its modification time and size.
+     *
+     * Referred to by the "pegasus.catalog.replica.index.validate" property.
+     *
+     * @return true if the value is hash, else false
+     */
+    public boolean validateReplicaCatalogIndexByHash(){
+        String value = mProps.getProperty( "pegasus.catalog.replica.index.validate", "mtime" );
+        return value.trim().equalsIgnoreCase( "hash" );
+    }
+
+    /**
+     * Returns the maximum number of replica catalog indices kept in the index
+     * directory. The least recently used indices are removed when the number
+     * is exceeded.
+     *
+     * Referred to by the "pegasus.catalog.replica.index.max.files" property.
+     *
+     * @return the value specified in the properties, else 8
+     */
+    public int getReplicaCatalogIndexMaxFiles(){
+        String prop = mProps.getProperty( "pegasus.catalog.replica.index.max.files", "8" );
+        int val;
+        try {
+            val = Integer.parseInt( prop.trim() );
+        } catch ( Exception e ) {
+            return 8;
+        }
+        return ( val > 0 ) ? val : 8;
+    }
+
+    /**
+     * Returns the directory in which the persistent Bloom filters over the
+     * LFNs in the replica catalog are kept. The planner only looks up the
+     * LFNs that pass the filter in the replica catalog.
+     *
+     * Referred to by the "pegasus.catalog.replica.filter.dir" property.
+     *
+     * @return the directory if specified, else null indicating that no filter
+     *         is to be used.
+     */
+    public String getReplicaCatalogFilterDirectory(){
+        return mProps.getProperty( "pegasus.catalog.replica.filter.dir" );
+    }
+
+    /**
+     * Returns the false positive rate a new replica catalog filter is sized
+     * for.
+     *
+     * Referred to by the "pegasus.catalog.replica.filter.fpr" property.
+     *
+     * @return the value specified in the properties, else 0.01
+     */
+    public double getReplicaCatalogFilterFalsePositiveRate(){
+        String prop = mProps.getProperty( "pegasus.catalog.replica.filter.fpr", "0.01" );
+        double val;
+        try {
+            val = Double.parseDouble( prop.trim() );
+        } catch ( Exception e ) {
+            return 0.01;
+        }
+        return ( val > 0 && val < 1 ) ? val : 0.01;
+    }
+
     /**
      * Returns a boolean indicating whether to preserver line breaks.
      * 
@@ -2218,6 +2459,60 @@ public class PegasusProperties implements Cloneable {
                               true) ;
     }
     
+    /**
+     * Returns a boolean indicating whether to remove redundant edges from the
+     * executable workflow, before it is handed to the code generator.
+     * 
+     * Referred to by the "pegasus.workflow.reduce.edges" property.
+     * 
+     * @return boolean value in the properties file, else true if not specified
+     *         or an invalid value specified.
+     */
+    public boolean reduceEdges(){
+        return Boolean.parse( mProps.getProperty( "pegasus.workflow.reduce.edges" ),
+                              true) ;
+    }
+    
+    /**
+     * Returns the Graph implementation to use for storing the workflow. 
+     * Valid values are Map and Compact.
+     * 
+     * Referred to by the "pegasus.workflow.graph" property.
+     * 
+     * @return value in the properties file, else Map
+     */
+    public String getWorkflowGraphImplementation(){
+        return mProps.getProperty( "pegasus.workflow.graph", "Map" );
+    }
+
+    /**
+     * Returns a boolean indicating whether the planner should write out a
+     * binary checkpoint of the executable workflow in the submit directory,
+     * before it is handed to the code generator.
+     *
+     * Referred to by the "pegasus.workflow.checkpoint" property.
+     *
+     * @return boolean value in the properties file, else false if not specified
+     *         or an invalid value specified.
+     */
+    public boolean writeWorkflowCheckpoint(){
+        return Boolean.parse( mProps.getProperty( "pegasus.workflow.checkpoint" ),
+                              false ) ;
+    }
+
+    /**
+     * Returns the path to a workflow checkpoint written out by an earlier
+     * planner run. If specified, the executable workflow is loaded from the
+     * checkpoint instead of being refined from the DAX.
+     *
+     * Referred to by the "pegasus.workflow.checkpoint.file" property.
+     *
+     * @return value in the properties file, else null
+     */
+    public String getWorkflowCheckpointFile(){
+        return mProps.getProperty( "pegasus.workflow.checkpoint.file" );
+    }
+
     /**
      * Returns the path to the wings properties file.
      * 
@@ -2267,6 +2562,30 @@ public class PegasusProperties implements Cloneable {
         return mProps.getProperty( "pegasus.code.generator", "condor" );
     }
 
+    /**
+     * Returns the number of threads used by the code generator to write out
+     * the submit files and the other files in the submit directory. A value of
+     * 1 results in all the files being written out serially. In case a non
+     * integer or a non positive value is specified the default value of 1 is
+     * returned.
+     *
+     * Referred to by the "pegasus.code.generator.threads" property.
+     *
+     * @return the number of threads specified in the properties file, else 1
+     */
+    public int getCodeGeneratorThreads() {
+        String prop = mProps.getProperty( "pegasus.code.generator.threads", "1" );
+        int val = 1;
+
+        try {
+            val = Integer.parseInt( prop.trim() );
+        } catch ( Exception e ) {
+            return 1;
+        }
+
+        return ( val > 0 ) ? val : 1;
+    }
+
     /**
      * Returns the mode for parsing the dax while writing out the partitioned
      * daxes.
@@ -2320,6 +2639,30 @@ public class PegasusProperties implements Cloneable {
     public String getHorizontalClusterPreference() {
 	return mProps.getProperty( "pegasus.clusterer.preference" );
     }
+
+    /**
+     * Returns the number of threads used by the horizontal clusterer to
+     * construct the clustered jobs for the different groups of jobs on a
+     * level. A value of 1 results in the jobs being clustered serially. In
+     * case a non integer or a non positive value is specified the default
+     * value of 1 is returned.
+     *
+     * Referred to by the "pegasus.clusterer.horizontal.threads" property.
+     *
+     * @return the number of threads specified in the properties file, else 1
+     */
+    public int getHorizontalClustererThreads() {
+        String prop = mProps.getProperty( "pegasus.clusterer.horizontal.threads", "1" );
+        int val = 1;
+
+        try {
+            val = Integer.parseInt( prop.trim() );
+        } catch ( Exception e ) {
+            return 1;
+        }
+
+        return ( val > 0 ) ? val : 1;
+    }
     
 
     /**
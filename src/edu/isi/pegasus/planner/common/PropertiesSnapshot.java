@@ -0,0 +1,348 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.common;
+
+import edu.isi.pegasus.common.util.Boolean;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable snapshot of the Pegasus properties, for the lookups that are
+ * done for every job in the workflow. The values of the frequently used
+ * properties are parsed once when the snapshot is taken, and the subsets of
+ * the properties matching a prefix are computed once per prefix. Lookups
+ * against the snapshot neither synchronize nor allocate.
+ *
+ * The snapshot resolves properties the same way as <code>PegasusProperties</code>,
+ * with System properties taking precedence over the ones in the properties
+ * file. A snapshot is obtained via {@link PegasusProperties#getSnapshot()},
+ * and is retaken after the properties are modified.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public final class PropertiesSnapshot {
+
+    /**
+     * The prefixes for which the matching subsets are computed when the
+     * snapshot is taken.
+     */
+    private static final String[] PRECOMPUTED_PREFIXES = {
+        "dagman",
+        "pegasus.partitioner.horizontal.bundle",
+        "pegasus.partitioner.horizontal.collapse"
+    };
+
+    /**
+     * The resolved, trimmed values of all the properties.
+     */
+    private final Map<String,String> mValues;
+
+    /**
+     * The subsets of the properties, without the prefix in the keys, indexed
+     * by the prefix ending in a dot.
+     */
+    private final ConcurrentHashMap<String,Map<String,String>> mSubsets;
+
+    /**
+     * The gridstart to use for the jobs.
+     */
+    private final String mGridStart;
+
+    /**
+     * Whether to pass the extra options to kickstart.
+     */
+    private final boolean mGenerateKickstartExtraOptions;
+
+    /**
+     * Whether to quote the arguments for Condor.
+     */
+    private final boolean mUseCondorQuotingForArguments;
+
+    /**
+     * The preference for the horizontal clusterer.
+     */
+    private final String mHorizontalClusterPreference;
+
+    /**
+     * The priority for the stagein transfer jobs.
+     */
+    private final String mTransferStageInPriority;
+
+    /**
+     * The priority for the stageout transfer jobs.
+     */
+    private final String mTransferStageOutPriority;
+
+    /**
+     * The priority for the inter site transfer jobs.
+     */
+    private final String mTransferInterPriority;
+
+    /**
+     * The mode for the transformation selector.
+     */
+    private final String mTXSelectorMode;
+
+    /**
+     * Whether to preserve line breaks in the DAX.
+     */
+    private final boolean mPreserveParserLineBreaks;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param props  the properties to take the snapshot of
+     */
+    PropertiesSnapshot( PegasusProperties props ){
+        Map<String,String> values = new HashMap<String,String>();
+        for( Enumeration e = props.getVDSProperties().propertyNames(); e.hasMoreElements(); ){
+            String key = (String)e.nextElement();
+            String value = props.getProperty( key );
+            if( value != null ){
+                values.put( key, value );
+            }
+        }
+        //System properties take precedence
+        for( String key : System.getProperties().stringPropertyNames() ){
+            String value = System.getProperty( key );
+            if( value != null ){
+                values.put( key, value.trim() );
+            }
+        }
+        mValues = Collections.unmodifiableMap( values );
+
+        mSubsets = new ConcurrentHashMap<String,Map<String,String>>();
+        for( String prefix : props.namespaceToPropertiesPrefix().values() ){
+            this.matchingSubset( prefix );
+        }
+        for( String prefix : PRECOMPUTED_PREFIXES ){
+            this.matchingSubset( prefix );
+        }
+
+        mGridStart                     = props.getGridStart();
+        mGenerateKickstartExtraOptions = props.generateKickstartExtraOptions();
+        mUseCondorQuotingForArguments  = props.useCondorQuotingForArguments();
+        mHorizontalClusterPreference   = props.getHorizontalClusterPreference();
+        mTransferStageInPriority       = props.getTransferStageInPriority();
+        mTransferStageOutPriority      = props.getTransferStageOutPriority();
+        mTransferInterPriority         = props.getTransferInterPriority();
+        mTXSelectorMode                = props.getTXSelectorMode();
+        mPreserveParserLineBreaks      = props.preserveParserLineBreaks();
+    }
+
+    /**
+     * Returns the value of a property.
+     *
+     * @param key  the property key
+     *
+     * @return the trimmed value, or null if not found
+     */
+    public String getProperty( String key ){
+        return mValues.get( key );
+    }
+
+    /**
+     * Returns the value of a property.
+     *
+     * @param key       the property key
+     * @param defValue  the value to use if the property is not found
+     *
+     * @return the trimmed value, or the default value if not found
+     */
+    public String getProperty( String key, String defValue ){
+        String value = mValues.get( key );
+        return ( value == null ) ? defValue : value;
+    }
+
+    /**
+     * Returns the value of a boolean property.
+     *
+     * @param key       the property key
+     * @param defValue  the value to use if the property is not found or is
+     *                  not a boolean
+     *
+     * @return the value
+     */
+    public boolean getBooleanProperty( String key, boolean defValue ){
+        return Boolean.parse( mValues.get( key ), defValue );
+    }
+
+    /**
+     * Returns the value of an integer property.
+     *
+     * @param key       the property key
+     * @param defValue  the value to use if the property is not found or is
+     *                  not an integer
+     *
+     * @return the value
+     */
+    public int getIntProperty( String key, int defValue ){
+        String value = mValues.get( key );
+        if( value == null ){
+            return defValue;
+        }
+        try{
+            return Integer.parseInt( value );
+        }
+        catch( NumberFormatException e ){
+            return defValue;
+        }
+    }
+
+    /**
+     * Returns the properties matching a prefix, with the prefix removed from
+     * the keys. The subset is computed the first time it is requested for a
+     * prefix, and shared between callers.
+     *
+     * @param prefix  the prefix, with or without the trailing dot
+     *
+     * @return an unmodifiable map, empty if no property matches the prefix
+     */
+    public Map<String,String> matchingSubset( String prefix ){
+        if( prefix == null || prefix.length() == 0 ){
+            return Collections.emptyMap();
+        }
+        Map<String,String> subset = mSubsets.get( prefix );
+        if( subset != null ){
+            return subset;
+        }
+
+        String prefixMatch = ( prefix.charAt( prefix.length() - 1 ) == '.' ) ? prefix : prefix + '.';
+        subset = mSubsets.get( prefixMatch );
+        if( subset == null ){
+            Map<String,String> result = new HashMap<String,String>();
+            for( Map.Entry<String,String> entry : mValues.entrySet() ){
+                String key = entry.getKey();
+                if( key.startsWith( prefixMatch ) ){
+                    result.put( key.substring( prefixMatch.length() ), entry.getValue() );
+                }
+            }
+            subset = Collections.unmodifiableMap( result );
+            mSubsets.putIfAbsent( prefixMatch, subset );
+        }
+        mSubsets.putIfAbsent( prefix, subset );
+        return subset;
+    }
+
+    /**
+     * @see PegasusProperties#getGridStart()
+     *
+     * @return the gridstart, or null if not specified
+     */
+    public String getGridStart(){
+        return mGridStart;
+    }
+
+    /**
+     * @see PegasusProperties#generateKickstartExtraOptions()
+     *
+     * @return boolean
+     */
+    public boolean generateKickstartExtraOptions(){
+        return mGenerateKickstartExtraOptions;
+    }
+
+    /**
+     * @see PegasusProperties#useCondorQuotingForArguments()
+     *
+     * @return boolean
+     */
+    public boolean useCondorQuotingForArguments(){
+        return mUseCondorQuotingForArguments;
+    }
+
+    /**
+     * @see PegasusProperties#getHorizontalClusterPreference()
+     *
+     * @return the preference, or null if not specified
+     */
+    public String getHorizontalClusterPreference(){
+        return mHorizontalClusterPreference;
+    }
+
+    /**
+     * @see PegasusProperties#getTransferStageInPriority()
+     *
+     * @return the priority, or null if not specified
+     */
+    public String getTransferStageInPriority(){
+        return mTransferStageInPriority;
+    }
+
+    /**
+     * @see PegasusProperties#getTransferStageOutPriority()
+     *
+     * @return the priority, or null if not specified
+     */
+    public String getTransferStageOutPriority(){
+        return mTransferStageOutPriority;
+    }
+
+    /**
+     * @see PegasusProperties#getTransferInterPriority()
+     *
+     * @return the priority, or null if not specified
+     */
+    public String getTransferInterPriority(){
+        return mTransferInterPriority;
+    }
+
+    /**
+     * @see PegasusProperties#getTXSelectorMode()
+     *
+     * @return the mode
+     */
+    public String getTXSelectorMode(){
+        return mTXSelectorMode;
+    }
+
+    /**
+     * @see PegasusProperties#preserveParserLineBreaks()
+     *
+     * @return boolean
+     */
+    public boolean preserveParserLineBreaks(){
+        return mPreserveParserLineBreaks;
+    }
+
+    /**
+     * @see PegasusProperties#getHorizontalPartitionerBundleValue(String)
+     *
+     * @param name  the logical name of the jobs
+     *
+     * @return the bundle value, or null if not specified
+     */
+    public String getHorizontalPartitionerBundleValue( String name ){
+        return this.matchingSubset( "pegasus.partitioner.horizontal.bundle" ).get( name );
+    }
+
+    /**
+     * @see PegasusProperties#getHorizontalPartitionerCollapseValue(String)
+     *
+     * @param name  the logical name of the jobs
+     *
+     * @return the collapse value, or null if not specified
+     */
+    public String getHorizontalPartitionerCollapseValue( String name ){
+        return this.matchingSubset( "pegasus.partitioner.horizontal.collapse" ).get( name );
+    }
+}
@@ -0,0 +1,948 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.invocation;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.isi.pegasus.planner.parser.InvocationParser;
+import org.griphyn.vdl.toolkit.FriendlyNudge;
+import org.griphyn.vdl.dbschema.DatabaseSchema;
+import org.griphyn.vdl.dbschema.InvocationSchema;
+import org.griphyn.vdl.dbschema.PTC;
+import org.griphyn.vdl.directive.Connect;
+import org.griphyn.vdl.util.ChimeraProperties;
+
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.Level;
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.PatternLayout;
+
+/**
+ * A server that ingests kickstart invocation records into the provenance
+ * tracking catalog, when many records arrive at the same time, e.g. at the
+ * end of a large workflow. It speaks the same line protocol as the
+ * {@link SimpleServer}
+ *
+ * <pre>
+ *   PARSE &lt;file&gt; ECP/1.0   replies with 300 Result code &lt;n&gt;
+ *   STATS                   replies with 200 and the ingestion metrics
+ *   QUIT                    replies with 200 Good-bye
+ *   SHUTDOWN                replies with 200 and shuts down the server
+ * </pre>
+ *
+ * Instead of a thread per connection, all connections are multiplexed over
+ * a single selector thread. The files are read and parsed concurrently by a
+ * fixed pool of threads, each with its own invocation parser. The parsed
+ * records are handed to a single database writer, that saves all the records
+ * waiting in its queue in one transaction.<p>
+ *
+ * The number of requests in flight is bounded. Once the bound is reached,
+ * the server stops reading from the connections that have a request to
+ * submit, so that the clients block on their sockets instead of the server
+ * queueing up the records in memory. A connection has at most one request
+ * in flight, and replies are sent in order of the requests.
+ *
+ * @author Karan Vahi
+ * @see SimpleServer
+ */
+public class IngestServer implements Runnable
+{
+  /**
+   * The default port to listen on, same as the simple server.
+   */
+  public static final int DEFAULT_PORT = 65533;
+
+  /**
+   * The default number of parser threads.
+   */
+  public static final int DEFAULT_PARSERS = 4;
+
+  /**
+   * The default maximum number of records saved in one transaction.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  /**
+   * The default maximum number of requests in flight.
+   */
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  /**
+   * The interval in milliseconds at which the metrics are logged.
+   */
+  private static final long METRICS_INTERVAL = 60000;
+
+  /**
+   * The maximum length of a request line.
+   */
+  private static final int MAX_LINE_LENGTH = 8192;
+
+  /**
+   * The request that signals the database writer to stop.
+   */
+  private static final Request STOP = new Request( null, null );
+
+  private static Logger c_logger = Logger.getLogger( IngestServer.class );
+
+  /**
+   * The catalog to save the records to, or null for no-database mode.
+   */
+  private final PTC m_ptc;
+
+  /**
+   * Whether an empty kickstart file signals failure.
+   */
+  private boolean m_emptyFail = true;
+
+  private final ServerSocketChannel m_server;
+  private final Selector m_selector;
+
+  /**
+   * The pool of threads parsing the records.
+   */
+  private final ThreadPoolExecutor m_parsers;
+
+  /**
+   * The invocation parser of each parser thread.
+   */
+  private final ThreadLocal<InvocationParser> m_parser;
+
+  /**
+   * The parsed records waiting to be saved by the database writer.
+   */
+  private final BlockingQueue<Request> m_writeQueue;
+
+  private final Thread m_writer;
+
+  /**
+   * The requests that are done, and whose replies are to be sent by the
+   * selector thread.
+   */
+  private final ConcurrentLinkedQueue<Request> m_done;
+
+  /**
+   * The connections with a request that waits for capacity. Only accessed
+   * by the selector thread.
+   */
+  private final LinkedList<Connection> m_stalled;
+
+  /**
+   * The number of stalled connections, for the metrics.
+   */
+  private volatile int m_stalledCount;
+
+  private final int m_capacity;
+  private final int m_batchSize;
+
+  /**
+   * The number of requests in flight. Only modified by the selector thread.
+   */
+  private volatile int m_inflight;
+
+  private volatile boolean m_terminate;
+
+  private final AtomicLong m_records;
+  private final AtomicLong m_saved;
+  private final AtomicLong m_batches;
+  private final AtomicLong m_failures;
+
+  private final long m_start;
+  private long m_lastReport;
+  private long m_lastRecords;
+
+  /**
+   * Sets up the server socket and the threads. The server starts serving
+   * requests once {@link #run()} is invoked.
+   *
+   * @param ptc is the catalog to save the records to, or null to only
+   * determine the exit codes.
+   * @param schemaLocation is the location of the invocation record schema,
+   * may be null to use the hints in the records.
+   * @param address is the address to listen on.
+   * @param parsers is the number of parser threads.
+   * @param batchSize is the maximum number of records saved in one
+   * transaction.
+   * @param capacity is the maximum number of requests in flight.
+   * @exception IOException if the server socket cannot be set up.
+   */
+  public IngestServer( PTC ptc, final String schemaLocation,
+		       InetSocketAddress address,
+		       int parsers, int batchSize, int capacity )
+    throws IOException
+  {
+    if ( parsers < 1 || batchSize < 1 || capacity < 1 )
+      throw new IllegalArgumentException( "Invalid ingest server configuration " +
+					  parsers + "/" + batchSize + "/" + capacity );
+    this.m_ptc = ptc;
+    this.m_batchSize = batchSize;
+    this.m_capacity = capacity;
+
+    this.m_selector = Selector.open();
+    this.m_server = ServerSocketChannel.open();
+    this.m_server.socket().setReuseAddress( true );
+    this.m_server.socket().bind( address, capacity );
+    this.m_server.configureBlocking( false );
+    this.m_server.register( m_selector, SelectionKey.OP_ACCEPT );
+
+    // one parser per thread -- the parsers are not thread-safe
+    this.m_parser = new ThreadLocal<InvocationParser>() {
+	protected InvocationParser initialValue() {
+	  return new InvocationParser( schemaLocation );
+	}
+      };
+    this.m_parsers = new ThreadPoolExecutor( parsers, parsers,
+					     0L, TimeUnit.MILLISECONDS,
+					     new ArrayBlockingQueue<Runnable>( capacity ) );
+
+    this.m_writeQueue = new ArrayBlockingQueue<Request>( capacity + 1 );
+    this.m_writer = new Thread( "IngestServerWriter" ) {
+	public void run() {
+	  writeRecords();
+	}
+      };
+    this.m_done = new ConcurrentLinkedQueue<Request>();
+    this.m_stalled = new LinkedList<Connection>();
+    this.m_stalledCount = 0;
+    this.m_inflight = 0;
+    this.m_terminate = false;
+
+    this.m_records = new AtomicLong();
+    this.m_saved = new AtomicLong();
+    this.m_batches = new AtomicLong();
+    this.m_failures = new AtomicLong();
+    this.m_start = System.currentTimeMillis();
+    this.m_lastReport = m_start;
+    this.m_lastRecords = 0;
+  }
+
+  /**
+   * Sets whether an empty kickstart file signals failure, which is the
+   * default, or success.
+   *
+   * @param emptyFail is true if an empty file is a failure.
+   */
+  public void setEmptyFail( boolean emptyFail )
+  {
+    this.m_emptyFail = emptyFail;
+  }
+
+  /**
+   * Returns the port the server is listening on.
+   *
+   * @return the local port.
+   */
+  public int getPort()
+  {
+    return m_server.socket().getLocalPort();
+  }
+
+  /**
+   * Returns the number of records that were processed, whether they were
+   * saved or not.
+   *
+   * @return the number of records.
+   */
+  public long getRecordCount()
+  {
+    return m_records.get();
+  }
+
+  /**
+   * Returns the number of records that were saved to the catalog.
+   *
+   * @return the number of records saved.
+   */
+  public long getSavedCount()
+  {
+    return m_saved.get();
+  }
+
+  /**
+   * Returns the number of transactions the records were saved in.
+   *
+   * @return the number of batches.
+   */
+  public long getBatchCount()
+  {
+    return m_batches.get();
+  }
+
+  /**
+   * Returns the number of records processed per second, since the server
+   * was started.
+   *
+   * @return the throughput in records per second.
+   */
+  public double getRecordsPerSecond()
+  {
+    long elapsed = Math.max( 1, System.currentTimeMillis() - m_start );
+    return m_records.get() * 1000.0 / elapsed;
+  }
+
+  /**
+   * Returns the number of requests that are queued up, waiting to be
+   * parsed, waiting to be saved, or waiting for capacity.
+   *
+   * @return the queue depth.
+   */
+  public int getQueueDepth()
+  {
+    return m_parsers.getQueue().size() + m_writeQueue.size() + m_stalledCount;
+  }
+
+  /**
+   * Returns the metrics as a single line.
+   *
+   * @return the metrics.
+   */
+  public String getMetrics()
+  {
+    return "records " + m_records.get() +
+      " saved " + m_saved.get() +
+      " batches " + m_batches.get() +
+      " failures " + m_failures.get() +
+      " rate " + String.format( "%.1f", getRecordsPerSecond() ) + "/s" +
+      " in-flight " + m_inflight +
+      " parse-queue " + m_parsers.getQueue().size() +
+      " write-queue " + m_writeQueue.size() +
+      " stalled " + m_stalledCount;
+  }
+
+  /**
+   * Asks the server to shut down. Requests in flight are completed first.
+   */
+  public void shutdown()
+  {
+    m_terminate = true;
+    m_selector.wakeup();
+  }
+
+  /**
+   * Runs the selector loop until the server is shut down, and then waits
+   * for the requests in flight to complete.
+   */
+  public void run()
+  {
+    m_writer.start();
+    try {
+      while ( ! m_terminate || m_inflight > 0 ) {
+	if ( m_terminate && m_server.isOpen() ) m_server.close();
+
+	m_selector.select( 1000 );
+	for ( Iterator<SelectionKey> i=m_selector.selectedKeys().iterator(); i.hasNext(); ) {
+	  SelectionKey key = i.next();
+	  i.remove();
+	  if ( ! key.isValid() ) continue;
+	  try {
+	    if ( key.isAcceptable() ) accept();
+	    else {
+	      Connection c = (Connection) key.attachment();
+	      if ( key.isReadable() ) read( c );
+	      if ( key.isValid() && key.isWritable() ) write( c );
+	    }
+	  } catch ( IOException e ) {
+	    if ( key.attachment() != null ) {
+	      Connection c = (Connection) key.attachment();
+	      c.log( Level.WARN, "I/O error: " + e.getMessage() );
+	      close( c );
+	    }
+	  }
+	}
+
+	complete();
+	report( false );
+      }
+    } catch ( IOException e ) {
+      c_logger.fatal( "Selector failed: " + e.getMessage() );
+    } finally {
+      stop();
+    }
+  }
+
+  /**
+   * Accepts pending connections.
+   */
+  private void accept()
+    throws IOException
+  {
+    SocketChannel channel;
+    while ( (channel = m_server.accept()) != null ) {
+      channel.configureBlocking( false );
+      Connection c = new Connection( channel );
+      c.key = channel.register( m_selector, SelectionKey.OP_READ, c );
+      c.log( Level.DEBUG, "starting" );
+    }
+  }
+
+  /**
+   * Reads from a connection, and processes the complete request lines.
+   */
+  private void read( Connection c )
+    throws IOException
+  {
+    int n = c.channel.read( c.in );
+    if ( n == -1 ) {
+      close( c );
+      return;
+    }
+    process( c );
+  }
+
+  /**
+   * Processes the buffered request lines of a connection, until a request
+   * is in flight.
+   */
+  private void process( Connection c )
+  {
+    String line;
+    while ( ! c.busy && ! c.closing && c.channel.isOpen() &&
+	    (line = c.nextLine()) != null ) {
+      if ( c_logger.isDebugEnabled() )
+	c.log( Level.DEBUG, "received >>" + line + "<<" );
+
+      if ( line.startsWith("PARSE") ) {
+	// request to parse a given file
+	String[] request = line.split("[ \t]",3);
+	if ( request.length != 3 ) {
+	  reply( c, "400 Illegal request format" );
+	} else if ( ! request[2].equals("ECP/1.0") ) {
+	  reply( c, "501 Unrecognized version" );
+	} else {
+	  submit( c, request[1] );
+	}
+      } else if ( line.equals("STATS") ) {
+	reply( c, "200 " + getMetrics() );
+      } else if ( line.equals("QUIT") ) {
+	reply( c, "200 Good-bye" );
+	c.closing = true;
+      } else if ( line.equals("SHUTDOWN") ) {
+	reply( c, "200 Shutting down server, good-bye" );
+	c.closing = true;
+	m_terminate = true;
+      } else {
+	// illegal request
+	reply( c, "500 Illegal request" );
+	c.closing = true;
+      }
+    }
+
+    if ( ! c.busy && ! c.closing && c.in.remaining() == 0 ) {
+      reply( c, "400 Illegal request format" );
+      c.closing = true;
+    }
+    if ( c.closing ) {
+      c.interest( SelectionKey.OP_READ, false );
+      if ( c.out.isEmpty() ) close( c );
+    }
+  }
+
+  /**
+   * Submits a request to the parser threads, or stalls the connection if
+   * there is no capacity left.
+   */
+  private void submit( Connection c, String filename )
+  {
+    c.busy = true;
+    c.interest( SelectionKey.OP_READ, false );
+    Request r = new Request( c, filename );
+    if ( m_inflight < m_capacity ) {
+      dispatch( r );
+    } else {
+      c.stalled = r;
+      m_stalled.add( c );
+      m_stalledCount = m_stalled.size();
+    }
+  }
+
+  /**
+   * Hands a request to the parser threads.
+   */
+  private void dispatch( final Request r )
+  {
+    ++m_inflight;
+    m_parsers.execute( new Runnable() {
+	public void run() {
+	  parse( r );
+	}
+      } );
+  }
+
+  /**
+   * Reads and parses the record of a request. Runs in a parser thread.
+   */
+  private void parse( Request r )
+  {
+    try {
+      String xml = SimpleServer.extractRecord( r.filename, m_emptyFail );
+      InvocationRecord invocation = m_parser.get().parse( new StringReader(xml) );
+      if ( invocation == null )
+	throw new FriendlyNudge( "invalid XML invocation record in " +
+				 r.filename + ", assuming failure", 5 );
+
+      r.invocation = invocation;
+      if ( m_ptc != null ) {
+	// capacity is bounded, so this never blocks
+	m_writeQueue.put( r );
+	return;
+      }
+      r.result = SimpleServer.determineExitStatus( invocation );
+    } catch ( FriendlyNudge fn ) {
+      c_logger.warn( fn.getMessage() );
+      r.result = fn.getResult();
+    } catch ( Exception e ) {
+      c_logger.warn( e.getMessage() );
+      r.result = 5;
+    }
+    done( r );
+  }
+
+  /**
+   * Saves the parsed records in batches, until told to stop. Runs in the
+   * database writer thread.
+   */
+  private void writeRecords()
+  {
+    List<Request> batch = new ArrayList<Request>( m_batchSize );
+    boolean stop = false;
+    while ( ! stop ) {
+      try {
+	batch.add( m_writeQueue.take() );
+      } catch ( InterruptedException e ) {
+	break;
+      }
+      m_writeQueue.drainTo( batch, m_batchSize - 1 );
+      stop = batch.remove( STOP );
+      if ( ! batch.isEmpty() ) save( batch );
+      batch.clear();
+    }
+  }
+
+  /**
+   * Saves a batch of parsed records in one transaction. If the transaction
+   * fails, the records are saved one at a time, so that a single bad record
+   * does not fail the others.
+   */
+  private void save( List<Request> batch )
+  {
+    List<InvocationRecord> ivrs = new ArrayList<InvocationRecord>( batch.size() );
+    for ( Request r : batch ) {
+      ivrs.add( r.invocation );
+    }
+
+    boolean saved = false;
+    if ( m_ptc instanceof InvocationSchema ) {
+      try {
+	int n = ((InvocationSchema) m_ptc).saveInvocations( ivrs );
+	m_saved.addAndGet( n );
+	m_batches.incrementAndGet();
+	saved = true;
+	if ( n < ivrs.size() )
+	  c_logger.info( (ivrs.size() - n) + " invocations already exist, skipping!" );
+      } catch ( SQLException e ) {
+	c_logger.warn( "Unable to save batch of " + ivrs.size() +
+		       " invocations, saving one at a time: " + e.getMessage() );
+      }
+    }
+
+    for ( Request r : batch ) {
+      try {
+	if ( ! saved ) {
+	  // FIXME: (start,host,pid) may not be a sufficient secondary key
+	  if ( m_ptc.getInvocationID( r.invocation.getStart(),
+				      r.invocation.getHostAddress(),
+				      r.invocation.getPID() ) == -1 ) {
+	    m_ptc.saveInvocation( r.invocation );
+	    m_saved.incrementAndGet();
+	  } else {
+	    c_logger.info( "invocation already exists, skipping!" );
+	  }
+	  m_batches.incrementAndGet();
+	}
+	r.result = SimpleServer.determineExitStatus( r.invocation );
+      } catch ( Exception e ) {
+	c_logger.warn( e.getMessage() );
+	m_failures.incrementAndGet();
+	r.result = 5;
+      }
+      done( r );
+    }
+  }
+
+  /**
+   * Marks a request as done, and wakes up the selector thread to send
+   * the reply.
+   */
+  private void done( Request r )
+  {
+    m_records.incrementAndGet();
+    r.invocation = null;
+    m_done.add( r );
+    m_selector.wakeup();
+  }
+
+  /**
+   * Sends the replies of the requests that are done, and dispatches the
+   * stalled requests for the freed capacity. Runs in the selector thread.
+   */
+  private void complete()
+  {
+    Request r;
+    while ( (r = m_done.poll()) != null ) {
+      --m_inflight;
+      Connection c = r.connection;
+      c.busy = false;
+      if ( c.channel.isOpen() ) {
+	reply( c, "300 Result code " + r.result );
+	c.interest( SelectionKey.OP_READ, true );
+	process( c );
+      }
+    }
+
+    while ( m_inflight < m_capacity && ! m_stalled.isEmpty() ) {
+      Connection c = m_stalled.removeFirst();
+      m_stalledCount = m_stalled.size();
+      r = c.stalled;
+      c.stalled = null;
+      if ( c.channel.isOpen() ) dispatch( r );
+      else c.busy = false;
+    }
+  }
+
+  /**
+   * Queues a reply line on a connection, and writes out as much as
+   * possible right away.
+   */
+  private void reply( Connection c, String line )
+  {
+    try {
+      c.out.add( ByteBuffer.wrap( (line + "\r\n").getBytes("ISO-8859-1") ) );
+      write( c );
+    } catch ( IOException e ) {
+      c.log( Level.WARN, "I/O error: " + e.getMessage() );
+      close( c );
+    }
+  }
+
+  /**
+   * Writes the queued replies of a connection, and closes it once all
+   * replies are written, if it is closing.
+   */
+  private void write( Connection c )
+    throws IOException
+  {
+    while ( ! c.out.isEmpty() ) {
+      ByteBuffer b = c.out.getFirst();
+      c.channel.write( b );
+      if ( b.hasRemaining() ) break;
+      c.out.removeFirst();
+    }
+    c.interest( SelectionKey.OP_WRITE, ! c.out.isEmpty() );
+    if ( c.closing && c.out.isEmpty() ) close( c );
+  }
+
+  /**
+   * Closes a connection.
+   */
+  private void close( Connection c )
+  {
+    if ( ! c.channel.isOpen() ) return;
+    c.key.cancel();
+    try {
+      c.channel.close();
+    } catch ( IOException e ) {
+      // ignore
+    }
+    if ( m_stalled.remove( c ) ) m_stalledCount = m_stalled.size();
+    if ( c.stalled != null ) {
+      c.stalled = null;
+      c.busy = false;
+    }
+    c.log( Level.DEBUG, "finished" );
+  }
+
+  /**
+   * Logs the metrics, if due or forced.
+   */
+  private void report( boolean force )
+  {
+    long now = System.currentTimeMillis();
+    if ( ! force && now - m_lastReport < METRICS_INTERVAL ) return;
+    long records = m_records.get();
+    if ( force || records != m_lastRecords ) {
+      double rate = (records - m_lastRecords) * 1000.0 /
+	Math.max( 1, now - m_lastReport );
+      c_logger.info( getMetrics() + " current-rate " +
+		     String.format( "%.1f", rate ) + "/s" );
+    }
+    m_lastReport = now;
+    m_lastRecords = records;
+  }
+
+  /**
+   * Stops the threads and closes the remaining connections.
+   */
+  private void stop()
+  {
+    c_logger.info( "received shutdown" );
+    m_parsers.shutdown();
+    try {
+      m_writeQueue.put( STOP );
+      m_writer.join();
+      m_parsers.awaitTermination( 60, TimeUnit.SECONDS );
+    } catch ( InterruptedException e ) {
+      // ignore
+    }
+
+    for ( SelectionKey key : m_selector.keys() ) {
+      if ( key.attachment() != null ) close( (Connection) key.attachment() );
+    }
+    try {
+      m_server.close();
+      m_selector.close();
+    } catch ( IOException e ) {
+      // ignore
+    }
+    report( true );
+  }
+
+  /**
+   * A request to parse a kickstart file.
+   */
+  private static class Request
+  {
+    final Connection connection;
+    final String filename;
+    InvocationRecord invocation;
+    int result;
+
+    Request( Connection connection, String filename )
+    {
+      this.connection = connection;
+      this.filename = filename;
+    }
+  }
+
+  /**
+   * The state of a client connection. Only accessed by the selector thread.
+   */
+  private static class Connection
+  {
+    final SocketChannel channel;
+    final String remote;
+    SelectionKey key;
+
+    /**
+     * The bytes read that are not yet processed.
+     */
+    final ByteBuffer in;
+
+    /**
+     * The replies that are not yet written.
+     */
+    final LinkedList<ByteBuffer> out;
+
+    /**
+     * Whether a request of the connection is in flight.
+     */
+    boolean busy;
+
+    /**
+     * The request waiting for capacity, if any.
+     */
+    Request stalled;
+
+    /**
+     * Whether the connection is closed once the replies are written.
+     */
+    boolean closing;
+
+    Connection( SocketChannel channel )
+    {
+      this.channel = channel;
+      Socket s = channel.socket();
+      this.remote = s.getInetAddress().getHostAddress() + ":" + s.getPort();
+      this.in = ByteBuffer.allocate( MAX_LINE_LENGTH );
+      this.out = new LinkedList<ByteBuffer>();
+      this.busy = false;
+      this.closing = false;
+    }
+
+    void log( Level l, String msg )
+    {
+      c_logger.log( l, remote + ": " + msg );
+    }
+
+    void interest( int op, boolean on )
+    {
+      if ( ! key.isValid() ) return;
+      int ops = key.interestOps();
+      key.interestOps( on ? (ops | op) : (ops & ~op) );
+    }
+
+    /**
+     * Removes the next complete line from the input buffer.
+     *
+     * @return the line without the line terminator, or null if there is
+     * no complete line.
+     */
+    String nextLine()
+    {
+      int end = in.position();
+      for ( int i=0; i < end; ++i ) {
+	if ( in.get(i) == '\n' ) {
+	  int length = ( i > 0 && in.get(i-1) == '\r' ) ? i-1 : i;
+	  byte[] line = new byte[length];
+	  in.flip();
+	  in.get( line );
+	  in.position( i+1 );
+	  in.compact();
+	  try {
+	    return new String( line, "ISO-8859-1" );
+	  } catch ( java.io.UnsupportedEncodingException e ) {
+	    throw new RuntimeException( e );
+	  }
+	}
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Prints the usage of the server.
+   */
+  public static void showUsage()
+  {
+    String linefeed = System.getProperty( "line.separator", "\r\n" );
+    System.out.println(
+      "Usage: IngestServer [-p port] [-t threads] [-b batch] [-q capacity]" + linefeed +
+      linefeed +
+      " -p|--port      port to listen on the loopback interface, default " + DEFAULT_PORT + linefeed +
+      " -t|--threads   number of threads parsing records, default " + DEFAULT_PARSERS + linefeed +
+      " -b|--batch     maximum number of records saved per transaction, default " + DEFAULT_BATCH_SIZE + linefeed +
+      " -q|--queue     maximum number of requests in flight, default " + DEFAULT_CAPACITY + linefeed +
+      " -h|--help      print this help" + linefeed );
+  }
+
+  public static void main( String args[] )
+  {
+    // setup logging
+    System.setProperty( "log4j.defaultInitOverride", "true" );
+    Logger root = Logger.getRootLogger();
+    root.addAppender(
+	new ConsoleAppender(
+	new PatternLayout("%d{yyyy-MM-dd HH:mm:ss.SSS} %-5p [%c{1}] %m%n") ) );
+    root.setLevel( Level.INFO );
+
+    int port = DEFAULT_PORT;
+    int parsers = DEFAULT_PARSERS;
+    int batch = DEFAULT_BATCH_SIZE;
+    int capacity = DEFAULT_CAPACITY;
+
+    LongOpt[] lo = new LongOpt[5];
+    lo[0] = new LongOpt( "port", LongOpt.REQUIRED_ARGUMENT, null, 'p' );
+    lo[1] = new LongOpt( "threads", LongOpt.REQUIRED_ARGUMENT, null, 't' );
+    lo[2] = new LongOpt( "batch", LongOpt.REQUIRED_ARGUMENT, null, 'b' );
+    lo[3] = new LongOpt( "queue", LongOpt.REQUIRED_ARGUMENT, null, 'q' );
+    lo[4] = new LongOpt( "help", LongOpt.NO_ARGUMENT, null, 'h' );
+    Getopt opts = new Getopt( "IngestServer", args, "p:t:b:q:h", lo );
+    int option;
+    try {
+      while ( (option = opts.getopt()) != -1 ) {
+	switch ( option ) {
+	case 'p':
+	  port = Integer.parseInt( opts.getOptarg() );
+	  break;
+	case 't':
+	  parsers = Integer.parseInt( opts.getOptarg() );
+	  break;
+	case 'b':
+	  batch = Integer.parseInt( opts.getOptarg() );
+	  break;
+	case 'q':
+	  capacity = Integer.parseInt( opts.getOptarg() );
+	  break;
+	case 'h':
+	default:
+	  showUsage();
+	  return;
+	}
+      }
+    } catch ( NumberFormatException e ) {
+      showUsage();
+      System.exit(1);
+    }
+
+    c_logger.info( "starting" );
+    IngestServer me = null;
+    DatabaseSchema dbschema = null;
+    try {
+      // stand up the connection to the PTC
+      ChimeraProperties props = ChimeraProperties.instance();
+      String ptcSchemaName = props.getPTCSchemaName();
+      if ( ptcSchemaName != null ) {
+	dbschema = new Connect().connectDatabase( ptcSchemaName );
+	if ( ! (dbschema instanceof PTC) ) {
+	  c_logger.warn( "Your database cannot store invocation records" +
+			 ", assuming no-database-mode" );
+	}
+      }
+
+      byte[] loopback = { 127, 0, 0, 1 };
+      me = new IngestServer( (dbschema instanceof PTC) ? (PTC) dbschema : null,
+			     props.getPTCSchemaLocation(),
+			     new InetSocketAddress( InetAddress.getByAddress(loopback), port ),
+			     parsers, batch, capacity );
+    } catch ( Exception e ) {
+      c_logger.fatal( "Unable to instantiate a server: " + e.getMessage() );
+      System.exit(1);
+    }
+
+    // run until shut down
+    me.run();
+
+    if ( dbschema != null ) {
+      try {
+	dbschema.close();
+      } catch ( Exception e ) {
+	c_logger.warn( "During database disconnect: " + e.getMessage() );
+      }
+    }
+    c_logger.warn( "finished shutdown" );
+  }
+}
@@ -27,7 +27,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * This helper class helps in handling the arguments specified in the
@@ -267,7 +266,7 @@ public class Condor extends Namespace{
      * The default constructor.
      */
     public Condor(){
-        mProfileMap = new TreeMap();
+        mProfileMap = new ProfileMap( true );
         mNamespace = NAMESPACE_NAME;
     }
 
@@ -278,7 +277,7 @@ public class Condor extends Namespace{
      * @param mp  map containing the profile keys.
      */
     public Condor(Map mp){
-        mProfileMap = new TreeMap(mp);
+        mProfileMap = new ProfileMap( mp, true );
         mNamespace = NAMESPACE_NAME;
     }
 
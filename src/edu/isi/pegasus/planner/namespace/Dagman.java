@@ -23,7 +23,6 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 
 import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
 
 
 /**
@@ -236,7 +235,7 @@ public class Dagman extends Namespace {
      * the postscript value for a job.
      */
     public Dagman() {
-        mProfileMap = new TreeMap();
+        mProfileMap = new ProfileMap( true );
         mNamespace = NAMESPACE_NAME;
         mJobName = null;
         
@@ -249,7 +248,7 @@ public class Dagman extends Namespace {
      */
     public Dagman(Map mp) {
         this();
-        mProfileMap = new TreeMap(mp);
+        mProfileMap = new ProfileMap( mp, true );
     }
 
     /**
@@ -21,7 +21,6 @@ import edu.isi.pegasus.planner.catalog.classes.Profiles;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.LinkedHashMap;
 
 import edu.isi.pegasus.planner.classes.Profile;
 import edu.isi.pegasus.planner.common.PegasusProperties;
@@ -113,7 +112,7 @@ public class ENV extends Namespace {
      * @param mp  map (possibly empty).
      */
     public ENV(Map mp) {
-        mProfileMap = new LinkedHashMap(mp);
+        mProfileMap = new ProfileMap( mp, false );
         mNamespace = NAMESPACE_NAME;
     }
 
@@ -152,7 +151,7 @@ public class ENV extends Namespace {
      */
     public void construct(String key, String value) {
         if(mProfileMap == null)
-            mProfileMap = new LinkedHashMap();
+            mProfileMap = new ProfileMap( false );
         mProfileMap.put(key, value);
     }
 
@@ -31,7 +31,6 @@ import edu.isi.pegasus.planner.namespace.aggregator.Update;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.TreeMap;
 
 
 /**
@@ -144,7 +143,7 @@ public class Globus extends Namespace {
      * The default constructor.
      */
     public Globus(){
-        mProfileMap = new TreeMap();
+        mProfileMap = new ProfileMap( true );
         mNamespace = NAMESPACE_NAME;
     }
 
@@ -155,7 +154,7 @@ public class Globus extends Namespace {
      * @param map a possibly empty map.
      */
     public Globus(Map map){
-        mProfileMap = new TreeMap(map);
+        mProfileMap = new ProfileMap( map, true );
         mNamespace = NAMESPACE_NAME;
     }
 
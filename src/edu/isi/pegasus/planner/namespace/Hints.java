@@ -22,7 +22,6 @@ import edu.isi.pegasus.planner.classes.Profile;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.Iterator;
 
 /**
@@ -104,7 +103,7 @@ public class Hints extends Namespace {
      * @param mp  the map containing the profiles to be prepopulated with.
      */
     public Hints(Map mp) {
-        mProfileMap = new TreeMap(mp);
+        mProfileMap = new ProfileMap( mp, true );
         mNamespace = NAMESPACE_NAME;
     }
 
@@ -138,7 +137,7 @@ public class Hints extends Namespace {
      */
     public void construct(String key, String value) {
         if(mProfileMap == null)
-            mProfileMap = new TreeMap();
+            mProfileMap = new ProfileMap( true );
         mProfileMap.put(key, value);
     }
 
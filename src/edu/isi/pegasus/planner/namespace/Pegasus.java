@@ -37,7 +37,6 @@ import java.util.HashMap;
 
 import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * A Planner specific namespace. It defines profiles that are used to fine
@@ -531,7 +530,7 @@ public class Pegasus extends Namespace {
      * @param mp  the initial map.
      */
     public Pegasus(Map mp) {
-        mProfileMap = new TreeMap(mp);
+        mProfileMap = new ProfileMap( mp, true );
         mNamespace = NAMESPACE_NAME;
     }
 
@@ -556,7 +555,7 @@ public class Pegasus extends Namespace {
      */
     public void construct(String key, String value) {
         if(mProfileMap == null)
-            mProfileMap = new TreeMap();
+            mProfileMap = new ProfileMap( true );
         mProfileMap.put(key.toLowerCase(), value);
     }
 
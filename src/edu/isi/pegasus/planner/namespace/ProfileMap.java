@@ -0,0 +1,441 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.namespace;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The map holding the profiles of a namespace. Jobs are cloned heavily
+ * during planning, and most clones never modify most of their namespaces.
+ * A profile map constructed from another profile map therefore shares the
+ * storage with it, and copies the storage only when either of them is
+ * modified.
+ *
+ * Up to eight profiles are stored in a pair of arrays, that are searched
+ * instead of hashed. Larger maps are backed by a <code>TreeMap</code> or a
+ * <code>LinkedHashMap</code>. The iteration order is the same as that of
+ * the map the namespace used earlier, either sorted by key or in insertion
+ * order.
+ *
+ * The map is not thread safe, in the same way as the maps it replaces.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class ProfileMap extends AbstractMap<String,Object> {
+
+    /**
+     * The maximum number of profiles stored in the arrays.
+     */
+    public static final int COMPACT_SIZE = 8;
+
+    /**
+     * The empty array an empty map starts with.
+     */
+    private static final Object[] EMPTY = new Object[0];
+
+    /**
+     * Whether the keys are iterated in sorted order, else in insertion order.
+     */
+    private final boolean mSorted;
+
+    /**
+     * The keys, when the profiles are stored in the arrays.
+     */
+    private Object[] mKeys;
+
+    /**
+     * The values, when the profiles are stored in the arrays.
+     */
+    private Object[] mValues;
+
+    /**
+     * The number of profiles in the arrays.
+     */
+    private int mSize;
+
+    /**
+     * The map the profiles are stored in, once there are more than
+     * <code>COMPACT_SIZE</code> profiles. Null till then.
+     */
+    private Map<String,Object> mMap;
+
+    /**
+     * Whether the storage may be shared with another profile map, and has to
+     * be copied before it is modified.
+     */
+    private boolean mShared;
+
+    /**
+     * The default constructor.
+     *
+     * @param sorted  whether the keys are iterated in sorted order, else in
+     *                insertion order
+     */
+    public ProfileMap( boolean sorted ){
+        mSorted = sorted;
+        mKeys   = EMPTY;
+        mValues = EMPTY;
+        mSize   = 0;
+        mMap    = null;
+        mShared = false;
+    }
+
+    /**
+     * The overloaded constructor, that copies the profiles from a map. If
+     * the map is a profile map with the same ordering, the storage is shared
+     * till either map is modified.
+     *
+     * @param map     the map to copy
+     * @param sorted  whether the keys are iterated in sorted order, else in
+     *                insertion order
+     */
+    public ProfileMap( Map map, boolean sorted ){
+        this( sorted );
+        if( map instanceof ProfileMap && ((ProfileMap)map).mSorted == sorted ){
+            ProfileMap other = (ProfileMap)map;
+            other.mShared = true;
+            mKeys   = other.mKeys;
+            mValues = other.mValues;
+            mSize   = other.mSize;
+            mMap    = other.mMap;
+            mShared = true;
+        }
+        else{
+            for( Iterator it = map.entrySet().iterator(); it.hasNext(); ){
+                Map.Entry entry = (Map.Entry)it.next();
+                this.put( (String)entry.getKey(), entry.getValue() );
+            }
+        }
+    }
+
+    /**
+     * Returns the number of profiles.
+     *
+     * @return the size
+     */
+    public int size(){
+        return ( mMap == null ) ? mSize : mMap.size();
+    }
+
+    /**
+     * Returns whether the map contains a profile.
+     *
+     * @param key  the profile key
+     *
+     * @return boolean
+     */
+    public boolean containsKey( Object key ){
+        return ( mMap == null ) ? indexOf( key ) >= 0 : mMap.containsKey( key );
+    }
+
+    /**
+     * Returns the value of a profile.
+     *
+     * @param key  the profile key
+     *
+     * @return the value, or null if the profile does not exist
+     */
+    public Object get( Object key ){
+        if( mMap != null ){
+            return mMap.get( key );
+        }
+        int index = indexOf( key );
+        return ( index >= 0 ) ? mValues[ index ] : null;
+    }
+
+    /**
+     * Sets the value of a profile.
+     *
+     * @param key    the profile key
+     * @param value  the value
+     *
+     * @return the previous value, or null if the profile did not exist
+     */
+    public Object put( String key, Object value ){
+        if( key == null ){
+            throw new NullPointerException( "Profile key cannot be null" );
+        }
+        unshare();
+        if( mMap != null ){
+            return mMap.put( key, value );
+        }
+
+        int index = indexOf( key );
+        if( index >= 0 ){
+            Object previous = mValues[ index ];
+            mValues[ index ] = value;
+            return previous;
+        }
+
+        if( mSize == COMPACT_SIZE ){
+            //move the profiles to a map
+            Map<String,Object> map = mSorted ?
+                                     new TreeMap<String,Object>() :
+                                     new LinkedHashMap<String,Object>();
+            for( int i = 0; i < mSize; i++ ){
+                map.put( (String)mKeys[ i ], mValues[ i ] );
+            }
+            map.put( key, value );
+            mMap    = map;
+            mKeys   = EMPTY;
+            mValues = EMPTY;
+            mSize   = 0;
+            return null;
+        }
+
+        if( mSize == mKeys.length ){
+            int capacity = Math.min( COMPACT_SIZE, Math.max( 2, mSize * 2 ) );
+            mKeys   = Arrays.copyOf( mKeys, capacity );
+            mValues = Arrays.copyOf( mValues, capacity );
+        }
+        int position = mSorted ? -( index + 1 ) : mSize;
+        System.arraycopy( mKeys, position, mKeys, position + 1, mSize - position );
+        System.arraycopy( mValues, position, mValues, position + 1, mSize - position );
+        mKeys[ position ]   = key;
+        mValues[ position ] = value;
+        mSize++;
+        return null;
+    }
+
+    /**
+     * Removes a profile.
+     *
+     * @param key  the profile key
+     *
+     * @return the removed value, or null if the profile did not exist
+     */
+    public Object remove( Object key ){
+        if( !containsKey( key ) ){
+            return null;
+        }
+        unshare();
+        if( mMap != null ){
+            return mMap.remove( key );
+        }
+        int index = indexOf( key );
+        Object previous = mValues[ index ];
+        removeAt( index );
+        return previous;
+    }
+
+    /**
+     * Removes all the profiles.
+     */
+    public void clear(){
+        //nothing to copy
+        mKeys   = EMPTY;
+        mValues = EMPTY;
+        mSize   = 0;
+        mMap    = null;
+        mShared = false;
+    }
+
+    /**
+     * Returns a view of the profiles, that supports removal.
+     *
+     * @return the entry set
+     */
+    public Set<Map.Entry<String,Object>> entrySet(){
+        return new AbstractSet<Map.Entry<String,Object>>(){
+            public Iterator<Map.Entry<String,Object>> iterator(){
+                return new EntryIterator();
+            }
+
+            public int size(){
+                return ProfileMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Returns whether the storage may be shared with another profile map.
+     *
+     * @return boolean
+     */
+    boolean isShared(){
+        return mShared;
+    }
+
+    /**
+     * Copies the storage if it may be shared with another profile map, so
+     * that it can be modified.
+     */
+    private void unshare(){
+        if( !mShared ){
+            return;
+        }
+        if( mMap != null ){
+            mMap = mSorted ?
+                   new TreeMap<String,Object>( mMap ) :
+                   new LinkedHashMap<String,Object>( mMap );
+        }
+        else if( mSize > 0 ){
+            mKeys   = Arrays.copyOf( mKeys, mKeys.length );
+            mValues = Arrays.copyOf( mValues, mValues.length );
+        }
+        mShared = false;
+    }
+
+    /**
+     * Returns the index of a key in the arrays. For sorted maps, the index
+     * is found by binary search, and a missing key is reported in the same
+     * way as <code>Arrays.binarySearch</code>.
+     *
+     * @param key  the key
+     *
+     * @return the index, negative if the key is not in the arrays
+     */
+    private int indexOf( Object key ){
+        if( key == null ){
+            return -1;
+        }
+        if( mSorted ){
+            String k = (String)key;
+            int low  = 0;
+            int high = mSize - 1;
+            while( low <= high ){
+                int mid = ( low + high ) >>> 1;
+                int cmp = ((String)mKeys[ mid ]).compareTo( k );
+                if( cmp < 0 ){
+                    low = mid + 1;
+                }
+                else if( cmp > 0 ){
+                    high = mid - 1;
+                }
+                else{
+                    return mid;
+                }
+            }
+            return -( low + 1 );
+        }
+        for( int i = 0; i < mSize; i++ ){
+            if( key.equals( mKeys[ i ] ) ){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the profile at an index in the arrays.
+     *
+     * @param index  the index
+     */
+    private void removeAt( int index ){
+        int moved = mSize - index - 1;
+        System.arraycopy( mKeys, index + 1, mKeys, index, moved );
+        System.arraycopy( mValues, index + 1, mValues, index, moved );
+        mSize--;
+        mKeys[ mSize ]   = null;
+        mValues[ mSize ] = null;
+    }
+
+    /**
+     * The iterator over the profiles, that copies the storage before
+     * removing a profile if the storage is shared.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<String,Object>> {
+
+        /**
+         * The map iterated over, if the profiles were in a map when the
+         * iteration started.
+         */
+        private Map<String,Object> mIterated;
+
+        /**
+         * The iterator over the map.
+         */
+        private Iterator<Map.Entry<String,Object>> mDelegate;
+
+        /**
+         * The index of the next profile in the arrays.
+         */
+        private int mNext;
+
+        /**
+         * The key returned last.
+         */
+        private String mLast;
+
+        public EntryIterator(){
+            mIterated = mMap;
+            mDelegate = ( mMap == null ) ? null : mMap.entrySet().iterator();
+            mNext = 0;
+            mLast = null;
+        }
+
+        public boolean hasNext(){
+            return ( mDelegate == null ) ? mNext < mSize : mDelegate.hasNext();
+        }
+
+        public Map.Entry<String,Object> next(){
+            if( mDelegate != null ){
+                Map.Entry<String,Object> entry = mDelegate.next();
+                mLast = entry.getKey();
+                return new Entry( mLast, entry.getValue() );
+            }
+            if( mNext >= mSize ){
+                throw new NoSuchElementException();
+            }
+            mLast = (String)mKeys[ mNext ];
+            return new Entry( mLast, mValues[ mNext++ ] );
+        }
+
+        public void remove(){
+            if( mLast == null ){
+                throw new IllegalStateException();
+            }
+            if( mDelegate == null ){
+                unshare();
+                removeAt( --mNext );
+            }
+            else if( mMap == mIterated && !mShared ){
+                mDelegate.remove();
+            }
+            else{
+                //the map iterated over is shared, remove from the copy
+                unshare();
+                mMap.remove( mLast );
+            }
+            mLast = null;
+        }
+    }
+
+    /**
+     * A profile returned by the iterator, that writes through to the map.
+     */
+    private class Entry extends AbstractMap.SimpleEntry<String,Object> {
+
+        public Entry( String key, Object value ){
+            super( key, value );
+        }
+
+        public Object setValue( Object value ){
+            ProfileMap.this.put( getKey(), value );
+            return super.setValue( value );
+        }
+    }
+}
@@ -20,7 +20,6 @@ package edu.isi.pegasus.planner.namespace;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.TreeMap;
 
 import edu.isi.pegasus.planner.classes.Profile;
 import edu.isi.pegasus.planner.common.PegasusProperties;
@@ -65,7 +64,7 @@ public class Selector extends Namespace {
      * @param mp  map (possibly empty).
      */
     public Selector(Map mp) {
-        mProfileMap = new TreeMap(mp);
+        mProfileMap = new ProfileMap( mp, true );
         mNamespace = NAMESPACE_NAME;
     }
 
@@ -104,7 +103,7 @@ public class Selector extends Namespace {
      */
     public void construct(String key, String value) {
         if(mProfileMap == null)
-            mProfileMap = new TreeMap();
+            mProfileMap = new ProfileMap( true );
         mProfileMap.put(key, value);
     }
 
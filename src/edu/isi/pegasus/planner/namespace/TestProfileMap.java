@@ -0,0 +1,206 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import edu.isi.pegasus.planner.classes.Job;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the memory and the time taken to clone the jobs of a large
+ * workflow, with the profiles of the clones shared in profile maps, copied
+ * into profile maps of their own, and copied into the maps the namespaces
+ * used earlier.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class TestProfileMap {
+
+    /**
+     * The number of transformations, each with its own profiles.
+     */
+    public static final int TRANSFORMATIONS = 20;
+
+    /**
+     * Every so many clones modify a profile after they are cloned.
+     */
+    public static final int MODIFY_EVERY = 10;
+
+    /**
+     * The clones share the profile maps of the jobs they are cloned from.
+     */
+    public static final String SHARED_MODE = "shared";
+
+    /**
+     * The clones copy the profiles into profile maps of their own.
+     */
+    public static final String COPIED_MODE = "copied";
+
+    /**
+     * The clones copy the profiles into a TreeMap, or a LinkedHashMap for
+     * the environment profiles.
+     */
+    public static final String MAP_MODE = "treemap";
+
+    public TestProfileMap() {
+    }
+
+    /**
+     * Creates a job with the profiles typically associated with the jobs
+     * of a transformation.
+     *
+     * @param t  the transformation
+     *
+     * @return the job
+     */
+    public static Job createJob( int t ){
+        Job job = new Job();
+        job.setName( "t" + t );
+        job.setTransformation( "pegasus", "t" + t, "1.0" );
+        job.setJobType( Job.COMPUTE_JOB );
+        job.condorVariables.construct( "universe", "vanilla" );
+        job.condorVariables.construct( "requirements", "Memory > " + ( 1024 + t ) );
+        job.condorVariables.construct( "request_memory", Integer.toString( 1024 + t ) );
+        job.condorVariables.construct( "request_cpus", "1" );
+        job.condorVariables.construct( "periodic_release", "False" );
+        job.condorVariables.construct( "periodic_remove", "False" );
+        job.envVariables.construct( "PEGASUS_HOME", "/usr" );
+        job.envVariables.construct( "JAVA_HOME", "/usr/lib/jvm" );
+        job.envVariables.construct( "PATH", "/usr/bin:/bin" );
+        job.envVariables.construct( "LANG", "C" );
+        job.vdsNS.construct( Pegasus.RUNTIME_KEY, Integer.toString( 60 + t ) );
+        job.vdsNS.construct( Pegasus.GRIDSTART_KEY, "PegasusLite" );
+        job.vdsNS.construct( Pegasus.CHANGE_DIR_KEY, "true" );
+        job.dagmanVariables.construct( Dagman.RETRY_KEY, "3" );
+        job.dagmanVariables.construct( Dagman.CATEGORY_KEY, "t" + t );
+        job.globusRSL.construct( "maxwalltime", Integer.toString( 10 + t ) );
+        job.globusRSL.construct( "queue", "normal" );
+        return job;
+    }
+
+    /**
+     * Clones the jobs of a workflow from the jobs of the transformations.
+     * Some of the clones modify a profile, as is done for instance when
+     * jobs are clustered.
+     *
+     * @param templates  the jobs of the transformations
+     * @param jobs       the number of jobs in the workflow
+     * @param mode       how the profiles of the clones are stored
+     *
+     * @return the jobs
+     */
+    public static Job[] cloneJobs( Job[] templates, int jobs, String mode ){
+        Job[] result = new Job[ jobs ];
+        for( int i = 0; i < jobs; i++ ){
+            Job job = (Job)templates[ i % templates.length ].clone();
+            job.setName( "ID" + i );
+            if( !mode.equals( SHARED_MODE ) ){
+                copy( job.condorVariables, true, mode );
+                copy( job.envVariables, false, mode );
+                copy( job.vdsNS, true, mode );
+                copy( job.dagmanVariables, true, mode );
+                copy( job.globusRSL, true, mode );
+                copy( job.hints, true, mode );
+            }
+            if( i % MODIFY_EVERY == 0 ){
+                job.condorVariables.construct( "priority", Integer.toString( i ) );
+            }
+            result[i] = job;
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the profile map of a namespace with a copy of its own.
+     *
+     * @param namespace  the namespace
+     * @param sorted     whether the keys are iterated in sorted order
+     * @param mode       how the profiles are stored
+     */
+    private static void copy( Namespace namespace, boolean sorted, String mode ){
+        Map map = namespace.mProfileMap;
+        if( map == null ){
+            return;
+        }
+        if( mode.equals( COPIED_MODE ) ){
+            //a map that is not a profile map is not shared
+            namespace.mProfileMap = new ProfileMap( Collections.unmodifiableMap( map ), sorted );
+        }
+        else{
+            namespace.mProfileMap = sorted ? new TreeMap( map ) : new LinkedHashMap( map );
+        }
+    }
+
+    /**
+     * Returns the memory used in the heap, after a garbage collection.
+     *
+     * @return the used memory in bytes
+     */
+    private static long usedMemory(){
+        Runtime runtime = Runtime.getRuntime();
+        for( int i = 0; i < 3; i++ ){
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs the comparison for the number of jobs passed as argument. By
+     * default the jobs of a 500000 job workflow are cloned. Run with a heap
+     * large enough to hold the workflow, for instance -Xmx4g.
+     *
+     * @param args the number of jobs, followed optionally by the modes to run.
+     */
+    public static void main( String[] args ){
+        int jobs = 500000;
+        String[] modes = new String[]{ MAP_MODE, COPIED_MODE, SHARED_MODE };
+        if( args.length > 0 ){
+            jobs = Integer.parseInt( args[0] );
+        }
+        if( args.length > 1 ){
+            modes = new String[ args.length - 1 ];
+            System.arraycopy( args, 1, modes, 0, modes.length );
+        }
+
+        Job[] templates = new Job[ TRANSFORMATIONS ];
+        for( int t = 0; t < TRANSFORMATIONS; t++ ){
+            templates[t] = createJob( t );
+        }
+        //warm up the code paths before measuring
+        for( String mode : modes ){
+            cloneJobs( templates, jobs / 10, mode );
+        }
+
+        System.out.println( "********* Benchmark  **********" );
+        for( String mode : modes ){
+            long before = usedMemory();
+            long start = System.nanoTime();
+            Job[] workflow = cloneJobs( templates, jobs, mode );
+            double time = ( System.nanoTime() - start ) / 1e6;
+            long memory = usedMemory() - before;
+            System.out.println( "jobs=" + workflow.length + " " + mode +
+                                " time=" + (long) time + " ms" +
+                                " memory=" + ( memory >> 20 ) + " MB" +
+                                " per-job=" + ( memory / workflow.length ) + " bytes" );
+            workflow = null;
+        }
+        System.out.println( "****************************" );
+    }
+}
@@ -23,6 +23,7 @@ import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -60,6 +61,16 @@ public abstract class StackBasedXMLParser extends Parser {
      * A set of containing the unsupported element attributes
      */
     protected Set<String> mUnsupportedElementAttributes;
+
+    /**
+     * The list of attribute names, reused for every element.
+     */
+    private List mAttributeNames;
+
+    /**
+     * The list of attribute values, reused for every element.
+     */
+    private List mAttributeValues;
     
     /**
      * The default Constructor.
@@ -81,6 +92,8 @@ public abstract class StackBasedXMLParser extends Parser {
         mStack = new Stack();
         mDepth = 0;
         mUnsupportedElementAttributes = new HashSet();
+        mAttributeNames  = new ArrayList();
+        mAttributeValues = new ArrayList();
         
     }
 
@@ -102,7 +115,8 @@ public abstract class StackBasedXMLParser extends Parser {
     
     /**
      * Composes the  <code>SiteData</code> object corresponding to the element
-     * name in the XML document.
+     * name in the XML document. The lists of attribute names and values are
+     * reused for the next element, and should not be retained.
      *
      * @param element the element name encountered while parsing.
      * @param names   is a list of attribute names, as strings.
@@ -162,8 +176,10 @@ public abstract class StackBasedXMLParser extends Parser {
         //one more element level
         mDepth++;
 
-        List names = new java.util.ArrayList();
-        List values = new java.util.ArrayList();
+        List names = mAttributeNames;
+        List values = mAttributeValues;
+        names.clear();
+        values.clear();
         for ( int i=0; i < atts.getLength(); ++i ) {
             String name  =  atts.getLocalName(i) ;
             String value =  atts.getValue(i) ;            
@@ -200,9 +216,11 @@ public abstract class StackBasedXMLParser extends Parser {
 
         // that's it for this level
         mDepth--;
-        mLogger.log( "</" +  localName + "> at " +
-                     this.mLocator.getLineNumber() + ":" +
-                     mLocator.getColumnNumber() , LogManager.TRACE_MESSAGE_LEVEL );
+        if( this.traceEnabled() ){
+            mLogger.log( "</" +  localName + "> at " +
+                         this.mLocator.getLineNumber() + ":" +
+                         mLocator.getColumnNumber() , LogManager.TRACE_MESSAGE_LEVEL );
+        }
 
         ParserStackElement tos = ( ParserStackElement ) mStack.pop();
         if ( ! qName.equals( tos.getElementName() ) ) {
@@ -239,8 +257,21 @@ public abstract class StackBasedXMLParser extends Parser {
      */
     public void log( String element, String attribute, String value) {
         //to be enabled when logging per queue.
-        mLogger.log( "For element " + element + " found " + attribute + " -> " + value,
-                     LogManager.TRACE_MESSAGE_LEVEL  );
+        if( this.traceEnabled() ){
+            mLogger.log( "For element " + element + " found " + attribute + " -> " + value,
+                         LogManager.TRACE_MESSAGE_LEVEL  );
+        }
+    }
+
+    /**
+     * Returns whether trace messages are logged. Used to avoid constructing
+     * the per element and per attribute trace messages while parsing large
+     * documents.
+     *
+     * @return boolean
+     */
+    protected boolean traceEnabled(){
+        return mLogger.getLevel() >= LogManager.TRACE_MESSAGE_LEVEL;
     }
     
     /**
@@ -34,7 +34,10 @@ import edu.isi.pegasus.planner.classes.ReplicaStore;
 import edu.isi.pegasus.planner.classes.WorkflowMetrics;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.dax.Invoke;
+import edu.isi.pegasus.planner.partitioner.graph.CompactGraph;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -123,9 +126,9 @@ public class DAX2CDAG implements Callback {
      * @param dax   the path to the DAX file.
      */
     public void initialize( PegasusBag bag, String dax ) {
-        mDag          = new ADag();
-        mJobMap       = new HashMap<String,String>();
         mProps        = bag.getPegasusProperties();
+        mDag          = new ADag( createGraph( mProps.getWorkflowGraphImplementation() ) );
+        mJobMap       = new HashMap<String,String>();
         mLogger       = bag.getLogger();
         mDone         = false;
         this.mReplicaStore = new ReplicaStore();
@@ -331,6 +334,24 @@ public class DAX2CDAG implements Callback {
         }
     }
 
+    /**
+     * Creates the Graph implementation to store the workflow in.
+     *
+     * @param implementation  the implementation name. Can be Map or Compact
+     *
+     * @return the Graph
+     */
+    public static Graph createGraph( String implementation ){
+        if( implementation == null || implementation.equalsIgnoreCase( "Map" ) ){
+            return new MapGraph();
+        }
+        else if( implementation.equalsIgnoreCase( "Compact" ) ){
+            return new CompactGraph();
+        }
+        throw new RuntimeException( "Unsupported graph implementation specified " + implementation +
+                                    " . Valid values are Map and Compact" );
+    }
+
     /**
      * Goes through the ADag and computes any data dependencies.
      *
@@ -1268,7 +1268,7 @@ public class DAXParser2 extends Parser implements DAXParser {
      *
      */
     public String ignoreWhitespace(String str){
-        return ignoreWhitespace( str, mProps.preserveParserLineBreaks() );
+        return ignoreWhitespace( str, mProps.getSnapshot().preserveParserLineBreaks() );
     }
 
     /**
@@ -64,6 +64,10 @@ import edu.isi.pegasus.planner.namespace.Hints;
 import edu.isi.pegasus.planner.namespace.Pegasus;
 import edu.isi.pegasus.planner.parser.StackBasedXMLParser;
 import java.io.FileReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.text.DecimalFormat;
 import org.xml.sax.InputSource;
 
 /**
@@ -151,6 +155,18 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
      * Schema version of the DAX as detected in the factory.
      */
     protected String mSchemaVersion;
+
+    /**
+     * Pool of the strings that repeat across the jobs in the DAX such as the
+     * LFNs, transformation names and profile keys. Ensures that only one copy
+     * of each string is retained in the workflow.
+     */
+    private Map<String,String> mStringPool;
+
+    /**
+     * The number of jobs parsed.
+     */
+    private long mJobCount;
     
     /**
      * The overloaded constructor. The schema version passed is determined
@@ -165,7 +181,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
         mJobPrefix = ( bag.getPlannerOptions() == null ) ?
                        null:
                        bag.getPlannerOptions().getJobnamePrefix();
-
+        mStringPool = new HashMap<String,String>();
 
     }
 
@@ -195,6 +211,9 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
      */
     public void startParser( String file ) {
         mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_PARSE_DAX, LoggingKeys.DAX_ID, file );
+        long start = System.currentTimeMillis();
+        mJobCount = 0;
+        this.resetPeakHeapUsage();
         try {
             //PM-938 set the schema location. we cannot set it in constructor
             this.setSchemaLocations();
@@ -223,9 +242,82 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                     se.getMessage() , LogManager.ERROR_MESSAGE_LEVEL);
             }
         }
+        finally{
+            //the pooled strings are referred to by the workflow
+            mStringPool.clear();
+        }
+        this.logParseStatistics( new File( file ).length(),
+                                 System.currentTimeMillis() - start );
         mLogger.logEventCompletion();
     }
 
+    /**
+     * Logs the parse throughput, and the peak heap usage while parsing.
+     *
+     * @param bytes     the size of the DAX file in bytes.
+     * @param duration  the time taken to parse in milliseconds.
+     */
+    protected void logParseStatistics( long bytes, long duration ){
+        double seconds = Math.max( duration, 1 ) / 1000.0;
+        double mb = bytes / ( 1024.0 * 1024.0 );
+        DecimalFormat format = new DecimalFormat( "0.##" );
+        StringBuffer sb = new StringBuffer();
+        sb.append( "Parsed " ).append( mJobCount ).append( " jobs from " ).
+           append( format.format( mb ) ).append( " MB in " ).
+           append( format.format( seconds ) ).append( " seconds : " ).
+           append( format.format( mJobCount / seconds ) ).append( " jobs/s, " ).
+           append( format.format( mb / seconds ) ).append( " MB/s, peak heap " ).
+           append( this.getPeakHeapUsage() / ( 1024 * 1024 ) ).append( " MB" );
+        mLogger.log( sb.toString(), LogManager.INFO_MESSAGE_LEVEL );
+    }
+
+    /**
+     * Resets the peak usage of the heap memory pools.
+     */
+    private void resetPeakHeapUsage(){
+        for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ){
+            if( pool.getType() == MemoryType.HEAP ){
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the peak usage of the heap memory pools since they
+     * were last reset.
+     *
+     * @return the peak usage in bytes.
+     */
+    private long getPeakHeapUsage(){
+        long peak = 0;
+        for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ){
+            if( pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null ){
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Returns the pooled copy of a string, adding the string to the pool
+     * if it is not already there.
+     *
+     * @param value  the string
+     *
+     * @return the pooled string, or null if value is null.
+     */
+    protected String intern( String value ){
+        if( value == null ){
+            return null;
+        }
+        String pooled = mStringPool.get( value );
+        if( pooled == null ){
+            mStringPool.put( value, value );
+            pooled = value;
+        }
+        return pooled;
+    }
+
     /**
      * Returns the XML schema namespace that a document being parsed conforms
      * to.
@@ -337,13 +429,13 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         String value = (String) values.get( i );
 
                         if ( name.equals( "namespace" ) ) {
-                            j.setTXNamespace( value );
+                            j.setTXNamespace( this.intern( value ) );
                         }
                         else if( name.equals( "name" ) ){
-                            j.setTXName( value );
+                            j.setTXName( this.intern( value ) );
                         }
                         else if( name.equals( "version" ) ){
-                            j.setTXVersion( value );
+                            j.setTXVersion( this.intern( value ) );
                         }
                         else if( name.equals( "id"  ) ){
                             j.setLogicalID( value );
@@ -364,7 +456,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         this.complain( element, "file", file );
                         return null;
                     }
-                    PegasusFile pf = new PegasusFile( file );
+                    PegasusFile pf = new PegasusFile( this.intern( file ) );
                     pf.setLinkage( LINKAGE.INPUT );
                     
                     if( element.equals( "dag" ) ){
@@ -467,13 +559,13 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         String value = (String) values.get( i );
 
                         if ( name.equals( "namespace" ) ) {
-                            namespace = value;
+                            namespace = this.intern( value );
                         }
                         else if( name.equals( "name" ) ){
-                            execName = value;
+                            execName = this.intern( value );
                         }
                         else if( name.equals( "version" ) ){
-                            version = value;
+                            version = this.intern( value );
                         }
                         else if( name.equals( "arch" ) ){
                             arch = Executable.ARCH.valueOf( value.toLowerCase() );
@@ -519,7 +611,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
 
                         if ( name.equals( "name" ) ) {
                             //ft.setLFN( value );
-                            rl.setLFN( value );
+                            rl.setLFN( this.intern( value ) );
                         }
                         else if( name.equals( "link" ) ){
                             //ignore dont need to do anything
@@ -581,13 +673,13 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         String value = (String) values.get( i );
 
                         if ( name.equals( "namespace" ) ) {
-                            j.setTXNamespace( value );
+                            j.setTXNamespace( this.intern( value ) );
                         }
                         else if( name.equals( "name" ) ){
-                            j.setTXName( value );
+                            j.setTXName( this.intern( value ) );
                         }
                         else if( name.equals( "version" ) ){
-                            j.setTXVersion( value );
+                            j.setTXVersion( this.intern( value ) );
                         }
                         else if( name.equals( "id"  ) ){
                             j.setLogicalID( value );
@@ -615,11 +707,11 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         String name = (String) names.get( i );
                         String value = (String) values.get( i );
                         if ( name.equals( "namespace" ) ) {
-                            p.setProfileNamespace( value );
+                            p.setProfileNamespace( this.intern( value ) );
                             this.log( element, name, value );
                         }
                         else if ( name.equals( "key" ) ) {
-                            p.setProfileKey( value );
+                            p.setProfileKey( this.intern( value ) );
                  	    this.log( element, name, value );
                         }
                         else {
@@ -666,11 +758,11 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         String value = (String) values.get( i );
 
                         if ( name.equals( "namespace" ) ) {
-                            p.setProfileNamespace( value.toLowerCase() );
+                            p.setProfileNamespace( this.intern( value.toLowerCase() ) );
                  	    this.log( element, name, value );
                         }
                         else if ( name.equals( "key" ) ) {
-                            p.setProfileKey( value );
+                            p.setProfileKey( this.intern( value ) );
                  	    this.log( element, name, value );
                         }
                         else {
@@ -692,7 +784,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                  	    this.log( element, name, value );
                         }
                         else if ( name.equals( "site" ) ) {
-                            site = value;
+                            site = this.intern( value );
                             this.log( element, name, value );
                         }
                         else {
@@ -721,7 +813,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         String value = (String) values.get( i );
 
                         if ( name.equals( "name" ) ) {
-                            fileName = value;
+                            fileName = this.intern( value );
                  	    this.log( element, name, value );
                         }
                         else if ( name.equals( "link" ) ) {
@@ -749,13 +841,13 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         String value = (String) values.get( i );
 
                         if ( name.equals( "namespace" ) ) {
-                            namespace = value;
+                            namespace = this.intern( value );
                         }
                         else if( name.equals( "name" ) ){
-                            lname = value;
+                            lname = this.intern( value );
                         }
                         else if( name.equals( "version" ) ){
-                            version = value;
+                            version = this.intern( value );
                         }
                     }
                     return new CompoundTransformation( namespace, lname, version );
@@ -785,8 +877,8 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                             exectuable  	xs:boolean  	optional  	false
                          */
                         if ( name.equals( "name" ) ) {
-                            pf.setLFN( value );
-                            fName = value;
+                            fName = this.intern( value );
+                            pf.setLFN( fName );
                  	    this.log( element, name, value );
                         }
                         else if ( name.equals( "link" ) ) {
@@ -820,11 +912,11 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                             this.log( element, name, value );
                         }
                         else if ( name.equals( "namespace" ) ) {
-                            fNamespace = value;
+                            fNamespace = this.intern( value );
                             this.log( element, name, value );
                         }
                         else if ( name.equals( "version" ) ) {
-                            fVersion = value;
+                            fVersion = this.intern( value );
                             this.log( element, name, value );
                         }
                         else if ( name.equals( "executable" ) ) {
@@ -846,7 +938,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
 
                     //if executable then update lfn to combo of namespace,name,version
                     if( pf.getType() == PegasusFile.EXECUTABLE_FILE ){
-                        pf.setLFN( Separator.combine(fNamespace, fName, fVersion) );
+                        pf.setLFN( this.intern( Separator.combine(fNamespace, fName, fVersion) ) );
                     }
                     return pf;
 
@@ -924,6 +1016,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
 
                         //call the callback function
                         this.mCallback.cbJob(dagJob);
+                        mJobCount++;
                         return true;
                     }
                     else if( child instanceof DAXJob ){
@@ -933,6 +1026,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                         
                         //call the callback function
                         this.mCallback.cbJob( daxJob );
+                        mJobCount++;
                         return true;
                     }
                 }
@@ -1021,6 +1115,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                 if( child instanceof Job  && parent instanceof Map ){
                     //callback for Job
                     this.mCallback.cbJob( (Job)child );
+                    mJobCount++;
                     return true;
                 }
                 return false;
@@ -1068,8 +1163,10 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
                 }
                 else if ( child instanceof Profile ){
                     Profile p = ( Profile ) child;
-                    p.setProfileValue( mTextContent.toString().trim() );
-                    mLogger.log( "Set Profile Value to " + p.getProfileValue(), LogManager.TRACE_MESSAGE_LEVEL );
+                    p.setProfileValue( this.intern( mTextContent.toString().trim() ) );
+                    if( this.traceEnabled() ){
+                        mLogger.log( "Set Profile Value to " + p.getProfileValue(), LogManager.TRACE_MESSAGE_LEVEL );
+                    }
                     if ( parent instanceof ReplicaLocation ) {
                         //profile appears in file element
                         unSupportedNestingOfElements( "file", "profile" );
@@ -1343,7 +1440,7 @@ public class DAXParser3 extends StackBasedXMLParser implements DAXParser {
          *
          */
         public String ignoreWhitespace(String str) {
-            return ignoreWhitespace(str, mProps.preserveParserLineBreaks());
+            return ignoreWhitespace(str, mProps.getSnapshot().preserveParserLineBreaks());
         }
 
         /**
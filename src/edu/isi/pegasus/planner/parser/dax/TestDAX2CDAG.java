@@ -0,0 +1,163 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.parser.dax;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.dax.ADAG;
+import edu.isi.pegasus.planner.dax.File;
+import edu.isi.pegasus.planner.dax.Job;
+import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.Parser;
+
+import java.io.IOException;
+
+/**
+ * Measures the throughput of parsing large synthetic DAXes into an ADag, and
+ * the heap retained by the ADag that is constructed. Each job in the
+ * synthetic workflow reads the output of a job in the previous level, and a
+ * configuration file shared by all the jobs.
+ *
+ * @author Karan Vahi
+ */
+public class TestDAX2CDAG {
+
+    /**
+     * The width of each level in the synthetic workflow.
+     */
+    public static final int WIDTH = 100;
+
+    /**
+     * Writes out a synthetic DAX with the number of jobs passed.
+     *
+     * @param jobs  the number of jobs
+     *
+     * @return the DAX file
+     */
+    public static java.io.File createDAX( int jobs ) throws IOException{
+        java.io.File dax = java.io.File.createTempFile( "synthetic", ".dax" );
+        dax.deleteOnExit();
+
+        ADAG adag = new ADAG( "synthetic" );
+        File config = new File( "config.txt" );
+        for( int i = 0; i < jobs; i++ ){
+            Job j = new Job( "ID" + i, "pegasus", "process", "4.0" );
+            File output = new File( "f.ID" + i );
+            j.addArgument( "-c " ).addArgument( config ).addArgument( " -o " ).addArgument( output );
+            j.uses( config, File.LINK.INPUT );
+            j.uses( output, File.LINK.OUTPUT );
+            j.addProfile( "condor", "request_memory", "1024" );
+            j.addProfile( "pegasus", "runtime", "60" );
+            if( i >= WIDTH ){
+                String parent = "ID" + ( i - WIDTH );
+                File input = new File( "f." + parent );
+                j.addArgument( " -i " ).addArgument( input );
+                j.uses( input, File.LINK.INPUT );
+                adag.addJob( j );
+                adag.addDependency( parent, "ID" + i );
+            }
+            else{
+                adag.addJob( j );
+            }
+        }
+        adag.writeToFile( dax.getAbsolutePath() );
+        return dax;
+    }
+
+    /**
+     * Parses the DAX into an ADag.
+     *
+     * @param bag   the bag of initialization objects
+     * @param dax   the DAX file
+     *
+     * @return the ADag
+     */
+    public static ADag parse( PegasusBag bag, String dax ){
+        Parser p = (Parser)DAXParserFactory.loadDAXParser( bag, "DAX2CDAG", dax );
+        Callback cb = ((DAXParser)p).getDAXCallback();
+        p.startParser( dax );
+        return (ADag)cb.getConstructedObject();
+    }
+
+    /**
+     * Returns the used heap after requesting garbage collection.
+     *
+     * @return used heap in bytes
+     */
+    public static long usedHeap(){
+        Runtime r = Runtime.getRuntime();
+        for( int i = 0; i < 4; i++ ){
+            System.gc();
+            try{
+                Thread.sleep( 50 );
+            }
+            catch( InterruptedException e ){
+            }
+        }
+        return r.totalMemory() - r.freeMemory();
+    }
+
+    /**
+     * Runs the benchmark for the number of jobs passed as arguments. By
+     * default the benchmark is run for 10k, 100k and 500k jobs.
+     *
+     * @param args  the number of jobs in the synthetic workflows.
+     */
+    public static void main( String[] args ) throws IOException{
+        int[] sizes = new int[]{ 10000, 100000, 500000 };
+        if( args.length > 0 ){
+            sizes = new int[ args.length ];
+            for( int i = 0; i < args.length; i++ ){
+                sizes[i] = Integer.parseInt( args[i] );
+            }
+        }
+
+        PegasusProperties properties = PegasusProperties.nonSingletonInstance();
+        LogManager logger = LogManagerFactory.loadSingletonInstance( properties );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, properties );
+
+        //warm up
+        parse( bag, createDAX( 10000 ).getAbsolutePath() );
+
+        System.out.println( "********* Benchmark  **********" );
+        for( int size : sizes ){
+            java.io.File dax = createDAX( size );
+            double mb = dax.length() / ( 1024.0 * 1024.0 );
+
+            long before = usedHeap();
+            long start = System.currentTimeMillis();
+            ADag workflow = parse( bag, dax.getAbsolutePath() );
+            double seconds = Math.max( System.currentTimeMillis() - start, 1 ) / 1000.0;
+            long heap = usedHeap() - before;
+
+            System.out.println( "jobs=" + workflow.size() +
+                                " dax=" + (long)mb + "MB" +
+                                " time=" + seconds + "s" +
+                                " throughput=" + (long)( size / seconds ) + " jobs/s " +
+                                (long)( mb / seconds ) + " MB/s" +
+                                " retained-heap=" + ( heap / ( 1024 * 1024 ) ) + "MB" );
+            workflow = null;
+            dax.delete();
+        }
+        System.out.println( "****************************" );
+    }
+}
@@ -318,7 +318,7 @@ public class Horizontal extends BFS{
         //by the user specified
         try{
             //ceiling is (x + y -1)/y
-            bundle = mProps.getHorizontalPartitionerBundleValue(txName);
+            bundle = mProps.getSnapshot().getHorizontalPartitionerBundleValue(txName);
             if (bundle != null) {
                 int b = Integer.parseInt(bundle);
                 result[0] = size / b;
@@ -328,7 +328,7 @@ public class Horizontal extends BFS{
                 //return (size + b -1)/b;
             }
 
-            factor = mProps.getHorizontalPartitionerCollapseValue(txName);
+            factor = mProps.getSnapshot().getHorizontalPartitionerCollapseValue(txName);
             //return the appropriate value
             result[0] = (factor == null) ?
                 size : //then collapse factor is same as size
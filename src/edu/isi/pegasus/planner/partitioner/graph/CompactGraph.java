@@ -0,0 +1,1165 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An implementation of the Graph that stores the edges as sorted arrays of
+ * integer node indices, instead of a HashSet of parents and children in
+ * each <code>GraphNode</code>. The node ids are interned in an open addressing
+ * table that maps an id to the index of the node.
+ *
+ * Nodes added to this graph hand over the storage of their edges to the graph.
+ * The parents and children returned by the nodes are live views backed by the
+ * graph. A node that is linked to a node in the graph before being added
+ * to it, is tracked by the graph in a pending state till it is added.
+ *
+ * The indices of removed nodes are never reused. A node can belong to only one
+ * compact graph at a time.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class CompactGraph implements Graph{
+
+    /**
+     * The state of an index that is pending i.e the node is referred to by an
+     * edge, but has not been added to the graph.
+     */
+    private static final byte PENDING_STATE = 1;
+
+    /**
+     * The state of an index whose node is in the graph.
+     */
+    private static final byte PRESENT_STATE = 2;
+
+    /**
+     * The state of an index whose node has been removed from the graph.
+     */
+    private static final byte REMOVED_STATE = 3;
+
+    /**
+     * The shared empty adjacency array.
+     */
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The nodes indexed by their index.
+     */
+    private GraphNode[] mNodes;
+
+    /**
+     * The state of each index.
+     */
+    private byte[] mState;
+
+    /**
+     * The sorted parent indices of each node.
+     */
+    private int[][] mParents;
+
+    /**
+     * The number of parents of each node.
+     */
+    private int[] mParentCount;
+
+    /**
+     * The sorted children indices of each node.
+     */
+    private int[][] mChildren;
+
+    /**
+     * The number of children of each node.
+     */
+    private int[] mChildCount;
+
+    /**
+     * The number of indices allocated.
+     */
+    private int mSlots;
+
+    /**
+     * The number of nodes in the graph.
+     */
+    private int mSize;
+
+    /**
+     * The keys of the open addressing id table.
+     */
+    private String[] mKeys;
+
+    /**
+     * The index of the node for each key in the id table.
+     */
+    private int[] mValues;
+
+    /**
+     * The number of keys in the id table.
+     */
+    private int mKeyCount;
+
+    /**
+     * The default constructor.
+     */
+    public CompactGraph(){
+        this( DEFAULT_CAPACITY );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param capacity  the expected number of nodes in the graph.
+     */
+    public CompactGraph( int capacity ){
+        capacity     = Math.max( capacity, DEFAULT_CAPACITY );
+        mNodes       = new GraphNode[ capacity ];
+        mState       = new byte[ capacity ];
+        mParents     = new int[ capacity ][];
+        mParentCount = new int[ capacity ];
+        mChildren    = new int[ capacity ][];
+        mChildCount  = new int[ capacity ];
+        mSlots       = 0;
+        mSize        = 0;
+
+        int tableSize = Integer.highestOneBit( capacity * 2 - 1 ) << 1;
+        mKeys     = new String[ tableSize ];
+        mValues   = new int[ tableSize ];
+        mKeyCount = 0;
+    }
+
+    /**
+     * Adds a node to the Graph. It overwrites an already existing node with the
+     * same ID.
+     *
+     * @param node  the node to be added to the Graph.
+     */
+    public void addNode( GraphNode node ){
+        int index = this.adopt( node, true );
+        if( mState[index] != PRESENT_STATE ){
+            mState[index] = PRESENT_STATE;
+            mSize++;
+        }
+    }
+
+    /**
+     * Adds an edge between two already existing nodes in the graph.
+     *
+     * @param parent   the parent node ID.
+     * @param child    the child node ID.
+     */
+    public void addEdge( String parent, String child ){
+        //sanity check
+        if( parent.equals( child )){
+            throw new IllegalArgumentException( "Invalid Edge Specification. An Edge specified from a node to itself  for " + parent );
+        }
+
+        int p = this.lookup( parent );
+        int c = this.lookup( child );
+        String notExist = ( c == -1 || mState[c] != PRESENT_STATE )? child :
+                          ( p == -1 || mState[p] != PRESENT_STATE )? parent : null;
+        if ( notExist != null ) {
+            /* should be replaced by Graph Exception */
+            throw new RuntimeException( "The node with identifier doesnt exist " + notExist );
+        }
+
+        this.link( p, c );
+    }
+
+    /**
+     * Adds an edge between two already existing nodes in the graph.
+     *
+     * @param parent   the parent node .
+     * @param child    the child node .
+     */
+    public void addEdge( GraphNode parent, GraphNode child ){
+        this.link( this.indexOf( parent ), this.indexOf( child ) );
+    }
+
+    /**
+     * A convenience method that allows for bulk addition of edges between
+     * already existing nodes in the graph.
+     *
+     * @param child   the child node ID
+     * @param parents list of parent identifiers as <code>String</code>.
+     */
+    public void addEdges( String child, List<String> parents ){
+        //sanity check
+        if( parents.contains( child )){
+            throw new IllegalArgumentException( "Invalid Edge Specification. Parents " + parents + " include the child " + child );
+        }
+
+        int c = this.lookup( child );
+        if( c == -1 || mState[c] != PRESENT_STATE ) {
+            /* should be replaced by Graph Exception */
+            throw new RuntimeException( "The node with identifier doesnt exist " + child );
+        }
+
+        int[] parentIndices = new int[ parents.size() ];
+        int i = 0;
+        for( String parentID : parents ){
+            int p = this.lookup( parentID );
+            if( p == -1 || mState[p] != PRESENT_STATE ) {
+                /* should be replaced by Graph Exception */
+                throw new RuntimeException( "The node with identifier doesnt exist " + parentID );
+            }
+            parentIndices[ i++ ] = p;
+        }
+
+        //the parents of the child are overwritten
+        mParentCount[c] = 0;
+        mParents[c] = EMPTY;
+        for( int p : parentIndices ){
+            this.link( p, c );
+        }
+    }
+
+    /**
+     * Resets all the dependencies in the Graph, while preserving the nodes.
+     * The resulting Graph is a graph of independent nodes.
+     */
+    public void resetEdges(){
+        for( int i = 0; i < mSlots; i++ ){
+            this.resetEdges( i );
+        }
+    }
+
+    /**
+     * Returns the node matching the id passed.
+     *
+     * @param identifier  the id of the node.
+     *
+     * @return the node matching the ID else null.
+     */
+    public GraphNode getNode( String identifier ){
+        int index = this.lookup( identifier );
+        return ( index == -1 || mState[index] != PRESENT_STATE ) ? null : mNodes[index];
+    }
+
+    /**
+     * Adds a single root node to the Graph. All the exisitng roots of the
+     * Graph become children of the root.
+     *
+     * @param root  the <code>GraphNode</code> to be added as a root.
+     *
+     * @throws RuntimeException if a node with the same id already exists.
+     */
+    public void addRoot( GraphNode root ){
+        //sanity check
+        if( this.getNode( root.getID() ) != null ){
+            throw new RuntimeException( "Node with ID already exists:"  + root.getID() );
+        }
+
+        List<GraphNode> existingRoots = getRoots();
+        this.addNode( root );
+        int r = this.indexOf( root );
+        for( GraphNode existing : existingRoots ){
+            this.link( r, this.indexOf( existing ) );
+        }
+    }
+
+    /**
+     * Removes a node from the Graph. The parents of the node become the
+     * parents of the children of the node.
+     *
+     * @param identifier   the id of the node to be removed.
+     *
+     * @return boolean indicating whether the node was removed or not.
+     */
+    public boolean remove( String identifier ){
+        int index = this.lookup( identifier );
+        if( index == -1 || mState[index] != PRESENT_STATE ){
+            //node does not exist only.
+            return false;
+        }
+
+        GraphNode removalNode = mNodes[ index ];
+        int[] parents  = Arrays.copyOf( mParents[index], mParentCount[index] );
+        int[] children = Arrays.copyOf( mChildren[index], mChildCount[index] );
+
+        //the removed node retains it's edges as sets
+        Set<GraphNode> parentSet = new HashSet( parents.length );
+        for( int p : parents ){
+            parentSet.add( mNodes[p] );
+        }
+        Set<GraphNode> childSet = new HashSet( children.length );
+        for( int c : children ){
+            childSet.add( mNodes[c] );
+        }
+
+        for( int c : children ){
+            this.removeIndex( c, index, false );
+        }
+        for( int p : parents ){
+            //for the parent the removal node is no longer a parent
+            this.removeIndex( p, index, true );
+
+            //for each parent make the parent it's parent instead of removed node
+            for( int c : children ){
+                this.insertIndex( c, p, false );
+                this.insertIndex( p, c, true );
+            }
+        }
+
+        mParents[index]  = EMPTY;
+        mParentCount[index] = 0;
+        mChildren[index] = EMPTY;
+        mChildCount[index]  = 0;
+        mState[index] = REMOVED_STATE;
+        this.removeKey( identifier );
+        mSize--;
+
+        //the node object is retained, as stale references to the index
+        //may still exist in one directional edges
+        removalNode.setCompactGraph( null, -1, parentSet, childSet );
+        return true;
+    }
+
+    /**
+     * Returns an iterator for the nodes in the Graph. The nodes are returned
+     * in the order they were first added to the graph.
+     *
+     * @return Iterator
+     */
+    public Iterator<GraphNode> nodeIterator(){
+        return new NodeIterator();
+    }
+
+    /**
+     * Returns an iterator that traverses through the graph using a graph
+     * traversal algorithm. At any one time, only one iterator can
+     * iterate through the graph.
+     *
+     * @return Iterator through the nodes of the graph.
+     */
+    public Iterator<GraphNode> iterator(){
+        return new LevelIterator( false );
+    }
+
+    /**
+     * Returns an iterator for the graph that traverses in topological sort
+     * order.
+     *
+     * @return Iterator through the nodes of the graph.
+     */
+    public Iterator<GraphNode> topologicalSortIterator(){
+        return new TopologicalSortIterator( this );
+    }
+
+    /**
+     * Returns an iterator that traverses the graph bottom up from the leaves.
+     * At any one time, only one iterator can
+     * iterate through the graph.
+     *
+     * @return Iterator through the nodes of the graph.
+     */
+    public Iterator<GraphNode> bottomUpIterator(){
+        return new LevelIterator( true );
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return the number of nodes
+     */
+    public int size(){
+        return mSize;
+    }
+
+    /**
+     * Returns the root nodes of the Graph.
+     *
+     * @return  a list containing <code>GraphNode</code> corressponding to the
+     *          root nodes.
+     */
+    public List<GraphNode> getRoots(){
+        List<GraphNode> rootNodes = new LinkedList();
+        for( int i = 0; i < mSlots; i++ ){
+            if( mState[i] == PRESENT_STATE && mParentCount[i] == 0 ){
+                rootNodes.add( mNodes[i] );
+            }
+        }
+        return rootNodes;
+    }
+
+    /**
+     * Returns the leaf nodes of the Graph.
+     *
+     * @return  a list containing <code>GraphNode</code> corressponding to the
+     *          leaf nodes.
+     */
+    public List<GraphNode> getLeaves(){
+        List<GraphNode> leaves = new LinkedList();
+        for( int i = 0; i < mSlots; i++ ){
+            if( mState[i] == PRESENT_STATE && mChildCount[i] == 0 ){
+                leaves.add( mNodes[i] );
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * Returns a boolean if there are no nodes in the graph.
+     *
+     * @return boolean
+     */
+    public boolean isEmpty(){
+        return mSize == 0;
+    }
+
+    /**
+     * Returns the number of edges in the graph.
+     *
+     * @return the number of edges
+     */
+    public long edgeCount(){
+        long edges = 0;
+        for( int i = 0; i < mSlots; i++ ){
+            if( mState[i] == PRESENT_STATE ){
+                edges += mChildCount[i];
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * The textual representation of the graph.
+     *
+     * @return textual description.
+     */
+    public String toString() {
+        String newLine = System.getProperty( "line.separator", "\r\n" );
+        String indent = "\t";
+        StringBuffer sb = new StringBuffer( 32 );
+
+        for( Iterator<GraphNode> it = nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            sb.append( newLine ).append( indent ).append( "Job ->" ).append( node.getID() );
+
+            //write out the node children
+            sb.append(" Children's {");
+            for( GraphNode child : node.getChildren() ){
+                sb.append( child.getID() ).append(',');
+            }
+            sb.append("}");
+
+            //write out the node's parents
+            sb.append(" Parents {");
+            for( GraphNode parent : node.getParents() ){
+                sb.append( parent.getID() ).append(',');
+            }
+            sb.append("}");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a copy of the object.
+     *
+     * @return clone of the object.
+     */
+    public Object clone(){
+        return new java.lang.CloneNotSupportedException(
+            "Clone() not implemented in CompactGraph");
+    }
+
+    //the edge operations that are delegated to by the GraphNode
+
+    /**
+     * Returns a live view of the parents of a node.
+     *
+     * @param index  the index of the node
+     *
+     * @return the parents
+     */
+    Collection<GraphNode> getParents( int index ){
+        return new EdgeView( index, false );
+    }
+
+    /**
+     * Returns a live view of the children of a node.
+     *
+     * @param index  the index of the node
+     *
+     * @return the children
+     */
+    Collection<GraphNode> getChildren( int index ){
+        return new EdgeView( index, true );
+    }
+
+    /**
+     * Adds a child to the children of a node. The parents of the child
+     * are not updated.
+     *
+     * @param index  the index of the node
+     * @param child  the child
+     */
+    void addChild( int index, GraphNode child ){
+        this.insertIndex( index, this.indexOf( child ), true );
+    }
+
+    /**
+     * Adds a parent to the parents of a node. The children of the parent
+     * are not updated.
+     *
+     * @param index   the index of the node
+     * @param parent  the parent
+     */
+    void addParent( int index, GraphNode parent ){
+        this.insertIndex( index, this.indexOf( parent ), false );
+    }
+
+    /**
+     * Removes a child from the children of a node.
+     *
+     * @param index  the index of the node
+     * @param child  the child
+     */
+    void removeChild( int index, GraphNode child ){
+        int c = this.find( child );
+        if( c != -1 ){
+            this.removeIndex( index, c, true );
+        }
+    }
+
+    /**
+     * Removes a parent from the parents of a node.
+     *
+     * @param index   the index of the node
+     * @param parent  the parent
+     */
+    void removeParent( int index, GraphNode parent ){
+        int p = this.find( parent );
+        if( p != -1 ){
+            this.removeIndex( index, p, false );
+        }
+    }
+
+    /**
+     * Overwrites the parents of a node.
+     *
+     * @param index    the index of the node
+     * @param parents  the parents
+     */
+    void setParents( int index, Collection<GraphNode> parents ){
+        int[] indices = this.indicesOf( parents );
+        mParents[index] = EMPTY;
+        mParentCount[index] = 0;
+        for( int p : indices ){
+            this.insertIndex( index, p, false );
+        }
+    }
+
+    /**
+     * Overwrites the children of a node.
+     *
+     * @param index     the index of the node
+     * @param children  the children
+     */
+    void setChildren( int index, Collection<GraphNode> children ){
+        int[] indices = this.indicesOf( children );
+        mChildren[index] = EMPTY;
+        mChildCount[index] = 0;
+        for( int c : indices ){
+            this.insertIndex( index, c, true );
+        }
+    }
+
+    /**
+     * Resets the edges of a node. The edges of the neighbours are not updated.
+     *
+     * @param index  the index of the node
+     */
+    void resetEdges( int index ){
+        mParents[index]     = EMPTY;
+        mParentCount[index] = 0;
+        mChildren[index]    = EMPTY;
+        mChildCount[index]  = 0;
+    }
+
+    /**
+     * Returns if all the parents of a node have the color specified.
+     *
+     * @param index  the index of the node
+     * @param color  the color
+     *
+     * @return boolean
+     */
+    boolean parentsColored( int index, int color ){
+        int[] parents = mParents[index];
+        for( int i = 0; i < mParentCount[index]; i++ ){
+            if( !mNodes[ parents[i] ].isColor( color ) ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns if all the children of a node have the color specified.
+     *
+     * @param index  the index of the node
+     * @param color  the color
+     *
+     * @return boolean
+     */
+    boolean childrenColored( int index, int color ){
+        int[] children = mChildren[index];
+        for( int i = 0; i < mChildCount[index]; i++ ){
+            if( !mNodes[ children[i] ].isColor( color ) ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //internal helpers
+
+    /**
+     * Adds an edge between two indices.
+     *
+     * @param parent  the parent index
+     * @param child   the child index
+     */
+    private void link( int parent, int child ){
+        this.insertIndex( child, parent, false );
+        this.insertIndex( parent, child, true );
+    }
+
+    /**
+     * Inserts a value into the sorted children or parents array of a node, if
+     * it does not exist already.
+     *
+     * @param index     the index of the node
+     * @param value     the index to insert
+     * @param children  whether to insert into children or parents
+     *
+     * @return true if inserted
+     */
+    private boolean insertIndex( int index, int value, boolean children ){
+        int[] array = children ? mChildren[index] : mParents[index];
+        int count   = children ? mChildCount[index] : mParentCount[index];
+
+        int position;
+        if( count == 0 || array[ count - 1 ] < value ){
+            //common case of edges added in order of the nodes
+            position = count;
+        }
+        else{
+            position = Arrays.binarySearch( array, 0, count, value );
+            if( position >= 0 ){
+                return false;
+            }
+            position = -position - 1;
+        }
+
+        if( count == array.length ){
+            array = Arrays.copyOf( array, Math.max( 2, count + ( count >> 1 ) + 1 ) );
+        }
+        System.arraycopy( array, position, array, position + 1, count - position );
+        array[ position ] = value;
+
+        if( children ){
+            mChildren[index] = array;
+            mChildCount[index] = count + 1;
+        }
+        else{
+            mParents[index] = array;
+            mParentCount[index] = count + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Removes a value from the sorted children or parents array of a node.
+     *
+     * @param index     the index of the node
+     * @param value     the index to remove
+     * @param children  whether to remove from children or parents
+     *
+     * @return true if removed
+     */
+    private boolean removeIndex( int index, int value, boolean children ){
+        int[] array = children ? mChildren[index] : mParents[index];
+        int count   = children ? mChildCount[index] : mParentCount[index];
+
+        int position = Arrays.binarySearch( array, 0, count, value );
+        if( position < 0 ){
+            return false;
+        }
+        System.arraycopy( array, position + 1, array, position, count - position - 1 );
+        if( children ){
+            mChildCount[index] = count - 1;
+        }
+        else{
+            mParentCount[index] = count - 1;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a node contains a value in it's children or parents.
+     *
+     * @param index     the index of the node
+     * @param value     the index to search for
+     * @param children  whether to search in children or parents
+     *
+     * @return boolean
+     */
+    private boolean containsIndex( int index, int value, boolean children ){
+        int[] array = children ? mChildren[index] : mParents[index];
+        int count   = children ? mChildCount[index] : mParentCount[index];
+        return Arrays.binarySearch( array, 0, count, value ) >= 0;
+    }
+
+    /**
+     * Returns the index of a node that is linked to a node in this graph,
+     * tracking it as pending if it is not known to the graph.
+     *
+     * @param node  the node
+     *
+     * @return the index
+     */
+    private int indexOf( GraphNode node ){
+        CompactGraph graph = node.getCompactGraph();
+        if( graph == this ){
+            return node.getCompactIndex();
+        }
+        int index = this.lookup( node.getID() );
+        if( index != -1 ){
+            return index;
+        }
+        return this.adopt( node, false );
+    }
+
+    /**
+     * Returns the indices for a collection of nodes.
+     *
+     * @param nodes  the nodes
+     *
+     * @return the indices
+     */
+    private int[] indicesOf( Collection<GraphNode> nodes ){
+        int[] indices = new int[ nodes.size() ];
+        int i = 0;
+        for( GraphNode node : nodes ){
+            indices[ i++ ] = this.indexOf( node );
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the index of a node without tracking it.
+     *
+     * @param node the node
+     *
+     * @return the index else -1
+     */
+    private int find( Object o ){
+        if( !( o instanceof GraphNode ) ){
+            return -1;
+        }
+        GraphNode node = (GraphNode)o;
+        if( node.getCompactGraph() == this ){
+            return node.getCompactIndex();
+        }
+        return this.lookup( node.getID() );
+    }
+
+    /**
+     * Hands over the edges of a node to this graph.
+     *
+     * @param node     the node
+     * @param replace  whether to replace an existing node with the same id
+     *
+     * @return the index of the node
+     */
+    private int adopt( GraphNode node, boolean replace ){
+        CompactGraph graph = node.getCompactGraph();
+        if( graph == this ){
+            return node.getCompactIndex();
+        }
+        if( graph != null ){
+            throw new RuntimeException( "The node " + node.getID() + " already belongs to another graph" );
+        }
+
+        //the edges the node has accumulated before being added
+        Collection<GraphNode> parents  = node.getParents();
+        Collection<GraphNode> children = node.getChildren();
+
+        int index = this.lookup( node.getID() );
+        if( index == -1 ){
+            index = this.allocate( node );
+        }
+        else if( mNodes[index] != node ){
+            if( !replace ){
+                return index;
+            }
+            GraphNode existing = mNodes[index];
+            mNodes[index] = node;
+            existing.setCompactGraph( null, -1, new HashSet( this.getParents( index ) ),
+                                      new HashSet( this.getChildren( index ) ) );
+        }
+        node.setCompactGraph( this, index, null, null );
+
+        if( parents != null ){
+            for( GraphNode parent : parents ){
+                this.insertIndex( index, this.indexOf( parent ), false );
+            }
+        }
+        if( children != null ){
+            for( GraphNode child : children ){
+                this.insertIndex( index, this.indexOf( child ), true );
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Allocates a new index for a node in the pending state.
+     *
+     * @param node  the node
+     *
+     * @return the index
+     */
+    private int allocate( GraphNode node ){
+        if( mSlots == mNodes.length ){
+            int capacity = mNodes.length + ( mNodes.length >> 1 ) + 1;
+            mNodes       = Arrays.copyOf( mNodes, capacity );
+            mState       = Arrays.copyOf( mState, capacity );
+            mParents     = Arrays.copyOf( mParents, capacity );
+            mParentCount = Arrays.copyOf( mParentCount, capacity );
+            mChildren    = Arrays.copyOf( mChildren, capacity );
+            mChildCount  = Arrays.copyOf( mChildCount, capacity );
+        }
+        int index = mSlots++;
+        mNodes[index]    = node;
+        mState[index]    = PENDING_STATE;
+        mParents[index]  = EMPTY;
+        mChildren[index] = EMPTY;
+        this.putKey( node.getID(), index );
+        return index;
+    }
+
+    /**
+     * Returns the index for an id from the id table.
+     *
+     * @param id  the id
+     *
+     * @return the index, else -1 if not found
+     */
+    private int lookup( String id ){
+        int mask = mKeys.length - 1;
+        for( int slot = mix( id.hashCode() ) & mask; mKeys[slot] != null; slot = ( slot + 1 ) & mask ){
+            if( mKeys[slot].equals( id ) ){
+                return mValues[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Puts an id into the id table.
+     *
+     * @param id     the id
+     * @param index  the index of the node
+     */
+    private void putKey( String id, int index ){
+        if( ( mKeyCount + 1 ) * 2 > mKeys.length ){
+            String[] keys = mKeys;
+            int[] values  = mValues;
+            mKeys   = new String[ keys.length * 2 ];
+            mValues = new int[ keys.length * 2 ];
+            mKeyCount = 0;
+            for( int i = 0; i < keys.length; i++ ){
+                if( keys[i] != null ){
+                    this.putKey( keys[i], values[i] );
+                }
+            }
+        }
+        int mask = mKeys.length - 1;
+        int slot = mix( id.hashCode() ) & mask;
+        while( mKeys[slot] != null ){
+            if( mKeys[slot].equals( id ) ){
+                mValues[slot] = index;
+                return;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        mKeys[slot]   = id;
+        mValues[slot] = index;
+        mKeyCount++;
+    }
+
+    /**
+     * Removes an id from the id table, shifting back the entries in the
+     * probe sequence.
+     *
+     * @param id  the id
+     */
+    private void removeKey( String id ){
+        int mask = mKeys.length - 1;
+        int slot = mix( id.hashCode() ) & mask;
+        while( mKeys[slot] != null && !mKeys[slot].equals( id ) ){
+            slot = ( slot + 1 ) & mask;
+        }
+        if( mKeys[slot] == null ){
+            return;
+        }
+        mKeys[slot] = null;
+        mKeyCount--;
+
+        //reinsert the entries that follow in the cluster
+        for( int next = ( slot + 1 ) & mask; mKeys[next] != null; next = ( next + 1 ) & mask ){
+            String key = mKeys[next];
+            int value  = mValues[next];
+            mKeys[next] = null;
+            mKeyCount--;
+            this.putKey( key, value );
+        }
+    }
+
+    /**
+     * Spreads the bits of a hashcode.
+     *
+     * @param h  the hashcode
+     *
+     * @return the mixed hashcode
+     */
+    private static int mix( int h ){
+        h *= 0x9E3779B9;
+        return h ^ ( h >>> 16 );
+    }
+
+    /**
+     * A live view of the parents or children of a node.
+     */
+    private class EdgeView extends AbstractCollection<GraphNode>{
+
+        private final int mIndex;
+
+        private final boolean mChildrenView;
+
+        public EdgeView( int index, boolean children ){
+            mIndex = index;
+            mChildrenView = children;
+        }
+
+        public int size(){
+            return mChildrenView ? mChildCount[mIndex] : mParentCount[mIndex];
+        }
+
+        public boolean isEmpty(){
+            return this.size() == 0;
+        }
+
+        public boolean contains( Object o ){
+            int value = find( o );
+            return value != -1 && containsIndex( mIndex, value, mChildrenView );
+        }
+
+        public boolean add( GraphNode node ){
+            return insertIndex( mIndex, indexOf( node ), mChildrenView );
+        }
+
+        public boolean remove( Object o ){
+            int value = find( o );
+            return value != -1 && removeIndex( mIndex, value, mChildrenView );
+        }
+
+        public void clear(){
+            if( mChildrenView ){
+                mChildren[mIndex] = EMPTY;
+                mChildCount[mIndex] = 0;
+            }
+            else{
+                mParents[mIndex] = EMPTY;
+                mParentCount[mIndex] = 0;
+            }
+        }
+
+        public Iterator<GraphNode> iterator(){
+            return new Iterator<GraphNode>(){
+                private int mPosition = 0;
+
+                public boolean hasNext(){
+                    return mPosition < size();
+                }
+
+                public GraphNode next(){
+                    if( !hasNext() ){
+                        throw new NoSuchElementException();
+                    }
+                    int[] array = mChildrenView ? mChildren[mIndex] : mParents[mIndex];
+                    return mNodes[ array[ mPosition++ ] ];
+                }
+
+                public void remove(){
+                    if( mPosition == 0 ){
+                        throw new IllegalStateException();
+                    }
+                    int[] array = mChildrenView ? mChildren[mIndex] : mParents[mIndex];
+                    removeIndex( mIndex, array[ --mPosition ], mChildrenView );
+                }
+            };
+        }
+    }
+
+    /**
+     * Iterates through the nodes in the graph in index order.
+     */
+    private class NodeIterator implements Iterator<GraphNode>{
+
+        private int mNext;
+
+        public NodeIterator(){
+            mNext = advance( 0 );
+        }
+
+        public boolean hasNext(){
+            return mNext < mSlots;
+        }
+
+        public GraphNode next(){
+            if( !hasNext() ){
+                throw new NoSuchElementException();
+            }
+            GraphNode node = mNodes[ mNext ];
+            mNext = advance( mNext + 1 );
+            return node;
+        }
+
+        public void remove(){
+            throw new UnsupportedOperationException( "Method remove() not supported" );
+        }
+
+        private int advance( int index ){
+            while( index < mSlots && mState[index] != PRESENT_STATE ){
+                index++;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * An iterator that traverses the graph level by level, either top down
+     * from the roots or bottom up from the leaves. The traversal of the graph
+     * is a modified BFS. A node is added to the queue only when all it's
+     * parents (children for bottom up) have been traversed.
+     */
+    private class LevelIterator implements Iterator<GraphNode>{
+
+        /**
+         * The queue of node indices as a ring buffer.
+         */
+        private int[] mQueue;
+
+        private int mHead;
+
+        private int mCount;
+
+        private final boolean mBottomUp;
+
+        public LevelIterator( boolean bottomUp ){
+            mBottomUp = bottomUp;
+            mQueue = new int[ Math.max( 16, mSize ) ];
+            mHead  = 0;
+            mCount = 0;
+
+            //sanity intialization of all nodes depth
+            for( int i = 0; i < mSlots; i++ ){
+                GraphNode node = mNodes[i];
+                node.setDepth( -1 );
+                node.setColor( GraphNode.WHITE_COLOR );
+            }
+
+            //intialize all the root nodes depth to 0
+            //and put them in the queue
+            for( int i = 0; i < mSlots; i++ ){
+                if( mState[i] == PRESENT_STATE &&
+                    ( mBottomUp ? mChildCount[i] : mParentCount[i] ) == 0 ){
+                    mNodes[i].setDepth( 0 );
+                    this.enqueue( i );
+                }
+            }
+        }
+
+        public boolean hasNext(){
+            return mCount > 0;
+        }
+
+        public GraphNode next(){
+            if( !hasNext() ){
+                throw new NoSuchElementException();
+            }
+            int index = mQueue[ mHead ];
+            mHead = ( mHead + 1 ) % mQueue.length;
+            mCount--;
+
+            GraphNode node = mNodes[ index ];
+            int depth = node.getDepth();
+            node.setColor( GraphNode.BLACK_COLOR );
+
+            //add the next nodes to the queue only if all their
+            //preceding nodes have been traversed.
+            int[] next = mBottomUp ? mParents[index] : mChildren[index];
+            int count  = mBottomUp ? mParentCount[index] : mChildCount[index];
+            for( int i = 0; i < count; i++ ){
+                int n = next[i];
+                GraphNode nextNode = mNodes[n];
+                if( !nextNode.isColor( GraphNode.GRAY_COLOR ) &&
+                    ( mBottomUp ? childrenColored( n, GraphNode.BLACK_COLOR ) :
+                                  parentsColored( n, GraphNode.BLACK_COLOR ) ) ){
+                    nextNode.setDepth( depth + 1 );
+                    nextNode.setColor( GraphNode.GRAY_COLOR );
+                    this.enqueue( n );
+                }
+            }
+            return node;
+        }
+
+        public void remove(){
+            throw new UnsupportedOperationException( "Method remove() not supported" );
+        }
+
+        private void enqueue( int index ){
+            if( mCount == mQueue.length ){
+                int[] queue = new int[ mQueue.length * 2 ];
+                for( int i = 0; i < mCount; i++ ){
+                    queue[i] = mQueue[ ( mHead + i ) % mQueue.length ];
+                }
+                mQueue = queue;
+                mHead  = 0;
+            }
+            mQueue[ ( mHead + mCount ) % mQueue.length ] = index;
+            mCount++;
+        }
+    }
+}
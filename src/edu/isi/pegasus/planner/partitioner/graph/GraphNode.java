@@ -85,6 +85,17 @@ public class GraphNode extends Data {
      */
     private Bag mBag;
 
+    /**
+     * The compact graph that stores the edges of this node. If set, the
+     * parents and children sets are not used.
+     */
+    private CompactGraph mGraph;
+
+    /**
+     * The index of the node in the compact graph.
+     */
+    private int mIndex;
+
     /**
      * The default constructor.
      */
@@ -162,6 +173,10 @@ public class GraphNode extends Data {
      * @param parents
      */
     public void setParents( Collection<GraphNode> parents ) {
+        if( mGraph != null ){
+            mGraph.setParents( mIndex, parents );
+            return;
+        }
         mParents = ( parents instanceof Set)? (Set)parents:new HashSet(parents);
     }
 
@@ -171,6 +186,10 @@ public class GraphNode extends Data {
      * @param children
      */
     public void setChildren( Collection<GraphNode> children ) {
+        if( mGraph != null ){
+            mGraph.setChildren( mIndex, children );
+            return;
+        }
         mChildren = ( children instanceof Set)? (Set)children: new HashSet(children);
     }
 
@@ -208,7 +227,7 @@ public class GraphNode extends Data {
      * @return list of <code>GraphNode</code> objects.
      */
     public Collection<GraphNode> getParents() {
-        return mParents;
+        return ( mGraph == null ) ? mParents : mGraph.getParents( mIndex );
     }
 
     /**
@@ -218,7 +237,7 @@ public class GraphNode extends Data {
      * @return list of <code>GraphNode</code> objects.
      */
     public Collection<GraphNode> getChildren() {
-        return mChildren;
+        return ( mGraph == null ) ? mChildren : mGraph.getChildren( mIndex );
     }
 
     /**
@@ -227,6 +246,10 @@ public class GraphNode extends Data {
      * @param child  adds a child to the node.
      */
     public void addChild( GraphNode child ) {
+        if( mGraph != null ){
+            mGraph.addChild( mIndex, child );
+            return;
+        }
         mChildren.add( child );
     }
 
@@ -236,6 +259,10 @@ public class GraphNode extends Data {
      * @param parent  adds a parent to the node.
      */
     public void addParent( GraphNode parent ) {
+        if( mGraph != null ){
+            mGraph.addParent( mIndex, parent );
+            return;
+        }
         mParents.add( parent );
     }
 
@@ -245,6 +272,10 @@ public class GraphNode extends Data {
      * @param child  child to be removed.
      */
     public void removeChild( GraphNode child ){
+        if( mGraph != null ){
+            mGraph.removeChild( mIndex, child );
+            return;
+        }
         mChildren.remove( child );
     }
 
@@ -254,6 +285,10 @@ public class GraphNode extends Data {
      * @param parent  parent to be removed.
      */
     public void removeParent( GraphNode parent ){
+        if( mGraph != null ){
+            mGraph.removeParent( mIndex, parent );
+            return;
+        }
         mParents.remove( parent );
     }
 
@@ -261,10 +296,51 @@ public class GraphNode extends Data {
      * Reset all the edges associated with this node.
      */
     public final void resetEdges() {
+        if( mGraph != null ){
+            mGraph.resetEdges( mIndex );
+            return;
+        }
         mParents  = new HashSet();
         mChildren = new HashSet();
     }
 
+    /**
+     * Hands over the storage of the edges of the node to a compact graph.
+     * The existing parents and children sets are released, and all subsequent
+     * edge operations on the node are delegated to the graph. Passing a null
+     * graph makes the node store it's edges in the passed sets again.
+     *
+     * @param graph     the compact graph, or null
+     * @param index     the index of the node in the compact graph
+     * @param parents   the parents to use when detaching from the graph
+     * @param children  the children to use when detaching from the graph
+     */
+    void setCompactGraph( CompactGraph graph, int index,
+                          Set<GraphNode> parents, Set<GraphNode> children ){
+        mGraph    = graph;
+        mIndex    = index;
+        mParents  = parents;
+        mChildren = children;
+    }
+
+    /**
+     * Returns the compact graph that stores the edges of this node.
+     *
+     * @return the graph, else null if the node stores it's own edges.
+     */
+    CompactGraph getCompactGraph(){
+        return mGraph;
+    }
+
+    /**
+     * Returns the index of the node in the compact graph.
+     *
+     * @return the index
+     */
+    int getCompactIndex(){
+        return mIndex;
+    }
+
     /**
      * Returns the logical id of the graph node.
      */
@@ -317,6 +393,9 @@ public class GraphNode extends Data {
     public boolean parentsColored( int color ) {
         boolean colored = true;
         GraphNode par;
+        if( mGraph != null ){
+            return mGraph.parentsColored( mIndex, color );
+        }
         if (mParents == null) {
             return colored;
         }
@@ -341,6 +420,9 @@ public class GraphNode extends Data {
     public boolean childrenColored( int color ) {
         boolean colored = true;
         GraphNode child;
+        if( mGraph != null ){
+            return mGraph.childrenColored( mIndex, color );
+        }
         if (mChildren == null) {
             return colored;
         }
@@ -0,0 +1,158 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import edu.isi.pegasus.planner.parser.dax.DAX2CDAG;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Compares the memory footprint and the traversal throughput of the MapGraph
+ * and the CompactGraph on large synthetic workflows. Each level of the
+ * synthetic workflow has a fixed width, and each node has a fixed number
+ * of random parents in the previous level.
+ *
+ * @author Karan Vahi
+ */
+public class TestCompactGraph {
+
+    /**
+     * The number of parents of each node not in the first level.
+     */
+    public static final int PARENTS_PER_NODE = 4;
+
+    /**
+     * Creates a synthetic layered workflow.
+     *
+     * @param g       the empty graph to populate
+     * @param nodes   the number of nodes
+     * @param width   the width of each level
+     *
+     * @return the populated graph
+     */
+    public static Graph createLayered( Graph g, int nodes, int width ){
+        Random random = new Random( 42 );
+        for( int i = 0; i < nodes; i++ ){
+            g.addNode( new GraphNode( "ID" + i ) );
+        }
+        for( int i = width; i < nodes; i++ ){
+            int levelStart = ( i / width - 1 ) * width;
+            for( int j = 0; j < PARENTS_PER_NODE; j++ ){
+                g.addEdge( "ID" + ( levelStart + random.nextInt( width ) ), "ID" + i );
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Returns the used heap after requesting garbage collection.
+     *
+     * @return used heap in bytes
+     */
+    public static long usedHeap(){
+        Runtime r = Runtime.getRuntime();
+        for( int i = 0; i < 4; i++ ){
+            System.gc();
+            try{
+                Thread.sleep( 50 );
+            }
+            catch( InterruptedException e ){
+            }
+        }
+        return r.totalMemory() - r.freeMemory();
+    }
+
+    /**
+     * Builds the synthetic workflow with the implementation passed and prints
+     * out the retained heap and the time to build and traverse the graph.
+     *
+     * @param name    the name of the implementation
+     * @param nodes   the number of nodes
+     */
+    public static void benchmark( String name, int nodes ){
+        int width = Math.max( 1, (int)Math.sqrt( nodes ) );
+
+        long before = usedHeap();
+        long start = System.currentTimeMillis();
+        Graph g = createLayered( DAX2CDAG.createGraph( name ), nodes, width );
+        long build = System.currentTimeMillis() - start;
+        long heap = usedHeap() - before;
+
+        //walk the edges through the node views
+        start = System.currentTimeMillis();
+        long edges = 0;
+        for( Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            for( GraphNode child : node.getChildren() ){
+                if( child.getParents().contains( node ) ){
+                    edges++;
+                }
+            }
+        }
+        long scan = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        int count = 0;
+        for( Iterator<GraphNode> it = g.iterator(); it.hasNext(); it.next() ){
+            count++;
+        }
+        long bfs = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        for( Iterator<GraphNode> it = g.topologicalSortIterator(); it.hasNext(); it.next() ){
+            count++;
+        }
+        long topological = System.currentTimeMillis() - start;
+
+        System.out.println( name + " nodes=" + g.size() + " edges=" + edges +
+                            " heap=" + ( heap / ( 1024 * 1024 ) ) + "MB" +
+                            " build=" + build + "ms" +
+                            " edge-scan=" + scan + "ms" +
+                            " level-iterator=" + bfs + "ms" +
+                            " topological-iterator=" + topological + "ms" );
+        if( count != 2 * g.size() ){
+            throw new RuntimeException( "Iterators did not traverse all the nodes of " + name );
+        }
+    }
+
+    /**
+     * Runs the comparison for the number of nodes passed as arguments. By
+     * default the comparison is run for 10k, 100k and 1M nodes.
+     *
+     * @param args  the sizes of the workflows to generate.
+     */
+    public static void main( String[] args ){
+        int[] sizes = new int[]{ 10000, 100000, 1000000 };
+        if( args.length > 0 ){
+            sizes = new int[ args.length ];
+            for( int i = 0; i < args.length; i++ ){
+                sizes[i] = Integer.parseInt( args[i] );
+            }
+        }
+
+        //warm up
+        benchmark( "Map", 10000 );
+        benchmark( "Compact", 10000 );
+
+        System.out.println( "********* Benchmark  **********" );
+        for( int size : sizes ){
+            benchmark( "Map", size );
+            benchmark( "Compact", size );
+        }
+        System.out.println( "****************************" );
+    }
+}
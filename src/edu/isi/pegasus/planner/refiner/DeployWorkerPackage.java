@@ -500,6 +500,10 @@ public class DeployWorkerPackage
                          .append(  mSiteStore.getSysInfo( site ) );
                     throw new RuntimeException( error.toString() );
                 }
+                //the mapper has to see the default entry
+                mapper.invalidate( DeployWorkerPackage.TRANSFORMATION_NAMESPACE,
+                                   DeployWorkerPackage.TRANSFORMATION_NAME,
+                                   DeployWorkerPackage.TRANSFORMATION_VERSION );
             }
             
         }
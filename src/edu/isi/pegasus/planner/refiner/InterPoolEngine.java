@@ -332,6 +332,10 @@ public class InterPoolEngine extends Engine implements Refiner {
 
         }//end of mapping all jobs
 
+        mLogger.log( "Transformation Mapper lookups answered from cache " + mTCMapper.getCacheHits() +
+                     " , requiring a catalog query " + mTCMapper.getCacheMisses(),
+                     LogManager.DEBUG_MESSAGE_LEVEL );
+
         try{
             pps.endWorkflowRefinementStep( this );
         }
@@ -442,7 +446,7 @@ public class InterPoolEngine extends Engine implements Refiner {
             if(tcEntries != null && tcEntries.size() > 0){
                 //select a tc entry calling out to
                 //the transformation selector
-                tcEntry = selectTCEntry(tcEntries,job,mProps.getTXSelectorMode());
+                tcEntry = selectTCEntry(tcEntries,job,mProps.getSnapshot().getTXSelectorMode());
                 if(tcEntry == null){
                     error = new StringBuffer();
                     error.append( "Transformation selection operation for job  ").
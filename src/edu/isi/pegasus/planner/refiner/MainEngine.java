@@ -257,12 +257,15 @@ public class MainEngine
             mRemoveEng = null;
         }
         
-        /* PM-714. The approach does not scale for the planner performace test case.
-        mLogger.logEventStart( "workflow.prune", LoggingKeys.DAX_ID, abstractWFName );
-        ReduceEdges p = new ReduceEdges();
-        p.reduce(mReducedDag);
-        mLogger.logEventCompletion();
-        */
+        //PM-714 remove the redundant edges from the workflow
+        if( mProps.reduceEdges() ){
+            mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_REDUCE_EDGES, LoggingKeys.DAX_ID, abstractWFName );
+            ReduceEdges p = new ReduceEdges();
+            mReducedDag = p.reduce( mReducedDag );
+            mLogger.log( "Removed " + p.getRemovedEdgesCount() + " redundant edges from the workflow",
+                         LogManager.INFO_MESSAGE_LEVEL );
+            mLogger.logEventCompletion();
+        }
         
         mLogger.logEventCompletion();
         return mReducedDag;
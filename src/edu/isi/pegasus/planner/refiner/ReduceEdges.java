@@ -8,40 +8,97 @@ import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * An algorithm to reduce remove edges in the workflow, based on a DFS of a graph
- * and doing least common ancestor tranversals to detect duplicate edges.
- * 
+ * An algorithm to remove redundant edges in the workflow i.e computes the
+ * transitive reduction of the workflow.
+ *
+ * The nodes of the graph are assigned integer ids in topological order, and
+ * the reachability of each node is tracked in a bitset. An edge from a node to
+ * a child is redundant, if the child is already reachable through a child of
+ * the node that occurs earlier in the topological order. To keep the memory
+ * bounded for large workflows, the bitsets are computed for a chunk of
+ * target nodes at a time, and the chunks are processed in parallel.
+ *
+ * PM-714 The earlier implementation did least common ancestor traversals on
+ * each collision in a DFS, which did not scale for the planner performance
+ * test case.
+ *
  * @author Rajiv Mayani
  * @author Karan Vahi
  */
 public class ReduceEdges {
-    
-    
-    
+
+    /**
+     * The default memory in bytes that each worker can use for storing the
+     * reachability bitsets for a chunk.
+     */
+    public static final long DEFAULT_CHUNK_MEMORY = 32 * 1024 * 1024;
+
+    /**
+     * The number of threads to use for processing the chunks.
+     */
+    private final int mThreads;
+
+    /**
+     * The memory in bytes that each worker can use for the bitsets.
+     */
+    private final long mChunkMemory;
+
+    /**
+     * The number of edges removed in the last call to reduce.
+     */
+    private int mRemovedEdges;
+
+    /**
+     * The default constructor. Uses as many threads as there are available
+     * processors.
+     */
     public ReduceEdges(){
-        
+        this( Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param threads  the number of threads to use.
+     */
+    public ReduceEdges( int threads ){
+        this( threads, DEFAULT_CHUNK_MEMORY );
     }
-    
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param threads      the number of threads to use.
+     * @param chunkMemory  the memory in bytes each thread can use for the
+     *                     reachability bitsets.
+     */
+    public ReduceEdges( int threads, long chunkMemory ){
+        mThreads     = Math.max( 1, threads );
+        mChunkMemory = Math.max( 8, chunkMemory );
+    }
+
     /**
-     * Prunes redundant edges from the workflow. 
-     * For example if 
-     *  A->B->C and A->D exists, we can delete edge A->D
-     * 
+     * Prunes redundant edges from the workflow.
+     * For example if
+     *  A->B->C and A->C exists, we can delete edge A->C
+     *
      * @param dag  the workflow
-     * 
-     * @return 
+     *
+     * @return the workflow with non essential edges removed
      */
     public ADag reduce( ADag dag ){
         //PM-747 no need for conversion as ADag now implements Graph interface
@@ -52,285 +109,335 @@ public class ReduceEdges {
 
     /**
      * Prunes redundant edges from the workflow.
-     * 
+     *
      * @param workflow
-     * 
+     *
      * @return the workflow with non essential edges removed
+     *
+     * @throws RuntimeException if the workflow has a cycle
      */
     public Graph reduce( Graph workflow ) {
-        //start a DFS for the graph at root. 
-        
-        
-        //get all the roots of the workflow
-        for( GraphNode root: workflow.getRoots() ){
-            //reset( workflow );
-            this.assignLevels(workflow, root);
-            
-            //mCurrentDepth = 0;
-            root.setDepth( 0 );
-            root.setColor( GraphNode.GRAY_COLOR );
-            //System.out.println( "Traversing node " + root.getID() );
-            
-            //start an iterative DFS on the root
-            Stack<GraphNode> stack = new Stack();
-            stack.push(root);
-            while( !stack.isEmpty() ){
-                GraphNode top = stack.peek();
-                int newDepth = top.getDepth() + 1;
-                
-                List<GraphNode> parentsForDeletion = new LinkedList();
-                
-                //deletion map maps children to list of their ancestors to delete
-                //this is to prevent concurrent modification error in the loop below
-                Map<GraphNode,Collection<GraphNode>> deletionMap = new HashMap();
-                
-                List<GraphNode> children = new LinkedList();
-                for( GraphNode child: top.getChildren() ){
-                    children.add( child );
+        mRemovedEdges = 0;
+
+        int n = workflow.size();
+        if( n == 0 ){
+            return workflow;
+        }
+
+        //assign integer ids to the nodes
+        GraphNode[] nodes = new GraphNode[ n ];
+        Map<String,Integer> idMap = new HashMap( n );
+        int index = 0;
+        for( Iterator<GraphNode> it = workflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            nodes[ index ] = node;
+            idMap.put( node.getID(), index++ );
+        }
+
+        //the children of each node in compressed row form
+        int[] childStart = new int[ n + 1 ];
+        for( int i = 0; i < n; i++ ){
+            childStart[ i + 1 ] = childStart[ i ] + nodes[i].getChildren().size();
+        }
+        int edges = childStart[ n ];
+        int[] children = new int[ edges ];
+        int[] inDegree = new int[ n ];
+        for( int i = 0; i < n; i++ ){
+            int e = childStart[i];
+            for( GraphNode child: nodes[i].getChildren() ){
+                Integer c = idMap.get( child.getID() );
+                if( c == null ){
+                    throw new RuntimeException( "Child " + child.getID() + " of node " +
+                                                 nodes[i].getID() + " does not exist in the workflow" );
                 }
-                
-                
-                //for( GraphNode child : top.getChildren() ){
-                for( GraphNode child : children ){
-                    //we always update the depth to max of current and new depth
-                    child.setDepth( Math.max( child.getDepth(), newDepth) );
-                    
-                    if( child.isColor( GraphNode.GRAY_COLOR )){
-                        //this is where the collision is happening
-                        //find LCA of the top and child
-                        //Collection<GraphNode> ancestors = findLCA( top, child );
-                        
-                        //we now do LCA between child and all it's parents
-                        //we need to clone to prevent concurrent modification exception
-                        //as LCA can delete the edge between parent and child
-                        List<GraphNode> clonedParents = new LinkedList();
-                        for( GraphNode parent: child.getParents() ){
-                            clonedParents.add( parent );
-                        }
-                        //for( GraphNode parent: child.getParents() ){
-                        for( GraphNode parent: clonedParents ){
-                            //the lca itself might have removed other parents of 
-                            //the child 
-                            if( !child.getParents().contains( parent )){
-                                //System.out.println( "Bypassing LCA for " + parent.getID() + " -> " + child.getID());
-                                continue;
-                            }
-                            
-                            Collection<GraphNode> ancestors = findLCA( parent, child );
-                            if( !ancestors.isEmpty() ){
-                                if( deletionMap.containsKey( child ) ){
-                                    Collection<GraphNode> existing = deletionMap.get( child );
-                                    
-                                    System.out.println( "addeing to existing ancestors " + existing.size() );
-                                    existing.addAll( ancestors );
-                                }
-                                else{
-                                    deletionMap.put( child, ancestors );
-                                }
-                            }
-                        }
-                        
-                        
-                        
-                        //we set the child color to Black to ensure that if
-                        //we visit child again, we don't attempt LCA procedure again
-                        //one call to LCA is sufficient to remove all the redundant
-                        //edges making up a cycle
-                        child.setColor( GraphNode.BLACK_COLOR );
-                        
-                        continue;
-                    }
-                    
-                    if( child.isColor( GraphNode.WHITE_COLOR )){
-                        child.setColor( GraphNode.GRAY_COLOR );
-                        //System.out.println( "Traversing node " + child.getID() + " with depth " + child.getDepth());
-     
-                        stack.push( child );
-                    }
+                children[ e++ ] = c;
+                inDegree[ c ]++;
+            }
+        }
+        idMap = null;
+
+        //Kahn's algorithm to determine the topological order
+        int[] order = new int[ n ];
+        int[] rank  = new int[ n ];
+        int head = 0, tail = 0;
+        for( int i = 0; i < n; i++ ){
+            if( inDegree[i] == 0 ){
+                order[ tail++ ] = i;
+            }
+        }
+        while( head < tail ){
+            int node = order[ head ];
+            rank[ node ] = head++;
+            for( int e = childStart[node]; e < childStart[node + 1]; e++ ){
+                if( --inDegree[ children[e] ] == 0 ){
+                    order[ tail++ ] = children[e];
                 }
-                
-                //delete from the deletion map the edges
-                for( Map.Entry<GraphNode,Collection<GraphNode>> entry : deletionMap.entrySet()){
-                    GraphNode child = entry.getKey();
-                    for( GraphNode ancestor: entry.getValue() ){
-                        //System.out.println( "\tDeleting Edge " + ancestor.getID() + " -> " + child.getID() );
-                        
-                        ancestor.removeChild( child);
-                        //remove from the child hte parent
-                        child.removeParent(ancestor);
-                    }
+            }
+        }
+        if( tail != n ){
+            throw new RuntimeException( "Unable to reduce edges. The workflow has a cycle involving " +
+                                         (n - tail) + " nodes" );
+        }
+        inDegree = null;
+
+        //relabel the children with their ranks, sorted in topological order
+        int[] rankStart = new int[ n + 1 ];
+        int[] rankChildren = new int[ edges ];
+        for( int r = 0; r < n; r++ ){
+            int node  = order[r];
+            int begin = childStart[node];
+            int end   = childStart[node + 1];
+            int offset = rankStart[r];
+            for( int e = begin; e < end; e++ ){
+                rankChildren[ offset++ ] = rank[ children[e] ];
+            }
+            Arrays.sort( rankChildren, rankStart[r], offset );
+            rankStart[ r + 1 ] = offset;
+        }
+        children = null;
+        childStart = null;
+
+        boolean[] redundant = computeRedundantEdges( n, rankStart, rankChildren );
+
+        //remove the redundant edges from the workflow
+        for( int r = 0; r < n; r++ ){
+            GraphNode parent = nodes[ order[r] ];
+            for( int e = rankStart[r]; e < rankStart[r + 1]; e++ ){
+                if( redundant[e] ){
+                    GraphNode child = nodes[ order[ rankChildren[e] ] ];
+                    parent.removeChild( child );
+                    child.removeParent( parent );
+                    mRemovedEdges++;
                 }
-                
-                //set the color of the node to be black
-                //top.setColor( GraphNode.BLACK_COLOR );
-                stack.pop();
             }
-            
-            
         }
-        
+
         return workflow;
     }
 
-    
+    /**
+     * Returns the number of edges that were removed in the last invocation of
+     * reduce.
+     *
+     * @return the number of edges removed
+     */
+    public int getRemovedEdgesCount(){
+        return mRemovedEdges;
+    }
 
-    
     /**
-     * We find LCA of from and to.
-     * 
-     * @param from
-     * @param to 
-     * 
-     * @return  the ancestors  for which the edge from ancestor to the "to" node that have to be deleted.
+     * Computes the redundant edges in a graph whose nodes are labeled in
+     * topological order.
+     *
+     * An edge from a node to a child can only be redundant if the child is
+     * at least two levels below the node, where level is the length of the
+     * longest path from a root. Only the children of such candidate edges
+     * are tracked in the reachability bitsets, and for each chunk of them
+     * only the nodes between the earliest candidate parent and the last
+     * node in the chunk are traversed.
+     *
+     * @param n          the number of nodes
+     * @param start      the offset into children array for each node.
+     * @param children   the children of each node, sorted in increasing order.
+     *
+     * @return boolean array indexed by edge, indicating whether the edge is
+     *         redundant or not.
      */
-    private Collection<GraphNode> findLCA(GraphNode from, GraphNode to) {
-        Set<GraphNode> ancestors = new HashSet();
-        
-        Queue<GraphNode> parents = new LinkedList();
-        parents.addAll( to.getParents() );
-        //the from node should never be considered initially 
-        //parents.remove( from );
-        parents.addAll( from.getParents() );
-        
-        
-        
-        //find min depth of all the parents of the to node
-        int minDepth = Integer.MAX_VALUE;
-        for( GraphNode parent: to.getParents() ){
-            minDepth = Math.min( minDepth, parent.getDepth() );
-        }
-        if( minDepth == Integer.MAX_VALUE ){
-            throw new RuntimeException( "Inconsistent state for LCA " + from.getID() + " -> " + to.getID() );
-        }
-        
-        
-        
-        //System.out.println( "Find LCA for " + from.getID() + " -> " + to.getID() );
-        /*if( to.getID().equals( "stage_out_remote_blueridge_0_0")){
-            System.out.println( "DEBUG" );
-        }*/
-        /*for( GraphNode parent: to.getParents() ){
-            System.out.println( parent.getID() + " -> " + parent.getDepth() );
-        }*/
-        
-        Set<GraphNode> deletedAncestors = new HashSet();
-        Set<GraphNode> uniqueParentsInQueue = new HashSet();
-        uniqueParentsInQueue.addAll( parents );
-        
-        
-        while( !parents.isEmpty() ){
-            //System.out.println( "Parents Size is " + parents.size() + "," + uniqueParentsInQueue.size() );
-            GraphNode parent = parents.remove();
-            uniqueParentsInQueue.remove( parent );//rajiv
-            
-            //System.out.println( parent.getID() );
-            if( parent.getDepth() < 0 || parent.getDepth() < minDepth ){
-                //if the depth is -1 we don't do backtracking
-                //as that is associated with a different root
-                //also, we only want the lca search to go as far back as
-                //the min depth of the parents of the to node.
-                
-                continue;
+    private boolean[] computeRedundantEdges( int n, int[] start, int[] children ){
+        final boolean[] redundant = new boolean[ children.length ];
+
+        //the level of each node in the workflow
+        int[] level = new int[ n ];
+        for( int r = 0; r < n; r++ ){
+            for( int e = start[r]; e < start[r + 1]; e++ ){
+                int c = children[e];
+                level[c] = Math.max( level[c], level[r] + 1 );
             }
-            
-            if( !ancestors.add( parent )){
-                //means the parent was already present
-                //check if from this parent this is a direct edge to the "to" node
-                if( parent.getChildren().contains(to) ){
-                    //we need to delete edge parent to the to  
-                    //System.out.println( "Deleting Edge in LCA " + parent.getID() + " -> " + to.getID() );
-                    //deletedAncestors.add( parent );
-                    
-                    parent.removeChild(to);
-                    //remove from the child hte parent
-                    to.removeParent(parent);
+        }
+
+        //determine the targets and the earliest candidate parent of each
+        int[] minParent = new int[ n ];
+        Arrays.fill( minParent, -1 );
+        int targets = 0;
+        for( int r = 0; r < n; r++ ){
+            for( int e = start[r]; e < start[r + 1]; e++ ){
+                int c = children[e];
+                if( level[c] - level[r] >= 2 && minParent[c] == -1 ){
+                    minParent[c] = r;
+                    targets++;
                 }
             }
+        }
+        level = null;
+        if( targets == 0 ){
+            return redundant;
+        }
+
+        //assign bits to the targets in topological order
+        final int[] targetRank = new int[ targets ];
+        final int[] bit = new int[ n ];
+        for( int r = 0, t = 0; r < n; r++ ){
+            if( minParent[r] == -1 ){
+                bit[r] = -1;
+            }
             else{
-                //traversedAncestors.add( parent );
-                for( GraphNode ancestor: parent.getParents() ){
-                    if( !uniqueParentsInQueue.contains( ancestor ) ){
-                    //if( !ancestors.contains( ancestor ) ){
-                        parents.add( ancestor);
-                        uniqueParentsInQueue.add( ancestor);
-                    }
-                }
+                bit[r] = t;
+                targetRank[ t++ ] = r;
             }
-            
         }
-        return deletedAncestors;
-        
-    }
 
-    /**
-     * Prunes redundant edges from the workflow.
-     * 
-     * @param workflow
-     * @param root   the root from which to start to assign the levels
-     * 
-     * @return the workflow with non essential edges removed
-     */
-    public void assignLevels( Graph workflow , GraphNode root) {
-        //start a DFS for the graph at root. 
-        
-        
-        reset( workflow );
-        //mCurrentDepth = 0;
-        root.setDepth( 0 );
-        root.setColor( GraphNode.GRAY_COLOR );
-        //System.out.println( "Traversing node " + root.getID() );
-
-        //start an iterative DFS on the root
-        Stack<GraphNode> stack = new Stack();
-        stack.push(root);
-        while( !stack.isEmpty() ){
-            GraphNode top = stack.peek();
-            int newDepth = top.getDepth() + 1;
-
-            for( GraphNode child : top.getChildren() ){
-                //we always update the depth to max of current and new depth
-                child.setDepth( Math.max( child.getDepth(), newDepth) );
-
-                
-                if( child.isColor( GraphNode.WHITE_COLOR )){
-                    child.setColor( GraphNode.GRAY_COLOR );
-                    //System.out.println( "Traversing node " + child.getID() + " with depth " + child.getDepth());
-
-                    stack.push( child );
-                }
-            }
+        //determine the width of a chunk in 64 bit words
+        long words = Math.min( ( targets + 63 ) / 64, mChunkMemory / ( 8L * n ) );
+        words = Math.min( words, Integer.MAX_VALUE / n );
+        final int width  = (int)Math.max( 1, words );
+        final int chunks = ( targets + width * 64 - 1 ) / ( width * 64 );
 
+        //the range of nodes to traverse for each chunk
+        final int[] sweepLo = new int[ chunks ];
+        final int[] sweepHi = new int[ chunks ];
+        for( int k = 0; k < chunks; k++ ){
+            int first = k * width * 64;
+            int last  = Math.min( targets, first + width * 64 ) - 1;
+            int lo = Integer.MAX_VALUE;
+            for( int t = first; t <= last; t++ ){
+                lo = Math.min( lo, minParent[ targetRank[t] ] );
+            }
+            sweepLo[k] = lo;
+            sweepHi[k] = targetRank[ last ] + 1;
+        }
+        minParent = null;
 
-            //set the color of the node to be black
-            top.setColor( GraphNode.BLACK_COLOR );
-            stack.pop();
+        final AtomicInteger next = new AtomicInteger( 0 );
+        int threads = Math.min( mThreads, chunks );
+        List<ChunkWorker> workers = new ArrayList( threads );
+        for( int i = 0; i < threads; i++ ){
+            workers.add( new ChunkWorker( n, width, chunks, next, sweepLo, sweepHi,
+                                          bit, start, children, redundant ) );
         }
-        
-        //reset colors again to white
-        //sanity intialization of all nodes depth
-        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
-            GraphNode node = ( GraphNode )it.next();
-            node.setColor( GraphNode.WHITE_COLOR );
+
+        if( threads == 1 ){
+            workers.get( 0 ).call();
+            return redundant;
         }
 
-        
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try{
+            for( Future<Object> f : executor.invokeAll( workers ) ){
+                f.get();
+            }
+        }
+        catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while reducing edges in the workflow", e );
+        }
+        catch( ExecutionException e ){
+            throw new RuntimeException( "Unable to reduce edges in the workflow", e.getCause() );
+        }
+        finally{
+            executor.shutdownNow();
+        }
+        return redundant;
     }
-    
+
     /**
-     * Resets internal depth and color counters associated with the nodes in the 
-     * workflow, before doing any graph traversals. 
-     * 
-     * @param workflow the workflow 
+     * A worker that computes the redundant edges incident on a chunk of
+     * target nodes. Each worker repeatedly picks the next unprocessed chunk,
+     * till all chunks are processed.
      */
-    private void reset(Graph workflow) {
-        int depth = -1;
-
-        //sanity intialization of all nodes depth
-        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
-            GraphNode node = ( GraphNode )it.next();
-            node.setDepth( depth );
-            node.setColor( GraphNode.WHITE_COLOR );
+    private static class ChunkWorker implements Callable<Object>{
+
+        private final int mWidth;
+        private final int mChunks;
+        private final AtomicInteger mNext;
+        private final int[] mSweepLo;
+        private final int[] mSweepHi;
+        private final int[] mBit;
+        private final int[] mStart;
+        private final int[] mChildren;
+        private final boolean[] mRedundant;
+
+        /**
+         * The reachability bitsets restricted to the targets in the current
+         * chunk. Each node has mWidth words.
+         */
+        private final long[] mReach;
+
+        /**
+         * Tracks whether a node can reach any target in the current chunk.
+         */
+        private final boolean[] mReachesChunk;
+
+        public ChunkWorker( int n, int width, int chunks, AtomicInteger next,
+                            int[] sweepLo, int[] sweepHi, int[] bit,
+                            int[] start, int[] children, boolean[] redundant ){
+            mWidth     = width;
+            mChunks    = chunks;
+            mNext      = next;
+            mSweepLo   = sweepLo;
+            mSweepHi   = sweepHi;
+            mBit       = bit;
+            mStart     = start;
+            mChildren  = children;
+            mRedundant = redundant;
+            mReach     = new long[ n * width ];
+            mReachesChunk = new boolean[ n ];
+        }
+
+        public Object call(){
+            int chunk;
+            while( ( chunk = mNext.getAndIncrement() ) < mChunks ){
+                process( chunk * mWidth * 64, mSweepLo[chunk], mSweepHi[chunk] );
+            }
+            return null;
+        }
+
+        /**
+         * Traverses the nodes in reverse topological order, and computes which
+         * targets in the chunk each node can reach. Nodes after hi in the
+         * topological order cannot reach the chunk and are ignored.
+         *
+         * @param first  the bit of the first target in the chunk
+         * @param lo     the rank of the earliest candidate parent in the chunk
+         * @param hi     the rank after the last target in the chunk
+         */
+        private void process( int first, int lo, int hi ){
+            long[] reach = mReach;
+            int bits = mWidth * 64;
+            for( int r = hi - 1; r >= lo; r-- ){
+                int base = r * mWidth;
+                Arrays.fill( reach, base, base + mWidth, 0L );
+                boolean any = false;
+
+                //children are in increasing topological order. a child can
+                //only be reached through a child earlier in the order
+                for( int e = mStart[r]; e < mStart[r + 1]; e++ ){
+                    int c = mChildren[e];
+                    if( c >= hi ){
+                        break;
+                    }
+                    int b = mBit[c] - first;
+                    if( b >= 0 && b < bits ){
+                        int word = base + ( b >>> 6 );
+                        long mask = 1L << b;
+                        if( ( reach[ word ] & mask ) != 0 ){
+                            //child already reachable via another path
+                            mRedundant[e] = true;
+                            continue;
+                        }
+                        reach[ word ] |= mask;
+                        any = true;
+                    }
+                    if( mReachesChunk[c] ){
+                        int cbase = c * mWidth;
+                        for( int w = 0; w < mWidth; w++ ){
+                            reach[ base + w ] |= reach[ cbase + w ];
+                        }
+                        any = true;
+                    }
+                }
+                mReachesChunk[r] = any;
+            }
         }
     }
-    
+
 }
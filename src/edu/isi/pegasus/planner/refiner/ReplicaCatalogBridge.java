@@ -38,12 +38,16 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 
 import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
+import edu.isi.pegasus.planner.catalog.replica.impl.MRC;
+import edu.isi.pegasus.planner.catalog.replica.impl.MappedReplicaIndex;
+import edu.isi.pegasus.planner.catalog.replica.impl.ReplicaBloomFilter;
 
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
 import edu.isi.pegasus.planner.catalog.transformation.classes.TCType;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 
 import java.util.Collection;
 import java.util.Iterator;
@@ -146,6 +150,12 @@ public class ReplicaCatalogBridge
      */
     private ReplicaCatalog mReplicaCatalog;
 
+    /**
+     * The handle to the persistent index over the main Replica Catalog, used
+     * instead of the Replica Catalog if configured.
+     */
+    private MappedReplicaIndex mReplicaIndex;
+
 
 
     /**
@@ -286,6 +296,7 @@ public class ReplicaCatalogBridge
             //make sure that RLS can be loaded from local environment
             //Karan May 1 2007
             mReplicaCatalog = null;
+            mReplicaIndex = null;
             if ( mSearchFiles != null && !mSearchFiles.isEmpty() ){
 
                 //need to clone before setting any read only properites
@@ -304,10 +315,62 @@ public class ReplicaCatalogBridge
                                        proxy );
                 }
                 
-                mReplicaCatalog = ReplicaFactory.loadInstance( props );          
-
-                //load all the mappings.
-                mReplicaStore = new ReplicaStore( mReplicaCatalog.lookup( mSearchFiles ) );
+                mReplicaIndex = loadReplicaIndex( props );
+                if( mReplicaIndex != null ){
+                    //load all the mappings from the index
+                    mReplicaStore = new ReplicaStore( mReplicaIndex.lookup( mSearchFiles ) );
+                    dag.getWorkflowMetrics().incrementReplicaIndexMetrics( mReplicaIndex.getHits(),
+                                                                          mReplicaIndex.getMisses() );
+                    mLogger.log( "Looked up " + mSearchFiles.size() + " LFNs in replica catalog index " +
+                                 mReplicaIndex.getFile() + " with " + mReplicaIndex.getHits() + " hits and " +
+                                 mReplicaIndex.getMisses() + " misses",
+                                 LogManager.DEBUG_MESSAGE_LEVEL );
+                }
+                else{
+                    mReplicaCatalog = ReplicaFactory.loadInstance( props );
+
+                    //only look up the files that may be in the catalog
+                    Set searchFiles = mSearchFiles;
+                    ReplicaBloomFilter filter = loadReplicaFilter( props );
+                    if( filter != null ){
+                        searchFiles = filter.screen( mSearchFiles );
+                    }
+
+                    //load all the mappings.
+                    Map lookup = mReplicaCatalog.lookup( searchFiles );
+                    mReplicaStore = new ReplicaStore( lookup );
+
+                    if( mReplicaCatalog instanceof MRC ){
+                        for( MRC.Backend backend : ((MRC)mReplicaCatalog).getBackends() ){
+                            dag.getWorkflowMetrics().incrementReplicaBackendMetrics( backend.getName(),
+                                                                                    backend.getLookups(),
+                                                                                    backend.getHits(),
+                                                                                    backend.getTimeouts(),
+                                                                                    backend.getTime() );
+                            mLogger.log( "Replica catalog " + backend.getName() + " found " + backend.getHits() +
+                                         " LFNs in " + backend.getTime() + " ms",
+                                         LogManager.DEBUG_MESSAGE_LEVEL );
+                        }
+                    }
+
+                    if( filter != null ){
+                        int found = 0;
+                        for( Iterator it = lookup.values().iterator(); it.hasNext(); ){
+                            Collection c = (Collection)it.next();
+                            if( c != null && !c.isEmpty() ){
+                                found++;
+                            }
+                        }
+                        int falsePositives = Math.max( 0, searchFiles.size() - found );
+                        dag.getWorkflowMetrics().incrementReplicaFilterMetrics( filter.getProbes(),
+                                                                               filter.getNegatives(),
+                                                                               falsePositives );
+                        mLogger.log( "Screened " + filter.getProbes() + " LFNs with replica catalog filter " +
+                                     filter.getFile() + ". " + filter.getNegatives() + " not looked up, " +
+                                     falsePositives + " false positives",
+                                     LogManager.DEBUG_MESSAGE_LEVEL );
+                    }
+                }
             }
 
         } catch ( Exception ex ) {
@@ -338,10 +401,12 @@ public class ReplicaCatalogBridge
         }
 
         
-        if( mReplicaCatalog != null ){
+        if( mReplicaCatalog != null || mReplicaIndex != null ){
             //specify maxjobs to 1 for File based replica catalog
             //JIRA PM-377
-            if( mReplicaCatalog instanceof edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile ){
+            if( mReplicaCatalog instanceof edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile ||
+                ( mReplicaIndex != null &&
+                  mReplicaIndex.isIndexOf( edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile.class ) ) ){
                 //we set the default category value to 1
                 //in the properties
                 String key = getDefaultRegistrationMaxJobsPropertyKey();
@@ -378,6 +443,9 @@ public class ReplicaCatalogBridge
         if ( mReplicaCatalog != null ) {
             mReplicaCatalog.close();
         }
+        if ( mReplicaIndex != null ) {
+            mReplicaIndex.close();
+        }
     }
 
     /**         
@@ -415,7 +483,7 @@ public class ReplicaCatalogBridge
         
         //check in the main replica catalog
         if ( this.mDAXReplicaStore.isEmpty() &&
-                ( mRCDown || mReplicaCatalog == null )) {
+                ( mRCDown || ( mReplicaCatalog == null && mReplicaIndex == null ) )) {
             mLogger.log("Replica Catalog is either down or connection to it was never opened ",
                         LogManager.WARNING_MESSAGE_LEVEL);
             return lfnsFound;
@@ -438,6 +506,72 @@ public class ReplicaCatalogBridge
 
 
 
+    /**
+     * Loads the persistent index over the replica catalog, if an index
+     * directory is specified in the properties and the replica catalog can
+     * be indexed. The index is built if it does not exist or is stale.
+     *
+     * @param props  the properties to connect to the replica catalog with
+     *
+     * @return the index, else null if the replica catalog is to be used directly
+     */
+    private MappedReplicaIndex loadReplicaIndex( PegasusProperties props ){
+        String directory = props.getReplicaCatalogIndexDirectory();
+        if( directory == null ){
+            return null;
+        }
+        if( !MappedReplicaIndex.canIndex( props ) ){
+            mLogger.log( "Replica catalog " + props.getReplicaMode() + " cannot be indexed. Not using index directory " + directory,
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            return null;
+        }
+        try{
+            return MappedReplicaIndex.load( props,
+                                            new File( directory ),
+                                            props.validateReplicaCatalogIndexByHash(),
+                                            props.getReplicaCatalogIndexMaxFiles(),
+                                            mLogger );
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to use replica catalog index in directory " + directory, e,
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            return null;
+        }
+    }
+
+    /**
+     * Loads the persistent filter over the LFNs in the replica catalog, if a
+     * filter directory is specified in the properties and the replica catalog
+     * can be filtered. The filter is built or brought up to date if required.
+     *
+     * @param props  the properties the replica catalog was connected with
+     *
+     * @return the filter, else null if all LFNs are to be looked up
+     */
+    private ReplicaBloomFilter loadReplicaFilter( PegasusProperties props ){
+        String directory = props.getReplicaCatalogFilterDirectory();
+        if( directory == null ){
+            return null;
+        }
+        if( !ReplicaBloomFilter.canFilter( props ) ){
+            mLogger.log( "Replica catalog " + props.getReplicaMode() + " cannot be filtered. Not using filter directory " + directory,
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            return null;
+        }
+        try{
+            return ReplicaBloomFilter.load( props,
+                                            mReplicaCatalog,
+                                            new File( directory ),
+                                            props.getReplicaCatalogFilterFalsePositiveRate(),
+                                            mLogger );
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to use replica catalog filter in directory " + directory, e,
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            return null;
+        }
+    }
+
     /**
      * Returns all the locations as returned from the Replica Lookup Mechanism.
      *
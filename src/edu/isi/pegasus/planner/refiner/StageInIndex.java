@@ -0,0 +1,190 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.refiner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the input files that are staged to the staging sites in the
+ * workflow, built while the Transfer Engine traverses the workflow. The
+ * index is keyed by the staging site and then by the LFN, and records the
+ * directories the file was staged to for the first job that required it.
+ * Subsequent jobs that require the same file in the same directories reuse
+ * the stage in job created for the first one, without looking up the file
+ * in the Replica Catalog, selecting a replica or constructing the URL's
+ * again.
+ *
+ * The index also maintains the counters for the deduplicated transfers that
+ * are reported in the planner metrics.
+ *
+ * @author Karan Vahi
+ */
+public class StageInIndex {
+
+    /**
+     * The index, that maps a staging site to a map indexed by LFN.
+     */
+    private Map<String,Map<String,Entry>> mIndex;
+
+    /**
+     * The number of file transfers deduplicated.
+     */
+    private int mTransfers;
+
+    /**
+     * The number of bytes in the deduplicated transfers.
+     */
+    private long mBytes;
+
+    /**
+     * The number of edges added to existing stage in jobs.
+     */
+    private int mEdges;
+
+    /**
+     * The default constructor.
+     */
+    public StageInIndex(){
+        mIndex = new HashMap<String,Map<String,Entry>>();
+    }
+
+    /**
+     * Adds an entry for a file staged to a staging site for a job. An
+     * existing entry for the file is not overwritten.
+     *
+     * @param stagingSite  the staging site to which the file is staged
+     * @param lfn          the logical filename of the file
+     * @param putDir       the directory URL the file is put to
+     * @param getDir       the directory URL the file is retrieved from
+     * @param computeSite  the execution site of the job
+     */
+    public void add( String stagingSite, String lfn, String putDir, String getDir, String computeSite ){
+        Map<String,Entry> files = mIndex.get( stagingSite );
+        if( files == null ){
+            files = new HashMap<String,Entry>();
+            mIndex.put( stagingSite, files );
+        }
+        if( !files.containsKey( lfn ) ){
+            files.put( lfn, new Entry( putDir, getDir, computeSite ) );
+        }
+    }
+
+    /**
+     * Returns whether a file has been staged to a staging site in the same
+     * directories as required by a job.
+     *
+     * @param stagingSite  the staging site to which the file is staged
+     * @param lfn          the logical filename of the file
+     * @param putDir       the directory URL the file is put to
+     * @param getDir       the directory URL the file is retrieved from
+     * @param computeSite  the execution site of the job
+     *
+     * @return boolean
+     */
+    public boolean isStaged( String stagingSite, String lfn, String putDir, String getDir, String computeSite ){
+        Map<String,Entry> files = mIndex.get( stagingSite );
+        Entry entry = ( files == null ) ? null : files.get( lfn );
+        return entry != null && entry.matches( putDir, getDir, computeSite );
+    }
+
+    /**
+     * Records that a file transfer was deduplicated.
+     *
+     * @param size  the size of the file in bytes, or a negative value if not
+     *              known
+     */
+    public void recordTransfer( double size ){
+        mTransfers++;
+        if( size > 0 ){
+            mBytes += (long)size;
+        }
+    }
+
+    /**
+     * Records the edges added to existing stage in jobs.
+     *
+     * @param edges  the number of edges
+     */
+    public void recordEdges( int edges ){
+        mEdges += edges;
+    }
+
+    /**
+     * Returns the number of file transfers deduplicated.
+     *
+     * @return the number of transfers
+     */
+    public int getTransfers(){
+        return mTransfers;
+    }
+
+    /**
+     * Returns the number of bytes in the deduplicated transfers.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes(){
+        return mBytes;
+    }
+
+    /**
+     * Returns the number of edges added to existing stage in jobs.
+     *
+     * @return the number of edges
+     */
+    public int getEdges(){
+        return mEdges;
+    }
+
+    /**
+     * The directories a file was staged to.
+     */
+    private static class Entry{
+
+        /**
+         * The directory URL the file is put to.
+         */
+        private final String mPutDir;
+
+        /**
+         * The directory URL the file is retrieved from.
+         */
+        private final String mGetDir;
+
+        /**
+         * The execution site of the first job that required the file.
+         */
+        private final String mComputeSite;
+
+        public Entry( String putDir, String getDir, String computeSite ){
+            mPutDir = putDir;
+            mGetDir = getDir;
+            mComputeSite = computeSite;
+        }
+
+        public boolean matches( String putDir, String getDir, String computeSite ){
+            return equals( mPutDir, putDir ) &&
+                   equals( mGetDir, getDir ) &&
+                   equals( mComputeSite, computeSite );
+        }
+
+        private static boolean equals( String a, String b ){
+            return ( a == null ) ? b == null : a.equals( b );
+        }
+    }
+}
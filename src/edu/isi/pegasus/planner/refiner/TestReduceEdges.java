@@ -6,6 +6,11 @@ package edu.isi.pegasus.planner.refiner;
 
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.util.Iterator;
 
 /**
  *
@@ -27,6 +32,12 @@ public class TestReduceEdges {
         Job e = new Job(); e.setName("e");e.setJobType( Job.COMPUTE_JOB );
         
 
+        a.add(aa);
+        a.add(b);
+        a.add(c);
+        a.add(d);
+        a.add(e);
+
         a.addNewRelation("a", "b");
         a.addNewRelation("a", "c");
 
@@ -38,11 +49,6 @@ public class TestReduceEdges {
         a.addNewRelation("a", "e");
         a.addNewRelation("c", "e");
 
-        a.add(aa);
-        a.add(b);
-        a.add(c);
-        a.add(d);
-        a.add(e);
         
         return a;
     }   
@@ -63,6 +69,18 @@ public class TestReduceEdges {
         Job k = new Job(); k.setName("k");k.setJobType( Job.COMPUTE_JOB );
         
 
+        ad.add(a);
+        ad.add(b);
+        ad.add(c);
+        ad.add(d);
+        ad.add(e);
+        ad.add(f);
+        ad.add(g);
+        ad.add(h);
+        ad.add(i);
+        ad.add(j);
+        ad.add(k);
+
         ad.addNewRelation("a", "b");
         ad.addNewRelation("a", "g");
 
@@ -84,36 +102,153 @@ public class TestReduceEdges {
         ad.addNewRelation("j", "k");
         ad.addNewRelation("k", "f");
 
-        ad.add(a);
-        ad.add(b);
-        ad.add(c);
-        ad.add(d);
-        ad.add(e);
-        ad.add(f);
-        ad.add(g);
-        ad.add(h);
-        ad.add(i);
-        ad.add(j);
-        ad.add(k);
         
         return ad;
     }   
     
     
+    /**
+     * Creates a synthetic fan-out/fan-in workflow. Each stage consists of a
+     * split job that fans out to width jobs, that fan in to a merge job. The
+     * merge job is the split job of the next stage. The split job also has a
+     * redundant edge to the merge job, and every fan out job has a
+     * redundant edge to the merge job of the next stage.
+     *
+     * @param nodes  the approximate number of nodes in the workflow.
+     * @param width  the number of jobs in each fan out.
+     *
+     * @return the graph
+     */
+    public Graph createFanInFanOut( int nodes, int width ){
+        Graph g = new MapGraph();
+        int stages = Math.max( 1, nodes / ( width + 1 ) );
+        String split = "split_0";
+        g.addNode( new GraphNode( split ) );
+        String[] previous = new String[0];
+        for( int s = 1; s <= stages; s++ ){
+            String merge = "split_" + s;
+            g.addNode( new GraphNode( merge ) );
+            String[] current = new String[ width ];
+            for( int i = 0; i < width; i++ ){
+                String id = "fan_" + s + "_" + i;
+                current[i] = id;
+                g.addNode( new GraphNode( id ) );
+                g.addEdge( split, id );
+                g.addEdge( id, merge );
+            }
+            //redundant edges
+            g.addEdge( split, merge );
+            for( String id : previous ){
+                g.addEdge( id, merge );
+            }
+            previous = current;
+            split = merge;
+        }
+        return g;
+    }
+
+    /**
+     * Creates a synthetic diamond lattice workflow of the given number of
+     * levels. Node (l,i) has edges to (l+1,i) and (l+1,i+1) and a redundant
+     * edge to (l+2,i+1).
+     *
+     * @param nodes  the approximate number of nodes in the workflow.
+     * @param width  the number of nodes in each level.
+     *
+     * @return the graph
+     */
+    public Graph createDiamondLattice( int nodes, int width ){
+        Graph g = new MapGraph();
+        int levels = Math.max( 1, nodes / width );
+        for( int l = 0; l < levels; l++ ){
+            for( int i = 0; i < width; i++ ){
+                g.addNode( new GraphNode( "n_" + l + "_" + i ) );
+            }
+        }
+        for( int l = 0; l < levels; l++ ){
+            for( int i = 0; i < width; i++ ){
+                String id = "n_" + l + "_" + i;
+                if( l + 1 < levels ){
+                    g.addEdge( id, "n_" + (l + 1) + "_" + i );
+                    if( i + 1 < width ){
+                        g.addEdge( id, "n_" + (l + 1) + "_" + (i + 1) );
+                    }
+                }
+                if( l + 2 < levels && i + 1 < width ){
+                    g.addEdge( id, "n_" + (l + 2) + "_" + (i + 1) );
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Returns the number of edges in the graph.
+     *
+     * @param g  the graph
+     *
+     * @return the number of edges
+     */
+    public static long countEdges( Graph g ){
+        long edges = 0;
+        for( Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ){
+            edges += it.next().getChildren().size();
+        }
+        return edges;
+    }
+
+    /**
+     * Reduces the graph and prints out the timings.
+     *
+     * @param name  the name of the test case
+     * @param g     the graph
+     */
+    public static void benchmark( String name, Graph g ){
+        long edges = countEdges( g );
+        ReduceEdges re = new ReduceEdges();
+        long start = System.currentTimeMillis();
+        re.reduce( g );
+        long time = System.currentTimeMillis() - start;
+        System.out.println( name + " nodes=" + g.size() + " edges=" + edges +
+                            " removed=" + re.getRemovedEdgesCount() +
+                            " time=" + time + "ms" );
+    }
+
+    /**
+     * Runs the sample tests, and then the scaling benchmark on synthetic
+     * workflows for the number of nodes passed as arguments. By default the
+     * benchmark is run for 10k, 100k and 1M nodes.
+     *
+     * @param args  the sizes of the workflows to generate.
+     */
     public static void main( String[] args ){
        
         TestReduceEdges tr = new TestReduceEdges();
         ReduceEdges re = new ReduceEdges();
         
         System.out.println( "********* Test 1  **********" );
-        re.reduce( tr.createTest1() );
+        System.out.println( re.reduce( tr.createTest1() ) );
         System.out.println( "****************************" );
         
         
         System.out.println( "********* Test 2  **********" );
-        re.reduce( tr.createTest2() );
+        System.out.println( re.reduce( tr.createTest2() ) );
+        System.out.println( "****************************" );
+
+        int[] sizes = new int[]{ 10000, 100000, 1000000 };
+        if( args.length > 0 ){
+            sizes = new int[ args.length ];
+            for( int i = 0; i < args.length; i++ ){
+                sizes[i] = Integer.parseInt( args[i] );
+            }
+        }
+
+        System.out.println( "********* Benchmark  **********" );
+        for( int size : sizes ){
+            benchmark( "fan-in-fan-out ", tr.createFanInFanOut( size, 100 ) );
+            benchmark( "diamond-lattice", tr.createDiamondLattice( size, 100 ) );
+        }
         System.out.println( "****************************" );
-        
     }
 
 
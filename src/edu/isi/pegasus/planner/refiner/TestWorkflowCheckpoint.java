@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Times writing out and loading back the WorkflowCheckpoint of a large
+ * synthetic workflow.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class TestWorkflowCheckpoint {
+
+    public TestWorkflowCheckpoint() {
+    }
+
+    /**
+     * Measures the time taken to write out and load back the checkpoint for
+     * a synthetic workflow, where each job has a few profiles and files, and
+     * a parent in a binary tree.
+     *
+     * Usage: TestWorkflowCheckpoint [jobs] [directory]
+     *
+     * @param args  the number of jobs ( defaults to 100000 ) and the directory
+     *              to write the checkpoint in ( defaults to the temp directory ).
+     */
+    public static void main( String[] args ) throws IOException{
+        int jobs = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 100000;
+        File base = ( args.length > 1 ) ?
+                    new File( args[1] ):
+                    new File( System.getProperty( "java.io.tmpdir" ) );
+        File dir = File.createTempFile( "checkpoint", "", base );
+        dir.delete();
+        dir.mkdirs();
+
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        LogManager logger = LogManagerFactory.loadSingletonInstance( props );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+        PlannerOptions options = new PlannerOptions();
+        options.setSubmitDirectory( dir.getAbsolutePath() );
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+        bag.add( PegasusBag.PLANNER_OPTIONS, options );
+
+        ADag dag = new ADag();
+        dag.setLabel( "synthetic" );
+        dag.setIndex( "0" );
+        for( int i = 0; i < jobs; i++ ){
+            Job job = new Job();
+            job.setName( "process_ID" + i );
+            job.setLogicalID( "ID" + i );
+            job.setTransformation( "synthetic", "process", "1.0" );
+            job.setJobType( Job.COMPUTE_JOB );
+            job.setSiteHandle( "condorpool" );
+            job.setArguments( "-i f." + ( i / 2 ) + " -o f." + i );
+            job.condorVariables.construct( "universe", "vanilla" );
+            job.envVariables.construct( "PEGASUS_HOME", "/usr" );
+            job.vdsNS.construct( "runtime", Integer.toString( i % 600 ) );
+            job.addInputFile( new PegasusFile( "f." + ( i / 2 ) ) );
+            job.addOutputFile( new PegasusFile( "f." + i ) );
+            dag.add( job );
+            if( i > 0 ){
+                dag.addEdge( "process_ID" + ( ( i - 1 ) / 2 ), job.getID() );
+            }
+        }
+
+        File file = new File( dir, "synthetic-0" + WorkflowCheckpoint.CHECKPOINT_FILE_SUFFIX );
+        long start = System.currentTimeMillis();
+        new WorkflowCheckpoint( bag ).write( dag, file );
+        long written = System.currentTimeMillis() - start;
+
+        ADag loaded = new ADag();
+        loaded.setLabel( dag.getLabel() );
+        loaded.setIndex( dag.getIndex() );
+        start = System.currentTimeMillis();
+        new WorkflowCheckpoint( bag ).load( file, loaded );
+        long read = System.currentTimeMillis() - start;
+
+        System.out.println( "Checkpoint of " + loaded.size() + " jobs, " + file.length() + " bytes: " +
+                            "write " + written + " ms, load " + read + " ms" );
+        for( File f : dir.listFiles() ){
+            f.delete();
+        }
+        dir.delete();
+    }
+}
@@ -217,6 +217,12 @@ public class TransferEngine extends Engine {
      */
     private boolean mBypassStagingForInputs;
 
+    /**
+     * The index of the input files staged to the staging sites, used to
+     * deduplicate the stage in transfers. Null if deduplication is disabled.
+     */
+    private StageInIndex mStageInIndex;
+
     /**
      * A boolean to track whether condor file io is used for the workflow or not.
      */
@@ -249,6 +255,9 @@ public class TransferEngine extends Engine {
         mDeletedJobs     = deletedJobs;
 
         mBypassStagingForInputs = mProps.bypassFirstLevelStagingForInputs();
+        mStageInIndex = ( mProps.deduplicateStageIns() && !mBypassStagingForInputs )?
+                        new StageInIndex():
+                        null;
 
         mPegasusConfiguration = new PegasusConfiguration( bag.getLogger() );   
          
@@ -393,16 +402,18 @@ public class TransferEngine extends Engine {
             currentJob.setLevel( node.getDepth() );
             currentJobName = currentJob.getName();
 
-            mLogger.log("",LogManager.DEBUG_MESSAGE_LEVEL);
-            msg = "Job being traversed is " + currentJobName;
-            mLogger.log(msg, LogManager.DEBUG_MESSAGE_LEVEL);
-            msg = "To be run at " + currentJob.executionPool;
-            mLogger.log(msg, LogManager.DEBUG_MESSAGE_LEVEL);
+            if( mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL ) ){
+                mLogger.log("",LogManager.DEBUG_MESSAGE_LEVEL);
+                msg = "Job being traversed is " + currentJobName;
+                mLogger.log(msg, LogManager.DEBUG_MESSAGE_LEVEL);
+                msg = "To be run at " + currentJob.executionPool;
+                mLogger.log(msg, LogManager.DEBUG_MESSAGE_LEVEL);
+                mLogger.log("Parents of job:" + node.parentsToString(),
+                            LogManager.DEBUG_MESSAGE_LEVEL);
+            }
 
             //getting the parents of that node
             Collection<GraphNode> parents = node.getParents();
-            mLogger.log("Parents of job:" + node.parentsToString(),
-                        LogManager.DEBUG_MESSAGE_LEVEL);
             processParents(currentJob, parents);
 
             //transfer the nodes output files
@@ -475,6 +486,16 @@ public class TransferEngine extends Engine {
         //we are done with the traversal.
         mTXRefiner.done();
 
+        if( mStageInIndex != null ){
+            mLogger.log( "Deduplicated " + mStageInIndex.getTransfers() + " stagein transfers ( " +
+                         mStageInIndex.getBytes() + " bytes ) by adding " + mStageInIndex.getEdges() +
+                         " edges to existing stagein jobs",
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            mDag.getWorkflowMetrics().incrementStageInDedupMetrics( mStageInIndex.getTransfers(),
+                                                                    mStageInIndex.getBytes(),
+                                                                    mStageInIndex.getEdges() );
+        }
+
 
         //close the handle to the workflow cache file if it is written
         //not the planner cache file
@@ -762,8 +783,7 @@ public class TransferEngine extends Engine {
             //construct the source url depending on whether third party tx
            String sourceURL = localTransfer ?
                                 sharedScratchGetURL :
-                                "file://" + mSiteStore.getInternalWorkDirectory(stagingSiteHandle,path) +
-                                File.separator + lfn;
+                                mSiteStore.getInternalWorkDirectoryURL( stagingSiteHandle, path, lfn );
 
             ft = new FileTransfer(lfn, job.getID(), pf.getFlags());
             ft.setSize( pf.getSize() );
@@ -924,8 +944,6 @@ public class TransferEngine extends Engine {
                 continue;
             }
 
-            String sourceURI = null;
-            
             //PM-590 Stricter checks
             String thirdPartyDestPutURI = this.getURLOnSharedScratch( destSite, job, OPERATION.put, null );
 
@@ -976,14 +994,9 @@ public class TransferEngine extends Engine {
                         for( Iterator it1 = parentScratchDir.getFileServersIterator(op); it1.hasNext(); ){
 
                             FileServer server = ( FileServer)it1.next();
-                            //definite inconsitency as url prefix and mount point
-                            //are not picked up from the same server
-                            sourceURI = server.getURLPrefix();
-                                                                          
-                            //sourceURI += server.getMountPoint();
-                            sourceURI += mSiteStore.getExternalWorkDirectory(server, pJob.getSiteHandle());
-                        
-                            sourceURL = sourceURI + File.separator + outFile;
+                            //the url prefix and the external work directory
+                            //are memoized per server in the site store
+                            sourceURL = mSiteStore.getExternalWorkDirectoryURL( server, pJob.getSiteHandle(), outFile );
 
                             if(!(sourceURL.equalsIgnoreCase(thirdPartyDestURL))){
                                 //add the source url only if it does not match to
@@ -1194,6 +1207,8 @@ public class TransferEngine extends Engine {
             //use the default pull mode
             fileDestDir;
 
+        //the existing stagein jobs that stage files for this job
+        Set<String> stageInParents = null;
 
         for( Iterator it = searchFiles.iterator(); it.hasNext(); ){
             String sourceURL = null,destPutURL = null, destGetURL =null;
@@ -1204,6 +1219,21 @@ public class TransferEngine extends Engine {
             String lfn     = pf.getLFN();
             NameValue nv   = null;
 
+            //if the file has already been staged to the same directory
+            //for another job, reuse the stagein job that stages it
+            if( mStageInIndex != null && !( pf instanceof FileTransfer ) &&
+                    mStageInIndex.isStaged( stagingSiteHandle, lfn, destDir, dDirGetURL, job.getSiteHandle() ) ){
+                String parent = mTXRefiner.getStageInJobName( job, lfn );
+                if( parent != null ){
+                    if( stageInParents == null ){
+                        stageInParents = new HashSet<String>();
+                    }
+                    stageInParents.add( parent );
+                    mStageInIndex.recordTransfer( pf.getSize() );
+                    continue;
+                }
+            }
+
             //see if the pf is infact an instance of FileTransfer
             if( pf instanceof FileTransfer ){
                 //that means we should be having the source url already.
@@ -1330,15 +1360,10 @@ public class TransferEngine extends Engine {
                      )
                  ){
                     //do not need to add any transfer node
-                    StringBuffer message = new StringBuffer( );
-                    
-                    message.append( sAbsPath ).append( " same as " ).append( dAbsPath );
-                    mLogger.log( message.toString() , LogManager.DEBUG_MESSAGE_LEVEL );
-                    message = new StringBuffer();
-                    message.append( " Not transferring ip file as ").append( lfn ).
-                            append( " for job " ).append( job.jobName ).append( " to site " ).append( stagingSiteHandle );
-                    
-                    mLogger.log( message.toString() , LogManager.DEBUG_MESSAGE_LEVEL );
+                    mLogger.log( LogManager.DEBUG_MESSAGE_LEVEL, "%s same as %s", sAbsPath, dAbsPath );
+                    mLogger.log( LogManager.DEBUG_MESSAGE_LEVEL,
+                                 " Not transferring ip file as %s for job %s to site %s",
+                                 lfn, job.jobName, stagingSiteHandle );
                     continue;
                 }
             }catch( IOException ioe ){
@@ -1371,6 +1396,10 @@ public class TransferEngine extends Engine {
                 trackInWorkflowCache( lfn,
                                     destGetURL,
                                     job.getStagingSiteHandle());
+
+                if( mStageInIndex != null && !( pf instanceof FileTransfer ) ){
+                    mStageInIndex.add( stagingSiteHandle, lfn, destDir, dDirGetURL, job.getSiteHandle() );
+                }
             }
             
             //construct the file transfer object
@@ -1415,6 +1444,14 @@ public class TransferEngine extends Engine {
             mTXRefiner.addStageInXFERNodes(job, localFileTransfers, remoteFileTransfers );
 
         }
+
+        //add the edges from the existing stagein jobs
+        if( stageInParents != null ){
+            for( String parent : stageInParents ){
+                mTXRefiner.addRelation( parent, job.getName(), job.getSiteHandle(), false );
+            }
+            mStageInIndex.recordEdges( stageInParents.size() );
+        }
     }
 
     /**
@@ -1704,22 +1741,15 @@ public class TransferEngine extends Engine {
                                           String lfn ){
 
 
-        StringBuffer url = new StringBuffer();
-
         FileServer getServer = entry.selectHeadNodeScratchSharedFileServer( operation );
 
         if( getServer == null ){
             this.complainForScratchFileServer(job, operation, entry.getSiteHandle());
         }
 
-        url.append( getServer.getURLPrefix() ).
-            append( mSiteStore.getExternalWorkDirectory(getServer, entry.getSiteHandle() ));
-
-        if( lfn != null ){
-            url.append( File.separatorChar ).append( lfn );
-        }
-
-        return url.toString();
+        return ( lfn == null ) ?
+               mSiteStore.getExternalWorkDirectoryURL( getServer, entry.getSiteHandle() ):
+               mSiteStore.getExternalWorkDirectoryURL( getServer, entry.getSiteHandle(), lfn );
     }
 
     /**
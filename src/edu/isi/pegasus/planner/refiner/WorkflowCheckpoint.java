@@ -0,0 +1,1219 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.common.credential.CredentialHandler;
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.FileServerType.OPERATION;
+import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.AggregatedJob;
+import edu.isi.pegasus.planner.classes.DAGJob;
+import edu.isi.pegasus.planner.classes.DAXJob;
+import edu.isi.pegasus.planner.classes.FileTransfer;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.Notifications;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.PlannerCache;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.ReplicaLocation;
+import edu.isi.pegasus.planner.classes.ReplicaStore;
+import edu.isi.pegasus.planner.classes.TransferJob;
+import edu.isi.pegasus.planner.cluster.JobAggregator;
+import edu.isi.pegasus.planner.cluster.aggregator.JobAggregatorFactory;
+import edu.isi.pegasus.planner.dax.Invoke;
+import edu.isi.pegasus.planner.namespace.Condor;
+import edu.isi.pegasus.planner.namespace.Dagman;
+import edu.isi.pegasus.planner.namespace.ENV;
+import edu.isi.pegasus.planner.namespace.Globus;
+import edu.isi.pegasus.planner.namespace.Hints;
+import edu.isi.pegasus.planner.namespace.Namespace;
+import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes out a binary checkpoint of the executable workflow, as returned by
+ * the refinement process, and loads it back in a later planner run. This
+ * allows the planner to skip data reuse, site selection, clustering and the
+ * addition of the auxiliary jobs, when a workflow is replanned only to change
+ * the properties that affect the code generation.
+ *
+ * The checkpoint contains the jobs with their profiles, files and
+ * FileTransfers, the edges, the replica store and notifications of the
+ * workflow, the contents of the planner cache, the worker package map and
+ * the files written out in the submit directory during refinement.
+ * Strings are written out only once, and referred to by their index
+ * thereafter. The checkpoint is read through a memory mapped window that is
+ * moved along the file, so that checkpoints larger than 2GB can be loaded.
+ *
+ * The workflow level attributes, like the label, the flow ID and the UUIDs,
+ * are not stored in the checkpoint. The checkpoint is always loaded into
+ * the workflow parsed from the DAX the checkpoint was created for.
+ *
+ * @author Karan Vahi
+ */
+public class WorkflowCheckpoint {
+
+    /**
+     * The suffix for the checkpoint files.
+     */
+    public static final String CHECKPOINT_FILE_SUFFIX = ".checkpoint";
+
+    /**
+     * The magic number at the start and end of the checkpoint file.
+     */
+    public static final int MAGIC = 0x50454743;
+
+    /**
+     * The version of the checkpoint format.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * The type tags for the jobs.
+     */
+    private static final byte JOB = 0;
+    private static final byte TRANSFER_JOB = 1;
+    private static final byte DAG_JOB = 2;
+    private static final byte DAX_JOB = 3;
+    private static final byte AGGREGATED_JOB = 4;
+
+    /**
+     * The type tags for the files.
+     */
+    private static final byte PEGASUS_FILE = 0;
+    private static final byte FILE_TRANSFER = 1;
+
+    /**
+     * The charset used for encoding the strings.
+     */
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * The bag of initialization objects.
+     */
+    private PegasusBag mBag;
+
+    /**
+     * The handle to the logger.
+     */
+    private LogManager mLogger;
+
+    /**
+     * The job aggregators instantiated while loading, indexed by class name.
+     */
+    private Map<String,JobAggregator> mAggregators;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param bag  the bag of initialization objects.
+     */
+    public WorkflowCheckpoint( PegasusBag bag ){
+        mBag = bag;
+        mLogger = bag.getLogger();
+        mAggregators = new HashMap<String,JobAggregator>();
+    }
+
+    /**
+     * Writes out the checkpoint for the executable workflow.
+     *
+     * @param dag   the executable workflow
+     * @param file  the file to write the checkpoint to
+     *
+     * @throws IOException in case of error while writing out the file
+     */
+    public void write( ADag dag, File file ) throws IOException{
+        Output out = new Output( file );
+        try{
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeString( dag.getLabel() );
+            out.writeString( dag.getIndex() );
+
+            writeGraph( out, dag );
+
+            //the replica store
+            ReplicaStore store = dag.getReplicaStore();
+            out.writeVarInt( store.getLFNCount() );
+            for( Iterator it = store.replicaLocationIterator(); it.hasNext(); ){
+                ReplicaLocation rl = (ReplicaLocation)it.next();
+                writeReplicas( out, rl.getLFN(), rl.getPFNList() );
+            }
+
+            writeNotifications( out, dag.getNotifications() );
+
+            //the planner cache is populated by the transfer engine
+            PlannerCache cache = mBag.getHandleToPlannerCache();
+            for( OPERATION type: new OPERATION[]{ OPERATION.get, OPERATION.put } ){
+                Map<String,Collection<ReplicaCatalogEntry>> entries = ( cache == null )?
+                                                                         new HashMap():
+                                                                         cache.entries( type );
+                out.writeVarInt( entries.size() );
+                for( Map.Entry<String,Collection<ReplicaCatalogEntry>> entry: entries.entrySet() ){
+                    writeReplicas( out, entry.getKey(), entry.getValue() );
+                }
+            }
+
+            Map<String,String> workerPackages = mBag.getWorkerPackageMap();
+            if( workerPackages == null ){
+                out.writeVarInt( 0 );
+            }
+            else{
+                out.writeVarInt( workerPackages.size() + 1 );
+                for( Map.Entry<String,String> entry: workerPackages.entrySet() ){
+                    out.writeString( entry.getKey() );
+                    out.writeString( entry.getValue() );
+                }
+            }
+
+            //the files written out in the submit directory during refinement
+            File submitDir = new File( mBag.getPlannerOptions().getSubmitDirectory() );
+            Collection<String> files = listSubmitFiles( dag, submitDir, file );
+            out.writeString( submitDir.getAbsolutePath() );
+            out.writeVarInt( files.size() );
+            for( String name: files ){
+                out.writeString( name );
+                out.writeFile( new File( submitDir, name ) );
+            }
+
+            out.writeInt( MAGIC );
+        }
+        finally{
+            out.close();
+        }
+    }
+
+    /**
+     * Loads a checkpoint into the workflow passed. The jobs in the workflow
+     * are replaced by the jobs in the checkpoint, and the objects required
+     * by the code generator are added to the bag.
+     *
+     * @param file  the checkpoint file
+     * @param dag   the workflow parsed from the DAX the checkpoint was
+     *              created for.
+     *
+     * @return the executable workflow
+     *
+     * @throws IOException in case of error while reading the file
+     */
+    public ADag load( File file, ADag dag ) throws IOException{
+        Input in = new Input( file );
+        try{
+            if( in.readInt() != MAGIC ){
+                throw new RuntimeException( "Not a workflow checkpoint " + file );
+            }
+            int version = in.readInt();
+            if( version != FORMAT_VERSION ){
+                throw new RuntimeException( "Unsupported version " + version + " of workflow checkpoint " + file );
+            }
+            String label = in.readString();
+            String index = in.readString();
+            if( !label.equals( dag.getLabel() ) || !index.equals( dag.getIndex() ) ){
+                throw new RuntimeException( "Workflow checkpoint " + file + " was created for workflow " +
+                                            label + "-" + index + " and not " +
+                                            dag.getLabel() + "-" + dag.getIndex() );
+            }
+
+            //same as in the refinement process, the task metrics
+            //remain the ones computed from the DAX
+            dag.setWorkflowRefinementStarted( true );
+            dag.getWorkflowMetrics().lockTaskMetrics( true );
+            List<String> ids = new ArrayList<String>( dag.size() );
+            for( Iterator<GraphNode> it = dag.nodeIterator(); it.hasNext(); ){
+                ids.add( it.next().getID() );
+            }
+            dag.resetEdges();
+            for( String id: ids ){
+                dag.remove( id );
+            }
+
+            readGraph( in, dag, dag );
+
+            ReplicaStore store = new ReplicaStore();
+            for( int i = in.readVarInt(); i > 0; i-- ){
+                String lfn = in.readString();
+                store.add( new ReplicaLocation( lfn, readReplicas( in ) ) );
+            }
+            dag.setReplicaStore( store );
+
+            Notifications notifications = dag.getNotifications();
+            notifications.reset();
+            readNotifications( in, notifications );
+
+            PlannerCache cache = new PlannerCache();
+            cache.initialize( mBag, dag );
+            for( OPERATION type: new OPERATION[]{ OPERATION.get, OPERATION.put } ){
+                for( int i = in.readVarInt(); i > 0; i-- ){
+                    String lfn = in.readString();
+                    for( ReplicaCatalogEntry rce : readReplicas( in ) ){
+                        cache.insert( lfn, rce.getPFN(), rce.getResourceHandle(), type );
+                    }
+                }
+            }
+            mBag.add( PegasusBag.PLANNER_CACHE, cache );
+
+            int count = in.readVarInt();
+            if( count > 0 ){
+                Map<String,String> workerPackages = new HashMap<String,String>();
+                for( int i = 1; i < count; i++ ){
+                    String site = in.readString();
+                    workerPackages.put( site, in.readString() );
+                }
+                mBag.add( PegasusBag.WORKER_PACKAGE_MAP, workerPackages );
+            }
+
+            //the files are restored with the paths in them pointing to
+            //the new submit directory. Files already written out by
+            //this planner run are not overwritten.
+            File submitDir = new File( mBag.getPlannerOptions().getSubmitDirectory() );
+            String from = in.readString();
+            String to = submitDir.getAbsolutePath();
+            for( int i = in.readVarInt(); i > 0; i-- ){
+                File f = new File( submitDir, in.readString() );
+                byte[] contents = in.readBytes();
+                if( f.exists() ){
+                    continue;
+                }
+                f.getParentFile().mkdirs();
+                FileOutputStream out = new FileOutputStream( f );
+                try{
+                    out.write( relocate( contents, from, to ) );
+                }
+                finally{
+                    out.close();
+                }
+            }
+            Map<String,String> workerPackages = mBag.getWorkerPackageMap();
+            if( workerPackages != null ){
+                for( Map.Entry<String,String> entry: workerPackages.entrySet() ){
+                    String path = entry.getValue();
+                    if( path != null && path.startsWith( from ) ){
+                        entry.setValue( to + path.substring( from.length() ) );
+                    }
+                }
+            }
+
+            if( in.readInt() != MAGIC ){
+                throw new RuntimeException( "Corrupted workflow checkpoint " + file );
+            }
+        }
+        finally{
+            in.close();
+        }
+
+        mLogger.log( "Loaded " + dag.size() + " jobs from workflow checkpoint " + file,
+                     LogManager.DEBUG_MESSAGE_LEVEL );
+
+        if( mBag.getHandleToTransformationMapper() == null ){
+            mBag.add( PegasusBag.TRANSFORMATION_MAPPER,
+                      Mapper.loadTCMapper( mBag.getPegasusProperties().getTCMapperMode(), mBag ) );
+        }
+
+        return dag;
+    }
+
+    /**
+     * Replaces the occurrences of a path in the contents of a file. The
+     * contents are mapped to characters one byte at a time, so that the
+     * rest of the contents remain unchanged.
+     *
+     * @param contents  the contents of the file
+     * @param from      the path to replace
+     * @param to        the replacement
+     *
+     * @return the contents with the path replaced
+     */
+    private byte[] relocate( byte[] contents, String from, String to ){
+        if( from == null || from.equals( to ) ){
+            return contents;
+        }
+        Charset latin = Charset.forName( "ISO-8859-1" );
+        String text = new String( contents, latin );
+        String source = new String( from.getBytes( UTF8 ), latin );
+        if( text.indexOf( source ) == -1 ){
+            return contents;
+        }
+        return text.replace( source, new String( to.getBytes( UTF8 ), latin ) ).getBytes( latin );
+    }
+
+    /**
+     * Lists the files in the submit directory that were written out during
+     * the refinement process. These are the stdin files of the jobs, the
+     * files transferred by Condor for the jobs that reside in the submit
+     * directory, like the input files for the clustered jobs, and the
+     * workflow cache file. Other files in the submit directory are ignored,
+     * as is the checkpoint itself.
+     *
+     * @param dag         the executable workflow
+     * @param submitDir   the submit directory
+     * @param checkpoint  the checkpoint file
+     *
+     * @return the paths of the files relative to the submit directory
+     */
+    private Collection<String> listSubmitFiles( ADag dag, File submitDir, File checkpoint ){
+        Set<String> result = new LinkedHashSet<String>();
+        String dir = submitDir.getAbsolutePath() + File.separator;
+        for( Iterator<GraphNode> it = dag.nodeIterator(); it.hasNext(); ){
+            listSubmitFiles( (Job)it.next().getContent(), dir, result );
+        }
+        result.add( edu.isi.pegasus.planner.code.generator.Abstract.getDAGFilename( mBag.getPlannerOptions(),
+                                                                                   dag.getLabel(),
+                                                                                   dag.getIndex(),
+                                                                                   ".cache" ) );
+
+        for( Iterator<String> it = result.iterator(); it.hasNext(); ){
+            File f = new File( submitDir, it.next() );
+            if( !f.isFile() || f.getAbsoluteFile().equals( checkpoint.getAbsoluteFile() ) ){
+                it.remove();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the files in the submit directory written out for a job, and for
+     * the constituent jobs of a clustered job.
+     *
+     * @param job     the job
+     * @param dir     the absolute path to the submit directory, ending in a separator
+     * @param result  the set to which the relative paths are added
+     */
+    private void listSubmitFiles( Job job, String dir, Set<String> result ){
+        String stdin = job.getStdIn();
+        if( stdin != null && stdin.length() > 0 ){
+            if( !new File( stdin ).isAbsolute() ){
+                result.add( stdin );
+            }
+            else if( stdin.startsWith( dir ) ){
+                result.add( stdin.substring( dir.length() ) );
+            }
+        }
+
+        String files = job.condorVariables.getIPFilesForTransfer();
+        if( files != null ){
+            for( String path: files.split( "," ) ){
+                path = path.trim();
+                if( path.startsWith( dir ) ){
+                    result.add( path.substring( dir.length() ) );
+                }
+            }
+        }
+
+        if( job instanceof AggregatedJob ){
+            for( Iterator<GraphNode> it = ((AggregatedJob)job).nodeIterator(); it.hasNext(); ){
+                listSubmitFiles( (Job)it.next().getContent(), dir, result );
+            }
+        }
+    }
+
+    /**
+     * Writes out the nodes of a graph, followed by the edges. The edges are
+     * written out as the indices of the children of each node.
+     *
+     * @param out    the output
+     * @param graph  the graph
+     */
+    private void writeGraph( Output out, Graph graph ) throws IOException{
+        Map<String,Integer> indices = new HashMap<String,Integer>();
+        List<GraphNode> nodes = new ArrayList<GraphNode>( graph.size() );
+        for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            indices.put( node.getID(), nodes.size() );
+            nodes.add( node );
+        }
+
+        out.writeVarInt( nodes.size() );
+        for( GraphNode node: nodes ){
+            out.writeString( node.getID() );
+            writeJob( out, (Job)node.getContent() );
+        }
+        for( GraphNode node: nodes ){
+            Collection<GraphNode> children = node.getChildren();
+            out.writeVarInt( children.size() );
+            for( GraphNode child: children ){
+                Integer index = indices.get( child.getID() );
+                if( index == null ){
+                    throw new RuntimeException( "Child " + child.getID() + " of node " + node.getID() +
+                                                " is not a node in the graph being checkpointed" );
+                }
+                out.writeVarInt( index );
+            }
+        }
+    }
+
+    /**
+     * Reads in the nodes and the edges of a graph.
+     *
+     * @param in     the input
+     * @param graph  the graph to populate
+     * @param dag    the workflow being loaded
+     */
+    private void readGraph( Input in, Graph graph, ADag dag ) throws IOException{
+        GraphNode[] nodes = new GraphNode[ in.readVarInt() ];
+        for( int i = 0; i < nodes.length; i++ ){
+            String id = in.readString();
+            nodes[i] = new GraphNode( id, readJob( in, dag ) );
+            graph.addNode( nodes[i] );
+        }
+        for( int i = 0; i < nodes.length; i++ ){
+            for( int j = in.readVarInt(); j > 0; j-- ){
+                graph.addEdge( nodes[i], nodes[ in.readVarInt() ] );
+            }
+        }
+    }
+
+    /**
+     * Writes out a job.
+     *
+     * @param out  the output
+     * @param job  the job
+     */
+    private void writeJob( Output out, Job job ) throws IOException{
+        byte type;
+        if( job instanceof AggregatedJob ){
+            type = AGGREGATED_JOB;
+        }
+        else if( job instanceof DAGJob ){
+            type = DAG_JOB;
+        }
+        else if( job instanceof DAXJob ){
+            type = DAX_JOB;
+        }
+        else if( job instanceof TransferJob ){
+            type = TRANSFER_JOB;
+        }
+        else if( job.getClass().equals( Job.class ) ){
+            type = JOB;
+        }
+        else{
+            throw new RuntimeException( "Unable to checkpoint job " + job.getID() + " of type " +
+                                        job.getClass().getName() );
+        }
+        out.writeByte( type );
+
+        out.writeInt( job.jobClass );
+        out.writeString( job.jobID );
+        out.writeString( job.jobName );
+        out.writeString( job.logicalName );
+        out.writeString( job.logicalId );
+        out.writeString( job.namespace );
+        out.writeString( job.version );
+        out.writeString( job.dvName );
+        out.writeString( job.dvNamespace );
+        out.writeString( job.dvVersion );
+        out.writeString( job.globusScheduler );
+        out.writeString( job.executable );
+        out.writeString( job.condorUniverse );
+        out.writeString( job.stdIn );
+        out.writeString( job.stdOut );
+        out.writeString( job.stdErr );
+        out.writeString( job.strargs );
+        out.writeString( job.executionPool );
+        out.writeInt( job.level );
+        out.writeDouble( job.getRuntime() );
+        out.writeBoolean( job.userExecutablesStagedForJob() );
+        out.writeString( job.getStagingSiteHandle() );
+        out.writeString( job.getDirectory() );
+        out.writeString( job.getNodeLabel() );
+
+        writeProfiles( out, job.globusRSL );
+        writeProfiles( out, job.condorVariables );
+        writeProfiles( out, job.envVariables );
+        writeProfiles( out, job.dagmanVariables );
+        writeProfiles( out, job.hints );
+        writeProfiles( out, job.vdsNS );
+        writeProfiles( out, job.getMetadata() );
+
+        writeFiles( out, job.getInputFiles() );
+        writeFiles( out, job.getOutputFiles() );
+
+        writeNotifications( out, job.getNotifications() );
+
+        CredentialHandler.TYPE credential = job.getSubmissionCredential();
+        out.writeString( credential == null ? null : credential.name() );
+        Map<String, Set<CredentialHandler.TYPE>> credentials = job.getCredentialTypes();
+        out.writeVarInt( credentials.size() );
+        for( Map.Entry<String, Set<CredentialHandler.TYPE>> entry: credentials.entrySet() ){
+            out.writeString( entry.getKey() );
+            out.writeVarInt( entry.getValue().size() );
+            for( CredentialHandler.TYPE t: entry.getValue() ){
+                out.writeString( t.name() );
+            }
+        }
+
+        switch( type ){
+            case TRANSFER_JOB:
+                out.writeString( ((TransferJob)job).getNonThirdPartySite() );
+                break;
+
+            case DAG_JOB:
+                out.writeString( ((DAGJob)job).getDAGLFN() );
+                out.writeString( ((DAGJob)job).getDAGFile() );
+                break;
+
+            case DAX_JOB:
+                out.writeString( ((DAXJob)job).getDAXLFN() );
+                out.writeString( ((DAXJob)job).getDAXFile() );
+                break;
+
+            case AGGREGATED_JOB:
+                AggregatedJob aggregated = (AggregatedJob)job;
+                out.writeBoolean( aggregated.renderedToExecutableForm() );
+                JobAggregator aggregator = aggregated.getJobAggregator();
+                out.writeString( aggregator == null ? null : aggregator.getClass().getName() );
+                writeGraph( out, aggregated );
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads in a job.
+     *
+     * @param in   the input
+     * @param dag  the workflow being loaded
+     *
+     * @return the job
+     */
+    private Job readJob( Input in, ADag dag ) throws IOException{
+        byte type = in.readByte();
+        Job job;
+        switch( type ){
+            case JOB:
+                job = new Job();
+                break;
+
+            case TRANSFER_JOB:
+                job = new TransferJob();
+                break;
+
+            case DAG_JOB:
+                job = new DAGJob();
+                break;
+
+            case DAX_JOB:
+                job = new DAXJob();
+                break;
+
+            case AGGREGATED_JOB:
+                job = new AggregatedJob();
+                break;
+
+            default:
+                throw new RuntimeException( "Unknown job type " + type + " in workflow checkpoint" );
+        }
+
+        job.jobClass = in.readInt();
+        job.jobID = in.readString();
+        job.jobName = in.readString();
+        job.logicalName = in.readString();
+        job.logicalId = in.readString();
+        job.namespace = in.readString();
+        job.version = in.readString();
+        job.dvName = in.readString();
+        job.dvNamespace = in.readString();
+        job.dvVersion = in.readString();
+        job.globusScheduler = in.readString();
+        job.executable = in.readString();
+        job.condorUniverse = in.readString();
+        job.stdIn = in.readString();
+        job.stdOut = in.readString();
+        job.stdErr = in.readString();
+        job.strargs = in.readString();
+        job.executionPool = in.readString();
+        job.level = in.readInt();
+        job.setRuntime( in.readDouble() );
+        job.setExecutableStagingForJob( in.readBoolean() );
+        job.setStagingSiteHandle( in.readString() );
+        job.setDirectory( in.readString() );
+        job.setNodeLabel( in.readString() );
+
+        job.globusRSL = (Globus)readProfiles( in, job.globusRSL );
+        job.condorVariables = (Condor)readProfiles( in, job.condorVariables );
+        job.envVariables = (ENV)readProfiles( in, job.envVariables );
+        job.dagmanVariables = (Dagman)readProfiles( in, job.dagmanVariables );
+        job.hints = (Hints)readProfiles( in, job.hints );
+        job.vdsNS = (Pegasus)readProfiles( in, job.vdsNS );
+        readProfiles( in, job.getMetadata() );
+
+        readFiles( in, job.getInputFiles() );
+        readFiles( in, job.getOutputFiles() );
+
+        readNotifications( in, job.getNotifications() );
+
+        String credential = in.readString();
+        job.setSubmissionCredential( credential == null ? null : CredentialHandler.TYPE.valueOf( credential ) );
+        for( int i = in.readVarInt(); i > 0; i-- ){
+            String site = in.readString();
+            for( int j = in.readVarInt(); j > 0; j-- ){
+                job.addCredentialType( site, CredentialHandler.TYPE.valueOf( in.readString() ) );
+            }
+        }
+
+        switch( type ){
+            case TRANSFER_JOB:
+                ((TransferJob)job).setNonThirdPartySite( in.readString() );
+                break;
+
+            case DAG_JOB:
+                ((DAGJob)job).setDAGLFN( in.readString() );
+                ((DAGJob)job).setDAGFile( in.readString() );
+                break;
+
+            case DAX_JOB:
+                ((DAXJob)job).setDAXLFN( in.readString() );
+                ((DAXJob)job).setDAXFile( in.readString() );
+                break;
+
+            case AGGREGATED_JOB:
+                AggregatedJob aggregated = (AggregatedJob)job;
+                aggregated.setRenderedToExecutableForm( in.readBoolean() );
+                String aggregator = in.readString();
+                if( aggregator != null ){
+                    aggregated.setJobAggregator( getJobAggregator( aggregator, dag ) );
+                }
+                readGraph( in, aggregated, dag );
+                break;
+
+            default:
+                break;
+        }
+        return job;
+    }
+
+    /**
+     * Returns the job aggregator for a class, loading it the first time it
+     * is requested.
+     *
+     * @param className  the fully qualified name of the aggregator class
+     * @param dag        the workflow being loaded
+     *
+     * @return the job aggregator
+     */
+    private JobAggregator getJobAggregator( String className, ADag dag ){
+        JobAggregator aggregator = mAggregators.get( className );
+        if( aggregator == null ){
+            aggregator = JobAggregatorFactory.loadInstance( className, dag, mBag );
+            mAggregators.put( className, aggregator );
+        }
+        return aggregator;
+    }
+
+    /**
+     * Writes out the profiles in a namespace.
+     *
+     * @param out        the output
+     * @param namespace  the namespace, can be null
+     */
+    private void writeProfiles( Output out, Namespace namespace ) throws IOException{
+        if( namespace == null ){
+            out.writeVarInt( 0 );
+            return;
+        }
+        Set keys = namespace.keySet();
+        if( keys == null ){
+            out.writeVarInt( 1 );
+            return;
+        }
+        out.writeVarInt( keys.size() + 1 );
+        for( Iterator it = keys.iterator(); it.hasNext(); ){
+            String key = (String)it.next();
+            out.writeString( key );
+            out.writeString( (String)namespace.get( key ) );
+        }
+    }
+
+    /**
+     * Reads in the profiles into a namespace.
+     *
+     * @param in         the input
+     * @param namespace  the namespace to populate
+     *
+     * @return the namespace, or null if the namespace was null when written out
+     */
+    private Namespace readProfiles( Input in, Namespace namespace ) throws IOException{
+        int count = in.readVarInt();
+        if( count == 0 ){
+            return null;
+        }
+        for( int i = 1; i < count; i++ ){
+            String key = in.readString();
+            namespace.construct( key, in.readString() );
+        }
+        return namespace;
+    }
+
+    /**
+     * Writes out a collection of files.
+     *
+     * @param out    the output
+     * @param files  the files
+     */
+    private void writeFiles( Output out, Collection<PegasusFile> files ) throws IOException{
+        out.writeVarInt( files.size() );
+        for( PegasusFile pf: files ){
+            out.writeByte( pf instanceof FileTransfer ? FILE_TRANSFER : PEGASUS_FILE );
+            out.writeString( pf.getLFN() );
+            if( pf instanceof FileTransfer ){
+                out.writeString( ((FileTransfer)pf).getJobName() );
+            }
+            out.writeVarInt( pf.getType() );
+            out.writeVarInt( pf.getTransferFlag() );
+            out.writeString( pf.getLinkage() == null ? null : pf.getLinkage().name() );
+            out.writeDouble( pf.getSize() );
+
+            BitSet flags = pf.getFlags();
+            int mask = 0;
+            for( int i = flags.nextSetBit( 0 ); i >= 0; i = flags.nextSetBit( i + 1 ) ){
+                mask |= 1 << i;
+            }
+            out.writeVarInt( mask );
+
+            if( pf instanceof FileTransfer ){
+                FileTransfer ft = (FileTransfer)pf;
+                out.writeVarInt( ft.getPriority() );
+                out.writeString( ft.getURLForRegistrationOnDestination() );
+                writeURLs( out, ft.getSourceURLs() );
+                writeURLs( out, ft.getDestURLs() );
+            }
+        }
+    }
+
+    /**
+     * Reads in files into a collection.
+     *
+     * @param in     the input
+     * @param files  the collection to populate
+     */
+    private void readFiles( Input in, Collection<PegasusFile> files ) throws IOException{
+        for( int i = in.readVarInt(); i > 0; i-- ){
+            byte type = in.readByte();
+            String lfn = in.readString();
+            PegasusFile pf = ( type == FILE_TRANSFER ) ?
+                             new FileTransfer( lfn, in.readString() ):
+                             new PegasusFile( lfn );
+            pf.setType( in.readVarInt() );
+            pf.setTransferFlag( in.readVarInt() );
+            String link = in.readString();
+            pf.setLinkage( link == null ? null : PegasusFile.LINKAGE.valueOf( link ) );
+            pf.setSize( in.readDouble() );
+
+            BitSet flags = pf.getFlags();
+            flags.clear();
+            for( int mask = in.readVarInt(), bit = 0; mask != 0; mask >>>= 1, bit++ ){
+                if( ( mask & 1 ) != 0 ){
+                    flags.set( bit );
+                }
+            }
+
+            if( type == FILE_TRANSFER ){
+                FileTransfer ft = (FileTransfer)pf;
+                ft.setPriority( in.readVarInt() );
+                ft.setURLForRegistrationOnDestination( in.readString() );
+                for( int j = in.readVarInt(); j > 0; j-- ){
+                    String site = in.readString();
+                    for( int k = in.readVarInt(); k > 0; k-- ){
+                        ft.addSource( site, in.readString() );
+                    }
+                }
+                for( int j = in.readVarInt(); j > 0; j-- ){
+                    String site = in.readString();
+                    for( int k = in.readVarInt(); k > 0; k-- ){
+                        ft.addDestination( site, in.readString() );
+                    }
+                }
+            }
+            files.add( pf );
+        }
+    }
+
+    /**
+     * Writes out the URL's of a transfer indexed by site.
+     *
+     * @param out   the output
+     * @param urls  the URL's indexed by site
+     */
+    private void writeURLs( Output out, Map<String,List<String>> urls ) throws IOException{
+        out.writeVarInt( urls.size() );
+        for( Map.Entry<String,List<String>> entry: urls.entrySet() ){
+            out.writeString( entry.getKey() );
+            out.writeVarInt( entry.getValue().size() );
+            for( String url: entry.getValue() ){
+                out.writeString( url );
+            }
+        }
+    }
+
+    /**
+     * Writes out the notifications.
+     *
+     * @param out            the output
+     * @param notifications  the notifications
+     */
+    private void writeNotifications( Output out, Notifications notifications ) throws IOException{
+        for( Invoke.WHEN when : Invoke.WHEN.values() ){
+            Collection<Invoke> invokes = notifications.getNotifications( when );
+            out.writeVarInt( invokes.size() );
+            for( Invoke invoke: invokes ){
+                out.writeString( invoke.getWhat() );
+            }
+        }
+    }
+
+    /**
+     * Reads in the notifications.
+     *
+     * @param in             the input
+     * @param notifications  the notifications to populate
+     */
+    private void readNotifications( Input in, Notifications notifications ) throws IOException{
+        for( Invoke.WHEN when : Invoke.WHEN.values() ){
+            for( int i = in.readVarInt(); i > 0; i-- ){
+                notifications.add( new Invoke( when, in.readString() ) );
+            }
+        }
+    }
+
+    /**
+     * Writes out the replica catalog entries for a LFN.
+     *
+     * @param out      the output
+     * @param lfn      the LFN
+     * @param entries  the <code>ReplicaCatalogEntry</code> objects
+     */
+    private void writeReplicas( Output out, String lfn, Collection entries ) throws IOException{
+        out.writeString( lfn );
+        out.writeVarInt( entries.size() );
+        for( Iterator it = entries.iterator(); it.hasNext(); ){
+            ReplicaCatalogEntry rce = (ReplicaCatalogEntry)it.next();
+            out.writeString( rce.getPFN() );
+            out.writeVarInt( rce.getAttributeCount() );
+            for( Iterator attrs = rce.getAttributeIterator(); attrs.hasNext(); ){
+                String key = (String)attrs.next();
+                Object value = rce.getAttribute( key );
+                out.writeString( key );
+                out.writeString( value == null ? null : value.toString() );
+            }
+        }
+    }
+
+    /**
+     * Reads in the replica catalog entries for a LFN. The LFN should have
+     * been read already.
+     *
+     * @param in  the input
+     *
+     * @return List of <code>ReplicaCatalogEntry</code> objects
+     */
+    private List<ReplicaCatalogEntry> readReplicas( Input in ) throws IOException{
+        int count = in.readVarInt();
+        List<ReplicaCatalogEntry> entries = new ArrayList<ReplicaCatalogEntry>( count );
+        for( int i = 0; i < count; i++ ){
+            ReplicaCatalogEntry rce = new ReplicaCatalogEntry( in.readString() );
+            for( int j = in.readVarInt(); j > 0; j-- ){
+                String key = in.readString();
+                rce.setAttribute( key, in.readString() );
+            }
+            entries.add( rce );
+        }
+        return entries;
+    }
+
+    /**
+     * Writes out the checkpoint. Each string is written out once, and is
+     * referred to by its index after that.
+     */
+    private static class Output {
+
+        /**
+         * The underlying stream.
+         */
+        private DataOutputStream mStream;
+
+        /**
+         * The indices of the strings written out so far.
+         */
+        private Map<String,Integer> mStrings;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param file  the file to write to
+         */
+        public Output( File file ) throws IOException{
+            mStream = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ) );
+            mStrings = new HashMap<String,Integer>();
+        }
+
+        public void writeByte( int value ) throws IOException{
+            mStream.writeByte( value );
+        }
+
+        public void writeBoolean( boolean value ) throws IOException{
+            mStream.writeBoolean( value );
+        }
+
+        public void writeInt( int value ) throws IOException{
+            mStream.writeInt( value );
+        }
+
+        public void writeDouble( double value ) throws IOException{
+            mStream.writeDouble( value );
+        }
+
+        /**
+         * Writes out a non negative integer in 7 bit groups, with the high bit
+         * indicating that more groups follow.
+         *
+         * @param value  the value
+         */
+        public void writeVarInt( int value ) throws IOException{
+            while( ( value & ~0x7F ) != 0 ){
+                mStream.writeByte( ( value & 0x7F ) | 0x80 );
+                value >>>= 7;
+            }
+            mStream.writeByte( value );
+        }
+
+        /**
+         * Writes out a string. A 0 is written for null, a 1 followed by the
+         * UTF-8 bytes for a new string, else the index of the string plus 2.
+         *
+         * @param value  the string, can be null
+         */
+        public void writeString( String value ) throws IOException{
+            if( value == null ){
+                writeVarInt( 0 );
+                return;
+            }
+            Integer index = mStrings.get( value );
+            if( index != null ){
+                writeVarInt( index + 2 );
+                return;
+            }
+            mStrings.put( value, mStrings.size() );
+            byte[] bytes = value.getBytes( UTF8 );
+            writeVarInt( 1 );
+            writeVarInt( bytes.length );
+            mStream.write( bytes );
+        }
+
+        /**
+         * Writes out the length of a file followed by its contents.
+         *
+         * @param file  the file
+         */
+        public void writeFile( File file ) throws IOException{
+            long length = file.length();
+            mStream.writeLong( length );
+            FileInputStream in = new FileInputStream( file );
+            try{
+                byte[] buffer = new byte[ 1 << 16 ];
+                long remaining = length;
+                while( remaining > 0 ){
+                    int read = in.read( buffer, 0, (int)Math.min( buffer.length, remaining ) );
+                    if( read < 0 ){
+                        throw new EOFException( "File " + file + " was truncated while being written out" );
+                    }
+                    mStream.write( buffer, 0, read );
+                    remaining -= read;
+                }
+            }
+            finally{
+                in.close();
+            }
+        }
+
+        public void close() throws IOException{
+            mStream.close();
+        }
+    }
+
+    /**
+     * Reads in the checkpoint through a memory mapped window, that is remapped
+     * when a read goes past the end of the window.
+     */
+    private static class Input {
+
+        /**
+         * The size of the memory mapped window.
+         */
+        private static final long WINDOW_SIZE = 64 * 1024 * 1024;
+
+        /**
+         * The underlying stream.
+         */
+        private FileInputStream mStream;
+
+        /**
+         * The channel for the file.
+         */
+        private FileChannel mChannel;
+
+        /**
+         * The size of the file.
+         */
+        private long mSize;
+
+        /**
+         * The offset in the file of the start of the current window.
+         */
+        private long mOffset;
+
+        /**
+         * The current window.
+         */
+        private MappedByteBuffer mBuffer;
+
+        /**
+         * The strings read in so far.
+         */
+        private List<String> mStrings;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param file  the file to read
+         */
+        public Input( File file ) throws IOException{
+            mStream = new FileInputStream( file );
+            mChannel = mStream.getChannel();
+            mSize = mChannel.size();
+            mOffset = 0;
+            mBuffer = mChannel.map( FileChannel.MapMode.READ_ONLY, 0, Math.min( WINDOW_SIZE, mSize ) );
+            mStrings = new ArrayList<String>();
+        }
+
+        /**
+         * Ensures that the number of bytes passed can be read from the
+         * current window, moving the window if required.
+         *
+         * @param length  the number of bytes
+         */
+        private void ensure( int length ) throws IOException{
+            if( mBuffer.remaining() >= length ){
+                return;
+            }
+            long position = mOffset + mBuffer.position();
+            long size = Math.min( Math.max( WINDOW_SIZE, length ), mSize - position );
+            if( size < length ){
+                throw new EOFException( "Unexpected end of workflow checkpoint" );
+            }
+            mBuffer = mChannel.map( FileChannel.MapMode.READ_ONLY, position, size );
+            mOffset = position;
+        }
+
+        public byte readByte() throws IOException{
+            ensure( 1 );
+            return mBuffer.get();
+        }
+
+        public boolean readBoolean() throws IOException{
+            return readByte() != 0;
+        }
+
+        public int readInt() throws IOException{
+            ensure( 4 );
+            return mBuffer.getInt();
+        }
+
+        public double readDouble() throws IOException{
+            ensure( 8 );
+            return mBuffer.getDouble();
+        }
+
+        /**
+         * Reads in the contents of a file written out by Output.writeFile.
+         *
+         * @return the contents of the file
+         */
+        public byte[] readBytes() throws IOException{
+            ensure( 8 );
+            long length = mBuffer.getLong();
+            if( length > Integer.MAX_VALUE ){
+                throw new IOException( "File of size " + length + " in workflow checkpoint is too large" );
+            }
+            byte[] contents = new byte[ (int)length ];
+            int offset = 0;
+            while( offset < contents.length ){
+                int chunk = Math.min( 1 << 16, contents.length - offset );
+                ensure( chunk );
+                mBuffer.get( contents, offset, chunk );
+                offset += chunk;
+            }
+            return contents;
+        }
+
+        public int readVarInt() throws IOException{
+            int value = 0;
+            for( int shift = 0; ; shift += 7 ){
+                byte b = readByte();
+                value |= ( b & 0x7F ) << shift;
+                if( ( b & 0x80 ) == 0 ){
+                    return value;
+                }
+            }
+        }
+
+        public String readString() throws IOException{
+            int tag = readVarInt();
+            if( tag == 0 ){
+                return null;
+            }
+            if( tag > 1 ){
+                return mStrings.get( tag - 2 );
+            }
+            int length = readVarInt();
+            ensure( length );
+            byte[] bytes = new byte[ length ];
+            mBuffer.get( bytes );
+            String value = new String( bytes, UTF8 );
+            mStrings.add( value );
+            return value;
+        }
+
+        public void close() throws IOException{
+            mBuffer = null;
+            mStream.close();
+        }
+    }
+}
@@ -27,14 +27,24 @@ import edu.isi.pegasus.planner.namespace.Dagman;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNodeContent;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 
@@ -69,7 +79,7 @@ public class InPlace implements CleanupStrategy{
 
     /**
      * The mapping to siteHandle to all the jobs that are mapped to it
-     * mapping to siteHandle(String) to Set<GraphNodes>
+     * mapping to siteHandle(String) to List<GraphNodes> in topological order
      */
     private HashMap mResMap;
 
@@ -126,6 +136,11 @@ public class InPlace implements CleanupStrategy{
      * factor
      */
     private boolean mUseSizeFactor;
+
+    /**
+     * The number of threads used to determine the cleanup jobs for the sites.
+     */
+    private int mThreads;
     
     /**
      * The default constructor.
@@ -154,6 +169,7 @@ public class InPlace implements CleanupStrategy{
         mMaxDepth=0;
 
         mUseSizeFactor = false;
+        mThreads = mProps.getCleanupThreads();
 
         //set the default value for maxjobs only if not specified
         //in the properties
@@ -264,33 +280,71 @@ public class InPlace implements CleanupStrategy{
 //        mLogger.log( "The input workflow " + workflow,
 //                     LogManager.DEBUG_MESSAGE_LEVEL );
 
-        //set the depth and ResMap values iteratively
-        setDepth_ResMap( workflow.getRoots() );
+        //set the depth and ResMap values in a single topological pass
+        setDepth_ResMap( workflow );
 
         mLogger.log( "Number of sites " + mResMap.size(),
                 LogManager.DEBUG_MESSAGE_LEVEL );
 
         //output for debug
-        StringBuffer message = new StringBuffer();
-        for( Iterator it= mResMap.entrySet().iterator(); it.hasNext() ;){
-            Map.Entry entry = (Map.Entry)it.next();
-            message.append( "Site " ).append( (String)entry.getKey())
-            .append(" count jobs = ").append( ( (Set)entry.getValue()).size());
-            mLogger.log( message.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
-
-            Set whatever= (Set)entry.getValue() ;
-            for( Iterator weit=whatever.iterator(); weit.hasNext() ; ){
-                mLogger.log( "* "+ ((GraphNode)weit.next()).getID(),
-                        LogManager.DEBUG_MESSAGE_LEVEL );
+        if( mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL ) ){
+            StringBuffer message = new StringBuffer();
+            for( Iterator it= mResMap.entrySet().iterator(); it.hasNext() ;){
+                Map.Entry entry = (Map.Entry)it.next();
+                message.append( "Site " ).append( (String)entry.getKey())
+                .append(" count jobs = ").append( ( (List)entry.getValue()).size());
+                mLogger.log( message.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
+
+                List whatever= (List)entry.getValue() ;
+                for( Iterator weit=whatever.iterator(); weit.hasNext() ; ){
+                    mLogger.log( "* "+ ((GraphNode)weit.next()).getID(),
+                            LogManager.DEBUG_MESSAGE_LEVEL );
+                }
+                message = new StringBuffer();
             }
-            message = new StringBuffer();
         }
 
 
-        //for each site do the process of adding cleanup jobs
-        for( Iterator it= mResMap.entrySet().iterator(); it.hasNext() ;){
-            Map.Entry entry = (Map.Entry)it.next();
-            addCleanUpJobs( (String)entry.getKey() , (Set)entry.getValue() , workflow );
+        //for each site do the process of adding cleanup jobs.
+        //the sites are independent of each other, and can be processed
+        //in parallel. the cleanup jobs are added to the workflow
+        //one site at a time in either case
+        ExecutorService executor = ( mThreads > 1 && mResMap.size() > 1 )?
+                                   this.createExecutor( Math.min( mThreads, mResMap.size() ) ):
+                                   null;
+        try{
+            List<SiteCleanup> cleanups = new LinkedList();
+            for( Iterator it= mResMap.entrySet().iterator(); it.hasNext() ;){
+                Map.Entry entry = (Map.Entry)it.next();
+                SiteCleanup cleanup = new SiteCleanup( (String)entry.getKey(),
+                                                       (List<GraphNode>)entry.getValue(),
+                                                       workflow,
+                                                       executor != null );
+                if( executor == null ){
+                    cleanup.call();
+                }
+                else{
+                    cleanup.mFuture = executor.submit( cleanup );
+                }
+                cleanups.add( cleanup );
+            }
+
+            if( executor != null ){
+                //the workflow is read by the tasks till all of them finish
+                for( SiteCleanup cleanup : cleanups ){
+                    cleanup.waitFor();
+                }
+                for( SiteCleanup cleanup : cleanups ){
+                    for( GraphNode cleanupNode : cleanup.mCleanupNodes ){
+                        this.addCleanupNode( cleanupNode, workflow, true );
+                    }
+                }
+            }
+        }
+        finally{
+            if( executor != null ){
+                executor.shutdown();
+            }
         }
 
 //        mLogger.log( "The resultant workflow with cleanup jobs " + workflow,
@@ -313,62 +367,73 @@ public class InPlace implements CleanupStrategy{
     }
 
     /**
-     * A BFS implementation to set depth value (roots have depth 1) and also
-     * to populate mResMap ,mResMapLeaves,mResMapRoots which contains all the
-     * jobs that are assigned to a particular resource
+     * A topological traversal that sets the depth value (roots have depth 1)
+     * of each job to the length of the longest path to it from a root, and
+     * also populates mResMap with the jobs that are assigned to a particular
+     * resource in topological order. Each job is visited once, and each edge
+     * is traversed once.
      *
-     * @param roots List of GraphNode objects that are roots
+     * @param workflow  the workflow
      */
-    private void setDepth_ResMap( List roots ){
-        LinkedList que = new LinkedList();
-        que.addAll( roots );
-
-        for(int i=0; i < que.size(); i++){
-            ( (GraphNode)que.get(i) ).setDepth( 1 );
+    private void setDepth_ResMap( Graph workflow ){
+        //index the nodes to track their depths and the number of
+        //parents not yet traversed in arrays
+        List<GraphNode> nodes = new ArrayList<GraphNode>();
+        Map<GraphNode,Integer> indices = new IdentityHashMap<GraphNode,Integer>();
+        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = (GraphNode)it.next();
+            indices.put( node, nodes.size() );
+            nodes.add( node );
         }
 
-        while( que.size() >= 1 ){
-            GraphNode curGN = (GraphNode)que.removeFirst();
+        int n = nodes.size();
+        int[] depth   = new int[ n ];
+        int[] pending = new int[ n ];
+        int[] queue   = new int[ n ];
+        int tail = 0;
+        for( int i = 0; i < n; i++ ){
+            pending[i] = nodes.get( i ).getParents().size();
+        }
+        for( Iterator it = workflow.getRoots().iterator(); it.hasNext(); ){
+            int root = indices.get( (GraphNode)it.next() );
+            depth[ root ] = 1;
+            queue[ tail++ ] = root;
+        }
 
-            //debug
-            /*
-            System.out.print(curGN.getDepth() +" "+((Job)curGN.getContent()).getSiteHandle()+" ");
-            if( curGN.getChildren() == null )
-                System.out.print("0");
-            else
-                System.out.print( curGN.getChildren().size() );
-             */
+        for( int head = 0; head < tail; head++ ){
+            int current = queue[ head ];
+            GraphNode curGN = nodes.get( current );
+            curGN.setDepth( depth[ current ] );
+            if( depth[ current ] > mMaxDepth ){
+                mMaxDepth = depth[ current ];
+            }
 
-            //populate mResMap ,mResMapLeaves,mResMapRoots
+            //populate mResMap
             Job si = ( Job )curGN.getContent();
-            
-            String site = getSiteForCleanup( si ); 
-            if( !mResMap.containsKey( site ) ){
-                mResMap.put( site, new HashSet() );
-
+            String site = getSiteForCleanup( si );
+            List<GraphNode> siteNodes = (List<GraphNode>)mResMap.get( site );
+            if( siteNodes == null ){
+                siteNodes = new ArrayList<GraphNode>();
+                mResMap.put( site, siteNodes );
             }
-            ((Set)mResMap.get( site )).add( curGN );
-            
-            
-            
-            //System.out.println( "  site count="+((Set)mResMap.get( si.getSiteHandle() )).size() );
-
-
-            //now set the depth
+            siteNodes.add( curGN );
 
+            //a child is traversed once all its parents have been traversed
             for( Iterator it = curGN.getChildren().iterator() ; it.hasNext() ;){
-                GraphNode child = (GraphNode)it.next();
-                if(!( child.getDepth() == -1 || child.getDepth() < curGN.getDepth()+1 ) ){
-                    continue;
+                int child = indices.get( (GraphNode)it.next() );
+                if( depth[ child ] < depth[ current ] + 1 ){
+                    depth[ child ] = depth[ current ] + 1;
+                }
+                if( --pending[ child ] == 0 ){
+                    queue[ tail++ ] = child;
                 }
-
-                child.setDepth( curGN.getDepth() + 1 );
-                if( child.getDepth() > mMaxDepth ) mMaxDepth=child.getDepth();
-                que.addLast( child );
             }
-
         }
 
+        if( tail != n ){
+            throw new RuntimeException( "Unable to determine the depth of " + ( n - tail ) +
+                                        " jobs for cleanup. The workflow has a cycle" );
+        }
     }
 
 
@@ -379,37 +444,39 @@ public class InPlace implements CleanupStrategy{
      * in the workflow
      *
      * @param site the site ID
-     * @param leaves the leaf jobs that are scheduled to site
+     * @param leaves the jobs that are scheduled to site in topological order
      * @param workflow the Graph into which new cleanup jobs can be added
+     * @param defer    whether to defer adding the cleanup jobs and the edges
+     *                 from their parents to the workflow. If true, the workflow
+     *                 is not modified.
+     *
+     * @return the cleanup nodes to be added to the workflow if deferred, else
+     *         an empty list.
      */
-    private void addCleanUpJobs( String site, Set leaves, Graph workflow ){
+    private List<GraphNode> addCleanUpJobs( String site, List<GraphNode> leaves, Graph workflow, boolean defer ){
+        boolean debug = mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL );
 
         mLogger.log(  site + " " + leaves.size() , LogManager.DEBUG_MESSAGE_LEVEL );
         HashMap cleanedBy = new HashMap();
 
-        //the below in case we get rid of the primitive java 1.4
-        //PriorityQueue<GraphNode> pQ=new   PriorityQueue<GraphNode>(resMap.get(site).size(),GraphNode_ORDER);
-
         StringBuffer message = new StringBuffer();
-        message.append( "Leaf  jobs scheduled at site ").append( site )
-        .append( " are " );
-        for( Iterator it = leaves.iterator(); it.hasNext(); ){
-            message.append( ((GraphNode)it.next()).getID() );
-            message.append( "," );
+        if( debug ){
+            message.append( "Leaf  jobs scheduled at site ").append( site )
+            .append( " are " );
+            for( Iterator it = leaves.iterator(); it.hasNext(); ){
+                message.append( ((GraphNode)it.next()).getID() );
+                message.append( "," );
+            }
+            mLogger.log( message.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
         }
-        mLogger.log( message.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
 
-        //its a Set of GraphNode's
-        Set[] pQA = new Set[ mMaxDepth + 1 ];
+        //bucket the jobs by their depth, retaining the topological order
+        List<GraphNode>[] pQA = new List[ mMaxDepth + 1 ];
         for( int i = 0 ; i < pQA.length ; i++ ){
-            pQA[i] = new HashSet();
+            pQA[i] = new ArrayList<GraphNode>();
         }
-
-        //populate the priority Array pQA with all the leaf nodes
-        for( Iterator it = leaves.iterator() ; it.hasNext() ;){
-            GraphNode gN = (GraphNode)it.next();
+        for( GraphNode gN : leaves ){
             pQA[ gN.getDepth() ].add( gN );
-
         }
         
         List<GraphNode> wfCleanupNodes = new LinkedList();//stores all the cleanup nodes added for the workflow
@@ -418,9 +485,7 @@ public class InPlace implements CleanupStrategy{
             List<GraphNode> cleanupNodesPerLevel = new LinkedList();
 
             //process all elements in the current priority
-            while( pQA[curP].size() >= 1 ){
-                GraphNode curGN = (GraphNode) pQA[ curP ].iterator().next();
-                pQA[ curP ].remove( curGN );
+            for( GraphNode curGN : pQA[ curP ] ){
                 Job curGN_SI = (Job) curGN.getContent();
                 
                 if( !typeNeedsCleanUp( curGN ) ) { 
@@ -458,13 +523,7 @@ public class InPlace implements CleanupStrategy{
                 }
                 
                 //remove the files in fileSet that are in this.mDoNotClean
-                Set fileSet2 = new HashSet( fileSet );
-                for( Iterator itfs2 = fileSet2.iterator() ; itfs2.hasNext() ; ){
-                    Object _dum_pf = itfs2.next() ;
-                    if( this.mDoNotClean.contains( _dum_pf ) ){
-                        fileSet.remove( _dum_pf );
-                    }
-                }
+                fileSet.removeAll( this.mDoNotClean );
 
                 // create new GraphNode with MLogicalID=mLogicalName , mParents
                 // mContent ID ,Name , jobtype
@@ -483,7 +542,7 @@ public class InPlace implements CleanupStrategy{
                         if( !child.getParents().contains( curGN ) ){
                             child.addParent( curGN );
                         }
-                        if( !curGN.getChildren().contains( child ) ){
+                        if( !defer && !curGN.getChildren().contains( child ) ){
                             curGN.addChild( child );
                         }
                     }else{
@@ -506,54 +565,15 @@ public class InPlace implements CleanupStrategy{
                     cleanupNodesPerLevel.add( nuGN );
                 }
 
-            }//end of while loop .  //process all elements in the current priority
+            }//end of for loop .  //process all elements in the current priority
 
             //we now have a list of cleanup jobs for this level
-            List<GraphNode> clusteredCleanupGraphNodes = clusterCleanupGraphNodes( cleanupNodesPerLevel, cleanedBy , site, curP );
+            List<GraphNode> clusteredCleanupGraphNodes = clusterCleanupGraphNodes( cleanupNodesPerLevel, cleanedBy , site, curP, defer );
             //for each clustered cleanup cleanupNode , add the associated cleanup job
             for( GraphNode cleanupNode: clusteredCleanupGraphNodes ){
-                 // We have always pass the associated compute job. Since now
-                 //a cleanup job can be associated with stageout jobs also, we
-                 //need to make sure that for the stageout job the cleanup job
-                 //is passed. Karan Jan 9, 2008
-                Job computeJob;
-
-                CleanupJobContent cleanupJobContent = (CleanupJobContent)cleanupNode.getContent();
-                GraphNode curGN = cleanupJobContent.getNode();
-                Job curGN_SI = (Job)curGN.getContent();
-                if( typeStageOut( curGN_SI.getJobType() ) ){
-                        
-                    //find a compute job that is parent of this
-                    //GraphNode node = (GraphNode)curGN.getParents().get( 0 );
-                    GraphNode node = null;
-                    for( GraphNode n: curGN.getParents() ){
-                        node = n;
-                        break;
-                    }
-                    if( node == null ){
-                        throw new RuntimeException( "Cleanup job does not have a compute job as it's parent " + cleanupNode.getID() );
-                    }
-                    computeJob = (Job)node.getContent();
-                    message = new StringBuffer();
-                    message.append( "For cleanup job " ).append( cleanupNode.getID() ).
-                            append( " the associated compute job is ").append( computeJob.getID() );
-                
-                    mLogger.log(  message.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
-                    
-                }
-                else{
-                    computeJob = curGN_SI;
+                if( !defer ){
+                    this.addCleanupNode( cleanupNode, workflow, false );
                 }
-                Job cleanupJob = mImpl.createCleanupJob( cleanupNode.getID(),
-                                                         cleanupJobContent.getListOfFilesToDelete(),
-                                                         computeJob
-                                                                 );
-
-
-                //add the job as a content to the graphnode
-                //and the cleanupNode itself to the Graph
-                cleanupNode.setContent( cleanupJob );
-                workflow.addNode(cleanupNode);
                 //add all the cleanup node to wf wide list to 
                 //use it for reducing the dependencies
                 wfCleanupNodes.add( cleanupNode );
@@ -566,14 +586,19 @@ public class InPlace implements CleanupStrategy{
         mLogger.log( "For site: " + site + " number of files cleaned up - " + cleanedBy.keySet().size() ,
                      LogManager.INFO_MESSAGE_LEVEL);
         mLogger.log( "CLEANUP LIST",LogManager.DEBUG_MESSAGE_LEVEL);
-        for( Iterator it = cleanedBy.keySet().iterator() ; it.hasNext() ;){
-            String lfn = (String)it.next();
-            GraphNode cl_GN = (GraphNode)cleanedBy.get(lfn);
-            Job cl_si = (Job)cl_GN.getContent();
-            //Arun please use a StringBuffer first
-            //Karan March 13, 2007
-            mLogger.log( "file:" + lfn + "  site:" + cl_si.getSiteHandle() + " " + cl_GN.getID() ,
-                    LogManager.DEBUG_MESSAGE_LEVEL );
+        if( debug ){
+            for( Iterator it = cleanedBy.keySet().iterator() ; it.hasNext() ;){
+                String lfn = (String)it.next();
+                GraphNode cl_GN = (GraphNode)cleanedBy.get(lfn);
+                //the content is only a cleanup job once the node has been added
+                String clSite = ( cl_GN.getContent() instanceof Job )?
+                                ((Job)cl_GN.getContent()).getSiteHandle():
+                                site;
+                //Arun please use a StringBuffer first
+                //Karan March 13, 2007
+                mLogger.log( "file:" + lfn + "  site:" + clSite + " " + cl_GN.getID() ,
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+            }
         }
 
 
@@ -587,6 +612,192 @@ public class InPlace implements CleanupStrategy{
             reduceDependency( cleanupNode );
         }
 
+        return defer ? wfCleanupNodes : new LinkedList<GraphNode>();
+    }
+
+    /**
+     * Creates the cleanup job for a clustered cleanup node, and adds the
+     * node to the workflow.
+     *
+     * @param cleanupNode  the clustered cleanup node with a CleanupJobContent
+     * @param workflow     the workflow
+     * @param linkParents  whether the node is to be added as a child to
+     *                     its parents.
+     */
+    private void addCleanupNode( GraphNode cleanupNode, Graph workflow, boolean linkParents ){
+         // We have always pass the associated compute job. Since now
+         //a cleanup job can be associated with stageout jobs also, we
+         //need to make sure that for the stageout job the cleanup job
+         //is passed. Karan Jan 9, 2008
+        Job computeJob;
+
+        CleanupJobContent cleanupJobContent = (CleanupJobContent)cleanupNode.getContent();
+        GraphNode curGN = cleanupJobContent.getNode();
+        Job curGN_SI = (Job)curGN.getContent();
+        if( typeStageOut( curGN_SI.getJobType() ) ){
+
+            //find a compute job that is parent of this
+            //GraphNode node = (GraphNode)curGN.getParents().get( 0 );
+            GraphNode node = null;
+            for( GraphNode n: curGN.getParents() ){
+                node = n;
+                break;
+            }
+            if( node == null ){
+                throw new RuntimeException( "Cleanup job does not have a compute job as it's parent " + cleanupNode.getID() );
+            }
+            computeJob = (Job)node.getContent();
+            StringBuffer message = new StringBuffer();
+            message.append( "For cleanup job " ).append( cleanupNode.getID() ).
+                    append( " the associated compute job is ").append( computeJob.getID() );
+
+            mLogger.log(  message.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
+
+        }
+        else{
+            computeJob = curGN_SI;
+        }
+        Job cleanupJob = mImpl.createCleanupJob( cleanupNode.getID(),
+                                                 cleanupJobContent.getListOfFilesToDelete(),
+                                                 computeJob
+                                                         );
+
+
+        //add the job as a content to the graphnode
+        //and the cleanupNode itself to the Graph
+        cleanupNode.setContent( cleanupJob );
+        workflow.addNode(cleanupNode);
+
+        if( linkParents ){
+            for( GraphNode parent : cleanupNode.getParents() ){
+                if( !parent.getChildren().contains( cleanupNode ) ){
+                    parent.addChild( cleanupNode );
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the thread pool used for determining the cleanup jobs for the
+     * sites.
+     *
+     * @param threads  the number of threads.
+     *
+     * @return the executor
+     */
+    private ExecutorService createExecutor( int threads ){
+        ThreadFactory factory = new ThreadFactory(){
+            private int mCount = 0;
+
+            public synchronized Thread newThread( Runnable r ){
+                Thread t = new Thread( r, "pegasus-cleanup-" + mCount++ );
+                t.setDaemon( true );
+                return t;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads,
+                                                              1L, TimeUnit.SECONDS,
+                                                              new LinkedBlockingQueue<Runnable>(),
+                                                              factory );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * Determines the cleanup jobs for the jobs mapped to a site. If deferred,
+     * the workflow is only read while determining the cleanup jobs, and the
+     * cleanup nodes are added to the workflow later by the thread adding
+     * the cleanup jobs.
+     */
+    private class SiteCleanup implements Callable<SiteCleanup> {
+
+        /**
+         * The site.
+         */
+        private final String mSite;
+
+        /**
+         * The jobs mapped to the site in topological order.
+         */
+        private final List<GraphNode> mNodes;
+
+        /**
+         * The workflow.
+         */
+        private final Graph mWorkflow;
+
+        /**
+         * Whether adding the cleanup nodes to the workflow is deferred.
+         */
+        private final boolean mDefer;
+
+        /**
+         * The cleanup nodes to be added to the workflow.
+         */
+        private List<GraphNode> mCleanupNodes;
+
+        /**
+         * The result of the task if submitted to a thread pool.
+         */
+        private Future<SiteCleanup> mFuture;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param site      the site
+         * @param nodes     the jobs mapped to the site in topological order.
+         * @param workflow  the workflow
+         * @param defer     whether to defer adding the cleanup nodes.
+         */
+        public SiteCleanup( String site, List<GraphNode> nodes, Graph workflow, boolean defer ){
+            mSite     = site;
+            mNodes    = nodes;
+            mWorkflow = workflow;
+            mDefer    = defer;
+        }
+
+        /**
+         * Determines the cleanup jobs for the site.
+         *
+         * @return the task itself
+         */
+        public SiteCleanup call(){
+            mCleanupNodes = addCleanUpJobs( mSite, mNodes, mWorkflow, mDefer );
+            return this;
+        }
+
+        /**
+         * Waits for the task submitted to the thread pool to finish.
+         */
+        public void waitFor(){
+            boolean interrupted = false;
+            try{
+                while( true ){
+                    try{
+                        mFuture.get();
+                        return;
+                    }
+                    catch( InterruptedException e ){
+                        interrupted = true;
+                    }
+                    catch( ExecutionException e ){
+                        Throwable cause = e.getCause();
+                        if( cause instanceof RuntimeException ){
+                            throw (RuntimeException)cause;
+                        }
+                        if( cause instanceof Error ){
+                            throw (Error)cause;
+                        }
+                        throw new RuntimeException( "Unable to add cleanup jobs for site " + mSite, cause );
+                    }
+                }
+            }
+            finally{
+                if( interrupted ){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
     }
 
     /**
@@ -597,6 +808,10 @@ public class InPlace implements CleanupStrategy{
      * For each parent Y see if there is a path to any other parent Z of X.
      * If a path exists, then the edge from Z to node can be removed.
      * </pre>
+     *
+     * The depths of the parents need to be set. The ancestors of a parent
+     * with a depth not greater than the minimum depth of the parents are
+     * not traversed, as none of their ancestors can be a parent.
      * 
      * @param node the nodes whose parent edges need to be reduced.
      */
@@ -611,6 +826,10 @@ public class InPlace implements CleanupStrategy{
         //be removed.
         
         Collection<GraphNode> parents = node.getParents();
+        int minDepth = Integer.MAX_VALUE;
+        for( GraphNode parent : parents ){
+            minDepth = Math.min( minDepth, parent.getDepth() );
+        }
         List redundant = new LinkedList();
         HashSet visit = new HashSet();
         for( Iterator itp = node.getParents().iterator() ; itp.hasNext() ;){
@@ -633,7 +852,7 @@ public class InPlace implements CleanupStrategy{
                         //mque.addAll( pop_pGN.getParents() );
                         for( Iterator itgp = pop_pGN.getParents().iterator() ; itgp.hasNext() ;){
                             GraphNode gpGN = (GraphNode) itgp.next();
-                            if( ! visit.contains( gpGN ) ){
+                            if( gpGN.getDepth() > minDepth && ! visit.contains( gpGN ) ){
                                 mque.add( gpGN );
                             }
                         }
@@ -842,10 +1061,12 @@ public class InPlace implements CleanupStrategy{
      *                   job
      * @param site       the site associated with the cleanup jobs
      * @param level      the level of the workflow
+     * @param defer      whether adding the edges from the parents of the
+     *                   clustered cleanup nodes is deferred
      *
      * @return a set of clustered cleanup nodes
      */
-    private List<GraphNode> clusterCleanupGraphNodes(List<GraphNode> cleanupNodes, HashMap cleanedBy, String site, int level ) {
+    private List<GraphNode> clusterCleanupGraphNodes(List<GraphNode> cleanupNodes, HashMap cleanedBy, String site, int level, boolean defer ) {
         List<GraphNode> clusteredCleanupJobs = new LinkedList();
 
         //sanity check for empty list
@@ -873,7 +1094,7 @@ public class InPlace implements CleanupStrategy{
             }
 
             //we have our constituents. create a cleanup node out of this
-            GraphNode clusteredCleanupGraphNode = createClusteredCleanupGraphNode( clusteredConstitutents, cleanedBy, site, level, counter );
+            GraphNode clusteredCleanupGraphNode = createClusteredCleanupGraphNode( clusteredConstitutents, cleanedBy, site, level, counter, defer );
             if( clusteredCleanupGraphNode != null ){
                 //we only add and increment counter only if the cleanup node
                 //is deleting at least one file.
@@ -925,11 +1146,13 @@ public class InPlace implements CleanupStrategy{
      * @param site       the site associated with the cleanup jobs
      * @param level      the level of the workflow
      * @param index      the index of the cleanup job for that level
+     * @param defer      whether adding the edges from the parents of the
+     *                   clustered cleanup node is deferred
      *
      * @return a clustered cleanup node with the appropriate linkages added to the workflow
      *         else, null if the clustered cleanup node has no files to delete
      */
-    private GraphNode createClusteredCleanupGraphNode(List<GraphNode> nodes, HashMap cleanedBy, String site, int level, int index ) {
+    private GraphNode createClusteredCleanupGraphNode(List<GraphNode> nodes, HashMap cleanedBy, String site, int level, int index, boolean defer ) {
         GraphNode clusteredCleanupNode = new GraphNode( generateClusteredJobID( site, level, index ) );
 
 
@@ -967,7 +1190,7 @@ public class InPlace implements CleanupStrategy{
                     if( !existingCleanupNode.getParents().contains( primaryNode ) ){
                         existingCleanupNode.addParent( primaryNode );
                      }
-                     if( !primaryNode.getChildren().contains( existingCleanupNode ) ){
+                     if( !defer && !primaryNode.getChildren().contains( existingCleanupNode ) ){
                         primaryNode.addChild( existingCleanupNode );
                       }
                 }
@@ -982,7 +1205,7 @@ public class InPlace implements CleanupStrategy{
             if( !allFilesToDelete.isEmpty() ){
                 //add dependencies between the compute/stageout node and the clustered cleanup node
                 //as long as we know that we are creating a clustered cleanup job that is not empty
-                if( !primaryNode.getChildren().contains( clusteredCleanupNode ) ){
+                if( !defer && !primaryNode.getChildren().contains( clusteredCleanupNode ) ){
                     primaryNode.addChild( clusteredCleanupNode );
                 }
                 if( ! clusteredCleanupNode.getParents().contains( primaryNode ) ){
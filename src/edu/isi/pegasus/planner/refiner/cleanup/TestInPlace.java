@@ -0,0 +1,254 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.refiner.cleanup;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Benchmarks the addition of the in place cleanup jobs to large synthetic
+ * workflows. The depth computation is compared against the breadth first
+ * relaxation the cleanup strategy did earlier, and the cleanup jobs added
+ * with multiple threads are compared against the ones added with a single
+ * thread.
+ *
+ * @author Karan Vahi
+ */
+public class TestInPlace {
+
+    /**
+     * The width of each level of the synthetic workflow.
+     */
+    public static final int WIDTH = 1000;
+
+    /**
+     * The number of sites the jobs are staged to.
+     */
+    public static final int SITES = 8;
+
+    /**
+     * The number of parents of each job not in the first level.
+     */
+    public static final int PARENTS_PER_JOB = 3;
+
+    /**
+     * The maximum number of jobs for which the breadth first relaxation is run.
+     */
+    public static final int MAX_LEGACY_JOBS = 200000;
+
+    /**
+     * A cleanup implementation that only creates the job.
+     */
+    private static class StubCleanup implements CleanupImplementation {
+
+        public void initialize( PegasusBag bag ){
+        }
+
+        public Job createCleanupJob( String id, List files, Job job ){
+            Job cleanup = new Job();
+            cleanup.setName( id );
+            cleanup.setJobType( Job.CLEANUP_JOB );
+            cleanup.setSiteHandle( job.getStagingSiteHandle() );
+            cleanup.setStagingSiteHandle( job.getStagingSiteHandle() );
+            for( Iterator it = files.iterator(); it.hasNext(); ){
+                cleanup.addInputFile( (PegasusFile)it.next() );
+            }
+            return cleanup;
+        }
+    }
+
+    /**
+     * Creates a synthetic layered workflow. Each job reads the outputs of
+     * its parents, that are mostly in the previous level and sometimes two
+     * levels up. The outputs are not transferred, and can be cleaned up.
+     *
+     * @param jobs   the number of jobs
+     *
+     * @return the workflow
+     */
+    public static Graph createWorkflow( int jobs ){
+        Random random = new Random( 42 );
+        Graph workflow = new MapGraph();
+        Job[] content = new Job[ jobs ];
+        for( int i = 0; i < jobs; i++ ){
+            Job job = new Job();
+            job.setName( "ID" + i );
+            job.setTXName( "process" );
+            job.setJobType( Job.COMPUTE_JOB );
+            job.setSiteHandle( "site" + ( i % SITES ) );
+            job.setStagingSiteHandle( "site" + ( i % SITES ) );
+            PegasusFile output = new PegasusFile( "f" + i );
+            output.setTransferFlag( PegasusFile.TRANSFER_NOT );
+            job.addOutputFile( output );
+            content[i] = job;
+            GraphNode node = new GraphNode( job.getID(), job );
+            workflow.addNode( node );
+        }
+        for( int i = WIDTH; i < jobs; i++ ){
+            int levelUp = ( i >= 2 * WIDTH && random.nextInt( 10 ) == 0 ) ? 2 : 1;
+            int levelStart = ( i / WIDTH - levelUp ) * WIDTH;
+            Set<Integer> parents = new TreeSet<Integer>();
+            while( parents.size() < PARENTS_PER_JOB ){
+                parents.add( levelStart + random.nextInt( WIDTH ) );
+            }
+            for( int parent : parents ){
+                content[i].addInputFile( new PegasusFile( "f" + parent ) );
+                workflow.addEdge( "ID" + parent, "ID" + i );
+            }
+        }
+        return workflow;
+    }
+
+    /**
+     * The breadth first relaxation of the depths the cleanup strategy did
+     * earlier.
+     *
+     * @param workflow  the workflow
+     */
+    private static void legacyDepth( Graph workflow ){
+        LinkedList que = new LinkedList();
+        que.addAll( workflow.getRoots() );
+        for( int i = 0; i < que.size(); i++ ){
+            ( (GraphNode)que.get(i) ).setDepth( 1 );
+        }
+        while( que.size() >= 1 ){
+            GraphNode curGN = (GraphNode)que.removeFirst();
+            for( Iterator it = curGN.getChildren().iterator() ; it.hasNext() ;){
+                GraphNode child = (GraphNode)it.next();
+                if( !( child.getDepth() == -1 || child.getDepth() < curGN.getDepth() + 1 ) ){
+                    continue;
+                }
+                child.setDepth( curGN.getDepth() + 1 );
+                que.addLast( child );
+            }
+        }
+    }
+
+    /**
+     * Adds the cleanup jobs to the workflow.
+     *
+     * @param bag       the bag of initialization objects
+     * @param workflow  the workflow
+     * @param threads   the number of threads to use
+     *
+     * @return the ids of the cleanup jobs mapped to the ids of their parents
+     */
+    private static Set<String> addCleanupJobs( PegasusBag bag, Graph workflow, int threads ){
+        bag.getPegasusProperties().setProperty( "pegasus.file.cleanup.threads", Integer.toString( threads ) );
+        InPlace cleanup = new InPlace();
+        cleanup.initialize( bag, new StubCleanup() );
+        cleanup.addCleanupJobs( workflow );
+
+        Set<String> result = new TreeSet<String>();
+        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = (GraphNode)it.next();
+            if( ((Job)node.getContent()).getJobType() != Job.CLEANUP_JOB ){
+                continue;
+            }
+            Set<String> parents = new TreeSet<String>();
+            for( GraphNode parent : node.getParents() ){
+                if( !parent.getChildren().contains( node ) ){
+                    throw new RuntimeException( "Missing edge " + parent.getID() + " -> " + node.getID() );
+                }
+                parents.add( parent.getID() );
+            }
+            result.add( node.getID() + " " + parents + " " + ((Job)node.getContent()).getInputFiles().size() );
+        }
+        return result;
+    }
+
+    /**
+     * Runs the benchmark for the number of jobs passed as arguments. By
+     * default the benchmark is run for 100000 and 1000000 jobs.
+     *
+     * @param args the number of jobs.
+     */
+    public static void main( String[] args ){
+        int[] sizes = new int[]{ 100000, 1000000 };
+        if( args.length > 0 ){
+            sizes = new int[ args.length ];
+            for( int i = 0; i < args.length; i++ ){
+                sizes[i] = Integer.parseInt( args[i] );
+            }
+        }
+        int threads = Math.max( 4, Runtime.getRuntime().availableProcessors() );
+
+        PegasusProperties properties = PegasusProperties.nonSingletonInstance();
+        LogManager logger = LogManagerFactory.loadSingletonInstance( properties );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, properties );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+
+        System.out.println( "********* Benchmark  **********" );
+        for( int jobs : sizes ){
+            Graph workflow = createWorkflow( jobs );
+            long start;
+            String legacy = "skipped";
+            int[] expected = null;
+            if( jobs <= MAX_LEGACY_JOBS ){
+                start = System.nanoTime();
+                legacyDepth( workflow );
+                legacy = (long)( ( System.nanoTime() - start ) / 1e6 ) + " ms";
+                expected = new int[ jobs ];
+                for( int i = 0; i < jobs; i++ ){
+                    expected[i] = workflow.getNode( "ID" + i ).getDepth();
+                }
+            }
+
+            start = System.nanoTime();
+            Set<String> serial = addCleanupJobs( bag, workflow, 1 );
+            double serialTime = ( System.nanoTime() - start ) / 1e6;
+            if( expected != null ){
+                for( int i = 0; i < jobs; i++ ){
+                    if( workflow.getNode( "ID" + i ).getDepth() != expected[i] ){
+                        throw new RuntimeException( "Depth differs for ID" + i );
+                    }
+                }
+            }
+
+            workflow = createWorkflow( jobs );
+            start = System.nanoTime();
+            Set<String> parallel = addCleanupJobs( bag, workflow, threads );
+            double parallelTime = ( System.nanoTime() - start ) / 1e6;
+            if( !serial.equals( parallel ) ){
+                throw new RuntimeException( "Cleanup jobs differ with " + threads + " threads" );
+            }
+
+            System.out.println( "jobs=" + jobs +
+                                " legacy-depth=" + legacy +
+                                " cleanup-serial=" + (long) serialTime + " ms" +
+                                " cleanup-parallel=" + (long) parallelTime + " ms with " + threads + " threads" +
+                                " cleanup-jobs=" + serial.size() + " (identical)" );
+        }
+        System.out.println( "****************************" );
+    }
+}
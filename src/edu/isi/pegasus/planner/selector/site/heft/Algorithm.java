@@ -15,6 +15,7 @@
  */
 
 
+
 package edu.isi.pegasus.planner.selector.site.heft;
 
 
@@ -24,10 +25,10 @@ import edu.isi.pegasus.planner.classes.PegasusBag;
 
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.Separator;
 
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
-import edu.isi.pegasus.planner.partitioner.graph.Bag;
 
 import edu.isi.pegasus.planner.catalog.TransformationCatalog;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
@@ -42,13 +43,23 @@ import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Comparator;
-import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import edu.isi.pegasus.planner.classes.Profile;
 
 
@@ -71,9 +82,16 @@ import edu.isi.pegasus.planner.classes.Profile;
  *      mentioned in the paper. The formulas have been updated accordingly.
  *
  *    - During the processor selection phase, we do the simple selection and
- *      not follow the insertion based approach.
+ *      not follow the insertion based approach, unless the insertion based
+ *      policy is turned on in the properties.
  * </pre>
  *
+ * The per job values computed by the algorithm are stored in arrays indexed
+ * by the position of the node in the workflow, and are set in a
+ * <code>HeftBag</code> associated with each node once the workflow has been
+ * scheduled. The runtimes of a transformation on the candidate sites are
+ * looked up in the transformation catalog once per transformation.
+ *
  * @author Karan Vahi
  * @version $Revision$
  *
@@ -121,6 +139,12 @@ public class Algorithm {
      */
     public static final long MAXIMUM_FINISH_TIME = Long.MAX_VALUE;
 
+    /**
+     * The minimum number of candidate sites evaluated by a thread, when the
+     * estimated finish times are evaluated in parallel.
+     */
+    public static final int MINIMUM_SITES_PER_THREAD = 4;
+
     /**
      * The average communication cost between nodes.
      */
@@ -143,11 +167,24 @@ public class Algorithm {
     private List mSites;
 
     /**
-     * Map containing the number of free nodes for each site. The key is the site
-     * name, and value is a <code>Site</code> object.
+     * Map containing the index of each site in the list of sites. The key is
+     * the site name, and value is the index of the <code>Site</code> object
+     * in the site array.
      */
     private Map mSiteMap;
 
+    /**
+     * The sites where the workflow can run, indexed by their position in
+     * the list of sites.
+     */
+    private Site[] mSiteArray;
+
+    /**
+     * The runtimes of the transformations on the candidate sites. The key is
+     * the fully qualified transformation name.
+     */
+    private Map<String,TransformationRuntimes> mRuntimeCache;
+
     /**
      * Handle to the TCMapper.
      */
@@ -163,6 +200,17 @@ public class Algorithm {
      */
     private PegasusProperties mProps;
 
+    /**
+     * The number of threads used to evaluate the estimated finish times of a
+     * job on the candidate sites.
+     */
+    private int mThreads;
+
+    /**
+     * Whether to use the insertion based scheduling policy.
+     */
+    private boolean mInsertion;
+
     //TANGRAM related variables
 
     /**
@@ -195,7 +243,8 @@ public class Algorithm {
 //        mSiteHandle = ( PoolInfoProvider )bag.get( PegasusBag.SITE_CATALOG );
         mSiteStore = bag.getHandleToSiteStore();
         mAverageCommunicationCost = (this.AVERAGE_BANDWIDTH / this.AVERAGE_DATA_SIZE_BETWEEN_JOBS);
-
+        mThreads    = mProps.getHeftSiteSelectorThreads();
+        mInsertion  = mProps.useHeftInsertionPolicy();
     }
 
 
@@ -232,112 +281,150 @@ public class Algorithm {
         mLabel = label;
         mWorkflow = workflow;
         populateSiteMap( sites );
+        mRuntimeCache = new HashMap<String,TransformationRuntimes>();
+        boolean debug = mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL );
 
-        //compute weighted execution times for each job
+        //index the nodes
+        List<GraphNode> nodes = new ArrayList<GraphNode>();
+        Map<GraphNode,Integer> indices = new IdentityHashMap<GraphNode,Integer>();
         for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
             GraphNode node = ( GraphNode )it.next();
+            indices.put( node, nodes.size() );
+            nodes.add( node );
+        }
+        int n = nodes.size();
+
+        //compute weighted execution times for each job
+        int[][] candidates = new int[ n ][];
+        int[][] runtimes   = new int[ n ][];
+        float[] averageComputeTimes = new float[ n ];
+        int[][] parents    = new int[ n ][];
+        for( int i = 0; i < n; i++ ){
+            GraphNode node = nodes.get( i );
             Job job    = (Job)node.getContent();
 
-            //add the heft bag to a node
-            Float averageComputeTime = new Float( calculateAverageComputeTime( job ) );
-            HeftBag b = new HeftBag();
-            b.add( HeftBag.AVG_COMPUTE_TIME, averageComputeTime );
-            node.setBag( b );
+            TransformationRuntimes tr = getTransformationRuntimes( job );
+            candidates[ i ] = tr.mSites;
+            runtimes[ i ]   = getExpectedRuntimes( job, tr );
+            averageComputeTimes[ i ] = calculateAverageComputeTime( candidates[ i ], runtimes[ i ] );
 
-            mLogger.log( "Average Compute Time " + node.getID() + " is " + averageComputeTime,
-                         LogManager.DEBUG_MESSAGE_LEVEL );
+            int[] p = new int[ node.getParents().size() ];
+            int k = 0;
+            for( GraphNode parent : node.getParents() ){
+                p[ k++ ] = indices.get( parent );
+            }
+            parents[ i ] = p;
 
+            if( debug ){
+                mLogger.log( "Average Compute Time " + node.getID() + " is " + averageComputeTimes[ i ],
+                             LogManager.DEBUG_MESSAGE_LEVEL );
+            }
         }
 
-        //add a dummy root
-        Bag bag;
-        GraphNode dummyRoot = new GraphNode( "dummy", "dummy" );
-        workflow.addRoot( dummyRoot );
-        bag = new HeftBag();
-        //downward rank for the root is set to 0
-        bag.add( HeftBag.DOWNWARD_RANK, new Float( 0 ) );
-        dummyRoot.setBag( bag );
-
-        //do a breadth first traversal and compute the downward ranks
-        Iterator it = workflow.iterator();
-        dummyRoot = ( GraphNode )it.next(); //we have the dummy root
-        Float drank;
-        //the dummy root has a downward rank of 0
-        dummyRoot.getBag().add( HeftBag.DOWNWARD_RANK, new Float( 0 ) );
-        //stores the nodes in sorted ascending order
-        List sortedNodes = new LinkedList();
-        while ( it.hasNext() ){
-            GraphNode node = ( GraphNode ) it.next();
-            drank = new Float( computeDownwardRank( node ) );
-            bag = node.getBag();
-            bag.add( HeftBag.DOWNWARD_RANK , drank );
-            sortedNodes.add( node );
-            mLogger.log( "Downward rank for node " + node.getID() + " is " + drank,
-                         LogManager.DEBUG_MESSAGE_LEVEL );
+        //do a breadth first traversal and compute the downward ranks.
+        //the roots are children of a dummy root with a downward rank
+        //and compute time of 0. the roots are visited in the order of the
+        //children set of the dummy root the graph was earlier extended with
+        float[] downwardRanks = new float[ n ];
+        Integer[] sortedNodes = new Integer[ n ];
+        int[] pending = new int[ n ];
+        int tail = 0;
+        for( int i = 0; i < n; i++ ){
+            pending[ i ] = parents[ i ].length;
+        }
+        for( Iterator it = new HashSet( workflow.getRoots() ).iterator(); it.hasNext(); ){
+            sortedNodes[ tail++ ] = indices.get( (GraphNode)it.next() );
+        }
+        for( int head = 0; head < tail; head++ ){
+            int current = sortedNodes[ head ];
+            downwardRanks[ current ] = computeDownwardRank( parents[ current ], downwardRanks, averageComputeTimes );
+            if( debug ){
+                mLogger.log( "Downward rank for node " + nodes.get( current ).getID() + " is " + downwardRanks[ current ],
+                             LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+            for( GraphNode child : nodes.get( current ).getChildren() ){
+                int c = indices.get( child );
+                if( --pending[ c ] == 0 ){
+                    sortedNodes[ tail++ ] = c;
+                }
+            }
+        }
+        if( tail != n ){
+            throw new RuntimeException( "Unable to compute the downward ranks of " + ( n - tail ) +
+                                        " jobs. The workflow " + label + " has a cycle" );
         }
 
-        //sort the node
-        Collections.sort( sortedNodes, new HeftGraphNodeComparator() );
+        //sort the nodes in ascending order of their downward ranks
+        Arrays.sort( sortedNodes, new HeftRankComparator( downwardRanks ) );
 
+        //schedule out the sorted order of the nodes
+        long[] startTimes  = new long[ n ];
+        long[] finishTimes = new long[ n ];
+        int[] scheduledSites = new int[ n ];
+        ExecutorService executor = ( mThreads > 1 && mSiteArray.length > MINIMUM_SITES_PER_THREAD )?
+                                   this.createExecutor( mThreads ):
+                                   null;
+        EstimatedTimes times = new EstimatedTimes( mSiteArray.length );
+        try{
+            for( int current : sortedNodes ){
+                if( debug ){
+                    mLogger.log("Scheduling node " + nodes.get( current ).getID(),
+                                LogManager.DEBUG_MESSAGE_LEVEL);
+                }
 
-        //the start time and end time for the dummy root is 0
-        dummyRoot.getBag().add( HeftBag.ACTUAL_START_TIME, new Long( 0 ) );
-        dummyRoot.getBag().add( HeftBag.ACTUAL_FINISH_TIME, new Long( 0 ) );
+                //for each runnable site get the estimated finish time
+                //and schedule job on site that minimizes the finish time
+                times.compute( parents[ current ], finishTimes, scheduledSites,
+                               candidates[ current ], runtimes[ current ], executor );
+
+                int selected = -1;
+                long result[] = new long[ 2 ];
+                result [ 1 ] = this.MAXIMUM_FINISH_TIME;
+                for( int k = 0; k < candidates[ current ].length; k++ ){
+                    //if existing EFT is greater than the returned EFT
+                    //set existing EFT to the returned EFT
+                    if( result[ 1 ] > times.mFinishTimes[ k ] ){
+                        result[ 0 ] = times.mStartTimes[ k ];
+                        result[ 1 ] = times.mFinishTimes[ k ];
+                        //tentatively schedule the job for that site
+                        selected = candidates[ current ][ k ];
+                    }
+                }
 
-        //schedule out the sorted order of the nodes
-        for( it = sortedNodes.iterator(); it.hasNext(); ){
-            GraphNode current = (GraphNode) it.next();
-            bag           = current.getBag();
-            mLogger.log("Scheduling node " + current.getID(),
-                        LogManager.DEBUG_MESSAGE_LEVEL);
-
-            //figure out the sites where a job can run
-            Job job = (Job) current.getContent();
-            List runnableSites = mTCMapper.getSiteList( job.getTXNamespace(),
-                                                        job.getTXName(),
-                                                        job.getTXVersion(),
-                                                        mSites);
-
-            //for each runnable site get the estimated finish time
-            //and schedule job on site that minimizes the finish time
-            String site;
-            long est_result[ ];
-            long result[] = new long[ 2 ];
-            result [ 1 ] = this.MAXIMUM_FINISH_TIME;
-            for( Iterator rit = runnableSites.iterator(); rit.hasNext(); ){
-                site = (String) rit.next();
-                est_result = calculateEstimatedStartAndFinishTime( current, site );
-
-                //if existing EFT is greater than the returned EFT
-                //set existing EFT to the returned EFT
-                if( result[ 1 ] > est_result[ 1 ] ){
-                    result[ 0 ] = est_result[ 0 ];
-                    result[ 1 ] = est_result[ 1 ];
-                    //tentatively schedule the job for that site
-                    bag.add( HeftBag.SCHEDULED_SITE , site );
+                //update the site selected with the job
+                startTimes[ current ]     = result[ 0 ];
+                finishTimes[ current ]    = result[ 1 ];
+                scheduledSites[ current ] = selected;
+                mSiteArray[ selected ].scheduleJob( result[ 0 ], result[ 1 ] );
+
+                //log the information
+                if( debug ){
+                    StringBuffer sb = new StringBuffer();
+                    sb.append( "Scheduled job " ).append( nodes.get( current ).getID() ).
+                       append( " to site " ).append( mSiteArray[ selected ].getName() ).
+                       append( " with from  ").append( result[ 0 ] ).
+                       append( " till " ).append( result[ 1 ] );
+
+                    mLogger.log( sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
                 }
+            }//end of going through all the sorted nodes
+        }
+        finally{
+            if( executor != null ){
+                executor.shutdown();
             }
+        }
 
-            //update the site selected with the job
-            bag.add( HeftBag.ACTUAL_START_TIME, new Long( result[ 0 ] ));
-            bag.add( HeftBag.ACTUAL_FINISH_TIME, new Long( result[ 1 ] ) );
-            site = (String)bag.get( HeftBag.SCHEDULED_SITE );
-            scheduleJob( site,
-                         result[ 0 ],
-                         result[ 1 ]  );
-
-            //log the information
-            StringBuffer sb = new StringBuffer();
-            sb.append( "Scheduled job " ).append( current.getID() ).
-               append( " to site " ).append( site ).
-               append( " with from  ").append( result[ 0 ] ).
-               append( " till " ).append( result[ 1 ] );
-
-            mLogger.log( sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
-        }//end of going through all the sorted nodes
-
-        //remove the dummy root
-        mWorkflow.remove( dummyRoot.getID() );
+        //associate the computed values with the nodes
+        for( int i = 0; i < n; i++ ){
+            HeftBag b = new HeftBag();
+            b.add( HeftBag.AVG_COMPUTE_TIME, averageComputeTimes[ i ] );
+            b.add( HeftBag.DOWNWARD_RANK, downwardRanks[ i ] );
+            b.add( HeftBag.ACTUAL_START_TIME, startTimes[ i ] );
+            b.add( HeftBag.ACTUAL_FINISH_TIME, finishTimes[ i ] );
+            b.add( HeftBag.SCHEDULED_SITE, mSiteArray[ scheduledSites[ i ] ].getName() );
+            nodes.get( i ).setBag( b );
+        }
     }
 
 
@@ -353,11 +440,11 @@ public class Algorithm {
         //compute the maximum of the actual end times of leaves
         for( Iterator it = mWorkflow.getLeaves().iterator(); it.hasNext() ; ){
             GraphNode node = ( GraphNode )it.next();
-            Long endTime   = ( Long ) node.getBag().get( HeftBag.ACTUAL_FINISH_TIME );
             //sanity check
-            if( endTime == null ){
+            if( node.getBag() == null ){
                 throw new RuntimeException( "Looks like the leave node is unscheduled " +  node.getID());
             }
+            Long endTime   = ( Long ) node.getBag().get( HeftBag.ACTUAL_FINISH_TIME );
             if( endTime > result ){
                 result = endTime;
             }
@@ -367,66 +454,6 @@ public class Algorithm {
     }
 
 
-    /**
-     * Estimates the start and finish time of a job on a site.
-     *
-     * @param node   the node that is being scheduled
-     * @param site  the site for which the finish time is reqd.
-     *
-     * @return  long[0] the estimated start time.
-     *          long[1] the estimated finish time.
-     */
-    protected long[] calculateEstimatedStartAndFinishTime( GraphNode node, String site ){
-
-        Job job = ( Job )node.getContent();
-        long[] result = new long[2];
-
-        //calculate the ready time for the job
-        //that is time by which all the data needed
-        //by the job has reached the site.
-        long readyTime = 0;
-        for( Iterator it = node.getParents().iterator(); it.hasNext(); ){
-            GraphNode parent = ( GraphNode )it.next();
-            long current = 0;
-            //add the parent finish time to current
-            current += (Long)parent.getBag().get( HeftBag.ACTUAL_FINISH_TIME );
-
-            //if the parent was scheduled on another site
-            //add the average data transfer time.
-            if( !parent.getBag().get( HeftBag.SCHEDULED_SITE ).equals( site ) ){
-                current += this.mAverageCommunicationCost;
-            }
-
-            if ( current > readyTime ){
-                //ready time is maximum of all currents
-                readyTime = current;
-            }
-        }
-
-        //the estimated start time is the maximum
-        //of the ready time and available time of the site
-        //using non insertion based policy for time being
-        result[ 0 ] = getAvailableTime( site , readyTime );
-
-// do not need it, as available time is always >= ready time
-//        if ( result[ 0 ] < readyTime ){
-//            result[ 0 ] = readyTime;
-//       }
-
-
-        //the estimated finish time is est + compute time on site
-        List entries = mTCMapper.getTCList( job.getTXNamespace(),
-                                            job.getTXName(),
-                                            job.getTXVersion(),
-                                            site );
-        //pick the first one for time being
-        TransformationCatalogEntry entry = ( TransformationCatalogEntry ) entries.get( 0 );
-        result[ 1 ] = result[ 0 ] + getExpectedRuntime( job, entry );
-
-        //est now stores the estimated finish time
-        return result;
-    }
-
     /**
      * Computes the downward rank of a node.
      *
@@ -437,21 +464,28 @@ public class Algorithm {
      *
      *
      *
-     * @param node   the <code>GraphNode</code> whose rank needs to be computed.
+     * @param parents  the indices of the parents of the node. If empty, the
+     *                 node is a child of the dummy root.
+     * @param ranks    the downward ranks of the nodes
+     * @param averageComputeTimes the average compute times of the nodes
      *
      * @return computed rank.
      */
-    protected float computeDownwardRank( GraphNode node ){
+    protected float computeDownwardRank( int[] parents, float[] ranks, float[] averageComputeTimes ){
         float result = 0;
-	//value needs to be computed for each parent separately
-        //float value = 0;
-
-        for( Iterator it = node.getParents().iterator(); it.hasNext(); ){
-            GraphNode p = (GraphNode)it.next();
-            Bag pbag    = p.getBag();
-	    float value = 0;
-            value += ( getFloatValue ( pbag.get( HeftBag.DOWNWARD_RANK ) )+
-                       getFloatValue ( pbag.get( HeftBag.AVG_COMPUTE_TIME ) ) +
+
+        if( parents.length == 0 ){
+            //the dummy root has a downward rank and compute time of 0
+            float value = 0;
+            value += ( 0f + 0f + mAverageCommunicationCost );
+            return ( value > result ) ? value : result;
+        }
+
+        for( int p : parents ){
+            //value needs to be computed for each parent separately
+            float value = 0;
+            value += ( ranks[ p ] +
+                       averageComputeTimes[ p ] +
                        mAverageCommunicationCost
                      );
 
@@ -464,13 +498,43 @@ public class Algorithm {
     }
 
     /**
-     * Returns the average compute time in seconds for a job.
+     * Returns the average compute time in seconds for a job, weighted by the
+     * number of free nodes on the candidate sites.
      *
-     * @param job the job whose average compute time is to be computed.
+     * @param sites     the indices of the candidate sites for the job.
+     * @param runtimes  the expected runtimes of the job on the candidate sites.
      *
      * @return the weighted compute time in seconds.
      */
-    protected float calculateAverageComputeTime( Job job ){
+    protected float calculateAverageComputeTime( int[] sites, int[] runtimes ){
+        int total_nodes = 0;
+        int total = 0;
+        for( int k = 0; k < sites.length; k++ ){
+            int nodes = mSiteArray[ sites[ k ] ].getAvailableProcessors();
+            total_nodes += nodes;
+            total += runtimes[ k ] * nodes;
+        }
+
+        return total/total_nodes;
+    }
+
+    /**
+     * Returns the candidate sites for the transformation of a job, and the
+     * transformation catalog entries and runtime profiles on those sites.
+     * The transformation catalog is only queried the first time a
+     * transformation is encountered.
+     *
+     * @param job the job in the workflow.
+     *
+     * @return the runtimes of the transformation
+     */
+    protected TransformationRuntimes getTransformationRuntimes( Job job ){
+        String lfn = Separator.combine( job.getTXNamespace(), job.getTXName(), job.getTXVersion() );
+        TransformationRuntimes result = mRuntimeCache.get( lfn );
+        if( result != null ){
+            return result;
+        }
+
         //get all the TC entries for the sites where a job can run
         List runnableSites = mTCMapper.getSiteList( job.getTXNamespace(),
                                                     job.getTXName(),
@@ -482,15 +546,16 @@ public class Algorithm {
             throw new RuntimeException( "No runnable site for job " + job.getName() );
         }
 
-        mLogger.log( "Runnables sites for job " + job.getName() + " " + runnableSites , LogManager.DEBUG_MESSAGE_LEVEL );
+        mLogger.log( "Runnables sites for transformation " + lfn + " " + runnableSites , LogManager.DEBUG_MESSAGE_LEVEL );
 
-        //for each runnable site get the expected runtime
-        String site;
-        int total_nodes = 0;
-        int total = 0;
-        for( Iterator it = runnableSites.iterator(); it.hasNext(); ){
-            site = ( String ) it.next();
-            int nodes = getFreeNodesForSite( site );
+        result = new TransformationRuntimes( runnableSites.size() );
+        int k = 0;
+        for( Iterator it = runnableSites.iterator(); it.hasNext(); k++ ){
+            String site = ( String ) it.next();
+            Integer index = (Integer)mSiteMap.get( site );
+            if( index == null ){
+                throw new RuntimeException( "The number of free nodes not available for site " + site );
+            }
             List entries = mTCMapper.getTCList( job.getTXNamespace(),
                                                 job.getTXName(),
                                                 job.getTXVersion(),
@@ -498,55 +563,99 @@ public class Algorithm {
 
             //pick the first one for time being
             TransformationCatalogEntry entry = ( TransformationCatalogEntry ) entries.get( 0 );
-            int jobRuntime = getExpectedRuntime( job, entry );
-            total_nodes += nodes;
-            total += jobRuntime * nodes;
-
+            result.mSites[ k ]    = index;
+            result.mEntries[ k ]  = entry;
+            result.mRuntimes[ k ] = getRuntimeFromProfiles( entry );
         }
-
-        return total/total_nodes;
+        mRuntimeCache.put( lfn, result );
+        return result;
     }
 
+    /**
+     * Return the expected runtimes of a job on the candidate sites for its
+     * transformation.
+     *
+     * @param job   the job in the workflow.
+     * @param tr    the runtimes of the transformation of the job.
+     *
+     * @return the runtimes in seconds.
+     */
+    protected int[] getExpectedRuntimes( Job job, TransformationRuntimes tr ){
+        int[] result = new int[ tr.mSites.length ];
+        int jobRuntime = 0;
+        for( int k = 0; k < result.length; k++ ){
+            //try and fetch the expected runtime from the Windward AC
+            result[ k ] = getExpectedRuntime( job, tr.mEntries[ k ] );
+            if( result[ k ] >= 1 ){
+                continue;
+            }
+
+            //else try and get the runtime from the profiles
+            result[ k ] = tr.mRuntimes[ k ];
+
+            //if no information . try from profiles in dax
+            if( result[ k ] < 1 ){
+                if( jobRuntime == 0 ){
+                    jobRuntime = getRuntimeFromProfiles( job );
+                }
+                result[ k ] = jobRuntime;
+            }
+
+            //sanity check for time being
+            if( result[ k ] < 1 ){
+                throw new RuntimeException( "Invalid or no runtime specified for job " + job.getID() );
+            }
+        }
+        return result;
+    }
 
     /**
-     * Return expected runtime.
+     * Return expected runtime from the AC.
      *
      * @param job    the job in the workflow.
      * @param entry  the <code>TransformationCatalogEntry</code> object.
      *
-     * @return the runtime in seconds.
+     * @return the runtime in seconds, else -1 if no runtime is available.
      */
     protected int getExpectedRuntime( Job job, TransformationCatalogEntry entry ){
         int result = -1;
 
         //try and fetch the expected runtime from the Windward AC
         double pcresult = getExpectedRuntimeFromAC( job , entry );
-        
+
         if( pcresult == 0.0 ){
-            mLogger.log( "PC returned a value of 0 for job" + job.getID(), 
+            mLogger.log( "PC returned a value of 0 for job" + job.getID(),
                          LogManager.WARNING_MESSAGE_LEVEL );
             result = 1;
         }
         else if( pcresult > 0.0 && pcresult < 1.0 ){
-            mLogger.log( "PC returned a value between 0 and 1" + pcresult + " for job " + job.getID(), 
+            mLogger.log( "PC returned a value between 0 and 1" + pcresult + " for job " + job.getID(),
                          LogManager.WARNING_MESSAGE_LEVEL );
             result = 1;
         }
         else{
             result = (int)pcresult;
         }
-       
+
 //        if(result == 0){
 //            mLogger.log("PC returned 0 as runtime. Returning 1", LogManager.ERROR_MESSAGE_LEVEL);
 //            return result=1;
 //        }
-        if( result >= 1 ){
-            return result;
-        }
+        return result;
+    }
 
-        //else try and get the runtime from the profiles
+    /**
+     * Returns the runtime from the profiles associated with a transformation
+     * catalog entry.
+     *
+     * @param entry  the <code>TransformationCatalogEntry</code> object.
+     *
+     * @return the runtime in seconds, else -1 if not specified.
+     */
+    protected int getRuntimeFromProfiles( TransformationCatalogEntry entry ){
+        int result = -1;
         List profiles = entry.getProfiles( Profile.VDS );
-        mLogger.log( "Fetching runtime information from profiles for job " + job.getName(),
+        mLogger.log( "Fetching runtime information from profiles for transformation " + entry.getLogicalTransformation(),
                      LogManager.DEBUG_MESSAGE_LEVEL  );
         mLogger.log( "Profiles are " + profiles, LogManager.DEBUG_MESSAGE_LEVEL);
         if( profiles != null ){
@@ -559,28 +668,32 @@ public class Algorithm {
                 }
             }
         }
-        //if no information . try from profiles in dax
-        if( result < 1 ){
-            mLogger.log( "Fetching runtime information from profiles for job " + job.getName(),
-                          LogManager.DEBUG_MESSAGE_LEVEL  );
+        return result;
+    }
 
-            for (Iterator it = job.vdsNS.getProfileKeyIterator(); it.hasNext(); ) {
-                String key = (String) it.next();
+    /**
+     * Returns the runtime from the profiles associated with a job in the DAX.
+     *
+     * @param job    the job in the workflow.
+     *
+     * @return the runtime in seconds, else -1 if not specified.
+     */
+    protected int getRuntimeFromProfiles( Job job ){
+        int result = -1;
+        if( mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL ) ){
+            mLogger.log( "Fetching runtime information from profiles for job " + job.getName(),
+                         LogManager.DEBUG_MESSAGE_LEVEL  );
+        }
 
-                if ( key.equals(this.RUNTIME_PROFILE_KEY)) {
-                    result = Integer.parseInt( job.vdsNS.getStringValue( key ) );
-                    break;
-                }
+        for (Iterator it = job.vdsNS.getProfileKeyIterator(); it.hasNext(); ) {
+            String key = (String) it.next();
 
+            if ( key.equals(this.RUNTIME_PROFILE_KEY)) {
+                result = Integer.parseInt( job.vdsNS.getStringValue( key ) );
+                break;
             }
 
         }
-
-        //sanity check for time being
-        if( result < 1 ){
-            throw new RuntimeException( "Invalid or no runtime specified for job " + job.getID() );
-        }
-
         return result;
     }
 
@@ -607,22 +720,24 @@ public class Algorithm {
     @SuppressWarnings({"unchecked", "unchecked"})
     protected void populateSiteMap( List sites ){
         mSiteMap = new HashMap();
+        mSiteArray = new Site[ sites.size() ];
 
         //for testing purposes
         mSites = sites;
 
         String value = null;
         int nodes = 0;
-        for( Iterator it = mSites.iterator(); it.hasNext(); ){
+        int index = 0;
+        for( Iterator it = mSites.iterator(); it.hasNext(); index++ ){
             String site = (String)it.next();
             SiteCatalogEntry eSite = mSiteStore.lookup( site );
             if( eSite == null ){
                 throw new RuntimeException( "Unable to find site in site store entry for site " + site );
             }
-            
+
             GridGateway jobManager = eSite.selectGridGateway( GridGateway.JOB_TYPE.compute );
             if( jobManager == null ){
-                mLogger.log( "Site not associated with a gridgateway. Using default number of freenodes " + site, 
+                mLogger.log( "Site not associated with a gridgateway. Using default number of freenodes " + site,
                              LogManager.DEBUG_MESSAGE_LEVEL );
                 nodes = Algorithm.DEFAULT_NUMBER_OF_FREE_NODES;
             }
@@ -630,12 +745,12 @@ public class Algorithm {
                 try {
                     nodes = jobManager.getIdleNodes();
                     if( nodes == -1 ){
-                        mLogger.log( "Picking up total nodes for site " + site, 
+                        mLogger.log( "Picking up total nodes for site " + site,
                                      LogManager.DEBUG_MESSAGE_LEVEL );
                         nodes = jobManager.getTotalNodes();
 
                         if( nodes == -1 ){
-                            mLogger.log( "Picking up default free nodes for site " + site, 
+                            mLogger.log( "Picking up default free nodes for site " + site,
                                          LogManager.DEBUG_MESSAGE_LEVEL );
                             nodes = Algorithm.DEFAULT_NUMBER_OF_FREE_NODES;
                         }
@@ -645,62 +760,40 @@ public class Algorithm {
                     nodes = Algorithm.DEFAULT_NUMBER_OF_FREE_NODES;
                 }
             }
-            
-            mLogger.log( "Available nodes set for site " + site + " " + nodes, 
+
+            mLogger.log( "Available nodes set for site " + site + " " + nodes,
                                  LogManager.DEBUG_MESSAGE_LEVEL );
-            mSiteMap.put( site, new Site( site,  nodes ) );
+            mSiteArray[ index ] = new Site( site,  nodes, mInsertion );
+            mSiteMap.put( site, index );
         }
 
     }
 
 
     /**
-     * Returns the freenodes for a site.
-     *
-     * @param site   the site identifier.
-     *
-     * @return number of nodes
-     */
-    protected int getFreeNodesForSite( String site ){
-        if( mSiteMap.containsKey( site ) ){
-            return ( ( Site )mSiteMap.get( site )).getAvailableProcessors();
-        }
-        else{
-            throw new RuntimeException( "The number of free nodes not available for site " + site );
-        }
-    }
-
-
-    /**
-     * Schedules a job to a site.
-     *
-     * @param site  the site at which to schedule
-     * @param start the start time for job
-     * @param end   the end time of job
-     */
-    protected void scheduleJob( String site, long start , long end ){
-        Site s = ( Site )mSiteMap.get( site );
-        s.scheduleJob( start, end );
-
-    }
-
-    /**
-     * Returns the available time for a site.
+     * Creates the thread pool used for evaluating the estimated finish times
+     * on the candidate sites.
      *
-     * @param site       the site at which you want to schedule the job.
-     * @param readyTime  the time at which all the data reqd by the job will arrive at site.
+     * @param threads  the number of threads.
      *
-     * @return the available time of the site.
+     * @return the executor
      */
-    protected long getAvailableTime( String site , long readyTime ){
-        if( mSiteMap.containsKey( site ) ){
-            return ( ( Site )mSiteMap.get( site )).getAvailableTime( readyTime );
-        }
-        else{
-            throw new RuntimeException( "Site information unavailable for site " + site );
-        }
-
-
+    private ExecutorService createExecutor( int threads ){
+        ThreadFactory factory = new ThreadFactory(){
+            private int mCount = 0;
+
+            public synchronized Thread newThread( Runnable r ){
+                Thread t = new Thread( r, "pegasus-heft-" + mCount++ );
+                t.setDaemon( true );
+                return t;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads,
+                                                              1L, TimeUnit.SECONDS,
+                                                              new LinkedBlockingQueue<Runnable>(),
+                                                              factory );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
     }
 
     /**
@@ -731,60 +824,277 @@ public class Algorithm {
     }
 
     /**
-     * A convenience method to get the intValue for the object passed.
-     *
-     * @param key   the key to be converted
-     *
-     * @return the floatt value if object an integer, else -1
+     * The candidate sites for a transformation, with the first transformation
+     * catalog entry on each site and the runtime specified in its profiles.
      */
-    private float getFloatValue( Object key ){
+    protected static class TransformationRuntimes {
+
+        /**
+         * The indices of the candidate sites.
+         */
+        private final int[] mSites;
+
+        /**
+         * The transformation catalog entries on the candidate sites.
+         */
+        private final TransformationCatalogEntry[] mEntries;
+
+        /**
+         * The runtimes from the profiles of the entries, -1 if not specified.
+         */
+        private final int[] mRuntimes;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param num  the number of candidate sites.
+         */
+        public TransformationRuntimes( int num ){
+            mSites    = new int[ num ];
+            mEntries  = new TransformationCatalogEntry[ num ];
+            mRuntimes = new int[ num ];
+        }
+    }
+
+    /**
+     * The estimated start and finish times of the job being scheduled on its
+     * candidate sites. The ready time of the job on every candidate site is
+     * computed in a single pass over its parents. The sites are then
+     * evaluated, in parallel if an executor is passed.
+     */
+    private class EstimatedTimes {
+
+        /**
+         * The estimated start times on the candidate sites.
+         */
+        private long[] mStartTimes;
+
+        /**
+         * The estimated finish times on the candidate sites.
+         */
+        private long[] mFinishTimes;
+
+        /**
+         * The time by which all the data needed by the job reaches the
+         * candidate sites.
+         */
+        private long[] mReadyTimes;
+
+        /**
+         * The maximum finish time of the parents scheduled on a site, indexed
+         * by the site. -1 if no parent is scheduled on the site.
+         */
+        private final long[] mSiteFinishTimes;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param sites  the number of sites.
+         */
+        public EstimatedTimes( int sites ){
+            mStartTimes  = new long[ sites ];
+            mFinishTimes = new long[ sites ];
+            mReadyTimes  = new long[ sites ];
+            mSiteFinishTimes = new long[ sites ];
+            Arrays.fill( mSiteFinishTimes, -1 );
+        }
+
+        /**
+         * Computes the estimated start and finish times of a job on its
+         * candidate sites.
+         *
+         * @param parents        the indices of the parents of the job
+         * @param finishTimes    the finish times of the scheduled jobs
+         * @param scheduledSites the sites of the scheduled jobs
+         * @param candidates     the candidate sites for the job
+         * @param runtimes       the runtimes of the job on the candidate sites
+         * @param executor       the executor to use, can be null
+         */
+        public void compute( int[] parents, long[] finishTimes, int[] scheduledSites,
+                             final int[] candidates, final int[] runtimes, ExecutorService executor ){
+            //the maximum time over all the parents at which the data reaches
+            //a site other than where the parent ran, and the maximum such
+            //time excluding the parents on the site with the former.
+            //the roots have the dummy root as parent, that finishes at 0
+            //and is not scheduled to any site.
+            long first  = ( parents.length == 0 ) ? this.transferredBy( 0 ) : 0;
+            int firstSite = -1;
+            long second = 0;
+            for( int p : parents ){
+                int site = scheduledSites[ p ];
+                if( mSiteFinishTimes[ site ] < finishTimes[ p ] ){
+                    mSiteFinishTimes[ site ] = finishTimes[ p ];
+                }
+            }
+            for( int p : parents ){
+                int site = scheduledSites[ p ];
+                if( mSiteFinishTimes[ site ] < 0 ){
+                    //the site has been considered already
+                    continue;
+                }
+                long current = this.transferredBy( mSiteFinishTimes[ site ] );
+                if( current > first ){
+                    if( site != firstSite ){
+                        second = first;
+                    }
+                    first = current;
+                    firstSite = site;
+                }
+                else if( current > second && site != firstSite ){
+                    second = current;
+                }
+                //stash the finish time of the site as a negative value
+                mSiteFinishTimes[ site ] = -2 - mSiteFinishTimes[ site ];
+            }
+
+            if( mReadyTimes.length < candidates.length ){
+                mReadyTimes  = new long[ candidates.length ];
+                mStartTimes  = new long[ candidates.length ];
+                mFinishTimes = new long[ candidates.length ];
+            }
+            for( int k = 0; k < candidates.length; k++ ){
+                int site = candidates[ k ];
+                long readyTime = ( site == firstSite ) ? second : first;
+                long local = -2 - mSiteFinishTimes[ site ];
+                if( mSiteFinishTimes[ site ] != -1 && local > readyTime ){
+                    readyTime = local;
+                }
+                mReadyTimes[ k ] = readyTime;
+            }
+            for( int p : parents ){
+                mSiteFinishTimes[ scheduledSites[ p ] ] = -1;
+            }
+
+            int threads = ( executor == null ) ? 1 : Math.min( mThreads, candidates.length / MINIMUM_SITES_PER_THREAD );
+            if( threads <= 1 ){
+                this.evaluate( candidates, runtimes, 0, candidates.length );
+                return;
+            }
+
+            //each thread evaluates a contiguous range of the candidate sites
+            List<Future<Object>> results = new ArrayList<Future<Object>>( threads - 1 );
+            int chunk = ( candidates.length + threads - 1 ) / threads;
+            for( int from = chunk; from < candidates.length; from += chunk ){
+                final int start = from;
+                final int end   = Math.min( candidates.length, from + chunk );
+                results.add( executor.submit( new Callable<Object>(){
+                    public Object call(){
+                        evaluate( candidates, runtimes, start, end );
+                        return null;
+                    }
+                }));
+            }
+            this.evaluate( candidates, runtimes, 0, Math.min( chunk, candidates.length ) );
+            for( Future<Object> result : results ){
+                this.waitFor( result );
+            }
+        }
 
-        float k = -1;
-        //try{
-            k = ( (Float) key).floatValue();
-        //}
-        //catch( Exception e ){}
+        /**
+         * Evaluates the estimated start and finish times on a range of the
+         * candidate sites.
+         *
+         * @param candidates     the candidate sites for the job
+         * @param runtimes       the runtimes of the job on the candidate sites
+         * @param from           the index of the first candidate to evaluate
+         * @param to             the index after the last candidate to evaluate
+         */
+        private void evaluate( int[] candidates, int[] runtimes, int from, int to ){
+            for( int k = from; k < to; k++ ){
+                //the estimated start time is the maximum
+                //of the ready time and available time of the site
+                mStartTimes[ k ]  = mSiteArray[ candidates[ k ] ].getAvailableTime( mReadyTimes[ k ], runtimes[ k ] );
+
+                //the estimated finish time is est + compute time on site
+                mFinishTimes[ k ] = mStartTimes[ k ] + runtimes[ k ];
+            }
+        }
 
-        return k;
+        /**
+         * Returns the time by which the data produced by a parent reaches a
+         * site other than where the parent ran.
+         *
+         * @param finishTime  the finish time of the parent
+         *
+         * @return the time
+         */
+        private long transferredBy( long finishTime ){
+            long current = 0;
+            current += finishTime;
+            current += mAverageCommunicationCost;
+            return current;
+        }
 
+        /**
+         * Waits for the evaluation of a range of sites to finish.
+         *
+         * @param result  the result of the evaluation.
+         */
+        private void waitFor( Future<Object> result ){
+            boolean interrupted = false;
+            try{
+                while( true ){
+                    try{
+                        result.get();
+                        return;
+                    }
+                    catch( InterruptedException e ){
+                        interrupted = true;
+                    }
+                    catch( ExecutionException e ){
+                        Throwable cause = e.getCause();
+                        if( cause instanceof RuntimeException ){
+                            throw (RuntimeException)cause;
+                        }
+                        if( cause instanceof Error ){
+                            throw (Error)cause;
+                        }
+                        throw new RuntimeException( "Unable to evaluate the estimated finish times ", cause );
+                    }
+                }
+            }
+            finally{
+                if( interrupted ){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
     }
 }
 
 /**
- * Comparator for GraphNode objects that allow us to sort on basis of
+ * Comparator for the indices of the nodes that allow us to sort on basis of
  * the downward rank computed.
  */
-class HeftGraphNodeComparator implements Comparator{
+class HeftRankComparator implements Comparator<Integer>{
 
-/**
-   * Implementation of the {@link java.lang.Comparable} interface.
-   * Compares this object with the specified object for order. Returns a
-   * negative integer, zero, or a positive integer as this object is
-   * less than, equal to, or greater than the specified object. The
-   * definitions are compared by their type, and by their short ids.
+    /**
+     * The downward ranks of the nodes.
+     */
+    private final float[] mRanks;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param ranks the downward ranks of the nodes.
+     */
+    public HeftRankComparator( float[] ranks ){
+        mRanks = ranks;
+    }
+
+  /**
+   * Compares the downward ranks of two nodes.
    *
-   * @param o1 is the object to be compared
-   * @param o2 is the object to be compared with o1.
+   * @param o1 is the index of the node to be compared
+   * @param o2 is the index of the node to be compared with o1.
    *
    * @return a negative number, zero, or a positive number, if the
-   * object compared against is less than, equals or greater than
-   * this object.
-   * @exception ClassCastException if the specified object's type
-   * prevents it from being compared to this Object.
+   * rank of the first node is less than, equal to or greater than the
+   * rank of the second node.
    */
-  public int compare( Object o1, Object o2 )
+  public int compare( Integer o1, Integer o2 )
   {
-    if ( o1 instanceof GraphNode && o2 instanceof GraphNode ) {
-      GraphNode g1 = ( GraphNode ) o1;
-      GraphNode g2 = ( GraphNode ) o2;
-
-      float drank1 = (( Float )g1.getBag().get( HeftBag.DOWNWARD_RANK ));//.floatValue();
-      float drank2 = (( Float )g2.getBag().get( HeftBag.DOWNWARD_RANK ));//.floatValue();
-
-      return (int)(drank1 - drank2);
-    } else {
-      throw new ClassCastException( "object is not a GraphNode" );
-    }
+      return Float.compare( mRanks[ o1 ], mRanks[ o2 ] );
   }
 
 }
@@ -17,6 +17,10 @@
 
 package edu.isi.pegasus.planner.selector.site.heft;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * A data class that is used to simulate a processor on a site.
  *
@@ -35,6 +39,13 @@ public class Processor {
      */
     private long mEndTime;
 
+    /**
+     * The slots during which the processor is busy, indexed by the start time
+     * of the job scheduled in the slot. Only tracked for the insertion based
+     * scheduling policy.
+     */
+    private TreeMap<Long,Long> mBusySlots;
+
 
     /**
      * The default constructor.
@@ -42,6 +53,7 @@ public class Processor {
     public Processor() {
         mStartTime = 0;
         mEndTime   = 0;
+        mBusySlots = null;
     }
 
     /**
@@ -56,6 +68,41 @@ public class Processor {
        return ( mEndTime > start )? mEndTime : start;
     }
 
+    /**
+     * Returns the earliest time the processor is available for scheduling
+     * a job, as per the insertion based scheduling policy. The job can be
+     * scheduled in an idle slot between two jobs scheduled earlier, if the
+     * slot is long enough for the job.
+     *
+     * @param start     the time at which to start the search.
+     * @param runtime   the runtime of the job.
+     *
+     * @return long
+     */
+    public long getAvailableTime( long start, long runtime ){
+        if( mBusySlots == null ){
+            return start;
+        }
+
+        long result = start;
+        //the job cannot start in a slot that overlaps the start time
+        Map.Entry<Long,Long> previous = mBusySlots.floorEntry( start );
+        if( previous != null && previous.getValue() > result ){
+            result = previous.getValue();
+        }
+        for( Iterator<Map.Entry<Long,Long>> it = mBusySlots.tailMap( start, false ).entrySet().iterator(); it.hasNext(); ){
+            Map.Entry<Long,Long> slot = it.next();
+            if( slot.getKey() >= result + runtime ){
+                //the job fits in the idle slot before this slot
+                break;
+            }
+            if( slot.getValue() > result ){
+                result = slot.getValue();
+            }
+        }
+        return result;
+    }
+
 
     /**
      * Schedules a job on to a processor.
@@ -65,6 +112,32 @@ public class Processor {
      */
     public void scheduleJob( long start, long end ){
         mStartTime = start;
-        mEndTime   = end;
+        mEndTime   = ( end > mEndTime ) ? end : mEndTime;
+    }
+
+    /**
+     * Schedules a job on to a processor, tracking the slot during which the
+     * processor is busy for the insertion based scheduling policy.
+     *
+     * @param start    the start time of the job.
+     * @param end      the end time for the job
+     *
+     * @see #getAvailableTime( long, long )
+     */
+    public void scheduleJobInSlot( long start, long end ){
+        if( mBusySlots == null ){
+            mBusySlots = new TreeMap<Long,Long>();
+        }
+        mBusySlots.put( start, end );
+        this.scheduleJob( start, end );
+    }
+
+    /**
+     * Returns the end time of the job that ends last on the processor.
+     *
+     * @return the end time
+     */
+    public long getEndTime(){
+        return mEndTime;
     }
 }
@@ -16,19 +16,29 @@
 
 package edu.isi.pegasus.planner.selector.site.heft;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.ListIterator;
 
 /**
  * A data class that models a site as a collection of processors.
  * The number of processors can only be specified in the constructor.
  *
+ * For the non insertion based policy, the end times of the processors are
+ * tracked in an array with a tree of minimums over it, so that the earliest
+ * available processor is found in logarithmic time. For the insertion based
+ * policy, the busy slots of each processor are tracked by a
+ * <code>Processor</code> object.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
 public class Site {
 
+    /**
+     * The initial number of processors for which space is allocated.
+     */
+    private static final int INITIAL_CAPACITY = 16;
 
     /**
      * The number of processors making up a site.
@@ -36,9 +46,9 @@ public class Site {
     private int mNumProcessors;
 
     /**
-     * A list of processors making up the site.
+     * A list of processors making up the site, for the insertion based policy.
      */
-    private List mProcessors;
+    private List<Processor> mProcessors;
 
     /**
      * The index to the processor that is to be used for scheduling a job.
@@ -50,15 +60,36 @@ public class Site {
      */
     private String mName;
 
+    /**
+     * Whether the insertion based scheduling policy is used.
+     */
+    private boolean mInsertion;
+
+    /**
+     * The number of processors on which a job has been tentatively or
+     * actually scheduled, for the non insertion based policy.
+     */
+    private int mUsed;
+
+    /**
+     * The number of leaves of the tree of minimum end times.
+     */
+    private int mCapacity;
+
+    /**
+     * The tree of minimum end times, with the end times of the processors at
+     * the leaves starting at index mCapacity. The children of node i are at
+     * 2i and 2i + 1.
+     */
+    private long[] mEndTimes;
+
     /**
      * The default constructor.
      *
      * @param name  the name to be assigned to the site.
      */
     public Site( String name ) {
-        mName          = name;
-        mNumProcessors = 0;
-        mProcessors    = new LinkedList();
+        this( name, 0 );
         mCurrentProcessorIndex = 0;
     }
 
@@ -69,10 +100,25 @@ public class Site {
      * @param  num   the number of processors.
      */
     public Site( String name, int num ){
+        this( name, num, false );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param name       the name to be assigned to the site.
+     * @param num        the number of processors.
+     * @param insertion  whether to use the insertion based scheduling policy.
+     */
+    public Site( String name, int num, boolean insertion ){
         mName          = name;
         mNumProcessors = num;
         mCurrentProcessorIndex = -1;
-        mProcessors    = new LinkedList( );
+        mInsertion     = insertion;
+        mProcessors    = new ArrayList<Processor>( );
+        mUsed          = 0;
+        mCapacity      = 0;
+        mEndTimes      = null;
     }
 
 
@@ -85,15 +131,60 @@ public class Site {
      * @return long
      */
     public long getAvailableTime( long start ){
+        long result;
+        if( mUsed > 0 && mEndTimes[ 1 ] <= start ){
+            //the first processor that is free at start
+            int node = 1;
+            while( node < mCapacity ){
+                node = ( mEndTimes[ 2 * node ] <= start ) ? 2 * node : 2 * node + 1;
+            }
+            result = start;
+            mCurrentProcessorIndex = node - mCapacity;
+        }
+        else if( mUsed < mNumProcessors ){
+            //tentatively schedule a job to an unused processor as yet.
+            result = start;
+            mCurrentProcessorIndex = mUsed++;
+            this.setEndTime( mCurrentProcessorIndex, 0 );
+        }
+        else if( mUsed > 0 ){
+            //the first processor that is free the earliest
+            int node = 1;
+            while( node < mCapacity ){
+                node = ( mEndTimes[ 2 * node ] <= mEndTimes[ 2 * node + 1 ] ) ? 2 * node : 2 * node + 1;
+            }
+            result = mEndTimes[ 1 ];
+            mCurrentProcessorIndex = node - mCapacity;
+        }
+        else{
+            throw new RuntimeException( "Unable to scheduled to site" );
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the earliest time the site is available for scheduling a job
+     * with the given runtime. Uses the insertion based scheduling policy if
+     * the site was created with it, else the non insertion based policy.
+     *
+     * @param start     the time at which to start the search.
+     * @param runtime   the runtime of the job.
+     *
+     * @return long
+     */
+    public long getAvailableTime( long start, long runtime ){
+        if( !mInsertion ){
+            return this.getAvailableTime( start );
+        }
+
         int num = 0;
 
-        //each processor is checked for start of list
+        //each processor is checked for the earliest idle slot
         long result  = Long.MAX_VALUE;
         long current;
-        ListIterator it;
-        for( it = mProcessors.listIterator( ); it.hasNext(); num++ ){
-            Processor p = ( Processor ) it.next();
-            current     = p.getAvailableTime( start );
+        for( ; num < mProcessors.size(); num++ ){
+            current = mProcessors.get( num ).getAvailableTime( start, runtime );
             if( current < result ){
                 //tentatively schedule a job on the processor
                 result = current;
@@ -104,11 +195,8 @@ public class Site {
         if( result > start && num < mNumProcessors ){
             //tentatively schedule a job to an unused processor as yet.
             result = start;
-            mCurrentProcessorIndex = num++;
-            //if using a normal iterator
-            //could use addLast() method
-            it.add( new Processor () );
-
+            mCurrentProcessorIndex = num;
+            mProcessors.add( new Processor() );
         }
 
         //sanity check
@@ -132,8 +220,13 @@ public class Site {
             throw new RuntimeException( "Invalid State. The job needs to be tentatively scheduled first!" );
         }
 
-        Processor p = ( Processor )mProcessors.get( mCurrentProcessorIndex );
-        p.scheduleJob( start, end );
+        if( mInsertion ){
+            mProcessors.get( mCurrentProcessorIndex ).scheduleJobInSlot( start, end );
+        }
+        else{
+            int leaf = mCapacity + mCurrentProcessorIndex;
+            this.setEndTime( mCurrentProcessorIndex, ( end > mEndTimes[ leaf ] ) ? end : mEndTimes[ leaf ] );
+        }
 
         //reset the index
         mCurrentProcessorIndex = -1;
@@ -157,4 +250,36 @@ public class Site {
     public int getAvailableProcessors( ){
         return this.mNumProcessors;
     }
+
+    /**
+     * Sets the end time of a processor, and updates the minimum end times
+     * along the path to the root of the tree. The tree is grown if required.
+     *
+     * @param index  the index of the processor
+     * @param end    the end time
+     */
+    private void setEndTime( int index, long end ){
+        if( index >= mCapacity ){
+            int capacity = ( mCapacity == 0 ) ? INITIAL_CAPACITY : mCapacity;
+            while( capacity <= index ){
+                capacity *= 2;
+            }
+            long[] tree = new long[ 2 * capacity ];
+            Arrays.fill( tree, Long.MAX_VALUE );
+            if( mEndTimes != null ){
+                System.arraycopy( mEndTimes, mCapacity, tree, capacity, mCapacity );
+            }
+            for( int i = capacity - 1; i > 0; i-- ){
+                tree[ i ] = Math.min( tree[ 2 * i ], tree[ 2 * i + 1 ] );
+            }
+            mEndTimes = tree;
+            mCapacity = capacity;
+        }
+
+        int node = mCapacity + index;
+        mEndTimes[ node ] = end;
+        for( node /= 2; node > 0; node /= 2 ){
+            mEndTimes[ node ] = Math.min( mEndTimes[ 2 * node ], mEndTimes[ 2 * node + 1 ] );
+        }
+    }
 }
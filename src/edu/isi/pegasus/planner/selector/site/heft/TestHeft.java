@@ -0,0 +1,271 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.heft;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.Profile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmarks the HEFT site selector on large synthetic workflows scheduled
+ * across a large number of sites, with the non insertion and the insertion
+ * based policies. The sites selected with multiple threads are compared
+ * against the ones selected with a single thread.
+ *
+ * @author Karan Vahi
+ */
+public class TestHeft {
+
+    /**
+     * The width of each level of the synthetic workflow.
+     */
+    public static final int WIDTH = 1000;
+
+    /**
+     * The number of parents of each job not in the first level.
+     */
+    public static final int PARENTS_PER_JOB = 3;
+
+    /**
+     * The number of transformations the jobs are spread across.
+     */
+    public static final int TRANSFORMATIONS = 20;
+
+    /**
+     * A mapper that returns the synthetic transformation catalog entries,
+     * and counts the lookups made.
+     */
+    private static class SyntheticMapper extends Mapper {
+
+        /**
+         * The entries indexed by transformation name and then by site.
+         */
+        private Map<String,Map<String,List>> mEntries;
+
+        /**
+         * The number of lookups made.
+         */
+        private int mLookups;
+
+        public SyntheticMapper( PegasusBag bag, List<String> sites ){
+            super( bag );
+            mEntries = new HashMap<String,Map<String,List>>();
+            Random random = new Random( 7 );
+            for( int t = 0; t < TRANSFORMATIONS; t++ ){
+                Map<String,List> entries = new HashMap<String,List>();
+                for( String site : sites ){
+                    //every transformation is installed on most of the sites
+                    if( random.nextInt( 4 ) == 0 ){
+                        continue;
+                    }
+                    TransformationCatalogEntry entry = new TransformationCatalogEntry( "pegasus", "t" + t, "1.0" );
+                    entry.setResourceId( site );
+                    if( random.nextBoolean() ){
+                        entry.addProfile( new Profile( Profile.VDS, Pegasus.RUNTIME_KEY,
+                                                       Integer.toString( 10 + random.nextInt( 500 ) ) ) );
+                    }
+                    List l = new LinkedList();
+                    l.add( entry );
+                    entries.put( site, l );
+                }
+                mEntries.put( "t" + t, entries );
+            }
+        }
+
+        public Map getSiteMap( String namespace, String name, String version, List siteids ){
+            return mEntries.get( name );
+        }
+
+        public String getMode(){
+            return "Synthetic";
+        }
+
+        public List getTCList( String namespace, String name, String version, String siteid ){
+            mLookups++;
+            return mEntries.get( name ).get( siteid );
+        }
+
+        public List getSiteList( String namespace, String name, String version, List siteids ){
+            mLookups++;
+            List result = new ArrayList();
+            for( Iterator it = siteids.iterator(); it.hasNext(); ){
+                String site = (String)it.next();
+                if( mEntries.get( name ).containsKey( site ) ){
+                    result.add( site );
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Creates a synthetic layered workflow. Each job has a runtime profile,
+     * used on the sites where the transformation catalog entry does not have
+     * one.
+     *
+     * @param jobs   the number of jobs
+     *
+     * @return the workflow
+     */
+    public static ADag createWorkflow( int jobs ){
+        Random random = new Random( 42 );
+        ADag workflow = new ADag();
+        for( int i = 0; i < jobs; i++ ){
+            Job job = new Job();
+            job.setName( "ID" + i );
+            job.setTransformation( "pegasus", "t" + random.nextInt( TRANSFORMATIONS ), "1.0" );
+            job.setJobType( Job.COMPUTE_JOB );
+            job.vdsNS.construct( Pegasus.RUNTIME_KEY, Integer.toString( 10 + random.nextInt( 500 ) ) );
+            workflow.add( job );
+        }
+        for( int i = WIDTH; i < jobs; i++ ){
+            int levelStart = ( i / WIDTH - 1 ) * WIDTH;
+            for( int j = 0; j < PARENTS_PER_JOB; j++ ){
+                String parent = "ID" + ( levelStart + random.nextInt( WIDTH ) );
+                GraphNode node = workflow.getNode( "ID" + i );
+                if( !node.getParents().contains( workflow.getNode( parent ) ) ){
+                    workflow.addEdge( parent, "ID" + i );
+                }
+            }
+        }
+        return workflow;
+    }
+
+    /**
+     * Schedules the workflow, and returns the sites selected.
+     *
+     * @param bag        the bag of initialization objects
+     * @param workflow   the workflow
+     * @param sites      the candidate sites
+     * @param threads    the number of threads
+     * @param insertion  whether to use the insertion based policy
+     * @param label      the label to print
+     *
+     * @return the sites selected for the jobs
+     */
+    private static String[] schedule( PegasusBag bag, ADag workflow, List<String> sites,
+                                      int threads, boolean insertion, String label ){
+        PegasusProperties properties = bag.getPegasusProperties();
+        properties.setProperty( "pegasus.selector.site.heft.threads", Integer.toString( threads ) );
+        properties.setProperty( "pegasus.selector.site.heft.insertion", Boolean.toString( insertion ) );
+        SyntheticMapper mapper = (SyntheticMapper)bag.get( PegasusBag.TRANSFORMATION_MAPPER );
+        mapper.mLookups = 0;
+
+        long start = System.nanoTime();
+        Algorithm heft = new Algorithm( bag );
+        heft.schedule( workflow, sites );
+        double time = ( System.nanoTime() - start ) / 1e6;
+
+        String[] result = new String[ workflow.size() ];
+        for( int i = 0; i < result.length; i++ ){
+            result[i] = (String)workflow.getNode( "ID" + i ).getBag().get( HeftBag.SCHEDULED_SITE );
+        }
+        System.out.println( "jobs=" + workflow.size() + " sites=" + sites.size() + " " + label +
+                            " threads=" + threads + " time=" + (long) time + " ms" +
+                            " makespan=" + heft.getMakespan() + " s" +
+                            " tc-lookups=" + mapper.mLookups );
+        return result;
+    }
+
+    /**
+     * Checks that the same sites were selected.
+     */
+    private static void check( String[] expected, String[] actual ){
+        for( int i = 0; i < expected.length; i++ ){
+            if( !expected[i].equals( actual[i] ) ){
+                throw new RuntimeException( "Site differs for ID" + i + " " + expected[i] + " " + actual[i] );
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmark for the number of jobs passed as arguments. By
+     * default the benchmark is run for 100000 jobs on 50 sites.
+     *
+     * @param args the number of sites, followed by the number of jobs.
+     */
+    public static void main( String[] args ){
+        int numSites = 50;
+        int[] sizes = new int[]{ 100000 };
+        if( args.length > 0 ){
+            numSites = Integer.parseInt( args[0] );
+        }
+        if( args.length > 1 ){
+            sizes = new int[ args.length - 1 ];
+            for( int i = 1; i < args.length; i++ ){
+                sizes[i - 1] = Integer.parseInt( args[i] );
+            }
+        }
+        int threads = Math.max( 4, Runtime.getRuntime().availableProcessors() );
+
+        PegasusProperties properties = PegasusProperties.nonSingletonInstance();
+        LogManager logger = LogManagerFactory.loadSingletonInstance( properties );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+
+        //sites with a varying number of idle nodes
+        SiteStore store = new SiteStore();
+        List<String> sites = new ArrayList<String>();
+        Random random = new Random( 11 );
+        for( int s = 0; s < numSites; s++ ){
+            SiteCatalogEntry entry = new SiteCatalogEntry( "site" + s );
+            GridGateway gateway = new GridGateway( GridGateway.TYPE.gt5, "site" + s + "/jobmanager-condor",
+                                                   GridGateway.SCHEDULER_TYPE.Condor );
+            gateway.setJobType( GridGateway.JOB_TYPE.compute );
+            gateway.setIdleNodes( 5 + random.nextInt( 100 ) );
+            entry.addGridGateway( gateway );
+            store.addEntry( entry );
+            sites.add( "site" + s );
+        }
+
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, properties );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+        bag.add( PegasusBag.SITE_STORE, store );
+        bag.add( PegasusBag.TRANSFORMATION_MAPPER, new SyntheticMapper( bag, sites ) );
+
+        System.out.println( "********* Benchmark  **********" );
+        for( int jobs : sizes ){
+            ADag workflow = createWorkflow( jobs );
+
+            String[] serial = schedule( bag, workflow, sites, 1, false, "non-insertion" );
+            check( serial, schedule( bag, workflow, sites, threads, false, "non-insertion" ) );
+
+            String[] insertion = schedule( bag, workflow, sites, 1, true, "insertion" );
+            check( insertion, schedule( bag, workflow, sites, threads, true, "insertion" ) );
+        }
+        System.out.println( "****************************" );
+    }
+}
@@ -178,6 +178,20 @@ public abstract class AbstractRefiner implements Refiner{
                 "Refiner does not implement the function addStageInXFERNodes( SubInfo, Collection<FileTransfer>)");
     }
     
+    /**
+     * Default behaviour is to not advertise the stage in jobs created, in
+     * which case every job that requires a file goes through the
+     * addStageInXFERNodes functions.
+     *
+     * @param job   the job for which the file has to be staged
+     * @param lfn   the logical filename of the file
+     *
+     * @return null
+     */
+    public String getStageInJobName( Job job, String lfn ){
+        return null;
+    }
+
     /**
      * Returns a reference to the XMLProducer, that generates the XML fragment
      * capturing the actions of the refiner. This is used for provenace
@@ -312,6 +312,18 @@ public interface Refiner
                             String pool,
                             boolean parentNew);
 
+    /**
+     * Returns the name of the stage in job, that has been created by the
+     * refiner to stage a file to the staging site associated with a job.
+     *
+     * @param job   the job for which the file has to be staged
+     * @param lfn   the logical filename of the file
+     *
+     * @return the name of the stage in job if the file is already being staged,
+     *         else null
+     */
+    public String getStageInJobName( Job job, String lfn );
+
 
     /**
      * Returns a textual description of the transfer mode.
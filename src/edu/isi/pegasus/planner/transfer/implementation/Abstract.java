@@ -1017,15 +1017,15 @@ public abstract class Abstract implements Implementation{
         int type     = job.jobClass;
         switch(type){
             case Job.STAGE_IN_JOB:
-                priority = mProps.getTransferStageInPriority();
+                priority = mProps.getSnapshot().getTransferStageInPriority();
                 break;
 
             case Job.STAGE_OUT_JOB:
-                priority = mProps.getTransferStageOutPriority();
+                priority = mProps.getSnapshot().getTransferStageOutPriority();
                 break;
 
             case Job.INTER_POOL_JOB:
-                priority = mProps.getTransferInterPriority();
+                priority = mProps.getSnapshot().getTransferInterPriority();
                 break;
 
             default:
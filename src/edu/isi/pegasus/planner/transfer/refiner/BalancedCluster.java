@@ -117,7 +117,7 @@ public class BalancedCluster extends Basic {
      * used to construct the relations that need to be added to workflow, once
      * the traversal is done.
      */
-    private Map mRelationsParentMap;
+    protected Map mRelationsParentMap;
 
     
     /**
@@ -438,7 +438,7 @@ public class BalancedCluster extends Basic {
                 }
                 PoolTransfer pt = (contains)?
                                   (PoolTransfer)stageInMap.get(siteHandle):
-                                  new PoolTransfer( siteHandle, localTransfer, bundle);
+                                  this.createPoolTransfer( siteHandle, localTransfer, bundle);
                 if(!contains){
                     stageInMap.put(siteHandle,pt);
                 }
@@ -763,6 +763,20 @@ public class BalancedCluster extends Basic {
         return new HashMap<String,PoolTransfer>();
     }
 
+    /**
+     * Returns the name of the stage in job, that has been created to stage a
+     * file to the staging site of a job.
+     *
+     * @param job   the job for which the file has to be staged
+     * @param lfn   the logical filename of the file
+     *
+     * @return the name of the stage in job if the file is already being staged,
+     *         else null
+     */
+    public String getStageInJobName( Job job, String lfn ){
+        return (String) mFileTable.get( this.constructFileKey( lfn, job.getStagingSiteHandle() ) );
+    }
+
     /**
      * Returns a textual description of the transfer mode.
      *
@@ -794,12 +808,25 @@ public class BalancedCluster extends Basic {
             return ( PoolTransfer ) map.get( site );
         }
         else{
-            PoolTransfer pt = new PoolTransfer( site, localTransfer, num );
+            PoolTransfer pt = this.createPoolTransfer( site, localTransfer, num );
             map.put( site, pt );
             return pt;
         }
     }
 
+    /**
+     * Creates the container to store the transfers for a staging site.
+     *
+     * @param site           the staging site for which transfers are grouped.
+     * @param localTransfer  whether the transfer jobs run on local site or remote.
+     * @param num            the number of transfer jobs required for the site.
+     *
+     * @return the PoolTransfer
+     */
+    protected PoolTransfer createPoolTransfer( String site, boolean localTransfer, int num ){
+        return new PoolTransfer( site, localTransfer, num );
+    }
+
     /**
      * Resets the local and remote stage out maps.
      */
@@ -1207,7 +1234,7 @@ public class BalancedCluster extends Basic {
          *
          * @return the name of the transfer job.
          */
-        private String getRegJobName( int counter,  int level ){
+        protected String getRegJobName( int counter,  int level ){
             StringBuffer sb = new StringBuffer();
             sb.append( Refiner.REGISTER_PREFIX );
 
@@ -1240,7 +1267,7 @@ public class BalancedCluster extends Basic {
          *
          * @return the name of the transfer job.
          */
-        private String getTXJobName( int counter, int type, int level ){
+        protected String getTXJobName( int counter, int type, int level ){
             StringBuffer sb = new StringBuffer();
             switch ( type ){
                 case Job.STAGE_IN_JOB:
@@ -748,6 +748,20 @@ public class Bundle extends Basic {
         
     }
 
+    /**
+     * Returns the name of the stage in job, that has been created to stage a
+     * file to the staging site of a job.
+     *
+     * @param job   the job for which the file has to be staged
+     * @param lfn   the logical filename of the file
+     *
+     * @return the name of the stage in job if the file is already being staged,
+     *         else null
+     */
+    public String getStageInJobName( Job job, String lfn ){
+        return (String) mFileTable.get( this.constructFileKey( lfn, job.getStagingSiteHandle() ) );
+    }
+
     /**
      * Returns a textual description of the transfer mode.
      *
@@ -0,0 +1,425 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.transfer.refiner;
+
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.FileTransfer;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+
+import edu.isi.pegasus.common.logging.LogManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * An extension of the BalancedCluster refiner, that distributes the files
+ * amongst the stagein and stageout jobs per level of the workflow on the basis
+ * of the file sizes, instead of round robin by count. The transfers for a
+ * staging site on a level are packed longest first, with each transfer added
+ * to the transfer job that has the least number of bytes to transfer.
+ *
+ * The number of transfer jobs is the bundle factor, unless a target number of
+ * bytes per transfer job is specified by the pegasus.transfer.refiner.bytes
+ * property. If the size of any of the files is not known, the transfers are
+ * distributed round robin as in the BalancedCluster refiner.
+ *
+ * The transfer job for a file is only known when all the transfers for the
+ * level have been added. Till then the file is associated with a placeholder
+ * job name, that is replaced in the relations before they are added to the
+ * workflow.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+
+public class SizeBalancedCluster extends BalancedCluster {
+
+    /**
+     * A short description of the transfer refinement.
+     */
+    public static final String DESCRIPTION =
+                      "Size Balanced Cluster Transfer Refiner( size based distribution at file level)";
+
+    /**
+     * The prefix for the placeholder job names associated with the transfers,
+     * till the transfer jobs are determined.
+     */
+    private static final String PLACEHOLDER_PREFIX = "pending_transfer_";
+
+    /**
+     * The target number of bytes per transfer job. 0 if the bundle factors
+     * determine the number of transfer jobs.
+     */
+    private long mBytesPerJob;
+
+    /**
+     * The map indexed by placeholder job names, that contains the name of
+     * the transfer or registration job the placeholder was resolved to.
+     */
+    private Map<String,String> mResolvedNames;
+
+    /**
+     * The number of placeholder job names handed out.
+     */
+    private int mPlaceholders;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param dag        the workflow to which transfer nodes need to be added.
+     * @param bag        the bag of initialization objects
+     *
+     */
+    public SizeBalancedCluster( ADag dag, PegasusBag bag ){
+        super( dag, bag );
+        mBytesPerJob   = mProps.getTransferRefinerBytesPerJob();
+        mResolvedNames = new HashMap<String,String>();
+        mPlaceholders  = 0;
+    }
+
+    /**
+     * Creates the container to store the transfers for a staging site, that
+     * distributes the transfers on the basis of the file sizes.
+     *
+     * @param site           the staging site for which transfers are grouped.
+     * @param localTransfer  whether the transfer jobs run on local site or remote.
+     * @param num            the number of transfer jobs required for the site.
+     *
+     * @return the PoolTransfer
+     */
+    protected PoolTransfer createPoolTransfer( String site, boolean localTransfer, int num ){
+        return new SizePoolTransfer( site, localTransfer, num );
+    }
+
+    /**
+     * Signals that the traversal of the workflow is done. The transfers for
+     * the last level are distributed, and the placeholder job names in the
+     * relations are replaced with the transfer jobs, before the relations are
+     * added to the workflow.
+     */
+    public void done( ){
+        this.resetStageInMaps();
+        this.resetStageOutMaps();
+
+        //the relations from the stagein jobs to the compute jobs
+        for( Iterator it = mRelationsParentMap.entrySet().iterator(); it.hasNext(); ){
+            Map.Entry entry = (Map.Entry)it.next();
+            entry.setValue( this.resolve( (Collection<String>)entry.getValue() ) );
+        }
+
+        //the relations added via addRelation
+        Map<String,Set<String>> relations = new HashMap<String,Set<String>>( mRelationsMap.size() );
+        for( Map.Entry<String,Set<String>> entry : mRelationsMap.entrySet() ){
+            String parent = this.resolve( entry.getKey() );
+            Set<String> children = relations.get( parent );
+            if( children == null ){
+                children = new HashSet<String>();
+                relations.put( parent, children );
+            }
+            children.addAll( this.resolve( entry.getValue() ) );
+        }
+        mRelationsMap = relations;
+
+        super.done();
+    }
+
+    /**
+     * Returns a textual description of the transfer mode.
+     *
+     * @return a short textual description
+     */
+    public  String getDescription(){
+        return SizeBalancedCluster.DESCRIPTION;
+    }
+
+    /**
+     * Returns the job a placeholder job name was resolved to.
+     *
+     * @param name  the job name
+     *
+     * @return the resolved job name, else the name passed if it is not a
+     *         placeholder
+     */
+    private String resolve( String name ){
+        String resolved = mResolvedNames.get( name );
+        return ( resolved == null ) ? name : resolved;
+    }
+
+    /**
+     * Returns the jobs the job names in a collection were resolved to.
+     *
+     * @param names  the job names
+     *
+     * @return set of resolved job names
+     */
+    private Set<String> resolve( Collection<String> names ){
+        Set<String> result = new HashSet<String>( names.size() );
+        for( String name : names ){
+            result.add( this.resolve( name ) );
+        }
+        return result;
+    }
+
+    /**
+     * Distributes items amongst a number of bins, longest processing time
+     * first. The items are considered in decreasing order of size, and each
+     * item is placed in the bin with the smallest total size. Ties are broken
+     * in favor of the bin with fewer items, and then the lower index.
+     *
+     * @param sizes  the sizes of the items
+     * @param bins   the number of bins
+     *
+     * @return the index of the bin for each item
+     */
+    protected static int[] packLongestFirst( final double[] sizes, int bins ){
+        int n = sizes.length;
+        Integer[] order = new Integer[ n ];
+        for( int i = 0; i < n; i++ ){
+            order[i] = i;
+        }
+        //stable sort so that equal sizes retain the order they were added in
+        Arrays.sort( order, new Comparator<Integer>(){
+            public int compare( Integer i1, Integer i2 ){
+                return Double.compare( sizes[ i2 ], sizes[ i1 ] );
+            }
+        });
+
+        final double[] loads = new double[ bins ];
+        final int[] counts = new int[ bins ];
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>( bins, new Comparator<Integer>(){
+            public int compare( Integer b1, Integer b2 ){
+                int result = Double.compare( loads[ b1 ], loads[ b2 ] );
+                if( result == 0 ){
+                    result = counts[ b1 ] - counts[ b2 ];
+                }
+                return ( result == 0 ) ? b1 - b2 : result;
+            }
+        });
+        for( int b = 0; b < bins; b++ ){
+            queue.add( b );
+        }
+
+        int[] result = new int[ n ];
+        for( Integer i : order ){
+            int bin = queue.poll();
+            result[ i ] = bin;
+            loads[ bin ] += sizes[ i ];
+            counts[ bin ]++;
+            queue.add( bin );
+        }
+        return result;
+    }
+
+    /**
+     * Distributes items amongst a number of bins round robin, in the order
+     * they were added.
+     *
+     * @param n      the number of items
+     * @param bins   the number of bins
+     *
+     * @return the index of the bin for each item
+     */
+    protected static int[] packRoundRobin( int n, int bins ){
+        int[] result = new int[ n ];
+        for( int i = 0; i < n; i++ ){
+            result[ i ] = i % bins;
+        }
+        return result;
+    }
+
+    /**
+     * A container to store the transfers that need to be done per staging
+     * site on a level of the workflow. Each transfer is associated with a
+     * placeholder TransferContainer, and the transfers are distributed amongst
+     * the transfer jobs when the transfer containers are retrieved.
+     */
+    protected class SizePoolTransfer extends PoolTransfer{
+
+        /**
+         * The number of transfer jobs to use if the sizes of the files are
+         * not known, or no target number of bytes per job is specified.
+         */
+        private int mBundle;
+
+        /**
+         * The level of the workflow for which the transfers are grouped.
+         */
+        private int mLevel;
+
+        /**
+         * The type of the transfer jobs.
+         */
+        private int mType;
+
+        /**
+         * The placeholder containers for the transfers in the order they were
+         * added.
+         */
+        private List<TransferContainer> mPending;
+
+        /**
+         * The containers corresponding to the transfer jobs. Null till the
+         * transfers are distributed.
+         */
+        private List<TransferContainer> mContainers;
+
+        /**
+         * Convenience constructor.
+         *
+         * @param pool           the pool name for which transfers are being grouped.
+         * @param localTransfer  whether the transfers need to be run on local site
+         * @param number  the number of transfer jobs that are going to be created
+         *                for the pool, if the file sizes are not known.
+         */
+        public SizePoolTransfer( String pool, boolean localTransfer, int number ){
+            super( pool, localTransfer, number );
+            mBundle     = number;
+            mPending    = new ArrayList<TransferContainer>();
+            mContainers = null;
+        }
+
+        /**
+         * Adds a a collection of <code>FileTransfer</code> objects to a new
+         * placeholder TransferContainer.
+         *
+         * @param files  the collection <code>FileTransfer</code> to be added.
+         * @param level  the level of the workflow
+         * @param type   the type of transfer job
+         *
+         * @return  the placeholder Transfer Container.
+         */
+        public TransferContainer addTransfer( Collection<FileTransfer> files, int level, int type ){
+            TransferContainer tc = this.addPlaceholder( level, type );
+            tc.addTransfer( files );
+            return tc;
+        }
+
+        /**
+         * Adds a single <code>FileTransfer</code> object to a new placeholder
+         * TransferContainer.
+         *
+         * @param file   the <code>FileTransfer</code> to be added.
+         * @param level  the level of the workflow
+         * @param type   the type of transfer job
+         *
+         * @return  the placeholder Transfer Container.
+         */
+        public TransferContainer addTransfer( FileTransfer file, int level, int type ){
+            TransferContainer tc = this.addPlaceholder( level, type );
+            tc.addTransfer( file );
+            return tc;
+        }
+
+        /**
+         * Returns the iterator to the list of transfer containers. The
+         * transfers are distributed amongst the transfer jobs on the first
+         * call.
+         *
+         * @return the iterator.
+         */
+        public Iterator getTransferContainerIterator(){
+            if( mContainers == null ){
+                this.distribute();
+            }
+            return mContainers.iterator();
+        }
+
+        /**
+         * Creates a new placeholder TransferContainer.
+         *
+         * @param level  the level of the workflow
+         * @param type   the type of transfer job
+         *
+         * @return  the placeholder Transfer Container.
+         */
+        private TransferContainer addPlaceholder( int level, int type ){
+            if( mContainers != null ){
+                throw new RuntimeException( "Transfers for site " + getPoolName() +
+                                            " already distributed for level " + mLevel );
+            }
+            mLevel = level;
+            mType  = type;
+            TransferContainer tc = new TransferContainer();
+            tc.setTXName( PLACEHOLDER_PREFIX + mPlaceholders++ );
+            tc.setRegName( PLACEHOLDER_PREFIX + mPlaceholders++ );
+            mPending.add( tc );
+            return tc;
+        }
+
+        /**
+         * Distributes the transfers amongst the transfer jobs, and records the
+         * transfer and registration jobs the placeholders are resolved to.
+         */
+        private void distribute(){
+            int n = mPending.size();
+            double[] sizes = new double[ n ];
+            double total = 0;
+            boolean known = true;
+            for( int i = 0; i < n && known; i++ ){
+                for( Iterator it = mPending.get( i ).getFileTransfers().iterator(); it.hasNext(); ){
+                    double size = ((FileTransfer)it.next()).getSize();
+                    if( size < 0 ){
+                        known = false;
+                        break;
+                    }
+                    sizes[ i ] += size;
+                }
+                total += sizes[ i ];
+            }
+
+            int bins = ( known && mBytesPerJob > 0 ) ?
+                       (int)Math.min( Integer.MAX_VALUE, (long)Math.ceil( total / mBytesPerJob ) ):
+                       mBundle;
+            bins = Math.max( 1, Math.min( bins, n ) );
+            int[] assignment = known ?
+                               packLongestFirst( sizes, bins ):
+                               packRoundRobin( n, bins );
+            mLogger.log( "Distributing " + n + " transfers " +
+                         ( known ? "by size " : "round robin " ) + "amongst " + bins +
+                         " jobs for site " + getPoolName() + " on level " + mLevel,
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+
+            mContainers = new ArrayList<TransferContainer>( bins );
+            for( int b = 0; b < bins; b++ ){
+                TransferContainer tc = new TransferContainer();
+                tc.setTXName( getTXJobName( b, mType, mLevel ) );
+                tc.setRegName( getRegJobName( b, mLevel ) );
+                mContainers.add( tc );
+            }
+            for( int i = 0; i < n; i++ ){
+                TransferContainer placeholder = mPending.get( i );
+                TransferContainer tc = mContainers.get( assignment[ i ] );
+                tc.addTransfer( placeholder.getFileTransfers() );
+                tc.addRegistrationFiles( placeholder.getRegistrationFiles() );
+                mResolvedNames.put( placeholder.getTXName(), tc.getTXName() );
+                mResolvedNames.put( placeholder.getRegName(), tc.getRegName() );
+            }
+            mPending = null;
+        }
+    }
+}
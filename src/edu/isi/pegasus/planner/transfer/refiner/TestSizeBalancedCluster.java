@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.transfer.refiner;
+
+import java.util.Random;
+
+/**
+ * Benchmarks the distribution of transfers amongst the transfer jobs by the
+ * SizeBalancedCluster refiner against the round robin distribution of the
+ * BalancedCluster refiner, for file sizes where most of the files are small
+ * and a few are a few gigabytes. The largest number of bytes a transfer job
+ * has to transfer is reported relative to the average.
+ *
+ * @author Karan Vahi
+ */
+public class TestSizeBalancedCluster {
+
+    /**
+     * The number of transfer jobs the files are distributed amongst.
+     */
+    public static final int[] BINS = new int[]{ 2, 16, 64 };
+
+    /**
+     * Generates the file sizes. One in ten files is between 1 and 5 GB, and
+     * the rest are upto 10 MB.
+     */
+    private static double[] createSizes( int count ){
+        Random random = new Random( count );
+        double[] result = new double[ count ];
+        for( int i = 0; i < count; i++ ){
+            result[i] = ( random.nextInt( 10 ) == 0 ) ?
+                        ( 1 + random.nextInt( 5 ) ) * 1e9 :
+                        random.nextInt( 10000000 );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the largest number of bytes in a bin relative to the average.
+     */
+    private static double imbalance( double[] sizes, int[] assignment, int bins ){
+        double[] loads = new double[ bins ];
+        double total = 0;
+        for( int i = 0; i < sizes.length; i++ ){
+            loads[ assignment[i] ] += sizes[i];
+            total += sizes[i];
+        }
+        double max = 0;
+        for( double load : loads ){
+            max = Math.max( max, load );
+        }
+        return max / ( total / bins );
+    }
+
+    /**
+     * Runs the benchmark for the number of files passed as arguments. By
+     * default the benchmark is run for 1000, 100000 and 1000000 files.
+     *
+     * @param args the number of files.
+     */
+    public static void main( String[] args ){
+        int[] sizes = new int[]{ 1000, 100000, 1000000 };
+        if( args.length > 0 ){
+            sizes = new int[ args.length ];
+            for( int i = 0; i < args.length; i++ ){
+                sizes[i] = Integer.parseInt( args[i] );
+            }
+        }
+
+        System.out.println( "********* Benchmark  **********" );
+        for( int files : sizes ){
+            double[] values = createSizes( files );
+            for( int bins : BINS ){
+                long start = System.nanoTime();
+                int[] roundRobin = SizeBalancedCluster.packRoundRobin( files, bins );
+                double roundRobinTime = ( System.nanoTime() - start ) / 1e6;
+
+                start = System.nanoTime();
+                int[] longestFirst = SizeBalancedCluster.packLongestFirst( values, bins );
+                double longestFirstTime = ( System.nanoTime() - start ) / 1e6;
+
+                System.out.println( "files=" + files + " jobs=" + bins +
+                                    String.format( " round-robin max/avg=%.3f (%d ms)",
+                                                   imbalance( values, roundRobin, bins ), (long)roundRobinTime ) +
+                                    String.format( " longest-first max/avg=%.3f (%d ms)",
+                                                   imbalance( values, longestFirst, bins ), (long)longestFirstTime ) );
+            }
+        }
+        System.out.println( "****************************" );
+    }
+}
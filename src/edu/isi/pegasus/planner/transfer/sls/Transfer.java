@@ -494,16 +494,13 @@ public class Transfer   implements SLS {
             ft.addSource( job.getSiteHandle(), url.toString() );
 
             //destination
-            url = new StringBuffer();
 /*
             url.append( destURLPrefix ).append( File.separator );
             url.append( destDir ).append( File.separator );
  */
             //on the head node
-            url.append( mSiteStore.getExternalWorkDirectoryURL(stagingSiteServer, job.getStagingSiteHandle() ));
-            url.append( File.separator ).append( pf.getLFN() );
-            
-            ft.addDestination( job.getStagingSiteHandle(), url.toString() );
+            ft.addDestination( job.getStagingSiteHandle(),
+                               mSiteStore.getExternalWorkDirectoryURL( stagingSiteServer, job.getStagingSiteHandle(), pf.getLFN() ) );
 
             result.add(ft);
 
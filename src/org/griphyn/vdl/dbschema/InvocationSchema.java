@@ -63,7 +63,41 @@ public class InvocationSchema extends DatabaseSchema
     // load the driver from the properties
     super( dbDriverName, PROPERTY_PREFIX );
     Logging.instance().log( "dbschema", 3, "done with parent schema c'tor" );
+    prepareStatements();
+  }
 
+  /**
+   * Connects to the database without relying on the properties. Each
+   * parameter has to be provided explicitly. This is useful to store
+   * invocation records into a local database file, e.g. with SQLite.
+   *
+   * @param dbDriverName is the database driver name
+   * @param url is the database url
+   * @param dbDriverProperties holds properties specific to the
+   * database driver.
+   * @param dbSchemaProperties holds properties specific to the
+   * database schema.
+   */
+  public InvocationSchema( String dbDriverName, String url,
+			   Properties dbDriverProperties,
+			   Properties dbSchemaProperties )
+    throws ClassNotFoundException,
+	   NoSuchMethodException, InstantiationException,
+	   IllegalAccessException, InvocationTargetException,
+	   SQLException, IOException
+  {
+    super( dbDriverName, url, dbDriverProperties, dbSchemaProperties );
+    Logging.instance().log( "dbschema", 3, "done with parent schema c'tor" );
+    prepareStatements();
+  }
+
+  /**
+   * Registers the prepared statements used to save and look up
+   * invocation records.
+   */
+  private void prepareStatements()
+    throws SQLException
+  {
     // Note: Does not rely on optional JDBC3 features
     this.m_dbdriver.insertPreparedStatement( "stmt.save.uname",
 	"INSERT INTO ptc_uname(id,archmode,sysname,os_release,machine) " +
@@ -242,115 +276,177 @@ public class InvocationSchema extends DatabaseSchema
   {
     // big outer try
     try {
-      long id = -1;
-      try {
-	id = m_dbdriver.sequence1( "invocation_id_seq" );
-      } catch ( SQLException e ) {
-	Logging.instance().log( "app", 0, "During IVR sequence number: " +
-				e.toString().trim() );
-	throw e; // re-throw
+      insertInvocation( ivr );
+
+      // done
+      m_dbdriver.commit();
+      return true;
+    } catch ( SQLException e ) {
+      // show complete exception chain
+      for ( SQLException walk=e; walk != null; walk=walk.getNextException() ) {
+	Logging.instance().log( "app", 0, walk.getSQLState() + ": " +
+				walk.getErrorCode() + ": " +
+				walk.getMessage().trim() );
+
+	StackTraceElement[] ste = walk.getStackTrace();
+	for ( int n=0; n<5 && n<ste.length; ++n ) {
+	  Logging.instance().log( "app", 0, ste[n].toString() );
+	}
       }
 
-      // add ID explicitely from sequence to insertion
-      Logging.instance().log("xaction", 1, "START save invocation" );
-      PreparedStatement ps = m_dbdriver.getPreparedStatement( "stmt.save.ivr" );
-      int i = 1;
-      longOrNull( ps, i++, id );
+      Logging.instance().log("xaction", 1, "START rollback" );
+      m_dbdriver.cancelPreparedStatement( "stmt.save.ivr" );
+      m_dbdriver.rollback();
+      Logging.instance().log("xaction", 1, "FINAL rollback" );
+      throw e; // re-throw
+    }
+  }
+
+  /**
+   * Inserts a batch of invocation records into the database within a
+   * single transaction. Records that already exist in the database, or
+   * earlier in the batch, are skipped. Committing once per batch instead
+   * of once per record is much cheaper when many records arrive at the
+   * same time. If any record fails to insert, the complete batch is
+   * rolled back.
+   *
+   * @param ivrs is a list of invocation records to store.
+   * @return the number of records that were inserted.
+   * @exception SQLException if something goes awry during insertion,
+   * after the batch was rolled back.
+   */
+  public int
+    saveInvocations( List ivrs )
+    throws SQLException
+  {
+    int result = 0;
+    try {
+      for ( Iterator i=ivrs.iterator(); i.hasNext(); ) {
+	InvocationRecord ivr = (InvocationRecord) i.next();
+	// FIXME: (start,host,pid) may not be a sufficient secondary key
+	if ( getInvocationID( ivr.getStart(), ivr.getHostAddress(),
+			      ivr.getPID() ) == -1 ) {
+	  insertInvocation( ivr );
+	  ++result;
+	}
+      }
+
+      // done
+      Logging.instance().log("xaction", 1, "START commit batch of " + result );
+      m_dbdriver.commit();
+      Logging.instance().log("xaction", 1, "FINAL commit batch of " + result );
+      return result;
+    } catch ( SQLException e ) {
+      Logging.instance().log( "app", 0, "While saving batch of " +
+			      ivrs.size() + " invocations: " +
+			      e.toString().trim() );
+      Logging.instance().log("xaction", 1, "START rollback" );
+      m_dbdriver.cancelPreparedStatement( "stmt.save.ivr" );
+      m_dbdriver.rollback();
+      Logging.instance().log("xaction", 1, "FINAL rollback" );
+      throw e; // re-throw
+    }
+  }
 
-      // current_user()
-      stringOrNull( ps, i++, System.getProperty("user.name") );
+  /**
+   * Inserts an invocation record with its jobs and stat calls into the
+   * database, without committing the transaction.
+   *
+   * @param ivr is the invocation record to store.
+   * @return the id of the new invocation record.
+   * @exception SQLException if something goes awry during insertion.
+   */
+  private long insertInvocation( InvocationRecord ivr )
+    throws SQLException
+  {
+    long id = -1;
+    try {
+      id = m_dbdriver.sequence1( "invocation_id_seq" );
+    } catch ( SQLException e ) {
+      Logging.instance().log( "app", 0, "During IVR sequence number: " +
+			      e.toString().trim() );
+      throw e; // re-throw
+    }
 
-      // now()
-      ps.setTimestamp( i++, toStamp(new java.util.Date()) );
+    // add ID explicitely from sequence to insertion
+    Logging.instance().log("xaction", 1, "START save invocation" );
+    PreparedStatement ps = m_dbdriver.getPreparedStatement( "stmt.save.ivr" );
+    int i = 1;
+    longOrNull( ps, i++, id );
 
-      // wf_label, wf_time: not available at the moment...
-      if ( ivr.getWorkflowLabel() == null )
-	ps.setNull( i++, Types.VARCHAR );
-      else
-	ps.setString( i++, ivr.getWorkflowLabel() );
+    // current_user()
+    stringOrNull( ps, i++, System.getProperty("user.name") );
 
-      if ( ivr.getWorkflowTimestamp() == null )
-	ps.setNull( i++, Types.TIMESTAMP );
-      else
-	ps.setTimestamp( i++, toStamp(ivr.getWorkflowTimestamp()) );
+    // now()
+    ps.setTimestamp( i++, toStamp(new java.util.Date()) );
 
-      // version
-      ps.setString( i++, ivr.getVersion() );
+    // wf_label, wf_time: not available at the moment...
+    if ( ivr.getWorkflowLabel() == null )
+      ps.setNull( i++, Types.VARCHAR );
+    else
+      ps.setString( i++, ivr.getWorkflowLabel() );
 
-      // start, duration
-      ps.setTimestamp( i++, toStamp(ivr.getStart()) );
-      ps.setDouble( i++,ivr.getDuration() );
+    if ( ivr.getWorkflowTimestamp() == null )
+      ps.setNull( i++, Types.TIMESTAMP );
+    else
+      ps.setTimestamp( i++, toStamp(ivr.getWorkflowTimestamp()) );
 
-      // TR
-      i = splitDefinition( ps, ivr.getTransformation(), i );
+    // version
+    ps.setString( i++, ivr.getVersion() );
 
-      // DV: not available at the moment
-      i = splitDefinition( ps, ivr.getDerivation(), i );
+    // start, duration
+    ps.setTimestamp( i++, toStamp(ivr.getStart()) );
+    ps.setDouble( i++,ivr.getDuration() );
 
-      // resource (site handle)
-      if ( ivr.getResource() == null ) ps.setNull( i++, Types.VARCHAR );
-      else ps.setString( i++, ivr.getResource() );
+    // TR
+    i = splitDefinition( ps, ivr.getTransformation(), i );
 
-      // host
-      ps.setString( i++, ivr.getHostAddress().getHostAddress() );
+    // DV: not available at the moment
+    i = splitDefinition( ps, ivr.getDerivation(), i );
 
-      // [pug]id
-      ps.setInt( i++, ivr.getPID() );
-      ps.setInt( i++, ivr.getUID() );
-      ps.setInt( i++, ivr.getGID() );
+    // resource (site handle)
+    if ( ivr.getResource() == null ) ps.setNull( i++, Types.VARCHAR );
+    else ps.setString( i++, ivr.getResource() );
 
-      // cwd
-      stringOrNull( ps, i++, ivr.getWorkingDirectory().getValue() );
+    // host
+    ps.setString( i++, ivr.getHostAddress().getHostAddress() );
 
-      // uname
-      ps.setLong( i++, saveArchitecture( ivr.getArchitecture() ) );
+    // [pug]id
+    ps.setInt( i++, ivr.getPID() );
+    ps.setInt( i++, ivr.getUID() );
+    ps.setInt( i++, ivr.getGID() );
 
-      // save usage and remember id
-      ps.setLong( i++, saveUsage( ivr.getUsage() ) );
+    // cwd
+    stringOrNull( ps, i++, ivr.getWorkingDirectory().getValue() );
 
-      // save prepared values
-      Logging.instance().log( "chunk", 2, "INSERT INTO invocation" );
+    // uname
+    ps.setLong( i++, saveArchitecture( ivr.getArchitecture() ) );
 
-      int rc = ps.executeUpdate();
-      if ( id == -1 ) id = m_dbdriver.sequence2( ps, "invocation_id_seq", 1 );
-      Logging.instance().log("xaction", 1, "FINAL save invocation: ID=" + id );
+    // save usage and remember id
+    ps.setLong( i++, saveUsage( ivr.getUsage() ) );
 
-      // save jobs belonging to invocation
-      for ( Iterator j=ivr.iterateJob(); j.hasNext(); ) {
-	saveJob( id, ((Job) j.next()) );
-      }
+    // save prepared values
+    Logging.instance().log( "chunk", 2, "INSERT INTO invocation" );
 
-      // jsv 20050815: more stat info for Prophesy
-      for ( Iterator j=ivr.iterateStatCall(); j.hasNext(); ) {
-	StatCall s = (StatCall) j.next();
-	String sch = s.getHandle().toLowerCase();
-	if ( sch.equals("initial") || sch.equals("final") ) {
-	  saveLFN( id, s );
-	}
-      }
+    int rc = ps.executeUpdate();
+    if ( id == -1 ) id = m_dbdriver.sequence2( ps, "invocation_id_seq", 1 );
+    Logging.instance().log("xaction", 1, "FINAL save invocation: ID=" + id );
 
-      // done
-      m_dbdriver.commit();
-      return true;
-    } catch ( SQLException e ) {
-      // show complete exception chain
-      for ( SQLException walk=e; walk != null; walk=walk.getNextException() ) {
-	Logging.instance().log( "app", 0, walk.getSQLState() + ": " +
-				walk.getErrorCode() + ": " +
-				walk.getMessage().trim() );
+    // save jobs belonging to invocation
+    for ( Iterator j=ivr.iterateJob(); j.hasNext(); ) {
+      saveJob( id, ((Job) j.next()) );
+    }
 
-	StackTraceElement[] ste = walk.getStackTrace();
-	for ( int n=0; n<5 && n<ste.length; ++n ) {
-	  Logging.instance().log( "app", 0, ste[n].toString() );
-	}
+    // jsv 20050815: more stat info for Prophesy
+    for ( Iterator j=ivr.iterateStatCall(); j.hasNext(); ) {
+      StatCall s = (StatCall) j.next();
+      String sch = s.getHandle().toLowerCase();
+      if ( sch.equals("initial") || sch.equals("final") ) {
+	saveLFN( id, s );
       }
-
-      Logging.instance().log("xaction", 1, "START rollback" );
-      m_dbdriver.cancelPreparedStatement( "stmt.save.ivr" );
-      m_dbdriver.rollback();
-      Logging.instance().log("xaction", 1, "FINAL rollback" );
-      throw e; // re-throw
     }
+
+    return id;
   }
 
   /**
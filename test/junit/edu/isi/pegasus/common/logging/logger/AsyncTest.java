@@ -0,0 +1,182 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.common.logging.logger;
+
+import edu.isi.pegasus.common.logging.LogFormatterFactory;
+import edu.isi.pegasus.common.logging.LogManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test the ordering and the flushing of the messages logged by the
+ * asynchronous logger.
+ *
+ * @author Karan Vahi
+ */
+public class AsyncTest {
+
+    private Async mLogger;
+
+    private SlowOutputStream mOut;
+
+    public AsyncTest() {
+    }
+
+    @Before
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty( Async.BUFFER_SIZE_PROPERTY, "64" );
+        mLogger = new Async();
+        mLogger.initialize( LogFormatterFactory.loadInstance( "edu.isi.pegasus.common.logging.format.Simple" ),
+                            properties );
+        mLogger.setLevel( LogManager.DEBUG_MESSAGE_LEVEL );
+        mOut = new SlowOutputStream();
+        mLogger.setOutputWriter( mOut );
+        mLogger.setErrorWriter( mOut );
+        mLogger.logEventStart( "test.logging", "logger", "0" );
+        mLogger.flush();
+        mOut.reset();
+    }
+
+    /**
+     * The messages should be written out in the order they are logged,
+     * across the output and the error streams.
+     */
+    @Test
+    public void testOrder() {
+        int count = 1000;
+        for( int i = 0; i < count; i++ ){
+            mLogger.log( "message " + i,
+                         ( i % 3 == 0 ) ? LogManager.WARNING_MESSAGE_LEVEL : LogManager.DEBUG_MESSAGE_LEVEL );
+        }
+        mLogger.flush();
+
+        String[] lines = mOut.toString().split( "\n" );
+        assertEquals( count, lines.length );
+        for( int i = 0; i < count; i++ ){
+            assertTrue( lines[i], lines[i].trim().endsWith( " message " + i ) );
+            assertTrue( lines[i], lines[i].contains( ( i % 3 == 0 ) ? "[WARNING]" : "[DEBUG]" ) );
+        }
+    }
+
+    /**
+     * ERROR and FATAL messages, and all the messages logged before them,
+     * should be written out before the log call returns.
+     */
+    @Test
+    public void testErrorIsFlushed() {
+        mOut.setDelay( 1 );
+        for( int level : new int[]{ LogManager.ERROR_MESSAGE_LEVEL, LogManager.FATAL_MESSAGE_LEVEL } ){
+            mOut.reset();
+            for( int i = 0; i < 100; i++ ){
+                mLogger.log( "message " + i, LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+            mLogger.log( "failure", level );
+
+            String[] lines = mOut.toString().split( "\n" );
+            assertEquals( 101, lines.length );
+            assertTrue( lines[99], lines[99].trim().endsWith( " message 99" ) );
+            assertTrue( lines[100], lines[100].trim().endsWith( " failure" ) );
+        }
+    }
+
+    /**
+     * The messages below the level should not be put in the buffer.
+     */
+    @Test
+    public void testLevel() {
+        mLogger.setLevel( LogManager.INFO_MESSAGE_LEVEL );
+        assertFalse( mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL ) );
+        mLogger.log( "debug", LogManager.DEBUG_MESSAGE_LEVEL );
+        mLogger.log( "info", LogManager.INFO_MESSAGE_LEVEL );
+        mLogger.flush();
+
+        String[] lines = mOut.toString().split( "\n" );
+        assertEquals( 1, lines.length );
+        assertTrue( lines[0], lines[0].trim().endsWith( " info" ) );
+    }
+
+    /**
+     * The messages should be written out directly, once the buffer is full
+     * and the writer thread is no longer alive.
+     */
+    @Test(timeout=10000)
+    public void testWriterDied() {
+        mOut.setFailure();
+        mLogger.log( "failure", LogManager.DEBUG_MESSAGE_LEVEL );
+        for( int i = 0; i < 200; i++ ){
+            mLogger.log( "message " + i, LogManager.DEBUG_MESSAGE_LEVEL );
+        }
+        mLogger.flush();
+
+        String[] lines = mOut.toString().split( "\n" );
+        assertTrue( lines[ lines.length - 1 ], lines[ lines.length - 1 ].trim().endsWith( " message 199" ) );
+    }
+
+    /**
+     * An output stream that holds the bytes written in memory, and can be
+     * made to sleep on each write to let messages pile up in the buffer,
+     * or to fail on the next write.
+     */
+    private static class SlowOutputStream extends ByteArrayOutputStream {
+
+        private volatile long mDelay;
+
+        private volatile boolean mFailure;
+
+        public void setFailure(){
+            mFailure = true;
+        }
+
+        public void setDelay( long millis ){
+            mDelay = millis;
+        }
+
+        public synchronized void write( byte[] b, int off, int len ){
+            sleep();
+            super.write( b, off, len );
+        }
+
+        public synchronized void write( int b ){
+            sleep();
+            super.write( b );
+        }
+
+        public synchronized String toString(){
+            return super.toString();
+        }
+
+        private void sleep(){
+            if( mFailure ){
+                mFailure = false;
+                throw new RuntimeException( "Failed to write" );
+            }
+            if( mDelay > 0 ){
+                try{
+                    Thread.sleep( mDelay );
+                }
+                catch( InterruptedException e ){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.common.logging.logger;
+
+import edu.isi.pegasus.common.logging.LogFormatterFactory;
+import edu.isi.pegasus.common.logging.LogManager;
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test that the Default logger determines the messages to be logged
+ * from the level mask.
+ *
+ * @author Karan Vahi
+ */
+public class DefaultTest {
+
+    private Default mLogger;
+
+    private ByteArrayOutputStream mOut;
+
+    public DefaultTest() {
+    }
+
+    @Before
+    public void setUp() {
+        mLogger = new Default();
+        mLogger.initialize( LogFormatterFactory.loadInstance( "edu.isi.pegasus.common.logging.format.Simple" ),
+                            new Properties() );
+        mOut = new ByteArrayOutputStream();
+        mLogger.setOutputWriter( mOut );
+        mLogger.setErrorWriter( mOut );
+        mLogger.logEventStart( "test.logging", "logger", "0" );
+        mOut.reset();
+    }
+
+    @Test
+    public void testDefaultLevel() {
+        assertTrue( mLogger.isLoggable( LogManager.FATAL_MESSAGE_LEVEL ) );
+        assertTrue( mLogger.isLoggable( LogManager.ERROR_MESSAGE_LEVEL ) );
+        assertTrue( mLogger.isLoggable( LogManager.CONSOLE_MESSAGE_LEVEL ) );
+        assertTrue( mLogger.isLoggable( LogManager.WARNING_MESSAGE_LEVEL ) );
+        assertFalse( mLogger.isLoggable( LogManager.INFO_MESSAGE_LEVEL ) );
+        assertFalse( mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL ) );
+    }
+
+    @Test
+    public void testSetLevel() {
+        mLogger.setLevel( LogManager.DEBUG_MESSAGE_LEVEL );
+        assertTrue( mLogger.isLoggable( LogManager.INFO_MESSAGE_LEVEL ) );
+        assertTrue( mLogger.isLoggable( LogManager.CONFIG_MESSAGE_LEVEL ) );
+        assertTrue( mLogger.isLoggable( LogManager.DEBUG_MESSAGE_LEVEL ) );
+        assertFalse( mLogger.isLoggable( LogManager.TRACE_MESSAGE_LEVEL ) );
+
+        mLogger.setLevel( LogManager.ERROR_MESSAGE_LEVEL );
+        assertTrue( mLogger.isLoggable( LogManager.FATAL_MESSAGE_LEVEL ) );
+        assertTrue( mLogger.isLoggable( LogManager.ERROR_MESSAGE_LEVEL ) );
+        assertFalse( mLogger.isLoggable( LogManager.CONSOLE_MESSAGE_LEVEL ) );
+        assertFalse( mLogger.isLoggable( LogManager.WARNING_MESSAGE_LEVEL ) );
+    }
+
+    /**
+     * A message should be logged exactly when isLoggable returns true for
+     * its level.
+     */
+    @Test
+    public void testIsLoggableMatchesLog() {
+        for( int level = LogManager.FATAL_MESSAGE_LEVEL; level <= LogManager.TRACE_MESSAGE_LEVEL; level++ ){
+            mLogger.setLevel( level );
+            for( int message = LogManager.FATAL_MESSAGE_LEVEL; message <= LogManager.TRACE_MESSAGE_LEVEL; message++ ){
+                mOut.reset();
+                mLogger.log( "message at level " + message, message );
+                assertEquals( "Message at level " + message + " with level set to " + level,
+                              mLogger.isLoggable( message ), mOut.size() > 0 );
+                assertEquals( message <= level, mLogger.isLoggable( message ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogException;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the Directory replica catalog, listed with one or more
+ * threads, or looked up lazily.
+ *
+ * @author Karan Vahi
+ */
+public class DirectoryTest {
+
+    private File mDirectory;
+
+    public DirectoryTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile( "directory-rc", "" );
+        mDirectory.delete();
+        for( int i = 0; i < 5; i++ ){
+            File d = new File( mDirectory, "D" + i + File.separator + "E" );
+            d.mkdirs();
+            new File( d.getParentFile(), "f.a" + i ).createNewFile();
+            new File( d, "f.b" + i ).createNewFile();
+        }
+        new File( mDirectory, "f.top" ).createNewFile();
+    }
+
+    @Test
+    public void testParallelListingMatchesSequential() {
+        Directory sequential = this.connect( false, false, 1 );
+        Directory parallel = this.connect( false, false, 4 );
+
+        Set<String> lfns = sequential.list();
+        assertEquals( 11, lfns.size() );
+        assertTrue( lfns.contains( "f.top" ) );
+        assertTrue( lfns.contains( "D3" + File.separator + "E" + File.separator + "f.b3" ) );
+        assertEquals( lfns, parallel.list() );
+        for( String lfn : lfns ){
+            assertEquals( sequential.lookup( lfn ).toString(), parallel.lookup( lfn ).toString() );
+        }
+        sequential.close();
+        parallel.close();
+    }
+
+    @Test
+    public void testLookupWithoutListing() {
+        String lfn = "D2" + File.separator + "f.a2";
+        for( boolean lazy : new boolean[]{ false, true } ){
+            Directory catalog = this.connect( lazy, false, 2 );
+            Set<String> lfns = new HashSet<String>();
+            lfns.add( lfn );
+            lfns.add( "D2" );
+            lfns.add( "missing" );
+            lfns.add( ".." + File.separator + "f.top" );
+
+            Map result = catalog.lookup( lfns );
+            assertEquals( 4, result.size() );
+            Collection entries = (Collection) result.get( lfn );
+            assertEquals( 1, entries.size() );
+            ReplicaCatalogEntry rce = (ReplicaCatalogEntry) entries.iterator().next();
+            assertEquals( "file://" + new File( mDirectory, lfn ).getAbsolutePath(), rce.getPFN() );
+            assertEquals( "local", rce.getResourceHandle() );
+            assertTrue( ((Collection) result.get( "D2" )).isEmpty() );
+            assertTrue( ((Collection) result.get( "missing" )).isEmpty() );
+            assertTrue( ((Collection) result.get( ".." + File.separator + "f.top" )).isEmpty() );
+
+            //modifications are made against the complete listing
+            assertEquals( 1, catalog.insert( "f.new", "file:///tmp/f.new", "local" ) );
+            assertEquals( 12, catalog.list().size() );
+            assertEquals( 1, catalog.remove( lfn ) );
+            assertTrue( catalog.lookup( lfn ).isEmpty() );
+            catalog.close();
+            assertTrue( catalog.isClosed() );
+        }
+    }
+
+    @Test
+    public void testFlatLFNs() {
+        new File( mDirectory, "D0" + File.separator + "E" + File.separator + "f.a1" ).delete();
+        Directory catalog = this.connect( false, true, 3 );
+        assertEquals( "file://" + new File( mDirectory, "D4" + File.separator + "E" + File.separator + "f.b4" ).getAbsolutePath(),
+                      catalog.lookup( "f.b4", "local" ) );
+        assertEquals( 11, catalog.list().size() );
+        catalog.close();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDuplicateFlatLFNs() throws IOException {
+        new File( mDirectory, "D0" + File.separator + "E" + File.separator + "f.a1" ).createNewFile();
+        this.connect( false, true, 3 );
+    }
+
+    @Test(expected = ReplicaCatalogException.class)
+    public void testLazyFlatLFNs() {
+        this.connect( true, true, 1 );
+    }
+
+    @After
+    public void tearDown() {
+        delete( mDirectory );
+    }
+
+    private Directory connect( boolean lazy, boolean flat, int threads ) {
+        Properties props = new Properties();
+        props.setProperty( Directory.DIRECTORY_PROPERTY_KEY, mDirectory.getAbsolutePath() );
+        props.setProperty( Directory.LAZY_PROPERTY_KEY, Boolean.toString( lazy ) );
+        props.setProperty( Directory.FLAT_LFN_PROPERTY_KEY, Boolean.toString( flat ) );
+        props.setProperty( Directory.SCAN_THREADS_PROPERTY_KEY, Integer.toString( threads ) );
+        Directory catalog = new Directory();
+        assertTrue( catalog.connect( props ) );
+        return catalog;
+    }
+
+    private static void delete( File f ) {
+        File[] files = f.listFiles();
+        if( files != null ){
+            for( File child : files ){
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+}
@@ -26,9 +26,14 @@ import edu.isi.pegasus.planner.test.TestSetup;
 import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -199,6 +204,46 @@ public class JDBCRCTest {
         assertTrue(c.contains(new ReplicaCatalogEntry("b", attr)));
     }
 
+    @Test
+    public void bulkInsertAndLookup() {
+        //less than the number of mappings and LFNs, so that they are
+        //inserted and looked up in a full and a partial chunk
+        jdbcrc.mBatchSize = 2;
+        jdbcrc.insert("a", new ReplicaCatalogEntry("b", "x"));
+
+        HashMap attr = new HashMap();
+        attr.put(ReplicaCatalogEntry.RESOURCE_HANDLE, "x");
+        attr.put("key", "value");
+        List a = new ArrayList();
+        a.add(new ReplicaCatalogEntry("b", attr));
+        a.add(new ReplicaCatalogEntry("c"));
+        List e = new ArrayList();
+        e.add(new ReplicaCatalogEntry("d", "y"));
+        Map x = new HashMap();
+        x.put("a", a);
+        x.put("e", e);
+        assertEquals(3, jdbcrc.insert(x));
+
+        Set lfns = new HashSet();
+        lfns.add("a");
+        lfns.add("e");
+        lfns.add("f");
+        Map result = jdbcrc.lookup(lfns);
+        assertEquals(3, result.size());
+        Collection c = (Collection) result.get("a");
+        assertEquals(2, c.size());
+        assertTrue(c.contains(new ReplicaCatalogEntry("b", attr)));
+        assertTrue(c.contains(new ReplicaCatalogEntry("c")));
+        assertTrue(((Collection) result.get("e")).contains(new ReplicaCatalogEntry("d", "y")));
+        assertTrue(((Collection) result.get("f")).isEmpty());
+
+        result = jdbcrc.lookup(lfns, "x");
+        assertEquals(1, ((Collection) result.get("a")).size());
+        assertTrue(((Collection) result.get("e")).isEmpty());
+
+        jdbcrc.delete("e", "d");
+    }
+
     @After
     public void tearDown() {
         jdbcrc.delete("a", "b");
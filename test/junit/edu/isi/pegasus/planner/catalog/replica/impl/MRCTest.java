@@ -0,0 +1,266 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogException;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import org.junit.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the concurrent lookups against the catalogs in MRC.
+ *
+ * @author Karan Vahi
+ */
+public class MRCTest {
+
+    private List<File> mFiles;
+
+    private MRC mMRC;
+
+    private LogManager mLogger;
+
+    public MRCTest() {
+    }
+
+    @Before
+    public void setUp() {
+        mFiles = new ArrayList<File>();
+        mLogger = new DefaultTestSetup().loadLogger( PegasusProperties.nonSingletonInstance() );
+        mLogger.logEventStart( "test.catalog.replica.impl.MRC", "setup", "0" );
+        mMRC = new MRC();
+    }
+
+    @Test
+    public void testMergedInCatalogOrder() throws IOException {
+        mMRC.add( "a", slow( this.catalog( "f.a file:///a/f.a site=\"local\"\n" +
+                                           "f.b file:///a/f.b site=\"local\"\n" ), 200 ),
+                  0, false );
+        mMRC.add( "b", this.catalog( "f.a file:///b/f.a site=\"isi\"\n" ), 0, false );
+
+        Map result = mMRC.lookup( lfns( "f.a", "f.b", "f.c" ) );
+        assertEquals( "[file:///a/f.a, file:///b/f.a]", pfns( result.get( "f.a" ) ).toString() );
+        assertEquals( "[file:///a/f.b]", pfns( result.get( "f.b" ) ).toString() );
+        assertTrue( result.get( "f.c" ) == null || ((Collection)result.get( "f.c" )).isEmpty() );
+
+        MRC.Backend a = mMRC.getBackends().get( 0 );
+        assertEquals( 1, a.getLookups() );
+        assertEquals( 2, a.getHits() );
+        assertTrue( a.getTime() >= 150 );
+        assertEquals( 1, mMRC.getBackends().get( 1 ).getHits() );
+    }
+
+    @Test
+    public void testSlowCatalogTimesOut() throws IOException {
+        mMRC.add( "slow", slow( this.catalog( "f.a file:///slow/f.a site=\"local\"\n" ), 5000 ), 200, false );
+        mMRC.add( "fast", this.catalog( "f.a file:///fast/f.a site=\"local\"\n" ), 0, false );
+
+        //the lookup does not wait for the slow catalog to answer
+        Map result = mMRC.lookup( lfns( "f.a" ) );
+        assertEquals( "[file:///fast/f.a]", pfns( result.get( "f.a" ) ).toString() );
+        assertEquals( 1, mMRC.getBackends().get( 0 ).getTimeouts() );
+        assertEquals( 0, mMRC.getBackends().get( 0 ).getLookups() );
+    }
+
+    @Test
+    public void testLookupAfterTimeout() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        mMRC.add( "stuck", uninterruptible( this.catalog( "f.a file:///stuck/f.a site=\"local\"\n" ),
+                                            1000, running, maxRunning ),
+                  200, false );
+        mMRC.add( "a", this.catalog( "f.a file:///a/f.a site=\"local\"\n" ), 0, false );
+        mMRC.add( "b", this.catalog( "f.a file:///b/f.a site=\"local\"\n" ), 0, false );
+
+        //the first lookup against the stuck catalog ignores the interrupt
+        assertEquals( "[file:///a/f.a, file:///b/f.a]", pfns( mMRC.lookup( lfns( "f.a" ) ).get( "f.a" ) ).toString() );
+
+        //the second lookup waits for the first to finish, and times out
+        //instead of merging the locations from the stuck catalog
+        assertEquals( "[file:///a/f.a, file:///b/f.a]", pfns( mMRC.lookup( lfns( "f.a" ) ).get( "f.a" ) ).toString() );
+        MRC.Backend stuck = mMRC.getBackends().get( 0 );
+        assertEquals( 2, stuck.getTimeouts() );
+
+        //once the first lookup returns, the catalog is queried again
+        while( running.get() > 0 ){
+            Thread.sleep( 50 );
+        }
+        assertEquals( "[file:///stuck/f.a, file:///a/f.a, file:///b/f.a]",
+                      pfns( mMRC.lookup( lfns( "f.a" ) ).get( "f.a" ) ).toString() );
+        assertEquals( 1, stuck.getLookups() );
+        assertEquals( 1, maxRunning.get() );
+    }
+
+    @Test
+    public void testFirstAuthoritativeAnswerWins() throws IOException {
+        mMRC.add( "slow", slow( this.catalog( "f.a file:///slow/f.a site=\"local\"\n" ), 5000 ), 0, false );
+        mMRC.add( "authority", this.catalog( "f.a file:///authority/f.a site=\"local\"\n" +
+                                             "f.b file:///authority/f.b site=\"local\"\n" ), 0, true );
+
+        Map result = mMRC.lookup( lfns( "f.a", "f.b" ) );
+        assertEquals( "[file:///authority/f.a]", pfns( result.get( "f.a" ) ).toString() );
+        assertEquals( "[file:///authority/f.b]", pfns( result.get( "f.b" ) ).toString() );
+
+        //all the lfns were found in the authoritative catalog, so the lookup
+        //against the slow catalog was cancelled without waiting for it
+        MRC.Backend slow = mMRC.getBackends().get( 0 );
+        assertEquals( 0, slow.getLookups() );
+        assertEquals( 0, slow.getTimeouts() );
+        assertEquals( 1, mMRC.getBackends().get( 1 ).getLookups() );
+    }
+
+    @Test(expected = ReplicaCatalogException.class)
+    public void testCatalogErrorIsRethrown() throws IOException {
+        mMRC.add( "ok", this.catalog( "f.a file:///a/f.a site=\"local\"\n" ), 0, false );
+        mMRC.add( "broken", new SimpleFile(){
+            public Map lookup( Set lfns ){
+                throw new ReplicaCatalogException( "broken" );
+            }
+        }, 0, false );
+        mMRC.lookup( lfns( "f.a" ) );
+    }
+
+    @Test
+    public void testBackendSettingsNotPassedToCatalog() throws IOException {
+        File f = this.file( "f.a file:///a/f.a site=\"local\"\n" );
+        Properties props = new Properties();
+        props.setProperty( "mrc.a", "File" );
+        props.setProperty( "mrc.a.file", f.getAbsolutePath() );
+        props.setProperty( "mrc.a.read.only", "true" );
+        props.setProperty( "mrc.a.timeout", "1.5" );
+        props.setProperty( "mrc.a.authoritative", "true" );
+        assertTrue( mMRC.connect( props ) );
+
+        MRC.Backend backend = mMRC.getBackends().get( 0 );
+        assertEquals( "a", backend.getName() );
+        assertEquals( 1500, backend.getTimeout() );
+        assertTrue( backend.isAuthoritative() );
+        assertEquals( 1, mMRC.lookup( lfns( "f.a" ) ).size() );
+    }
+
+    @After
+    public void tearDown() {
+        mMRC.close();
+        mLogger.logEventCompletion();
+        for( File f : mFiles ){
+            f.delete();
+        }
+    }
+
+    private SimpleFile catalog( String contents ) throws IOException {
+        Properties connect = new Properties();
+        connect.setProperty( "file", this.file( contents ).getAbsolutePath() );
+        connect.setProperty( SimpleFile.READ_ONLY_KEY, "true" );
+        SimpleFile catalog = new SimpleFile();
+        catalog.connect( connect );
+        return catalog;
+    }
+
+    private File file( String contents ) throws IOException {
+        File f = File.createTempFile( "mrc", ".txt" );
+        mFiles.add( f );
+        FileWriter writer = new FileWriter( f );
+        writer.write( contents );
+        writer.close();
+        return f;
+    }
+
+    private static SimpleFile slow( final SimpleFile catalog, final long millis ) {
+        return new SimpleFile(){
+            public Map lookup( Set lfns ){
+                try{
+                    Thread.sleep( millis );
+                }
+                catch( InterruptedException e ){
+                    throw new ReplicaCatalogException( "interrupted" );
+                }
+                return catalog.lookup( lfns );
+            }
+
+            public void close(){
+                catalog.close();
+            }
+        };
+    }
+
+    /**
+     * Returns a catalog whose first lookup takes a while, and does not stop
+     * when the thread is interrupted.
+     */
+    private static SimpleFile uninterruptible( final SimpleFile catalog, final long millis,
+                                               final AtomicInteger running, final AtomicInteger maxRunning ) {
+        final AtomicInteger calls = new AtomicInteger();
+        return new SimpleFile(){
+            public Map lookup( Set lfns ){
+                int now = running.incrementAndGet();
+                maxRunning.set( Math.max( maxRunning.get(), now ) );
+                try{
+                    if( calls.getAndIncrement() == 0 ){
+                        long end = System.currentTimeMillis() + millis;
+                        for( long left = millis; left > 0; left = end - System.currentTimeMillis() ){
+                            try{
+                                Thread.sleep( left );
+                            }
+                            catch( InterruptedException e ){
+                                //ignored
+                            }
+                        }
+                    }
+                    return catalog.lookup( lfns );
+                }
+                finally{
+                    running.decrementAndGet();
+                }
+            }
+
+            public void close(){
+                catalog.close();
+            }
+        };
+    }
+
+    private static Set lfns( String... lfns ) {
+        Set result = new HashSet();
+        for( String lfn : lfns ){
+            result.add( lfn );
+        }
+        return result;
+    }
+
+    private static List<String> pfns( Object entries ) {
+        List<String> result = new ArrayList<String>();
+        for( Object o : (Collection)entries ){
+            result.add( ((ReplicaCatalogEntry)o).getPFN() );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2007-2014 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import org.junit.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the persistent index over the file based replica catalogs.
+ *
+ * @author Karan Vahi
+ */
+public class MappedReplicaIndexTest {
+
+    private File mDirectory;
+
+    private File mRCFile;
+
+    private File mPropertiesFile;
+
+    private PegasusProperties mProps;
+
+    private LogManager mLogger;
+
+    public MappedReplicaIndexTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mRCFile = File.createTempFile( "replica", ".txt" );
+        mDirectory = File.createTempFile( "rc-index", "" );
+        mDirectory.delete();
+
+        writeRC( mRCFile,
+                 "f.a file:///data/f.a site=\"local\"\n" +
+                 "f.a gsiftp://remote/data/f.a site=\"remote\"\n" +
+                 "f.b file:///data/f.b site=\"local\"\n" +
+                 "([A-Za-z]+)_f[xyz]_([0-9]+)[.]sgt file:///scratch/[2]/[1]/[0] site=\"local\" regex=\"true\"\n" +
+                 ".*[.]sgt file:///other/[0] site=\"local\" regex=\"true\"\n" );
+
+        mProps = PegasusProperties.nonSingletonInstance();
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_PROPERTY, "Regex" );
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_FILE_PROPERTY, mRCFile.getAbsolutePath() );
+        //the catalogs are loaded against the properties written out in the submit directory
+        mPropertiesFile = new File( mProps.writeOutProperties( mRCFile.getParent() ) );
+        mLogger = new DefaultTestSetup().loadLogger( mProps );
+    }
+
+    @Test
+    public void lookupSameAsCatalog() throws IOException {
+        Set<String> lfns = new HashSet<String>();
+        lfns.add( "f.a" );
+        lfns.add( "f.b" );
+        lfns.add( "f.c" );
+        lfns.add( "TEST_fy_3810.sgt" );
+        lfns.add( "TEST_fa_3810.sgt" );
+
+        Regex catalog = new Regex();
+        catalog.connect( mRCFile.getAbsolutePath() );
+        Map<String,Collection<ReplicaCatalogEntry>> expected = catalog.lookup( lfns );
+        catalog.close();
+
+        MappedReplicaIndex index = MappedReplicaIndex.load( mProps, mDirectory, false, 8, mLogger );
+        Map<String,Collection<ReplicaCatalogEntry>> actual = index.lookup( lfns );
+
+        assertEquals( expected.keySet(), actual.keySet() );
+        for( String lfn : lfns ){
+            //entries only define equals, and not hashCode
+            Collection<ReplicaCatalogEntry> e = expected.get( lfn );
+            Collection<ReplicaCatalogEntry> a = actual.get( lfn );
+            assertEquals( lfn, e == null, a == null );
+            if( e != null ){
+                assertEquals( lfn, e.size(), a.size() );
+                assertTrue( lfn, e.containsAll( a ) && a.containsAll( e ) );
+            }
+        }
+        assertEquals( "file:///scratch/3810/TEST/TEST_fy_3810.sgt",
+                      actual.get( "TEST_fy_3810.sgt" ).iterator().next().getPFN() );
+        assertEquals( "file:///other/TEST_fa_3810.sgt",
+                      actual.get( "TEST_fa_3810.sgt" ).iterator().next().getPFN() );
+        assertEquals( 4, index.getHits() );
+        assertEquals( 1, index.getMisses() );
+        index.close();
+    }
+
+    @Test
+    public void reusedTillCatalogModified() throws IOException {
+        MappedReplicaIndex index = MappedReplicaIndex.load( mProps, mDirectory, false, 8, mLogger );
+        File file = index.getFile();
+        long built = file.length();
+        index.close();
+
+        //the index is reused and not rebuilt
+        file.setLastModified( 0 );
+        index = MappedReplicaIndex.load( mProps, mDirectory, false, 8, mLogger );
+        assertTrue( file.lastModified() > 0 );
+        assertEquals( 0, index.lookup( "f.new" ).size() );
+        index.close();
+
+        FileWriter writer = new FileWriter( mRCFile, true );
+        writer.write( "f.new file:///data/f.new site=\"local\"\n" );
+        writer.close();
+
+        index = MappedReplicaIndex.load( mProps, mDirectory, false, 8, mLogger );
+        assertTrue( index.getFile().length() > built );
+        assertEquals( 1, index.lookup( "f.new" ).size() );
+        index.close();
+    }
+
+    @Test
+    public void hashValidation() throws IOException {
+        MappedReplicaIndex index = MappedReplicaIndex.load( mProps, mDirectory, true, 8, mLogger );
+        assertEquals( 1, index.lookup( "f.b" ).size() );
+        index.close();
+
+        //change the contents keeping the size and modification time
+        long modified = mRCFile.lastModified();
+        writeRC( mRCFile,
+                 "f.a file:///data/f.a site=\"local\"\n" +
+                 "f.a gsiftp://remote/data/f.a site=\"remote\"\n" +
+                 "f.d file:///data/f.d site=\"local\"\n" +
+                 "([A-Za-z]+)_f[xyz]_([0-9]+)[.]sgt file:///scratch/[2]/[1]/[0] site=\"local\" regex=\"true\"\n" +
+                 ".*[.]sgt file:///other/[0] site=\"local\" regex=\"true\"\n" );
+        mRCFile.setLastModified( modified );
+
+        index = MappedReplicaIndex.load( mProps, mDirectory, true, 8, mLogger );
+        assertEquals( 0, index.lookup( "f.b" ).size() );
+        assertEquals( 1, index.lookup( "f.d" ).size() );
+        index.close();
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws IOException {
+        MappedReplicaIndex first = MappedReplicaIndex.load( mProps, mDirectory, false, 1, mLogger );
+        first.close();
+
+        File other = File.createTempFile( "replica", ".txt" );
+        try{
+            writeRC( other, "f.x file:///data/f.x site=\"local\"\n" );
+            mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_FILE_PROPERTY, other.getAbsolutePath() );
+            MappedReplicaIndex second = MappedReplicaIndex.load( mProps, mDirectory, false, 1, mLogger );
+            second.close();
+
+            assertFalse( first.getFile().exists() );
+            assertTrue( second.getFile().exists() );
+            assertEquals( 1, mDirectory.listFiles().length );
+        }
+        finally{
+            other.delete();
+        }
+    }
+
+    @Test
+    public void onlyFileCatalogsIndexed() {
+        assertTrue( MappedReplicaIndex.canIndex( mProps ) );
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_PROPERTY, "File" );
+        assertTrue( MappedReplicaIndex.canIndex( mProps ) );
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_PROPERTY, "JDBCRC" );
+        assertFalse( MappedReplicaIndex.canIndex( mProps ) );
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if( files != null ){
+            for( File f : files ){
+                f.delete();
+            }
+        }
+        mDirectory.delete();
+        mRCFile.delete();
+        mPropertiesFile.delete();
+    }
+
+    private void writeRC( File file, String contents ) throws IOException {
+        FileWriter writer = new FileWriter( file );
+        writer.write( contents );
+        writer.close();
+    }
+}
@@ -22,8 +22,11 @@ import org.junit.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -124,6 +127,90 @@ public class RegexRCTest {
         assertTrue(c.contains(new ReplicaCatalogEntry("b")));
     }
 
+    @Test
+    public void firstMatchAcrossIndexBuckets() {
+        HashMap attr = new HashMap();
+        attr.put("regex", "true");
+
+        // unindexed, suffix and prefix bucketed patterns, in this order
+        regex.insert("(.*)", new ReplicaCatalogEntry("file:///any/[1]", attr));
+        regex.insert(".*\\.dat", new ReplicaCatalogEntry("file:///suffix/[0]", attr));
+        regex.insert("run_(\\d+)\\.dat", new ReplicaCatalogEntry("file:///prefix/[1]", attr));
+
+        Collection<ReplicaCatalogEntry> c = regex.lookup("run_42.dat");
+        assertEquals(1, c.size());
+        assertEquals("file:///any/run_42.dat", c.iterator().next().getPFN());
+
+        // all matching patterns are returned with a handle
+        c = regex.lookupWithHandle("run_42.dat", null);
+        List<String> pfns = new ArrayList<String>();
+        for (ReplicaCatalogEntry x : c) {
+            pfns.add(x.getPFN());
+        }
+        assertEquals(Arrays.asList("file:///any/run_42.dat", "file:///suffix/run_42.dat", "file:///prefix/42"), pfns);
+    }
+
+    @Test
+    public void placeholderSubstitution() {
+        HashMap attr = new HashMap();
+        attr.put("regex", "true");
+
+        // only placeholders for groups that exist are substituted
+        regex.insert("f(\\d)", new ReplicaCatalogEntry("file:///[1]/[2]/[01]/[1]", attr));
+        Collection<ReplicaCatalogEntry> c = regex.lookup("f7");
+        assertEquals("file:///7/[2]/[01]/7", c.iterator().next().getPFN());
+    }
+
+    @Test
+    public void literalAnalysis() {
+        assertLiterals("abc", "abc", "abc");
+        assertLiterals("^run_(\\d+)\\.dat$", "run_", ".dat");
+        assertLiterals("ab*c", "a", "c");
+        assertLiterals("a{2}b", "", "b");
+        assertLiterals("[abc]x.*y[]z]", "", "");
+        assertLiterals("f\\d+\\.txt", "f", ".txt");
+        assertLiterals("abc|def", "", "");
+        assertLiterals("(?i)abc", "", "");
+        assertLiterals("\\Qa.b\\E", "", "");
+        assertLiterals("(a|b)c", "", "c");
+        assertEquals("-v12-", RegexIndex.literals("(\\w+)-v12-(\\d+)")[2]);
+    }
+
+    @Test
+    public void longEscapes() {
+        HashMap attr = new HashMap();
+        attr.put("regex", "true");
+        String[][] cases = {
+            { "f\\x2etxt", "f.txt" },
+            { "f\\u002etxt", "f.txt" },
+            { "f\\0056txt", "f.txt" },
+            { "f\\cJtxt", "f\ntxt" },
+            { "f\\p{L}txt", "fxtxt" },
+            { "f\\P{L}txt", "f.txt" },
+            { "(?<n>f)\\k<n>txt", "fftxt" },
+            { "(f)\\1txt", "fftxt" },
+        };
+        for (String[] c : cases) {
+            assertTrue(c[0], java.util.regex.Pattern.matches(c[0], c[1]));
+            assertLiterals(c[0], "", "");
+            // one catalog per expression, as the first matching one wins
+            Regex catalog = new Regex();
+            catalog.connect(rcFile.getName());
+            catalog.insert(c[0], new ReplicaCatalogEntry("file:///" + c[0], attr));
+            List<String> pfns = new ArrayList<String>();
+            for (ReplicaCatalogEntry rce : catalog.lookup(c[1])) {
+                pfns.add(rce.getPFN());
+            }
+            assertTrue(c[0] + " " + pfns, pfns.contains("file:///" + c[0]));
+        }
+    }
+
+    private void assertLiterals( String regex, String prefix, String suffix ) {
+        String[] literals = RegexIndex.literals(regex);
+        assertEquals("prefix of " + regex, prefix, literals[0]);
+        assertEquals("suffix of " + regex, suffix, literals[1]);
+    }
+
     @After
     public void tearDown() {
         rcFile.delete();
@@ -0,0 +1,265 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import org.junit.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the persistent Bloom filter over the LFNs in a replica
+ * catalog.
+ *
+ * @author Karan Vahi
+ */
+public class ReplicaBloomFilterTest {
+
+    private File mDirectory;
+
+    private File mRCFile;
+
+    private PegasusProperties mProps;
+
+    private LogManager mLogger;
+
+    public ReplicaBloomFilterTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mRCFile = File.createTempFile( "replica", ".txt" );
+        mDirectory = File.createTempFile( "rc-filter", "" );
+        mDirectory.delete();
+
+        writeRC( mRCFile, false,
+                 "f.a file:///data/f.a site=\"local\"\n" +
+                 "f.b file:///data/f.b site=\"local\"\n" );
+
+        mProps = PegasusProperties.nonSingletonInstance();
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_PROPERTY, "File" );
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_FILE_PROPERTY, mRCFile.getAbsolutePath() );
+        mLogger = new DefaultTestSetup().loadLogger( mProps );
+    }
+
+    @Test
+    public void falsePositiveRateWithinTarget() {
+        ReplicaBloomFilter filter = new ReplicaBloomFilter( 100000, 0.01 );
+        for( int i = 0; i < 100000; i++ ){
+            filter.add( "f." + i + ".txt" );
+        }
+        for( int i = 0; i < 100000; i++ ){
+            assertTrue( filter.mightContain( "f." + i + ".txt" ) );
+        }
+        int falsePositives = 0;
+        for( int i = 0; i < 100000; i++ ){
+            if( filter.mightContain( "g." + i + ".txt" ) ){
+                falsePositives++;
+            }
+        }
+        assertTrue( "false positives " + falsePositives, falsePositives < 1000 );
+        assertTrue( filter.getExpectedFalsePositiveRate() < 0.01 );
+        assertEquals( 100000, filter.getCount() );
+    }
+
+    @Test
+    public void screenOnlyPassesProbableHits() throws IOException {
+        ReplicaBloomFilter filter = this.load();
+        Set<String> lfns = new HashSet<String>();
+        lfns.add( "f.a" );
+        lfns.add( "f.b" );
+        for( int i = 0; i < 100; i++ ){
+            lfns.add( "missing." + i );
+        }
+        Set<String> probable = filter.screen( lfns );
+        assertTrue( probable.contains( "f.a" ) );
+        assertTrue( probable.contains( "f.b" ) );
+        assertTrue( probable.size() < 10 );
+        assertEquals( 102, filter.getProbes() );
+        assertEquals( 102 - probable.size(), filter.getNegatives() );
+    }
+
+    @Test
+    public void rebuiltWhenCatalogModified() throws IOException {
+        ReplicaBloomFilter filter = this.load();
+        assertNotNull( ReplicaBloomFilter.open( mProps, mDirectory ) );
+        assertFalse( filter.mightContain( "f.new" ) );
+
+        writeRC( mRCFile, true, "f.new file:///data/f.new site=\"local\"\n" );
+        assertNull( ReplicaBloomFilter.open( mProps, mDirectory ) );
+
+        filter = this.load();
+        assertTrue( filter.mightContain( "f.new" ) );
+        assertEquals( 3, filter.getCount() );
+    }
+
+    @Test
+    public void insertedLFNsAddedOnSave() throws IOException {
+        this.load();
+
+        //what the rc client does on insert
+        ReplicaBloomFilter filter = ReplicaBloomFilter.open( mProps, mDirectory );
+        writeRC( mRCFile, true, "f.new file:///data/f.new site=\"local\"\n" );
+        filter.add( "f.new" );
+        filter.save();
+
+        //the filter is up to date, and not rebuilt
+        filter = ReplicaBloomFilter.open( mProps, mDirectory );
+        assertNotNull( filter );
+        assertTrue( filter.mightContain( "f.new" ) );
+        assertEquals( 3, filter.getCount() );
+    }
+
+    @Test
+    public void filterDiscardedOnRegexInsert() throws IOException {
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_PROPERTY, "Regex" );
+        ReplicaBloomFilter filter = this.loadRegex();
+        assertTrue( filter.mightContain( "f.a" ) );
+        assertFalse( filter.mightContain( "f.sgt" ) );
+
+        //what the rc client does on insert
+        filter = ReplicaBloomFilter.open( mProps, mDirectory );
+        assertNotNull( filter );
+        ReplicaCatalogEntry exact = new ReplicaCatalogEntry( "file:///data/f.c", "local" );
+        assertTrue( ReplicaBloomFilter.canFilter( Collections.singleton( exact ) ) );
+        ReplicaCatalogEntry regex = new ReplicaCatalogEntry( "file:///other/[0]", "local" );
+        regex.setAttribute( Regex.REGEX_KEY, "true" );
+        assertFalse( ReplicaBloomFilter.canFilter( Arrays.asList( exact, regex ) ) );
+        writeRC( mRCFile, true, ".*[.]sgt file:///other/[0] site=\"local\" regex=\"true\"\n" );
+        filter.discard();
+
+        //the filter is not used, and not rebuilt for the regex catalog
+        assertFalse( filter.getFile().exists() );
+        assertNull( ReplicaBloomFilter.open( mProps, mDirectory ) );
+        try{
+            this.loadRegex();
+            fail( "filter built for a catalog with regular expression entries" );
+        }
+        catch( IOException e ){
+            //expected
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void regexEntriesCannotBeFiltered() throws IOException {
+        writeRC( mRCFile, true, ".*[.]sgt file:///other/[0] site=\"local\" regex=\"true\"\n" );
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_PROPERTY, "Regex" );
+        Regex catalog = new Regex();
+        catalog.connect( mRCFile.getAbsolutePath() );
+        try{
+            ReplicaBloomFilter.load( mProps, catalog, mDirectory, 0.01, mLogger );
+        }
+        finally{
+            catalog.close();
+        }
+    }
+
+    @Test
+    public void databaseRowsInsertedLaterAreAdded() throws Exception {
+        File db = new File( mDirectory.getPath() + ".db" );
+        String url = "jdbc:sqlite:" + db.getAbsolutePath();
+        mProps.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_PROPERTY, "JDBCRC" );
+        mProps.setProperty( "pegasus.catalog.replica.db.url", url );
+        try{
+            Class.forName( "org.sqlite.JDBC" );
+            Connection c = DriverManager.getConnection( url );
+            Statement s = c.createStatement();
+            s.executeUpdate( "CREATE TABLE rc_lfn( id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                             "lfn VARCHAR(245), pfn VARCHAR(245), site VARCHAR(245) )" );
+            s.executeUpdate( "INSERT INTO rc_lfn(lfn,pfn,site) VALUES ('f.a','file:///data/f.a','local')" );
+
+            JDBCRC catalog = new JDBCRC( "org.sqlite.JDBC", url, "", "" );
+            ReplicaBloomFilter filter = ReplicaBloomFilter.load( mProps, catalog, mDirectory, 0.01, mLogger );
+            assertTrue( filter.mightContain( "f.a" ) );
+            assertFalse( filter.mightContain( "f.b" ) );
+
+            s.executeUpdate( "INSERT INTO rc_lfn(lfn,pfn,site) VALUES ('f.b','file:///data/f.b','local')" );
+            filter = ReplicaBloomFilter.load( mProps, catalog, mDirectory, 0.01, mLogger );
+            assertTrue( filter.mightContain( "f.a" ) );
+            assertTrue( filter.mightContain( "f.b" ) );
+            assertEquals( 2, filter.getCount() );
+
+            catalog.close();
+            s.close();
+            c.close();
+        }
+        finally{
+            db.delete();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mRCFile.delete();
+        File[] files = mDirectory.listFiles();
+        if( files != null ){
+            for( File f : files ){
+                f.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private ReplicaBloomFilter load() throws IOException {
+        //the planner connects to file based catalogs in read only mode
+        Properties connect = new Properties();
+        connect.setProperty( "file", mRCFile.getAbsolutePath() );
+        connect.setProperty( SimpleFile.READ_ONLY_KEY, "true" );
+        SimpleFile catalog = new SimpleFile();
+        catalog.connect( connect );
+        try{
+            return ReplicaBloomFilter.load( mProps, catalog, mDirectory, 0.01, mLogger );
+        }
+        finally{
+            catalog.close();
+        }
+    }
+
+    private ReplicaBloomFilter loadRegex() throws IOException {
+        Properties connect = new Properties();
+        connect.setProperty( "file", mRCFile.getAbsolutePath() );
+        connect.setProperty( Regex.READ_ONLY_KEY, "true" );
+        Regex catalog = new Regex();
+        catalog.connect( connect );
+        try{
+            return ReplicaBloomFilter.load( mProps, catalog, mDirectory, 0.01, mLogger );
+        }
+        finally{
+            catalog.close();
+        }
+    }
+
+    private static void writeRC( File file, boolean append, String contents ) throws IOException {
+        FileWriter writer = new FileWriter( file, append );
+        writer.write( contents );
+        writer.close();
+    }
+}
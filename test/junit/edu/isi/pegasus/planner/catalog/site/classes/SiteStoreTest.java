@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog.site.classes;
+
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the memoized work directories and URLs in the site store.
+ *
+ * @author Karan Vahi
+ */
+public class SiteStoreTest {
+
+    private SiteStore mStore;
+
+    private PlannerOptions mOptions;
+
+    private FileServer mServer;
+
+    public SiteStoreTest() {
+    }
+
+    @Before
+    public void setUp() {
+        mServer = new FileServer( "gsiftp", "gsiftp://isi.edu", "/external/scratch" );
+        mServer.setSupportedOperation( FileServer.OPERATION.all );
+
+        mStore = new SiteStore();
+        mStore.addEntry( site( "isi", mServer, "/internal/scratch" ) );
+        mOptions = new PlannerOptions();
+        mOptions.setRandomDir( "run0001" );
+        mStore.setForPlannerUse( PegasusProperties.nonSingletonInstance(), mOptions );
+    }
+
+    @Test
+    public void testExternalWorkDirectory() {
+        String url = mStore.getExternalWorkDirectoryURL( mServer, "isi" );
+        assertEquals( "gsiftp://isi.edu/external/scratch/run0001", url );
+        assertSame( url, mStore.getExternalWorkDirectoryURL( "isi", FileServer.OPERATION.put ) );
+        assertEquals( "/external/scratch/run0001", mStore.getExternalWorkDirectory( mServer, "isi" ) );
+        assertEquals( "gsiftp://isi.edu/external/scratch/run0001/f.a",
+                      mStore.getExternalWorkDirectoryURL( mServer, "isi", "f.a" ) );
+        assertNull( mStore.getExternalWorkDirectoryURL( null, "isi", "f.a" ) );
+
+        //changes to the options or the server are picked up
+        mOptions.setRandomDir( "run0002" );
+        assertEquals( "gsiftp://isi.edu/external/scratch/run0002/f.a",
+                      mStore.getExternalWorkDirectoryURL( mServer, "isi", "f.a" ) );
+        mServer.setMountPoint( "/moved" );
+        assertEquals( "gsiftp://isi.edu/moved/run0002", mStore.getExternalWorkDirectoryURL( mServer, "isi" ) );
+    }
+
+    @Test
+    public void testInternalWorkDirectory() {
+        assertEquals( "/internal/scratch/run0001", mStore.getInternalWorkDirectory( "isi" ) );
+        assertEquals( "/internal/scratch/run0001/sub", mStore.getInternalWorkDirectory( "isi", "sub" ) );
+        assertEquals( "/abs", mStore.getInternalWorkDirectory( "isi", "/abs" ) );
+        assertEquals( "/tmp", mStore.getInternalWorkDirectory( "isi", null, Job.CREATE_DIR_JOB ) );
+        assertEquals( "file:///internal/scratch/run0001/f.a", mStore.getInternalWorkDirectoryURL( "isi", null, "f.a" ) );
+
+        //a replaced site entry is picked up
+        mStore.addEntry( site( "isi", mServer, "/replaced" ) );
+        assertEquals( "/replaced/run0001", mStore.getInternalWorkDirectory( "isi" ) );
+    }
+
+    @Test
+    public void testClone() {
+        assertEquals( "/internal/scratch/run0001", mStore.getInternalWorkDirectory( "isi" ) );
+        SiteStore clone = (SiteStore)mStore.clone();
+        clone.lookup( "isi" ).getDirectory( Directory.TYPE.shared_scratch ).
+              setInternalMountPoint( new InternalMountPoint( "/cloned" ) );
+        assertEquals( "/cloned/run0001", clone.getInternalWorkDirectory( "isi" ) );
+        assertEquals( "/internal/scratch/run0001", mStore.getInternalWorkDirectory( "isi" ) );
+    }
+
+    private static SiteCatalogEntry site( String handle, FileServer server, String internal ) {
+        Directory scratch = new Directory();
+        scratch.setType( Directory.TYPE.shared_scratch );
+        scratch.addFileServer( server );
+        scratch.setInternalMountPoint( new InternalMountPoint( internal ) );
+
+        SiteCatalogEntry site = new SiteCatalogEntry( handle );
+        site.addDirectory( scratch );
+        return site;
+    }
+}
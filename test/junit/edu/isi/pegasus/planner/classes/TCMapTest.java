@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.catalog.transformation.classes.TCType;
+import edu.isi.pegasus.planner.catalog.transformation.classes.TransformationStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the caching of resolved transformation lookups in the
+ * TCMap, and the multi site lookups against the transformation store.
+ *
+ * @author Karan Vahi
+ */
+public class TCMapTest {
+
+    private static final String LFN = "pegasus::preprocess:4.0";
+
+    public TCMapTest() {
+    }
+
+    @Test
+    public void testResolvedSites() {
+        TCMap map = new TCMap();
+        List<String> sites = Arrays.asList( "isi", "ncsa", "local" );
+        assertFalse( map.isResolved( LFN, "isi" ) );
+
+        map.setSiteTCEntries( LFN, "isi", entry( "isi", TCType.INSTALLED ) );
+        map.setResolved( LFN, sites );
+        assertTrue( map.isResolved( LFN, "ncsa" ) );
+        assertTrue( map.isResolved( LFN, sites ) );
+        assertFalse( map.isResolved( LFN, Arrays.asList( "isi", "osg" ) ) );
+
+        //a site resolved with no entries
+        assertNull( map.lookupSiteTCEntries( LFN, "ncsa" ) );
+        assertEquals( 1, map.lookupSiteTCEntries( LFN, "isi" ).size() );
+
+        map.clearResolved( LFN );
+        assertFalse( map.isResolved( LFN, "isi" ) );
+        assertNull( map.getSiteMap( LFN ) );
+    }
+
+    @Test
+    public void testResolvedSiteListRecomputedOnModification() {
+        TCMap map = new TCMap();
+        List<String> sites = new ArrayList<String>( Arrays.asList( "isi", "ncsa", "local" ) );
+        map.setSiteTCEntries( LFN, "isi", entry( "isi", TCType.INSTALLED ) );
+        map.setResolved( LFN, sites );
+
+        List valid = map.getResolvedSiteList( LFN, sites );
+        assertEquals( Arrays.asList( "isi" ), valid );
+        assertSame( valid, map.getResolvedSiteList( LFN, sites ) );
+
+        map.setSiteTCEntries( LFN, "local", entry( "local", TCType.INSTALLED ) );
+        valid = map.getResolvedSiteList( LFN, sites );
+        assertEquals( Arrays.asList( "isi", "local" ), valid );
+
+        sites.remove( "local" );
+        assertEquals( Arrays.asList( "isi" ), map.getResolvedSiteList( LFN, sites ) );
+    }
+
+    @Test
+    public void testResolvedSiteListKeyedOnContents() {
+        TCMap map = new TCMap();
+        List<String> sites = new ArrayList<String>( Arrays.asList( "isi", "ncsa", "local" ) );
+        map.setSiteTCEntries( LFN, "isi", entry( "isi", TCType.INSTALLED ) );
+        map.setSiteTCEntries( LFN, "local", entry( "local", TCType.INSTALLED ) );
+        map.setResolved( LFN, sites );
+
+        List valid = map.getResolvedSiteList( LFN, sites );
+        assertEquals( Arrays.asList( "isi", "local" ), valid );
+        assertSame( valid, map.getResolvedSiteList( LFN, new ArrayList<String>( sites ) ) );
+
+        //the same list with a site replaced has the same size
+        sites.set( 2, "ncsa" );
+        assertEquals( Arrays.asList( "isi" ), map.getResolvedSiteList( LFN, sites ) );
+        assertEquals( Arrays.asList( "isi", "local" ),
+                      map.getResolvedSiteList( LFN, Arrays.asList( "isi", "ncsa", "local" ) ) );
+    }
+
+    @Test
+    public void testStoreMultiSiteLookup() {
+        TransformationStore store = new TransformationStore();
+        store.addEntry( entry( "isi", TCType.INSTALLED ) );
+        store.addEntry( entry( "isi", TCType.STAGEABLE ) );
+        store.addEntry( entry( "ncsa", TCType.INSTALLED ) );
+        store.addEntry( entry( "local", TCType.INSTALLED ) );
+
+        List<TransformationCatalogEntry> result = store.getEntries( LFN, Arrays.asList( "ncsa", "isi", "osg" ), TCType.INSTALLED );
+        assertEquals( 2, result.size() );
+        assertEquals( "ncsa", result.get( 0 ).getResourceId() );
+        assertEquals( "isi", result.get( 1 ).getResourceId() );
+
+        assertEquals( 2, store.getEntries( LFN, Arrays.asList( "isi" ), null ).size() );
+        assertTrue( store.getEntries( "pegasus::missing", Arrays.asList( "isi" ), null ).isEmpty() );
+    }
+
+    private static TransformationCatalogEntry entry( String site, TCType type ) {
+        TransformationCatalogEntry entry = new TransformationCatalogEntry( "pegasus", "preprocess", "4.0" );
+        entry.setResourceId( site );
+        entry.setType( type );
+        entry.setPhysicalTransformation( "/usr/bin/preprocess-" + site + "-" + type );
+        return entry;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2007-2014 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the first fit and the least loaded packing of jobs into
+ * bins, used by the runtime clustering.
+ *
+ * @author Karan Vahi
+ */
+public class BinPackTest {
+
+    /**
+     * The allowed error in the combined runtimes of the bins.
+     */
+    private static final double DELTA = 1e-9;
+
+    public BinPackTest() {
+    }
+
+    @Test
+    public void testFirstFit() {
+        double[] runtimes = { 8, 7, 5, 4, 3, 2, 1 };
+        Horizontal.Bins bins = Horizontal.firstFitBinPack( runtimes, 10 );
+
+        //the closed bins in the order they were closed
+        assertEquals( 3, bins.mJobs.length );
+        assertArrayEquals( new int[]{ 1, 4 }, bins.mJobs[0] );
+        assertArrayEquals( new int[]{ 0, 5 }, bins.mJobs[1] );
+        assertArrayEquals( new int[]{ 2, 3, 6 }, bins.mJobs[2] );
+        for( double time : bins.mTimes ){
+            assertEquals( 10, time, DELTA );
+        }
+    }
+
+    @Test
+    public void testFirstFitSkipsLongJobs() {
+        double[] runtimes = { 12, 11, 6, 3 };
+        Horizontal.Bins bins = Horizontal.firstFitBinPack( runtimes, 10 );
+
+        assertEquals( 1, bins.mJobs.length );
+        assertArrayEquals( new int[]{ 2, 3 }, bins.mJobs[0] );
+        assertEquals( 9, bins.mTimes[0], DELTA );
+    }
+
+    @Test
+    public void testFirstFitMatchesLinearScan() {
+        Random random = new Random( 42 );
+        for( int round = 0; round < 50; round++ ){
+            double maxTime = 10 + random.nextInt( 100 );
+            double[] runtimes = runtimes( random, 1 + random.nextInt( 500 ), maxTime );
+            Horizontal.Bins bins = Horizontal.firstFitBinPack( runtimes, maxTime );
+
+            assertEquals( firstFitLinearScan( runtimes, maxTime ), toSet( bins ) );
+            for( int i = 0; i < bins.mJobs.length; i++ ){
+                assertTrue( bins.mTimes[i] <= maxTime );
+                assertEquals( sum( runtimes, bins.mJobs[i] ), bins.mTimes[i], DELTA );
+            }
+        }
+    }
+
+    @Test
+    public void testLeastLoadedFractionalRuntimes() {
+        //the bins differ by less than a second
+        double[] runtimes = { 0.9, 0.5, 0.4 };
+        Horizontal.Bins bins = Horizontal.leastLoadedBinPack( runtimes, 2 );
+
+        assertEquals( 2, bins.mJobs.length );
+        Set<String> expected = new HashSet<String>();
+        expected.add( Arrays.toString( new int[]{ 0 } ) );
+        expected.add( Arrays.toString( new int[]{ 1, 2 } ) );
+        assertEquals( expected, toSet( bins ) );
+        assertEquals( 0.9, bins.mTimes[0], DELTA );
+        assertEquals( 0.9, bins.mTimes[1], DELTA );
+    }
+
+    @Test
+    public void testLeastLoadedFewerJobsThanBins() {
+        double[] runtimes = { 3, 2 };
+        Horizontal.Bins bins = Horizontal.leastLoadedBinPack( runtimes, 5 );
+
+        assertEquals( 2, bins.mJobs.length );
+        assertEquals( 1, bins.mJobs[0].length );
+        assertEquals( 1, bins.mJobs[1].length );
+    }
+
+    @Test
+    public void testLeastLoadedMatchesLinearScan() {
+        Random random = new Random( 7 );
+        for( int round = 0; round < 50; round++ ){
+            int maxBins = 1 + random.nextInt( 20 );
+            double[] runtimes = runtimes( random, 1 + random.nextInt( 500 ), 10 );
+            Horizontal.Bins bins = Horizontal.leastLoadedBinPack( runtimes, maxBins );
+
+            double[] expected = leastLoadedLinearScan( runtimes, maxBins );
+            double[] actual = bins.mTimes.clone();
+            Arrays.sort( expected );
+            Arrays.sort( actual );
+            assertEquals( expected.length, actual.length );
+            for( int i = 0; i < expected.length; i++ ){
+                assertEquals( expected[i], actual[i], DELTA );
+            }
+
+            boolean[] seen = new boolean[ runtimes.length ];
+            for( int i = 0; i < bins.mJobs.length; i++ ){
+                for( int j : bins.mJobs[i] ){
+                    assertFalse( seen[j] );
+                    seen[j] = true;
+                }
+                assertEquals( sum( runtimes, bins.mJobs[i] ), bins.mTimes[i], DELTA );
+            }
+            for( boolean s : seen ){
+                assertTrue( s );
+            }
+        }
+    }
+
+    /**
+     * Returns random fractional runtimes sorted in decreasing order, with a
+     * few greater than the maximum time.
+     *
+     * @param random   the random number generator.
+     * @param n        the number of jobs.
+     * @param maxTime  the maximum runtime of a bin.
+     *
+     * @return the runtimes
+     */
+    private static double[] runtimes( Random random, int n, double maxTime ){
+        double[] runtimes = new double[ n ];
+        for( int i = 0; i < n; i++ ){
+            runtimes[i] = ( i == 0 ) ? maxTime / 2 : random.nextDouble() * maxTime * 1.1;
+        }
+        Arrays.sort( runtimes );
+        for( int i = 0, j = n - 1; i < j; i++, j-- ){
+            double t = runtimes[i];
+            runtimes[i] = runtimes[j];
+            runtimes[j] = t;
+        }
+        return runtimes;
+    }
+
+    /**
+     * Packs the jobs using first fit, by scanning all the bins for each job.
+     *
+     * @param runtimes  the runtimes of the jobs sorted in decreasing order.
+     * @param maxTime   the maximum runtime of a bin.
+     *
+     * @return the bins as strings
+     */
+    private static Set<String> firstFitLinearScan( double[] runtimes, double maxTime ){
+        List<List<Integer>> bins = new ArrayList<List<Integer>>();
+        List<Double> times = new ArrayList<Double>();
+        for( int j = 0; j < runtimes.length; j++ ){
+            if( runtimes[j] > maxTime ){
+                continue;
+            }
+            int b = 0;
+            while( b < bins.size() && times.get( b ) + runtimes[j] > maxTime ){
+                b++;
+            }
+            if( b == bins.size() ){
+                bins.add( new ArrayList<Integer>() );
+                times.add( 0d );
+            }
+            bins.get( b ).add( j );
+            times.set( b, times.get( b ) + runtimes[j] );
+        }
+        Set<String> result = new HashSet<String>();
+        for( List<Integer> bin : bins ){
+            result.add( bin.toString() );
+        }
+        return result;
+    }
+
+    /**
+     * Packs the jobs by adding each to the bin with the shortest combined
+     * runtime, found by scanning all the bins.
+     *
+     * @param runtimes  the runtimes of the jobs sorted in decreasing order.
+     * @param maxBins   the number of bins.
+     *
+     * @return the combined runtimes of the bins
+     */
+    private static double[] leastLoadedLinearScan( double[] runtimes, int maxBins ){
+        double[] times = new double[ Math.min( maxBins, runtimes.length ) ];
+        for( double runtime : runtimes ){
+            int least = 0;
+            for( int b = 1; b < times.length; b++ ){
+                if( times[b] < times[ least ] ){
+                    least = b;
+                }
+            }
+            times[ least ] += runtime;
+        }
+        return times;
+    }
+
+    /**
+     * Returns the bins as strings, that can be compared regardless of the
+     * order of the bins.
+     *
+     * @param bins  the bins
+     *
+     * @return the bins as strings
+     */
+    private static Set<String> toSet( Horizontal.Bins bins ){
+        Set<String> result = new HashSet<String>();
+        for( int[] bin : bins.mJobs ){
+            result.add( Arrays.toString( bin ) );
+        }
+        assertEquals( bins.mJobs.length, result.size() );
+        return result;
+    }
+
+    private static double sum( double[] runtimes, int[] jobs ){
+        double sum = 0;
+        for( int j : jobs ){
+            sum += runtimes[j];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.code;
+
+import edu.isi.pegasus.planner.classes.Job;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the flat and the hashed layout of the per job files in
+ * the submit directory.
+ *
+ * @author Karan Vahi
+ */
+public class SubmitDirectoryLayoutTest {
+
+    private File mDirectory;
+
+    public SubmitDirectoryLayoutTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile( "submit", "" );
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @Test
+    public void testFlatLayout() {
+        Job job = job( 1 );
+        for( SubmitDirectoryLayout layout : new SubmitDirectoryLayout[]{
+                                               new SubmitDirectoryLayout( mDirectory.getPath() ),
+                                               new SubmitDirectoryLayout( mDirectory.getPath(), 10 ) } ){
+            assertEquals( 0, layout.getLevels() );
+            assertEquals( "", layout.getRelativeDirectory( job ) );
+            assertEquals( "preprocess_ID1.sub", layout.getRelativePath( job, ".sub" ) );
+            assertEquals( mDirectory.getPath() + File.separator + "preprocess_ID1.out",
+                          layout.getPath( job, ".out" ) );
+            assertEquals( new File( mDirectory, "preprocess_ID1.sh" ), layout.getFile( job, ".sh" ) );
+        }
+        assertEquals( 0, mDirectory.list().length );
+    }
+
+    @Test
+    public void testHashedLayout() {
+        int jobs = 1000;
+        SubmitDirectoryLayout layout = new SubmitDirectoryLayout( mDirectory.getPath(), jobs );
+        assertEquals( 1, layout.getLevels() );
+
+        Map<String,Integer> counts = new HashMap<String,Integer>();
+        for( int i = 0; i < jobs; i++ ){
+            Job job = job( i );
+            String directory = layout.getRelativeDirectory( job );
+            assertTrue( new File( mDirectory, directory ).isDirectory() );
+            assertEquals( directory + File.separator + job.getID() + ".sub",
+                          layout.getRelativePath( job, ".sub" ) );
+            Integer count = counts.get( directory );
+            counts.put( directory, ( count == null ) ? 1 : count + 1 );
+        }
+        assertEquals( mDirectory.list().length, counts.size() );
+        for( Integer count : counts.values() ){
+            assertTrue( count <= 254 / SubmitDirectoryLayout.FILES_PER_JOB + 1 );
+        }
+    }
+
+    @Test
+    public void testDirectoryIsStable() {
+        SubmitDirectoryLayout layout = new SubmitDirectoryLayout( mDirectory.getPath(), 1000 );
+        Map<String,String> directories = new HashMap<String,String>();
+        for( int i = 0; i < 100; i++ ){
+            directories.put( job( i ).getID(), layout.getRelativeDirectory( job( i ) ) );
+        }
+        for( int i = 99; i >= 0; i-- ){
+            Job job = job( i );
+            assertSame( directories.get( job.getID() ), layout.getRelativeDirectory( job ) );
+            assertEquals( new File( new File( mDirectory, directories.get( job.getID() ) ), job.getID() + ".err" ),
+                          layout.getFile( job, ".err" ) );
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete( mDirectory );
+    }
+
+    private static Job job( int i ) {
+        Job job = new Job();
+        job.setName( "preprocess_ID" + i );
+        return job;
+    }
+
+    private static void delete( File f ) {
+        File[] files = f.listFiles();
+        if( files != null ){
+            for( File child : files ){
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+}
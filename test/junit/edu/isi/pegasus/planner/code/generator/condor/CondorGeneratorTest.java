@@ -0,0 +1,237 @@
+/*
+ * Copyright 2007-2015 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.code.generator.condor;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.code.CodeGeneratorException;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.refiner.MainEngine;
+import edu.isi.pegasus.planner.test.PlannerTestSetup;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * To test the writing out of the submit directory by the CondorGenerator
+ * with a pool of threads.
+ *
+ * @author Karan Vahi
+ */
+public class CondorGeneratorTest {
+
+    /**
+     * The properties used for this test.
+     */
+    private static final String PROPERTIES_BASENAME = "properties";
+
+    /**
+     * The job whose submit file fails to be written out.
+     */
+    private static final String FAILING_JOB = "findrange_ID0000003";
+
+    private PlannerTestSetup mTestSetup;
+
+    private File mBaseDirectory;
+
+    private static int mTestNumber = 1;
+
+    public CondorGeneratorTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mTestSetup = new PlannerTestSetup();
+        mTestSetup.setInputDirectory( this.getClass() );
+        mTestSetup.setPegasusHome();
+        System.out.println( "Input Test Dir is " + mTestSetup.getInputDirectory() );
+
+        mBaseDirectory = File.createTempFile( "condor-generator", "" );
+        mBaseDirectory.delete();
+        mBaseDirectory.mkdirs();
+    }
+
+    /**
+     * The submit files and the .dag file written out with a pool of threads
+     * should be the same as those written out by the calling thread.
+     */
+    @Test
+    public void testThreadsWriteSameFiles() throws Exception {
+        Map<String,String> serial   = this.generate( 1, null );
+        PlannerTestSetup.delete( mBaseDirectory );
+        Map<String,String> parallel = this.generate( 4, null );
+
+        assertTrue( serial.containsKey( "diamond-0.dag" ) );
+        assertTrue( serial.containsKey( "preprocess_ID0000001.sub" ) );
+        assertEquals( serial.keySet(), parallel.keySet() );
+        for( Map.Entry<String,String> entry : serial.entrySet() ){
+            assertEquals( "Contents differ for " + entry.getKey(),
+                          entry.getValue(), parallel.get( entry.getKey() ) );
+        }
+    }
+
+    /**
+     * A failure to write out a file on a worker thread should be thrown
+     * before the .dag file is renamed into place.
+     */
+    @Test
+    public void testWriteFailureIsThrown() throws Exception {
+        for( int threads : new int[]{ 1, 4 } ){
+            try{
+                this.generate( threads, FAILING_JOB );
+                fail( "Code generation with " + threads + " threads should fail for job " + FAILING_JOB );
+            }
+            catch( CodeGeneratorException e ){
+                assertTrue( e.getMessage(), e.getMessage().contains( FAILING_JOB ) );
+            }
+            File submitDir = new File( mBaseDirectory, PlannerTestSetup.RELATIVE_SUBMIT_DIRECTORY );
+            assertFalse( new File( submitDir, "diamond-0.dag" ).exists() );
+            assertTrue( new File( submitDir, "diamond-0.dag.tmp" ).exists() );
+            PlannerTestSetup.delete( mBaseDirectory );
+        }
+    }
+
+    @After
+    public void tearDown() {
+        PlannerTestSetup.delete( mBaseDirectory );
+    }
+
+    /**
+     * Plans the workflow and writes out the submit directory with the
+     * number of threads passed.
+     *
+     * @param threads     the number of threads to write out the files with.
+     * @param failingJob  the job whose submit file fails to be written, can be null.
+     *
+     * @return map of the .sub and .dag files in the submit directory to their
+     *         contents, with the name of the properties file in the submit
+     *         directory replaced.
+     */
+    private Map<String,String> generate( int threads, String failingJob ) throws Exception {
+        PegasusProperties props = mTestSetup.loadPropertiesFromFile( PROPERTIES_BASENAME,
+                                                                     this.getPropertyKeysForSanitization() );
+        props.setProperty( "pegasus.code.generator.threads", Integer.toString( threads ) );
+        LogManager logger = mTestSetup.loadLogger( props );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+        logger.logEventStart( "test.code.generator.condor", "set", Integer.toString( mTestNumber++ ) );
+
+        PlannerOptions options = mTestSetup.loadPlannerOptions( mBaseDirectory, "condorpool", "blackdiamond.dax" );
+        PegasusBag bag = mTestSetup.loadBag( props, logger, options );
+        ADag dag = mTestSetup.loadDAX( bag );
+        MainEngine engine = new MainEngine( dag, bag );
+        ADag workflow = engine.runPlanner();
+
+        CondorGenerator generator = new NoSubmitCondorGenerator( failingJob );
+        generator.initialize( engine.getPegasusBag() );
+        generator.generateCode( workflow );
+        logger.logEventCompletion();
+
+        File submitDir = new File( options.getSubmitDirectory() );
+        String propertiesFile = new File( props.getPropertiesInSubmitDirectory() ).getName();
+        Map<String,String> result = new TreeMap<String,String>();
+        for( String name : submitDir.list() ){
+            if( name.endsWith( ".sub" ) || name.endsWith( ".dag" ) ){
+                result.put( name, read( new File( submitDir, name ) ).replace( propertiesFile, "pegasus.properties" ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the contents of a file.
+     *
+     * @param file  the file
+     *
+     * @return the contents
+     */
+    private static String read( File file ) throws IOException {
+        InputStream in = new FileInputStream( file );
+        byte[] contents = new byte[ (int)file.length() ];
+        int offset = 0;
+        try{
+            while( offset < contents.length ){
+                int read = in.read( contents, offset, contents.length - offset );
+                if( read < 0 ){
+                    break;
+                }
+                offset += read;
+            }
+        }
+        finally{
+            in.close();
+        }
+        return new String( contents, 0, offset, "UTF-8" );
+    }
+
+    /**
+     * Returns the list of property keys that need to be sanitized
+     *
+     * @return
+     */
+    private List<String> getPropertyKeysForSanitization(){
+        List<String> keys = new LinkedList();
+        keys.add( "pegasus.catalog.site.file" );
+        keys.add( "pegasus.catalog.transformation.file" );
+        keys.add( "pegasus.catalog.replica.file" );
+        return keys;
+    }
+
+    /**
+     * A CondorGenerator that does not generate the .condor.sub file for the
+     * dag, as condor_submit_dag is not available to the tests, and optionally
+     * fails writing out the submit file for a job.
+     */
+    public static class NoSubmitCondorGenerator extends CondorGenerator {
+
+        /**
+         * The job whose submit file fails to be written, can be null.
+         */
+        private String mFailingJob;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param failingJob  the job whose submit file fails to be written, can be null.
+         */
+        public NoSubmitCondorGenerator( String failingJob ){
+            super();
+            mFailingJob = failingJob;
+        }
+
+        protected void writeSubmitFile( Job job, String contents ) throws CodeGeneratorException{
+            if( job.getID().equals( mFailingJob ) ){
+                throw new CodeGeneratorException( "Unable to write out submit file for job " + job.getID() );
+            }
+            super.writeSubmitFile( job, contents );
+        }
+
+        protected void writeOutDAGManSubmitFile( ADag dag, File dagFile ) throws CodeGeneratorException{
+            //condor_submit_dag is not available
+        }
+    }
+}
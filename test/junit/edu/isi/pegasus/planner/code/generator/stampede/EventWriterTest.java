@@ -0,0 +1,225 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.code.generator.stampede;
+
+import edu.isi.pegasus.common.logging.LogFormatter;
+import edu.isi.pegasus.common.logging.LogFormatterFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test to test the round trip of the stampede events through the
+ * text and binary event writers.
+ *
+ * @author Karan Vahi
+ */
+public class EventWriterTest {
+
+    private static final String UUID = "a6cd2c43-3e4a-4b3c-9a4e-12f0b3f4bd2e";
+
+    public EventWriterTest(){
+    }
+
+    @Test
+    public void testTextSameAsNetlogger() throws IOException {
+        LogFormatter formatter = LogFormatterFactory.loadInstance( "Netlogger" );
+        StringWriter out = new StringWriter();
+        TextEventWriter writer = new TextEventWriter( out );
+        StringBuffer expected = new StringBuffer();
+        for( StampedeEvent event : this.createEvents( 50 ) ){
+            formatter.addEvent( event.getName(), event.getEntityKey(), event.getEntityValue() );
+            for( int i = 0; i < event.size(); i++ ){
+                formatter.add( event.getKey( i ), event.getValue( i ) );
+            }
+            expected.append( formatter.createLogMessage() ).append( System.getProperty( "line.separator" ) );
+            formatter.popEvent();
+            writer.write( event );
+        }
+        writer.close();
+        assertEquals( this.stripTimestamps( expected.toString() ), this.stripTimestamps( out.toString() ) );
+    }
+
+    @Test
+    public void testTextTimestamp() throws IOException {
+        StringWriter out = new StringWriter();
+        TextEventWriter writer = new TextEventWriter( out );
+        StampedeEvent event = new StampedeEvent();
+        event.reset( "job.edge", "xwf.id", UUID ).add( "parent.job.id", "a" );
+        event.setTimestamp( 1234567890000056L );
+        writer.write( event );
+        writer.close();
+        assertTrue( out.toString(), out.toString().startsWith( "ts=2009-02-13T23:31:30.000056Z event=job.edge " ) );
+    }
+
+    @Test
+    public void testTextRoundTrip() throws IOException {
+        StringWriter out = new StringWriter();
+        TextEventWriter writer = new TextEventWriter( out );
+        List<StampedeEvent> events = this.createEvents( 200 );
+        for( StampedeEvent event : events ){
+            writer.write( event );
+        }
+        writer.close();
+
+        String[] lines = out.toString().split( System.getProperty( "line.separator" ) );
+        assertEquals( events.size(), lines.length );
+        for( int i = 0; i < lines.length; i++ ){
+            assertEvent( events.get( i ), this.parse( lines[i] ), false );
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<StampedeEvent> events = this.createEvents( 1000 );
+
+        //two writers appending to the same stream, as for the abstract
+        //and the executable workflow events
+        BinaryEventWriter writer = new BinaryEventWriter( out );
+        for( StampedeEvent event : events.subList( 0, 400 ) ){
+            writer.write( event );
+        }
+        writer = new BinaryEventWriter( out );
+        for( StampedeEvent event : events.subList( 400, events.size() ) ){
+            writer.write( event );
+        }
+        writer.close();
+
+        BinaryEventReader reader = new BinaryEventReader( new ByteArrayInputStream( out.toByteArray() ) );
+        StampedeEvent event = new StampedeEvent();
+        for( StampedeEvent expected : events ){
+            assertTrue( reader.read( event ) );
+            assertEvent( expected, event, true );
+        }
+        assertFalse( reader.read( event ) );
+        reader.close();
+    }
+
+    @Test( expected = IOException.class )
+    public void testBinaryRejectsText() throws IOException {
+        BinaryEventReader reader = new BinaryEventReader( new ByteArrayInputStream( "ts=2009".getBytes() ) );
+        reader.read( new StampedeEvent() );
+    }
+
+    /**
+     * Creates events with the attributes the stampede generator uses, and
+     * values that need escaping or are long, null or not ASCII.
+     */
+    private List<StampedeEvent> createEvents( int count ){
+        List<StampedeEvent> result = new ArrayList<StampedeEvent>();
+        StringBuffer longValue = new StringBuffer();
+        for( int i = 0; i < 3000; i++ ){
+            longValue.append( (char)( 'a' + i % 26 ) );
+        }
+        for( int i = 0; i < count; i++ ){
+            StampedeEvent event = new StampedeEvent();
+            switch( i % 5 ){
+                case 0:
+                    event.reset( "job.info", "xwf.id", UUID ).
+                          add( "job.id", "ID" + i ).
+                          add( "submit_file", "ID" + i + ".sub" ).
+                          add( "type", "1" ).
+                          add( "argv", "-a \"quoted \\ value\" " + i ).
+                          add( "executable", null );
+                    break;
+
+                case 1:
+                    event.reset( "job.edge", "xwf.id", UUID ).
+                          add( "parent.job.id", "ID" + ( i - 1 ) ).
+                          add( "child.job.id", "ID" + i );
+                    break;
+
+                case 2:
+                    event.reset( "task.info", "xwf.id", UUID ).
+                          add( "task.id", "télé" + i ).
+                          add( "argv", longValue.toString() );
+                    break;
+
+                case 3:
+                    //many different keys, so that the symbol indexes
+                    //take more than a byte
+                    event.reset( "wf.map.task_job", "xwf.id", UUID ).
+                          add( "key" + i, "" ).
+                          add( "task.id", "" + i );
+                    break;
+
+                default:
+                    event.reset( "task.edge", "xwf.id", UUID + i );
+                    break;
+            }
+            event.setTimestamp( 1400000000000000L + i * 1234567L );
+            result.add( event );
+        }
+        return result;
+    }
+
+    /**
+     * Parses an event from a line in the netlogger format.
+     */
+    private StampedeEvent parse( String line ){
+        StampedeEvent event = new StampedeEvent();
+        String[] fixed = line.split( " ", 4 );
+        String name = fixed[1].substring( "event=".length() );
+        int eq = fixed[2].indexOf( '=' );
+        event.reset( name, fixed[2].substring( 0, eq ), fixed[2].substring( eq + 1 ) );
+        String rest = ( fixed.length > 3 ) ? fixed[3] : "";
+        int i = 0;
+        while( i < rest.length() ){
+            eq = rest.indexOf( '=', i );
+            String key = rest.substring( i, eq );
+            StringBuffer value = new StringBuffer();
+            int j = eq + 2;
+            for( ; rest.charAt( j ) != '"'; j++ ){
+                if( rest.charAt( j ) == '\\' && rest.charAt( j + 1 ) == '"' ){
+                    j++;
+                }
+                value.append( rest.charAt( j ) );
+            }
+            event.add( key, value.toString() );
+            i = j + 2;
+        }
+        return event;
+    }
+
+    private void assertEvent( StampedeEvent expected, StampedeEvent actual, boolean compareTimestamp ){
+        assertEquals( expected.getName(), actual.getName() );
+        assertEquals( expected.getEntityKey(), actual.getEntityKey() );
+        assertEquals( expected.getEntityValue(), actual.getEntityValue() );
+        if( compareTimestamp ){
+            assertEquals( expected.getTimestamp(), actual.getTimestamp() );
+        }
+        assertEquals( expected.size(), actual.size() );
+        for( int i = 0; i < expected.size(); i++ ){
+            assertEquals( expected.getKey( i ), actual.getKey( i ) );
+            //a null value is written out as null in the text format
+            String value = expected.getValue( i );
+            assertEquals( ( value == null && !compareTimestamp ) ? "null" : value, actual.getValue( i ) );
+        }
+    }
+
+    private String stripTimestamps( String events ){
+        return events.replaceAll( "ts=[^ ]* ", "ts= " );
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.code.gridstart;
+
+import org.junit.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the writing out of the PegasusLite wrappers from shared
+ * and per job segments, serially and on a pool of threads.
+ *
+ * @author Karan Vahi
+ */
+public class WrapperWriterTest {
+
+    private static final String HEADER = "#!/bin/bash\nset -e\n";
+
+    private File mDirectory;
+
+    public WrapperWriterTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile( "pegasus-lite", "" );
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @Test
+    public void testParallelMatchesSerial() throws IOException {
+        for( int threads : new int[]{ 1, 4 } ){
+            WrapperWriter writer = new WrapperWriter( threads );
+            for( int i = 0; i < 200; i++ ){
+                writer.write( new File( mDirectory, threads + "-" + i + ".sh" ), segments( i ) );
+            }
+            writer.flush();
+        }
+        for( int i = 0; i < 200; i++ ){
+            File wrapper = new File( mDirectory, "4-" + i + ".sh" );
+            assertEquals( HEADER + "job " + i + "\njob_ec=$?\n", read( wrapper ) );
+            assertEquals( read( new File( mDirectory, "1-" + i + ".sh" ) ), read( wrapper ) );
+            assertTrue( wrapper.canExecute() );
+        }
+    }
+
+    @Test
+    public void testAppendsToExistingFile() throws IOException {
+        File wrapper = new File( mDirectory, "append.sh" );
+        WrapperWriter writer = new WrapperWriter( 2 );
+        writer.write( wrapper, segments( 1 ) );
+        writer.flush();
+        writer.write( wrapper, segments( 2 ) );
+        writer.flush();
+        assertEquals( HEADER + "job 1\njob_ec=$?\n" + HEADER + "job 2\njob_ec=$?\n", read( wrapper ) );
+    }
+
+    @Test
+    public void testFailureThrownOnFlush() {
+        WrapperWriter writer = new WrapperWriter( 2 );
+        writer.write( new File( new File( mDirectory, "missing" ), "job.sh" ), segments( 1 ) );
+        try{
+            writer.flush();
+            fail( "Expected the failure to be thrown" );
+        }
+        catch( RuntimeException e ){
+            assertTrue( e.getMessage().contains( "job.sh" ) );
+        }
+        //the failure is thrown only once
+        writer.flush();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if( files != null ){
+            for( File f : files ){
+                f.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private static List<CharSequence> segments( int job ) {
+        List<CharSequence> segments = new ArrayList<CharSequence>();
+        segments.add( HEADER );
+        segments.add( new StringBuffer().append( "job " ).append( job ).append( '\n' ) );
+        segments.add( "job_ec=$?\n" );
+        return segments;
+    }
+
+    private static String read( File f ) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Reader reader = new InputStreamReader( new FileInputStream( f ) );
+        char[] buffer = new char[ 1024 ];
+        int n;
+        while( ( n = reader.read( buffer ) ) != -1 ){
+            sb.append( buffer, 0, n );
+        }
+        reader.close();
+        return sb.toString();
+    }
+}
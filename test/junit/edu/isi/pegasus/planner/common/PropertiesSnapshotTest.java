@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.common;
+
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test that the properties snapshot matches the properties it
+ * was taken of.
+ *
+ * @author Karan Vahi
+ */
+public class PropertiesSnapshotTest {
+
+    private PegasusProperties mProps;
+
+    public PropertiesSnapshotTest() {
+    }
+
+    @Before
+    public void setUp() {
+        mProps = PegasusProperties.nonSingletonInstance();
+        mProps.setProperty( "pegasus.gridstart", " PegasusLite " );
+        mProps.setProperty( "pegasus.gridstart.label", "false" );
+        mProps.setProperty( "pegasus.clusterer.preference", "runtime" );
+        mProps.setProperty( "pegasus.transfer.stagein.priority", "5" );
+        mProps.setProperty( "pegasus.transfer.stageout.priority", "bogus" );
+        mProps.setProperty( "pegasus.partitioner.horizontal.bundle.preprocess", "4" );
+        mProps.setProperty( "dagman.maxpre", "2" );
+        mProps.setProperty( "dagman.bigjob.maxjobs", "10" );
+        mProps.setProperty( "condor.universe", "vanilla" );
+    }
+
+    @Test
+    public void testTypedValues() {
+        PropertiesSnapshot snapshot = mProps.getSnapshot();
+        assertEquals( mProps.getGridStart(), snapshot.getGridStart() );
+        assertEquals( "PegasusLite", snapshot.getGridStart() );
+        assertEquals( mProps.generateKickstartExtraOptions(), snapshot.generateKickstartExtraOptions() );
+        assertFalse( snapshot.generateKickstartExtraOptions() );
+        assertEquals( mProps.useCondorQuotingForArguments(), snapshot.useCondorQuotingForArguments() );
+        assertEquals( mProps.getHorizontalClusterPreference(), snapshot.getHorizontalClusterPreference() );
+        assertEquals( mProps.getTransferStageInPriority(), snapshot.getTransferStageInPriority() );
+        assertEquals( mProps.getTransferStageOutPriority(), snapshot.getTransferStageOutPriority() );
+        assertEquals( mProps.getTransferInterPriority(), snapshot.getTransferInterPriority() );
+        assertEquals( mProps.getTXSelectorMode(), snapshot.getTXSelectorMode() );
+        assertEquals( mProps.preserveParserLineBreaks(), snapshot.preserveParserLineBreaks() );
+        assertEquals( "4", snapshot.getHorizontalPartitionerBundleValue( "preprocess" ) );
+        assertNull( snapshot.getHorizontalPartitionerCollapseValue( "preprocess" ) );
+        assertEquals( 10, snapshot.getIntProperty( "dagman.bigjob.maxjobs", -1 ) );
+        assertEquals( -1, snapshot.getIntProperty( "pegasus.transfer.stageout.priority", -1 ) );
+        assertTrue( snapshot.getBooleanProperty( "pegasus.missing", true ) );
+    }
+
+    @Test
+    public void testMatchingSubset() {
+        PropertiesSnapshot snapshot = mProps.getSnapshot();
+        for( String prefix : new String[]{ "dagman", "dagman.", "condor", "pegasus.transfer" } ){
+            Properties expected = mProps.matchingSubset( prefix, false );
+            Map<String,String> subset = snapshot.matchingSubset( prefix );
+            assertEquals( prefix, expected.size(), subset.size() );
+            for( String key : expected.stringPropertyNames() ){
+                assertEquals( expected.getProperty( key ), subset.get( key ) );
+            }
+        }
+        //the subsets are computed once
+        assertSame( snapshot.matchingSubset( "dagman" ), snapshot.matchingSubset( "dagman." ) );
+        assertTrue( snapshot.matchingSubset( "nonexistent" ).isEmpty() );
+    }
+
+    @Test
+    public void testSystemPropertiesTakePrecedence() {
+        String key = "pegasus.clusterer.preference";
+        System.setProperty( key, "bins" );
+        try{
+            PegasusProperties props = (PegasusProperties)mProps.clone();
+            assertEquals( "bins", props.getSnapshot().getHorizontalClusterPreference() );
+            assertEquals( "bins", props.getSnapshot().getProperty( key ) );
+        }
+        finally{
+            System.clearProperty( key );
+        }
+    }
+
+    @Test
+    public void testRetakenOnModification() {
+        PropertiesSnapshot snapshot = mProps.getSnapshot();
+        assertSame( snapshot, mProps.getSnapshot() );
+
+        mProps.setProperty( "pegasus.gridstart", "Kickstart" );
+        assertNotSame( snapshot, mProps.getSnapshot() );
+        assertEquals( "Kickstart", mProps.getSnapshot().getGridStart() );
+
+        mProps.removeProperty( "pegasus.gridstart" );
+        assertNull( mProps.getSnapshot().getGridStart() );
+    }
+}
@@ -0,0 +1,429 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.invocation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.isi.pegasus.planner.parser.InvocationParser;
+
+import org.griphyn.vdl.dbschema.InvocationSchema;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test for the IngestServer, that saves kickstart records into a
+ * local SQLite database.
+ *
+ * @author Karan Vahi
+ */
+public class IngestServerTest {
+
+    /**
+     * The tables of the provenance tracking catalog, in SQLite syntax.
+     */
+    private static final String[] PTC_TABLES = {
+        "CREATE TABLE ptc_uname( id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "archmode VARCHAR(16), sysname VARCHAR(64), os_release VARCHAR(64), " +
+            "machine VARCHAR(64) )",
+        "CREATE TABLE ptc_rusage( id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "utime DOUBLE, stime DOUBLE, minflt INTEGER, majflt INTEGER, " +
+            "nswaps INTEGER, nsignals INTEGER, nvcsw INTEGER, nivcsw INTEGER )",
+        "CREATE TABLE ptc_stat( id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "errno INTEGER, fname TEXT, fdesc INTEGER, size BIGINT, mode INTEGER, " +
+            "inode BIGINT, atime TIMESTAMP, ctime TIMESTAMP, mtime TIMESTAMP, " +
+            "uid INTEGER, gid INTEGER )",
+        "CREATE TABLE ptc_invocation( id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "creator VARCHAR(32), creationtime TIMESTAMP, wf_label VARCHAR(32), " +
+            "wf_time TIMESTAMP, version VARCHAR(4), start TIMESTAMP, duration DOUBLE, " +
+            "tr_namespace VARCHAR(255), tr_name VARCHAR(255), tr_version VARCHAR(255), " +
+            "dv_namespace VARCHAR(255), dv_name VARCHAR(255), dv_version VARCHAR(255), " +
+            "resource VARCHAR(48), host VARCHAR(64), pid INTEGER, uid INTEGER, " +
+            "gid INTEGER, cwd TEXT, arch BIGINT, total BIGINT )",
+        "CREATE TABLE ptc_job( id BIGINT, type CHAR(1), start TIMESTAMP, " +
+            "duration DOUBLE, pid INTEGER, rusage BIGINT, stat BIGINT, " +
+            "exitcode INTEGER, exit_msg TEXT, args TEXT )",
+        "CREATE TABLE ptc_lfn( id BIGINT, stat BIGINT, initial CHAR(1), " +
+            "lfn VARCHAR(255) )"
+    };
+
+    /**
+     * The kickstart record written for each job, with the pid and the
+     * exit code to be filled in.
+     */
+    private static final String RECORD =
+        "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" +
+        "<invocation xmlns=\"http://pegasus.isi.edu/schema/invocation\" " +
+        "version=\"2.0\" start=\"2008-05-30T14:38:48.432-07:00\" duration=\"0.002\" " +
+        "hostaddr=\"128.125.230.95\" hostname=\"intensity.usc.edu\" pid=\"%d\" " +
+        "uid=\"0\" user=\"root\" gid=\"0\" group=\"root\" umask=\"0022\">\n" +
+        "  <mainjob start=\"2008-05-30T14:38:48.432-07:00\" duration=\"0.002\" pid=\"23371\">\n" +
+        "    <usage utime=\"0.002\" stime=\"0.000\" minflt=\"232\" majflt=\"0\" nswap=\"0\" " +
+        "nsignals=\"0\" nvcsw=\"1\" nivcsw=\"1\"/>\n" +
+        "    <status raw=\"%d\"><regular exitcode=\"%d\"/></status>\n" +
+        "    <statcall error=\"0\">\n" +
+        "      <file name=\"/bin/hostname\">7F454C46020101000000000000000000</file>\n" +
+        "      <statinfo mode=\"0100755\" size=\"16176\" inode=\"1638503\" nlink=\"1\" " +
+        "blksize=\"4096\" blocks=\"32\" mtime=\"2006-02-11T23:34:07-08:00\" " +
+        "atime=\"2008-05-30T14:29:51-07:00\" ctime=\"2007-04-11T21:35:57-07:00\" " +
+        "uid=\"0\" user=\"root\" gid=\"0\" group=\"root\"/>\n" +
+        "    </statcall>\n" +
+        "    <argument-vector/>\n" +
+        "  </mainjob>\n" +
+        "  <cwd>/scratch/config</cwd>\n" +
+        "  <usage utime=\"0.000\" stime=\"0.001\" minflt=\"234\" majflt=\"0\" nswap=\"0\" " +
+        "nsignals=\"0\" nvcsw=\"2\" nivcsw=\"2\"/>\n" +
+        "  <uname system=\"linux\" archmode=\"IA32\" nodename=\"intensity.usc.edu\" " +
+        "release=\"2.6.20\" machine=\"x86_64\">#1 SMP</uname>\n" +
+        "</invocation>\n";
+
+    private File mDirectory;
+
+    private InvocationSchema mSchema;
+
+    private IngestServer mServer;
+
+    private Thread mServerThread;
+
+    public IngestServerTest(){
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile( "ingest", "" );
+        mDirectory.delete();
+        mDirectory.mkdir();
+
+        String url = this.url();
+        Class.forName( "org.sqlite.JDBC" );
+        Connection c = DriverManager.getConnection( url );
+        Statement s = c.createStatement();
+        for( String table : PTC_TABLES ){
+            s.executeUpdate( table );
+        }
+        s.close();
+        c.close();
+
+        mSchema = new InvocationSchema( "SQLite", url, new Properties(), new Properties() );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if( mServerThread != null && mServerThread.isAlive() ){
+            mServer.shutdown();
+            mServerThread.join();
+        }
+        mSchema.close();
+        for( File f : mDirectory.listFiles() ){
+            f.delete();
+        }
+        mDirectory.delete();
+    }
+
+    /**
+     * Many clients send records at the same time, with less capacity than
+     * records, so that the connections are stalled and the records are
+     * saved in batches.
+     */
+    @Test
+    public void testConcurrentClients() throws Exception {
+        this.startServer( 3, 8, 2 );
+
+        final int clients = 4;
+        final int perClient = 25;
+        final List<String> replies = Collections.synchronizedList( new ArrayList<String>() );
+        List<Thread> threads = new ArrayList<Thread>();
+        for( int c = 0; c < clients; c++ ){
+            final List<String> requests = new ArrayList<String>();
+            for( int i = 0; i < perClient; i++ ){
+                int pid = 1000 + c * perClient + i;
+                requests.add( "PARSE " + this.writeRecord( pid, pid % 5 == 0 ? 1 : 0 ) + " ECP/1.0" );
+            }
+            Thread t = new Thread(){
+                public void run(){
+                    try{
+                        replies.addAll( send( requests ) );
+                    }
+                    catch( IOException e ){
+                        replies.add( e.getMessage() );
+                    }
+                }
+            };
+            threads.add( t );
+            t.start();
+        }
+        for( Thread t : threads ){
+            t.join();
+        }
+
+        int failed = 0;
+        assertEquals( clients * perClient, replies.size() );
+        for( String reply : replies ){
+            if( reply.equals( "300 Result code 1" ) ){
+                failed++;
+            }
+            else{
+                assertEquals( "300 Result code 0", reply );
+            }
+        }
+        assertEquals( clients * perClient / 5, failed );
+
+        this.stopServer();
+        assertEquals( clients * perClient, mServer.getRecordCount() );
+        assertEquals( clients * perClient, mServer.getSavedCount() );
+        //how many records end up in a batch depends on the timing of the
+        //clients, see testRecordsQueuedWhileSaving
+        assertTrue( mServer.getBatchCount() >= 1 );
+        assertEquals( 0, mServer.getQueueDepth() );
+        assertEquals( clients * perClient, this.count( "ptc_invocation" ) );
+        assertEquals( clients * perClient, this.count( "ptc_job" ) );
+    }
+
+    /**
+     * The records queued up while a batch is being saved are saved together
+     * in the next batch.
+     */
+    @Test
+    public void testRecordsQueuedWhileSaving() throws Exception {
+        final CountDownLatch saving = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger held = new AtomicInteger();
+        mSchema.close();
+        mSchema = new InvocationSchema( "SQLite", this.url(), new Properties(), new Properties() ){
+            public int saveInvocations( List ivrs ) throws SQLException {
+                if( saving.getCount() > 0 ){
+                    held.set( ivrs.size() );
+                    saving.countDown();
+                }
+                try{
+                    release.await();
+                }
+                catch( InterruptedException e ){
+                    throw new SQLException( e.getMessage() );
+                }
+                return super.saveInvocations( ivrs );
+            }
+        };
+        this.startServer( 4, 10, 10 );
+
+        //each client waits for the reply to its record before sending the next
+        final int clients = 4;
+        final int perClient = 3;
+        final List<String> replies = Collections.synchronizedList( new ArrayList<String>() );
+        List<Thread> threads = new ArrayList<Thread>();
+        for( int c = 0; c < clients; c++ ){
+            final List<String> requests = new ArrayList<String>();
+            for( int i = 0; i < perClient; i++ ){
+                requests.add( "PARSE " + this.writeRecord( 2000 + c * perClient + i, 0 ) + " ECP/1.0" );
+            }
+            Thread t = new Thread(){
+                public void run(){
+                    try{
+                        replies.addAll( send( requests ) );
+                    }
+                    catch( IOException e ){
+                        replies.add( e.getMessage() );
+                    }
+                }
+            };
+            threads.add( t );
+            t.start();
+        }
+
+        //the writer is held in the first batch, until the first records of
+        //the other clients are queued up behind it
+        try{
+            assertTrue( saving.await( 30, TimeUnit.SECONDS ) );
+            long deadline = System.currentTimeMillis() + 30000;
+            while( mServer.getQueueDepth() < clients - held.get() &&
+                   System.currentTimeMillis() < deadline ){
+                Thread.sleep( 10 );
+            }
+            assertEquals( clients - held.get(), mServer.getQueueDepth() );
+        }
+        finally{
+            release.countDown();
+        }
+        for( Thread t : threads ){
+            t.join();
+        }
+
+        this.stopServer();
+        assertEquals( clients * perClient, replies.size() );
+        for( String reply : replies ){
+            assertEquals( "300 Result code 0", reply );
+        }
+        assertEquals( clients * perClient, mServer.getSavedCount() );
+        assertTrue( "batches " + mServer.getBatchCount(),
+                    mServer.getBatchCount() < clients * perClient );
+        assertEquals( clients * perClient, this.count( "ptc_invocation" ) );
+    }
+
+    /**
+     * A batch of records is saved in one transaction, skipping the records
+     * already in the database or earlier in the batch.
+     */
+    @Test
+    public void testSaveInvocations() throws Exception {
+        InvocationParser parser = new InvocationParser(
+            new File( "share/pegasus/schema/iv-2.0.xsd" ).getAbsolutePath() );
+        List<InvocationRecord> ivrs = new ArrayList<InvocationRecord>();
+        for( int pid = 3000; pid < 3005; pid++ ){
+            ivrs.add( this.parseRecord( parser, pid ) );
+        }
+        assertEquals( 5, mSchema.saveInvocations( ivrs ) );
+        assertEquals( 5, this.count( "ptc_invocation" ) );
+        assertEquals( 5, this.count( "ptc_job" ) );
+
+        ivrs.clear();
+        ivrs.add( this.parseRecord( parser, 3004 ) );
+        ivrs.add( this.parseRecord( parser, 3005 ) );
+        ivrs.add( this.parseRecord( parser, 3005 ) );
+        assertEquals( 1, mSchema.saveInvocations( ivrs ) );
+        assertEquals( 6, this.count( "ptc_invocation" ) );
+    }
+
+    /**
+     * Missing files and bad requests get the same replies as from the
+     * SimpleServer, and records already in the database are not saved
+     * again.
+     */
+    @Test
+    public void testRepliesAndDuplicates() throws Exception {
+        this.startServer( 2, 10, 10 );
+
+        String record = this.writeRecord( 42, 0 );
+        File empty = new File( mDirectory, "empty.out" );
+        empty.createNewFile();
+        List<String> requests = new ArrayList<String>();
+        requests.add( "PARSE " + record + " ECP/1.0" );
+        requests.add( "PARSE " + record + " ECP/1.0" );
+        requests.add( "PARSE " + new File( mDirectory, "missing.out" ) + " ECP/1.0" );
+        requests.add( "PARSE " + empty + " ECP/1.0" );
+        requests.add( "PARSE " + record + " ECP/2.0" );
+        requests.add( "PARSE " + record );
+        requests.add( "STATS" );
+
+        List<String> replies = this.send( requests );
+        assertEquals( "300 Result code 0", replies.get( 0 ) );
+        assertEquals( "300 Result code 0", replies.get( 1 ) );
+        assertEquals( "300 Result code 5", replies.get( 2 ) );
+        assertEquals( "300 Result code 5", replies.get( 3 ) );
+        assertEquals( "501 Unrecognized version", replies.get( 4 ) );
+        assertEquals( "400 Illegal request format", replies.get( 5 ) );
+        assertTrue( replies.get( 6 ), replies.get( 6 ).startsWith( "200 records 4 saved 1 " ) );
+
+        this.stopServer();
+        assertEquals( 1, this.count( "ptc_invocation" ) );
+    }
+
+    private void startServer( int parsers, int batchSize, int capacity ) throws IOException {
+        byte[] loopback = { 127, 0, 0, 1 };
+        mServer = new IngestServer( mSchema,
+                                    new File( "share/pegasus/schema/iv-2.0.xsd" ).getAbsolutePath(),
+                                    new InetSocketAddress( InetAddress.getByAddress( loopback ), 0 ),
+                                    parsers, batchSize, capacity );
+        mServerThread = new Thread( mServer );
+        mServerThread.start();
+    }
+
+    private void stopServer() throws InterruptedException {
+        mServer.shutdown();
+        mServerThread.join();
+    }
+
+    /**
+     * Sends the requests over one connection, and returns the replies.
+     */
+    private List<String> send( List<String> requests ) throws IOException {
+        List<String> replies = new ArrayList<String>();
+        Socket s = new Socket( InetAddress.getByName( "127.0.0.1" ), mServer.getPort() );
+        try{
+            PrintWriter out = new PrintWriter( s.getOutputStream() );
+            BufferedReader in = new BufferedReader( new InputStreamReader( s.getInputStream() ) );
+            for( String request : requests ){
+                out.print( request + "\r\n" );
+                out.flush();
+                replies.add( in.readLine() );
+            }
+            out.print( "QUIT\r\n" );
+            out.flush();
+            assertEquals( "200 Good-bye", in.readLine() );
+        }
+        finally{
+            s.close();
+        }
+        return replies;
+    }
+
+    private String writeRecord( int pid, int exitcode ) throws IOException {
+        File f = new File( mDirectory, "job_" + pid + ".out" );
+        FileWriter w = new FileWriter( f );
+        w.write( String.format( RECORD, pid, exitcode << 8, exitcode ) );
+        w.close();
+        return f.getAbsolutePath();
+    }
+
+    private InvocationRecord parseRecord( InvocationParser parser, int pid ) throws IOException {
+        FileReader r = new FileReader( this.writeRecord( pid, 0 ) );
+        try{
+            return parser.parse( r );
+        }
+        finally{
+            r.close();
+        }
+    }
+
+    private String url(){
+        return "jdbc:sqlite:" + new File( mDirectory, "ptc.db" ).getAbsolutePath();
+    }
+
+    private int count( String table ) throws Exception {
+        Connection c = DriverManager.getConnection( this.url() );
+        Statement s = c.createStatement();
+        ResultSet rs = s.executeQuery( "SELECT count(*) FROM " + table );
+        rs.next();
+        int result = rs.getInt( 1 );
+        rs.close();
+        s.close();
+        c.close();
+        return result;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the copy on write profile map backing the namespaces.
+ *
+ * @author Karan Vahi
+ */
+public class ProfileMapTest {
+
+    public ProfileMapTest() {
+    }
+
+    @Test
+    public void testSortedMatchesTreeMap() {
+        testAgainst( new TreeMap<String,Object>(), true );
+    }
+
+    @Test
+    public void testInsertionOrderMatchesLinkedHashMap() {
+        testAgainst( new LinkedHashMap<String,Object>(), false );
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        ProfileMap original = new ProfileMap( true );
+        original.put( "universe", "vanilla" );
+        original.put( "priority", "10" );
+
+        ProfileMap copy = new ProfileMap( original, true );
+        assertTrue( original.isShared() );
+        assertTrue( copy.isShared() );
+        assertEquals( original, copy );
+
+        copy.put( "priority", "20" );
+        copy.put( "request_memory", "1024" );
+        assertFalse( copy.isShared() );
+        assertEquals( "10", original.get( "priority" ) );
+        assertFalse( original.containsKey( "request_memory" ) );
+        assertEquals( 2, original.size() );
+        assertEquals( 3, copy.size() );
+
+        original.remove( "universe" );
+        assertEquals( "vanilla", copy.get( "universe" ) );
+
+        //a map with a different ordering is copied
+        ProfileMap unsorted = new ProfileMap( copy, false );
+        assertFalse( unsorted.isShared() );
+        assertEquals( copy, unsorted );
+    }
+
+    @Test
+    public void testRemoveThroughIteratorOfSharedMap() {
+        for( int size : new int[]{ 4, ProfileMap.COMPACT_SIZE + 4 } ){
+            ProfileMap original = new ProfileMap( true );
+            for( int i = 0; i < size; i++ ){
+                original.put( "key" + i, "value" + i );
+            }
+            ProfileMap copy = new ProfileMap( original, true );
+            int removed = 0;
+            for( Iterator it = copy.keySet().iterator(); it.hasNext(); ){
+                String key = (String)it.next();
+                if( key.endsWith( "1" ) || key.endsWith( "2" ) ){
+                    it.remove();
+                    removed++;
+                }
+            }
+            assertEquals( size, original.size() );
+            assertTrue( removed > 0 );
+            assertEquals( size - removed, copy.size() );
+            assertFalse( copy.containsKey( "key1" ) );
+            assertTrue( original.containsKey( "key1" ) );
+        }
+    }
+
+    @Test
+    public void testNamespaceClone() {
+        Condor condor = new Condor();
+        condor.construct( "universe", "vanilla" );
+        Condor clone = (Condor)condor.clone();
+        clone.construct( "universe", "local" );
+        assertEquals( "vanilla", condor.get( "universe" ) );
+        assertEquals( "local", clone.get( "universe" ) );
+
+        ENV env = new ENV();
+        env.construct( "PATH", "/bin" );
+        env.construct( "HOME", "/home" );
+        ENV envClone = (ENV)env.clone();
+        envClone.removeKey( "PATH" );
+        assertEquals( "/bin", env.get( "PATH" ) );
+        assertEquals( "HOME", envClone.getProfileKeyIterator().next() );
+        assertEquals( "PATH", env.getProfileKeyIterator().next() );
+    }
+
+    /**
+     * Applies random operations to a profile map and a reference map, and
+     * to clones of them, and checks that they agree.
+     */
+    private void testAgainst( Map<String,Object> reference, boolean sorted ) {
+        Random random = new Random( 42 );
+        ProfileMap map = new ProfileMap( sorted );
+        List<ProfileMap> clones = new ArrayList<ProfileMap>();
+        List<Map<String,Object>> references = new ArrayList<Map<String,Object>>();
+
+        for( int i = 0; i < 5000; i++ ){
+            String key = "k" + random.nextInt( 20 );
+            int op = random.nextInt( 10 );
+            if( op < 5 ){
+                assertEquals( reference.put( key, "v" + i ), map.put( key, "v" + i ) );
+            }
+            else if( op < 8 ){
+                assertEquals( reference.remove( key ), map.remove( key ) );
+            }
+            else if( op < 9 ){
+                clones.add( new ProfileMap( map, sorted ) );
+                references.add( sorted ?
+                                new TreeMap<String,Object>( reference ) :
+                                new LinkedHashMap<String,Object>( reference ) );
+            }
+            else if( random.nextInt( 20 ) == 0 ){
+                reference.clear();
+                map.clear();
+            }
+            assertEquals( reference.containsKey( key ), map.containsKey( key ) );
+            assertEquals( reference.get( key ), map.get( key ) );
+            assertEquals( reference.size(), map.size() );
+        }
+        assertEquals( new ArrayList<String>( reference.keySet() ), new ArrayList<String>( map.keySet() ) );
+        for( int i = 0; i < clones.size(); i++ ){
+            assertEquals( new ArrayList<Object>( references.get( i ).entrySet() ),
+                          new ArrayList<Object>( clones.get( i ).entrySet() ) );
+        }
+    }
+}
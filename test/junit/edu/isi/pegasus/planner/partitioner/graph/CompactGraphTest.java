@@ -0,0 +1,213 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test to test that the CompactGraph behaves the same as the MapGraph.
+ *
+ * @author Karan Vahi
+ */
+public class CompactGraphTest {
+
+    public CompactGraphTest(){
+    }
+
+    @Test
+    public void testEdgesAndRemoval() {
+        for( Graph g : new Graph[]{ new MapGraph(), new CompactGraph() } ){
+            for( String id : new String[]{ "a", "b", "c", "d" } ){
+                g.addNode( new GraphNode( id ) );
+            }
+            g.addEdge( "a", "b" );
+            g.addEdge( "b", "c" );
+            g.addEdge( "b", "d" );
+            //duplicate edges are ignored
+            g.addEdge( "a", "b" );
+
+            assertEquals( 4, g.size() );
+            assertEquals( this.toSet( "b" ), this.ids( g.getNode( "a" ).getChildren() ) );
+            assertTrue( g.getNode( "c" ).getParents().contains( g.getNode( "b" ) ) );
+            assertEquals( this.toSet( "a" ), this.ids( g.getRoots() ) );
+            assertEquals( this.toSet( "c", "d" ), this.ids( g.getLeaves() ) );
+
+            //parents of the removed node become parents of the children
+            assertTrue( g.remove( "b" ) );
+            assertFalse( g.remove( "b" ) );
+            assertNull( g.getNode( "b" ) );
+            assertEquals( 3, g.size() );
+            assertEquals( this.toSet( "c", "d" ), this.ids( g.getNode( "a" ).getChildren() ) );
+            assertEquals( this.toSet( "a" ), this.ids( g.getNode( "d" ).getParents() ) );
+        }
+    }
+
+    @Test
+    public void testNodeLinkedBeforeAddition() {
+        CompactGraph g = new CompactGraph();
+        GraphNode parent = new GraphNode( "parent" );
+        g.addNode( parent );
+
+        //the pattern used by the refiners to add auxillary jobs
+        GraphNode aux = new GraphNode( "aux" );
+        aux.addParent( parent );
+        parent.addChild( aux );
+        assertEquals( 1, g.size() );
+        assertNull( g.getNode( "aux" ) );
+
+        g.addNode( aux );
+        assertEquals( 2, g.size() );
+        assertSame( aux, g.getNode( "aux" ) );
+        assertEquals( this.toSet( "parent" ), this.ids( aux.getParents() ) );
+        assertEquals( this.toSet( "aux" ), this.ids( g.getLeaves() ) );
+
+        //edges added to a node before it is added are retained
+        GraphNode other = new GraphNode( "other" );
+        other.addParent( aux );
+        other.addParent( parent );
+        g.addNode( other );
+        assertEquals( this.toSet( "aux", "parent" ), this.ids( other.getParents() ) );
+    }
+
+    @Test
+    public void testViews() {
+        CompactGraph g = new CompactGraph();
+        for( int i = 0; i < 10; i++ ){
+            g.addNode( new GraphNode( "n" + i ) );
+        }
+        GraphNode root = g.getNode( "n0" );
+        for( int i = 9; i > 0; i-- ){
+            g.addEdge( "n0", "n" + i );
+        }
+        assertEquals( 9, root.getChildren().size() );
+
+        for( Iterator<GraphNode> it = root.getChildren().iterator(); it.hasNext(); ){
+            GraphNode child = it.next();
+            if( child.getID().equals( "n3" ) || child.getID().equals( "n4" ) ){
+                it.remove();
+            }
+        }
+        assertEquals( 7, root.getChildren().size() );
+        assertFalse( root.getChildren().contains( g.getNode( "n3" ) ) );
+        //a different object with the same id is equal
+        assertTrue( root.getChildren().contains( new GraphNode( "n5" ) ) );
+
+        root.setChildren( new ArrayList<GraphNode>() );
+        assertTrue( root.getChildren().isEmpty() );
+        assertEquals( 10, g.getLeaves().size() );
+    }
+
+    @Test
+    public void testRandomWorkflowsIterators() {
+        for( int i = 0; i < 10; i++ ){
+            Graph expected = this.createRandomGraph( new MapGraph(), new Random( i ), 200, 0.03 );
+            Graph actual   = this.createRandomGraph( new CompactGraph(), new Random( i ), 200, 0.03 );
+
+            Random random = new Random( i );
+            for( int j = 0; j < 20; j++ ){
+                String id = "n" + random.nextInt( 200 );
+                assertEquals( expected.remove( id ), actual.remove( id ) );
+            }
+            assertEquals( expected.size(), actual.size() );
+
+            for( Iterator<GraphNode> it = expected.nodeIterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                GraphNode other = actual.getNode( node.getID() );
+                assertEquals( this.ids( node.getChildren() ), this.ids( other.getChildren() ) );
+                assertEquals( this.ids( node.getParents() ), this.ids( other.getParents() ) );
+            }
+
+            //the depths assigned by the level iterators should match
+            for( Iterator<GraphNode> it = actual.iterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                for( GraphNode parent : node.getParents() ){
+                    assertTrue( parent.getDepth() < node.getDepth() );
+                }
+            }
+            this.assertSameDepths( expected.iterator(), actual.iterator(), actual );
+            this.assertSameDepths( expected.bottomUpIterator(), actual.bottomUpIterator(), actual );
+
+            //every node is traversed after it's parents in topological order
+            Set<GraphNode> traversed = new HashSet();
+            for( Iterator<GraphNode> it = actual.topologicalSortIterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                assertTrue( traversed.containsAll( node.getParents() ) );
+                traversed.add( node );
+            }
+            assertEquals( actual.size(), traversed.size() );
+        }
+    }
+
+    private void assertSameDepths( Iterator<GraphNode> expected, Iterator<GraphNode> it, Graph actual ){
+        List<GraphNode> nodes = new LinkedList();
+        while( expected.hasNext() ){
+            nodes.add( expected.next() );
+        }
+        int count = 0;
+        while( it.hasNext() ){
+            it.next();
+            count++;
+        }
+        assertEquals( nodes.size(), count );
+        for( GraphNode node : nodes ){
+            assertEquals( node.getDepth(), actual.getNode( node.getID() ).getDepth() );
+        }
+    }
+
+    /**
+     * Creates a random DAG where an edge exists from node i to node j for
+     * i less than j with the given probability.
+     */
+    private Graph createRandomGraph( Graph g, Random random, int n, double probability ){
+        for( int i = 0; i < n; i++ ){
+            g.addNode( new GraphNode( "n" + i ) );
+        }
+        for( int i = 0; i < n; i++ ){
+            for( int j = i + 1; j < n; j++ ){
+                if( random.nextDouble() < probability ){
+                    g.addEdge( "n" + i, "n" + j );
+                }
+            }
+        }
+        return g;
+    }
+
+    private Set<String> ids( Iterable<GraphNode> nodes ){
+        Set<String> result = new HashSet();
+        for( GraphNode node : nodes ){
+            result.add( node.getID() );
+        }
+        return result;
+    }
+
+    private Set<String> toSet( String... ids ){
+        Set<String> result = new HashSet();
+        for( String id : ids ){
+            result.add( id );
+        }
+        return result;
+    }
+}
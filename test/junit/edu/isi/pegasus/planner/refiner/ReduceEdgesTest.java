@@ -0,0 +1,181 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test to test the removal of redundant edges from a workflow.
+ *
+ * @author Karan Vahi
+ */
+public class ReduceEdgesTest {
+
+    public ReduceEdgesTest(){
+    }
+
+    @Test
+    public void testDiamond() {
+        Graph g = new MapGraph();
+        for( String id : new String[]{ "a", "b", "c", "d", "e" } ){
+            g.addNode( new GraphNode( id ) );
+        }
+        g.addEdge( "a", "b" );
+        g.addEdge( "a", "c" );
+        g.addEdge( "b", "d" );
+        g.addEdge( "c", "d" );
+        g.addEdge( "b", "e" );
+        g.addEdge( "d", "e" );
+        g.addEdge( "a", "e" );
+        g.addEdge( "c", "e" );
+
+        ReduceEdges re = new ReduceEdges( 1 );
+        re.reduce( g );
+
+        assertEquals( 3, re.getRemovedEdgesCount() );
+        assertEquals( this.toSet( "b", "c" ), this.childrenOf( g, "a" ) );
+        assertEquals( this.toSet( "d" ), this.childrenOf( g, "b" ) );
+        assertEquals( this.toSet( "d" ), this.childrenOf( g, "c" ) );
+        assertEquals( this.toSet( "e" ), this.childrenOf( g, "d" ) );
+        assertEquals( this.toSet( "d" ), this.parentsOf( g, "e" ) );
+    }
+
+    @Test
+    public void testRandomWorkflowsMultipleChunks() {
+        Random random = new Random( 42 );
+        for( int i = 0; i < 20; i++ ){
+            Graph expected = this.createRandomGraph( new Random( i ), 300, 0.05 );
+            Graph actual   = this.createRandomGraph( new Random( i ), 300, 0.05 );
+
+            this.naiveReduce( expected );
+            //small chunk memory forces multiple chunks over multiple threads
+            new ReduceEdges( 1 + random.nextInt( 4 ), 8 * 300 ).reduce( actual );
+
+            for( Iterator<GraphNode> it = expected.nodeIterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                assertEquals( "Children mismatch for " + node.getID(),
+                              this.childrenOf( expected, node.getID() ),
+                              this.childrenOf( actual, node.getID() ) );
+                assertEquals( "Parents mismatch for " + node.getID(),
+                              this.parentsOf( expected, node.getID() ),
+                              this.parentsOf( actual, node.getID() ) );
+            }
+        }
+    }
+
+    @Test( expected = RuntimeException.class )
+    public void testCycle() {
+        Graph g = new MapGraph();
+        for( String id : new String[]{ "a", "b", "c" } ){
+            g.addNode( new GraphNode( id ) );
+        }
+        g.addEdge( "a", "b" );
+        g.addEdge( "b", "c" );
+        g.addEdge( "c", "b" );
+        new ReduceEdges( 1 ).reduce( g );
+    }
+
+    /**
+     * Creates a random DAG where an edge exists from node i to node j for
+     * i less than j with the given probability.
+     */
+    private Graph createRandomGraph( Random random, int n, double probability ){
+        Graph g = new MapGraph();
+        for( int i = 0; i < n; i++ ){
+            g.addNode( new GraphNode( "n" + i ) );
+        }
+        for( int i = 0; i < n; i++ ){
+            for( int j = i + 1; j < n; j++ ){
+                if( random.nextDouble() < probability ){
+                    g.addEdge( "n" + i, "n" + j );
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Removes an edge if the child is reachable from the parent without
+     * the edge.
+     */
+    private void naiveReduce( Graph g ){
+        for( Iterator<GraphNode> it = g.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            for( GraphNode child : new LinkedList<GraphNode>( node.getChildren() ) ){
+                if( this.reachableWithoutEdge( node, child ) ){
+                    node.removeChild( child );
+                    child.removeParent( node );
+                }
+            }
+        }
+    }
+
+    private boolean reachableWithoutEdge( GraphNode from, GraphNode to ){
+        Set<GraphNode> visited = new HashSet();
+        LinkedList<GraphNode> queue = new LinkedList();
+        for( GraphNode child : from.getChildren() ){
+            if( !child.equals( to ) ){
+                queue.add( child );
+            }
+        }
+        while( !queue.isEmpty() ){
+            GraphNode node = queue.removeFirst();
+            if( node.equals( to ) ){
+                return true;
+            }
+            if( visited.add( node ) ){
+                queue.addAll( node.getChildren() );
+            }
+        }
+        return false;
+    }
+
+    private Set<String> childrenOf( Graph g, String id ){
+        Set<String> result = new HashSet();
+        for( GraphNode child : g.getNode( id ).getChildren() ){
+            result.add( child.getID() );
+        }
+        return result;
+    }
+
+    private Set<String> parentsOf( Graph g, String id ){
+        Set<String> result = new HashSet();
+        for( GraphNode parent : g.getNode( id ).getParents() ){
+            result.add( parent.getID() );
+        }
+        return result;
+    }
+
+    private Set<String> toSet( String... ids ){
+        Set<String> result = new HashSet();
+        for( String id : ids ){
+            result.add( id );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ *  Copyright 2007-2013 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.WorkflowMetrics;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.PlannerTestSetup;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test to test the deduplication of the stage in transfers of the
+ * files shared across jobs, by planning the same workflow with and without
+ * deduplication.
+ *
+ * @author Karan Vahi
+ */
+public class StageInDedupTest {
+
+    /**
+     * The properties used for this test.
+     */
+    private static final String PROPERTIES_BASENAME = "properties";
+
+    private PlannerTestSetup mTestSetup;
+
+    private File mBaseDirectory;
+
+    private static int mTestNumber = 1;
+
+    public StageInDedupTest(){
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mTestSetup = new PlannerTestSetup();
+        mTestSetup.setInputDirectory( this.getClass() );
+        mTestSetup.setInputDirectory( mTestSetup.getInputDirectory() + File.separator + "stagein" );
+        mTestSetup.setPegasusHome();
+        System.out.println( "Input Test Dir is " + mTestSetup.getInputDirectory() );
+
+        mBaseDirectory = File.createTempFile( "stagein-dedup", "" );
+        mBaseDirectory.delete();
+        mBaseDirectory.mkdirs();
+    }
+
+    /**
+     * The workflow planned with deduplication should have the same jobs and
+     * edges as the one planned without, and the deduplicated transfers
+     * should be counted in the metrics.
+     */
+    @Test
+    public void testSameWorkflowWithDedup() {
+        ADag plain = this.plan( false );
+        PlannerTestSetup.delete( mBaseDirectory );
+        ADag dedup = this.plan( true );
+
+        Set<String> jobs = this.getJobs( plain );
+        assertTrue( jobs.toString(), jobs.contains( "findrange_ID0000001" ) );
+        assertEquals( jobs, this.getJobs( dedup ) );
+        assertEquals( this.getEdges( plain ), this.getEdges( dedup ) );
+
+        WorkflowMetrics metrics = plain.getWorkflowMetrics();
+        assertEquals( 0, metrics.getStageInDedupTransfers() );
+        assertEquals( 0, metrics.getStageInDedupBytes() );
+        assertEquals( 0, metrics.getStageInDedupEdges() );
+
+        //f.a and f.s are staged by two stagein jobs for the first findrange
+        //job, and the other two findrange jobs are made children of both
+        metrics = dedup.getWorkflowMetrics();
+        assertEquals( 4, metrics.getStageInDedupTransfers() );
+        assertEquals( 2 * ( 1024 + 512 ), metrics.getStageInDedupBytes() );
+        assertEquals( 4, metrics.getStageInDedupEdges() );
+        assertTrue( this.getEdges( dedup ).contains( "stage_in_remote_condorpool_0_1 -> findrange_ID0000003" ) );
+    }
+
+    @After
+    public void tearDown() {
+        PlannerTestSetup.delete( mBaseDirectory );
+    }
+
+    /**
+     * Plans the workflow with or without deduplication of stage in transfers.
+     *
+     * @param dedup  whether to deduplicate the stage in transfers.
+     *
+     * @return the planned workflow
+     */
+    private ADag plan( boolean dedup ){
+        PegasusProperties props = mTestSetup.loadPropertiesFromFile( PROPERTIES_BASENAME,
+                                                                     this.getPropertyKeysForSanitization() );
+        props.setProperty( "pegasus.transfer.stagein.dedup", Boolean.toString( dedup ) );
+        LogManager logger = mTestSetup.loadLogger( props );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+        logger.logEventStart( "test.refiner.stagein", "set", Integer.toString( mTestNumber++ ) );
+
+        PlannerOptions options = mTestSetup.loadPlannerOptions( mBaseDirectory, "condorpool", "shared.dax" );
+        PegasusBag bag = mTestSetup.loadBag( props, logger, options );
+        ADag workflow = new MainEngine( mTestSetup.loadDAX( bag ), bag ).runPlanner();
+        logger.logEventCompletion();
+        return workflow;
+    }
+
+    /**
+     * Returns the sorted IDs of the jobs in the workflow.
+     *
+     * @param dag  the workflow
+     *
+     * @return the job IDs
+     */
+    private Set<String> getJobs( ADag dag ){
+        Set<String> jobs = new TreeSet<String>();
+        for( Iterator<GraphNode> it = dag.nodeIterator(); it.hasNext(); ){
+            jobs.add( it.next().getID() );
+        }
+        return jobs;
+    }
+
+    /**
+     * Returns the sorted edges in the workflow as parent -> child strings.
+     *
+     * @param dag  the workflow
+     *
+     * @return the edges
+     */
+    private Set<String> getEdges( ADag dag ){
+        Set<String> edges = new TreeSet<String>();
+        for( Iterator<GraphNode> it = dag.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            for( GraphNode child : node.getChildren() ){
+                edges.add( node.getID() + " -> " + child.getID() );
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Returns the list of property keys that need to be sanitized
+     *
+     * @return
+     */
+    private List<String> getPropertyKeysForSanitization(){
+        List<String> keys = new LinkedList();
+        keys.add( "pegasus.catalog.site.file" );
+        keys.add( "pegasus.catalog.transformation.file" );
+        keys.add( "pegasus.catalog.replica.file" );
+        return keys;
+    }
+}
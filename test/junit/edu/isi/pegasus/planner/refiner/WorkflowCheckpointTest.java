@@ -0,0 +1,321 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.FileTransfer;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.TransferJob;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.PlannerTestSetup;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test to test that a workflow written out to a checkpoint is read
+ * back the same.
+ *
+ * @author Karan Vahi
+ */
+public class WorkflowCheckpointTest {
+
+    private PegasusProperties mProps;
+
+    private LogManager mLogger;
+
+    private File mDirectory;
+
+    public WorkflowCheckpointTest(){
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        DefaultTestSetup testSetup = new DefaultTestSetup();
+        mProps = PegasusProperties.nonSingletonInstance();
+        mLogger = testSetup.loadLogger( mProps );
+        mLogger.logEventStart( "test.refiner.checkpoint", "setup", "0" );
+
+        mDirectory = File.createTempFile( "checkpoint", "" );
+        mDirectory.delete();
+        mDirectory.mkdirs();
+        mLogger.logEventCompletion();
+    }
+
+    /**
+     * The jobs with their profiles and files, and the edges, should be
+     * the same after the round trip.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        File submitDir = new File( mDirectory, "submit" );
+        submitDir.mkdirs();
+        ADag dag = this.createWorkflow();
+        File checkpoint = new File( submitDir, "blackdiamond-0" + WorkflowCheckpoint.CHECKPOINT_FILE_SUFFIX );
+        new WorkflowCheckpoint( this.createBag( submitDir ) ).write( dag, checkpoint );
+
+        ADag loaded = new ADag();
+        loaded.setLabel( dag.getLabel() );
+        loaded.setIndex( dag.getIndex() );
+        loaded.add( this.createJob( "stale_ID0000001", Job.COMPUTE_JOB ) );
+        new WorkflowCheckpoint( this.createBag( submitDir ) ).load( checkpoint, loaded );
+
+        assertGraphEquals( dag, loaded );
+        Job transfer = (Job)loaded.getNode( "stage_in_local_condorpool_0_0" ).getContent();
+        assertTrue( transfer instanceof TransferJob );
+        FileTransfer ft = (FileTransfer)transfer.getInputFiles().iterator().next();
+        assertEquals( "gsiftp://example.isi.edu/inputs/f.a", ft.getSourceURL().getValue() );
+        assertEquals( "file:///scratch/run0001/f.a", ft.getDestURL().getValue() );
+    }
+
+    /**
+     * Only the files written out by the planner for the jobs should be
+     * restored in the submit directory of the planner run loading the
+     * checkpoint, with the paths in them relocated.
+     */
+    @Test
+    public void testSubmitFiles() throws IOException {
+        File submitDir = new File( mDirectory, "submit" );
+        submitDir.mkdirs();
+        ADag dag = this.createWorkflow();
+        write( new File( submitDir, "stage_in_local_condorpool_0_0.in" ),
+               "file://" + submitDir.getAbsolutePath() + "/f.a\n" );
+        write( new File( submitDir, "blackdiamond-0.cache" ), "f.a file:///scratch/run0001/f.a condorpool\n" );
+        write( new File( submitDir, "braindump.txt" ), "user pegasus\n" );
+        File checkpoint = new File( submitDir, "blackdiamond-0" + WorkflowCheckpoint.CHECKPOINT_FILE_SUFFIX );
+        new WorkflowCheckpoint( this.createBag( submitDir ) ).write( dag, checkpoint );
+
+        File replanDir = new File( mDirectory, "replan" );
+        replanDir.mkdirs();
+        ADag loaded = new ADag();
+        loaded.setLabel( dag.getLabel() );
+        loaded.setIndex( dag.getIndex() );
+        new WorkflowCheckpoint( this.createBag( replanDir ) ).load( checkpoint, loaded );
+
+        Set<String> files = new TreeSet<String>();
+        for( String name : replanDir.list() ){
+            if( !name.endsWith( ".properties" ) ){
+                files.add( name );
+            }
+        }
+        Set<String> expected = new TreeSet<String>();
+        expected.add( "blackdiamond-0.cache" );
+        expected.add( "stage_in_local_condorpool_0_0.in" );
+        assertEquals( expected, files );
+        assertEquals( "file://" + replanDir.getAbsolutePath() + "/f.a\n",
+                      read( new File( replanDir, "stage_in_local_condorpool_0_0.in" ) ) );
+    }
+
+    @After
+    public void tearDown() {
+        PlannerTestSetup.delete( mDirectory );
+    }
+
+    /**
+     * Creates a small workflow with a stage in job, two compute jobs and
+     * the edges between them.
+     *
+     * @return the workflow
+     */
+    private ADag createWorkflow(){
+        ADag dag = new ADag();
+        dag.setLabel( "blackdiamond" );
+        dag.setIndex( "0" );
+
+        Job preprocess = this.createJob( "preprocess_ID0000001", Job.COMPUTE_JOB );
+        preprocess.addInputFile( new PegasusFile( "f.a" ) );
+        preprocess.addOutputFile( new PegasusFile( "f.b1" ) );
+        preprocess.addOutputFile( new PegasusFile( "f.b2" ) );
+        dag.add( preprocess );
+
+        Job analyze = this.createJob( "analyze_ID0000002", Job.COMPUTE_JOB );
+        analyze.addInputFile( new PegasusFile( "f.b1" ) );
+        analyze.addInputFile( new PegasusFile( "f.b2" ) );
+        analyze.addOutputFile( new PegasusFile( "f.c" ) );
+        analyze.envVariables.construct( "JAVA_HOME", "/usr/lib/jvm" );
+        dag.add( analyze );
+
+        //the auxiliary jobs are added during the refinement
+        dag.setWorkflowRefinementStarted( true );
+        dag.getWorkflowMetrics().lockTaskMetrics( true );
+        TransferJob stageIn = new TransferJob();
+        stageIn.setName( "stage_in_local_condorpool_0_0" );
+        stageIn.setTransformation( "pegasus", "transfer", null );
+        stageIn.setJobType( Job.STAGE_IN_JOB );
+        stageIn.setSiteHandle( "local" );
+        stageIn.setNonThirdPartySite( "condorpool" );
+        stageIn.setStdIn( "stage_in_local_condorpool_0_0.in" );
+        FileTransfer ft = new FileTransfer( "f.a", "preprocess_ID0000001" );
+        ft.addSource( "local", "gsiftp://example.isi.edu/inputs/f.a" );
+        ft.addDestination( "condorpool", "file:///scratch/run0001/f.a" );
+        stageIn.addInputFile( ft );
+        dag.add( stageIn );
+
+        dag.addEdge( stageIn.getID(), preprocess.getID() );
+        dag.addEdge( preprocess.getID(), analyze.getID() );
+        return dag;
+    }
+
+    /**
+     * Creates a compute job with profiles in a few namespaces.
+     *
+     * @param name  the name of the job
+     * @param type  the type of the job
+     *
+     * @return the job
+     */
+    private Job createJob( String name, int type ){
+        Job job = new Job();
+        job.setName( name );
+        job.setLogicalID( name.substring( name.lastIndexOf( '_' ) + 1 ) );
+        job.setTransformation( "diamond", name.substring( 0, name.indexOf( '_' ) ), "4.0" );
+        job.setJobType( type );
+        job.setSiteHandle( "condorpool" );
+        job.setArguments( "-a " + name + " -T 5" );
+        job.condorVariables.construct( "universe", "vanilla" );
+        job.condorVariables.construct( "requirements", "Memory > 1024" );
+        job.envVariables.construct( "PEGASUS_HOME", "/usr" );
+        job.vdsNS.construct( "runtime", "60" );
+        return job;
+    }
+
+    /**
+     * Returns a bag for the planner run with a submit directory.
+     *
+     * @param submitDir  the submit directory
+     *
+     * @return the bag
+     */
+    private PegasusBag createBag( File submitDir ){
+        PlannerOptions options = new PlannerOptions();
+        options.setSubmitDirectory( submitDir.getAbsolutePath() );
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, mProps );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        bag.add( PegasusBag.PLANNER_OPTIONS, options );
+        return bag;
+    }
+
+    /**
+     * Asserts that two workflows have the same jobs and edges.
+     *
+     * @param expected  the expected workflow
+     * @param actual    the actual workflow
+     */
+    private static void assertGraphEquals( ADag expected, ADag actual ){
+        assertEquals( expected.size(), actual.size() );
+        for( Iterator<GraphNode> it = expected.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            GraphNode other = actual.getNode( node.getID() );
+            assertNotNull( "Missing job " + node.getID(), other );
+
+            Job job = (Job)node.getContent();
+            Job loaded = (Job)other.getContent();
+            assertEquals( job.getClass(), loaded.getClass() );
+            assertEquals( job.toString(), loaded.toString() );
+            assertEquals( files( job.getInputFiles() ), files( loaded.getInputFiles() ) );
+            assertEquals( files( job.getOutputFiles() ), files( loaded.getOutputFiles() ) );
+            assertEquals( ids( node.getParents() ), ids( other.getParents() ) );
+            assertEquals( ids( node.getChildren() ), ids( other.getChildren() ) );
+        }
+    }
+
+    /**
+     * Returns the sorted textual description of the files.
+     *
+     * @param files  the files
+     *
+     * @return the descriptions
+     */
+    private static Set<String> files( Collection<PegasusFile> files ){
+        Set<String> result = new TreeSet<String>();
+        for( PegasusFile pf : files ){
+            result.add( pf.getClass().getName() + " " + pf.toString() );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sorted IDs of the nodes.
+     *
+     * @param nodes  the nodes
+     *
+     * @return the IDs
+     */
+    private static Set<String> ids( Collection<GraphNode> nodes ){
+        Set<String> result = new TreeSet<String>();
+        for( GraphNode node : nodes ){
+            result.add( node.getID() );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the contents of a file.
+     *
+     * @param file  the file
+     *
+     * @return the contents
+     */
+    private static String read( File file ) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        Reader reader = new FileReader( file );
+        try{
+            char[] buffer = new char[ 1024 ];
+            for( int read = reader.read( buffer ); read != -1; read = reader.read( buffer ) ){
+                sb.append( buffer, 0, read );
+            }
+        }
+        finally{
+            reader.close();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes out a file.
+     *
+     * @param file      the file
+     * @param contents  the contents
+     */
+    private static void write( File file, String contents ) throws IOException {
+        Writer writer = new FileWriter( file );
+        try{
+            writer.write( contents );
+        }
+        finally{
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner.cleanup;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test to test the addition of the in place cleanup jobs to a small
+ * workflow spread over two sites. The expected cleanup jobs are the ones
+ * added when the depths were computed by a breadth first relaxation, with a
+ * single thread.
+ *
+ * @author Karan Vahi
+ */
+public class InPlaceTest {
+
+    /**
+     * The cleanup jobs, with their parents and the files they delete.
+     */
+    private static final String[] EXPECTED_CLEANUP_JOBS = {
+        "clean_up_site1_level_3_0 [E] [fa, fc]",
+        "clean_up_site1_level_4_0 [G] [fe, fg]",
+        "clean_up_site2_level_3_0 [F] [fd]",
+        "clean_up_site2_level_4_0 [H] [fb, ff, fh]"
+    };
+
+    public InPlaceTest(){
+    }
+
+    @Test
+    public void testSingleThread() {
+        this.testCleanup( 1 );
+    }
+
+    @Test
+    public void testParallelSites() {
+        this.testCleanup( 4 );
+    }
+
+    private void testCleanup( int threads ){
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty( "pegasus.file.cleanup.threads", Integer.toString( threads ) );
+        LogManager logger = new DefaultTestSetup().loadLogger( props );
+        logger.logEventStart( "test.refiner.cleanup.InPlace", "setup", "0" );
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+
+        Graph workflow = this.createWorkflow();
+        InPlace cleanup = new InPlace();
+        cleanup.initialize( bag, new StubCleanup() );
+        cleanup.addCleanupJobs( workflow );
+        logger.logEventCompletion();
+
+        //the depth is the longest path from a root
+        String[] ids    = { "A", "B", "C", "D", "E", "F", "G", "H" };
+        int[]    depths = {  1,   1,   2,   2,   3,   3,   4,   4 };
+        for( int i = 0; i < ids.length; i++ ){
+            assertEquals( ids[i], depths[i], workflow.getNode( ids[i] ).getDepth() );
+        }
+
+        Set<String> expected = new TreeSet<String>();
+        for( String job : EXPECTED_CLEANUP_JOBS ){
+            expected.add( job );
+        }
+        assertEquals( expected, this.cleanupJobs( workflow ) );
+    }
+
+    /**
+     * Creates the workflow. The jobs on site1 form a chain A, C, E, G with
+     * E also reading the output of its grandparent, and the jobs on site2
+     * a chain B, D, F, H with F and H also reading the output of B. D is
+     * also a parent of G, and A of H.
+     *
+     * @return the workflow
+     */
+    private Graph createWorkflow(){
+        Graph workflow = new MapGraph();
+        this.addJob( workflow, "A", "site1", new String[]{}, "fa" );
+        this.addJob( workflow, "B", "site2", new String[]{}, "fb" );
+        this.addJob( workflow, "C", "site1", new String[]{ "fa" }, "fc" );
+        this.addJob( workflow, "D", "site2", new String[]{ "fb" }, "fd" );
+        this.addJob( workflow, "E", "site1", new String[]{ "fa", "fc" }, "fe" );
+        this.addJob( workflow, "F", "site2", new String[]{ "fb", "fd" }, "ff" );
+        this.addJob( workflow, "G", "site1", new String[]{ "fe" }, "fg" );
+        this.addJob( workflow, "H", "site2", new String[]{ "fb", "ff" }, "fh" );
+
+        workflow.addEdge( "A", "C" );
+        workflow.addEdge( "A", "E" );
+        workflow.addEdge( "C", "E" );
+        workflow.addEdge( "E", "G" );
+        workflow.addEdge( "D", "G" );
+        workflow.addEdge( "B", "D" );
+        workflow.addEdge( "B", "F" );
+        workflow.addEdge( "D", "F" );
+        workflow.addEdge( "A", "H" );
+        workflow.addEdge( "F", "H" );
+        return workflow;
+    }
+
+    private void addJob( Graph workflow, String id, String site, String[] inputs, String output ){
+        Job job = new Job();
+        job.setName( id );
+        job.setTXName( "process" );
+        job.setJobType( Job.COMPUTE_JOB );
+        job.setSiteHandle( site );
+        job.setStagingSiteHandle( site );
+        for( String input : inputs ){
+            job.addInputFile( new PegasusFile( input ) );
+        }
+        PegasusFile out = new PegasusFile( output );
+        out.setTransferFlag( PegasusFile.TRANSFER_NOT );
+        job.addOutputFile( out );
+        workflow.addNode( new GraphNode( job.getID(), job ) );
+    }
+
+    /**
+     * Returns the cleanup jobs in the workflow, with their parents and the
+     * files they delete.
+     *
+     * @param workflow  the workflow
+     *
+     * @return the cleanup jobs as strings
+     */
+    private Set<String> cleanupJobs( Graph workflow ){
+        Set<String> result = new TreeSet<String>();
+        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = (GraphNode)it.next();
+            Job job = (Job)node.getContent();
+            if( job.getJobType() != Job.CLEANUP_JOB ){
+                continue;
+            }
+            assertTrue( node.getChildren().isEmpty() );
+            Set<String> parents = new TreeSet<String>();
+            for( GraphNode parent : node.getParents() ){
+                assertTrue( parent.getID() + " -> " + node.getID(),
+                            parent.getChildren().contains( node ) );
+                parents.add( parent.getID() );
+            }
+            Set<String> files = new TreeSet<String>();
+            for( Object file : job.getInputFiles() ){
+                files.add( ((PegasusFile)file).getLFN() );
+            }
+            result.add( node.getID() + " " + parents + " " + files );
+        }
+        return result;
+    }
+
+    /**
+     * A cleanup implementation that only creates the job.
+     */
+    private static class StubCleanup implements CleanupImplementation {
+
+        public void initialize( PegasusBag bag ){
+        }
+
+        public Job createCleanupJob( String id, List files, Job job ){
+            Job cleanup = new Job();
+            cleanup.setName( id );
+            cleanup.setJobType( Job.CLEANUP_JOB );
+            cleanup.setSiteHandle( job.getStagingSiteHandle() );
+            for( Iterator it = files.iterator(); it.hasNext(); ){
+                cleanup.addInputFile( (PegasusFile)it.next() );
+            }
+            return cleanup;
+        }
+    }
+}
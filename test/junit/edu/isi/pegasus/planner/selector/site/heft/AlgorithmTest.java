@@ -0,0 +1,236 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.site.heft;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.Profile;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test to test the schedule computed by the HEFT site selector on a
+ * small workflow, with the non insertion and the insertion based policies.
+ * There are enough sites for the estimated finish times to be evaluated in
+ * parallel.
+ *
+ * @author Karan Vahi
+ */
+public class AlgorithmTest {
+
+    /**
+     * The number of sites, each with a single node.
+     */
+    private static final int SITES = 8;
+
+    private PegasusBag mBag;
+
+    private List<String> mSites;
+
+    private ADag mWorkflow;
+
+    public AlgorithmTest(){
+    }
+
+    @Before
+    public void setUp() {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        LogManager logger = new DefaultTestSetup().loadLogger( props );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+
+        SiteStore store = new SiteStore();
+        mSites = new ArrayList<String>();
+        for( int s = 0; s < SITES; s++ ){
+            SiteCatalogEntry entry = new SiteCatalogEntry( "site" + s );
+            GridGateway gateway = new GridGateway( GridGateway.TYPE.gt5, "site" + s + "/jobmanager-condor",
+                                                   GridGateway.SCHEDULER_TYPE.Condor );
+            gateway.setJobType( GridGateway.JOB_TYPE.compute );
+            gateway.setIdleNodes( 1 );
+            entry.addGridGateway( gateway );
+            store.addEntry( entry );
+            mSites.add( "site" + s );
+        }
+
+        mBag = new PegasusBag();
+        mBag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        mBag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+        mBag.add( PegasusBag.SITE_STORE, store );
+
+        //each transformation is fast on one site
+        StubMapper mapper = new StubMapper( mBag );
+        mapper.addTransformation( "r1", "site1", 10, 1000 );
+        mapper.addTransformation( "r2", "site2", 4, 1100 );
+        mapper.addTransformation( "y",  "site0", 30, 1000 );
+        mapper.addTransformation( "x",  "site0", 5, 1000 );
+        mBag.add( PegasusBag.TRANSFORMATION_MAPPER, mapper );
+    }
+
+    @Test
+    public void testNonInsertion() {
+        for( int threads : new int[]{ 1, 4 } ){
+            Algorithm heft = this.schedule( threads, false );
+            this.assertScheduled( "R1", "site1", 2, 12 );
+            this.assertScheduled( "R2", "site2", 2, 6 );
+            this.assertScheduled( "Y",  "site0", 14, 44 );
+            //X is scheduled after Y, and waits for the node to be free
+            this.assertScheduled( "X",  "site0", 44, 49 );
+            assertEquals( 49, heft.getMakespan() );
+        }
+    }
+
+    @Test
+    public void testInsertion() {
+        for( int threads : new int[]{ 1, 4 } ){
+            Algorithm heft = this.schedule( threads, true );
+            this.assertScheduled( "R1", "site1", 2, 12 );
+            this.assertScheduled( "R2", "site2", 2, 6 );
+            this.assertScheduled( "Y",  "site0", 14, 44 );
+            //X is scheduled after Y, in the idle slot before it
+            this.assertScheduled( "X",  "site0", 8, 13 );
+            assertEquals( 44, heft.getMakespan() );
+        }
+    }
+
+    /**
+     * Schedules the workflow.
+     *
+     * @param threads    the number of threads
+     * @param insertion  whether to use the insertion based policy
+     *
+     * @return the algorithm the workflow was scheduled with
+     */
+    private Algorithm schedule( int threads, boolean insertion ){
+        PegasusProperties props = mBag.getPegasusProperties();
+        props.setProperty( "pegasus.selector.site.heft.threads", Integer.toString( threads ) );
+        props.setProperty( "pegasus.selector.site.heft.insertion", Boolean.toString( insertion ) );
+        mWorkflow = this.createWorkflow();
+        Algorithm heft = new Algorithm( mBag );
+        heft.schedule( mWorkflow, mSites );
+        return heft;
+    }
+
+    /**
+     * Creates the workflow. Y and X are the children of the roots R1 and R2.
+     * The slow runtimes of R2 give X a higher downward rank than Y, though
+     * X is ready earlier.
+     *
+     * @return the workflow
+     */
+    private ADag createWorkflow(){
+        ADag workflow = new ADag();
+        for( String[] job : new String[][]{ { "R1", "r1" }, { "R2", "r2" }, { "Y", "y" }, { "X", "x" } } ){
+            Job j = new Job();
+            j.setName( job[0] );
+            j.setTransformation( "pegasus", job[1], "1.0" );
+            j.setJobType( Job.COMPUTE_JOB );
+            workflow.add( j );
+        }
+        workflow.addEdge( "R1", "Y" );
+        workflow.addEdge( "R2", "X" );
+        return workflow;
+    }
+
+    private void assertScheduled( String id, String site, long start, long finish ){
+        GraphNode node = mWorkflow.getNode( id );
+        assertEquals( id, site, node.getBag().get( HeftBag.SCHEDULED_SITE ) );
+        assertEquals( id, Long.valueOf( start ), node.getBag().get( HeftBag.ACTUAL_START_TIME ) );
+        assertEquals( id, Long.valueOf( finish ), node.getBag().get( HeftBag.ACTUAL_FINISH_TIME ) );
+    }
+
+    /**
+     * A mapper that returns transformation catalog entries with a runtime
+     * profile, installed on all the sites.
+     */
+    private class StubMapper extends Mapper {
+
+        /**
+         * The entries indexed by transformation name and then by site.
+         */
+        private Map<String,Map<String,List>> mEntries;
+
+        public StubMapper( PegasusBag bag ){
+            super( bag );
+            mEntries = new HashMap<String,Map<String,List>>();
+        }
+
+        /**
+         * Adds a transformation that runs fast on one site, and slow on the
+         * others.
+         *
+         * @param name     the name of the transformation
+         * @param site     the site it is fast on
+         * @param runtime  the runtime on that site
+         * @param slow     the runtime on the other sites
+         */
+        public void addTransformation( String name, String site, int runtime, int slow ){
+            Map<String,List> entries = new HashMap<String,List>();
+            for( String s : mSites ){
+                TransformationCatalogEntry entry = new TransformationCatalogEntry( "pegasus", name, "1.0" );
+                entry.setResourceId( s );
+                entry.addProfile( new Profile( Profile.VDS, Pegasus.RUNTIME_KEY,
+                                               Integer.toString( s.equals( site ) ? runtime : slow ) ) );
+                List l = new LinkedList();
+                l.add( entry );
+                entries.put( s, l );
+            }
+            mEntries.put( name, entries );
+        }
+
+        public Map getSiteMap( String namespace, String name, String version, List siteids ){
+            return mEntries.get( name );
+        }
+
+        public String getMode(){
+            return "Stub";
+        }
+
+        public List getTCList( String namespace, String name, String version, String siteid ){
+            return mEntries.get( name ).get( siteid );
+        }
+
+        public List getSiteList( String namespace, String name, String version, List siteids ){
+            List result = new ArrayList();
+            for( Iterator it = siteids.iterator(); it.hasNext(); ){
+                String site = (String)it.next();
+                if( mEntries.get( name ).containsKey( site ) ){
+                    result.add( site );
+                }
+            }
+            return result;
+        }
+    }
+}
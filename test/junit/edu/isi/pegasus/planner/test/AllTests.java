@@ -23,22 +23,45 @@ import org.junit.runners.Suite.SuiteClasses;
 @Suite.SuiteClasses({
     edu.isi.pegasus.common.util.VersionTest.class,
     edu.isi.pegasus.common.util.PegasusURLTest.class,
+    edu.isi.pegasus.common.logging.logger.DefaultTest.class,
+    edu.isi.pegasus.common.logging.logger.AsyncTest.class,
     edu.isi.pegasus.planner.namespace.PegasusTest.class,
+    edu.isi.pegasus.planner.namespace.ProfileMapTest.class,
+    edu.isi.pegasus.planner.common.PropertiesSnapshotTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.RegexRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.JDBCRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.SimpleFileTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.MappedReplicaIndexTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.ReplicaBloomFilterTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.DirectoryTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.MRCTest.class,
+    edu.isi.pegasus.planner.catalog.site.classes.SiteStoreTest.class,
     edu.isi.pegasus.planner.catalog.site.impl.XMLTest.class,
     edu.isi.pegasus.planner.catalog.transformation.impl.TextTest.class,
+    edu.isi.pegasus.planner.classes.TCMapTest.class,
     edu.isi.pegasus.planner.cluster.RuntimeClusteringTest.class,
+    edu.isi.pegasus.planner.cluster.BinPackTest.class,
     edu.isi.pegasus.planner.code.generator.condor.CondorEnvironmentEscapeTest.class,
+    edu.isi.pegasus.planner.code.generator.condor.CondorGeneratorTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.GliteTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.CondorTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.CondorGTest.class,
+    edu.isi.pegasus.planner.code.generator.stampede.EventWriterTest.class,
+    edu.isi.pegasus.planner.code.gridstart.WrapperWriterTest.class,
+    edu.isi.pegasus.planner.code.SubmitDirectoryLayoutTest.class,
     edu.isi.pegasus.planner.transfer.mapper.FlatOutputMapperTest.class,
     edu.isi.pegasus.planner.transfer.mapper.HashedOutputMapperTest.class,
     edu.isi.pegasus.planner.transfer.mapper.ReplicaOutputMapperTest.class,
     edu.isi.pegasus.planner.transfer.mapper.FixedOutputMapperTest.class,
     edu.isi.pegasus.planner.refiner.DataReuseEngineTest.class,
+    edu.isi.pegasus.planner.refiner.StageInDedupTest.class,
+    edu.isi.pegasus.planner.refiner.WorkflowCheckpointTest.class,
+    edu.isi.pegasus.planner.refiner.ReduceEdgesTest.class,
+    edu.isi.pegasus.planner.refiner.cleanup.InPlaceTest.class,
+    edu.isi.pegasus.planner.selector.site.heft.AlgorithmTest.class,
+    edu.isi.pegasus.planner.transfer.refiner.SizeBalancedClusterTest.class,
+    edu.isi.pegasus.planner.partitioner.graph.CompactGraphTest.class,
+    edu.isi.pegasus.planner.invocation.IngestServerTest.class,
     edu.isi.pegasus.common.util.GLiteEscapeTest.class,
     edu.isi.pegasus.common.util.VariableExpanderTest.class,
 })
@@ -0,0 +1,188 @@
+/**
+ *  Copyright 2007-2013 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.test;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.site.SiteFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusConfiguration;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.Parser;
+import edu.isi.pegasus.planner.parser.dax.Callback;
+import edu.isi.pegasus.planner.parser.dax.DAXParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A test setup for the junit tests that plan a complete workflow in the
+ * test JVM, instead of invoking pegasus-plan. The workflow is planned for a
+ * single execution site, with the output site as local. The workflow UUID
+ * and timestamp are fixed, so that the same workflow planned twice in the
+ * same submit directory results in the same submit files.
+ *
+ * @author Karan Vahi
+ */
+public class PlannerTestSetup extends DefaultTestSetup {
+
+    /**
+     * The fixed workflow UUID for the planned workflows.
+     */
+    public static final String WORKFLOW_UUID = "00000000-0000-0000-0000-000000000000";
+
+    /**
+     * The fixed timestamp for the planned workflows.
+     */
+    public static final String WORKFLOW_TIMESTAMP = "20150101T000000-0000";
+
+    /**
+     * The relative submit directory.
+     */
+    public static final String RELATIVE_SUBMIT_DIRECTORY = "run0001";
+
+    /**
+     * The default constructor.
+     */
+    public PlannerTestSetup(){
+        super();
+    }
+
+    /**
+     * Sets the share and bin directories that the planner requires, on the
+     * basis of the schema directory that the tests are run with. They need to
+     * be set before the properties are loaded.
+     */
+    public void setPegasusHome(){
+        String schemaDir = System.getProperty( "pegasus.home.schemadir" );
+        if( schemaDir == null ){
+            throw new RuntimeException( "pegasus.home.schemadir needs to be set for the test" );
+        }
+        File shareDir = new File( schemaDir ).getAbsoluteFile().getParentFile();
+        if( System.getProperty( "pegasus.home.sharedstatedir" ) == null ){
+            System.setProperty( "pegasus.home.sharedstatedir", shareDir.getPath() );
+        }
+        if( System.getProperty( "pegasus.home.bindir" ) == null ){
+            File binDir = new File( shareDir.getParentFile().getParentFile(), "bin" );
+            System.setProperty( "pegasus.home.bindir", binDir.getPath() );
+        }
+    }
+
+    /**
+     * Loads the planner options for the test
+     *
+     * @param baseDirectory  the base submit directory.
+     * @param site           the execution site.
+     * @param dax            the dax file basename in the input directory.
+     *
+     * @return the options
+     */
+    public PlannerOptions loadPlannerOptions( File baseDirectory, String site, String dax ){
+        PlannerOptions options = new PlannerOptions();
+        options.setSubmitDirectory( baseDirectory.getAbsolutePath(), null );
+        options.setRandomDir( RELATIVE_SUBMIT_DIRECTORY );
+        options.setRelativeDirectory( RELATIVE_SUBMIT_DIRECTORY );
+        options.setExecutionSites( site );
+        options.setOutputSite( "local" );
+        options.setCleanup( "none" );
+        options.setDAX( this.getInputDirectory() + File.separator + dax );
+        return options;
+    }
+
+    /**
+     * Loads up the bag with the properties, options, logger, site store and
+     * transformation catalog required to plan the workflow.
+     *
+     * @param props    the properties
+     * @param logger   the logger
+     * @param options  the planner options
+     *
+     * @return the bag
+     */
+    public PegasusBag loadBag( PegasusProperties props, LogManager logger, PlannerOptions options ){
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        bag.add( PegasusBag.PLANNER_OPTIONS, options );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+        new PegasusConfiguration( logger ).loadConfigurationPropertiesAndOptions( props, options );
+
+        List<String> sites = new ArrayList<String>( options.getExecutionSites() );
+        sites.add( "local" );
+        SiteStore store = SiteFactory.loadSiteStore( sites, bag );
+        store.setForPlannerUse( props, options );
+        bag.add( PegasusBag.SITE_STORE, store );
+        bag.add( PegasusBag.TRANSFORMATION_CATALOG, TransformationFactory.loadInstance( bag ) );
+        return bag;
+    }
+
+    /**
+     * Parses the DAX referred to in the options, and readies it for planning
+     * in the submit directory.
+     *
+     * @param bag  the bag
+     *
+     * @return the workflow
+     */
+    public ADag loadDAX( PegasusBag bag ){
+        PlannerOptions options = bag.getPlannerOptions();
+        String dax = options.getDAX();
+        Parser p = (Parser)DAXParserFactory.loadDAXParser( bag, "DAX2CDAG", dax );
+        Callback cb = ((DAXParser)p).getDAXCallback();
+        p.startParser( dax );
+        ADag dag = (ADag)cb.getConstructedObject();
+
+        dag.generateFlowName();
+        dag.setFlowTimestamp( WORKFLOW_TIMESTAMP );
+        dag.generateFlowID();
+        dag.setWorkflowUUID( WORKFLOW_UUID );
+        dag.setRootWorkflowUUID( WORKFLOW_UUID );
+
+        //the planner refers to the properties in the submit directory
+        File submitDir = new File( options.getSubmitDirectory() );
+        submitDir.mkdirs();
+        try{
+            bag.getPegasusProperties().writeOutProperties( submitDir.getPath() );
+        }
+        catch( IOException e ){
+            throw new RuntimeException( "Unable to write out properties to " + submitDir, e );
+        }
+        return dag;
+    }
+
+    /**
+     * Deletes a directory recursively. Nothing is done if the file is null.
+     *
+     * @param f  the file or directory to delete
+     */
+    public static void delete( File f ){
+        if( f == null ){
+            return;
+        }
+        File[] files = f.listFiles();
+        if( files != null ){
+            for( File child : files ){
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ *  Copyright 2007-2015 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.transfer.refiner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.FileTransfer;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.TransferJob;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.transfer.Implementation;
+import edu.isi.pegasus.planner.transfer.Refiner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A JUnit Test to test the distribution of the transfers amongst the transfer
+ * jobs by the SizeBalancedCluster refiner, and the replacement of the
+ * placeholder job names in the relations when the refiner is done.
+ *
+ * @author Karan Vahi
+ */
+public class SizeBalancedClusterTest {
+
+    /**
+     * The staging site of the compute jobs.
+     */
+    private static final String SITE = "site1";
+
+    private PegasusBag mBag;
+
+    private ADag mWorkflow;
+
+    /**
+     * The transfers of the transfer jobs created, indexed by the job name.
+     */
+    private Map<String,Set<String>> mTransfers;
+
+    public SizeBalancedClusterTest(){
+    }
+
+    @Before
+    public void setUp() {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        LogManager logger = new DefaultTestSetup().loadLogger( props );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+
+        mBag = new PegasusBag();
+        mBag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        mBag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+        mBag.add( PegasusBag.PLANNER_OPTIONS, new PlannerOptions() );
+        mBag.add( PegasusBag.SITE_STORE, new SiteStore() );
+
+        mTransfers = new HashMap<String,Set<String>>();
+    }
+
+    @Test
+    public void testLongestFirst() {
+        double[] sizes = { 5, 9, 2, 7, 4, 3 };
+        int[] bins = SizeBalancedCluster.packLongestFirst( sizes, 2 );
+
+        assertArrayEquals( new int[]{ 1, 0, 0, 1, 0, 1 }, bins );
+        assertArrayEquals( new double[]{ 15, 15 }, load( sizes, bins, 2 ), 0 );
+    }
+
+    @Test
+    public void testLongestFirstTies() {
+        //equal sizes go to the bin with fewer items, then the lower index
+        double[] sizes = { 1, 1, 1, 1, 1 };
+        int[] bins = SizeBalancedCluster.packLongestFirst( sizes, 3 );
+
+        assertArrayEquals( new int[]{ 0, 1, 2, 0, 1 }, bins );
+    }
+
+    @Test
+    public void testRoundRobin() {
+        assertArrayEquals( new int[]{ 0, 1, 2, 0, 1 }, SizeBalancedCluster.packRoundRobin( 5, 3 ) );
+    }
+
+    @Test
+    public void testDistributeBySize() {
+        SizeBalancedCluster refiner = this.refine( new double[]{ 100, 10, 60, 50, 40 } );
+        refiner.done();
+
+        //fa and fe add up to 140 bytes, fb, fc and fd to 120 bytes
+        assertTransfers( "stage_in_local_site1_1_0", "fa", "fe" );
+        assertTransfers( "stage_in_local_site1_1_1", "fb", "fc", "fd" );
+        assertTransfers( "stage_out_local_site1_1_0", "oa" );
+        assertTransfers( "stage_out_local_site1_1_1", "ob" );
+        assertEquals( 4, mTransfers.size() );
+
+        assertParents( "A", "stage_in_local_site1_1_0", "stage_in_local_site1_1_1" );
+        assertParents( "B", "stage_in_local_site1_1_1" );
+        assertParents( "C", "stage_in_local_site1_1_0", "stage_in_local_site1_1_1" );
+        assertParents( "stage_out_local_site1_1_0", "A" );
+        assertParents( "stage_out_local_site1_1_1", "A" );
+        assertNoPlaceholders();
+    }
+
+    @Test
+    public void testDistributeRoundRobin() {
+        //the size of fb is not known
+        SizeBalancedCluster refiner = this.refine( new double[]{ 100, -1, 60, 50, 40 } );
+        refiner.done();
+
+        //the transfers are distributed in the order they were added
+        assertTransfers( "stage_in_local_site1_1_0", "fa", "fc", "fe" );
+        assertTransfers( "stage_in_local_site1_1_1", "fb", "fd" );
+
+        assertParents( "A", "stage_in_local_site1_1_0", "stage_in_local_site1_1_1" );
+        assertParents( "B", "stage_in_local_site1_1_0" );
+        assertParents( "C", "stage_in_local_site1_1_0", "stage_in_local_site1_1_1" );
+        assertNoPlaceholders();
+    }
+
+    /**
+     * Adds the stagein jobs for three compute jobs A, B and C on the first
+     * level of the workflow, and the stageout jobs for A. A reads fa and fb,
+     * B reads fc, and C reads fd and fe. The default bundle factor of 2 for
+     * the local transfers applies.
+     *
+     * @param sizes  the sizes of the files fa to fe
+     *
+     * @return the refiner
+     */
+    private SizeBalancedCluster refine( double[] sizes ){
+        mWorkflow = new ADag();
+        Job a = this.addJob( "A" );
+        Job b = this.addJob( "B" );
+        Job c = this.addJob( "C" );
+        //as in the planner, the task metrics are locked before the refinement
+        mWorkflow.getWorkflowMetrics().lockTaskMetrics( true );
+
+        SizeBalancedCluster refiner = new SizeBalancedCluster( mWorkflow, mBag ){
+            public void loadImplementations( PegasusBag bag ){
+                mTXStageInImplementation  = new StubImplementation();
+                mTXStageOutImplementation = new StubImplementation();
+            }
+        };
+        refiner.loadImplementations( mBag );
+
+        refiner.addStageInXFERNodes( a, this.transfers( "A", new String[]{ "fa", "fb" },
+                                                        new double[]{ sizes[0], sizes[1] } ),
+                                     new ArrayList<FileTransfer>() );
+        refiner.addStageInXFERNodes( b, this.transfers( "B", new String[]{ "fc" },
+                                                        new double[]{ sizes[2] } ),
+                                     new ArrayList<FileTransfer>() );
+        refiner.addStageInXFERNodes( c, this.transfers( "C", new String[]{ "fd", "fe" },
+                                                        new double[]{ sizes[3], sizes[4] } ),
+                                     new ArrayList<FileTransfer>() );
+        refiner.addStageOutXFERNodes( a, this.transfers( "A", new String[]{ "oa", "ob" },
+                                                         new double[]{ 30, 20 } ),
+                                      null, true, false );
+        return refiner;
+    }
+
+    private Job addJob( String name ){
+        Job job = new Job();
+        job.setName( name );
+        job.setTXName( "process" );
+        job.setJobType( Job.COMPUTE_JOB );
+        job.setSiteHandle( SITE );
+        job.setStagingSiteHandle( SITE );
+        job.setLevel( 1 );
+        mWorkflow.add( job );
+        return job;
+    }
+
+    private List<FileTransfer> transfers( String job, String[] lfns, double[] sizes ){
+        List<FileTransfer> result = new ArrayList<FileTransfer>();
+        for( int i = 0; i < lfns.length; i++ ){
+            FileTransfer ft = new FileTransfer( lfns[i], job );
+            ft.setSize( sizes[i] );
+            result.add( ft );
+        }
+        return result;
+    }
+
+    private static double[] load( double[] sizes, int[] bins, int n ){
+        double[] result = new double[ n ];
+        for( int i = 0; i < sizes.length; i++ ){
+            result[ bins[i] ] += sizes[i];
+        }
+        return result;
+    }
+
+    private void assertTransfers( String job, String... lfns ){
+        Set<String> expected = new TreeSet<String>();
+        for( String lfn : lfns ){
+            expected.add( lfn );
+        }
+        assertEquals( job, expected, mTransfers.get( job ) );
+    }
+
+    private void assertParents( String job, String... parents ){
+        Set<String> expected = new TreeSet<String>();
+        for( String parent : parents ){
+            expected.add( parent );
+        }
+        Set<String> actual = new TreeSet<String>();
+        for( GraphNode parent : mWorkflow.getNode( job ).getParents() ){
+            actual.add( parent.getID() );
+        }
+        assertEquals( job, expected, actual );
+    }
+
+    /**
+     * Asserts that none of the jobs in the workflow, or their parents and
+     * children are placeholders.
+     */
+    private void assertNoPlaceholders(){
+        for( Iterator<GraphNode> it = mWorkflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            assertFalse( node.getID(), node.getID().startsWith( "pending_transfer_" ) );
+            List<GraphNode> relatives = new ArrayList<GraphNode>( node.getParents() );
+            relatives.addAll( node.getChildren() );
+            for( GraphNode relative : relatives ){
+                assertFalse( node.getID() + " " + relative.getID(),
+                             relative.getID().startsWith( "pending_transfer_" ) );
+            }
+        }
+    }
+
+    /**
+     * A transfer implementation that only creates the job, and records the
+     * files it transfers.
+     */
+    private class StubImplementation implements Implementation {
+
+        public void setRefiner( Refiner refiner ){
+        }
+
+        public TransferJob createTransferJob( Job job, String site, Collection files,
+                                              Collection execFiles, String txJobName,
+                                              int jobClass ){
+            TransferJob txJob = new TransferJob();
+            txJob.setName( txJobName );
+            txJob.setSiteHandle( site );
+            txJob.setJobType( jobClass );
+            Set<String> lfns = new TreeSet<String>();
+            for( Iterator it = files.iterator(); it.hasNext(); ){
+                lfns.add( ((FileTransfer)it.next()).getLFN() );
+            }
+            mTransfers.put( txJobName, lfns );
+            return txJob;
+        }
+
+        public boolean doesPreserveXBit(){
+            return true;
+        }
+
+        public boolean addSetXBitJobs( Job computeJob, String txJobName, Collection execFiles,
+                                       int transferClass, int xbitIndex ){
+            return false;
+        }
+
+        public Job createSetXBitJob( Job computeJob, Collection<FileTransfer> execFiles,
+                                     int transferClass, int xbitIndex ){
+            return null;
+        }
+
+        public String getSetXBitJobName( String name, int counter ){
+            return "chmod_" + name + "_" + counter;
+        }
+
+        public TransformationCatalogEntry getTransformationCatalogEntry( String siteHandle, int jobClass ){
+            return null;
+        }
+
+        public boolean useThirdPartyTransferAlways(){
+            return false;
+        }
+
+        public void applyPriority( TransferJob job ){
+        }
+
+        public boolean checkAndTransferProxy( TransferJob job ){
+            return false;
+        }
+
+        public String getDescription(){
+            return "Stub";
+        }
+    }
+}